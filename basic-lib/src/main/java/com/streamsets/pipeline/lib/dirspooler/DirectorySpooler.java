@@ -39,13 +39,21 @@ import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -56,6 +64,8 @@ import static com.streamsets.pipeline.lib.dirspooler.PathMatcherMode.REGEX;
 public class DirectorySpooler {
   private static final Logger LOG = LoggerFactory.getLogger(DirectorySpooler.class);
   private static final String PENDING_FILES = "pending.files";
+  private static final long DEFAULT_FULL_SCAN_INTERVAL_MINS = 60;
+  private static final long INDEX_SAVE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
 
   private final PushSource.Context context;
   private final String spoolDir;
@@ -69,6 +79,9 @@ public class DirectorySpooler {
   private final boolean useLastModified;
   private final Comparator<Path> pathComparator;
   private final boolean processSubdirectories;
+  private final boolean incrementalDiscovery;
+  private final long fullScanIntervalMillis;
+  private final String indexFile;
 
   public enum FilePostProcessing {NONE, DELETE, ARCHIVE}
 
@@ -89,9 +102,13 @@ public class DirectorySpooler {
     private boolean waitForPathAppearance;
     private boolean useLastModifiedTimestamp;
     private boolean processSubdirectories;
+    private boolean incrementalDiscovery;
+    private long fullScanIntervalMillis;
+    private String indexFile;
 
     private Builder() {
       postProcessing = FilePostProcessing.NONE;
+      fullScanIntervalMillis = TimeUnit.MINUTES.toMillis(DEFAULT_FULL_SCAN_INTERVAL_MINS);
     }
 
     public Builder setContext(PushSource.Context context) {
@@ -168,6 +185,37 @@ public class DirectorySpooler {
       return this;
     }
 
+    /**
+     * Discovers new files from file system events instead of listing the directory every few seconds. The
+     * directory is still listed at the full scan interval, in case events were missed.
+     */
+    public Builder setIncrementalDiscovery(boolean incrementalDiscovery) {
+      this.incrementalDiscovery = incrementalDiscovery;
+      return this;
+    }
+
+    public Builder setFullScanInterval(long minutes) {
+      return setFullScanInterval(minutes, TimeUnit.MINUTES);
+    }
+
+    //for testing only
+    Builder setFullScanInterval(long time, TimeUnit unit) {
+      Preconditions.checkArgument(time > 0, "full scan interval must be greater than zero");
+      Preconditions.checkNotNull(unit, "full scan interval unit cannot be null");
+      fullScanIntervalMillis = TimeUnit.MILLISECONDS.convert(time, unit);
+      return this;
+    }
+
+    /**
+     * File the index of the files seen in the directory is persisted to with incremental discovery, if not set the
+     * index is kept in memory only.
+     */
+    public Builder setIndexFile(String file) {
+      this.indexFile = Preconditions.checkNotNull(file, "file cannot be null");
+      Preconditions.checkArgument(new File(file).isAbsolute(), Utils.formatL("file '{}' must be an absolute path", file));
+      return this;
+    }
+
     public DirectorySpooler build() {
       Preconditions.checkArgument(context != null, "context not specified");
       Preconditions.checkArgument(spoolDir != null, "spool dir not specified");
@@ -188,7 +236,10 @@ public class DirectorySpooler {
           errorArchiveDir,
           waitForPathAppearance,
           useLastModifiedTimestamp,
-          processSubdirectories
+          processSubdirectories,
+          incrementalDiscovery,
+          fullScanIntervalMillis,
+          indexFile
       );
     }
   }
@@ -234,6 +285,42 @@ public class DirectorySpooler {
       boolean waitForPathAppearance,
       final boolean useLastModified,
       boolean processSubdirectories
+  ) {
+    this(
+        context,
+        spoolDir,
+        maxSpoolFiles,
+        pattern,
+        pathMatcherMode,
+        postProcessing,
+        archiveDir,
+        archiveRetentionMillis,
+        errorArchiveDir,
+        waitForPathAppearance,
+        useLastModified,
+        processSubdirectories,
+        false,
+        0,
+        null
+    );
+  }
+
+  public DirectorySpooler(
+      PushSource.Context context,
+      String spoolDir,
+      int maxSpoolFiles,
+      String pattern,
+      PathMatcherMode pathMatcherMode,
+      FilePostProcessing postProcessing,
+      String archiveDir,
+      long archiveRetentionMillis,
+      String errorArchiveDir,
+      boolean waitForPathAppearance,
+      final boolean useLastModified,
+      boolean processSubdirectories,
+      boolean incrementalDiscovery,
+      long fullScanIntervalMillis,
+      String indexFile
   ) {
     this.context = context;
     this.spoolDir = spoolDir;
@@ -247,6 +334,9 @@ public class DirectorySpooler {
     this.waitForPathAppearance = waitForPathAppearance;
     this.useLastModified = useLastModified;
     this.processSubdirectories = processSubdirectories;
+    this.incrementalDiscovery = incrementalDiscovery;
+    this.fullScanIntervalMillis = fullScanIntervalMillis;
+    this.indexFile = indexFile;
 
     pathComparator = new Comparator<Path>() {
       @Override
@@ -292,6 +382,10 @@ public class DirectorySpooler {
 
   volatile FilePurger purger;
   volatile FileFinder finder;
+  volatile FileWatcher watcher;
+
+  private FileIndex index;
+  private WatchService watchService;
 
   private void checkBaseDir(Path path) {
     Preconditions.checkState(path.isAbsolute(), Utils.formatL("Path '{}' is not an absolute path", path));
@@ -384,10 +478,13 @@ public class DirectorySpooler {
 
     scheduledExecutor = new SafeScheduledExecutorService(1, "directory-spooler");
 
-    findAndQueueFiles(currentFile, true, false);
-
     finder = new FileFinder();
-    scheduledExecutor.scheduleAtFixedRate(finder, 5, 5, TimeUnit.SECONDS);
+    if (incrementalDiscovery) {
+      startWatching(currentFile);
+    } else {
+      findAndQueueFiles(currentFile, true, false);
+      scheduledExecutor.scheduleAtFixedRate(finder, 5, 5, TimeUnit.SECONDS);
+    }
 
     if (postProcessing == FilePostProcessing.ARCHIVE && archiveRetentionMillis > 0) {
       // create and schedule file purger only if the retention time is > 0
@@ -396,6 +493,110 @@ public class DirectorySpooler {
     }
   }
 
+  private void startWatching(Path currentFile) throws IOException {
+    watchService = spoolDirPath.getFileSystem().newWatchService();
+    index = new FileIndex((indexFile != null) ? Paths.get(indexFile) : null, getIndexKey());
+    boolean indexLoaded = index.load();
+    alignIndex(currentFile);
+
+    long fullScanDelay;
+    if (indexLoaded) {
+      // start from the files known from the last run, the files added since then are found by a full scan that
+      // is run right away without holding the pipeline start
+      LOG.debug("Resuming from index with '{}' files", index.size());
+      register(spoolDirPath);
+      queueIndexedFiles(currentFile);
+      fullScanDelay = 0;
+    } else {
+      findAndQueueFiles(currentFile, true, false);
+      fullScanDelay = fullScanIntervalMillis;
+    }
+
+    watcher = new FileWatcher();
+    scheduledExecutor.scheduleWithFixedDelay(watcher, 1, 1, TimeUnit.SECONDS);
+    scheduledExecutor.scheduleWithFixedDelay(finder, fullScanDelay, fullScanIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  // an index persisted for a different directory or ordering does not apply
+  private String getIndexKey() {
+    return Utils.format(
+        "{}|{}|{}|{}|{}",
+        spoolDirPath,
+        pathMatcherMode,
+        pattern,
+        useLastModified,
+        processSubdirectories
+    );
+  }
+
+  /**
+   * Keeps the processed mark in the index only for the files before the file the origin resumes from, as the
+   * origin offset may have been reset since the index was saved.
+   */
+  private void alignIndex(final Path startingFile) {
+    if (startingFile == null || startingFile.toString().isEmpty()) {
+      index.retainProcessed((file, lastModified) -> false);
+      return;
+    }
+    Long startingLastModified = null;
+    if (useLastModified) {
+      startingLastModified = index.getLastModified(startingFile);
+      if (startingLastModified == null) {
+        try {
+          startingLastModified = Files.getLastModifiedTime(startingFile).toMillis();
+        } catch (IOException ex) {
+          // the starting file was already archived or deleted, all the indexed files processed before it are
+          // still processed
+          LOG.debug("Could not get last modified time of starting file '{}': {}", startingFile, ex.toString());
+          return;
+        }
+      }
+    }
+    final Long startingFileLastModified = startingLastModified;
+    index.retainProcessed((file, lastModified) -> {
+      if (useLastModified) {
+        if (lastModified == null) {
+          return false;
+        }
+        int compares = lastModified.compareTo(startingFileLastModified);
+        if (compares != 0) {
+          return compares < 0;
+        }
+      }
+      return file.getFileName().compareTo(startingFile.getFileName()) < 0;
+    });
+  }
+
+  private void queueIndexedFiles(Path startingFile) throws IOException {
+    final long scanTime = System.currentTimeMillis();
+    List<Path> foundFiles = new ArrayList<>();
+    for (Path file : index.getUnprocessed()) {
+      try {
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        index.seen(file, lastModified);
+        if (lastModified < scanTime && isAfter(file, startingFile, true)) {
+          foundFiles.add(file);
+        }
+      } catch (NoSuchFileException ex) {
+        LOG.debug("Indexed file '{}' does not exist anymore", file);
+        index.remove(file);
+      }
+    }
+    if (!useLastModified) {
+      Collections.sort(foundFiles);
+    }
+    for (Path file : foundFiles) {
+      addFileToQueue(file, false);
+    }
+    spoolQueueMeter.mark(filesQueue.size());
+    pendingFilesCounter.inc(filesQueue.size() - pendingFilesCounter.getCount());
+    LOG.debug("Found '{}' files in index", filesQueue.size());
+  }
+
+  private void register(Path dir) throws IOException {
+    dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+  }
+
   public void destroy() {
     running = false;
     try {
@@ -406,6 +607,21 @@ public class DirectorySpooler {
     } catch (RuntimeException ex) {
       LOG.warn("Error during scheduledExecutor.shutdownNow(), {}", ex.toString(), ex);
     }
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException ex) {
+        LOG.warn("Error while closing watch service: {}", ex.toString(), ex);
+      }
+      watchService = null;
+    }
+    if (index != null) {
+      try {
+        index.save();
+      } catch (IOException ex) {
+        LOG.warn("Error while saving index '{}': {}", indexFile, ex.toString(), ex);
+      }
+    }
   }
 
   public boolean isRunning() {
@@ -500,6 +716,7 @@ public class DirectorySpooler {
               if (Files.exists(previousFile)) {
                 LOG.debug("Deleting previous file '{}'", previousFile);
                 Files.delete(previousFile);
+                removeFromIndex(previousFile);
               } else {
                 LOG.error("failed to delete previous file '{}'", previousFile);
               }
@@ -513,6 +730,7 @@ public class DirectorySpooler {
               if (Files.exists(previousFile)) {
                 LOG.debug("Archiving previous file '{}'", previousFile);
                 moveIt(previousFile, archiveDirPath);
+                removeFromIndex(previousFile);
               } else {
                 LOG.error("failed to Archive previous file '{}'", previousFile);
               }
@@ -538,6 +756,9 @@ public class DirectorySpooler {
       if (next != null) {
         currentFile = next;
         previousFile = next;
+        if (index != null) {
+          index.processed(next);
+        }
       }
     }
     pendingFilesCounter.inc(filesQueue.size() - pendingFilesCounter.getCount());
@@ -549,6 +770,7 @@ public class DirectorySpooler {
       Path current = spoolDirPath.resolve(previousFile);
       LOG.error("Archiving file in error '{}' in error archive directory '{}'", previousFile, errorArchiveDirPath);
       moveIt(current, errorArchiveDirPath);
+      removeFromIndex(current);
       // we need to set the currentFile to null because we just moved to error.
       previousFile = null;
     } else {
@@ -556,6 +778,12 @@ public class DirectorySpooler {
     }
   }
 
+  private void removeFromIndex(Path file) {
+    if (index != null) {
+      index.remove(file);
+    }
+  }
+
   // This method is a simple wrapper that lets us find the NoSuchFileException if that was the cause.
   private int compare(Path path1, Path path2) throws NoSuchFileException {
     // why not just check if the file exists? Well, there is a possibility file gets moved/archived/deleted right after
@@ -595,27 +823,31 @@ public class DirectorySpooler {
       final Path startingFile, final boolean includeStartingFile, boolean checkCurrent
   ) throws IOException {
     final long scanTime = System.currentTimeMillis();
+    // all the matching files in the directory, to drop the files gone from the index
+    final Set<Path> listedFiles = new HashSet<>();
     DirectoryStream.Filter<Path> filter = new DirectoryStream.Filter<Path>() {
       @Override
       public boolean accept(Path entry) throws IOException {
-        boolean accept = false;
-        // SDC-3551: Pick up only files with mtime strictly less than scan time.
-        if (entry != null && Files.getLastModifiedTime(entry).toMillis() < scanTime && fileMatcher.matches(entry.getFileName())) {
-          if (startingFile == null || startingFile.toString().isEmpty()) {
-            accept = true;
-          } else {
-            try {
-              int compares = compare(entry, startingFile);
-              accept = (compares == 0 && includeStartingFile) || (compares > 0);
-            } catch (NoSuchFileException ex) {
-              // This happens only if timestamp is used, when the mtime is looked up for the startingFile
-              // which has been archived, so this file must be newer since it is still in the directory
-              // (if it was older it would have been consumed and archived earlier)
-              return true;
-            }
+        if (entry == null || !fileMatcher.matches(entry.getFileName())) {
+          return false;
+        }
+        if (index != null) {
+          listedFiles.add(entry);
+          if (index.isProcessed(entry)) {
+            // no need to look up files already processed
+            return false;
+          }
+        }
+        long lastModified = Files.getLastModifiedTime(entry).toMillis();
+        if (index != null) {
+          index.seen(entry, lastModified);
+          if (!isAfter(entry, startingFile, true)) {
+            // files before the starting file were processed in a previous run
+            index.processed(entry);
           }
         }
-        return accept;
+        // SDC-3551: Pick up only files with mtime strictly less than scan time.
+        return lastModified < scanTime && isAfter(entry, startingFile, includeStartingFile);
       }
     };
 
@@ -642,7 +874,12 @@ public class DirectorySpooler {
     }
 
     List<Path> foundFiles = new ArrayList<>(maxSpoolFiles);
+    boolean listedAll = true;
     for (Path dir : directories) {
+      if (watchService != null) {
+        // registered before listing the directory so no file created in between is missed
+        register(dir);
+      }
       try (DirectoryStream<Path> matchingFile = Files.newDirectoryStream(dir, filter)) {
         for (Path file : matchingFile) {
           if (!running) {
@@ -661,8 +898,12 @@ public class DirectorySpooler {
         }
       } catch(Exception ex) {
         LOG.error("findAndQueueFiles(): newDirectoryStream failed. " + ex.getMessage(), ex);
+        listedAll = false;
       }
     }
+    if (index != null && listedAll) {
+      index.retainAll(listedFiles);
+    }
 
     if (!useLastModified) { // Sorted in the queue, if useLastModified is true.
       Collections.sort(foundFiles);
@@ -681,6 +922,22 @@ public class DirectorySpooler {
     return directories;
   }
 
+  // returns true if the file is after the starting file in the read order
+  private boolean isAfter(Path file, Path startingFile, boolean includeStartingFile) throws IOException {
+    if (startingFile == null || startingFile.toString().isEmpty()) {
+      return true;
+    }
+    try {
+      int compares = compare(file, startingFile);
+      return (compares == 0 && includeStartingFile) || (compares > 0);
+    } catch (NoSuchFileException ex) {
+      // This happens only if timestamp is used, when the mtime is looked up for the startingFile
+      // which has been archived, so this file must be newer since it is still in the directory
+      // (if it was older it would have been consumed and archived earlier)
+      return true;
+    }
+  }
+
   void handleOlderFiles(final Path startingFile) throws IOException {
     if (postProcessing != FilePostProcessing.NONE) {
       final ArrayList<Path> toProcess = new ArrayList<>();
@@ -762,6 +1019,102 @@ public class DirectorySpooler {
     }
   }
 
+  /**
+   * Queues the files created in or moved into the watched directories since the last run. Files modified in the
+   * current run are queued in the next run, as the full scan does.
+   */
+  class FileWatcher implements Runnable {
+    private final Set<Path> candidates = new LinkedHashSet<>();
+    private long lastIndexSave = System.currentTimeMillis();
+
+    @Override
+    public synchronized void run() {
+      try {
+        if (pollEvents()) {
+          LOG.warn("File system events were lost for spool directory '{}', scanning it", spoolDirPath);
+          findAndQueueFiles(currentFile, false, true);
+        }
+        queueCandidates();
+      } catch (Exception ex) {
+        LOG.warn("Error while queueing new files of directory '{}': {}", spoolDirPath, ex.toString(), ex);
+      }
+      long now = System.currentTimeMillis();
+      if (now - lastIndexSave >= INDEX_SAVE_INTERVAL_MILLIS) {
+        lastIndexSave = now;
+        try {
+          index.save();
+        } catch (IOException ex) {
+          LOG.warn("Error while saving index '{}': {}", indexFile, ex.toString(), ex);
+        }
+      }
+    }
+
+    // returns true if events were lost
+    private boolean pollEvents() {
+      boolean overflow = false;
+      WatchKey key;
+      while ((key = watchService.poll()) != null) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            overflow = true;
+          } else {
+            candidates.add(dir.resolve((Path) event.context()));
+          }
+        }
+        if (!key.reset()) {
+          LOG.debug("Directory '{}' is not watched anymore", dir);
+        }
+      }
+      return overflow;
+    }
+
+    private void queueCandidates() throws IOException {
+      long scanTime = System.currentTimeMillis();
+      List<Path> newDirectories = new ArrayList<>();
+      Iterator<Path> it = candidates.iterator();
+      while (it.hasNext() && running) {
+        Path candidate = it.next();
+        try {
+          if (Files.isDirectory(candidate)) {
+            it.remove();
+            if (processSubdirectories && useLastModified) {
+              newDirectories.add(candidate);
+            }
+          } else if (!fileMatcher.matches(candidate.getFileName())) {
+            it.remove();
+          } else {
+            long lastModified = Files.getLastModifiedTime(candidate).toMillis();
+            // SDC-3551: Pick up only files with mtime strictly less than scan time.
+            if (lastModified < scanTime) {
+              it.remove();
+              index.seen(candidate, lastModified);
+              if (!index.isProcessed(candidate) && !filesQueue.contains(candidate) &&
+                  isAfter(candidate, currentFile, false)) {
+                LOG.trace("Found file '{}'", candidate);
+                addFileToQueue(candidate, true);
+              }
+            }
+          }
+        } catch (NoSuchFileException ex) {
+          LOG.trace("File '{}' is gone", candidate);
+          it.remove();
+        }
+      }
+      for (Path dir : newDirectories) {
+        // the directory may have been filled before being registered
+        register(dir);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+          for (Path entry : entries) {
+            candidates.add(entry);
+          }
+        }
+      }
+      spoolQueueMeter.mark(filesQueue.size());
+      pendingFilesCounter.inc(filesQueue.size() - pendingFilesCounter.getCount());
+    }
+  }
+
   class FilePurger implements Runnable {
 
     @Override
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.dirspooler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+/**
+ * Index of the files seen in a spool directory, with their last modified time and whether they were already handed
+ * out for processing.
+ * <p/>
+ * It lets the spooler skip the files it already processed without looking them up in the file system, and start
+ * from the files it already knows of after a restart. The index is only a cache, if it cannot be read the spooler
+ * falls back to a full scan of the directory.
+ * <p/>
+ * The index is persisted as a text file with a header line identifying the spooler configuration and one
+ * '&lt;P|S&gt;&lt;TAB&gt;&lt;last modified&gt;&lt;TAB&gt;&lt;path&gt;' line per file, P for processed files and S for
+ * seen files.
+ */
+final class FileIndex {
+  private static final Logger LOG = LoggerFactory.getLogger(FileIndex.class);
+  private static final String VERSION = "1";
+  private static final String SEPARATOR = "\t";
+  private static final String PROCESSED = "P";
+  private static final String SEEN = "S";
+  private static final long UNKNOWN = -1;
+
+  private static class Entry {
+    private long lastModified;
+    private boolean processed;
+
+    private Entry(long lastModified, boolean processed) {
+      this.lastModified = lastModified;
+      this.processed = processed;
+    }
+  }
+
+  private final Path indexFile;
+  private final String header;
+  private final Map<Path, Entry> entries;
+  private boolean dirty;
+
+  /**
+   * @param indexFile file the index is persisted to, if NULL the index is kept in memory only
+   * @param key identifies the spool directory configuration, an index persisted with a different key is discarded
+   */
+  FileIndex(Path indexFile, String key) {
+    this.indexFile = indexFile;
+    this.header = VERSION + SEPARATOR + key.replace('\n', ' ');
+    entries = new HashMap<>();
+  }
+
+  /**
+   * Loads the persisted index, returns true if there was one for the same spooler configuration.
+   */
+  synchronized boolean load() {
+    entries.clear();
+    dirty = false;
+    if (indexFile == null || !Files.exists(indexFile)) {
+      return false;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+      if (!header.equals(reader.readLine())) {
+        LOG.info("Index '{}' is for a different spool directory configuration, discarding it", indexFile);
+        dirty = true;
+        return false;
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split(SEPARATOR, 3);
+        if (parts.length != 3 || !(PROCESSED.equals(parts[0]) || SEEN.equals(parts[0]))) {
+          throw new IOException("Invalid line: " + line);
+        }
+        entries.put(Paths.get(parts[2]), new Entry(Long.parseLong(parts[1]), PROCESSED.equals(parts[0])));
+      }
+      LOG.debug("Loaded '{}' files from index '{}'", entries.size(), indexFile);
+      return true;
+    } catch (IOException | RuntimeException ex) {
+      LOG.warn("Could not read index '{}', discarding it: {}", indexFile, ex.toString(), ex);
+      entries.clear();
+      dirty = true;
+      return false;
+    }
+  }
+
+  /**
+   * Persists the index if it changed since it was loaded or last saved.
+   */
+  void save() throws IOException {
+    List<String> lines;
+    synchronized (this) {
+      if (indexFile == null || !dirty) {
+        return;
+      }
+      lines = new ArrayList<>(entries.size());
+      for (Map.Entry<Path, Entry> entry : entries.entrySet()) {
+        String path = entry.getKey().toString();
+        // names with line breaks are not persisted, such files are found again by the next scan
+        if (path.indexOf('\n') == -1 && path.indexOf('\r') == -1) {
+          lines.add(
+              (entry.getValue().processed ? PROCESSED : SEEN) + SEPARATOR + entry.getValue().lastModified + SEPARATOR +
+              path
+          );
+        }
+      }
+      dirty = false;
+    }
+    Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      writer.write(header);
+      writer.newLine();
+      for (String line : lines) {
+        writer.write(line);
+        writer.newLine();
+      }
+    } catch (IOException ex) {
+      synchronized (this) {
+        dirty = true;
+      }
+      throw ex;
+    }
+    Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    LOG.debug("Saved '{}' files to index '{}'", lines.size(), indexFile);
+  }
+
+  /**
+   * Records the last modified time of a file found in the directory.
+   */
+  synchronized void seen(Path file, long lastModified) {
+    Entry entry = entries.get(file);
+    if (entry == null) {
+      entries.put(file, new Entry(lastModified, false));
+      dirty = true;
+    } else if (entry.lastModified != lastModified) {
+      entry.lastModified = lastModified;
+      dirty = true;
+    }
+  }
+
+  /**
+   * Records that a file was handed out for processing.
+   */
+  synchronized void processed(Path file) {
+    Entry entry = entries.get(file);
+    if (entry == null) {
+      entries.put(file, new Entry(UNKNOWN, true));
+    } else {
+      entry.processed = true;
+    }
+    dirty = true;
+  }
+
+  synchronized boolean isProcessed(Path file) {
+    Entry entry = entries.get(file);
+    return entry != null && entry.processed;
+  }
+
+  /**
+   * Returns the last modified time of the file when it was last seen, NULL if not known.
+   */
+  synchronized Long getLastModified(Path file) {
+    Entry entry = entries.get(file);
+    return (entry != null && entry.lastModified != UNKNOWN) ? entry.lastModified : null;
+  }
+
+  synchronized void remove(Path file) {
+    if (entries.remove(file) != null) {
+      dirty = true;
+    }
+  }
+
+  /**
+   * Removes the files that are not in the directory anymore.
+   */
+  synchronized void retainAll(Set<Path> files) {
+    if (entries.keySet().retainAll(files)) {
+      dirty = true;
+    }
+  }
+
+  /**
+   * Keeps the processed mark only on the files accepted by the given predicate, which is given the file and its
+   * last modified time (NULL if not known). It is used to align the index with the offset of the origin, which may
+   * have been reset.
+   */
+  synchronized void retainProcessed(BiPredicate<Path, Long> stillProcessed) {
+    for (Map.Entry<Path, Entry> entry : entries.entrySet()) {
+      Entry value = entry.getValue();
+      if (value.processed) {
+        Long lastModified = (value.lastModified != UNKNOWN) ? value.lastModified : null;
+        if (!stillProcessed.test(entry.getKey(), lastModified)) {
+          value.processed = false;
+          dirty = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the files seen but not processed yet.
+   */
+  synchronized List<Path> getUnprocessed() {
+    List<Path> files = new ArrayList<>();
+    for (Map.Entry<Path, Entry> entry : entries.entrySet()) {
+      if (!entry.getValue().processed) {
+        files.add(entry.getKey());
+      }
+    }
+    return files;
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+}
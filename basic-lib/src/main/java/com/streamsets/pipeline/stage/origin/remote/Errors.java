@@ -41,6 +41,8 @@ public enum Errors implements ErrorCode {
   REMOTE_15("URI: '{}' is invalid. Must begin with 'ftp://' or 'sftp://'"),
   REMOTE_16("Initial file '{}' is invalid: {}"),
   REMOTE_17("Can't resolve credential: {}"),
+  REMOTE_18("Staging directory '{}' does not exist or is not writable"),
+  REMOTE_19("Failed to download file '{}': {}"),
   ;
 
   private final String msg;
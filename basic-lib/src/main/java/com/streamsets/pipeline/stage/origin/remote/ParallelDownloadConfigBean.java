@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.remote;
+
+import com.streamsets.pipeline.api.ConfigDef;
+
+public class ParallelDownloadConfigBean {
+
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "1",
+      label = "Number of Threads",
+      description = "Number of parallel threads that read downloaded files",
+      displayPosition = 60,
+      group = "REMOTE",
+      min = 1
+  )
+  public int numberOfThreads = 1;
+
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "2",
+      label = "Number of Download Sessions",
+      description = "Number of connections to the remote host used to download files in parallel",
+      displayPosition = 70,
+      group = "REMOTE",
+      min = 1
+  )
+  public int numberOfSessions = 2;
+
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "4",
+      label = "Max Prefetched Files",
+      description = "Maximum number of files downloaded ahead of being read",
+      displayPosition = 80,
+      group = "REMOTE",
+      min = 1
+  )
+  public int maxPrefetchedFiles = 4;
+
+  @ConfigDef(
+      required = false,
+      type = ConfigDef.Type.STRING,
+      defaultValue = "",
+      label = "Staging Directory",
+      description = "Local directory for downloaded files until they are read. Uses the temporary directory of " +
+          "the Data Collector if empty",
+      displayPosition = 90,
+      group = "REMOTE"
+  )
+  public String stagingDir = "";
+
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "10",
+      label = "Poll Interval (secs)",
+      description = "Time to wait before listing the remote directory again when no new files were found",
+      displayPosition = 100,
+      group = "REMOTE",
+      min = 1
+  )
+  public int pollInterval = 10;
+
+}
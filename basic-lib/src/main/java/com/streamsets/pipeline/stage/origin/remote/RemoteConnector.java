@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.remote;
+
+import com.streamsets.pipeline.api.Stage;
+import com.streamsets.pipeline.api.StageException;
+import com.streamsets.pipeline.api.credential.CredentialValue;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.auth.StaticUserAuthenticator;
+import org.apache.commons.vfs2.impl.DefaultFileSystemConfigBuilder;
+import org.apache.commons.vfs2.provider.ftp.FtpFileSystemConfigBuilder;
+import org.apache.commons.vfs2.provider.sftp.SftpFileSystemConfigBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+
+/**
+ * Validates the SFTP/FTP configuration shared by the remote download origins and builds the URI and
+ * {@link FileSystemOptions} used to connect.
+ */
+class RemoteConnector {
+  private static final Logger LOG = LoggerFactory.getLogger(RemoteConnector.class);
+  private static final String CONF_PREFIX = "conf.";
+  static final String REMOTE_ADDRESS_CONF = CONF_PREFIX + "remoteAddress";
+
+  private final RemoteDownloadConfigBean conf;
+  private final File knownHostsFile;
+  private final FileSystemOptions options = new FileSystemOptions();
+  private URI remoteURI;
+
+  RemoteConnector(RemoteDownloadConfigBean conf) {
+    this.conf = conf;
+    if (conf.knownHosts != null && !conf.knownHosts.isEmpty()) {
+      this.knownHostsFile = new File(conf.knownHosts);
+    } else {
+      this.knownHostsFile = null;
+    }
+  }
+
+  URI getRemoteURI() {
+    return remoteURI;
+  }
+
+  FileSystemOptions getOptions() {
+    return options;
+  }
+
+  FileObject resolveRemoteDir(FileSystemManager fsManager) throws FileSystemException {
+    return fsManager.resolveFile(remoteURI.toString(), options);
+  }
+
+  void init(Stage.Context context, List<Stage.ConfigIssue> issues) {
+    try {
+      this.remoteURI = new URI(conf.remoteAddress);
+    } catch (Exception ex) {
+      issues.add(context.createConfigIssue(
+          Groups.REMOTE.getLabel(), REMOTE_ADDRESS_CONF, Errors.REMOTE_01, conf.remoteAddress));
+    }
+
+    if (!conf.remoteAddress.startsWith("sftp") && !conf.remoteAddress.startsWith("ftp")) {
+      issues.add(context.createConfigIssue(
+          Groups.REMOTE.getLabel(), REMOTE_ADDRESS_CONF, Errors.REMOTE_15, conf.remoteAddress));
+    }
+
+    try {
+      // If password is not specified, add the username to the URI
+      switch (conf.auth) {
+        case PRIVATE_KEY:
+          String schemeBase = remoteURI.getScheme() + "://";
+          String usernamne = resolveCredential(context, conf.username, "username", issues);
+          remoteURI = new URI(schemeBase + usernamne + "@" + remoteURI.toString().substring(schemeBase.length()));
+          File privateKeyFile = new File(conf.privateKey);
+          if (!privateKeyFile.exists() || !privateKeyFile.isFile() || !privateKeyFile.canRead()) {
+            issues.add(context.createConfigIssue(
+                Groups.CREDENTIALS.getLabel(), CONF_PREFIX + "privateKey", Errors.REMOTE_10, conf.privateKey));
+          } else {
+            if (!remoteURI.getScheme().equals("sftp")) {
+              issues.add(context.createConfigIssue(
+                  Groups.CREDENTIALS.getLabel(), CONF_PREFIX + "privateKey", Errors.REMOTE_11));
+            } else {
+              SftpFileSystemConfigBuilder.getInstance().setPreferredAuthentications(options, "publickey");
+              SftpFileSystemConfigBuilder.getInstance().setIdentities(options, new File[]{privateKeyFile});
+              String privateKeyPassphrase = resolveCredential(
+                context,
+                conf.privateKeyPassphrase,
+                CONF_PREFIX + "privateKeyPassphrase",
+                issues
+              );
+              if (privateKeyPassphrase != null && !privateKeyPassphrase.isEmpty()) {
+                SftpFileSystemConfigBuilder.getInstance()
+                    .setUserInfo(options, new SDCUserInfo(privateKeyPassphrase));
+              }
+            }
+          }
+          break;
+        case PASSWORD:
+          StaticUserAuthenticator auth = new StaticUserAuthenticator(
+            remoteURI.getHost(),
+            resolveCredential(context, conf.username, "username", issues),
+            resolveCredential(context, conf.password, "password", issues)
+          );
+          SftpFileSystemConfigBuilder.getInstance().setPreferredAuthentications(options, "password");
+          DefaultFileSystemConfigBuilder.getInstance().setUserAuthenticator(options, auth);
+          break;
+        default:
+          break;
+      }
+
+      if("ftp".equals(remoteURI.getScheme())) {
+        FtpFileSystemConfigBuilder.getInstance().setPassiveMode(options, true);
+        FtpFileSystemConfigBuilder.getInstance().setUserDirIsRoot(options, conf.userDirIsRoot);
+        if (conf.strictHostChecking) {
+          issues.add(context.createConfigIssue(
+              Groups.CREDENTIALS.getLabel(), CONF_PREFIX + "strictHostChecking", Errors.REMOTE_12));
+        }
+      }
+
+      if ("sftp".equals(remoteURI.getScheme())) {
+        SftpFileSystemConfigBuilder.getInstance().setUserDirIsRoot(options, conf.userDirIsRoot);
+        if (conf.strictHostChecking) {
+          if (knownHostsFile != null) {
+            if (knownHostsFile.exists() && knownHostsFile.isFile() && knownHostsFile.canRead()) {
+              SftpFileSystemConfigBuilder.getInstance().setKnownHosts(options, knownHostsFile);
+              SftpFileSystemConfigBuilder.getInstance().setStrictHostKeyChecking(options, "yes");
+            } else {
+              issues.add(context.createConfigIssue(
+                  Groups.CREDENTIALS.getLabel(), CONF_PREFIX + "knownHosts", Errors.REMOTE_06, knownHostsFile));
+            }
+
+          } else {
+            issues.add(context.createConfigIssue(
+                Groups.CREDENTIALS.getLabel(), CONF_PREFIX +"strictHostChecking", Errors.REMOTE_07));
+          }
+        } else {
+          SftpFileSystemConfigBuilder.getInstance().setStrictHostKeyChecking(options, "no");
+        }
+      }
+    } catch (FileSystemException | URISyntaxException ex) {
+      issues.add(context.createConfigIssue(
+          Groups.REMOTE.getLabel(), REMOTE_ADDRESS_CONF, Errors.REMOTE_08, conf.remoteAddress));
+      LOG.error("Error trying to login to remote host", ex);
+    }
+    validateFilePattern(context, issues);
+  }
+
+  private String resolveCredential(
+      Stage.Context context,
+      CredentialValue credentialValue,
+      String config,
+      List<Stage.ConfigIssue> issues
+  ) {
+    try {
+      return credentialValue.get();
+    } catch (StageException e) {
+      issues.add(context.createConfigIssue(
+        Groups.CREDENTIALS.getLabel(),
+        config,
+        Errors.REMOTE_17,
+        e.toString()
+      ));
+    }
+
+    return null;
+  }
+
+  private void validateFilePattern(Stage.Context context, List<Stage.ConfigIssue> issues) {
+    if (conf.filePattern == null || conf.filePattern.trim().isEmpty()) {
+      issues.add(context.createConfigIssue(
+          Groups.REMOTE.getLabel(), CONF_PREFIX + "filePattern", Errors.REMOTE_13, conf.filePattern));
+    } else {
+      try {
+        globToRegex(conf.filePattern);
+      } catch (IllegalArgumentException ex) {
+        issues.add(context.createConfigIssue(
+            Groups.REMOTE.getLabel(), CONF_PREFIX + "filePattern", Errors.REMOTE_14, conf.filePattern, ex.toString(), ex ));
+      }
+    }
+  }
+
+  /**
+   * Convert a limited file glob into a
+   * simple regex.
+   *
+   * @param glob file specification glob
+   * @return regex.
+   */
+  static String globToRegex(String glob) {
+    if (glob.charAt(0) == '.' || glob.contains("/") || glob.contains("~")) {
+      throw new IllegalArgumentException("Invalid character in file glob");
+    }
+
+    // treat dot as a literal.
+    glob = glob.replace(".", "\\.");
+    glob = glob.replace("*", ".+");
+    glob = glob.replace("?", ".{1}+");
+    return glob;
+  }
+
+  private static class SDCUserInfo implements com.jcraft.jsch.UserInfo {
+
+    private final String passphrase;
+
+    SDCUserInfo(String passphrase) {
+      this.passphrase = passphrase;
+    }
+
+    @Override
+    public String getPassphrase() {
+      return passphrase;
+    }
+
+    @Override
+    public String getPassword() {
+      return null;
+    }
+
+    @Override
+    public boolean promptPassphrase(String message) {
+      return true;
+    }
+
+    @Override
+    public boolean promptYesNo(String message) {
+      return false;
+    }
+
+    @Override
+    public void showMessage(String message) {
+    }
+
+    @Override
+    public boolean promptPassword(String message) {
+      return false;
+    }
+  }
+}
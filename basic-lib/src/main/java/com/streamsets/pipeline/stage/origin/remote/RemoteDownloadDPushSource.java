@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.remote;
+
+import com.streamsets.pipeline.api.ConfigDefBean;
+import com.streamsets.pipeline.api.ConfigGroups;
+import com.streamsets.pipeline.api.ExecutionMode;
+import com.streamsets.pipeline.api.GenerateResourceBundle;
+import com.streamsets.pipeline.api.HideConfigs;
+import com.streamsets.pipeline.api.PushSource;
+import com.streamsets.pipeline.api.StageDef;
+import com.streamsets.pipeline.configurablestage.DPushSource;
+
+@StageDef(
+    version = 1,
+    label = "SFTP FTP Client (Multithreaded)",
+    description = "Uses several SFTP/FTP sessions to download files, and reads them with multiple threads.",
+    icon = "sftp-client.png",
+    execution = ExecutionMode.STANDALONE,
+    recordsByRef = true,
+    resetOffset = true,
+    onlineHelpRefUrl = "index.html#Origins/SFTP.html#task_lfx_fzd_5v"
+)
+@HideConfigs(value = {"conf.dataFormatConfig.verifyChecksum"})
+@GenerateResourceBundle
+@ConfigGroups(Groups.class)
+public class RemoteDownloadDPushSource extends DPushSource {
+
+  @ConfigDefBean
+  public RemoteDownloadConfigBean conf;
+
+  @ConfigDefBean
+  public ParallelDownloadConfigBean parallelConf;
+
+  @Override
+  protected PushSource createPushSource() {
+    return new RemoteDownloadPushSource(conf, parallelConf);
+  }
+}
@@ -0,0 +1,666 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.remote;
+
+import com.google.common.base.Throwables;
+import com.streamsets.pipeline.api.BatchContext;
+import com.streamsets.pipeline.api.BatchMaker;
+import com.streamsets.pipeline.api.FileRef;
+import com.streamsets.pipeline.api.OnRecordError;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.StageException;
+import com.streamsets.pipeline.api.base.BasePushSource;
+import com.streamsets.pipeline.api.base.OnRecordErrorException;
+import com.streamsets.pipeline.api.ext.io.ObjectLengthException;
+import com.streamsets.pipeline.api.ext.io.OverrunException;
+import com.streamsets.pipeline.api.impl.Utils;
+import com.streamsets.pipeline.config.DataFormat;
+import com.streamsets.pipeline.lib.executor.SafeScheduledExecutorService;
+import com.streamsets.pipeline.lib.io.fileref.FileRefUtil;
+import com.streamsets.pipeline.lib.io.fileref.LocalFileRef;
+import com.streamsets.pipeline.lib.parser.DataParser;
+import com.streamsets.pipeline.lib.parser.DataParserException;
+import com.streamsets.pipeline.lib.parser.RecoverableDataParserException;
+import com.streamsets.pipeline.stage.common.DefaultErrorRecordHandler;
+import com.streamsets.pipeline.stage.common.ErrorRecordHandler;
+import com.streamsets.pipeline.stage.common.HeaderAttributeConstants;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.vfs2.FileContent;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSelectInfo;
+import org.apache.commons.vfs2.FileSelector;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.NameScope;
+import org.apache.commons.vfs2.impl.StandardFileSystemManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static com.streamsets.pipeline.stage.origin.lib.DataFormatParser.DATA_FORMAT_CONFIG_PREFIX;
+
+/**
+ * Multithreaded variant of {@link RemoteDownloadSource}.
+ * <p/>
+ * The remote directory is listed on the produce thread. Listed files are downloaded to a local staging directory by
+ * several download sessions, each one with its own connection, while the pipeline runner threads read the files
+ * already downloaded. At most 'maxPrefetchedFiles' files are staged at a time. Files are read in (last modified,
+ * name) order but several files are read at once, see {@link RemoteOffsetTracker} for how offsets are kept.
+ */
+public class RemoteDownloadPushSource extends BasePushSource {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RemoteDownloadPushSource.class);
+  private static final String THREAD_PREFIX = "remote-download";
+  private static final String STAGING_DIR_PREFIX = "sdc-remote-download";
+  private static final String STAGING_DIR_CONF = "parallelConf.stagingDir";
+  private static final long QUEUE_POLL_MILLIS = 1000;
+  private static final long WORKER_POLL_MILLIS = 100;
+
+  private final RemoteDownloadConfigBean conf;
+  private final ParallelDownloadConfigBean parallelConf;
+  private final RemoteConnector connector;
+  private final File errorArchive;
+
+  private final BlockingQueue<PendingFile> downloadQueue = new LinkedBlockingQueue<>();
+  private final BlockingQueue<PendingFile> readyQueue = new PriorityBlockingQueue<>(
+      11,
+      (f1, f2) -> RemoteOffsetTracker.FILE_ORDER.compare(f1.file, f2.file)
+  );
+  private final Semaphore prefetchPermits;
+
+  private URI remoteURI;
+  private StandardFileSystemManager listingManager;
+  private FileObject remoteDir;
+  private double rateLimit;
+  private RemoteOffsetTracker offsetTracker;
+  private Path stagingDir;
+  private ExecutorService executorService;
+
+  public RemoteDownloadPushSource(RemoteDownloadConfigBean conf, ParallelDownloadConfigBean parallelConf) {
+    this.conf = conf;
+    this.parallelConf = parallelConf;
+    this.connector = new RemoteConnector(conf);
+    this.prefetchPermits = new Semaphore(parallelConf.maxPrefetchedFiles);
+    if (conf.errorArchiveDir != null && !conf.errorArchiveDir.isEmpty()) {
+      this.errorArchive = new File(conf.errorArchiveDir);
+    } else {
+      this.errorArchive = null;
+    }
+  }
+
+  private static class PendingFile {
+    final RemoteFile file;
+    final String startOffset;
+    Path stagedPath;
+    Map<String, Object> metadata;
+
+    PendingFile(RemoteFile file, String startOffset) {
+      this.file = file;
+      this.startOffset = startOffset;
+    }
+  }
+
+  @Override
+  protected List<ConfigIssue> init() {
+    List<ConfigIssue> issues = super.init();
+
+    conf.dataFormatConfig.checkForInvalidAvroSchemaLookupMode(
+        conf.dataFormat,
+        "conf.dataFormatConfig",
+        getContext(),
+        issues
+    );
+
+    conf.dataFormatConfig.init(
+        getContext(),
+        conf.dataFormat,
+        Groups.REMOTE.getLabel(),
+        DATA_FORMAT_CONFIG_PREFIX,
+        issues
+    );
+
+    if (!StringUtils.isEmpty(parallelConf.stagingDir)) {
+      File dir = new File(parallelConf.stagingDir);
+      if (!dir.isDirectory() || !dir.canWrite()) {
+        issues.add(getContext().createConfigIssue(
+            Groups.REMOTE.getLabel(), STAGING_DIR_CONF, Errors.REMOTE_18, parallelConf.stagingDir));
+      }
+    }
+
+    connector.init(getContext(), issues);
+    if (issues.isEmpty()) {
+      try {
+        // To ensure we can connect, else we fail validation.
+        remoteURI = connector.getRemoteURI();
+        listingManager = new StandardFileSystemManager();
+        listingManager.init();
+        remoteDir = connector.resolveRemoteDir(listingManager);
+      } catch (FileSystemException ex) {
+        issues.add(getContext().createConfigIssue(
+            Groups.REMOTE.getLabel(), RemoteConnector.REMOTE_ADDRESS_CONF, Errors.REMOTE_08, conf.remoteAddress));
+        LOG.error("Error trying to login to remote host", ex);
+      }
+    }
+    if (issues.isEmpty() && conf.dataFormat == DataFormat.WHOLE_FILE) {
+      rateLimit = FileRefUtil.evaluateAndGetRateLimit(
+          FileRefUtil.createElEvalForRateLimit(getContext()),
+          getContext().createELVars(),
+          conf.dataFormatConfig.rateLimit
+      );
+    }
+    offsetTracker = new RemoteOffsetTracker(getContext());
+    return issues;
+  }
+
+  @Override
+  public int getNumberOfThreads() {
+    return parallelConf.numberOfThreads;
+  }
+
+  @Override
+  public void produce(Map<String, String> lastOffsets, int maxBatchSize) throws StageException {
+    int batchSize = Math.min(maxBatchSize, conf.basic.maxBatchSize);
+    offsetTracker.init(lastOffsets, lastOffsets == null || lastOffsets.isEmpty() ? getInitialOffset() : null);
+    try {
+      stagingDir = createStagingDir();
+      executorService = new SafeScheduledExecutorService(
+          parallelConf.numberOfSessions + parallelConf.numberOfThreads,
+          THREAD_PREFIX
+      );
+      ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executorService);
+
+      List<Future<Void>> allFutures = new ArrayList<>();
+      for (int i = 0; i < parallelConf.numberOfSessions; i++) {
+        allFutures.add(completionService.submit(new DownloadSession()));
+      }
+      for (int i = 0; i < parallelConf.numberOfThreads; i++) {
+        allFutures.add(completionService.submit(new StagedFileReader(batchSize)));
+      }
+
+      long nextListing = 0;
+      while (!getContext().isStopped()) {
+        if (downloadQueue.isEmpty() && System.currentTimeMillis() >= nextListing) {
+          if (queueFiles() == 0) {
+            nextListing = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(parallelConf.pollInterval);
+          }
+        }
+        checkWorkerStatus(completionService);
+      }
+
+      for (Future<Void> future : allFutures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          LOG.error("Error while waiting for the download and read threads to complete: {}", e.getMessage(), e);
+        } catch (InterruptedException e) {
+          LOG.error("Interrupted while waiting for the download and read threads to complete", e);
+          Thread.currentThread().interrupt();
+        }
+      }
+    } finally {
+      shutdownExecutorIfNeeded();
+      downloadQueue.clear();
+      readyQueue.clear();
+      if (stagingDir != null) {
+        FileUtils.deleteQuietly(stagingDir.toFile());
+        stagingDir = null;
+      }
+    }
+  }
+
+  private Offset getInitialOffset() throws StageException {
+    if (StringUtils.isEmpty(conf.initialFileToProcess)) {
+      return null;
+    }
+    try {
+      FileObject initialFile = remoteDir.resolveFile(conf.initialFileToProcess, NameScope.DESCENDENT);
+      return new Offset(
+          initialFile.getName().getPath(),
+          initialFile.getContent().getLastModifiedTime(),
+          RemoteOffsetTracker.ZERO
+      );
+    } catch (FileSystemException e) {
+      throw new StageException(Errors.REMOTE_16, conf.initialFileToProcess, e.toString(), e);
+    }
+  }
+
+  private Path createStagingDir() throws StageException {
+    try {
+      if (StringUtils.isEmpty(parallelConf.stagingDir)) {
+        return Files.createTempDirectory(STAGING_DIR_PREFIX);
+      }
+      return Files.createTempDirectory(Paths.get(parallelConf.stagingDir), STAGING_DIR_PREFIX);
+    } catch (IOException ex) {
+      throw new StageException(Errors.REMOTE_18, parallelConf.stagingDir, ex);
+    }
+  }
+
+  /**
+   * Checks whether any of the download or read threads completed, and whether there is any error to handle.
+   * @throws StageException if thrown by one of the threads (if the error handling is stop pipeline)
+   */
+  private void checkWorkerStatus(ExecutorCompletionService<Void> completionService) throws StageException {
+    Future<Void> future;
+    try {
+      future = completionService.poll(WORKER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      LOG.error("Thread interrupted", e);
+      Thread.currentThread().interrupt();
+      return;
+    }
+    if (future != null) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        LOG.error("Thread interrupted", e);
+      } catch (ExecutionException e) {
+        Throwable cause = Throwables.getRootCause(e);
+        if (cause instanceof StageException) {
+          throw (StageException) cause;
+        } else {
+          LOG.error("Internal Error. {}", e);
+          throw new StageException(Errors.REMOTE_05, e.toString(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Lists the remote directory and queues the files not read yet for download, in (last modified, name) order.
+   * @return the number of files queued
+   */
+  private int queueFiles() throws StageException {
+    List<RemoteFile> files = new ArrayList<>();
+    try {
+      FileSelector selector = new FileSelector() {
+        @Override
+        public boolean includeFile(FileSelectInfo fileInfo) throws Exception {
+          return true;
+        }
+
+        @Override
+        public boolean traverseDescendents(FileSelectInfo fileInfo) throws Exception {
+          return conf.processSubDirectories;
+        }
+      };
+
+      FileObject[] theFiles;
+      // get files from current directory.
+      remoteDir.refresh();
+      theFiles = remoteDir.getChildren();
+
+      if (conf.processSubDirectories) {
+        // append files from subdirectories.
+        theFiles = (FileObject[]) ArrayUtils.addAll(theFiles, remoteDir.findFiles(selector));
+      }
+
+      String fileRegex = RemoteConnector.globToRegex(conf.filePattern);
+      for (FileObject remoteFile : theFiles) {
+        //check if base name matches - not full path.
+        if (remoteFile.getType() == FileType.FILE && remoteFile.getName().getBaseName().matches(fileRegex)) {
+          long lastModified = remoteFile.getContent().getLastModifiedTime();
+          files.add(new RemoteFile(remoteFile.getName().getPath(), lastModified, remoteFile));
+        }
+      }
+    } catch (FileSystemException ex) {
+      LOG.error("Error while listing remote directory '{}'", remoteURI, ex);
+      if (getContext().getOnErrorRecord() == OnRecordError.STOP_PIPELINE) {
+        throw new StageException(Errors.REMOTE_05, ex.toString(), ex);
+      }
+      return 0;
+    }
+
+    Collections.sort(files, RemoteOffsetTracker.FILE_ORDER);
+    int queued = 0;
+    for (RemoteFile file : files) {
+      String startOffset = offsetTracker.dispatch(file);
+      if (startOffset != null) {
+        downloadQueue.add(new PendingFile(file, startOffset));
+        queued++;
+      }
+    }
+    return queued;
+  }
+
+  private class DownloadSession implements Callable<Void> {
+
+    @Override
+    public Void call() throws Exception {
+      StandardFileSystemManager manager = new StandardFileSystemManager();
+      try {
+        manager.init();
+        FileObject sessionDir = connector.resolveRemoteDir(manager);
+        while (!getContext().isStopped()) {
+          PendingFile pending = downloadQueue.poll(QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+          if (pending == null) {
+            continue;
+          }
+          // bounds the number of files downloaded but not read yet
+          boolean acquired = false;
+          while (!acquired && !getContext().isStopped()) {
+            acquired = prefetchPermits.tryAcquire(QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+          }
+          if (!acquired) {
+            break;
+          }
+          // the permit goes to the reader with the file, it is released here whenever the file is not queued
+          boolean queued = false;
+          try {
+            download(sessionDir, pending);
+            readyQueue.add(pending);
+            queued = true;
+          } catch (IOException ex) {
+            handleDownloadError(pending, ex);
+          } finally {
+            if (!queued) {
+              deleteStagedFile(pending);
+              prefetchPermits.release();
+            }
+          }
+        }
+      } finally {
+        manager.close();
+      }
+      return null;
+    }
+
+    private void download(FileObject sessionDir, PendingFile pending) throws IOException {
+      RemoteFile file = pending.file;
+      FileObject remoteObject = sessionDir.getFileSystem().resolveFile(file.filename);
+      try {
+        FileContent content = remoteObject.getContent();
+        if (conf.dataFormat == DataFormat.WHOLE_FILE) {
+          Map<String, Object> metadata = new HashMap<>(content.getAttributes());
+          metadata.put(RemoteDownloadSource.SIZE, content.getSize());
+          metadata.put(RemoteDownloadSource.LAST_MODIFIED_TIME, content.getLastModifiedTime());
+          metadata.put(RemoteDownloadSource.CONTENT_TYPE, content.getContentInfo().getContentType());
+          metadata.put(RemoteDownloadSource.CONTENT_ENCODING, content.getContentInfo().getContentEncoding());
+          metadata.put(HeaderAttributeConstants.FILE, file.filename);
+          metadata.put(HeaderAttributeConstants.FILE_NAME, FilenameUtils.getName(file.filename));
+          metadata.put(RemoteDownloadSource.REMOTE_URI, remoteURI.toString());
+          pending.metadata = metadata;
+        }
+        pending.stagedPath = Files.createTempFile(stagingDir, "staged-", null);
+        try (InputStream is = content.getInputStream()) {
+          Files.copy(is, pending.stagedPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        LOG.debug("Downloaded file '{}'", file.filename);
+      } finally {
+        remoteObject.close();
+      }
+    }
+  }
+
+  private void handleDownloadError(PendingFile pending, IOException ex) throws StageException {
+    LOG.error("Failed to download file '{}'", pending.file.filename, ex);
+    switch (getContext().getOnErrorRecord()) {
+      case DISCARD:
+      case TO_ERROR:
+        // there is no copy of the file to archive, the file is skipped
+        markFinished(pending.file);
+        break;
+      case STOP_PIPELINE:
+        throw new StageException(Errors.REMOTE_19, pending.file.filename, ex.toString(), ex);
+      default:
+        throw new IllegalStateException(Utils.format("Unknown OnError value '{}'",
+            getContext().getOnErrorRecord(), ex));
+    }
+  }
+
+  private class StagedFileReader implements Callable<Void> {
+    private final int batchSize;
+
+    StagedFileReader(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      while (!getContext().isStopped()) {
+        PendingFile pending = readyQueue.poll(QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (pending == null) {
+          continue;
+        }
+        try {
+          read(pending);
+        } finally {
+          deleteStagedFile(pending);
+          prefetchPermits.release();
+        }
+      }
+      return null;
+    }
+
+    private void read(PendingFile pending) throws StageException {
+      RemoteFile file = pending.file;
+      String offset = pending.startOffset;
+      DataParser parser = null;
+      LOG.info("Started reading file: " + file.filename);
+      try {
+        while (!RemoteOffsetTracker.MINUS_ONE.equals(offset) && !getContext().isStopped()) {
+          BatchContext batchContext = getContext().startBatch();
+          ErrorRecordHandler errorRecordHandler = new DefaultErrorRecordHandler(getContext(), batchContext);
+          try {
+            if (parser == null) {
+              parser = createParser(pending, offset);
+            }
+            offset = addRecordsToBatch(parser, file, offset, batchContext.getBatchMaker(), errorRecordHandler);
+          } catch (IOException | DataParserException ex) {
+            if (!handleFatalException(ex, pending, parser, offset)) {
+              // stopped while reading, the file is read again from its last offset
+              return;
+            }
+            // Don't retry reading this file since there can be no records produced.
+            offset = RemoteOffsetTracker.MINUS_ONE;
+          }
+          getContext().processBatch(
+              batchContext,
+              file.filename,
+              new Offset(file.filename, file.lastModified, offset).offsetStr
+          );
+        }
+      } finally {
+        IOUtils.closeQuietly(parser);
+      }
+      if (RemoteOffsetTracker.MINUS_ONE.equals(offset)) {
+        offsetTracker.finish(file);
+      }
+    }
+
+    private String addRecordsToBatch(
+        DataParser parser,
+        RemoteFile remoteFile,
+        String offset,
+        BatchMaker batchMaker,
+        ErrorRecordHandler errorRecordHandler
+    ) throws IOException, StageException {
+      for (int i = 0; i < batchSize; i++) {
+        try {
+          Record record = parser.parse();
+          if (record == null) {
+            //We will return -1 for finished files (It might happen where we are the last offset and another parse
+            // returns null, in that case empty batch is emitted)
+            return RemoteOffsetTracker.MINUS_ONE;
+          }
+          record.getHeader().setAttribute(RemoteDownloadSource.REMOTE_URI, remoteURI.toString());
+          record.getHeader().setAttribute(HeaderAttributeConstants.FILE, remoteFile.filename);
+          record.getHeader().setAttribute(HeaderAttributeConstants.FILE_NAME,
+              FilenameUtils.getName(remoteFile.filename)
+          );
+          record.getHeader().setAttribute(
+              HeaderAttributeConstants.LAST_MODIFIED_TIME,
+              String.valueOf(remoteFile.lastModified)
+          );
+          record.getHeader().setAttribute(HeaderAttributeConstants.OFFSET, offset);
+          batchMaker.addRecord(record);
+          offset = parser.getOffset();
+        } catch (RecoverableDataParserException ex) {
+          // Propagate partially parsed record to error stream
+          Record record = ex.getUnparsedRecord();
+          errorRecordHandler.onError(new OnRecordErrorException(record, ex.getErrorCode(), ex.getParams()));
+        } catch (ObjectLengthException ex) {
+          errorRecordHandler.onError(Errors.REMOTE_02, remoteFile.filename, offset, ex);
+        }
+      }
+      return offset;
+    }
+  }
+
+  private DataParser createParser(PendingFile pending, String offset) throws IOException, DataParserException {
+    String id = new Offset(pending.file.filename, pending.file.lastModified, offset).offsetStr;
+    if (conf.dataFormat == DataFormat.WHOLE_FILE) {
+      FileRef fileRef = new LocalFileRef.Builder()
+          .filePath(pending.stagedPath.toString())
+          .bufferSize(conf.dataFormatConfig.wholeFileMaxObjectLen)
+          .totalSizeInBytes(Files.size(pending.stagedPath))
+          .rateLimit(rateLimit)
+          .createMetrics(true)
+          .build();
+      return conf.dataFormatConfig.getParserFactory().getParser(id, pending.metadata, fileRef);
+    }
+    return conf.dataFormatConfig.getParserFactory().getParser(
+        id,
+        new FileInputStream(pending.stagedPath.toFile()),
+        offset
+    );
+  }
+
+  /**
+   * Handles an error which leaves the file being read in an unknown state.
+   * @return false if the pipeline was stopped while reading, true if the file was handled and is done
+   */
+  private boolean handleFatalException(
+      Exception ex,
+      PendingFile pending,
+      DataParser parser,
+      String offset
+  ) throws StageException {
+    if (ex instanceof ClosedByInterruptException || ex.getCause() instanceof ClosedByInterruptException) {
+      //If the pipeline was stopped, we may get a ClosedByInterruptException while reading avro data.
+      //This is because the thread is interrupted when the pipeline is stopped.
+      return false;
+    }
+    String exOffset = offset;
+    if (ex instanceof OverrunException) {
+      exOffset = String.valueOf(((OverrunException) ex).getStreamOffset());
+    } else if (parser != null) {
+      try {
+        exOffset = parser.getOffset();
+      } catch (IOException ex1) {
+        LOG.debug("Error while getting the offset of file '{}'", pending.file.filename, ex1);
+      }
+    }
+    switch (getContext().getOnErrorRecord()) {
+      case DISCARD:
+        break;
+      case TO_ERROR:
+        // we failed to produce a record, which leaves the input file in an unknown state.
+        archiveToError(pending);
+        break;
+      case STOP_PIPELINE:
+        throw new StageException(Errors.REMOTE_04, pending.file.filename, exOffset, ex);
+      default:
+        throw new IllegalStateException(Utils.format("Unknown OnError value '{}'",
+            getContext().getOnErrorRecord(), ex));
+    }
+    return true;
+  }
+
+  private void archiveToError(PendingFile pending) {
+    if (errorArchive != null && pending.stagedPath != null) {
+      File errorFile = new File(errorArchive, pending.file.filename);
+      if (errorFile.exists()) {
+        errorFile = new File(errorArchive, pending.file.filename + "-" + UUID.randomUUID().toString());
+        LOG.info(pending.file.filename + " is being written out as " + errorFile.getPath() +
+            " as another file of the same name exists");
+      }
+      try {
+        Files.copy(pending.stagedPath, errorFile.toPath());
+      } catch (Exception ex) {
+        LOG.warn("Error while trying to write out error file to " + errorFile.getName());
+      }
+    }
+  }
+
+  private void markFinished(RemoteFile file) {
+    getContext().commitOffset(
+        file.filename,
+        new Offset(file.filename, file.lastModified, RemoteOffsetTracker.MINUS_ONE).offsetStr
+    );
+    offsetTracker.finish(file);
+  }
+
+  private static void deleteStagedFile(PendingFile pending) {
+    if (pending.stagedPath != null) {
+      try {
+        Files.deleteIfExists(pending.stagedPath);
+      } catch (IOException ex) {
+        LOG.warn("Error while deleting staged file '{}'", pending.stagedPath, ex);
+      }
+    }
+  }
+
+  private void shutdownExecutorIfNeeded() {
+    if (executorService != null && !executorService.isTerminated()) {
+      LOG.info("Shutting down executor service");
+      executorService.shutdown();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    LOG.info(Utils.format("Destroying {}", getInfo().getInstanceName()));
+    shutdownExecutorIfNeeded();
+    executorService = null;
+    if (listingManager != null) {
+      listingManager.close();
+      listingManager = null;
+    }
+    remoteDir = null;
+    super.destroy();
+  }
+
+}
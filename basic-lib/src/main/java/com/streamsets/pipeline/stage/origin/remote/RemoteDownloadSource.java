@@ -16,15 +16,12 @@
 package com.streamsets.pipeline.stage.origin.remote;
 
 import com.google.common.base.Optional;
-import com.google.common.base.Preconditions;
 import com.streamsets.pipeline.api.BatchMaker;
 import com.streamsets.pipeline.api.FileRef;
 import com.streamsets.pipeline.api.Record;
-import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.api.StageException;
 import com.streamsets.pipeline.api.base.BaseSource;
 import com.streamsets.pipeline.api.base.OnRecordErrorException;
-import com.streamsets.pipeline.api.credential.CredentialValue;
 import com.streamsets.pipeline.api.el.ELEval;
 import com.streamsets.pipeline.api.el.ELVars;
 import com.streamsets.pipeline.api.ext.io.ObjectLengthException;
@@ -48,15 +45,9 @@ import org.apache.commons.vfs2.FileSelectInfo;
 import org.apache.commons.vfs2.FileSelector;
 import org.apache.commons.vfs2.FileSystem;
 import org.apache.commons.vfs2.FileSystemException;
-import org.apache.commons.vfs2.FileSystemManager;
-import org.apache.commons.vfs2.FileSystemOptions;
 import org.apache.commons.vfs2.FileType;
 import org.apache.commons.vfs2.NameScope;
 import org.apache.commons.vfs2.VFS;
-import org.apache.commons.vfs2.auth.StaticUserAuthenticator;
-import org.apache.commons.vfs2.impl.DefaultFileSystemConfigBuilder;
-import org.apache.commons.vfs2.provider.ftp.FtpFileSystemConfigBuilder;
-import org.apache.commons.vfs2.provider.sftp.SftpFileSystemConfigBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,7 +58,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.nio.channels.ClosedByInterruptException;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -82,9 +72,6 @@ import static com.streamsets.pipeline.stage.origin.lib.DataFormatParser.DATA_FOR
 public class RemoteDownloadSource extends BaseSource {
 
   private static final Logger LOG = LoggerFactory.getLogger(RemoteDownloadSource.class);
-  private static final String OFFSET_DELIMITER = "::";
-  private static final String CONF_PREFIX = "conf.";
-  private static final String REMOTE_ADDRESS_CONF = CONF_PREFIX + "remoteAddress";
   private static final String MINUS_ONE = "-1";
   private static final String ZERO = "0";
 
@@ -98,7 +85,7 @@ public class RemoteDownloadSource extends BaseSource {
 
 
   private final RemoteDownloadConfigBean conf;
-  private final File knownHostsFile;
+  private final RemoteConnector connector;
   private final File errorArchive;
   private final byte[] moveBuffer;
 
@@ -125,16 +112,11 @@ public class RemoteDownloadSource extends BaseSource {
   private InputStream currentStream = null;
   private FileObject remoteDir;
   private DataParser parser;
-  private final FileSystemOptions options = new FileSystemOptions();
   private ErrorRecordHandler errorRecordHandler;
 
   public RemoteDownloadSource(RemoteDownloadConfigBean conf) {
     this.conf = conf;
-    if (conf.knownHosts != null && !conf.knownHosts.isEmpty()) {
-      this.knownHostsFile = new File(conf.knownHosts);
-    } else {
-      this.knownHostsFile = null;
-    }
+    this.connector = new RemoteConnector(conf);
     if (conf.errorArchiveDir != null && !conf.errorArchiveDir.isEmpty()) {
       this.errorArchive = new File(conf.errorArchiveDir);
       this.moveBuffer = new byte[64 * 1024];
@@ -165,103 +147,18 @@ public class RemoteDownloadSource extends BaseSource {
         issues
     );
 
-    try {
-      this.remoteURI = new URI(conf.remoteAddress);
-    } catch (Exception ex) {
-      issues.add(getContext().createConfigIssue(
-          Groups.REMOTE.getLabel(), REMOTE_ADDRESS_CONF, Errors.REMOTE_01, conf.remoteAddress));
-    }
-
-    if (!conf.remoteAddress.startsWith("sftp") && !conf.remoteAddress.startsWith("ftp")) {
-      issues.add(getContext().createConfigIssue(
-          Groups.REMOTE.getLabel(), REMOTE_ADDRESS_CONF, Errors.REMOTE_15, conf.remoteAddress));
-    }
-
-    try {
-      FileSystemManager fsManager = VFS.getManager();
-      // If password is not specified, add the username to the URI
-      switch (conf.auth) {
-        case PRIVATE_KEY:
-          String schemeBase = remoteURI.getScheme() + "://";
-          String usernamne = resolveCredential(conf.username, "username", issues);
-          remoteURI = new URI(schemeBase + usernamne + "@" + remoteURI.toString().substring(schemeBase.length()));
-          File privateKeyFile = new File(conf.privateKey);
-          if (!privateKeyFile.exists() || !privateKeyFile.isFile() || !privateKeyFile.canRead()) {
-            issues.add(getContext().createConfigIssue(
-                Groups.CREDENTIALS.getLabel(), CONF_PREFIX + "privateKey", Errors.REMOTE_10, conf.privateKey));
-          } else {
-            if (!remoteURI.getScheme().equals("sftp")) {
-              issues.add(getContext().createConfigIssue(
-                  Groups.CREDENTIALS.getLabel(), CONF_PREFIX + "privateKey", Errors.REMOTE_11));
-            } else {
-              SftpFileSystemConfigBuilder.getInstance().setPreferredAuthentications(options, "publickey");
-              SftpFileSystemConfigBuilder.getInstance().setIdentities(options, new File[]{privateKeyFile});
-              String privateKeyPassphrase = resolveCredential(
-                conf.privateKeyPassphrase,
-                CONF_PREFIX + "privateKeyPassphrase",
-                issues
-              );
-              if (privateKeyPassphrase != null && !privateKeyPassphrase.isEmpty()) {
-                SftpFileSystemConfigBuilder.getInstance()
-                    .setUserInfo(options, new SDCUserInfo(privateKeyPassphrase));
-              }
-            }
-          }
-          break;
-        case PASSWORD:
-          StaticUserAuthenticator auth = new StaticUserAuthenticator(
-            remoteURI.getHost(),
-            resolveCredential(conf.username, "username", issues),
-            resolveCredential(conf.password, "password", issues)
-          );
-          SftpFileSystemConfigBuilder.getInstance().setPreferredAuthentications(options, "password");
-          DefaultFileSystemConfigBuilder.getInstance().setUserAuthenticator(options, auth);
-          break;
-        default:
-          break;
-      }
-
-      if("ftp".equals(remoteURI.getScheme())) {
-        FtpFileSystemConfigBuilder.getInstance().setPassiveMode(options, true);
-        FtpFileSystemConfigBuilder.getInstance().setUserDirIsRoot(options, conf.userDirIsRoot);
-        if (conf.strictHostChecking) {
-          issues.add(getContext().createConfigIssue(
-              Groups.CREDENTIALS.getLabel(), CONF_PREFIX + "strictHostChecking", Errors.REMOTE_12));
-        }
-      }
-
-      if ("sftp".equals(remoteURI.getScheme())) {
-        SftpFileSystemConfigBuilder.getInstance().setUserDirIsRoot(options, conf.userDirIsRoot);
-        if (conf.strictHostChecking) {
-          if (knownHostsFile != null) {
-            if (knownHostsFile.exists() && knownHostsFile.isFile() && knownHostsFile.canRead()) {
-              SftpFileSystemConfigBuilder.getInstance().setKnownHosts(options, knownHostsFile);
-              SftpFileSystemConfigBuilder.getInstance().setStrictHostKeyChecking(options, "yes");
-            } else {
-              issues.add(getContext().createConfigIssue(
-                  Groups.CREDENTIALS.getLabel(), CONF_PREFIX + "knownHosts", Errors.REMOTE_06, knownHostsFile));
-            }
-
-          } else {
-            issues.add(getContext().createConfigIssue(
-                Groups.CREDENTIALS.getLabel(), CONF_PREFIX +"strictHostChecking", Errors.REMOTE_07));
-          }
-        } else {
-          SftpFileSystemConfigBuilder.getInstance().setStrictHostKeyChecking(options, "no");
-        }
-      }
-
-      if (issues.isEmpty()) {
+    connector.init(getContext(), issues);
+    if (issues.isEmpty()) {
+      try {
         // To ensure we can connect, else we fail validation.
-        remoteDir = fsManager.resolveFile(remoteURI.toString(), options);
+        remoteURI = connector.getRemoteURI();
+        remoteDir = connector.resolveRemoteDir(VFS.getManager());
+      } catch (FileSystemException ex) {
+        issues.add(getContext().createConfigIssue(
+            Groups.REMOTE.getLabel(), RemoteConnector.REMOTE_ADDRESS_CONF, Errors.REMOTE_08, conf.remoteAddress));
+        LOG.error("Error trying to login to remote host", ex);
       }
-
-    } catch (FileSystemException | URISyntaxException ex) {
-      issues.add(getContext().createConfigIssue(
-          Groups.REMOTE.getLabel(), REMOTE_ADDRESS_CONF, Errors.REMOTE_08, conf.remoteAddress));
-      LOG.error("Error trying to login to remote host", ex);
     }
-    validateFilePattern(issues);
     if (issues.isEmpty()) {
       rateLimitElEval = FileRefUtil.createElEvalForRateLimit(getContext());;
       rateLimitElVars = getContext().createELVars();
@@ -269,54 +166,6 @@ public class RemoteDownloadSource extends BaseSource {
     return issues;
   }
 
-  private String resolveCredential(CredentialValue credentialValue, String config, List<ConfigIssue> issues) {
-    try {
-      return credentialValue.get();
-    } catch (StageException e) {
-      issues.add(getContext().createConfigIssue(
-        Groups.CREDENTIALS.getLabel(),
-        config,
-        Errors.REMOTE_17,
-        e.toString()
-      ));
-    }
-
-    return null;
-  }
-
-  private void validateFilePattern(List<ConfigIssue> issues) {
-    if (conf.filePattern == null || conf.filePattern.trim().isEmpty()) {
-      issues.add(getContext().createConfigIssue(
-          Groups.REMOTE.getLabel(), CONF_PREFIX + "filePattern", Errors.REMOTE_13, conf.filePattern));
-    } else {
-      try {
-        globToRegex(conf.filePattern);
-      } catch (IllegalArgumentException ex) {
-        issues.add(getContext().createConfigIssue(
-            Groups.REMOTE.getLabel(), CONF_PREFIX + "filePattern", Errors.REMOTE_14, conf.filePattern, ex.toString(), ex ));
-      }
-    }
-  }
-
-  /**
-   * Convert a limited file glob into a
-   * simple regex.
-   *
-   * @param glob file specification glob
-   * @return regex.
-   */
-  private String globToRegex(String glob) {
-    if (glob.charAt(0) == '.' || glob.contains("/") || glob.contains("~")) {
-      throw new IllegalArgumentException("Invalid character in file glob");
-    }
-
-    // treat dot as a literal.
-    glob = glob.replace(".", "\\.");
-    glob = glob.replace("*", ".+");
-    glob = glob.replace("?", ".{1}+");
-    return glob;
-  }
-
   @Override
   public String produce(String lastSourceOffset, int maxBatchSize, BatchMaker batchMaker) throws StageException {
     final int batchSize = Math.min(maxBatchSize, conf.basic.maxBatchSize);
@@ -575,7 +424,7 @@ public class RemoteDownloadSource extends BaseSource {
       }
 
       //check if base name matches - not full path.
-      if (!remoteFile.getName().getBaseName().matches(globToRegex(conf.filePattern))) {
+      if (!remoteFile.getName().getBaseName().matches(RemoteConnector.globToRegex(conf.filePattern))) {
         continue;
       }
 
@@ -601,7 +450,7 @@ public class RemoteDownloadSource extends BaseSource {
             // Case 3: The file has the same timestamp as the last one we read, but is lexicographically higher, and we have not queued it before.
             (remoteFile.lastModified == currentOffset.timestamp && remoteFile.filename.compareTo(currentOffset.fileName) > 0) ||
             // Case 4: It is the same file as we were reading, but we have not read the whole thing, so queue it again - recovering from a shutdown.
-            remoteFile.filename.equals(currentOffset.fileName) && !currentOffset.offset.equals(MINUS_ONE));
+            remoteFile.filename.equals(currentOffset.fileName) && !currentOffset.getOffset().equals(MINUS_ONE));
   }
 
   @Override
@@ -629,75 +478,4 @@ public class RemoteDownloadSource extends BaseSource {
     }
   }
 
-  // Offset format: Filename::timestamp::offset. I miss case classes here.
-  private class Offset {
-    final String fileName;
-    final long timestamp;
-    private String offset;
-    String offsetStr;
-
-    Offset(String offsetStr) {
-      String[] parts = offsetStr.split(OFFSET_DELIMITER);
-      Preconditions.checkArgument(parts.length == 3);
-      this.offsetStr = offsetStr;
-      this.fileName = parts[0];
-      this.timestamp = Long.parseLong(parts[1]);
-      this.offset = parts[2];
-    }
-
-    Offset(String fileName, long timestamp, String offset) {
-      this.fileName = fileName;
-      this.offset = offset;
-      this.timestamp = timestamp;
-      this.offsetStr = getOffsetStr();
-    }
-
-    void setOffset(String offset) {
-      this.offset = offset;
-      this.offsetStr = getOffsetStr();
-    }
-
-    private String getOffsetStr() {
-      return fileName + OFFSET_DELIMITER + timestamp + OFFSET_DELIMITER + offset;
-    }
-  }
-
-  private static class SDCUserInfo implements com.jcraft.jsch.UserInfo {
-
-    private final String passphrase;
-
-    SDCUserInfo(String passphrase) {
-      this.passphrase = passphrase;
-    }
-
-    @Override
-    public String getPassphrase() {
-      return passphrase;
-    }
-
-    @Override
-    public String getPassword() {
-      return null;
-    }
-
-    @Override
-    public boolean promptPassphrase(String message) {
-      return true;
-    }
-
-    @Override
-    public boolean promptYesNo(String message) {
-      return false;
-    }
-
-    @Override
-    public void showMessage(String message) {
-    }
-
-    @Override
-    public boolean promptPassword(String message) {
-      return false;
-    }
-  }
-
 }
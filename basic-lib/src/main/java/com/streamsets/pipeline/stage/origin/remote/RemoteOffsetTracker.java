@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.remote;
+
+import com.streamsets.pipeline.api.PushSource;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Tracks which remote files were read when several files are read at the same time.
+ * <p/>
+ * Files are handed out in (last modified, name) order. The watermark is the last file such that all files up to it
+ * are done. Files after the watermark have their own offset entry, keyed by file name, which is in the same
+ * Filename::timestamp::offset format as the watermark. An offset of -1 marks a file as done. Entries are removed
+ * once the watermark moves past them, so the offsets only hold the files that were in flight.
+ */
+class RemoteOffsetTracker {
+  static final String WATERMARK_KEY =
+      "$com.streamsets.pipeline.stage.origin.remote.RemoteDownloadPushSource.watermark$";
+  static final String MINUS_ONE = "-1";
+  static final String ZERO = "0";
+
+  static final Comparator<RemoteFile> FILE_ORDER = new Comparator<RemoteFile>() {
+    @Override
+    public int compare(RemoteFile f1, RemoteFile f2) {
+      if (f1.lastModified < f2.lastModified) {
+        return -1;
+      } else if (f1.lastModified > f2.lastModified) {
+        return 1;
+      } else {
+        return f1.filename.compareTo(f2.filename);
+      }
+    }
+  };
+
+  private final PushSource.Context context;
+  private Offset watermark;
+  // per file offsets of the previous run which have not been handed out again yet
+  private final NavigableMap<RemoteFile, Offset> restored = new TreeMap<>(FILE_ORDER);
+  // files handed out and not behind the watermark yet, the value tells whether the file is done
+  private final NavigableMap<RemoteFile, Boolean> dispatched = new TreeMap<>(FILE_ORDER);
+  private final Map<String, RemoteFile> dispatchedByName = new HashMap<>();
+
+  RemoteOffsetTracker(PushSource.Context context) {
+    this.context = context;
+  }
+
+  /**
+   * Restores the state from the last committed offsets, if there are none the given initial offset (if not null)
+   * is the starting point.
+   */
+  synchronized void init(Map<String, String> lastOffsets, Offset initialOffset) {
+    watermark = null;
+    restored.clear();
+    dispatched.clear();
+    dispatchedByName.clear();
+    String watermarkStr = lastOffsets == null ? null : lastOffsets.get(WATERMARK_KEY);
+    if (watermarkStr != null) {
+      watermark = new Offset(watermarkStr);
+    } else if (lastOffsets == null || lastOffsets.isEmpty()) {
+      watermark = initialOffset;
+    }
+    if (lastOffsets != null) {
+      for (Map.Entry<String, String> entry : lastOffsets.entrySet()) {
+        if (WATERMARK_KEY.equals(entry.getKey()) || entry.getValue() == null) {
+          continue;
+        }
+        Offset offset = new Offset(entry.getValue());
+        RemoteFile file = new RemoteFile(offset.fileName, offset.timestamp, null);
+        if (MINUS_ONE.equals(offset.getOffset())) {
+          // done, but files before it may not be, keep it until the watermark moves past it
+          dispatched.put(file, true);
+          dispatchedByName.put(file.filename, file);
+        } else {
+          restored.put(file, offset);
+        }
+      }
+    }
+  }
+
+  synchronized Offset getWatermark() {
+    return watermark;
+  }
+
+  private boolean shouldQueue(RemoteFile file) {
+    if (!isAfterWatermark(file)) {
+      return false;
+    }
+    RemoteFile previous = dispatchedByName.get(file.filename);
+    // a file which is being read, or was read already unless it has been modified since
+    return previous == null || (dispatched.get(previous) && previous.lastModified != file.lastModified);
+  }
+
+  private boolean isAfterWatermark(RemoteFile file) {
+    return watermark == null ||
+        file.lastModified > watermark.timestamp ||
+        (file.lastModified == watermark.timestamp && file.filename.compareTo(watermark.fileName) > 0) ||
+        // the initial file to process, or a file which was not read fully
+        (file.filename.equals(watermark.fileName) && !MINUS_ONE.equals(watermark.getOffset()));
+  }
+
+  /**
+   * Hands out the file if it was not read yet, returning the offset to start reading it from, or null if the file
+   * must not be read. Checking and handing out at once makes sure the watermark never moves past a file handed out.
+   */
+  synchronized String dispatch(RemoteFile file) {
+    if (!shouldQueue(file)) {
+      return null;
+    }
+    RemoteFile previous = dispatchedByName.put(file.filename, file);
+    if (previous != null) {
+      // the file was modified since it was read, its offset entry gets overwritten
+      dispatched.remove(previous);
+    }
+    dispatched.put(file, false);
+
+    String offset = ZERO;
+    Iterator<Map.Entry<RemoteFile, Offset>> iterator = restored.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Offset restoredOffset = iterator.next().getValue();
+      if (restoredOffset.fileName.equals(file.filename)) {
+        if (restoredOffset.timestamp == file.lastModified) {
+          offset = restoredOffset.getOffset();
+        }
+        iterator.remove();
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * Marks the file as done, moving the watermark forward if the file and all files before it are done. The file's
+   * own -1 offset must have been committed already.
+   */
+  synchronized void finish(RemoteFile file) {
+    if (dispatched.containsKey(file)) {
+      dispatched.put(file, true);
+    }
+    List<String> passed = new ArrayList<>();
+    RemoteFile last = null;
+    while (!dispatched.isEmpty() && dispatched.firstEntry().getValue()) {
+      last = dispatched.pollFirstEntry().getKey();
+      dispatchedByName.remove(last.filename);
+      passed.add(last.filename);
+    }
+    if (last != null) {
+      if (isAfterWatermark(last)) {
+        watermark = new Offset(last.filename, last.lastModified, MINUS_ONE);
+        context.commitOffset(WATERMARK_KEY, watermark.offsetStr);
+      }
+      // entries of files which were not found again are stale once the watermark has moved past them
+      while (!restored.isEmpty() && !isAfterWatermark(restored.firstKey())) {
+        RemoteFile stale = restored.pollFirstEntry().getKey();
+        if (!dispatchedByName.containsKey(stale.filename)) {
+          passed.add(stale.filename);
+        }
+      }
+      for (String fileName : passed) {
+        context.commitOffset(fileName, null);
+      }
+    }
+  }
+
+}
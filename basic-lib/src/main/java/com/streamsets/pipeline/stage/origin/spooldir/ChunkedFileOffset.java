@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.spooldir;
+
+import com.google.common.io.BaseEncoding;
+import com.streamsets.pipeline.api.impl.Utils;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Offset of a file read in chunks, see {@link FileChunk}.
+ * <p/>
+ * It keeps the chunk size the file was split with, which chunks were fully read and the offset within the chunks
+ * read partially, so a file is resumed exactly where it was left. The string form is
+ * 'chunks:&lt;chunk size&gt;:&lt;hex bitmap of the chunks read&gt;:&lt;chunk&gt;=&lt;offset&gt;,...'.
+ * <p/>
+ * This class is not thread safe.
+ */
+final class ChunkedFileOffset {
+  private static final String PREFIX = "chunks:";
+  private static final String SEPARATOR = ":";
+  private static final String CHUNK_SEPARATOR = ",";
+  private static final String OFFSET_SEPARATOR = "=";
+  private static final String ZERO = "0";
+  private static final String MINUS_ONE = "-1";
+  private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+  private final long chunkSize;
+  private final BitSet done;
+  private final Map<Integer, String> offsets;
+
+  ChunkedFileOffset(long chunkSize) {
+    this(chunkSize, new BitSet(), new TreeMap<>());
+  }
+
+  private ChunkedFileOffset(long chunkSize, BitSet done, Map<Integer, String> offsets) {
+    this.chunkSize = chunkSize;
+    this.done = done;
+    this.offsets = offsets;
+  }
+
+  /**
+   * Returns true if the offset is the offset of a file read in chunks.
+   */
+  static boolean isChunked(String offset) {
+    return offset != null && offset.startsWith(PREFIX);
+  }
+
+  /**
+   * Parses the offset of a file.
+   * <p/>
+   * An offset of a file read as a whole, other than zero, is kept as the offset of a single chunk with the whole file
+   * so the file is resumed from it.
+   * @param chunkSize the chunk size to split the file with if it was not read yet
+   */
+  static ChunkedFileOffset parse(String offset, long chunkSize) {
+    if (offset == null || ZERO.equals(offset)) {
+      return new ChunkedFileOffset(chunkSize);
+    }
+    if (!isChunked(offset)) {
+      ChunkedFileOffset single = new ChunkedFileOffset(0);
+      single.offsets.put(0, offset);
+      return single;
+    }
+    String[] parts = offset.substring(PREFIX.length()).split(SEPARATOR, -1);
+    Utils.checkArgument(parts.length == 3, Utils.formatL("Invalid chunked file offset '{}'", offset));
+    BitSet done = BitSet.valueOf(HEX.decode(parts[1]));
+    Map<Integer, String> offsets = new TreeMap<>();
+    if (!parts[2].isEmpty()) {
+      for (String chunkOffset : parts[2].split(CHUNK_SEPARATOR)) {
+        int separator = chunkOffset.indexOf(OFFSET_SEPARATOR);
+        Utils.checkArgument(separator > 0, Utils.formatL("Invalid chunked file offset '{}'", offset));
+        offsets.put(
+            Integer.parseInt(chunkOffset.substring(0, separator)),
+            chunkOffset.substring(separator + OFFSET_SEPARATOR.length())
+        );
+      }
+    }
+    return new ChunkedFileOffset(Long.parseLong(parts[0]), done, offsets);
+  }
+
+  long getChunkSize() {
+    return chunkSize;
+  }
+
+  boolean isDone(int chunk) {
+    return done.get(chunk);
+  }
+
+  /**
+   * Returns the offset to resume the given chunk from.
+   */
+  String getOffset(int chunk) {
+    String offset = offsets.get(chunk);
+    return (offset != null) ? offset : ZERO;
+  }
+
+  /**
+   * Records the offset read up to in a chunk, -1 if the chunk was fully read.
+   */
+  void update(int chunk, String offset) {
+    if (MINUS_ONE.equals(offset)) {
+      done.set(chunk);
+      offsets.remove(chunk);
+    } else {
+      offsets.put(chunk, offset);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(PREFIX)
+        .append(chunkSize)
+        .append(SEPARATOR)
+        .append(HEX.encode(done.toByteArray()))
+        .append(SEPARATOR);
+    String separator = "";
+    for (Map.Entry<Integer, String> entry : offsets.entrySet()) {
+      sb.append(separator).append(entry.getKey()).append(OFFSET_SEPARATOR).append(entry.getValue());
+      separator = CHUNK_SEPARATOR;
+    }
+    return sb.toString();
+  }
+}
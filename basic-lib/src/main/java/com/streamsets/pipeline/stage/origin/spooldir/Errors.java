@@ -50,6 +50,12 @@ public enum Errors implements ErrorCode {
   SPOOLDIR_30("RegEx {} contains {} groups but the field Path to group mapping specifies group {}."),
   SPOOLDIR_31("Error parsing grok pattern {}, reason {}"),
   SPOOLDIR_32("File Pattern cannot be empty"),
+  SPOOLDIR_33("Files cannot be split into chunks: {}"),
+  SPOOLDIR_34("Number of threads cannot be less than 1"),
+  SPOOLDIR_35("Chunk size cannot be less than 1 MB"),
+  SPOOLDIR_36("File '{}' was being read in chunks, enable Split Files into Chunks to resume it"),
+  SPOOLDIR_37("Chunk reader failed: {}"),
+  SPOOLDIR_38("Full scan interval cannot be less than 1 minute"),
   ;
 
   private final String msg;
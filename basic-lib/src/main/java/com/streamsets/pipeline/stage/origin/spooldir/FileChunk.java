@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.spooldir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A byte range of a file which starts at the beginning of a line and ends right after a '\n' (or at the end of the
+ * file), so it can be parsed on its own by a line based parser.
+ */
+final class FileChunk {
+  private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+  private final int index;
+  private final long start;
+  private final long end;
+
+  FileChunk(int index, long start, long end) {
+    this.index = index;
+    this.start = start;
+    this.end = end;
+  }
+
+  int getIndex() {
+    return index;
+  }
+
+  long getStart() {
+    return start;
+  }
+
+  long getEnd() {
+    return end;
+  }
+
+  long getLength() {
+    return end - start;
+  }
+
+  /**
+   * Splits a file into chunks of about the given size, each chunk is extended up to the end of the line it would
+   * cut. The chunks of a file are always the same for the same chunk size.
+   * @param chunkSize the size of the chunks in bytes, 0 or less for a single chunk with the whole file
+   */
+  static List<FileChunk> split(Path file, long chunkSize) throws IOException {
+    List<FileChunk> chunks = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+      long start = 0;
+      while (start < size) {
+        long end = size;
+        if (chunkSize > 0 && size - start > chunkSize) {
+          end = nextLineStart(channel, start + chunkSize - 1, size, buffer);
+        }
+        chunks.add(new FileChunk(chunks.size(), start, end));
+        start = end;
+      }
+    }
+    return chunks;
+  }
+
+  // returns the position after the first '\n' at or after the given position, the size if there is none
+  private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer buffer)
+      throws IOException {
+    while (position < size) {
+      buffer.clear();
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += read;
+    }
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return "FileChunk{index=" + index + ", start=" + start + ", end=" + end + '}';
+  }
+}
@@ -123,6 +123,119 @@ public class SpoolDirConfigBean {
   )
   public int overrunLimit;
 
+  @ConfigDef(
+      required = false,
+      type = ConfigDef.Type.BOOLEAN,
+      defaultValue = "false",
+      label = "Split Files into Chunks",
+      description = "Splits each file into chunks that end on line boundaries and reads the chunks in parallel. " +
+          "Use only with data where records do not span lines.",
+      displayPosition = 80,
+      group = "FILES",
+      dependsOn = "dataFormat",
+      triggeredByValue = { "TEXT", "JSON", "DELIMITED", "LOG"}
+  )
+  public boolean splitFiles = false;
+
+  @ConfigDef(
+      required = false,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "1",
+      label = "Number of Threads",
+      description = "Number of threads that read chunks in parallel",
+      displayPosition = 81,
+      group = "FILES",
+      dependsOn = "splitFiles",
+      triggeredByValue = "true",
+      min = 1,
+      max = Integer.MAX_VALUE
+  )
+  public int numberOfThreads = 1;
+
+  @ConfigDef(
+      required = false,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "64",
+      label = "Chunk Size (MB)",
+      description = "Approximate size of the chunks, a chunk is extended to the end of the line it would cut",
+      displayPosition = 82,
+      group = "FILES",
+      dependsOn = "splitFiles",
+      triggeredByValue = "true",
+      min = 1,
+      max = Integer.MAX_VALUE
+  )
+  public int chunkSizeMB = 64;
+
+  @ConfigDef(
+      required = false,
+      type = ConfigDef.Type.BOOLEAN,
+      defaultValue = "false",
+      label = "Preserve Record Order",
+      description = "Sends the records of a file in the order of the file. Chunks are still parsed in parallel but " +
+          "batches are sent one at a time.",
+      displayPosition = 83,
+      group = "FILES",
+      dependsOn = "splitFiles",
+      triggeredByValue = "true"
+  )
+  public boolean preserveChunkOrder = false;
+
+  @ConfigDef(
+      required = false,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "100",
+      label = "Max Buffered Batches per Chunk",
+      description = "Max number of parsed batches kept for a chunk while waiting for the chunks before it",
+      displayPosition = 84,
+      group = "FILES",
+      dependsOn = "preserveChunkOrder",
+      triggeredByValue = "true",
+      min = 1,
+      max = Integer.MAX_VALUE
+  )
+  public int maxBufferedBatches = 100;
+
+  @ConfigDef(
+      required = false,
+      type = ConfigDef.Type.BOOLEAN,
+      defaultValue = "false",
+      label = "Incremental File Discovery",
+      description = "Finds new files from file system events instead of listing the directory every few seconds. " +
+          "Processed files are not looked up again, so a processed file that is modified is not read again.",
+      displayPosition = 90,
+      group = "FILES"
+  )
+  public boolean incrementalDiscovery = false;
+
+  @ConfigDef(
+      required = false,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "60",
+      label = "Full Scan Interval (mins)",
+      description = "How often the whole directory is listed to find the files missed by the file system events",
+      displayPosition = 91,
+      group = "FILES",
+      dependsOn = "incrementalDiscovery",
+      triggeredByValue = "true",
+      min = 1
+  )
+  public long fullScanIntervalMins = 60;
+
+  @ConfigDef(
+      required = false,
+      type = ConfigDef.Type.STRING,
+      defaultValue = "",
+      label = "Index Directory",
+      description = "Directory to keep the index of the files seen in the directory, so a restart does not wait for " +
+          "a full scan. Leave empty to keep the index in memory only.",
+      displayPosition = 92,
+      group = "FILES",
+      dependsOn = "incrementalDiscovery",
+      triggeredByValue = "true"
+  )
+  public String indexDir = "";
+
   @ConfigDef(
       required = true,
       type = ConfigDef.Type.NUMBER,
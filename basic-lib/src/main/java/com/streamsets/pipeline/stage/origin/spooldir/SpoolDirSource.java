@@ -16,7 +16,9 @@
 package com.streamsets.pipeline.stage.origin.spooldir;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 import com.streamsets.pipeline.api.BatchContext;
 import com.streamsets.pipeline.api.BatchMaker;
 import com.streamsets.pipeline.api.FileRef;
@@ -35,8 +37,14 @@ import com.streamsets.pipeline.api.lineage.EndPointType;
 import com.streamsets.pipeline.api.lineage.LineageEvent;
 import com.streamsets.pipeline.api.lineage.LineageEventType;
 import com.streamsets.pipeline.api.lineage.LineageSpecificAttribute;
+import com.streamsets.pipeline.config.Compression;
+import com.streamsets.pipeline.config.CsvHeader;
+import com.streamsets.pipeline.config.JsonMode;
+import com.streamsets.pipeline.config.OnParseError;
 import com.streamsets.pipeline.config.PostProcessingOptions;
 import com.streamsets.pipeline.lib.dirspooler.DirectorySpooler;
+import com.streamsets.pipeline.lib.executor.SafeScheduledExecutorService;
+import com.streamsets.pipeline.lib.io.OverrunByteLineReader;
 import com.streamsets.pipeline.lib.io.fileref.FileRefUtil;
 import com.streamsets.pipeline.lib.io.fileref.LocalFileRef;
 import com.streamsets.pipeline.lib.parser.DataParser;
@@ -46,6 +54,7 @@ import com.streamsets.pipeline.lib.parser.RecoverableDataParserException;
 import com.streamsets.pipeline.stage.common.DefaultErrorRecordHandler;
 import com.streamsets.pipeline.stage.common.ErrorRecordHandler;
 import com.streamsets.pipeline.stage.common.HeaderAttributeConstants;
+import com.streamsets.pipeline.stage.origin.lib.DataParserFormatConfig;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,9 +62,14 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
@@ -63,6 +77,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 public class SpoolDirSource extends BasePushSource {
@@ -75,6 +96,11 @@ public class SpoolDirSource extends BasePushSource {
   static final String PERMISSIONS = "permissions";
 
   private static final String BASE_DIR = "baseDir";
+  static final String CHUNK_START_OFFSET = "chunkStartOffset";
+  private static final String CHUNK_READER_THREAD_PREFIX = "spooldir-chunk-reader";
+  private static final long MB = 1024 * 1024;
+  private static final long QUEUE_POLL_MILLIS = 1000;
+  private static final long WORKER_POLL_MILLIS = 100;
 
   private static final int MIN_OVERRUN_LIMIT = 64 * 1024;
   public static final String SPOOLDIR_CONFIG_BEAN_PREFIX = "conf.";
@@ -102,6 +128,8 @@ public class SpoolDirSource extends BasePushSource {
 
   private long totalFiles;
 
+  private final BlockingQueue<ChunkTask> chunkQueue = new LinkedBlockingQueue<>();
+  private ExecutorService executorService;
 
   public SpoolDirSource(SpoolDirConfigBean conf) {
     this.conf = conf;
@@ -109,7 +137,7 @@ public class SpoolDirSource extends BasePushSource {
 
   @Override
   public int getNumberOfThreads() {
-    return ONE;
+    return conf.splitFiles ? conf.numberOfThreads : ONE;
   }
 
   @Override
@@ -174,6 +202,14 @@ public class SpoolDirSource extends BasePushSource {
 
     validateInitialFileToProcess(issues);
 
+    if (conf.splitFiles) {
+      validateSplitFiles(issues);
+    }
+
+    if (conf.incrementalDiscovery) {
+      validateIncrementalDiscovery(issues);
+    }
+
     if (conf.errorArchiveDir != null && !conf.errorArchiveDir.isEmpty()) {
       validateDir(
           conf.errorArchiveDir,
@@ -245,6 +281,13 @@ public class SpoolDirSource extends BasePushSource {
       builder.setContext(getContext());
       this.useLastModified = conf.useLastModified == FileOrdering.TIMESTAMP;
       builder.setUseLastModifiedTimestamp(useLastModified);
+      if (conf.incrementalDiscovery) {
+        builder.setIncrementalDiscovery(true);
+        builder.setFullScanInterval(conf.fullScanIntervalMins);
+        if (conf.indexDir != null && !conf.indexDir.isEmpty()) {
+          builder.setIndexFile(getIndexFile().getAbsolutePath());
+        }
+      }
       spooler = builder.build();
       spooler.init(conf.initialFileToProcess);
       rateLimitElEval = FileRefUtil.createElEvalForRateLimit(getContext());;
@@ -264,6 +307,35 @@ public class SpoolDirSource extends BasePushSource {
     return issues;
   }
 
+  private void validateIncrementalDiscovery(List<ConfigIssue> issues) {
+    if (conf.fullScanIntervalMins < 1) {
+      issues.add(
+          getContext().createConfigIssue(
+              Groups.FILES.name(),
+              SPOOLDIR_CONFIG_BEAN_PREFIX + "fullScanIntervalMins",
+              Errors.SPOOLDIR_38
+          )
+      );
+    }
+    if (conf.indexDir != null && !conf.indexDir.isEmpty()) {
+      validateDir(
+          conf.indexDir,
+          Groups.FILES.name(),
+          SPOOLDIR_CONFIG_BEAN_PREFIX + "indexDir",
+          issues,
+          true
+      );
+    }
+  }
+
+  // one index per origin, the index directory may be shared
+  private File getIndexFile() {
+    return new File(
+        conf.indexDir,
+        getContext().getPipelineId() + "-" + getContext().getStageInfo().getInstanceName() + ".index"
+    ).getAbsoluteFile();
+  }
+
   private boolean validateDir(
       String dir,
       String group,
@@ -348,8 +420,85 @@ public class SpoolDirSource extends BasePushSource {
     }
   }
 
+  private void validateSplitFiles(List<ConfigIssue> issues) {
+    DataParserFormatConfig formatConfig = conf.dataFormatConfig;
+    String reason = null;
+    switch (conf.dataFormat) {
+      case TEXT:
+        if (formatConfig.useCustomDelimiter) {
+          reason = "text with a custom delimiter is not supported";
+        }
+        break;
+      case JSON:
+        if (formatConfig.jsonContent != JsonMode.MULTIPLE_OBJECTS) {
+          reason = "JSON arrays of objects are not supported";
+        }
+        break;
+      case DELIMITED:
+        if (formatConfig.csvHeader != CsvHeader.NO_HEADER || formatConfig.csvSkipStartLines > 0) {
+          reason = "delimited data with a header line or lines to skip is not supported";
+        }
+        break;
+      case LOG:
+        if (formatConfig.onParseError == OnParseError.INCLUDE_AS_STACK_TRACE) {
+          reason = "logs with stack traces are not supported";
+        }
+        break;
+      default:
+        reason = Utils.format("data format '{}' is not supported", conf.dataFormat);
+    }
+    if (reason == null && formatConfig.compression != Compression.NONE) {
+      reason = "compressed files are not supported";
+    }
+    if (reason == null && !isSplittableCharset(formatConfig.charset)) {
+      reason = Utils.format("charset '{}' is not supported", formatConfig.charset);
+    }
+    if (reason != null) {
+      issues.add(
+          getContext().createConfigIssue(
+              Groups.FILES.name(),
+              SPOOLDIR_CONFIG_BEAN_PREFIX + "splitFiles",
+              Errors.SPOOLDIR_33,
+              reason
+          )
+      );
+    }
+
+    if (conf.numberOfThreads < 1) {
+      issues.add(
+          getContext().createConfigIssue(
+              Groups.FILES.name(),
+              SPOOLDIR_CONFIG_BEAN_PREFIX + "numberOfThreads",
+              Errors.SPOOLDIR_34
+          )
+      );
+    }
+
+    if (conf.chunkSizeMB < 1) {
+      issues.add(
+          getContext().createConfigIssue(
+              Groups.FILES.name(),
+              SPOOLDIR_CONFIG_BEAN_PREFIX + "chunkSizeMB",
+              Errors.SPOOLDIR_35
+          )
+      );
+    }
+  }
+
+  // chunks are split on '\n' bytes, which must not be part of any other char
+  private static boolean isSplittableCharset(String charset) {
+    try {
+      return !Charset.isSupported(charset) || OverrunByteLineReader.isSupported(Charset.forName(charset));
+    } catch (IllegalArgumentException ex) {
+      // invalid charsets are reported by the data format config
+      return true;
+    }
+  }
+
   @Override
   public void destroy() {
+    shutdownExecutorIfNeeded();
+    executorService = null;
     IOUtils.closeQuietly(parser);
     if (spooler != null) {
       spooler.destroy();
@@ -466,6 +615,10 @@ public class SpoolDirSource extends BasePushSource {
   @Override
   public void produce(Map<String, String> lastSourceOffset, int maxBatchSize) throws StageException {
     int batchSize = Math.min(conf.batchSize, maxBatchSize);
+    if (conf.splitFiles) {
+      produceChunks(lastSourceOffset, batchSize);
+      return;
+    }
     while (!getContext().isStopped()) {
       BatchContext batchContext = getContext().startBatch();
       BatchMaker batchMaker = batchContext.getBatchMaker();
@@ -484,110 +637,132 @@ public class SpoolDirSource extends BasePushSource {
     String offset = getOffsetFromSourceOffset(lastSourceOffset);
 
     if (hasToFetchNextFileFromSpooler(fullPath, offset)) {
-      currentFile = null;
-      try {
-        File nextAvailFile = null;
-        do {
-          if (nextAvailFile != null) {
-            LOG.warn("Ignoring file '{}' in spool directory as is lesser than offset file '{}'",
-                nextAvailFile.toString(),
-                fullPath
-            );
-          }
-          nextAvailFile = getSpooler().poolForFile(conf.poolingTimeoutSecs, TimeUnit.SECONDS);
-        } while (!isFileFromSpoolerEligible(nextAvailFile, fullPath, offset));
-
-        if (nextAvailFile == null) {
-          // no file to process
-          LOG.debug("No new file available in spool directory after '{}' secs, producing empty batch",
-              conf.poolingTimeoutSecs);
-
-          // no-more-data event needs to be sent.
-          shouldSendNoMoreDataEvent = true;
-
-        } else {
-          // since we have data to process, don't trigger the no-more-data event.
-          shouldSendNoMoreDataEvent = false;
-
-          // file to process
-          currentFile = nextAvailFile;
-
-          // if the current offset file is null or the file returned by the spooler is greater than the current offset
-          // file we take the file returned by the spooler as the new file and set the offset to zero
-          // if not, it means the spooler returned us the current file, we just keep processing it from the last
-          // offset we processed (known via offset tracking)
-          boolean pickFileFromSpooler = false;
-          if (file == null) {
-            pickFileFromSpooler = true;
-          } else if (useLastModified) {
-            File fileObject = new File(spooler.getSpoolDir(), file);
-            if (compareFiles(nextAvailFile, fileObject)) {
-              pickFileFromSpooler = true;
-            }
-          } else if (nextAvailFile.getName().compareTo(file) > 0) {
-            pickFileFromSpooler = true;
-          }
-          if (pickFileFromSpooler) {
-            file = currentFile.toString().replaceFirst(spooler.getSpoolDir() + "/", "");
-            offset = ZERO;
-          }
-        }
-
-        if (currentFile != null) {
-          perFileRecordCount = 0;
-          perFileErrorCount = 0;
-          SpoolDirEvents.NEW_FILE.create(getContext(), batchContext)
-              .with("filepath", currentFile.getAbsolutePath())
-              .createAndSend();
-          noMoreDataFileCount++;
-          totalFiles++;
-        }
-
-      } catch (InterruptedException ex) {
-        // the spooler was interrupted while waiting for a file, we log and return, the pipeline agent will invoke us
-        // again to wait for a file again
-        LOG.warn("Pooling interrupted");
+      String newFile = fetchNextFile(file, fullPath, offset, batchContext);
+      if (newFile != null) {
+        file = newFile;
+        offset = ZERO;
       }
     }
 
     if (currentFile != null) {
       // we have a file to process (from before or new from spooler)
+      if (ChunkedFileOffset.isChunked(offset)) {
+        throw new StageException(Errors.SPOOLDIR_36, currentFile);
+      }
       try {
         // we ask for a batch from the currentFile starting at offset
         offset = produce(currentFile, offset, batchSize, batchMaker);
 
         if (MINUS_ONE.equals(offset)) {
-          SpoolDirEvents.FINISHED_FILE.create(getContext(), batchContext)
-              .with("filepath", currentFile.getAbsolutePath())
-              .with("error-count", perFileErrorCount)
-              .with("record-count", perFileRecordCount)
-              .createAndSend();
-
-          LineageEvent event = getContext().createLineageEvent(LineageEventType.ENTITY_READ);
-          event.setSpecificAttribute(LineageSpecificAttribute.ENTITY_NAME, currentFile.getAbsolutePath());
-          event.setSpecificAttribute(LineageSpecificAttribute.ENDPOINT_TYPE, EndPointType.LOCAL_FS.name());
-          event.setSpecificAttribute(LineageSpecificAttribute.DESCRIPTION, conf.filePattern);
-          Map<String, String> props = new HashMap<>();
-          props.put("Record Count", Long.toString(perFileRecordCount));
-          event.setProperties(props);
-          getContext().publishLineageEvent(event);
+          sendFinishedFileEvents(batchContext);
         }
       } catch (BadSpoolFileException ex) {
-        LOG.error(Errors.SPOOLDIR_01.getMessage(), ex.getFile(), ex.getPos(), ex.toString(), ex);
-        getContext().reportError(Errors.SPOOLDIR_01, ex.getFile(), ex.getPos(), ex.toString(), ex);
+        handleBadSpoolFile(ex);
+        // we set the offset to -1 to indicate we are done with the file and we should fetch a new one from the spooler
+        offset = MINUS_ONE;
+      }
+    }
 
-        try {
-          // then we ask the spooler to error handle the failed file
-          spooler.handleCurrentFileAsError();
+    sendNoMoreDataEventIfNeeded(batchContext);
+
+    //Process And Commit offsets
+    getContext().processBatch(batchContext, Source.POLL_SOURCE_OFFSET_KEY, createSourceOffset(file, offset));
+
+    return createSourceOffset(file, offset);
+  }
+
+  /**
+   * Polls the spooler for the next file to read, unless the current file was not fully read. Sends the new file event
+   * if there is a file to read.
+   * @return the file picked from the spooler to be read from its beginning, null if there is none or if the file
+   * from the offset is read further
+   */
+  private String fetchNextFile(String file, String fullPath, String offset, BatchContext batchContext) {
+    currentFile = null;
+    String newFile = null;
+    try {
+      File nextAvailFile = null;
+      do {
+        if (nextAvailFile != null) {
+          LOG.warn("Ignoring file '{}' in spool directory as is lesser than offset file '{}'",
+              nextAvailFile.toString(),
+              fullPath
+          );
+        }
+        nextAvailFile = getSpooler().poolForFile(conf.poolingTimeoutSecs, TimeUnit.SECONDS);
+      } while (!isFileFromSpoolerEligible(nextAvailFile, fullPath, offset));
 
-        } catch (IOException ex1) {
-          throw new StageException(Errors.SPOOLDIR_00, currentFile, ex1.toString(), ex1);
+      if (nextAvailFile == null) {
+        // no file to process
+        LOG.debug("No new file available in spool directory after '{}' secs, producing empty batch",
+            conf.poolingTimeoutSecs);
+
+        // no-more-data event needs to be sent.
+        shouldSendNoMoreDataEvent = true;
+
+      } else {
+        // since we have data to process, don't trigger the no-more-data event.
+        shouldSendNoMoreDataEvent = false;
+
+        // file to process
+        currentFile = nextAvailFile;
+
+        // if the current offset file is null or the file returned by the spooler is greater than the current offset
+        // file we take the file returned by the spooler as the new file and set the offset to zero
+        // if not, it means the spooler returned us the current file, we just keep processing it from the last
+        // offset we processed (known via offset tracking)
+        boolean pickFileFromSpooler = false;
+        if (file == null) {
+          pickFileFromSpooler = true;
+        } else if (useLastModified) {
+          File fileObject = new File(spooler.getSpoolDir(), file);
+          if (compareFiles(nextAvailFile, fileObject)) {
+            pickFileFromSpooler = true;
+          }
+        } else if (nextAvailFile.getName().compareTo(file) > 0) {
+          pickFileFromSpooler = true;
+        }
+        if (pickFileFromSpooler) {
+          newFile = currentFile.toString().replaceFirst(spooler.getSpoolDir() + "/", "");
         }
-        // we set the offset to -1 to indicate we are done with the file and we should fetch a new one from the spooler
-        offset = MINUS_ONE;
       }
+
+      if (currentFile != null) {
+        perFileRecordCount = 0;
+        perFileErrorCount = 0;
+        SpoolDirEvents.NEW_FILE.create(getContext(), batchContext)
+            .with("filepath", currentFile.getAbsolutePath())
+            .createAndSend();
+        noMoreDataFileCount++;
+        totalFiles++;
+      }
+
+    } catch (InterruptedException ex) {
+      // the spooler was interrupted while waiting for a file, we log and return, the pipeline agent will invoke us
+      // again to wait for a file again
+      LOG.warn("Pooling interrupted");
     }
+    return newFile;
+  }
 
+  private void sendFinishedFileEvents(BatchContext batchContext) {
+    SpoolDirEvents.FINISHED_FILE.create(getContext(), batchContext)
+        .with("filepath", currentFile.getAbsolutePath())
+        .with("error-count", perFileErrorCount)
+        .with("record-count", perFileRecordCount)
+        .createAndSend();
+
+    LineageEvent event = getContext().createLineageEvent(LineageEventType.ENTITY_READ);
+    event.setSpecificAttribute(LineageSpecificAttribute.ENTITY_NAME, currentFile.getAbsolutePath());
+    event.setSpecificAttribute(LineageSpecificAttribute.ENDPOINT_TYPE, EndPointType.LOCAL_FS.name());
+    event.setSpecificAttribute(LineageSpecificAttribute.DESCRIPTION, conf.filePattern);
+    Map<String, String> props = new HashMap<>();
+    props.put("Record Count", Long.toString(perFileRecordCount));
+    event.setProperties(props);
+    getContext().publishLineageEvent(event);
+  }
+
+  private void sendNoMoreDataEventIfNeeded(BatchContext batchContext) {
     if (shouldSendNoMoreDataEvent) {
       LOG.info("sending no-more-data event.  records {} errors {} files {} ",
           noMoreDataRecordCount, noMoreDataErrorCount, noMoreDataFileCount
@@ -602,12 +777,446 @@ public class SpoolDirSource extends BasePushSource {
       noMoreDataErrorCount = 0;
       noMoreDataFileCount = 0;
     }
+  }
 
+  private void handleBadSpoolFile(BadSpoolFileException ex) throws StageException {
+    LOG.error(Errors.SPOOLDIR_01.getMessage(), ex.getFile(), ex.getPos(), ex.toString(), ex);
+    getContext().reportError(Errors.SPOOLDIR_01, ex.getFile(), ex.getPos(), ex.toString(), ex);
 
-    //Process And Commit offsets
-    getContext().processBatch(batchContext, Source.POLL_SOURCE_OFFSET_KEY, createSourceOffset(file, offset));
+    try {
+      // then we ask the spooler to error handle the failed file
+      spooler.handleCurrentFileAsError();
 
-    return createSourceOffset(file, offset);
+    } catch (IOException ex1) {
+      throw new StageException(Errors.SPOOLDIR_00, currentFile, ex1.toString(), ex1);
+    }
+  }
+
+  /**
+   * Reads the files split into chunks, see {@link FileChunk}. This thread picks the files from the spooler and the
+   * chunk reader threads read the chunks of the current file in parallel. The offset of a file being read is a
+   * {@link ChunkedFileOffset}.
+   */
+  private void produceChunks(Map<String, String> lastSourceOffset, int batchSize) throws StageException {
+    String file = getFileFromSourceOffset(lastSourceOffset);
+    String offset = getOffsetFromSourceOffset(lastSourceOffset);
+
+    executorService = new SafeScheduledExecutorService(conf.numberOfThreads, CHUNK_READER_THREAD_PREFIX);
+    ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executorService);
+    List<Future<Void>> allFutures = new ArrayList<>();
+    for (int i = 0; i < conf.numberOfThreads; i++) {
+      allFutures.add(completionService.submit(new ChunkReader(batchSize)));
+    }
+    try {
+      while (!getContext().isStopped()) {
+        BatchContext batchContext = getContext().startBatch();
+        String fullPath = (file != null) ? getSpooler().getSpoolDir() + "/" + file : null;
+        if (hasToFetchNextFileFromSpooler(fullPath, offset)) {
+          String newFile = fetchNextFile(file, fullPath, offset, batchContext);
+          if (newFile != null) {
+            file = newFile;
+            offset = ZERO;
+          }
+        }
+
+        if (currentFile != null) {
+          // the new file event goes before the records of the file
+          getContext().processBatch(batchContext, Source.POLL_SOURCE_OFFSET_KEY, createSourceOffset(file, offset));
+          boolean finished = false;
+          try {
+            offset = readChunks(currentFile, file, offset, completionService);
+            finished = MINUS_ONE.equals(offset);
+          } catch (BadSpoolFileException ex) {
+            handleBadSpoolFile(ex);
+            offset = MINUS_ONE;
+          }
+          if (offset == null) {
+            // stopped, the offset of what was read is already committed
+            break;
+          }
+          batchContext = getContext().startBatch();
+          if (finished) {
+            sendFinishedFileEvents(batchContext);
+          }
+        }
+
+        sendNoMoreDataEventIfNeeded(batchContext);
+
+        getContext().processBatch(batchContext, Source.POLL_SOURCE_OFFSET_KEY, createSourceOffset(file, offset));
+      }
+
+      for (Future<Void> future : allFutures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          LOG.error("Error while waiting for the chunk reader threads to complete: {}", e.getMessage(), e);
+        } catch (InterruptedException e) {
+          LOG.error("Interrupted while waiting for the chunk reader threads to complete", e);
+          Thread.currentThread().interrupt();
+        }
+      }
+    } finally {
+      chunkQueue.clear();
+      shutdownExecutorIfNeeded();
+    }
+  }
+
+  /**
+   * Reads the chunks of a file not read yet with the chunk reader threads.
+   * @return -1 once the file is done, null if the pipeline was stopped before
+   */
+  private String readChunks(
+      File file,
+      String fileName,
+      String offset,
+      ExecutorCompletionService<Void> completionService
+  ) throws StageException, BadSpoolFileException {
+    ChunkedFileOffset chunkedOffset = ChunkedFileOffset.parse(offset, conf.chunkSizeMB * MB);
+    List<FileChunk> chunks;
+    try {
+      chunks = FileChunk.split(file.toPath(), chunkedOffset.getChunkSize());
+    } catch (IOException ex) {
+      handleUnreadableFile(file, offset, ex);
+      return MINUS_ONE;
+    }
+
+    ChunkedFile chunkedFile = new ChunkedFile(file, fileName, chunkedOffset);
+    List<ChunkTask> tasks = new ArrayList<>();
+    for (FileChunk chunk : chunks) {
+      if (!chunkedOffset.isDone(chunk.getIndex())) {
+        String startOffset = chunkedOffset.getOffset(chunk.getIndex());
+        tasks.add(new ChunkTask(chunkedFile, chunk, startOffset, conf.preserveChunkOrder, conf.maxBufferedBatches));
+      }
+    }
+    chunkedFile.setPendingChunks(tasks.size());
+    chunkQueue.addAll(tasks);
+
+    if (conf.preserveChunkOrder) {
+      emitInOrder(tasks, chunkedFile, completionService);
+    }
+    while (!chunkedFile.isDone() && !chunkedFile.isFailed() && !getContext().isStopped()) {
+      checkWorkerStatus(completionService, WORKER_POLL_MILLIS);
+    }
+    perFileRecordCount = chunkedFile.getRecordCount();
+    perFileErrorCount = chunkedFile.getErrorCount();
+    noMoreDataRecordCount += perFileRecordCount;
+    noMoreDataErrorCount += perFileErrorCount;
+
+    if (chunkedFile.isFailed()) {
+      chunkQueue.clear();
+      // no offset of the file is committed after the failure, wait for the chunks being read to stop
+      while (chunkedFile.hasActiveReaders() && !getContext().isStopped()) {
+        checkWorkerStatus(completionService, WORKER_POLL_MILLIS);
+      }
+      Exception ex = chunkedFile.getFailure();
+      if (ex instanceof ClosedByInterruptException || ex.getCause() instanceof ClosedByInterruptException) {
+        // the pipeline was stopped while reading
+        return null;
+      }
+      handleUnreadableFile(file, chunkedFile.getFailureOffset(), ex);
+      return MINUS_ONE;
+    }
+    return chunkedFile.isDone() ? MINUS_ONE : null;
+  }
+
+  /**
+   * Sends the batches parsed by the chunk reader threads in the order of the chunks.
+   */
+  private void emitInOrder(
+      List<ChunkTask> tasks,
+      ChunkedFile chunkedFile,
+      ExecutorCompletionService<Void> completionService
+  ) throws StageException {
+    for (ChunkTask task : tasks) {
+      boolean chunkDone = false;
+      while (!chunkDone) {
+        if (getContext().isStopped() || chunkedFile.isFailed()) {
+          return;
+        }
+        ParsedBatch batch;
+        try {
+          batch = task.batches.poll(WORKER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          LOG.error("Thread interrupted", e);
+          Thread.currentThread().interrupt();
+          return;
+        }
+        if (batch == null) {
+          checkWorkerStatus(completionService, 0);
+        } else {
+          emit(task, batch);
+          chunkDone = MINUS_ONE.equals(batch.offset);
+        }
+      }
+    }
+  }
+
+  private void emit(ChunkTask task, ParsedBatch batch) throws StageException {
+    BatchContext batchContext = getContext().startBatch();
+    ErrorRecordHandler batchErrorRecordHandler = new DefaultErrorRecordHandler(getContext(), batchContext);
+    for (Record record : batch.records) {
+      batchContext.getBatchMaker().addRecord(record);
+    }
+    for (OnRecordErrorException ex : batch.recordErrors) {
+      batchErrorRecordHandler.onError(ex);
+    }
+    for (Object[] params : batch.lengthErrors) {
+      batchErrorRecordHandler.onError(Errors.SPOOLDIR_02, params);
+    }
+    getContext().processBatch(batchContext);
+    task.file.commit(task.chunk.getIndex(), batch);
+  }
+
+  /**
+   * Checks whether any of the chunk reader threads completed, and whether there is any error to handle.
+   * @throws StageException if thrown by one of the threads (if the error handling is stop pipeline)
+   */
+  private void checkWorkerStatus(ExecutorCompletionService<Void> completionService, long waitMillis)
+      throws StageException {
+    Future<Void> future;
+    try {
+      future = completionService.poll(waitMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      LOG.error("Thread interrupted", e);
+      Thread.currentThread().interrupt();
+      return;
+    }
+    if (future != null) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        LOG.error("Thread interrupted", e);
+      } catch (ExecutionException e) {
+        Throwable cause = Throwables.getRootCause(e);
+        if (cause instanceof StageException) {
+          throw (StageException) cause;
+        } else {
+          LOG.error("Internal Error. {}", e);
+          throw new StageException(Errors.SPOOLDIR_37, e.toString(), e);
+        }
+      }
+    }
+  }
+
+  private DataParser createChunkParser(ChunkTask task, String offset) throws IOException, DataParserException {
+    File file = task.file.file;
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      channel.position(task.chunk.getStart());
+      InputStream is = ByteStreams.limit(Channels.newInputStream(channel), task.chunk.getLength());
+      return parserFactory.getParser(file.getName(), is, offset);
+    } catch (IOException | DataParserException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  private void shutdownExecutorIfNeeded() {
+    if (executorService != null && !executorService.isTerminated()) {
+      LOG.info("Shutting down executor service");
+      executorService.shutdown();
+    }
+  }
+
+  /**
+   * A file being read in chunks, it keeps the offset of the file and commits it as the chunks are read.
+   */
+  private class ChunkedFile {
+    final File file;
+    final String fileName;
+    private final ChunkedFileOffset offset;
+    private int pendingChunks;
+    private int activeReaders;
+    private long recordCount;
+    private long errorCount;
+    private Exception failure;
+    private String failureOffset;
+
+    ChunkedFile(File file, String fileName, ChunkedFileOffset offset) {
+      this.file = file;
+      this.fileName = fileName;
+      this.offset = offset;
+    }
+
+    synchronized void setPendingChunks(int pendingChunks) {
+      this.pendingChunks = pendingChunks;
+    }
+
+    synchronized void commit(int chunk, ParsedBatch batch) {
+      if (failure != null) {
+        // the file is handled as a whole once it fails
+        return;
+      }
+      recordCount += batch.records.size();
+      errorCount += batch.recordErrors.size() + batch.lengthErrors.size();
+      offset.update(chunk, batch.offset);
+      if (MINUS_ONE.equals(batch.offset)) {
+        pendingChunks--;
+      }
+      getContext().commitOffset(Source.POLL_SOURCE_OFFSET_KEY, createSourceOffset(fileName, offset.toString()));
+    }
+
+    synchronized void fail(Exception ex, String exOffset) {
+      if (failure == null) {
+        failure = ex;
+        failureOffset = exOffset;
+      }
+    }
+
+    synchronized void readerStarted() {
+      activeReaders++;
+    }
+
+    synchronized void readerFinished() {
+      activeReaders--;
+    }
+
+    synchronized boolean isDone() {
+      return pendingChunks == 0;
+    }
+
+    synchronized boolean isFailed() {
+      return failure != null;
+    }
+
+    synchronized boolean hasActiveReaders() {
+      return activeReaders > 0;
+    }
+
+    synchronized Exception getFailure() {
+      return failure;
+    }
+
+    synchronized String getFailureOffset() {
+      return failureOffset;
+    }
+
+    synchronized long getRecordCount() {
+      return recordCount;
+    }
+
+    synchronized long getErrorCount() {
+      return errorCount;
+    }
+  }
+
+  private static class ChunkTask {
+    final ChunkedFile file;
+    final FileChunk chunk;
+    final String startOffset;
+    // batches parsed and not sent yet, only when the order of the records is preserved
+    final BlockingQueue<ParsedBatch> batches;
+
+    ChunkTask(ChunkedFile file, FileChunk chunk, String startOffset, boolean ordered, int maxBufferedBatches) {
+      this.file = file;
+      this.chunk = chunk;
+      this.startOffset = startOffset;
+      this.batches = ordered ? new LinkedBlockingQueue<>(maxBufferedBatches) : null;
+    }
+  }
+
+  private static class ParsedBatch {
+    final List<Record> records = new ArrayList<>();
+    final List<OnRecordErrorException> recordErrors = new ArrayList<>();
+    // parameters of the object length errors
+    final List<Object[]> lengthErrors = new ArrayList<>();
+    // the offset in the chunk after the batch, -1 if the chunk is done
+    String offset;
+  }
+
+  private class ChunkReader implements Callable<Void> {
+    private final int batchSize;
+
+    ChunkReader(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      while (!getContext().isStopped()) {
+        ChunkTask task = chunkQueue.poll(QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (task != null) {
+          read(task);
+        }
+      }
+      return null;
+    }
+
+    private void read(ChunkTask task) throws StageException, InterruptedException {
+      ChunkedFile chunkedFile = task.file;
+      String offset = task.startOffset;
+      DataParser chunkParser = null;
+      chunkedFile.readerStarted();
+      try {
+        chunkParser = createChunkParser(task, offset);
+        while (!MINUS_ONE.equals(offset) && !getContext().isStopped() && !chunkedFile.isFailed()) {
+          ParsedBatch batch = new ParsedBatch();
+          offset = parseBatch(chunkParser, task, offset, batch);
+          batch.offset = offset;
+          if (task.batches == null) {
+            emit(task, batch);
+          } else {
+            while (!task.batches.offer(batch, QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+              if (getContext().isStopped() || chunkedFile.isFailed()) {
+                return;
+              }
+            }
+          }
+        }
+      } catch (IOException | DataParserException ex) {
+        String exOffset = offset;
+        if (ex instanceof OverrunException) {
+          exOffset = String.valueOf(((OverrunException) ex).getStreamOffset());
+        } else if (chunkParser != null) {
+          try {
+            exOffset = chunkParser.getOffset();
+          } catch (IOException ex1) {
+            LOG.debug("Could not get the offset of chunk {} of file '{}'", task.chunk, chunkedFile.fileName, ex1);
+          }
+        }
+        chunkedFile.fail(ex, Utils.format("chunk {} offset {}", task.chunk.getIndex(), exOffset));
+      } finally {
+        IOUtils.closeQuietly(chunkParser);
+        chunkedFile.readerFinished();
+      }
+    }
+
+    /**
+     * Parses up to a batch of records from a chunk.
+     * @return the offset in the chunk after the records, -1 if the chunk is done
+     */
+    private String parseBatch(DataParser chunkParser, ChunkTask task, String offset, ParsedBatch batch)
+        throws IOException, DataParserException {
+      File file = task.file.file;
+      for (int i = 0; i < batchSize; i++) {
+        try {
+          Record record;
+          try {
+            record = chunkParser.parse();
+          } catch (RecoverableDataParserException ex) {
+            // Propagate partially parsed record to error stream
+            record = ex.getUnparsedRecord();
+            setChunkHeaders(record, task, offset);
+            batch.recordErrors.add(new OnRecordErrorException(record, ex.getErrorCode(), ex.getParams()));
+            continue;
+          }
+          if (record == null) {
+            return MINUS_ONE;
+          }
+          setChunkHeaders(record, task, offset);
+          batch.records.add(record);
+          offset = chunkParser.getOffset();
+        } catch (ObjectLengthException ex) {
+          batch.lengthErrors.add(new Object[]{file.getName(), offset, ex});
+        }
+      }
+      return offset;
+    }
+
+    private void setChunkHeaders(Record record, ChunkTask task, String offset) {
+      setHeaders(record, task.file.file, offset);
+      record.getHeader().setAttribute(CHUNK_START_OFFSET, String.valueOf(task.chunk.getStart()));
+    }
   }
 
   /**
@@ -696,20 +1305,7 @@ public class SpoolDirSource extends BasePushSource {
             exOffset = MINUS_ONE;
           }
         }
-        switch (getContext().getOnErrorRecord()) {
-          case DISCARD:
-            break;
-          case TO_ERROR:
-            // we failed to produce a record, which leaves the input file in an unknown state. all we can do here is
-            // throw an exception.
-            throw new BadSpoolFileException(file.getAbsolutePath(), exOffset, ex);
-          case STOP_PIPELINE:
-            getContext().reportError(Errors.SPOOLDIR_04, sourceFile, exOffset, ex.toString(), ex);
-            throw new StageException(Errors.SPOOLDIR_04, sourceFile, exOffset, ex.toString());
-          default:
-            throw new IllegalStateException(Utils.format("Unknown OnError value '{}'",
-                getContext().getOnErrorRecord(), ex));
-        }
+        handleUnreadableFile(file, exOffset, ex);
       }
     } finally {
       if (MINUS_ONE.equals(offset)) {
@@ -726,6 +1322,28 @@ public class SpoolDirSource extends BasePushSource {
     return offset;
   }
 
+  /**
+   * Handles an error which leaves the file being read in an unknown state, as per the on record error handling.
+   * @throws BadSpoolFileException if the file has to be handled as error by the spooler
+   */
+  private void handleUnreadableFile(File file, String exOffset, Exception ex)
+      throws StageException, BadSpoolFileException {
+    switch (getContext().getOnErrorRecord()) {
+      case DISCARD:
+        break;
+      case TO_ERROR:
+        // we failed to produce a record, which leaves the input file in an unknown state. all we can do here is
+        // throw an exception.
+        throw new BadSpoolFileException(file.getAbsolutePath(), exOffset, ex);
+      case STOP_PIPELINE:
+        getContext().reportError(Errors.SPOOLDIR_04, file.getName(), exOffset, ex.toString(), ex);
+        throw new StageException(Errors.SPOOLDIR_04, file.getName(), exOffset, ex.toString());
+      default:
+        throw new IllegalStateException(Utils.format("Unknown OnError value '{}'",
+            getContext().getOnErrorRecord(), ex));
+    }
+  }
+
   private void setHeaders(Record record, File file, String offset) {
     record.getHeader().setAttribute(HeaderAttributeConstants.FILE, file.getPath());
     record.getHeader().setAttribute(HeaderAttributeConstants.FILE_NAME, file.getName());
@@ -86,6 +86,18 @@ public class SpoolDirSourceUpgrader implements StageUpgrader {
         // fall through
       case 8:
         upgradeV8ToV9(configs);
+        if (toVersion == 9) {
+          break;
+        }
+        // fall through
+      case 9:
+        upgradeV9ToV10(configs);
+        if (toVersion == 10) {
+          break;
+        }
+        // fall through
+      case 10:
+        upgradeV10ToV11(configs);
         break;
       default:
         throw new IllegalStateException(Utils.format("Unexpected fromVersion {}", fromVersion));
@@ -93,6 +105,20 @@ public class SpoolDirSourceUpgrader implements StageUpgrader {
     return configs;
   }
 
+  private void upgradeV10ToV11(List<Config> configs) {
+    configs.add(new Config(joiner.join(CONF, "incrementalDiscovery"), false));
+    configs.add(new Config(joiner.join(CONF, "fullScanIntervalMins"), 60));
+    configs.add(new Config(joiner.join(CONF, "indexDir"), ""));
+  }
+
+  private void upgradeV9ToV10(List<Config> configs) {
+    configs.add(new Config(joiner.join(CONF, "splitFiles"), false));
+    configs.add(new Config(joiner.join(CONF, "numberOfThreads"), 1));
+    configs.add(new Config(joiner.join(CONF, "chunkSizeMB"), 64));
+    configs.add(new Config(joiner.join(CONF, "preserveChunkOrder"), false));
+    configs.add(new Config(joiner.join(CONF, "maxBufferedBatches"), 100));
+  }
+
   private void upgradeV8ToV9(List<Config> configs) {
     configs.add(new Config(joiner.join(CONF, "pathMatcherMode"), PathMatcherMode.GLOB));
   }
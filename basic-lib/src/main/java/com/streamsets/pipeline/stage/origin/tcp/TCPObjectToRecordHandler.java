@@ -30,11 +30,11 @@ import com.streamsets.pipeline.lib.el.TimeEL;
 import com.streamsets.pipeline.lib.el.TimeNowEL;
 import com.streamsets.pipeline.lib.parser.DataParserException;
 import com.streamsets.pipeline.lib.parser.net.MessageToRecord;
+import com.streamsets.pipeline.lib.timer.HashedWheelTimer;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.DecoderException;
-import io.netty.util.concurrent.ScheduledFuture;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,6 +60,7 @@ public class TCPObjectToRecordHandler extends ChannelInboundHandlerAdapter {
   private final PushSource.Context context;
   private final int maxBatchSize;
   private final long maxWaitTime;
+  private final HashedWheelTimer maxWaitTimer;
   private final StopPipelineHandler stopPipelineHandler;
 
   private final ELEval recordProcessedAckEval;
@@ -75,13 +76,15 @@ public class TCPObjectToRecordHandler extends ChannelInboundHandlerAdapter {
   private long totalRecordCount = 0;
   private long lastChannelStart = 0;
   private BatchContext batchContext = null;
-  private ScheduledFuture<?> maxWaitTimeFlush;
+  private HashedWheelTimer.Timeout maxWaitTimeFlush;
+  private long maxWaitTimeDeadline;
   private Record lastRecord;
 
   public TCPObjectToRecordHandler(
       PushSource.Context context,
       int maxBatchSize,
       long maxWaitTime,
+      HashedWheelTimer maxWaitTimer,
       StopPipelineHandler stopPipelineHandler,
       ELEval recordProcessedAckEval,
       ELVars recordProcessedAckVars,
@@ -93,10 +96,12 @@ public class TCPObjectToRecordHandler extends ChannelInboundHandlerAdapter {
       Charset ackResponseCharset
   ) {
     Utils.checkNotNull(context, "context");
+    Utils.checkNotNull(maxWaitTimer, "maxWaitTimer");
     Utils.checkNotNull(stopPipelineHandler, "stopPipelineHandler");
     this.context = context;
     this.maxBatchSize = maxBatchSize;
     this.maxWaitTime = maxWaitTime;
+    this.maxWaitTimer = maxWaitTimer;
     this.stopPipelineHandler = stopPipelineHandler;
     this.recordProcessedAckEval = recordProcessedAckEval;
     this.recordProcessedAckVars = recordProcessedAckVars;
@@ -113,8 +118,11 @@ public class TCPObjectToRecordHandler extends ChannelInboundHandlerAdapter {
     // client connection opened
     super.channelActive(ctx);
     lastChannelStart = getCurrentTime();
+    // the timer expires in its own thread, the batch is flushed in the channel event loop like everything else
+    Runnable flush = () -> flushIfMaxWaitTimeElapsed(ctx);
+    maxWaitTimeFlush = maxWaitTimer.newTimeout(() -> ctx.channel().eventLoop().execute(flush));
     long delay = this.maxWaitTime;
-    restartMaxWaitTimeTask(ctx, delay);
+    restartMaxWaitTimeTask(delay);
     batchRecordCount = 0;
     totalRecordCount = 0;
     batchContext = context.startBatch();
@@ -127,18 +135,24 @@ public class TCPObjectToRecordHandler extends ChannelInboundHandlerAdapter {
     }
   }
 
-  private void restartMaxWaitTimeTask(ChannelHandlerContext ctx, long delay) {
-    cancelMaxWaitTimeTask();
-    maxWaitTimeFlush = ctx.channel().eventLoop().schedule(
-        () -> this.newBatch(ctx),
-        Math.max(delay, 0),
-        TimeUnit.MILLISECONDS
-    );
+  private void restartMaxWaitTimeTask(long delay) {
+    long delayMillis = Math.max(delay, 0);
+    maxWaitTimeDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    // replaces the pending schedule, if any
+    maxWaitTimeFlush.schedule(delayMillis, TimeUnit.MILLISECONDS);
   }
 
   private void cancelMaxWaitTimeTask() {
-    if (maxWaitTimeFlush != null && !maxWaitTimeFlush.isCancelled() && !maxWaitTimeFlush.cancel(false)) {
-      LOG.warn("Failed to cancel maxWaitTimeFlush task");
+    if (maxWaitTimeFlush != null) {
+      maxWaitTimeFlush.cancel();
+    }
+  }
+
+  private void flushIfMaxWaitTimeElapsed(ChannelHandlerContext ctx) {
+    // the timer may have expired right before the batch was completed for being full, the next batch has its own
+    // deadline then
+    if (ctx.channel().isActive() && System.nanoTime() - maxWaitTimeDeadline >= 0) {
+      newBatch(ctx);
     }
   }
 
@@ -211,7 +225,7 @@ public class TCPObjectToRecordHandler extends ChannelInboundHandlerAdapter {
 
     batchContext = context.startBatch();
     batchRecordCount = 0;
-    restartMaxWaitTimeTask(ctx, this.maxWaitTime);
+    restartMaxWaitTimeTask(this.maxWaitTime);
   }
 
   private void evaluateElAndSendResponse(
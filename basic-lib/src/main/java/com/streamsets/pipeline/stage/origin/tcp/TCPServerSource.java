@@ -32,6 +32,7 @@ import com.streamsets.pipeline.lib.parser.net.netflow.NetflowCommonDecoder;
 import com.streamsets.pipeline.lib.parser.net.netflow.NetflowDataParserFactory;
 import com.streamsets.pipeline.lib.parser.net.syslog.SyslogDecoder;
 import com.streamsets.pipeline.lib.parser.net.syslog.SyslogFramingMode;
+import com.streamsets.pipeline.lib.timer.HashedWheelTimer;
 import com.streamsets.pipeline.lib.util.ThreadUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
@@ -75,6 +76,15 @@ public class TCPServerSource extends BasePushSource {
   private final Map<String, StageException> pipelineIdsToFail = new HashMap<>();
 
   private static final long PRODUCE_LOOP_INTERVAL_MS = 1000;
+  private static final String TIMER_GAUGE = "Batch Wait Timer";
+  private static final String TIMER_PENDING = "Pending Timeouts";
+  private static final String TIMER_SCHEDULED = "Scheduled";
+  private static final String TIMER_CANCELLED = "Cancelled";
+  private static final String TIMER_EXPIRED = "Expired";
+  private static final String TIMER_TICK_LAG = "Tick Lag (ms)";
+
+  private HashedWheelTimer maxWaitTimer;
+  private Map<String, Object> timerGauge;
 
   public TCPServerSource(TCPServerSourceConfig config) {
     this.config = config;
@@ -83,6 +93,10 @@ public class TCPServerSource extends BasePushSource {
   @Override
   protected List<ConfigIssue> init() {
     List<ConfigIssue> issues = new ArrayList<>();
+    // shared by all the client connections (and all the stages), one timeout per connection
+    maxWaitTimer = HashedWheelTimer.getShared();
+    timerGauge = getContext().createGauge(TIMER_GAUGE).getValue();
+    updateTimerGauge();
 
     if (config.enableEpoll && !Epoll.isAvailable()) {
       issues.add(getContext().createConfigIssue(Groups.TCP.name(), CONF_PREFIX + "enableEpoll", Errors.TCP_05));
@@ -157,6 +171,7 @@ public class TCPServerSource extends BasePushSource {
                         getContext(),
                         config.batchSize,
                         config.maxWaitTime,
+                        maxWaitTimer,
                         pipelineIdsToFail::put,
                         getContext().createELEval(RECORD_PROCESSED_EL_NAME),
                         getContext().createELVars(),
@@ -475,10 +490,20 @@ public class TCPServerSource extends BasePushSource {
   public void produce(Map<String, String> lastOffsets, int maxBatchSize) throws StageException {
     while (!getContext().isStopped()) {
       stopPipelines();
+      updateTimerGauge();
       ThreadUtil.sleep(PRODUCE_LOOP_INTERVAL_MS);
     }
   }
 
+  // the timer is shared, so are its counters
+  private void updateTimerGauge() {
+    timerGauge.put(TIMER_PENDING, maxWaitTimer.getPendingCount());
+    timerGauge.put(TIMER_SCHEDULED, maxWaitTimer.getScheduledCount());
+    timerGauge.put(TIMER_CANCELLED, maxWaitTimer.getCancelledCount());
+    timerGauge.put(TIMER_EXPIRED, maxWaitTimer.getExpiredCount());
+    timerGauge.put(TIMER_TICK_LAG, maxWaitTimer.getTickLagMillis());
+  }
+
   private void stopPipelines() throws StageException {
     for (Map.Entry<String, StageException> pipelineIdToError : pipelineIdsToFail.entrySet()) {
       final String pipelineId = pipelineIdToError.getKey();
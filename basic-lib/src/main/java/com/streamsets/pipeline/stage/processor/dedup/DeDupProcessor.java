@@ -31,7 +31,6 @@ import com.streamsets.pipeline.lib.queue.XEvictingQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -59,7 +58,7 @@ public class DeDupProcessor extends RecordProcessor {
   private static final Object VOID = new Object();
 
   private HashFunction hasher;
-  private HashingUtil.RecordFunnel funnel;
+  private HashingUtil.TypedRecordFunnel funnel;
   private Cache<HashCode, HashCode> hashCache;
   private XEvictingQueue<HashCode> hashBuffer;
   private String uniqueLane;
@@ -93,8 +92,9 @@ public class DeDupProcessor extends RecordProcessor {
     if (issues.isEmpty()) {
       hasher = HashingUtil.getHasher(HashingUtil.HashType.MURMUR3_128);
 
-      funnel = (compareFields == SelectFields.ALL_FIELDS) ? HashingUtil.getRecordFunnel(Collections.EMPTY_LIST, false, true) :
-          HashingUtil.getRecordFunnel(fieldsToCompare, false, true);
+      // Hashes are only compared within the running pipeline, hence they don't need to match the field hasher ones
+      funnel = (compareFields == SelectFields.ALL_FIELDS) ? HashingUtil.getTypedRecordFunnel(null, false) :
+          HashingUtil.getTypedRecordFunnel(fieldsToCompare, false);
 
       Map<String, Object> runnerSharedMap = getContext().getStageRunnerSharedMap();
       synchronized (runnerSharedMap) {
@@ -58,7 +58,10 @@ public class Java8JavaScriptObjectFactory extends ScriptObjectFactory {
   @Override
   @SuppressWarnings("unchecked")
   protected Field scriptToField(Object scriptObject, Record record, String path) {
-    Field field;
+    Field field = viewToField(scriptObject, record, path);
+    if (field != null) {
+      return field;
+    }
     if (scriptObject != null) {
       if (SCRIPT_OBJECT_MIRROR_CLASS.isInstance(scriptObject)) {
         try {
@@ -23,42 +23,28 @@ import com.streamsets.pipeline.api.base.OnRecordErrorException;
 import com.streamsets.pipeline.api.base.SingleLaneRecordProcessor;
 
 import com.streamsets.pipeline.lib.util.CommonError;
+import com.streamsets.pipeline.lib.xml.StreamingXmlFlattener;
 import com.streamsets.pipeline.stage.common.DataFormatErrors;
 import com.streamsets.pipeline.stage.common.DefaultErrorRecordHandler;
 import com.streamsets.pipeline.stage.common.ErrorRecordHandler;
 import org.apache.commons.lang3.StringUtils;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.Text;
 
-import java.io.ByteArrayInputStream;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 public class XMLFlatteningProcessor extends SingleLaneRecordProcessor {
 
   private final String fieldPath;
-  private final String recordDelimiter;
-  private final boolean ignoreAttrs;
-  private final boolean ignoreNamespace;
   private final String fieldDelimiter;
   private final String outputField;
   private final String attrDelimiter;
   private final boolean keepExistingFields;
   private final boolean newFieldsOverwrite;
-  private final DocumentBuilderFactory factory;
+  private final StreamingXmlFlattener flattener;
   private ErrorRecordHandler errorRecordHandler;
 
   private int flattenerPerRecordCount = 0;
@@ -79,13 +65,9 @@ public class XMLFlatteningProcessor extends SingleLaneRecordProcessor {
     this.keepExistingFields = keepExistingFields;
     this.newFieldsOverwrite = newFieldsOverwrite;
     this.outputField = outputField;
-    this.recordDelimiter = recordDelimiter;
     this.fieldDelimiter = fieldDelimiter;
     this.attrDelimiter = attrDelimiter;
-    this.ignoreAttrs = ignoreAttrs;
-    this.ignoreNamespace = ignoreNamespace;
-    factory = DocumentBuilderFactory.newInstance();
-    factory.setNamespaceAware(true);
+    flattener = new StreamingXmlFlattener(recordDelimiter, fieldDelimiter, attrDelimiter, ignoreAttrs, ignoreNamespace);
   }
 
   @Override
@@ -139,30 +121,8 @@ public class XMLFlatteningProcessor extends SingleLaneRecordProcessor {
         }
 
         xmlData = record.get(fieldPath).getValueAsString().trim();
-        Document doc = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xmlData.getBytes()));
-        doc.getDocumentElement().normalize();
-        Element root = doc.getDocumentElement();
-        // If we are have a delimiter we are in a record, so just add everything as fields.
-        boolean currentlyInRecord = false;
-        Record newR = null;
-        String prefix = null;
-        List<Record> results = new LinkedList<>();
-        if (recordDelimiter == null || recordDelimiter.isEmpty() || root.getNodeName().equals(recordDelimiter)) {
-          currentlyInRecord = true;
-          //Increment record count.
-          flattenerPerRecordCount++;
-          if (keepExistingFields) {
-            newR = getContext().cloneRecord(record, String.valueOf(flattenerPerRecordCount));
-          } else {
-            newR = getContext().createRecord(record, String.valueOf(flattenerPerRecordCount));
-            newR.set(Field.create(new HashMap<String, Field>()));
-          }
-          ensureOutputFieldExists(newR);
-          prefix = root.getTagName();
-          addAttrs(newR, root, prefix);
-          results.add(newR);
-        }
-        processXML(newR, currentlyInRecord, new XMLNode(root, prefix), results, record);
+        List<Record> results = new ArrayList<>();
+        flattener.flatten(new StringReader(xmlData), fields -> results.add(createRecord(record, fields)));
         for (Record result : results) {
           singleLaneBatchMaker.addRecord(result);
         }
@@ -190,107 +150,29 @@ public class XMLFlatteningProcessor extends SingleLaneRecordProcessor {
     }
   }
 
-  private void processXML(
-      Record record,
-      boolean currentlyInRecord,
-      XMLNode current,
-      List<Record> recordList,
-      Record originalRecord
-  ) throws DOMException {
-    NodeList nodeList = current.element.getChildNodes();
-    // Preprocess the child Nodes to avoid having to do it each time we hit a new element.
-    if (currentlyInRecord) {
-      Set<String> nodes = new HashSet<>();
-      for (int i = 0; i < nodeList.getLength(); i++) {
-        Node next = nodeList.item(i);
-        if (next.getNodeType() == Node.ELEMENT_NODE) {
-          Element e = (Element)next;
-          // We already saw the same name once before. Add it to the current element's map.
-          if (nodes.contains(e.getTagName()) && !current.nodeCounters.containsKey(e.getTagName())) {
-            current.nodeCounters.put(e.getTagName(), 0);
-          } else {
-            nodes.add(e.getTagName());
-          }
-        }
-      }
-    }
-    for (int i = 0; i < nodeList.getLength(); i++) {
-      Node next = nodeList.item(i);
-      // Text node - add it as a field, if we are currently in a record
-      if (currentlyInRecord && next.getNodeType() == Node.TEXT_NODE) {
-        String text = ((Text) next).getWholeText();
-        if (text.trim().isEmpty()) {
-          continue;
-        }
-        // If we don't need to keep existing fields, just write
-        // If we need to keep existing fields, overwrite only if the original field does not exist
-        // If we need to keep existing fields, and the current record has the path, overwrite only if newFieldsOverwrite
-        if (!keepExistingFields || !record.has(getPathPrefix() + current.prefix) || newFieldsOverwrite) {
-          ensureOutputFieldExists(record);
-          record.set(getPathPrefix() + current.prefix, Field.create(text));
-        }
-      } else if (next.getNodeType() == Node.ELEMENT_NODE) {
-        Element element = (Element) next;
-        String tagName = element.getTagName();
-        String elementPrefix;
-
-        // If we are not in a record and this is the delimiter, then create a new record to fill in.
-        if (!currentlyInRecord && element.getNodeName().equals(recordDelimiter)) {
-          // Create a new record
-          elementPrefix = tagName;
-
-          //Increment record count
-          flattenerPerRecordCount++;
-
-          Record newR;
-          //Add the node index as sourceRecordIdPostFix for newly created/cloned record.
-          if (keepExistingFields) {
-            newR = getContext().cloneRecord(originalRecord, String.valueOf(flattenerPerRecordCount));
-          } else {
-            newR = getContext().createRecord(originalRecord, String.valueOf(flattenerPerRecordCount));
-            newR.set(Field.create(new HashMap<String, Field>()));
-          }
-          ensureOutputFieldExists(newR);
-          recordList.add(newR);
-          addAttrs(newR, element, elementPrefix);
-          processXML(newR, true, new XMLNode(element, tagName), recordList, record);
-        } else { // This is not a record delimiter, or we are currently already in a record
-          // Check if this is the first time we are seeing this prefix?
-          // The map tracks the next index to append. If the map does not have the key, don't add an index.
-          elementPrefix = current.prefix + fieldDelimiter + tagName;
-          if (current.nodeCounters.containsKey(tagName)) {
-            Integer nextCount = current.nodeCounters.get(tagName);
-            elementPrefix =  elementPrefix + "(" + nextCount.toString() + ")";
-            current.nodeCounters.put(tagName, nextCount + 1);
-          }
-          if (currentlyInRecord) {
-            addAttrs(record, element, elementPrefix);
-          }
-          XMLNode nextNode = new XMLNode(element, elementPrefix);
-          processXML(record, currentlyInRecord, nextNode, recordList, record);
-        }
-      }
-    }
-  }
-
-  private void addAttrs(Record record, Element element, String elementPrefix) {
-    if (!ignoreAttrs) {
-      NamedNodeMap attrs = element.getAttributes();
-      for (int j = 0; j < attrs.getLength(); j++) {
-        Node attr = attrs.item(j);
-        String attrName = attr.getNodeName();
-        if (attrName.equals("xmlns")) { //handled separately.
-          continue;
-        }
-        record.set(getPathPrefix() + elementPrefix + attrDelimiter + attr.getNodeName(), Field.create(attr.getNodeValue()));
-      }
+  private Record createRecord(Record originalRecord, List<StreamingXmlFlattener.FlattenedField> fields) {
+    //Increment record count.
+    flattenerPerRecordCount++;
+    Record newR;
+    //Add the node index as sourceRecordIdPostFix for newly created/cloned record.
+    if (keepExistingFields) {
+      newR = getContext().cloneRecord(originalRecord, String.valueOf(flattenerPerRecordCount));
+    } else {
+      newR = getContext().createRecord(originalRecord, String.valueOf(flattenerPerRecordCount));
+      newR.set(Field.create(new HashMap<String, Field>()));
     }
-    if (!ignoreNamespace) {
-      String namespaceURI = element.getNamespaceURI();
-      if (namespaceURI != null) {
-        record.set(getPathPrefix() + elementPrefix + attrDelimiter + "xmlns", Field.create(namespaceURI));
+    ensureOutputFieldExists(newR);
+    for (StreamingXmlFlattener.FlattenedField field : fields) {
+      String path = getPathPrefix() + field.getName();
+      // Attributes are always written. For text:
+      // If we don't need to keep existing fields, just write
+      // If we need to keep existing fields, overwrite only if the original field does not exist
+      // If we need to keep existing fields, and the current record has the path, overwrite only if newFieldsOverwrite
+      if (!field.isText() || !keepExistingFields || !newR.has(path) || newFieldsOverwrite) {
+        newR.set(path, Field.create(field.getValue()));
       }
     }
+    return newR;
   }
 
   private void ensureOutputFieldExists(Record record) {
@@ -310,15 +192,4 @@ public class XMLFlatteningProcessor extends SingleLaneRecordProcessor {
 
     return "/" + outputField + "/";
   }
-
-  private class XMLNode {
-    final Element element;
-    final String prefix;
-    Map<String, Integer> nodeCounters = new HashMap<>();
-
-    public XMLNode(Element element, String prefix) {
-      this.element = element;
-      this.prefix = prefix;
-    }
-  }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.dirspooler;
+
+import com.google.common.collect.ImmutableList;
+import com.streamsets.pipeline.api.OnRecordError;
+import com.streamsets.pipeline.api.PushSource;
+import com.streamsets.pipeline.sdk.ContextInfoCreator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public class TestDirectorySpoolerIncrementalDiscovery {
+  private File spoolDir;
+  private File indexFile;
+
+  private PushSource.Context context;
+
+  @Before
+  public void setUp() {
+    File dir = new File("target", UUID.randomUUID().toString());
+    spoolDir = new File(dir, "spool");
+    Assert.assertTrue(spoolDir.mkdirs());
+    indexFile = new File(dir, "spooler.index").getAbsoluteFile();
+    context = (PushSource.Context) ContextInfoCreator.createSourceContext("s", false, OnRecordError.TO_ERROR, ImmutableList.of("a"));
+  }
+
+  private DirectorySpooler createSpooler() {
+    return DirectorySpooler.builder()
+        .setContext(context)
+        .setDir(spoolDir.getAbsolutePath())
+        .setFilePattern("x[0-9]*.log")
+        .setMaxSpoolFiles(10)
+        .setIncrementalDiscovery(true)
+        .setIndexFile(indexFile.getAbsolutePath())
+        .build();
+  }
+
+  private File createFile(String name) throws Exception {
+    File file = new File(spoolDir, name).getAbsoluteFile();
+    new FileWriter(file).close();
+    // so the file is not considered as being written
+    Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis() - 1000));
+    return file;
+  }
+
+  private List<File> poolFiles(DirectorySpooler spooler, int count) throws Exception {
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      File file = spooler.poolForFile(10, TimeUnit.SECONDS);
+      Assert.assertNotNull("Expected " + count + " files, got " + files, file);
+      files.add(file);
+    }
+    return files;
+  }
+
+  @Test
+  public void testNewFilesFromEvents() throws Exception {
+    File x1 = createFile("x1.log");
+    DirectorySpooler spooler = createSpooler();
+    spooler.init("");
+    try {
+      Assert.assertEquals(Arrays.asList(x1), poolFiles(spooler, 1));
+      Assert.assertNull(spooler.poolForFile(0, TimeUnit.MILLISECONDS));
+
+      // full scans are hourly, the files can only be found by the watcher
+      File x2 = createFile("x2.log");
+      createFile("y3.log");
+      File x3 = createFile("x3.log");
+      Assert.assertEquals(Arrays.asList(x2, x3), poolFiles(spooler, 2));
+      Assert.assertNull(spooler.poolForFile(0, TimeUnit.MILLISECONDS));
+    } finally {
+      spooler.destroy();
+    }
+  }
+
+  @Test
+  public void testResumeFromIndex() throws Exception {
+    File x1 = createFile("x1.log");
+    File x2 = createFile("x2.log");
+    File x3 = createFile("x3.log");
+    DirectorySpooler spooler = createSpooler();
+    spooler.init("");
+    try {
+      Assert.assertEquals(Arrays.asList(x1, x2), poolFiles(spooler, 2));
+    } finally {
+      spooler.destroy();
+    }
+    Assert.assertTrue(indexFile.exists());
+
+    // added while the spooler was not running, found by the full scan run on start
+    File x4 = createFile("x4.log");
+
+    spooler = createSpooler();
+    spooler.init(x2.getName());
+    try {
+      Assert.assertEquals(Arrays.asList(x2, x3, x4), poolFiles(spooler, 3));
+      Assert.assertNull(spooler.poolForFile(0, TimeUnit.MILLISECONDS));
+    } finally {
+      spooler.destroy();
+    }
+  }
+
+  @Test
+  public void testIndexWithResetOffset() throws Exception {
+    File x1 = createFile("x1.log");
+    File x2 = createFile("x2.log");
+    DirectorySpooler spooler = createSpooler();
+    spooler.init("");
+    try {
+      Assert.assertEquals(Arrays.asList(x1, x2), poolFiles(spooler, 2));
+    } finally {
+      spooler.destroy();
+    }
+
+    spooler = createSpooler();
+    spooler.init("");
+    try {
+      Assert.assertEquals(Arrays.asList(x1, x2), poolFiles(spooler, 2));
+    } finally {
+      spooler.destroy();
+    }
+  }
+
+  @Test
+  public void testDeletedFilesRemovedFromIndex() throws Exception {
+    File x1 = createFile("x1.log");
+    File x2 = createFile("x2.log");
+    DirectorySpooler spooler = DirectorySpooler.builder()
+        .setContext(context)
+        .setDir(spoolDir.getAbsolutePath())
+        .setFilePattern("x[0-9]*.log")
+        .setMaxSpoolFiles(10)
+        .setPostProcessing(DirectorySpooler.FilePostProcessing.DELETE)
+        .setIncrementalDiscovery(true)
+        .setIndexFile(indexFile.getAbsolutePath())
+        .build();
+    spooler.init("");
+    try {
+      Assert.assertEquals(Arrays.asList(x1, x2), poolFiles(spooler, 2));
+      Assert.assertFalse(x1.exists());
+    } finally {
+      spooler.destroy();
+    }
+    // header and the last file, which is deleted when the next file is polled
+    List<String> lines = Files.readAllLines(indexFile.toPath());
+    Assert.assertEquals(2, lines.size());
+    Assert.assertTrue(lines.get(1).endsWith(x2.getPath()));
+  }
+
+}
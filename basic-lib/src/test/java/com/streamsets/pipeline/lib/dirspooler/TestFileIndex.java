@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.dirspooler;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.UUID;
+
+public class TestFileIndex {
+  private Path indexFile;
+
+  @Before
+  public void setUp() {
+    File dir = new File("target", UUID.randomUUID().toString());
+    Assert.assertTrue(dir.mkdirs());
+    indexFile = new File(dir, "spooler.index").getAbsoluteFile().toPath();
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    FileIndex index = new FileIndex(indexFile, "key");
+    Assert.assertFalse(index.load());
+    index.seen(Paths.get("/dir/a.log"), 10);
+    index.seen(Paths.get("/dir/b\tc.log"), 20);
+    index.processed(Paths.get("/dir/a.log"));
+    index.save();
+    Assert.assertTrue(Files.exists(indexFile));
+
+    index = new FileIndex(indexFile, "key");
+    Assert.assertTrue(index.load());
+    Assert.assertEquals(2, index.size());
+    Assert.assertTrue(index.isProcessed(Paths.get("/dir/a.log")));
+    Assert.assertEquals(10L, (long) index.getLastModified(Paths.get("/dir/a.log")));
+    Assert.assertFalse(index.isProcessed(Paths.get("/dir/b\tc.log")));
+    Assert.assertEquals(20L, (long) index.getLastModified(Paths.get("/dir/b\tc.log")));
+    Assert.assertEquals(Collections.singletonList(Paths.get("/dir/b\tc.log")), index.getUnprocessed());
+  }
+
+  @Test
+  public void testSaveOnlyIfChanged() throws Exception {
+    FileIndex index = new FileIndex(indexFile, "key");
+    index.save();
+    Assert.assertFalse(Files.exists(indexFile));
+    index.seen(Paths.get("/dir/a.log"), 10);
+    index.save();
+    Assert.assertTrue(Files.exists(indexFile));
+    Files.delete(indexFile);
+    index.seen(Paths.get("/dir/a.log"), 10);
+    index.save();
+    Assert.assertFalse(Files.exists(indexFile));
+  }
+
+  @Test
+  public void testDifferentKey() throws Exception {
+    FileIndex index = new FileIndex(indexFile, "key");
+    index.seen(Paths.get("/dir/a.log"), 10);
+    index.save();
+
+    index = new FileIndex(indexFile, "other");
+    Assert.assertFalse(index.load());
+    Assert.assertEquals(0, index.size());
+  }
+
+  @Test
+  public void testInvalidIndex() throws Exception {
+    FileIndex index = new FileIndex(indexFile, "key");
+    index.seen(Paths.get("/dir/a.log"), 10);
+    index.save();
+    Files.write(indexFile, Arrays.asList("X\t1"), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+    index = new FileIndex(indexFile, "key");
+    Assert.assertFalse(index.load());
+    Assert.assertEquals(0, index.size());
+  }
+
+  @Test
+  public void testInMemoryOnly() throws Exception {
+    FileIndex index = new FileIndex(null, "key");
+    Assert.assertFalse(index.load());
+    index.seen(Paths.get("/dir/a.log"), 10);
+    index.save();
+    Assert.assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testRetain() throws Exception {
+    FileIndex index = new FileIndex(indexFile, "key");
+    index.seen(Paths.get("/dir/a.log"), 10);
+    index.seen(Paths.get("/dir/b.log"), 20);
+    index.seen(Paths.get("/dir/c.log"), 30);
+    index.processed(Paths.get("/dir/a.log"));
+    index.processed(Paths.get("/dir/b.log"));
+
+    index.retainProcessed((file, lastModified) -> lastModified < 20);
+    Assert.assertTrue(index.isProcessed(Paths.get("/dir/a.log")));
+    Assert.assertFalse(index.isProcessed(Paths.get("/dir/b.log")));
+
+    index.retainAll(ImmutableSet.of(Paths.get("/dir/b.log"), Paths.get("/dir/c.log")));
+    Assert.assertNull(index.getLastModified(Paths.get("/dir/a.log")));
+    Assert.assertEquals(
+        ImmutableSet.of(Paths.get("/dir/b.log"), Paths.get("/dir/c.log")),
+        new HashSet<>(index.getUnprocessed())
+    );
+
+    index.remove(Paths.get("/dir/b.log"));
+    Assert.assertEquals(1, index.size());
+  }
+
+}
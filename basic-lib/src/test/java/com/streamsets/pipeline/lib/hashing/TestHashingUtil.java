@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.hashing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.PrimitiveSink;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.lib.util.FieldRegexUtil;
+import com.streamsets.pipeline.sdk.RecordCreator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestHashingUtil {
+
+  /**
+   * Hashes every path of record.getEscapedFieldPaths() looked up with record.get(), the way the record funnel used
+   * to do it.
+   */
+  private static class PathLookupFunnel implements Funnel<Record> {
+    private final Collection<String> fieldsToHash;
+    private final boolean useSeparators;
+
+    PathLookupFunnel(Collection<String> fieldsToHash, boolean useSeparators) {
+      this.fieldsToHash = fieldsToHash;
+      this.useSeparators = useSeparators;
+    }
+
+    @Override
+    public void funnel(Record record, PrimitiveSink sink) {
+      List<String> paths = new ArrayList<>();
+      if (fieldsToHash != null) {
+        for (String field : fieldsToHash) {
+          List<String> matchingFieldPaths = FieldRegexUtil.getMatchingFieldPaths(field, record.getEscapedFieldPaths());
+          Collections.sort(matchingFieldPaths);
+          paths.addAll(matchingFieldPaths);
+        }
+      } else {
+        paths.addAll(record.getEscapedFieldPaths());
+        Collections.sort(paths);
+      }
+      for (String path : paths) {
+        Field field = record.get(path);
+        if (field.getValue() == null) {
+          sink.putBoolean(true);
+        } else {
+          switch (field.getType()) {
+            case INTEGER:
+              sink.putInt(field.getValueAsInteger());
+              break;
+            case LONG:
+              sink.putLong(field.getValueAsLong());
+              break;
+            case DOUBLE:
+              sink.putDouble(field.getValueAsDouble());
+              break;
+            case DATETIME:
+              sink.putLong(field.getValueAsDatetime().getTime());
+              break;
+            case DECIMAL:
+            case STRING:
+              sink.putString(field.getValueAsString(), Charset.defaultCharset());
+              break;
+            case BYTE_ARRAY:
+              sink.putBytes(field.getValueAsByteArray());
+              break;
+            default:
+              break;
+          }
+        }
+        if (useSeparators) {
+          sink.putByte((byte) 0);
+        }
+      }
+    }
+  }
+
+  private static Record createRecord(String name, int count) {
+    Map<String, Field> address = new LinkedHashMap<>();
+    address.put("street name", Field.create("Main St."));
+    address.put("zip.code", Field.create(94105L));
+    address.put("it's", Field.create(Field.Type.STRING, null));
+
+    List<Field> items = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Map<String, Field> item = new LinkedHashMap<>();
+      item.put("id", Field.create(i));
+      item.put("price", Field.create(new BigDecimal("12.30")));
+      item.put("a/b", Field.create(new byte[]{1, 2, (byte) i}));
+      items.add(Field.createListMap((LinkedHashMap<String, Field>) item));
+    }
+
+    Map<String, Field> root = new LinkedHashMap<>();
+    root.put("name", Field.create(name));
+    root.put("name-2", Field.create(2.5));
+    root.put("address", Field.create(address));
+    root.put("items", Field.create(items));
+    root.put("when", Field.create(Field.Type.DATETIME, new Date(1500000000000L)));
+    root.put("empty", Field.create(Field.Type.MAP, null));
+
+    Record record = RecordCreator.create();
+    record.set(Field.create(root));
+    return record;
+  }
+
+  @Test
+  public void testRecordFunnelHashesAreUnchanged() {
+    HashFunction hasher = HashingUtil.getHasher(HashingUtil.HashType.SHA256);
+    List<Collection<String>> fieldsToHash = ImmutableList.of(
+        ImmutableList.of("/name", "/address/'street name'"),
+        ImmutableList.of("/items[*]/*", "/address/*"),
+        ImmutableList.of("/*")
+    );
+    for (boolean useSeparators : new boolean[]{true, false}) {
+      Record record = createRecord("a", 3);
+      Assert.assertEquals(
+          hasher.hashObject(record, new PathLookupFunnel(null, useSeparators)),
+          hasher.hashObject(record, new HashingUtil.RecordFunnel(null, false, useSeparators))
+      );
+      for (Collection<String> fields : fieldsToHash) {
+        Assert.assertEquals(
+            hasher.hashObject(record, new PathLookupFunnel(fields, useSeparators)),
+            hasher.hashObject(record, HashingUtil.getRecordFunnel(fields, false, useSeparators))
+        );
+      }
+    }
+  }
+
+  @Test
+  public void testEscapedFieldsMatchRecordPaths() {
+    Record record = createRecord("a", 2);
+    Map<String, Field> fields = HashingUtil.getEscapedFields(record);
+    Assert.assertEquals(new ArrayList<>(record.getEscapedFieldPaths()), new ArrayList<>(fields.keySet()));
+    for (Map.Entry<String, Field> entry : fields.entrySet()) {
+      Assert.assertEquals(record.get(entry.getKey()), entry.getValue());
+    }
+  }
+
+  @Test
+  public void testTypedRecordFunnel() {
+    HashFunction hasher = HashingUtil.getHasher(HashingUtil.HashType.MURMUR3_128);
+    Funnel<Record> funnel = HashingUtil.getTypedRecordFunnel(null, false);
+
+    HashCode hash = hasher.hashObject(createRecord("a", 3), funnel);
+    Assert.assertEquals(hash, hasher.hashObject(createRecord("a", 3), funnel));
+    Assert.assertNotEquals(hash, hasher.hashObject(createRecord("b", 3), funnel));
+    Assert.assertNotEquals(hash, hasher.hashObject(createRecord("a", 2), funnel));
+
+    // Order of the map fields doesn't matter
+    Map<String, Field> map1 = new LinkedHashMap<>();
+    map1.put("x", Field.create(1));
+    map1.put("y", Field.create(2));
+    Map<String, Field> map2 = new LinkedHashMap<>();
+    map2.put("y", Field.create(2));
+    map2.put("x", Field.create(1));
+    Record r1 = RecordCreator.create();
+    r1.set(Field.create(map1));
+    Record r2 = RecordCreator.create();
+    r2.set(Field.create(map2));
+    Assert.assertEquals(hasher.hashObject(r1, funnel), hasher.hashObject(r2, funnel));
+
+    // Same bits with a different type give a different hash
+    r2.set(Field.create(Field.Type.LONG, 1L));
+    r1.set(Field.create(Field.Type.DATETIME, new Date(1L)));
+    Assert.assertNotEquals(hasher.hashObject(r1, funnel), hasher.hashObject(r2, funnel));
+
+    // Strings don't run into each other
+    r1.set(Field.create(ImmutableList.of(Field.create("ab"), Field.create("c"))));
+    r2.set(Field.create(ImmutableList.of(Field.create("a"), Field.create("bc"))));
+    Assert.assertNotEquals(hasher.hashObject(r1, funnel), hasher.hashObject(r2, funnel));
+
+    // Only the selected fields are hashed
+    Funnel<Record> nameFunnel = HashingUtil.getTypedRecordFunnel(ImmutableList.of("/n*"), false);
+    hash = hasher.hashObject(createRecord("a", 3), nameFunnel);
+    Assert.assertEquals(hash, hasher.hashObject(createRecord("a", 1), nameFunnel));
+    Assert.assertNotEquals(hash, hasher.hashObject(createRecord("b", 3), nameFunnel));
+  }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.remote;
+
+import com.google.common.base.Preconditions;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.StageException;
+import com.streamsets.pipeline.config.DataFormat;
+import com.streamsets.pipeline.config.JsonMode;
+import com.streamsets.pipeline.sdk.DataCollectorServicesUtils;
+import com.streamsets.pipeline.sdk.PushSourceRunner;
+import com.streamsets.pipeline.stage.common.HeaderAttributeConstants;
+import org.apache.commons.io.FileUtils;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.keyprovider.KeyPairProvider;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.password.PasswordAuthenticator;
+import org.apache.sshd.server.auth.password.PasswordChangeRequiredException;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockftpserver.fake.FakeFtpServer;
+import org.mockftpserver.fake.UserAccount;
+import org.mockftpserver.fake.filesystem.FileEntry;
+import org.mockftpserver.fake.filesystem.FileSystem;
+import org.mockftpserver.fake.filesystem.UnixFakeFileSystem;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+
+public class TestRemoteDownloadPushSource {
+  private static final int RECORDS_PER_FILE = 5;
+
+  private SshServer sshd;
+  private int port;
+  private String oldWorkingDir;
+  private File dataDir;
+  private File stagingDir;
+  private AtomicInteger opened = new AtomicInteger(0);
+  private AtomicInteger closed = new AtomicInteger(0);
+  private AtomicBoolean closedAll = new AtomicBoolean(true);
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setUpClass() {
+    DataCollectorServicesUtils.loadDefaultServices();
+  }
+
+  @Before
+  public void before() throws Exception {
+    opened.set(0);
+    closed.set(0);
+    closedAll.set(true);
+    dataDir = testFolder.newFolder("data");
+    stagingDir = testFolder.newFolder("staging");
+  }
+
+  @After
+  public void after() throws Exception {
+    if (oldWorkingDir != null) {
+      System.setProperty("user.dir", oldWorkingDir);
+    }
+    if (sshd != null && sshd.isOpen()) {
+      sshd.close();
+    }
+  }
+
+  // SSHD uses the current working directory as the directory from which to serve files.
+  private void setupSSHD() throws Exception {
+    oldWorkingDir = System.getProperty("user.dir");
+    System.setProperty("user.dir", dataDir.getAbsolutePath());
+    ServerSocket s = new ServerSocket(0);
+    port = s.getLocalPort();
+    s.close();
+    sshd = SshServer.setUpDefaultServer();
+    sshd.setPort(port);
+    sshd.setSubsystemFactories(Arrays.<NamedFactory<Command>>asList(new SftpSubsystemFactory()));
+    sshd.setPasswordAuthenticator(new PasswdAuth());
+    sshd.setKeyPairProvider(new HostKeyProvider());
+    sshd.addSessionListener(new SessionListener() {
+      @Override
+      public void sessionCreated(Session session) {
+        opened.incrementAndGet();
+        closedAll.set(false);
+      }
+
+      @Override
+      public void sessionEvent(Session session, Event event) {
+
+      }
+
+      @Override
+      public void sessionException(Session session, Throwable t) {
+
+      }
+
+      @Override
+      public void sessionClosed(Session session) {
+        closed.incrementAndGet();
+        if (opened.get() == closed.get()) {
+          closedAll.set(true);
+        }
+      }
+    });
+    sshd.start();
+  }
+
+  private static String fileContents(String name) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < RECORDS_PER_FILE; i++) {
+      sb.append("{\"file\": \"").append(name).append("\", \"id\": ").append(i).append("}\n");
+    }
+    return sb.toString();
+  }
+
+  private void createFile(String name, long lastModified) throws Exception {
+    File file = new File(dataDir, name);
+    FileUtils.writeStringToFile(file, fileContents(name));
+    Assert.assertTrue(file.setLastModified(lastModified));
+  }
+
+  private RemoteDownloadConfigBean getBean(String remoteAddress, int batchSize) {
+    RemoteDownloadConfigBean configBean = new RemoteDownloadConfigBean();
+    configBean.remoteAddress = remoteAddress;
+    configBean.userDirIsRoot = true;
+    configBean.auth = Authentication.PASSWORD;
+    configBean.username = () -> "testuser";
+    configBean.password = () -> "pass";
+    configBean.strictHostChecking = false;
+    configBean.dataFormat = DataFormat.JSON;
+    configBean.errorArchiveDir = null;
+    configBean.dataFormatConfig.jsonContent = JsonMode.MULTIPLE_OBJECTS;
+    configBean.filePattern = "*";
+    configBean.basic.maxBatchSize = batchSize;
+    configBean.initialFileToProcess = "";
+    return configBean;
+  }
+
+  private ParallelDownloadConfigBean getParallelBean(int numberOfThreads, int numberOfSessions) {
+    ParallelDownloadConfigBean configBean = new ParallelDownloadConfigBean();
+    configBean.numberOfThreads = numberOfThreads;
+    configBean.numberOfSessions = numberOfSessions;
+    configBean.maxPrefetchedFiles = 2;
+    configBean.stagingDir = stagingDir.getAbsolutePath();
+    configBean.pollInterval = 1;
+    return configBean;
+  }
+
+  /**
+   * Runs the origin until the expected number of records was read, returning the records.
+   */
+  private List<Record> runUntil(
+      PushSourceRunner runner,
+      Map<String, String> lastOffsets,
+      int batchSize,
+      int expectedRecords
+  ) throws Exception {
+    List<Record> records = Collections.synchronizedList(new ArrayList<>());
+    runner.runInit();
+    try {
+      runner.runProduce(lastOffsets, batchSize, output -> {
+        records.addAll(output.getRecords().get("lane"));
+        if (records.size() >= expectedRecords) {
+          runner.setStop();
+        }
+      });
+      runner.waitOnProduce();
+    } finally {
+      runner.runDestroy();
+    }
+    return records;
+  }
+
+  private static Set<String> getIds(List<Record> records) {
+    Set<String> ids = new HashSet<>();
+    for (Record record : records) {
+      String id = record.get("/file").getValueAsString() + ":" + record.get("/id").getValueAsString();
+      Assert.assertTrue("Record read twice: " + id, ids.add(id));
+    }
+    return ids;
+  }
+
+  @Test
+  public void testReadAllFiles() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      createFile("file" + i, 18000000L + (i % 3) * 1000);
+    }
+    setupSSHD();
+    RemoteDownloadPushSource origin = new RemoteDownloadPushSource(
+        getBean("sftp://localhost:" + port + "/", 2),
+        getParallelBean(3, 2)
+    );
+    PushSourceRunner runner = new PushSourceRunner.Builder(RemoteDownloadDPushSource.class, origin)
+        .addOutputLane("lane")
+        .build();
+    List<Record> records = runUntil(runner, new HashMap<>(), 2, 10 * RECORDS_PER_FILE);
+
+    Assert.assertEquals(10 * RECORDS_PER_FILE, getIds(records).size());
+    Record record = records.get(0);
+    String file = record.get("/file").getValueAsString();
+    Assert.assertEquals("/" + file, record.getHeader().getAttribute(HeaderAttributeConstants.FILE));
+    Assert.assertEquals(file, record.getHeader().getAttribute(HeaderAttributeConstants.FILE_NAME));
+
+    // all files are done, only the watermark is left
+    Map<String, String> offsets = runner.getOffsets();
+    Assert.assertEquals(1, offsets.size());
+    Assert.assertEquals("/file8::18002000::-1", offsets.get(RemoteOffsetTracker.WATERMARK_KEY));
+    Assert.assertEquals(0, stagingDir.list().length);
+    await().atMost(10, TimeUnit.SECONDS).untilTrue(closedAll);
+  }
+
+  @Test
+  public void testRestart() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      createFile("file" + i, 18000000L + i * 1000);
+    }
+    setupSSHD();
+    RemoteDownloadPushSource origin = new RemoteDownloadPushSource(
+        getBean("sftp://localhost:" + port + "/", 10),
+        getParallelBean(2, 2)
+    );
+    PushSourceRunner runner = new PushSourceRunner.Builder(RemoteDownloadDPushSource.class, origin)
+        .addOutputLane("lane")
+        .build();
+    List<Record> records = runUntil(runner, new HashMap<>(), 10, 3 * RECORDS_PER_FILE);
+    Assert.assertEquals(3 * RECORDS_PER_FILE, getIds(records).size());
+    Map<String, String> offsets = new HashMap<>(runner.getOffsets());
+
+    createFile("file3", 18000000L + 3000);
+    origin = new RemoteDownloadPushSource(getBean("sftp://localhost:" + port + "/", 10), getParallelBean(2, 2));
+    runner = new PushSourceRunner.Builder(RemoteDownloadDPushSource.class, origin)
+        .addOutputLane("lane")
+        .build();
+    records = runUntil(runner, offsets, 10, RECORDS_PER_FILE);
+    Assert.assertEquals(RECORDS_PER_FILE, records.size());
+    for (Record record : records) {
+      Assert.assertEquals("file3", record.get("/file").getValueAsString());
+    }
+  }
+
+  @Test
+  public void testResumeFromMiddleOfFile() throws Exception {
+    createFile("file0", 18000000L);
+    setupSSHD();
+    RemoteDownloadPushSource origin = new RemoteDownloadPushSource(
+        getBean("sftp://localhost:" + port + "/", 2),
+        getParallelBean(1, 1)
+    );
+    PushSourceRunner runner = new PushSourceRunner.Builder(RemoteDownloadDPushSource.class, origin)
+        .addOutputLane("lane")
+        .build();
+    // stops after the first batch
+    Assert.assertEquals(2, runUntil(runner, new HashMap<>(), 2, 1).size());
+    Map<String, String> offsets = new HashMap<>(runner.getOffsets());
+    Assert.assertFalse(offsets.containsKey(RemoteOffsetTracker.WATERMARK_KEY));
+    Assert.assertTrue(offsets.get("/file0").startsWith("/file0::18000000::"));
+
+    origin = new RemoteDownloadPushSource(getBean("sftp://localhost:" + port + "/", 2), getParallelBean(1, 1));
+    runner = new PushSourceRunner.Builder(RemoteDownloadDPushSource.class, origin)
+        .addOutputLane("lane")
+        .build();
+    List<Record> records = runUntil(runner, offsets, 2, RECORDS_PER_FILE - 2);
+    Assert.assertEquals(RECORDS_PER_FILE - 2, records.size());
+    for (int i = 0; i < records.size(); i++) {
+      Assert.assertEquals(i + 2, records.get(i).get("/id").getValueAsInteger());
+    }
+    Assert.assertEquals(
+        "/file0::18000000::-1",
+        runner.getOffsets().get(RemoteOffsetTracker.WATERMARK_KEY)
+    );
+  }
+
+  @Test
+  public void testFtp() throws Exception {
+    FakeFtpServer fakeFtpServer = new FakeFtpServer();
+    fakeFtpServer.setServerControlPort(0);
+    FileSystem fileSystem = new UnixFakeFileSystem();
+    for (int i = 0; i < 3; i++) {
+      fileSystem.add(new FileEntry("/file" + i, fileContents("file" + i)));
+    }
+    fakeFtpServer.setFileSystem(fileSystem);
+    fakeFtpServer.addUserAccount(new UserAccount("testuser", "pass", "/"));
+    fakeFtpServer.start();
+    try {
+      RemoteDownloadPushSource origin = new RemoteDownloadPushSource(
+          getBean("ftp://localhost:" + fakeFtpServer.getServerControlPort() + "/", 10),
+          getParallelBean(2, 2)
+      );
+      PushSourceRunner runner = new PushSourceRunner.Builder(RemoteDownloadDPushSource.class, origin)
+          .addOutputLane("lane")
+          .build();
+      List<Record> records = runUntil(runner, new HashMap<>(), 10, 3 * RECORDS_PER_FILE);
+      Assert.assertEquals(3 * RECORDS_PER_FILE, getIds(records).size());
+    } finally {
+      fakeFtpServer.stop();
+    }
+  }
+
+  @Test
+  public void testInvalidStagingDir() throws Exception {
+    setupSSHD();
+    ParallelDownloadConfigBean parallelConf = getParallelBean(1, 1);
+    parallelConf.stagingDir = new File(testFolder.getRoot(), "missing").getAbsolutePath();
+    RemoteDownloadPushSource origin = new RemoteDownloadPushSource(
+        getBean("sftp://localhost:" + port + "/", 10),
+        parallelConf
+    );
+    PushSourceRunner runner = new PushSourceRunner.Builder(RemoteDownloadDPushSource.class, origin)
+        .addOutputLane("lane")
+        .build();
+    try {
+      runner.runInit();
+      Assert.fail();
+    } catch (StageException ex) {
+      Assert.assertTrue(ex.getMessage().contains("REMOTE_18"));
+    }
+  }
+
+  private static class PasswdAuth implements PasswordAuthenticator {
+
+    @Override
+    public boolean authenticate(String username, String password, ServerSession session)
+        throws PasswordChangeRequiredException {
+      return username.equals("testuser") && password.equals("pass");
+    }
+  }
+
+  private static class HostKeyProvider implements KeyPairProvider {
+    KeyPair keyPair = null;
+
+    HostKeyProvider() throws Exception {
+      KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+      keyPair = keyGen.generateKeyPair();
+    }
+
+    @Override
+    public KeyPair loadKey(String type) {
+      Preconditions.checkArgument(type.equals("ssh-rsa"));
+      return keyPair;
+    }
+
+    @Override
+    public Iterable<String> getKeyTypes() {
+      return Arrays.asList("ssh-rsa");
+    }
+
+    @Override
+    public Iterable<KeyPair> loadKeys() {
+      return Arrays.asList(keyPair);
+    }
+  }
+}
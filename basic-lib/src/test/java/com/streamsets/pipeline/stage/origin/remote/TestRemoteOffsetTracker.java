@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.remote;
+
+import com.streamsets.pipeline.api.PushSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestRemoteOffsetTracker {
+
+  private Map<String, String> offsets;
+  private RemoteOffsetTracker tracker;
+
+  @Before
+  public void setUp() {
+    offsets = new HashMap<>();
+    PushSource.Context context = Mockito.mock(PushSource.Context.class);
+    Mockito.doAnswer(invocation -> {
+      String key = (String) invocation.getArguments()[0];
+      String value = (String) invocation.getArguments()[1];
+      if (value == null) {
+        offsets.remove(key);
+      } else {
+        offsets.put(key, value);
+      }
+      return null;
+    }).when(context).commitOffset(Mockito.anyString(), Mockito.<String>any());
+    tracker = new RemoteOffsetTracker(context);
+  }
+
+  private static RemoteFile file(String name, long lastModified) {
+    return new RemoteFile(name, lastModified, null);
+  }
+
+  // what the source commits when a file is read fully
+  private void finish(RemoteFile file) {
+    offsets.put(file.filename, new Offset(file.filename, file.lastModified, RemoteOffsetTracker.MINUS_ONE).offsetStr);
+    tracker.finish(file);
+  }
+
+  @Test
+  public void testWatermarkWaitsForEarlierFiles() {
+    tracker.init(offsets, null);
+    RemoteFile a = file("/a", 1);
+    RemoteFile b = file("/b", 2);
+    RemoteFile c = file("/c", 2);
+    Assert.assertEquals("0", tracker.dispatch(a));
+    Assert.assertEquals("0", tracker.dispatch(b));
+    Assert.assertEquals("0", tracker.dispatch(c));
+    // in flight
+    Assert.assertNull(tracker.dispatch(file("/b", 2)));
+
+    finish(c);
+    Assert.assertNull(tracker.getWatermark());
+    Assert.assertTrue(offsets.containsKey("/c"));
+
+    finish(a);
+    Assert.assertEquals("/a::1::-1", tracker.getWatermark().offsetStr);
+    Assert.assertEquals("/a::1::-1", offsets.get(RemoteOffsetTracker.WATERMARK_KEY));
+    Assert.assertFalse(offsets.containsKey("/a"));
+    Assert.assertTrue(offsets.containsKey("/c"));
+
+    finish(b);
+    Assert.assertEquals("/c::2::-1", offsets.get(RemoteOffsetTracker.WATERMARK_KEY));
+    Assert.assertEquals(1, offsets.size());
+
+    // read files are not handed out again, newer ones are
+    Assert.assertNull(tracker.dispatch(a));
+    Assert.assertNull(tracker.dispatch(c));
+    Assert.assertEquals("0", tracker.dispatch(file("/a", 3)));
+  }
+
+  @Test
+  public void testRestore() {
+    offsets.put(RemoteOffsetTracker.WATERMARK_KEY, "/a::1::-1");
+    offsets.put("/c", "/c::3::-1");
+    offsets.put("/b", "/b::2::10");
+    offsets.put("/gone", "/gone::2::5");
+    tracker.init(new HashMap<>(offsets), null);
+
+    // done before the restart
+    Assert.assertNull(tracker.dispatch(file("/c", 3)));
+    Assert.assertNull(tracker.dispatch(file("/a", 1)));
+    // resumed from where it was left
+    RemoteFile b = file("/b", 2);
+    Assert.assertEquals("10", tracker.dispatch(b));
+    RemoteFile d = file("/d", 4);
+    Assert.assertEquals("0", tracker.dispatch(d));
+
+    finish(b);
+    Assert.assertEquals("/c::3::-1", offsets.get(RemoteOffsetTracker.WATERMARK_KEY));
+    Assert.assertFalse(offsets.containsKey("/b"));
+    Assert.assertFalse(offsets.containsKey("/c"));
+    // the watermark moved past it, it's stale
+    Assert.assertFalse(offsets.containsKey("/gone"));
+
+    finish(d);
+    Assert.assertEquals(1, offsets.size());
+    Assert.assertEquals("/d::4::-1", offsets.get(RemoteOffsetTracker.WATERMARK_KEY));
+  }
+
+  @Test
+  public void testModifiedFileIsReadFromStart() {
+    offsets.put("/a", "/a::1::10");
+    tracker.init(new HashMap<>(offsets), null);
+    RemoteFile a = file("/a", 5);
+    Assert.assertEquals("0", tracker.dispatch(a));
+
+    RemoteFile b = file("/b", 2);
+    Assert.assertEquals("0", tracker.dispatch(b));
+    finish(b);
+    Assert.assertEquals("/b::2::-1", offsets.get(RemoteOffsetTracker.WATERMARK_KEY));
+
+    finish(a);
+    Assert.assertEquals("/a::5::-1", offsets.get(RemoteOffsetTracker.WATERMARK_KEY));
+    Assert.assertEquals(1, offsets.size());
+  }
+
+  @Test
+  public void testInitialFile() {
+    tracker.init(offsets, new Offset("/b", 2, RemoteOffsetTracker.ZERO));
+    Assert.assertNull(tracker.dispatch(file("/a", 2)));
+    RemoteFile b = file("/b", 2);
+    Assert.assertEquals("0", tracker.dispatch(b));
+    finish(b);
+    Assert.assertEquals("/b::2::-1", offsets.get(RemoteOffsetTracker.WATERMARK_KEY));
+    Assert.assertNull(tracker.dispatch(b));
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.spooldir;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestChunkedFileOffset {
+
+  @Test
+  public void testNewFile() throws Exception {
+    ChunkedFileOffset offset = ChunkedFileOffset.parse("0", 1024);
+    Assert.assertEquals(1024, offset.getChunkSize());
+    Assert.assertFalse(offset.isDone(0));
+    Assert.assertEquals("0", offset.getOffset(0));
+    Assert.assertEquals("chunks:1024::", offset.toString());
+    Assert.assertTrue(ChunkedFileOffset.isChunked(offset.toString()));
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    ChunkedFileOffset offset = new ChunkedFileOffset(1024);
+    offset.update(0, "-1");
+    offset.update(3, "-1");
+    offset.update(1, "100");
+    offset.update(12, "5");
+    offset.update(12, "10");
+
+    ChunkedFileOffset parsed = ChunkedFileOffset.parse(offset.toString(), 2048);
+    Assert.assertEquals(offset.toString(), parsed.toString());
+    Assert.assertEquals(1024, parsed.getChunkSize());
+    Assert.assertTrue(parsed.isDone(0));
+    Assert.assertFalse(parsed.isDone(1));
+    Assert.assertFalse(parsed.isDone(2));
+    Assert.assertTrue(parsed.isDone(3));
+    Assert.assertEquals("100", parsed.getOffset(1));
+    Assert.assertEquals("0", parsed.getOffset(2));
+    Assert.assertEquals("10", parsed.getOffset(12));
+
+    parsed.update(1, "-1");
+    Assert.assertTrue(parsed.isDone(1));
+    Assert.assertEquals("0", parsed.getOffset(1));
+    Assert.assertFalse(parsed.toString().contains("1=100"));
+  }
+
+  @Test
+  public void testWholeFileOffset() throws Exception {
+    Assert.assertFalse(ChunkedFileOffset.isChunked("1234"));
+    ChunkedFileOffset offset = ChunkedFileOffset.parse("1234", 1024);
+    // resumed as a single chunk from where it was left
+    Assert.assertEquals(0, offset.getChunkSize());
+    Assert.assertFalse(offset.isDone(0));
+    Assert.assertEquals("1234", offset.getOffset(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidOffset() throws Exception {
+    ChunkedFileOffset.parse("chunks:1024", 1024);
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.spooldir;
+
+import com.google.common.collect.ImmutableMap;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.Source;
+import com.streamsets.pipeline.api.Stage;
+import com.streamsets.pipeline.config.Compression;
+import com.streamsets.pipeline.config.DataFormat;
+import com.streamsets.pipeline.config.OnParseError;
+import com.streamsets.pipeline.config.PostProcessingOptions;
+import com.streamsets.pipeline.lib.dirspooler.PathMatcherMode;
+import com.streamsets.pipeline.sdk.PushSourceRunner;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+public class TestChunkedSpoolDirSource {
+  // a bit over 2 MB, that is 3 chunks of 1 MB
+  private static final int LINES = 200000;
+  private static final String LINE_FORMAT = "line-%07d";
+
+  private String createTestDir() {
+    File f = new File("target", UUID.randomUUID().toString());
+    Assert.assertTrue(f.mkdirs());
+    return f.getAbsolutePath();
+  }
+
+  private File createFile(String dir) throws Exception {
+    File file = new File(dir, "file-0.log");
+    try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+      for (int i = 0; i < LINES; i++) {
+        writer.print(String.format(LINE_FORMAT, i));
+        writer.print('\n');
+      }
+    }
+    return file;
+  }
+
+  private SpoolDirConfigBean createConf(int threads, boolean preserveOrder) {
+    SpoolDirConfigBean conf = new SpoolDirConfigBean();
+    conf.dataFormat = DataFormat.TEXT;
+    conf.dataFormatConfig.charset = "UTF-8";
+    conf.dataFormatConfig.removeCtrlChars = false;
+    conf.dataFormatConfig.textMaxLineLen = 100;
+    conf.dataFormatConfig.compression = Compression.NONE;
+    conf.dataFormatConfig.filePatternInArchive = "*";
+    conf.dataFormatConfig.onParseError = OnParseError.ERROR;
+    conf.dataFormatConfig.maxStackTraceLines = 0;
+    conf.overrunLimit = 100;
+    conf.spoolDir = createTestDir();
+    conf.batchSize = 1000;
+    conf.poolingTimeoutSecs = 1;
+    conf.filePattern = "file-[0-9].log";
+    conf.pathMatcherMode = PathMatcherMode.GLOB;
+    conf.maxSpoolFiles = 10;
+    conf.initialFileToProcess = null;
+    conf.errorArchiveDir = null;
+    conf.postProcessing = PostProcessingOptions.NONE;
+    conf.splitFiles = true;
+    conf.numberOfThreads = threads;
+    conf.chunkSizeMB = 1;
+    conf.preserveChunkOrder = preserveOrder;
+    conf.maxBufferedBatches = 10;
+    return conf;
+  }
+
+  private List<String> read(SpoolDirConfigBean conf, Map<String, String> offsets, int expected) throws Exception {
+    SpoolDirSource source = new SpoolDirSource(conf);
+    PushSourceRunner runner = new PushSourceRunner.Builder(SpoolDirDSource.class, source)
+        .addOutputLane("lane")
+        .build();
+    List<String> lines = Collections.synchronizedList(new ArrayList<>());
+    runner.runInit();
+    try {
+      runner.runProduce(offsets, 1000, output -> {
+        List<Record> records = output.getRecords().get("lane");
+        for (Record record : records) {
+          lines.add(record.get("/text").getValueAsString());
+        }
+        if (lines.size() >= expected) {
+          runner.setStop();
+        }
+      });
+      runner.waitOnProduce();
+    } finally {
+      runner.runDestroy();
+    }
+    return lines;
+  }
+
+  @Test
+  public void testReadChunksInParallel() throws Exception {
+    SpoolDirConfigBean conf = createConf(3, false);
+    createFile(conf.spoolDir);
+
+    List<String> lines = read(conf, new HashMap<>(), LINES);
+    Assert.assertEquals(LINES, lines.size());
+    Set<String> distinct = new HashSet<>(lines);
+    Assert.assertEquals(LINES, distinct.size());
+    for (int i = 0; i < LINES; i++) {
+      Assert.assertTrue(distinct.contains(String.format(LINE_FORMAT, i)));
+    }
+  }
+
+  @Test
+  public void testPreserveOrder() throws Exception {
+    SpoolDirConfigBean conf = createConf(3, true);
+    createFile(conf.spoolDir);
+
+    List<String> lines = read(conf, new HashMap<>(), LINES);
+    Assert.assertEquals(LINES, lines.size());
+    for (int i = 0; i < LINES; i++) {
+      Assert.assertEquals(String.format(LINE_FORMAT, i), lines.get(i));
+    }
+  }
+
+  @Test
+  public void testResumeFromChunkedOffset() throws Exception {
+    SpoolDirConfigBean conf = createConf(2, true);
+    File file = createFile(conf.spoolDir);
+    List<FileChunk> chunks = FileChunk.split(file.toPath(), 1024 * 1024);
+    Assert.assertEquals(3, chunks.size());
+
+    // first chunk read, 10 lines of the second chunk read
+    int lineLength = String.format(LINE_FORMAT, 0).length() + 1;
+    ChunkedFileOffset offset = new ChunkedFileOffset(1024 * 1024);
+    offset.update(0, "-1");
+    offset.update(1, String.valueOf(10 * lineLength));
+    int firstLine = (int) (chunks.get(1).getStart() / lineLength) + 10;
+
+    SpoolDirSource source = new SpoolDirSource(conf);
+    Map<String, String> offsets = ImmutableMap.of(
+        Source.POLL_SOURCE_OFFSET_KEY,
+        source.createSourceOffset("file-0.log", offset.toString())
+    );
+    List<String> lines = read(conf, offsets, LINES - firstLine);
+    Assert.assertEquals(LINES - firstLine, lines.size());
+    for (int i = firstLine; i < LINES; i++) {
+      Assert.assertEquals(String.format(LINE_FORMAT, i), lines.get(i - firstLine));
+    }
+  }
+
+  @Test
+  public void testUnsupportedFormat() throws Exception {
+    SpoolDirConfigBean conf = createConf(2, false);
+    conf.dataFormatConfig.useCustomDelimiter = true;
+    conf.dataFormatConfig.customDelimiter = ";";
+    PushSourceRunner runner = new PushSourceRunner.Builder(SpoolDirDSource.class, new SpoolDirSource(conf))
+        .addOutputLane("lane")
+        .build();
+    List<Stage.ConfigIssue> issues = runner.runValidateConfigs();
+    Assert.assertEquals(1, issues.size());
+    Assert.assertTrue(issues.get(0).toString().contains(Errors.SPOOLDIR_33.name()));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.spooldir;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+public class TestFileChunk {
+
+  private File createFile(String data) throws Exception {
+    File dir = new File("target", UUID.randomUUID().toString());
+    Assert.assertTrue(dir.mkdirs());
+    File file = new File(dir, "file.txt");
+    Files.write(file.toPath(), data.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  @Test
+  public void testSplitOnLines() throws Exception {
+    // lines of 10 bytes
+    File file = createFile("123456789\n123456789\n123456789\n123456789\n12345");
+    List<FileChunk> chunks = FileChunk.split(file.toPath(), 15);
+    Assert.assertEquals(3, chunks.size());
+    Assert.assertEquals(0, chunks.get(0).getStart());
+    Assert.assertEquals(20, chunks.get(0).getEnd());
+    Assert.assertEquals(20, chunks.get(1).getStart());
+    Assert.assertEquals(40, chunks.get(1).getEnd());
+    Assert.assertEquals(40, chunks.get(2).getStart());
+    Assert.assertEquals(45, chunks.get(2).getEnd());
+    Assert.assertEquals(2, chunks.get(2).getIndex());
+  }
+
+  @Test
+  public void testSplitOnExactLineEnd() throws Exception {
+    File file = createFile("123456789\n123456789\n123456789\n");
+    List<FileChunk> chunks = FileChunk.split(file.toPath(), 10);
+    Assert.assertEquals(3, chunks.size());
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(i * 10, chunks.get(i).getStart());
+      Assert.assertEquals(10, chunks.get(i).getLength());
+    }
+  }
+
+  @Test
+  public void testLineLongerThanChunks() throws Exception {
+    File file = createFile("1234567890123456789\n12345\n1234567890123456789");
+    List<FileChunk> chunks = FileChunk.split(file.toPath(), 4);
+    Assert.assertEquals(3, chunks.size());
+    Assert.assertEquals(20, chunks.get(0).getEnd());
+    Assert.assertEquals(26, chunks.get(1).getEnd());
+    Assert.assertEquals(45, chunks.get(2).getEnd());
+  }
+
+  @Test
+  public void testSingleChunk() throws Exception {
+    File file = createFile("123456789\n123456789\n");
+    List<FileChunk> chunks = FileChunk.split(file.toPath(), 0);
+    Assert.assertEquals(1, chunks.size());
+    Assert.assertEquals(0, chunks.get(0).getStart());
+    Assert.assertEquals(20, chunks.get(0).getEnd());
+  }
+
+  @Test
+  public void testEmptyFile() throws Exception {
+    Assert.assertTrue(FileChunk.split(createFile("").toPath(), 10).isEmpty());
+  }
+
+  @Test
+  public void testChunksStartOnLines() throws Exception {
+    Random random = new Random(1234);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      char[] line = new char[random.nextInt(300)];
+      Arrays.fill(line, 'x');
+      sb.append(line).append(random.nextBoolean() ? "\n" : "\r\n");
+    }
+    String data = sb.toString();
+    File file = createFile(data);
+    List<FileChunk> chunks = FileChunk.split(file.toPath(), 8 * 1024 + 7);
+    Assert.assertTrue(chunks.size() > 10);
+    long end = 0;
+    for (FileChunk chunk : chunks) {
+      Assert.assertEquals(end, chunk.getStart());
+      Assert.assertEquals('\n', data.charAt((int) chunk.getEnd() - 1));
+      end = chunk.getEnd();
+    }
+    Assert.assertEquals(data.length(), end);
+  }
+}
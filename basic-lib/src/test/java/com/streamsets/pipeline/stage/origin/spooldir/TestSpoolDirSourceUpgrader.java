@@ -64,4 +64,40 @@ public class TestSpoolDirSourceUpgrader {
     assertEquals(PathMatcherMode.GLOB, upgraded.get(0).getValue());
     assertEquals("conf.pathMatcherMode", upgraded.get(0).getName());
   }
+
+  @Test
+  public void testV9toV10() throws StageException {
+    SpoolDirSourceUpgrader spoolDirSourceUpgrader = new SpoolDirSourceUpgrader();
+
+    List<Config> configs = new ArrayList<>();
+    List<Config> upgraded = spoolDirSourceUpgrader.upgrade("x", "y", "z", 9, 10, configs);
+
+    assertEquals(5, upgraded.size());
+    assertEquals("conf.splitFiles", upgraded.get(0).getName());
+    assertEquals(false, upgraded.get(0).getValue());
+    assertEquals("conf.numberOfThreads", upgraded.get(1).getName());
+    assertEquals(1, upgraded.get(1).getValue());
+    assertEquals("conf.chunkSizeMB", upgraded.get(2).getName());
+    assertEquals(64, upgraded.get(2).getValue());
+    assertEquals("conf.preserveChunkOrder", upgraded.get(3).getName());
+    assertEquals(false, upgraded.get(3).getValue());
+    assertEquals("conf.maxBufferedBatches", upgraded.get(4).getName());
+    assertEquals(100, upgraded.get(4).getValue());
+  }
+
+  @Test
+  public void testV10toV11() throws StageException {
+    SpoolDirSourceUpgrader spoolDirSourceUpgrader = new SpoolDirSourceUpgrader();
+
+    List<Config> configs = new ArrayList<>();
+    List<Config> upgraded = spoolDirSourceUpgrader.upgrade("x", "y", "z", 10, 11, configs);
+
+    assertEquals(3, upgraded.size());
+    assertEquals("conf.incrementalDiscovery", upgraded.get(0).getName());
+    assertEquals(false, upgraded.get(0).getValue());
+    assertEquals("conf.fullScanIntervalMins", upgraded.get(1).getName());
+    assertEquals(60, upgraded.get(1).getValue());
+    assertEquals("conf.indexDir", upgraded.get(2).getName());
+    assertEquals("", upgraded.get(2).getValue());
+  }
 }
@@ -359,6 +359,19 @@ public class TestJavaScriptProcessor {
     ScriptingProcessorTestUtil.verifyNestedMap(JavaScriptProcessor.class, processor);
   }
 
+  @Test
+  public void testUntouchedFields() throws Exception {
+    Processor processor = new JavaScriptProcessor(
+        ProcessingMode.BATCH,
+        "for (var i = 0; i < records.length; i++){\n" +
+            "  records[i].value.changed = 'b';\n" +
+            "  records[i].value.nested.changed = 2;\n" +
+            "  output.write(records[i]);\n" +
+            "}"
+    );
+    ScriptingProcessorTestUtil.verifyUntouchedFields(JavaScriptProcessor.class, processor);
+  }
+
   @Test
   public void testChangeFieldTypeFromScripting() throws Exception {
     Processor processor = new JavaScriptProcessor(
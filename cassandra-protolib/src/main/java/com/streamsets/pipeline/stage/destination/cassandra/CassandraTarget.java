@@ -21,16 +21,23 @@ import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.CodecRegistry;
 import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.Host;
 import com.datastax.driver.core.KeyspaceMetadata;
 import com.datastax.driver.core.PlainTextAuthProvider;
 import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.TableMetadata;
 import com.datastax.driver.core.TypeCodec;
 import com.datastax.driver.core.exceptions.AuthenticationException;
 import com.datastax.driver.core.exceptions.CodecNotFoundException;
+import com.datastax.driver.core.exceptions.DriverException;
 import com.datastax.driver.core.exceptions.InvalidTypeException;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
 import com.datastax.driver.dse.auth.DseGSSAPIAuthProvider;
 import com.datastax.driver.dse.auth.DsePlainTextAuthProvider;
 import com.google.common.base.Function;
@@ -41,6 +48,7 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.streamsets.pipeline.api.Batch;
 import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Record;
@@ -60,18 +68,21 @@ import javax.annotation.Nullable;
 import javax.security.auth.Subject;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 /**
@@ -100,6 +111,8 @@ public class CassandraTarget extends BaseTarget {
   private Cluster cluster;
   private Session session;
 
+  private String keyspace;
+  private Map<Host, Semaphore> hostPermits;
   private SortedMap<String, String> columnMappings;
   private LoadingCache<SortedSet<String>, PreparedStatement> statementCache;
   private ErrorRecordHandler errorRecordHandler;
@@ -184,6 +197,7 @@ public class CassandraTarget extends BaseTarget {
       try {
         cluster = getCluster();
         session = cluster.connect();
+        hostPermits = new HashMap<>();
 
         statementCache = CacheBuilder.newBuilder()
             // No expiration as prepared statements are good for the entire session.
@@ -234,7 +248,7 @@ public class CassandraTarget extends BaseTarget {
     }
 
     final String[] tableNameParts = conf.qualifiedTableName.split("\\.");
-    final String keyspace = tableNameParts[0];
+    keyspace = tableNameParts[0];
     final String table = tableNameParts[1];
 
     try (Cluster validationCluster = getCluster()) {
@@ -282,8 +296,15 @@ public class CassandraTarget extends BaseTarget {
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public void write(Batch batch) throws StageException {
+    if (conf.writeMode == CassandraWriteMode.ASYNC_PER_PARTITION) {
+      writeAsyncPerPartition(batch);
+    } else {
+      writeBatched(batch);
+    }
+  }
+
+  private void writeBatched(Batch batch) throws StageException {
     // The batch holding the current batch to INSERT.
     BatchStatement batchedStatement = new BatchStatement(conf.batchType);
 
@@ -301,7 +322,7 @@ public class CassandraTarget extends BaseTarget {
         // this latest statement to it.
         if (batchedStatement.size() == conf.maxBatchSize) {
           session.execute(batchedStatement);
-          batchedStatement = new BatchStatement();
+          batchedStatement = new BatchStatement(conf.batchType);
         }
         batchedStatement.add(boundStmt);
       }
@@ -313,6 +334,100 @@ public class CassandraTarget extends BaseTarget {
     }
   }
 
+  /**
+   * Groups the records by partition key and sends each group as un-logged single partition batches without waiting
+   * for the previous requests to complete. The number of outstanding requests per replica is capped, records of
+   * failed requests are sent to error.
+   */
+  private void writeAsyncPerPartition(Batch batch) throws StageException {
+    ProtocolVersion protocolVersion = cluster.getConfiguration().getProtocolOptions().getProtocolVersion();
+    CodecRegistry codecRegistry = cluster.getConfiguration().getCodecRegistry();
+
+    // Records grouped by the serialized partition key, in order of first appearance.
+    Map<ByteBuffer, List<Record>> partitionRecords = new LinkedHashMap<>();
+    Map<ByteBuffer, List<Statement>> partitionStatements = new LinkedHashMap<>();
+
+    Iterator<Record> records = batch.getRecords();
+    while (records.hasNext()) {
+      final Record record = records.next();
+      BoundStatement boundStmt = recordToBoundStatement(record);
+      if (boundStmt != null) {
+        ByteBuffer partitionKey = boundStmt.getRoutingKey(protocolVersion, codecRegistry);
+        partitionRecords.computeIfAbsent(partitionKey, k -> new ArrayList<>()).add(record);
+        partitionStatements.computeIfAbsent(partitionKey, k -> new ArrayList<>()).add(boundStmt);
+      }
+    }
+
+    List<PendingWrite> pendingWrites = new ArrayList<>();
+    for (Map.Entry<ByteBuffer, List<Statement>> entry : partitionStatements.entrySet()) {
+      Semaphore permits = getHostPermits(entry.getKey());
+      List<Record> groupRecords = partitionRecords.get(entry.getKey());
+      List<Statement> statements = entry.getValue();
+      for (int start = 0; start < statements.size(); start += conf.maxBatchSize) {
+        int end = Math.min(start + conf.maxBatchSize, statements.size());
+        Statement statement;
+        if (end - start == 1) {
+          statement = statements.get(start);
+        } else {
+          statement = new BatchStatement(BatchStatement.Type.UNLOGGED).addAll(statements.subList(start, end));
+        }
+        permits.acquireUninterruptibly();
+        ResultSetFuture future = session.executeAsync(statement);
+        future.addListener(permits::release, MoreExecutors.directExecutor());
+        pendingWrites.add(new PendingWrite(groupRecords.subList(start, end), future));
+      }
+    }
+
+    // Wait for all the requests before reporting failures so that nothing is left in flight if the pipeline stops.
+    List<OnRecordErrorException> errors = new ArrayList<>();
+    for (PendingWrite pendingWrite : pendingWrites) {
+      try {
+        pendingWrite.future.getUninterruptibly();
+      } catch (DriverException e) {
+        LOG.debug(Errors.CASSANDRA_09.getMessage(), pendingWrite.records.get(0).getHeader().getSourceId(), e);
+        for (Record record : pendingWrite.records) {
+          errors.add(new OnRecordErrorException(
+              record,
+              Errors.CASSANDRA_09,
+              record.getHeader().getSourceId(),
+              e.toString(),
+              e
+          ));
+        }
+      }
+    }
+    for (OnRecordErrorException error : errors) {
+      errorRecordHandler.onError(error);
+    }
+  }
+
+  /**
+   * Returns the in-flight request permits of the first live replica owning the given partition. That is the replica
+   * the token aware load balancing policy sends the request to as replicas are not shuffled.
+   */
+  private Semaphore getHostPermits(ByteBuffer partitionKey) {
+    Host host = null;
+    if (partitionKey != null) {
+      for (Host replica : cluster.getMetadata().getReplicas(keyspace, partitionKey)) {
+        if (replica.isUp()) {
+          host = replica;
+          break;
+        }
+      }
+    }
+    return hostPermits.computeIfAbsent(host, h -> new Semaphore(conf.maxRequestsPerHost));
+  }
+
+  private static class PendingWrite {
+    private final List<Record> records;
+    private final ResultSetFuture future;
+
+    PendingWrite(List<Record> records, ResultSetFuture future) {
+      this.records = records;
+      this.future = future;
+    }
+  }
+
   /**
    * Convert a Record into a fully-bound statement.
    */
@@ -377,7 +492,12 @@ public class CassandraTarget extends BaseTarget {
   }
 
   private Cluster getCluster() throws StageException {
-    return Cluster.builder()
+    Cluster.Builder builder = Cluster.builder();
+    if (conf.writeMode == CassandraWriteMode.ASYNC_PER_PARTITION) {
+      // Always route to the first live replica so that the per host request limits are applied to the right host.
+      builder.withLoadBalancingPolicy(new TokenAwarePolicy(DCAwareRoundRobinPolicy.builder().build(), false));
+    }
+    return builder
         .addContactPoints(contactPoints)
         // If authentication is disabled on the C* cluster, this method has no effect.
         .withAuthProvider(getAuthProvider())
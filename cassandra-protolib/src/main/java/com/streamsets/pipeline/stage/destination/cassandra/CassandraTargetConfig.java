@@ -84,13 +84,40 @@ public class CassandraTargetConfig {
   @ValueChooserModel(CompressionChooserValues.class)
   public CassandraCompressionCodec compression = CassandraCompressionCodec.LZ4;
 
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.MODEL,
+      defaultValue = "BATCH",
+      label = "Write Mode",
+      description = "Batch sends all records in batches of the configured type in arrival order. Asynchronous per " +
+          "Partition groups records by partition key and sends un-logged single partition batches concurrently.",
+      displayPosition = 55
+  )
+  @ValueChooserModel(WriteModeChooserValues.class)
+  public CassandraWriteMode writeMode = CassandraWriteMode.BATCH;
+
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "128",
+      min = 1,
+      label = "Max Requests per Host",
+      description = "Maximum number of concurrent requests sent to a single replica.",
+      displayPosition = 57,
+      dependsOn = "writeMode",
+      triggeredByValue = "ASYNC_PER_PARTITION"
+  )
+  public int maxRequestsPerHost = 128;
+
   @ConfigDef(
       required = true,
       type = ConfigDef.Type.MODEL,
       defaultValue = "LOGGED",
       label = "Batch Type",
       description = "Un-logged batches do not use the Cassandra distributed batch log and as such as nonatomic.",
-      displayPosition = 60
+      displayPosition = 60,
+      dependsOn = "writeMode",
+      triggeredByValue = "BATCH"
   )
   @ValueChooserModel(BatchTypeChooserValues.class)
   public BatchStatement.Type batchType = BatchStatement.Type.LOGGED;
@@ -15,6 +15,7 @@
  */
 package com.streamsets.pipeline.stage.destination.cassandra;
 
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.LocalDate;
 import com.datastax.driver.core.ProtocolVersion;
@@ -31,6 +32,7 @@ import com.streamsets.pipeline.api.Target;
 import com.streamsets.pipeline.sdk.RecordCreator;
 import com.streamsets.pipeline.sdk.TargetRunner;
 import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.thrift.transport.TTransportException;
 import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
 import org.junit.After;
@@ -47,6 +49,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.fail;
 
@@ -611,4 +614,144 @@ public class TestCassandraTarget {
     Assert.assertEquals("abc", row.getString("a"));
     Assert.assertEquals(null, row.getString("b"));
   }
+
+  private static CassandraTargetConfig createTripsConfig() {
+    CassandraTargetConfig conf = new CassandraTargetConfig();
+    conf.contactPoints.add("localhost");
+    conf.port = CASSANDRA_NATIVE_PORT;
+    conf.protocolVersion = ProtocolVersion.V4;
+    conf.authProviderOption = AuthProviderOption.NONE;
+    conf.compression = CassandraCompressionCodec.NONE;
+    conf.columnNames = ImmutableList.of(
+        new CassandraFieldMappingConfig("[0]", "driver_id"),
+        new CassandraFieldMappingConfig("[1]", "trip_id"),
+        new CassandraFieldMappingConfig("[2]", "time"),
+        new CassandraFieldMappingConfig("[3]", "x"),
+        new CassandraFieldMappingConfig("[4]", "y")
+    );
+    conf.qualifiedTableName = "test.trips";
+    return conf;
+  }
+
+  private static List<Record> createTrips(int drivers, int tripsPerDriver) {
+    List<Record> records = new ArrayList<>();
+    // Interleave the drivers so that consecutive records belong to different partitions
+    for (int trip = 0; trip < tripsPerDriver; trip++) {
+      for (int driver = 0; driver < drivers; driver++) {
+        Record record = RecordCreator.create();
+        List<Field> fields = new ArrayList<>();
+        fields.add(Field.create(driver));
+        fields.add(Field.create(trip));
+        fields.add(Field.create(3));
+        fields.add(Field.create(4.0));
+        fields.add(Field.create(5.0));
+        record.set(Field.create(fields));
+        records.add(record);
+      }
+    }
+    return records;
+  }
+
+  private static long writeAndMeasure(CassandraTargetConfig conf, List<Record> records) throws StageException {
+    Target target = new CassandraTarget(conf);
+    TargetRunner targetRunner = new TargetRunner.Builder(CassandraDTarget.class, target).build();
+    targetRunner.runInit();
+    long start = System.nanoTime();
+    targetRunner.runWrite(records);
+    long elapsed = System.nanoTime() - start;
+    Assert.assertTrue(targetRunner.getErrorRecords().isEmpty());
+    targetRunner.runDestroy();
+    return TimeUnit.NANOSECONDS.toMillis(elapsed);
+  }
+
+  @Test
+  public void testAsyncPerPartitionWrite() throws Exception {
+    CassandraTargetConfig conf = createTripsConfig();
+    conf.writeMode = CassandraWriteMode.ASYNC_PER_PARTITION;
+    conf.maxRequestsPerHost = 4;
+    conf.maxBatchSize = 7;
+
+    Target target = new CassandraTarget(conf);
+    TargetRunner targetRunner = new TargetRunner.Builder(CassandraDTarget.class, target).build();
+    targetRunner.runInit();
+    targetRunner.runWrite(createTrips(50, 20));
+
+    Assert.assertTrue(targetRunner.getErrorRecords().isEmpty());
+    Assert.assertTrue(targetRunner.getErrors().isEmpty());
+    targetRunner.runDestroy();
+
+    Assert.assertEquals(1000, session.execute("SELECT * FROM test.trips").all().size());
+    for (int driver = 0; driver < 50; driver++) {
+      Assert.assertEquals(
+          20,
+          session.execute("SELECT * FROM test.trips WHERE driver_id = " + driver).all().size()
+      );
+    }
+  }
+
+  @Test
+  public void testAsyncPerPartitionWriteFailure() throws Exception {
+    CassandraTargetConfig conf = new CassandraTargetConfig();
+    conf.contactPoints.add("localhost");
+    conf.port = CASSANDRA_NATIVE_PORT;
+    conf.protocolVersion = ProtocolVersion.V4;
+    conf.authProviderOption = AuthProviderOption.NONE;
+    conf.compression = CassandraCompressionCodec.NONE;
+    conf.columnNames = ImmutableList.of(
+        new CassandraFieldMappingConfig("[0]", "a"),
+        new CassandraFieldMappingConfig("[1]", "b")
+    );
+    conf.qualifiedTableName = "test.test_null_values";
+    conf.writeMode = CassandraWriteMode.ASYNC_PER_PARTITION;
+
+    Target target = new CassandraTarget(conf);
+    TargetRunner targetRunner = new TargetRunner.Builder(CassandraDTarget.class, target)
+        .setOnRecordError(OnRecordError.TO_ERROR)
+        .build();
+
+    // Cassandra rejects partition keys longer than 64KB
+    List<Record> records = new ArrayList<>();
+    for (String key : ImmutableList.of("a", StringUtils.repeat("x", 70000), "b")) {
+      Record record = RecordCreator.create();
+      record.set(Field.create(ImmutableList.of(Field.create(key), Field.create("value"))));
+      records.add(record);
+    }
+
+    targetRunner.runInit();
+    targetRunner.runWrite(records);
+
+    List<Record> errorRecords = targetRunner.getErrorRecords();
+    Assert.assertEquals(1, errorRecords.size());
+    Assert.assertEquals(Errors.CASSANDRA_09.name(), errorRecords.get(0).getHeader().getErrorCode());
+    Assert.assertEquals(70000, errorRecords.get(0).get("[0]").getValueAsString().length());
+    targetRunner.runDestroy();
+
+    Assert.assertEquals(2, session.execute("SELECT * FROM test.test_null_values").all().size());
+  }
+
+  /**
+   * Compares the time taken to write the same records with both write modes.
+   */
+  @Test
+  public void testAsyncPerPartitionWriteComparedToBatchWrite() throws Exception {
+    List<Record> records = createTrips(500, 20);
+
+    CassandraTargetConfig batchConf = createTripsConfig();
+    batchConf.batchType = BatchStatement.Type.UNLOGGED;
+    batchConf.maxBatchSize = 100;
+    long batchMillis = writeAndMeasure(batchConf, records);
+    session.execute("TRUNCATE test.trips");
+
+    CassandraTargetConfig asyncConf = createTripsConfig();
+    asyncConf.writeMode = CassandraWriteMode.ASYNC_PER_PARTITION;
+    asyncConf.maxBatchSize = 100;
+    long asyncMillis = writeAndMeasure(asyncConf, records);
+
+    LOG.info("Wrote {} records: batch write mode {} ms, asynchronous per partition write mode {} ms",
+        records.size(),
+        batchMillis,
+        asyncMillis
+    );
+    Assert.assertEquals(records.size(), session.execute("SELECT * FROM test.trips").all().size());
+  }
 }
@@ -27,6 +27,7 @@ public class EmbeddedSDC {
   private static final AtomicInteger instanceIdCounter = new AtomicInteger(0);
   private final int instanceId;
   private ClusterSource source;
+  private final AtomicInteger batchesInFlight = new AtomicInteger(0);
 
   // To avoid having SparkProcessors in classpath for Cluster batch mode, we use objects here.
   private List<Object> sparkProcessors;
@@ -55,6 +56,32 @@ public class EmbeddedSDC {
     return id < sparkProcessors.size() ? sparkProcessors.get(id) : null;
   }
 
+  /**
+   * Reserves a batch slot if less than <code>maxBatches</code> batches are in flight.
+   */
+  boolean tryAcquireBatchSlot(int maxBatches) {
+    while (true) {
+      int current = batchesInFlight.get();
+      if (current >= maxBatches) {
+        return false;
+      }
+      if (batchesInFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Releases a batch slot, returns the number of batches in flight before the release.
+   */
+  int releaseBatchSlot() {
+    return batchesInFlight.getAndDecrement();
+  }
+
+  int getBatchesInFlight() {
+    return batchesInFlight.get();
+  }
+
   public boolean inErrorState() {
     return source != null && source.inErrorState();
   }
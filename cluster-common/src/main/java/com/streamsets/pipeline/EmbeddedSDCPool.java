@@ -19,21 +19,22 @@ import com.google.common.base.Preconditions;
 import com.streamsets.pipeline.api.Source;
 import com.streamsets.pipeline.api.impl.ClusterSource;
 import com.streamsets.pipeline.api.impl.Utils;
+import com.streamsets.pipeline.cluster.DataChannel;
 import com.streamsets.pipeline.configurablestage.DSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
-import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -48,6 +49,8 @@ public class EmbeddedSDCPool {
   private volatile boolean open;
   private static final ReentrantLock lock = new ReentrantLock();
   private static EmbeddedSDCPool instance;
+  public static final String BATCH_SLOTS_KEY = "stage.conf_" + DataChannel.SLOTS_CONFIG;
+  public static final int BATCH_SLOTS_DEFAULT = 1;
 
   /**
    * notStarted => Batch has not started yet, so no data read from kafka
@@ -75,10 +78,21 @@ public class EmbeddedSDCPool {
    *   we wait for batch completion, and then add the sdc to notStarted.
    *
    */
-  private Set<EmbeddedSDC> notStarted = new HashSet<>();
-  private Map<Integer, Deque<EmbeddedSDC>> batchRead = new HashMap<>();
-  private Set<EmbeddedSDC> used = new HashSet<>();
-  private int sparkProcessorCount;
+  private final Deque<EmbeddedSDC> notStarted = new ConcurrentLinkedDeque<>();
+  // an SDC is in notStarted if and only if it has a free batch slot, taking and releasing slots must be atomic with
+  // moving the SDC in and out of notStarted
+  private final Object notStartedLock = new Object();
+  private final ConcurrentMap<Integer, Deque<EmbeddedSDC>> batchRead = new ConcurrentHashMap<>();
+  private final Set<EmbeddedSDC> instances = ConcurrentHashMap.newKeySet();
+  private volatile int sparkProcessorCount;
+
+  /**
+   * Maximum number of batches an SDC without spark processors accepts at once. With more than one, a batch can be
+   * handed off to an SDC while it is still processing the previous one, instead of being handed to a new SDC.
+   * SDCs with spark processors always take one batch at a time as the processors hold the batch state.
+   */
+  private final int batchSlots;
+  private final AtomicLong overlappedCheckouts = new AtomicLong();
 
   /**
    * Create a pool. For now, there is only instance being created
@@ -89,6 +103,8 @@ public class EmbeddedSDCPool {
     this.open = true;
     this.properties = properties;
     infinitePoolSize = Boolean.valueOf(properties.getProperty("sdc.pool.size.infinite", "true"));
+    batchSlots = Integer.parseInt(properties.getProperty(BATCH_SLOTS_KEY, String.valueOf(BATCH_SLOTS_DEFAULT)));
+    Preconditions.checkArgument(batchSlots > 0, "'%s' must be greater than zero: %s", BATCH_SLOTS_KEY, batchSlots);
   }
 
 
@@ -155,23 +171,43 @@ public class EmbeddedSDCPool {
     return embeddedSDC;
   }
 
-  public synchronized EmbeddedSDC getNotStartedSDC() throws Exception {
+  public EmbeddedSDC getNotStartedSDC() throws Exception {
     if (IS_TRACE_ENABLED) {
       LOG.trace("Getting SDC whose pipeline has not started.");
     }
+    int maxBatches = getMaxBatchesPerSDC();
     EmbeddedSDC sdc;
-    Iterator<EmbeddedSDC> notStartedIter = notStarted.iterator();
-    if (notStartedIter.hasNext()) {
-      sdc = notStartedIter.next();
-      notStartedIter.remove();
-    } else {
+    synchronized (notStartedLock) {
+      sdc = notStarted.pollFirst();
+      if (sdc != null) {
+        acquireBatchSlot(sdc, maxBatches);
+      }
+    }
+    if (sdc == null) {
+      // starting a pipeline is slow, do it without holding the lock
       sdc = create();
+      instances.add(sdc);
+      synchronized (notStartedLock) {
+        acquireBatchSlot(sdc, maxBatches);
+      }
     }
-    used.add(sdc);
     return sdc;
   }
 
-  public synchronized EmbeddedSDC getSDCBatchRead(int id) throws Exception {
+  // must be called holding notStartedLock, with the SDC not in notStarted
+  private void acquireBatchSlot(EmbeddedSDC sdc, int maxBatches) {
+    Utils.checkState(sdc.tryAcquireBatchSlot(maxBatches), "SDC has no free batch slot");
+    int inFlight = sdc.getBatchesInFlight();
+    if (inFlight > 1) {
+      overlappedCheckouts.incrementAndGet();
+    }
+    if (inFlight < maxBatches) {
+      // SDCs with free slots go after the idle ones
+      notStarted.offerLast(sdc);
+    }
+  }
+
+  public EmbeddedSDC getSDCBatchRead(int id) throws Exception {
     if (IS_TRACE_ENABLED) {
       LOG.trace("Getting SDC whose batch been read for id: " + id);
     }
@@ -180,19 +216,32 @@ public class EmbeddedSDCPool {
     return getOrCreate(id, batchRead);
   }
 
-  public synchronized void checkInAfterReadingBatch(int id, EmbeddedSDC sdc) throws Exception {
+  public void checkInAfterReadingBatch(int id, EmbeddedSDC sdc) throws Exception {
     if (IS_TRACE_ENABLED) {
       LOG.trace("Checking SDC in after batch written for id: " + id);
     }
     if  (id == sparkProcessorCount) {
       sdc.getSource().completeBatch();
-      notStarted.add(sdc);
-      used.remove(sdc);
+      synchronized (notStartedLock) {
+        // an SDC that had no free slot is not in the pool, the thread freeing the slot puts it back
+        int inFlight = sdc.releaseBatchSlot();
+        if (inFlight == getMaxBatchesPerSDC()) {
+          if (inFlight == 1) {
+            notStarted.offerFirst(sdc);
+          } else {
+            notStarted.offerLast(sdc);
+          }
+        }
+      }
     } else {
       checkInAtId(id, sdc, batchRead);
     }
   }
 
+  private int getMaxBatchesPerSDC() {
+    return (sparkProcessorCount == 0) ? batchSlots : 1;
+  }
+
   /**
    * What is this?!
    * Spark could end up scheduling transformers to run on machines that may actually not have received the data, due to:
@@ -211,13 +260,8 @@ public class EmbeddedSDCPool {
       return null;
     }
     LOG.info("No SDC was found at ID: " + id + ". Fast-forwarding..");
-    EmbeddedSDC sdc;
-    // If there are not SDCs that are just idling, create a new one, else return one from the not started pool.
-    if (notStarted.isEmpty()) {
-      sdc = create();
-    } else {
-      sdc = getNotStartedSDC();
-    }
+    // Takes an SDC that is just idling or creates a new one
+    EmbeddedSDC sdc = getNotStartedSDC();
 
     Class<?> clusterFunctionClass = Class.forName("com.streamsets.pipeline.cluster.ClusterFunctionImpl");
     Method getBatch = clusterFunctionClass.getMethod("getNextBatch", int.class, EmbeddedSDC.class);
@@ -231,37 +275,32 @@ public class EmbeddedSDCPool {
     return sdc;
   }
 
-  private synchronized void checkInAtId(
+  private void checkInAtId(
       int id,
       EmbeddedSDC sdc,
-      Map<Integer, Deque<EmbeddedSDC>> sdcMap
+      ConcurrentMap<Integer, Deque<EmbeddedSDC>> sdcMap
   ) throws Exception {
-    Deque<EmbeddedSDC> sdcList = sdcMap.computeIfAbsent(id, i -> new ArrayDeque<>());
+    Deque<EmbeddedSDC> sdcList = sdcMap.computeIfAbsent(id, i -> new ConcurrentLinkedDeque<>());
     sdcList.addLast(sdc);
-    used.remove(sdc);
   }
 
-  private EmbeddedSDC getOrCreate(int id, Map<Integer, Deque<EmbeddedSDC>> sdcMap) throws Exception {
-    Deque<EmbeddedSDC> deque = sdcMap.computeIfAbsent(id, key -> new ArrayDeque<>());
-    EmbeddedSDC sdc;
-    if (!deque.isEmpty()) {
-      sdc = deque.removeFirst();
-    } else {
+  private EmbeddedSDC getOrCreate(int id, ConcurrentMap<Integer, Deque<EmbeddedSDC>> sdcMap) throws Exception {
+    Deque<EmbeddedSDC> deque = sdcMap.computeIfAbsent(id, key -> new ConcurrentLinkedDeque<>());
+    EmbeddedSDC sdc = deque.pollFirst();
+    if (sdc == null) {
       sdc = fastForward(id);
     }
-    used.add(sdc);
     return sdc;
   }
 
-  public synchronized void shutdown() {
+  public void shutdown() {
     this.open = false;
-    used.forEach(sdc -> sdc.getSource().shutdown());
-    shutdownAllInMap(batchRead);
-    notStarted.forEach(sdc -> sdc.getSource().shutdown());
-  }
-
-  private void shutdownAllInMap(Map<Integer, Deque<EmbeddedSDC>> sdcMap) {
-    sdcMap.values().forEach(sdcList -> sdcList.forEach(sdc -> sdc.getSource().shutdown()));
+    LOG.info(
+        "Shutting down {} embedded SDCs, {} batches were handed to an SDC with a batch in flight",
+        instances.size(),
+        overlappedCheckouts.get()
+    );
+    instances.forEach(sdc -> sdc.getSource().shutdown());
   }
 
 }
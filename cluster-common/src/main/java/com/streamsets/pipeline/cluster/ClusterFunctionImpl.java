@@ -97,7 +97,10 @@ public class ClusterFunctionImpl implements ClusterFunction  {
     try {
       sdc = sdcPool.getNotStartedSDC();
       ClusterSource source = sdc.getSource();
-      offset = source.put(batch);
+      // the SDC may be shared with other tasks when it accepts more than one batch at a time
+      synchronized (sdc) {
+        offset = source.put(batch);
+      }
       return getNextBatch(0, sdc);
     } catch (Exception | Error e) {
       // Get the stacktrace as string as the spark driver wont have the jars
@@ -106,6 +106,7 @@ public class Consumer {
     LOG.trace("Last committed offset '{}', attempting to commit '{}'", lastCommittedOffset, offset);
     Utils.checkState(null != lastCommittedOffset, "Last committed offset cannot be null");
     controlChannel.consumerCommit(offset);
+    dataChannel.commit();
     lastCommittedOffset = offset;
   }
 
@@ -15,25 +15,149 @@
  */
 package com.streamsets.pipeline.cluster;
 
+import com.google.common.base.Preconditions;
+import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.impl.OffsetAndResult;
 
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implements a uni-directional data flow from producer to consumer.
+ * <p/>
+ * The channel has a configurable number of slots, the default of one slot allows the producer to hand off the next
+ * batch while the consumer is still processing the current one. Every batch gets a sequence number when it is queued
+ * and the consumer acknowledges batches in order, so a producer can wait for the commit of its own batch while other
+ * batches are queued behind it.
  */
 public class DataChannel {
+  /**
+   * Stage configuration with the number of slots of the data channels created by the cluster sources. It is set in
+   * sdc.properties with the <code>stage.conf_</code> prefix, the {@link com.streamsets.pipeline.EmbeddedSDCPool}
+   * reads the same property for its batch slots.
+   */
+  public static final String SLOTS_CONFIG = "cluster.batch.slots";
+  public static final String HANDOFF_GAUGE = "Batch Handoff";
+  private static final String OVERLAPPED_BATCHES = "Overlapped Batches";
+  private static final String PRODUCER_WAIT = "Producer Wait (ms)";
+  private static final String CONSUMER_WAIT = "Consumer Wait (ms)";
 
-  private final BlockingQueue<OffsetAndResult<Map.Entry>> dataQueue = new ArrayBlockingQueue<>(1);
+  private final BlockingQueue<Slot> dataQueue;
+  private final Object offerLock = new Object();
+  private long offeredSequence;
+  private long takenSequence;
+  private volatile long committedSequence;
+  private volatile boolean consumerBusy;
 
-  public boolean offer(OffsetAndResult<Map.Entry> batch, long timeout, TimeUnit unit) throws InterruptedException {
-    return dataQueue.offer(batch, timeout, unit);
+  private final AtomicLong overlappedBatches = new AtomicLong();
+  private final AtomicLong producerWaitNanos = new AtomicLong();
+  private final AtomicLong consumerWaitNanos = new AtomicLong();
+
+  public DataChannel() {
+    this(1);
+  }
+
+  public DataChannel(int slots) {
+    Preconditions.checkArgument(slots > 0, "Data channel slots must be greater than zero: %s", slots);
+    dataQueue = new ArrayBlockingQueue<>(slots);
+  }
+
+  /**
+   * Number of slots for the data channel of a cluster source, see {@link #SLOTS_CONFIG}.
+   */
+  public static int getConfiguredSlots(Stage.Context context) {
+    String slots = context.getConfig(SLOTS_CONFIG);
+    return (slots == null) ? 1 : Integer.parseInt(slots.trim());
+  }
+
+  /**
+   * Queues a batch, returns the sequence number of the batch or <code>-1</code> if the channel was full for the
+   * given timeout.
+   */
+  public long offer(OffsetAndResult<Map.Entry> batch, long timeout, TimeUnit unit) throws InterruptedException {
+    long start = System.nanoTime();
+    try {
+      // sequence numbers must follow queue order
+      synchronized (offerLock) {
+        Slot slot = new Slot(offeredSequence + 1, batch);
+        if (!dataQueue.offer(slot, timeout, unit)) {
+          return -1;
+        }
+        offeredSequence = slot.sequence;
+        if (consumerBusy) {
+          overlappedBatches.incrementAndGet();
+        }
+        return slot.sequence;
+      }
+    } finally {
+      producerWaitNanos.addAndGet(System.nanoTime() - start);
+    }
   }
 
   public OffsetAndResult<Map.Entry> take(long timeout, TimeUnit unit) throws InterruptedException {
-    return dataQueue.poll(timeout, unit);
+    long start = System.nanoTime();
+    Slot slot = dataQueue.poll(timeout, unit);
+    consumerWaitNanos.addAndGet(System.nanoTime() - start);
+    if (slot == null) {
+      return null;
+    }
+    takenSequence = slot.sequence;
+    consumerBusy = true;
+    return slot.batch;
+  }
+
+  /**
+   * Acknowledges the last batch taken by the consumer.
+   */
+  public void commit() {
+    consumerBusy = false;
+    committedSequence = takenSequence;
+  }
+
+  public boolean isCommitted(long sequence) {
+    return committedSequence >= sequence;
+  }
+
+  /**
+   * Number of batches that were queued while the consumer was processing a previous batch.
+   */
+  public long getOverlappedBatches() {
+    return overlappedBatches.get();
+  }
+
+  /**
+   * Total time producers spent handing off batches, including waiting for a free slot.
+   */
+  public long getProducerWaitTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(producerWaitNanos.get());
+  }
+
+  /**
+   * Total time the consumer spent waiting for batches.
+   */
+  public long getConsumerWaitTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(consumerWaitNanos.get());
+  }
+
+  /**
+   * Copies the handoff counters into the given stage gauge map.
+   */
+  public void updateGauge(Map<String, Object> gauge) {
+    gauge.put(OVERLAPPED_BATCHES, getOverlappedBatches());
+    gauge.put(PRODUCER_WAIT, getProducerWaitTimeMillis());
+    gauge.put(CONSUMER_WAIT, getConsumerWaitTimeMillis());
+  }
+
+  private static class Slot {
+    private final long sequence;
+    private final OffsetAndResult<Map.Entry> batch;
+
+    private Slot(long sequence, OffsetAndResult<Map.Entry> batch) {
+      this.sequence = sequence;
+      this.batch = batch;
+    }
   }
 }
@@ -33,6 +33,9 @@ public class Producer {
   private final DataChannel dataChannel;
   private volatile Throwable consumerError;
   private volatile Throwable producerError;
+  // sequence of the batch put by the current thread, the same thread usually waits for its commit
+  private final ThreadLocal<Long> putSequence = new ThreadLocal<>();
+  private volatile long lastPutSequence;
 
   public Producer(ControlChannel controlChannel, DataChannel dataChannel) {
     this.controlChannel = controlChannel;
@@ -64,9 +67,13 @@ public class Producer {
       if (!batch.getResult().isEmpty()) {
         expectedOffset = batch.getResult().get(batch.getResult().size() - 1).getKey(); // get the last one
       }
-      while (!dataChannel.offer(batch, 10, TimeUnit.MILLISECONDS)) {
+      long sequence;
+      while ((sequence = dataChannel.offer(batch, 10, TimeUnit.MILLISECONDS)) < 0) {
         for (ControlChannel.Message controlMessage : controlChannel.getProducerMessages()) {
           switch (controlMessage.getType()) {
+            case CONSUMER_COMMIT:
+              // commit of a batch queued earlier, waiters check the data channel sequence
+              break;
             case CONSUMER_ERROR:
               Throwable throwable = (Throwable) controlMessage.getPayload();
               consumerError = throwable;
@@ -77,6 +84,8 @@ public class Producer {
           }
         }
       }
+      putSequence.set(sequence);
+      lastPutSequence = sequence;
       return expectedOffset;
     } catch (Throwable throwable) {
       controlChannel.producerComplete();
@@ -92,7 +101,14 @@ public class Producer {
     }
   }
 
+  /**
+   * Waits until the consumer commits the batch put by the current thread, or the last batch put if the current
+   * thread did not put any. Batches queued after it may still be in flight.
+   */
   public void waitForCommit() throws InterruptedException {
+    Long sequence = putSequence.get();
+    putSequence.remove();
+    long waitFor = (sequence != null) ? sequence : lastPutSequence;
     while (true) {
       for (ControlChannel.Message controlMessage : controlChannel.getProducerMessages()) {
         switch (controlMessage.getType()) {
@@ -100,7 +116,7 @@ public class Producer {
             if (LOG.isTraceEnabled()) {
               LOG.trace("Commit of: '{}'", controlMessage.getPayload());
             }
-            return;
+            break;
           case CONSUMER_ERROR:
             Throwable throwable = (Throwable) controlMessage.getPayload();
             consumerError = throwable;
@@ -110,6 +126,14 @@ public class Producer {
               controlMessage.getType()));
         }
       }
+      if (dataChannel.isCommitted(waitFor)) {
+        return;
+      }
+      // another thread waiting on the same channel may have received the error
+      Throwable throwable = consumerError;
+      if (throwable != null) {
+        throw new ConsumerRuntimeException(Utils.format("Consumer encountered error: {}", throwable), throwable);
+      }
       TimeUnit.MILLISECONDS.sleep(10);
     }
   }
@@ -13,128 +13,143 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-///**
-// * Copyright 2015 StreamSets Inc.
-// *
-// * Licensed under the Apache Software Foundation (ASF) under one
-// * or more contributor license agreements.  See the NOTICE file
-// * distributed with this work for additional information
-// * regarding copyright ownership.  The ASF licenses this file
-// * to you under the Apache License, Version 2.0 (the
-// * "License"); you may not use this file except in compliance
-// * with the License.  You may obtain a copy of the License at
-// *
-// *     http://www.apache.org/licenses/LICENSE-2.0
-// *
-// * Unless required by applicable law or agreed to in writing, software
-// * distributed under the License is distributed on an "AS IS" BASIS,
-// * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-// * See the License for the specific language governing permissions and
-// * limitations under the License.
-// */
-//package com.streamsets.pipeline;
-//
-//import static org.junit.Assert.assertEquals;
-//import static org.junit.Assert.assertNull;
-//import static org.junit.Assert.assertTrue;
-//
-//import java.util.Properties;
-//import java.util.concurrent.Executors;
-//
-//import org.junit.Assert;
-//import org.junit.Test;
-//
-//import com.google.common.util.concurrent.ListenableFuture;
-//import com.google.common.util.concurrent.ListeningExecutorService;
-//import com.google.common.util.concurrent.MoreExecutors;
-//
-//public class TestEmbeddedSDCPool {
-//
-//  static class DummyEmbeddedSDCPool extends EmbeddedSDCPool {
-//    public DummyEmbeddedSDCPool(Properties properties) throws Exception {
-//      super(properties);
-//    }
-//
-//    @Override
-//    protected EmbeddedSDC create() throws Exception {
-//      return new EmbeddedSDC();
-//    }
-//  }
-//
-//  @Test(timeout = 60000)
-//  public void testEmbeddedSDC() throws Exception {
-//    Properties props = new Properties();
-//    props.setProperty("sdc.pool.size.infinite", "true");
-//    DummyEmbeddedSDCPool dummyEmbeddedSDCPool = new DummyEmbeddedSDCPool(props);
-//    Assert.assertEquals(1, dummyEmbeddedSDCPool.getInstances().size());
-//    Assert.assertEquals(1, dummyEmbeddedSDCPool.size());
-//    // Now retrieve the created one
-//    EmbeddedSDC embeddedSDC1 = dummyEmbeddedSDCPool.checkout();
-//    Assert.assertEquals(0, dummyEmbeddedSDCPool.size());
-//    Assert.assertEquals(1, dummyEmbeddedSDCPool.getInstances().size());
-//
-//    // This should create new SDC
-//    EmbeddedSDC embeddedSDC2 = dummyEmbeddedSDCPool.checkout();
-//    Assert.assertEquals(0, dummyEmbeddedSDCPool.size());
-//    Assert.assertEquals(2, dummyEmbeddedSDCPool.getInstances().size());
-//
-//    // Return one back
-//    dummyEmbeddedSDCPool.checkin(embeddedSDC1);
-//    Assert.assertEquals(1, dummyEmbeddedSDCPool.size());
-//
-//    dummyEmbeddedSDCPool.checkin(embeddedSDC2);
-//    Assert.assertEquals(2, dummyEmbeddedSDCPool.size());
-//    Assert.assertEquals(2, dummyEmbeddedSDCPool.getInstances().size());
-//
-//    // Return the same instance back again
-//    dummyEmbeddedSDCPool.checkin(embeddedSDC1);
-//    Assert.assertEquals(2, dummyEmbeddedSDCPool.size());
-//  }
-//
-//  @Test(timeout = 90000)
-//  public void testEmbeddedSDCTimeout() throws Exception {
-//    Properties props = new Properties();
-//    DummyEmbeddedSDCPool dummyEmbeddedSDCPool = new DummyEmbeddedSDCPool(props);
-//    Assert.assertEquals(1, dummyEmbeddedSDCPool.getInstances().size());
-//    Assert.assertEquals(1, dummyEmbeddedSDCPool.size());
-//    EmbeddedSDC embeddedSDC1 = dummyEmbeddedSDCPool.checkout();
-//    Assert.assertEquals(0, dummyEmbeddedSDCPool.size());
-//
-//    // Nothing in pool, so wait() should return null
-//    assertNull(dummyEmbeddedSDCPool.waitForSDC(3000));
-//    ListeningExecutorService executorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(1));
-//
-//    WaitOnSDCRunnable th = new WaitOnSDCRunnable(dummyEmbeddedSDCPool);
-//    ListenableFuture future = executorService.submit(th);
-//    Thread.sleep(100);
-//    // shouldn't be done yet
-//    assertTrue(!future.isDone());
-//    assertNull(th.embeddedSDC);
-//    // return back sdc to pool
-//    dummyEmbeddedSDCPool.checkin(embeddedSDC1);
-//    assertNull(future.get());
-//    assertEquals(embeddedSDC1, th.embeddedSDC);
-//  }
-//
-//  private class WaitOnSDCRunnable implements Runnable {
-//    private EmbeddedSDCPool embeddedPool;
-//    public EmbeddedSDC embeddedSDC;
-//
-//    public WaitOnSDCRunnable(EmbeddedSDCPool embeddedPool) {
-//      this.embeddedPool = embeddedPool;
-//    }
-//
-//    @Override
-//    public void run() {
-//      try {
-//        doWaiting();
-//      } catch (Exception e) {
-//        throw new RuntimeException("Failed wait", e);
-//      }
-//    }
-//
-//    void doWaiting() throws Exception {
-//      embeddedSDC = embeddedPool.checkout();
-//    }
-//  }
-//}
+package com.streamsets.pipeline;
+
+import com.streamsets.pipeline.api.impl.ClusterSource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestEmbeddedSDCPool {
+
+  static class DummyEmbeddedSDCPool extends EmbeddedSDCPool {
+    private final AtomicInteger created = new AtomicInteger();
+
+    DummyEmbeddedSDCPool(int batchSlots) throws Exception {
+      super(createProperties(batchSlots));
+    }
+
+    private static Properties createProperties(int batchSlots) {
+      Properties properties = new Properties();
+      properties.setProperty(EmbeddedSDCPool.BATCH_SLOTS_KEY, String.valueOf(batchSlots));
+      return properties;
+    }
+
+    @Override
+    protected EmbeddedSDC create() throws Exception {
+      created.incrementAndGet();
+      EmbeddedSDC embeddedSDC = new EmbeddedSDC();
+      embeddedSDC.setSource(Mockito.mock(ClusterSource.class));
+      return embeddedSDC;
+    }
+
+    int getCreated() {
+      return created.get();
+    }
+  }
+
+  @Test
+  public void testCheckoutReusesFreeSlots() throws Exception {
+    DummyEmbeddedSDCPool pool = new DummyEmbeddedSDCPool(2);
+
+    EmbeddedSDC first = pool.getNotStartedSDC();
+    // a second batch goes to the SDC that still has a free slot
+    Assert.assertSame(first, pool.getNotStartedSDC());
+    Assert.assertEquals(2, first.getBatchesInFlight());
+
+    EmbeddedSDC second = pool.getNotStartedSDC();
+    Assert.assertNotSame(first, second);
+    Assert.assertEquals(2, pool.getCreated());
+
+    // releasing a slot puts the full SDC back into the pool
+    pool.checkInAfterReadingBatch(0, first);
+    Assert.assertEquals(1, first.getBatchesInFlight());
+    Assert.assertSame(second, pool.getNotStartedSDC());
+    Assert.assertSame(first, pool.getNotStartedSDC());
+    Assert.assertEquals(2, pool.getCreated());
+    Mockito.verify(first.getSource()).completeBatch();
+  }
+
+  @Test
+  public void testSparkProcessorsUseSingleSlot() throws Exception {
+    DummyEmbeddedSDCPool pool = new DummyEmbeddedSDCPool(2);
+    pool.setSparkProcessorCount(1);
+
+    EmbeddedSDC first = pool.getNotStartedSDC();
+    EmbeddedSDC second = pool.getNotStartedSDC();
+    Assert.assertNotSame(first, second);
+    Assert.assertEquals(1, first.getBatchesInFlight());
+    Assert.assertEquals(1, second.getBatchesInFlight());
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentCheckoutAndCheckinSingleSlot() throws Exception {
+    testConcurrentCheckoutAndCheckin(1);
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentCheckoutAndCheckinMultipleSlots() throws Exception {
+    testConcurrentCheckoutAndCheckin(3);
+  }
+
+  private void testConcurrentCheckoutAndCheckin(int batchSlots) throws Exception {
+    final DummyEmbeddedSDCPool pool = new DummyEmbeddedSDCPool(batchSlots);
+    final int threads = 8;
+    final int iterations = 2000;
+    final ConcurrentMap<EmbeddedSDC, AtomicInteger> checkedOut = new ConcurrentHashMap<>();
+    final AtomicInteger overbooked = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          for (int j = 0; j < iterations; j++) {
+            EmbeddedSDC sdc = pool.getNotStartedSDC();
+            AtomicInteger batches = checkedOut.computeIfAbsent(sdc, key -> new AtomicInteger());
+            if (batches.incrementAndGet() > batchSlots) {
+              overbooked.incrementAndGet();
+            }
+            Thread.yield();
+            batches.decrementAndGet();
+            pool.checkInAfterReadingBatch(0, sdc);
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // no SDC ever got more batches than it has slots
+    Assert.assertEquals(0, overbooked.get());
+    // a new SDC is only started when all others are busy
+    Assert.assertTrue(pool.getCreated() <= threads);
+    Assert.assertEquals(checkedOut.size(), pool.getCreated());
+    // all slots were released and every SDC can be checked out again
+    for (EmbeddedSDC sdc : checkedOut.keySet()) {
+      Assert.assertEquals(0, sdc.getBatchesInFlight());
+    }
+    for (int i = 0; i < pool.getCreated() * batchSlots; i++) {
+      pool.getNotStartedSDC();
+    }
+    Assert.assertEquals(checkedOut.size(), pool.getCreated());
+  }
+}
@@ -23,6 +23,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -117,6 +118,38 @@ public class TestProducerConsumer {
     Assert.assertSame(producerError, getError(take(true)));
   }
 
+  @Test(timeout = 5000)
+  public void testOverlappedBatches() throws Exception {
+    Future<?> putFuture1 = put(1);
+    OffsetAndResult<Map.Entry> batch1 = consumer.take();
+    Assert.assertEquals(createBatch(1), batch1.getResult());
+    // the next batch is handed off while the first one is still being processed
+    Future<?> putFuture2 = put(2);
+    while (dataChannel.getOverlappedBatches() == 0) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    Assert.assertFalse(putFuture1.isDone());
+    Assert.assertFalse(putFuture2.isDone());
+
+    consumer.commit("1");
+    putFuture1.get();
+    TimeUnit.MILLISECONDS.sleep(50);
+    // committing the first batch does not release the producer of the second one
+    Assert.assertFalse(putFuture2.isDone());
+
+    OffsetAndResult<Map.Entry> batch2 = consumer.take();
+    Assert.assertEquals(createBatch(2), batch2.getResult());
+    consumer.commit("2");
+    putFuture2.get();
+    Assert.assertEquals(1, dataChannel.getOverlappedBatches());
+
+    Map<String, Object> gauge = new HashMap<>();
+    dataChannel.updateGauge(gauge);
+    Assert.assertEquals(1L, gauge.get("Overlapped Batches"));
+    Assert.assertTrue(gauge.containsKey("Producer Wait (ms)"));
+    Assert.assertTrue(gauge.containsKey("Consumer Wait (ms)"));
+  }
+
   private Throwable getError(Future future) throws InterruptedException {
     try {
       future.get();
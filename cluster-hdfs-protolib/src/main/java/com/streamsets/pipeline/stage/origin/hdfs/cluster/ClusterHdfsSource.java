@@ -106,8 +106,9 @@ public class ClusterHdfsSource extends BaseSource implements OffsetCommitter, Er
   private static final String HDFS_SITE_XML = "hdfs-site.xml";
   private static final String MAPRED_SITE_XML = "mapred-site.xml";
 
-  private final Producer producer;
-  private final Consumer consumer;
+  private DataChannel dataChannel;
+  private Producer producer;
+  private Consumer consumer;
   private final Map<String, Object> previewBuffer;
   private final CountDownLatch countDownLatch;
   private final ClusterHdfsConfigBean conf;
@@ -118,13 +119,10 @@ public class ClusterHdfsSource extends BaseSource implements OffsetCommitter, Er
   private UserGroupInformation userUgi;
   private long recordsProduced;
   private boolean hasHeader;
+  private Map<String, Object> handoffGauge;
 
 
   public ClusterHdfsSource(ClusterHdfsConfigBean conf) {
-    ControlChannel controlChannel = new ControlChannel();
-    DataChannel dataChannel = new DataChannel();
-    producer = new Producer(controlChannel, dataChannel);
-    consumer = new Consumer(controlChannel, dataChannel);
     this.recordsProduced = 0;
     this.previewBuffer = new LinkedHashMap<>();
     this.countDownLatch = new CountDownLatch(1);
@@ -135,6 +133,11 @@ public class ClusterHdfsSource extends BaseSource implements OffsetCommitter, Er
   public List<ConfigIssue> init() {
     List<ConfigIssue> issues = super.init();
 
+    ControlChannel controlChannel = new ControlChannel();
+    dataChannel = new DataChannel(DataChannel.getConfiguredSlots(getContext()));
+    producer = new Producer(controlChannel, dataChannel);
+    consumer = new Consumer(controlChannel, dataChannel);
+
     conf.dataFormatConfig.checkForInvalidAvroSchemaLookupMode(
         conf.dataFormat,
         "conf.dataFormatConfig",
@@ -143,6 +146,7 @@ public class ClusterHdfsSource extends BaseSource implements OffsetCommitter, Er
     );
 
     errorRecordHandler = new DefaultErrorRecordHandler(getContext());
+    handoffGauge = getContext().createGauge(DataChannel.HANDOFF_GAUGE).getValue();
 
     getHadoopConfiguration(issues);
 
@@ -674,6 +678,7 @@ public class ClusterHdfsSource extends BaseSource implements OffsetCommitter, Er
       offsetAndResult = new OffsetAndResult<>(recordsProduced, records);
     } else {
       offsetAndResult = consumer.take();
+      dataChannel.updateGauge(handoffGauge);
     }
     if (offsetAndResult == null) {
       LOG.info("Received null batch, returning null");
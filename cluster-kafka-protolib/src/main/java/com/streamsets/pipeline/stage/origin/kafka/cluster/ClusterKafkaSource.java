@@ -44,18 +44,14 @@ import java.util.stream.Collectors;
 public class ClusterKafkaSource extends BaseKafkaSource implements OffsetCommitter, ClusterSource, ErrorListener {
   private static final Logger LOG = LoggerFactory.getLogger(ClusterKafkaSource.class);
   private static final String NO_OF_PARTITIONS = "partitionCount";
-  private final ControlChannel controlChannel;
-  private final DataChannel dataChannel;
-  private final Producer producer;
-  private final Consumer consumer;
+  private DataChannel dataChannel;
+  private Producer producer;
+  private Consumer consumer;
   private long recordsProduced;
+  private Map<String, Object> handoffGauge;
 
   public ClusterKafkaSource(KafkaConfigBean conf) {
     super(conf);
-    controlChannel = new ControlChannel();
-    dataChannel = new DataChannel();
-    producer = new Producer(controlChannel, dataChannel);
-    consumer = new Consumer(controlChannel, dataChannel);
     this.recordsProduced = 0;
   }
 
@@ -78,6 +74,7 @@ public class ClusterKafkaSource extends BaseKafkaSource implements OffsetCommitt
         batchMaker.addRecord(record);
       }
     }
+    dataChannel.updateGauge(handoffGauge);
     return messageId;
   }
 
@@ -89,6 +86,11 @@ public class ClusterKafkaSource extends BaseKafkaSource implements OffsetCommitt
   @Override
   protected List<ConfigIssue> init() {
     List<ConfigIssue> errors = super.init();
+    ControlChannel controlChannel = new ControlChannel();
+    dataChannel = new DataChannel(DataChannel.getConfiguredSlots(getContext()));
+    producer = new Producer(controlChannel, dataChannel);
+    consumer = new Consumer(controlChannel, dataChannel);
+    handoffGauge = getContext().createGauge(DataChannel.HANDOFF_GAUGE).getValue();
     if (errors.isEmpty()) {
       LOG.info("Successfully initialized Spark Kafka Consumer");
     }
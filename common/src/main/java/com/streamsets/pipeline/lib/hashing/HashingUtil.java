@@ -19,17 +19,22 @@ import com.google.common.hash.Funnel;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 import com.google.common.hash.PrimitiveSink;
+import com.streamsets.datacollector.util.EscapeUtil;
 import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.impl.Utils;
 import com.streamsets.pipeline.lib.util.FieldRegexUtil;
 
+import java.math.BigDecimal;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * This is a refactored code for hashing using Guavas Library which is currently used by FieldHasher
@@ -88,6 +93,83 @@ public final class HashingUtil {
     return new RecordFunnel(fieldsToHash, includeRecordHeader, useSeparators);
   }
 
+  /**
+   * Returns a funnel that walks the field tree of the record once and tags every value with its type. Hashes
+   * produced by this funnel are not compatible with the ones of {@link RecordFunnel}, use it only where the hashes
+   * are not persisted or compared with hashes computed by other versions.
+   */
+  public static TypedRecordFunnel getTypedRecordFunnel(Collection<String> fieldsToHash, boolean includeRecordHeader) {
+    if(fieldsToHash == null || fieldsToHash.isEmpty()) {
+      return new TypedRecordFunnel(null, includeRecordHeader);
+    }
+    return new TypedRecordFunnel(fieldsToHash, includeRecordHeader);
+  }
+
+  /**
+   * Gathers the escaped paths of all fields of the record mapped to their fields, in the same order as
+   * {@link Record#getEscapedFieldPaths()}, walking the field tree once.
+   */
+  static Map<String, Field> getEscapedFields(Record record) {
+    Map<String, Field> fields = new LinkedHashMap<>();
+    Field root = record.get();
+    if (root != null) {
+      gatherFields("", root, fields);
+    }
+    return fields;
+  }
+
+  private static void gatherFields(String path, Field field, Map<String, Field> fields) {
+    fields.put(path, field);
+    if (field.getValue() == null) {
+      return;
+    }
+    switch (field.getType()) {
+      case MAP:
+      case LIST_MAP:
+        for (Map.Entry<String, Field> entry : field.getValueAsMap().entrySet()) {
+          gatherFields(path + "/" + EscapeUtil.singleQuoteEscape(entry.getKey()), entry.getValue(), fields);
+        }
+        break;
+      case LIST:
+        List<Field> list = field.getValueAsList();
+        for (int i = 0; i < list.size(); i++) {
+          gatherFields(path + "[" + i + "]", list.get(i), fields);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Resolves the field paths to hash, which may contain wild cards, to the existing paths in hashing order. Returns
+   * null if all the existing fields are to be hashed.
+   */
+  private static List<String> getMatchingFieldPaths(Collection<String> fieldsToHash, Map<String, Field> fields) {
+    if (fieldsToHash == null) {
+      return null;
+    }
+    List<String> paths = new ArrayList<>();
+    for(String field : fieldsToHash) {
+      List<String> matchingFieldPaths = FieldRegexUtil.getMatchingFieldPaths(field, fields.keySet());
+      Collections.sort(matchingFieldPaths);
+      paths.addAll(matchingFieldPaths);
+    }
+    return paths;
+  }
+
+  private static boolean hasWildCards(Collection<String> fieldsToHash) {
+    if (fieldsToHash == null) {
+      return true;
+    }
+    for (String field : fieldsToHash) {
+      if (FieldRegexUtil.hasWildCards(field)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public static class RecordFunnel implements Funnel<Record> {
     private Collection<String> fieldsToHash = null;
     private boolean includeRecordHeader = false;
@@ -102,26 +184,23 @@ public final class HashingUtil {
       this.useSeparators = useSeparators;
     }
 
-    protected List<String> getFieldsToHash(Record record) {
-      Set<String> fieldPaths = record.getEscapedFieldPaths();
-      List<String> fields = new ArrayList<>();
-      if (fieldsToHash != null) {
-        for(String field : fieldsToHash) {
-          List<String> matchingFieldPaths = FieldRegexUtil.getMatchingFieldPaths(field, fieldPaths);
-          Collections.sort(matchingFieldPaths);
-          fields.addAll(matchingFieldPaths);
-        }
-      } else {
-        fields = new ArrayList<>(record.getEscapedFieldPaths());
-        Collections.sort(fields);
-      }
-      return fields;
-    }
-
     @Override
     public void funnel(Record record, PrimitiveSink sink) {
-      for (String path : getFieldsToHash(record)) {
-        Field field = record.get(path);
+      // The fields are gathered with a single walk of the field tree instead of looking up every path from the root,
+      // the hashed bytes are the same as when looking up every path of record.getEscapedFieldPaths().
+      Map<String, Field> fields = hasWildCards(fieldsToHash) ? getEscapedFields(record) : Collections.emptyMap();
+      List<String> paths = getMatchingFieldPaths(fieldsToHash, fields);
+      if (paths == null) {
+        paths = new ArrayList<>(fields.keySet());
+        Collections.sort(paths);
+      }
+
+      for (String path : paths) {
+        Field field = fields.get(path);
+        if (field == null) {
+          // Paths without wild cards are used as they are configured, they don't need to be escaped the same way
+          field = record.get(path);
+        }
         if (field == null) {
           throw new IllegalArgumentException(
               Utils.format("Field Path {}  does not exist in the record", path)
@@ -164,9 +243,11 @@ public final class HashingUtil {
               break;
 
             case DECIMAL:
-            case STRING:
               sink.putString(field.getValueAsString(), Charset.defaultCharset());
               break;
+            case STRING:
+              sink.putString((String) field.getValue(), Charset.defaultCharset());
+              break;
 
             case BYTE_ARRAY:
               sink.putBytes(field.getValueAsByteArray());
@@ -205,4 +286,196 @@ public final class HashingUtil {
       }
     }
   }
+
+  /**
+   * Funnel that feeds the hash with a single walk of the field tree.
+   *
+   * Every field is preceded by a tag of its type, strings, byte arrays and collections are length prefixed so that
+   * no separators are needed. Map keys are hashed in sorted order so that the hash doesn't depend on the order of the
+   * fields. Strings are hashed as UTF-8 bytes and decimals as their unscaled value and scale without converting them
+   * to strings first.
+   */
+  public static class TypedRecordFunnel implements Funnel<Record> {
+    private static final byte NULL_TAG = 0;
+
+    private final Collection<String> fieldsToHash;
+    private final boolean includeRecordHeader;
+
+    TypedRecordFunnel(Collection<String> fieldsToHash, boolean includeRecordHeader) {
+      this.fieldsToHash = fieldsToHash;
+      this.includeRecordHeader = includeRecordHeader;
+    }
+
+    @Override
+    public void funnel(Record record, PrimitiveSink sink) {
+      if (fieldsToHash == null) {
+        Field root = record.get();
+        if (root == null) {
+          sink.putByte(NULL_TAG);
+        } else {
+          putField("", root, sink);
+        }
+      } else {
+        Map<String, Field> fields = hasWildCards(fieldsToHash) ? getEscapedFields(record) : Collections.emptyMap();
+        for (String path : getMatchingFieldPaths(fieldsToHash, fields)) {
+          Field field = fields.get(path);
+          if (field == null) {
+            field = record.get(path);
+          }
+          if (field == null) {
+            throw new IllegalArgumentException(
+                Utils.format("Field Path {}  does not exist in the record", path)
+            );
+          }
+          putString(path, sink);
+          putField(path, field, sink);
+        }
+      }
+
+      if (includeRecordHeader) {
+        List<String> attrNames = new ArrayList<>(record.getHeader().getAttributeNames());
+        Collections.sort(attrNames);
+        sink.putInt(attrNames.size());
+        for (String attrName : attrNames) {
+          String headerAttr = record.getHeader().getAttribute(attrName);
+          putString(attrName, sink);
+          if (headerAttr != null) {
+            sink.putByte((byte) 1);
+            putString(headerAttr, sink);
+          } else {
+            sink.putByte(NULL_TAG);
+          }
+        }
+      }
+    }
+
+    private static void putString(String value, PrimitiveSink sink) {
+      sink.putInt(value.length());
+      sink.putString(value, StandardCharsets.UTF_8);
+    }
+
+    private static void putField(String path, Field field, PrimitiveSink sink) {
+      Object value = field.getValue();
+      if (value == null) {
+        sink.putByte(NULL_TAG);
+        sink.putByte(getTypeTag(path, field.getType()));
+        return;
+      }
+      sink.putByte(getTypeTag(path, field.getType()));
+      switch (field.getType()) {
+        case BOOLEAN:
+          sink.putBoolean((Boolean) value);
+          break;
+        case CHAR:
+          sink.putChar((Character) value);
+          break;
+        case BYTE:
+          sink.putByte((Byte) value);
+          break;
+        case SHORT:
+          sink.putShort((Short) value);
+          break;
+        case INTEGER:
+          sink.putInt((Integer) value);
+          break;
+        case LONG:
+          sink.putLong((Long) value);
+          break;
+        case FLOAT:
+          sink.putFloat((Float) value);
+          break;
+        case DOUBLE:
+          sink.putDouble((Double) value);
+          break;
+        case DATE:
+        case TIME:
+        case DATETIME:
+          sink.putLong(((Date) value).getTime());
+          break;
+        case DECIMAL:
+          BigDecimal decimal = (BigDecimal) value;
+          byte[] unscaled = decimal.unscaledValue().toByteArray();
+          sink.putInt(decimal.scale());
+          sink.putInt(unscaled.length);
+          sink.putBytes(unscaled);
+          break;
+        case STRING:
+          putString((String) value, sink);
+          break;
+        case BYTE_ARRAY:
+          byte[] bytes = (byte[]) value;
+          sink.putInt(bytes.length);
+          sink.putBytes(bytes);
+          break;
+        case MAP:
+        case LIST_MAP:
+          Map<String, Field> map = field.getValueAsMap();
+          List<String> keys = new ArrayList<>(map.keySet());
+          Collections.sort(keys);
+          sink.putInt(keys.size());
+          for (String key : keys) {
+            putString(key, sink);
+            putField(path + "/" + key, map.get(key), sink);
+          }
+          break;
+        case LIST:
+          List<Field> list = field.getValueAsList();
+          sink.putInt(list.size());
+          for (int i = 0; i < list.size(); i++) {
+            putField(path + "[" + i + "]", list.get(i), sink);
+          }
+          break;
+        default:
+          throw new IllegalStateException(
+              Utils.format("Hashing not supported for field: {} of type {}", path, field.getType())
+          );
+      }
+    }
+
+    /**
+     * Type tags are fixed so that they don't change if new field types are added.
+     */
+    private static byte getTypeTag(String path, Field.Type type) {
+      switch (type) {
+        case BOOLEAN:
+          return 1;
+        case CHAR:
+          return 2;
+        case BYTE:
+          return 3;
+        case SHORT:
+          return 4;
+        case INTEGER:
+          return 5;
+        case LONG:
+          return 6;
+        case FLOAT:
+          return 7;
+        case DOUBLE:
+          return 8;
+        case DATE:
+          return 9;
+        case DATETIME:
+          return 10;
+        case TIME:
+          return 11;
+        case DECIMAL:
+          return 12;
+        case STRING:
+          return 13;
+        case BYTE_ARRAY:
+          return 14;
+        case MAP:
+          return 15;
+        case LIST:
+          return 16;
+        case LIST_MAP:
+          return 17;
+        default:
+          throw new IllegalStateException(
+              Utils.format("Hashing not supported for field: {} of type {}", path, type)
+          );
+      }
+    }
+  }
 }
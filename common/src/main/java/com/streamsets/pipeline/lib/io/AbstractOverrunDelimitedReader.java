@@ -21,7 +21,7 @@ import org.apache.commons.io.input.ProxyReader;
 import java.io.IOException;
 import java.io.Reader;
 
-public abstract class AbstractOverrunDelimitedReader extends ProxyReader {
+public abstract class AbstractOverrunDelimitedReader extends ProxyReader implements LineReader {
   private static final int INVALIDATED = -2;
   private static final int UNMARKED = -1;
 
@@ -44,10 +44,12 @@ public abstract class AbstractOverrunDelimitedReader extends ProxyReader {
   }
 
 
+  @Override
   public long getPos() {
     return (countingReader == null) ? -1 : countingReader.getPos() - (nChars - nextChar);
   }
 
+  @Override
   public long getCount() {
     if (countingReader != null) {
       return countingReader.getCount();
@@ -56,6 +58,7 @@ public abstract class AbstractOverrunDelimitedReader extends ProxyReader {
     }
   }
 
+  @Override
   public long resetCount() {
     if (countingReader != null) {
       return countingReader.resetCount();
@@ -144,5 +147,6 @@ public abstract class AbstractOverrunDelimitedReader extends ProxyReader {
   }
 
 
+  @Override
   public abstract int readLine(StringBuilder s) throws IOException ;
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads delimited lines up to a maximum length, discarding the rest of the line.
+ */
+public interface LineReader extends Closeable {
+
+  /**
+   * Appends the next line, without its delimiter, to the given StringBuilder.
+   * @return the length of the line in chars, including the discarded chars, or -1 at the end of the stream
+   */
+  int readLine(StringBuilder s) throws IOException;
+
+  /**
+   * Returns the position, in chars, after the last line read.
+   */
+  long getPos();
+
+  long getCount();
+
+  long resetCount();
+
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.io;
+
+import com.google.common.collect.ImmutableSet;
+import com.streamsets.pipeline.api.ext.io.OverrunException;
+import com.streamsets.pipeline.api.impl.Utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Line reader with the same semantics as {@link OverrunLineReader} which splits the lines on the bytes of the
+ * stream instead of on decoded chars.
+ * <p/>
+ * The delimiters are looked up 8 bytes at a time, the bytes of a line are only decoded once the line is complete (or
+ * once it fills the buffer) and ASCII only lines are copied without going through the decoder. Only charsets in which
+ * '\n' and '\r' can't be part of a multi byte sequence are supported, see {@link #isSupported(Charset)}.
+ * <p/>
+ * Positions are in chars, the same as with {@link OverrunLineReader}, so the offsets of both readers can be used
+ * interchangeably. The read limit is checked against the bytes read since the last {@link #resetCount()}.
+ */
+public class OverrunByteLineReader implements LineReader {
+  private static final Set<Charset> SUPPORTED_CHARSETS = ImmutableSet.of(
+      StandardCharsets.UTF_8,
+      StandardCharsets.US_ASCII,
+      StandardCharsets.ISO_8859_1
+  );
+
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGH_BITS = 0x8080808080808080L;
+  private static final long LF_BYTES = 0x0A0A0A0A0A0A0A0AL;
+  private static final long CR_BYTES = 0x0D0D0D0D0D0D0D0DL;
+
+  private final InputStream in;
+  private final CharsetDecoder decoder;
+  // every byte is a char of the same value
+  private final boolean latin1;
+  private final int maxLine;
+  private final int readLimit;
+
+  private final byte[] buf;
+  // little endian view to read 8 bytes at a time, the first byte in the stream is the lowest byte of the word
+  private final ByteBuffer words;
+  private final char[] chars;
+  private final CharBuffer charBuffer;
+
+  private int nextByte;
+  private int nBytes;
+  private boolean eof;
+  // set while scanning, whether the bytes scanned so far for the current line have the high bit set
+  private long scannedHighBits;
+
+  private long pos;
+  private long count;
+  private long bytesSinceReset;
+
+  /**
+   * @param in the stream to read
+   * @param charset the charset of the stream, it has to be supported
+   * @param maxLine the maximum number of chars of a line, the rest of the line is discarded, -1 for no limit
+   * @param readLimit the maximum number of bytes read between calls to {@link #resetCount()}, -1 for no limit
+   */
+  public OverrunByteLineReader(InputStream in, Charset charset, int maxLine, int readLimit) {
+    this(in, charset, maxLine, readLimit, DEFAULT_BUFFER_SIZE);
+  }
+
+  //For Testing purposes
+  OverrunByteLineReader(InputStream in, Charset charset, int maxLine, int readLimit, int bufferSize) {
+    Utils.checkArgument(isSupported(charset), Utils.formatL("Unsupported charset '{}'", charset));
+    this.in = in;
+    this.latin1 = StandardCharsets.ISO_8859_1.equals(charset);
+    this.decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.maxLine = maxLine;
+    this.readLimit = readLimit;
+    // room for at least a word and a whole multi byte char
+    buf = new byte[Math.max(bufferSize, 16)];
+    words = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+    chars = new char[buf.length];
+    charBuffer = CharBuffer.wrap(chars);
+  }
+
+  /**
+   * Returns true if the lines of a stream in the given charset can be split on its bytes.
+   */
+  public static boolean isSupported(Charset charset) {
+    return SUPPORTED_CHARSETS.contains(charset);
+  }
+
+  @Override
+  public long getPos() {
+    return pos;
+  }
+
+  @Override
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public long resetCount() {
+    long previous = count;
+    count = 0;
+    bytesSinceReset = 0;
+    return previous;
+  }
+
+  /**
+   * Skips the given number of chars, the lines read afterwards start there.
+   * @throws EOFException if the stream has less chars
+   */
+  public void skipFully(long charsToSkip) throws IOException {
+    long remaining = charsToSkip;
+    while (remaining > 0) {
+      if (nextByte >= nBytes && !fill(nBytes)) {
+        throw new EOFException(Utils.format("Chars to skip: {} actual: {}", charsToSkip, charsToSkip - remaining));
+      }
+      while (remaining > 0 && nextByte < nBytes && (latin1 || buf[nextByte] >= 0)) {
+        nextByte++;
+        remaining--;
+      }
+      if (remaining > 0 && nextByte < nBytes) {
+        // a multi byte char, decode up to the chars left to skip
+        ByteBuffer bytes = ByteBuffer.wrap(buf, nextByte, nBytes - nextByte);
+        charBuffer.clear();
+        charBuffer.limit((int) Math.min(remaining, chars.length));
+        decoder.reset();
+        CoderResult result = decoder.decode(bytes, charBuffer, eof);
+        if (result.isOverflow() && charBuffer.position() == 0) {
+          // a surrogate pair with a single char left to skip
+          charBuffer.limit(2);
+          result = decoder.decode(bytes, charBuffer, eof);
+        }
+        if (eof && result.isUnderflow()) {
+          decoder.flush(charBuffer);
+        }
+        if (bytes.position() == nextByte) {
+          // an incomplete char at the end of the buffer
+          fill(nextByte);
+          continue;
+        }
+        nextByte = bytes.position();
+        remaining -= charBuffer.position();
+      }
+    }
+    pos += charsToSkip - remaining;
+  }
+
+  @Override
+  public int readLine(StringBuilder s) throws IOException {
+    int initialLen = s.length();
+    // the bytes of the line from lineStart to scan have been scanned and are not decoded yet
+    int lineStart = nextByte;
+    int scan = nextByte;
+    int lineChars = 0;
+    boolean partiallyDecoded = false;
+    scannedHighBits = 0;
+    for (; ; ) {
+      if (scan >= nBytes) {
+        if (lineStart == 0 && nBytes == buf.length) {
+          // the line does not fit in the buffer, take what can be decoded of it
+          lineChars += decode(s, initialLen, 0, nBytes, false);
+          lineStart = consumedBytes;
+          partiallyDecoded = true;
+          // what is left is the start of a multi byte char
+          scannedHighBits = (lineStart < nBytes) ? HIGH_BITS : 0;
+        }
+        boolean filled = fill(lineStart);
+        scan -= lineStart;
+        lineStart = 0;
+        if (!filled) {
+          /* EOF */
+          if (nBytes == 0 && !partiallyDecoded) {
+            return -1;
+          }
+          lineChars += decode(s, initialLen, 0, nBytes, true);
+          nextByte = nBytes;
+          pos += lineChars;
+          count += lineChars;
+          return lineChars;
+        }
+      }
+      int eol = findEol(scan, nBytes);
+      bytesSinceReset += ((eol < 0) ? nBytes : eol + 1) - scan;
+      if (readLimit > 0 && bytesSinceReset > readLimit) {
+        throw new OverrunException(Utils.format("Reader exceeded the read limit '{}'", readLimit), pos);
+      }
+      if (eol < 0) {
+        scan = nBytes;
+        continue;
+      }
+      lineChars += decode(s, initialLen, lineStart, eol, true);
+      int delimiterChars = 1;
+      nextByte = eol + 1;
+      if (buf[eol] == '\r') {
+        if (nextByte >= nBytes) {
+          //we force filling a new buffer to see if we have a '\n' in it
+          fill(nextByte);
+        }
+        if (nextByte < nBytes && buf[nextByte] == '\n') {
+          nextByte++;
+          delimiterChars++;
+        }
+      }
+      pos += lineChars + delimiterChars;
+      count += lineChars + delimiterChars;
+      return lineChars;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /**
+   * Moves the bytes from the given index to the beginning of the buffer and reads more bytes after them.
+   * @return false at the end of the stream
+   */
+  private boolean fill(int keepFrom) throws IOException {
+    int kept = nBytes - keepFrom;
+    if (kept > 0 && keepFrom > 0) {
+      System.arraycopy(buf, keepFrom, buf, 0, kept);
+    }
+    nextByte = 0;
+    nBytes = kept;
+    if (eof) {
+      return false;
+    }
+    int n;
+    do {
+      n = in.read(buf, nBytes, buf.length - nBytes);
+    } while (n == 0);
+    if (n < 0) {
+      eof = true;
+      return false;
+    }
+    nBytes += n;
+    return true;
+  }
+
+  /**
+   * Returns the index of the first '\n' or '\r' in the range or -1, updating {@link #scannedHighBits} with the bytes
+   * before it.
+   */
+  private int findEol(int from, int to) {
+    int i = from;
+    long highBits = scannedHighBits;
+    for (; i + 8 <= to; i += 8) {
+      long word = words.getLong(i);
+      long lf = word ^ LF_BYTES;
+      long cr = word ^ CR_BYTES;
+      // the lowest set high bit marks the first byte which is zero, that is the first '\n' or '\r'
+      long found = ((lf - ONES) & ~lf | (cr - ONES) & ~cr) & HIGH_BITS;
+      if (found != 0) {
+        int index = Long.numberOfTrailingZeros(found) >>> 3;
+        scannedHighBits = highBits | (word & ((1L << (index << 3)) - 1));
+        return i + index;
+      }
+      highBits |= word;
+    }
+    for (; i < to; i++) {
+      byte b = buf[i];
+      if (b == '\n' || b == '\r') {
+        scannedHighBits = highBits;
+        return i;
+      }
+      highBits |= b & 0x80;
+    }
+    scannedHighBits = highBits;
+    return -1;
+  }
+
+  // set by decode(), the bytes it consumed
+  private int consumedBytes;
+
+  /**
+   * Appends the chars of the bytes in the range, up to the maximum line length.
+   * @return the number of chars of the bytes, including the ones over the maximum line length
+   */
+  private int decode(StringBuilder s, int initialLen, int from, int to, boolean endOfLine) {
+    if (latin1 || (scannedHighBits & HIGH_BITS) == 0) {
+      int length = to - from;
+      int toAppend = available(s, initialLen, length);
+      s.append(new String(buf, from, toAppend, StandardCharsets.ISO_8859_1));
+      consumedBytes = length;
+      return length;
+    }
+    ByteBuffer bytes = ByteBuffer.wrap(buf, from, to - from);
+    decoder.reset();
+    int decoded = 0;
+    CoderResult result;
+    do {
+      charBuffer.clear();
+      result = decoder.decode(bytes, charBuffer, endOfLine);
+      if (endOfLine && result.isUnderflow()) {
+        decoder.flush(charBuffer);
+      }
+      decoded += append(s, initialLen);
+    } while (result.isOverflow());
+    consumedBytes = bytes.position() - from;
+    return decoded;
+  }
+
+  private int append(StringBuilder s, int initialLen) {
+    int length = charBuffer.position();
+    s.append(chars, 0, available(s, initialLen, length));
+    return length;
+  }
+
+  // we use this to trim the output in case of overruns
+  private int available(StringBuilder s, int initialLen, int length) {
+    if (maxLine > -1) {
+      return Math.max(0, Math.min(length, maxLine - (s.length() - initialLen)));
+    }
+    return length;
+  }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.xml;
+
+import com.google.common.base.Strings;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flattens XML documents into field name/value pairs while reading StAX events, without building a DOM.
+ * <p/>
+ * Each 'recordElement' element that is not nested in another record produces a record; if no record element is
+ * given, the root element is the record. Nested element names are joined with the field delimiter, attribute names
+ * are appended with the attribute delimiter, and elements sharing their name with a sibling get a "(n)" index.
+ * <p/>
+ * Only the fields of the record being read are held in memory. Since a sibling index is only known once a name
+ * repeats, the fields of the first occurrence are renamed at that point instead of scanning siblings upfront.
+ * <p/>
+ * Instances can be reused, but are not thread safe.
+ */
+public class StreamingXmlFlattener {
+
+  /**
+   * Receives the fields of each record, in document order. The list is reused once the handler returns.
+   */
+  public interface RecordHandler {
+    void handle(List<FlattenedField> fields);
+  }
+
+  public static final class FlattenedField {
+    private String name;
+    private final String value;
+    private final boolean text;
+
+    FlattenedField(String name, String value, boolean text) {
+      this.name = name;
+      this.value = value;
+      this.text = text;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    // true for element text, false for attributes and namespaces
+    public boolean isText() {
+      return text;
+    }
+  }
+
+  private static final class Frame {
+    final String prefix;
+    final String name;
+    final int start;
+    final boolean firstOccurrence;
+    // child name -> occurrences so far, and the field range of the first occurrence while it is the only one
+    Map<String, Integer> childCounts;
+    Map<String, int[]> firstChildRanges;
+
+    Frame(String prefix, String name, int start, boolean firstOccurrence) {
+      this.prefix = prefix;
+      this.name = name;
+      this.start = start;
+      this.firstOccurrence = firstOccurrence;
+    }
+  }
+
+  private final XMLInputFactory factory;
+  private final String recordElement;
+  private final String fieldDelimiter;
+  private final String attrDelimiter;
+  private final boolean ignoreAttrs;
+  private final boolean ignoreNamespace;
+
+  private final List<FlattenedField> fields = new ArrayList<>();
+  private final List<Frame> frames = new ArrayList<>();
+  private final StringBuilder text = new StringBuilder();
+
+  public StreamingXmlFlattener(
+      String recordElement,
+      String fieldDelimiter,
+      String attrDelimiter,
+      boolean ignoreAttrs,
+      boolean ignoreNamespace
+  ) {
+    this.factory = StreamingXmlParser.createXmlInputFactory();
+    this.recordElement = recordElement;
+    this.fieldDelimiter = fieldDelimiter;
+    this.attrDelimiter = attrDelimiter;
+    this.ignoreAttrs = ignoreAttrs;
+    this.ignoreNamespace = ignoreNamespace;
+  }
+
+  /**
+   * Reads the whole document, passing each record to the handler as soon as its element ends. The document is
+   * read up to its end, so a malformed document fails even if all its records were handled already.
+   */
+  public void flatten(Reader reader, RecordHandler handler) throws XMLStreamException {
+    XMLStreamReader xml = factory.createXMLStreamReader(reader);
+    try {
+      while (xml.hasNext()) {
+        switch (xml.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            startElement(xml);
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            if (!frames.isEmpty()) {
+              text.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+            }
+            break;
+          case XMLStreamConstants.COMMENT:
+          case XMLStreamConstants.PROCESSING_INSTRUCTION:
+            // like DOM text nodes, text separated by comments or processing instructions is set separately
+            flushText();
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            endElement(handler);
+            break;
+          default:
+            break;
+        }
+      }
+    } finally {
+      xml.close();
+      fields.clear();
+      frames.clear();
+      text.setLength(0);
+    }
+  }
+
+  private void startElement(XMLStreamReader xml) {
+    String name = getName(xml.getPrefix(), xml.getLocalName());
+    Frame frame;
+    if (frames.isEmpty()) {
+      if (!Strings.isNullOrEmpty(recordElement) && !recordElement.equals(name)) {
+        return;
+      }
+      frame = new Frame(name, name, 0, true);
+    } else {
+      flushText();
+      frame = startChild(frames.get(frames.size() - 1), name);
+    }
+    frames.add(frame);
+    addAttributes(xml, frame.prefix);
+  }
+
+  private Frame startChild(Frame parent, String name) {
+    String prefix = parent.prefix + fieldDelimiter + name;
+    if (parent.childCounts == null) {
+      parent.childCounts = new HashMap<>();
+      parent.firstChildRanges = new HashMap<>();
+    }
+    Integer count = parent.childCounts.get(name);
+    if (count == null) {
+      parent.childCounts.put(name, 1);
+      return new Frame(prefix, name, fields.size(), true);
+    }
+    if (count == 1) {
+      int[] range = parent.firstChildRanges.remove(name);
+      String indexedPrefix = prefix + "(0)";
+      for (int i = range[0]; i < range[1]; i++) {
+        FlattenedField field = fields.get(i);
+        field.name = indexedPrefix + field.name.substring(prefix.length());
+      }
+    }
+    parent.childCounts.put(name, count + 1);
+    return new Frame(prefix + "(" + count + ")", name, fields.size(), false);
+  }
+
+  private void endElement(RecordHandler handler) {
+    if (frames.isEmpty()) {
+      return;
+    }
+    flushText();
+    Frame frame = frames.remove(frames.size() - 1);
+    if (frames.isEmpty()) {
+      handler.handle(fields);
+      fields.clear();
+    } else if (frame.firstOccurrence) {
+      frames.get(frames.size() - 1).firstChildRanges.put(frame.name, new int[]{frame.start, fields.size()});
+    }
+  }
+
+  private void addAttributes(XMLStreamReader xml, String prefix) {
+    if (!ignoreAttrs) {
+      for (int i = 0; i < xml.getAttributeCount(); i++) {
+        String name = getName(xml.getAttributePrefix(i), xml.getAttributeLocalName(i));
+        fields.add(new FlattenedField(prefix + attrDelimiter + name, xml.getAttributeValue(i), false));
+      }
+      // prefixed namespace declarations are attributes in the DOM as well, the default one is reported as xmlns
+      for (int i = 0; i < xml.getNamespaceCount(); i++) {
+        String nsPrefix = xml.getNamespacePrefix(i);
+        if (!Strings.isNullOrEmpty(nsPrefix)) {
+          fields.add(new FlattenedField(prefix + attrDelimiter + "xmlns:" + nsPrefix, xml.getNamespaceURI(i), false));
+        }
+      }
+    }
+    if (!ignoreNamespace) {
+      String namespaceURI = xml.getNamespaceURI();
+      if (!Strings.isNullOrEmpty(namespaceURI)) {
+        fields.add(new FlattenedField(prefix + attrDelimiter + "xmlns", namespaceURI, false));
+      }
+    }
+  }
+
+  private void flushText() {
+    if (frames.isEmpty() || text.length() == 0) {
+      return;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      // same as String.trim(), whitespace only text is ignored but text is not trimmed otherwise
+      if (text.charAt(i) > ' ') {
+        fields.add(new FlattenedField(frames.get(frames.size() - 1).prefix, text.toString(), true));
+        break;
+      }
+    }
+    text.setLength(0);
+  }
+
+  private static String getName(String prefix, String localName) {
+    return Strings.isNullOrEmpty(prefix) ? localName : prefix + Constants.NAMESPACE_PREFIX_SEPARATOR + localName;
+  }
+
+}
@@ -105,10 +105,7 @@ public class StreamingXmlParser {
     } else {
       this.recordElement = recordElement;
     }
-    XMLInputFactory factory = XMLInputFactory.newFactory();
-    factory.setProperty("javax.xml.stream.isCoalescing", true);
-    factory.setProperty("javax.xml.stream.isSupportingExternalEntities", false);
-    factory.setProperty("javax.xml.stream.supportDTD", false);
+    XMLInputFactory factory = createXmlInputFactory();
     this.xmlEventReader = new XPathMatchingEventReader(factory.createXMLEventReader(reader), this.recordElement, namespaces);
     while (hasNext(xmlEventReader) && !peek(xmlEventReader).isEndDocument() && !peek(xmlEventReader).isStartElement()) {
       read(xmlEventReader);
@@ -131,6 +128,15 @@ public class StreamingXmlParser {
     }
   }
 
+  // coalescing, and without DTD or external entity support
+  static XMLInputFactory createXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty("javax.xml.stream.isCoalescing", true);
+    factory.setProperty("javax.xml.stream.isSupportingExternalEntities", false);
+    factory.setProperty("javax.xml.stream.supportDTD", false);
+    return factory;
+  }
+
   public Reader getReader() {
     return reader;
   }
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.io;
+
+import com.streamsets.pipeline.api.ext.io.OverrunException;
+import com.streamsets.pipeline.api.ext.io.OverrunReader;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TestOverrunByteLineReader {
+
+  private OverrunByteLineReader getReader(String data, int maxLine) {
+    return new OverrunByteLineReader(
+        new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)),
+        StandardCharsets.UTF_8,
+        maxLine,
+        -1
+    );
+  }
+
+  @Test
+  public void testReadLineSBUnderMax() throws Exception {
+    OverrunByteLineReader lr = getReader("1234567890\n\n\r123\r\n\n1", 1024);
+    StringBuilder sb = new StringBuilder();
+    Assert.assertEquals(10, lr.readLine(sb));
+    Assert.assertEquals("1234567890", sb.toString());
+    Assert.assertEquals(0, lr.readLine(sb));
+    Assert.assertEquals(0, lr.readLine(sb));
+    Assert.assertEquals(3, lr.readLine(sb));
+    Assert.assertEquals("1234567890123", sb.toString());
+    Assert.assertEquals(0, lr.readLine(sb));
+    Assert.assertEquals(1, lr.readLine(sb));
+    Assert.assertEquals("12345678901231", sb.toString());
+    Assert.assertEquals(-1, lr.readLine(sb));
+    Assert.assertEquals("12345678901231", sb.toString());
+  }
+
+  @Test
+  public void testReadLineSBOverMax() throws Exception {
+    OverrunByteLineReader lr = getReader("1234567890\n\n\r123\r\n\n1", 8);
+    StringBuilder sb = new StringBuilder();
+    Assert.assertEquals(10, lr.readLine(sb));
+    Assert.assertEquals("12345678", sb.toString());
+    Assert.assertEquals(0, lr.readLine(sb));
+    Assert.assertEquals(0, lr.readLine(sb));
+    Assert.assertEquals(3, lr.readLine(sb));
+    Assert.assertEquals("12345678123", sb.toString());
+    Assert.assertEquals(0, lr.readLine(sb));
+    Assert.assertEquals(1, lr.readLine(sb));
+    Assert.assertEquals("123456781231", sb.toString());
+    Assert.assertEquals(-1, lr.readLine(sb));
+  }
+
+  @Test
+  public void testPos() throws Exception {
+    OverrunByteLineReader lr = getReader("1234567890\n\n\r123\r\n\n1", 8);
+    Assert.assertEquals(0, lr.getPos());
+    Assert.assertEquals(10, lr.readLine(new StringBuilder()));
+    Assert.assertEquals(11, lr.getPos());
+    Assert.assertEquals(0, lr.readLine(new StringBuilder()));
+    Assert.assertEquals(12, lr.getPos());
+    Assert.assertEquals(0, lr.readLine(new StringBuilder()));
+    Assert.assertEquals(13, lr.getPos());
+    Assert.assertEquals(3, lr.readLine(new StringBuilder()));
+    Assert.assertEquals(18, lr.getPos());
+    Assert.assertEquals(0, lr.readLine(new StringBuilder()));
+    Assert.assertEquals(19, lr.getPos());
+    Assert.assertEquals(1, lr.readLine(new StringBuilder()));
+    Assert.assertEquals(20, lr.getPos());
+    Assert.assertEquals(-1, lr.readLine(new StringBuilder()));
+    Assert.assertEquals(20, lr.getPos());
+  }
+
+  @Test
+  public void testPosInCharsWithMultiByteChars() throws Exception {
+    // 2, 3 and 4 (a surrogate pair) byte chars
+    OverrunByteLineReader lr = getReader("\u00E9t\u00E9\n\u20AC\r\n\uD83D\uDE00x\nend", 3);
+    StringBuilder sb = new StringBuilder();
+    Assert.assertEquals(3, lr.readLine(sb));
+    Assert.assertEquals("\u00E9t\u00E9", sb.toString());
+    Assert.assertEquals(4, lr.getPos());
+    sb.setLength(0);
+    Assert.assertEquals(1, lr.readLine(sb));
+    Assert.assertEquals("\u20AC", sb.toString());
+    Assert.assertEquals(7, lr.getPos());
+    sb.setLength(0);
+    Assert.assertEquals(3, lr.readLine(sb));
+    Assert.assertEquals("\uD83D\uDE00x", sb.toString());
+    Assert.assertEquals(11, lr.getPos());
+    sb.setLength(0);
+    Assert.assertEquals(3, lr.readLine(sb));
+    Assert.assertEquals("end", sb.toString());
+    Assert.assertEquals(14, lr.getPos());
+  }
+
+  @Test
+  public void testPosStartingAtOffset() throws Exception {
+    OverrunByteLineReader lr = getReader("\u00E9t\u00E9\n\u20AC\r\n\uD83D\uDE00x\nend", 8);
+    lr.skipFully(7);
+    Assert.assertEquals(7, lr.getPos());
+    StringBuilder sb = new StringBuilder();
+    Assert.assertEquals(3, lr.readLine(sb));
+    Assert.assertEquals("\uD83D\uDE00x", sb.toString());
+    Assert.assertEquals(11, lr.getPos());
+  }
+
+  @Test(expected = EOFException.class)
+  public void testSkipPastEnd() throws Exception {
+    getReader("abc\n", 8).skipFully(5);
+  }
+
+  @Test
+  public void testReadLimit() throws Exception {
+    OverrunByteLineReader lr = new OverrunByteLineReader(
+        new ByteArrayInputStream("12345\n1234567890\n".getBytes(StandardCharsets.UTF_8)),
+        StandardCharsets.UTF_8,
+        -1,
+        8
+    );
+    lr.resetCount();
+    Assert.assertEquals(5, lr.readLine(new StringBuilder()));
+    lr.resetCount();
+    try {
+      lr.readLine(new StringBuilder());
+      Assert.fail();
+    } catch (OverrunException ex) {
+      Assert.assertEquals(6, ex.getStreamOffset());
+    }
+  }
+
+  @Test
+  public void testLatin1() throws Exception {
+    String data = "caf\u00E9\r\n\u00FF\u00E0";
+    OverrunByteLineReader lr = new OverrunByteLineReader(
+        new ByteArrayInputStream(data.getBytes(StandardCharsets.ISO_8859_1)),
+        StandardCharsets.ISO_8859_1,
+        -1,
+        -1
+    );
+    StringBuilder sb = new StringBuilder();
+    Assert.assertEquals(4, lr.readLine(sb));
+    Assert.assertEquals("caf\u00E9", sb.toString());
+    sb.setLength(0);
+    Assert.assertEquals(2, lr.readLine(sb));
+    Assert.assertEquals("\u00FF\u00E0", sb.toString());
+    Assert.assertEquals(8, lr.getPos());
+  }
+
+  @Test
+  public void testUnsupportedCharset() throws Exception {
+    Assert.assertTrue(OverrunByteLineReader.isSupported(StandardCharsets.UTF_8));
+    Assert.assertFalse(OverrunByteLineReader.isSupported(StandardCharsets.UTF_16));
+  }
+
+  private static String randomText(Random random, int lines, int maxLineLength) {
+    String[] pieces = {"a", "Z", "0", " ", "\t", "\u00E9", "\u20AC", "\uD83D\uDE00"};
+    String[] delimiters = {"\n", "\r", "\r\n"};
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      int length = random.nextInt(maxLineLength);
+      for (int j = 0; j < length; j++) {
+        // mostly ASCII
+        sb.append(pieces[random.nextInt(4) == 0 ? random.nextInt(pieces.length) : random.nextInt(3)]);
+      }
+      sb.append(delimiters[random.nextInt(delimiters.length)]);
+    }
+    if (random.nextBoolean()) {
+      sb.append("last");
+    }
+    return sb.toString();
+  }
+
+  private static List<String> readAll(LineReader lr, List<Long> positions) throws Exception {
+    List<String> lines = new ArrayList<>();
+    StringBuilder sb = new StringBuilder();
+    int read;
+    while ((read = lr.readLine(sb)) > -1) {
+      lines.add(read + ":" + sb.toString());
+      positions.add(lr.getPos());
+      sb.setLength(0);
+    }
+    return lines;
+  }
+
+  @Test
+  public void testSameAsOverrunLineReader() throws Exception {
+    Random random = new Random(1234);
+    Charset charset = StandardCharsets.UTF_8;
+    for (int run = 0; run < 50; run++) {
+      String data = randomText(random, 200, run % 2 == 0 ? 40 : 200);
+      int maxLine = random.nextBoolean() ? -1 : 1 + random.nextInt(100);
+      int bufferSize = 16 + random.nextInt(256);
+
+      List<Long> expectedPositions = new ArrayList<>();
+      List<String> expected = readAll(
+          new OverrunLineReader(new OverrunReader(new StringReader(data), -1, false, false), maxLine),
+          expectedPositions
+      );
+      List<Long> positions = new ArrayList<>();
+      List<String> lines = readAll(
+          new OverrunByteLineReader(new ByteArrayInputStream(data.getBytes(charset)), charset, maxLine, -1, bufferSize),
+          positions
+      );
+      Assert.assertEquals(expected, lines);
+      Assert.assertEquals(expectedPositions, positions);
+
+      // starting from the offset of any line
+      int line = random.nextInt(expected.size());
+      long offset = line == 0 ? 0 : expectedPositions.get(line - 1);
+      OverrunByteLineReader lr =
+          new OverrunByteLineReader(new ByteArrayInputStream(data.getBytes(charset)), charset, maxLine, -1, bufferSize);
+      lr.skipFully(offset);
+      positions.clear();
+      Assert.assertEquals(expected.subList(line, expected.size()), readAll(lr, positions));
+      Assert.assertEquals(expectedPositions.subList(line, expectedPositions.size()), positions);
+    }
+  }
+
+  private static long countLines(LineReader reader, int maxLine) throws Exception {
+    StringBuilder sb = new StringBuilder(maxLine);
+    long lines = 0;
+    while (reader.readLine(sb) > -1) {
+      sb.setLength(0);
+      lines++;
+    }
+    return lines;
+  }
+
+  @Test
+  @Ignore("benchmark, run manually")
+  public void benchmarkThroughput() throws Exception {
+    int maxLine = 1024;
+    int warmUpRounds = 3;
+    int rounds = 10;
+    StringBuilder sb = new StringBuilder();
+    Random random = new Random(0);
+    while (sb.length() < 64 * 1024 * 1024) {
+      int length = 20 + random.nextInt(200);
+      for (int i = 0; i < length; i++) {
+        sb.append((char) ('a' + random.nextInt(26)));
+      }
+      sb.append('\n');
+    }
+    byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+    long charReader = 0;
+    long byteReader = 0;
+    for (int round = 0; round < warmUpRounds + rounds; round++) {
+      long start = System.nanoTime();
+      long charLines = countLines(
+          new OverrunLineReader(
+              new OverrunReader(
+                  new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8),
+                  -1,
+                  false,
+                  false
+              ),
+              maxLine
+          ),
+          maxLine
+      );
+      long read = System.nanoTime();
+      long byteLines = countLines(
+          new OverrunByteLineReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8, maxLine, -1),
+          maxLine
+      );
+      long end = System.nanoTime();
+      Assert.assertEquals(charLines, byteLines);
+      if (round >= warmUpRounds) {
+        charReader += read - start;
+        byteReader += end - read;
+      }
+    }
+    long bytes = (long) data.length * rounds;
+    System.out.println(String.format(
+        "OverrunLineReader %d MB/s, OverrunByteLineReader %d MB/s",
+        bytes * 1000 / charReader,
+        bytes * 1000 / byteReader
+    ));
+  }
+}
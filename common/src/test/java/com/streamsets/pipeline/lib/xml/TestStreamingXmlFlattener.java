@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.xml;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestStreamingXmlFlattener {
+
+  private static List<Map<String, String>> flatten(StreamingXmlFlattener flattener, String xml) throws Exception {
+    List<Map<String, String>> records = new ArrayList<>();
+    flattener.flatten(new StringReader(xml), fields -> {
+      Map<String, String> record = new LinkedHashMap<>();
+      for (StreamingXmlFlattener.FlattenedField field : fields) {
+        record.put(field.getName(), field.getValue());
+      }
+      records.add(record);
+    });
+    return records;
+  }
+
+  @Test
+  public void testSingleRecord() throws Exception {
+    StreamingXmlFlattener flattener = new StreamingXmlFlattener("", ".", "#", false, false);
+    List<Map<String, String>> records = flatten(
+        flattener,
+        "<contact type=\"person\">\n  <name type=\"maiden\" xmlns=\"http://blah.com/blah.xml\">NAME</name>\n" +
+            "  <phone>111</phone><!-- comment --><phone>222</phone>\n</contact>"
+    );
+    Assert.assertEquals(1, records.size());
+
+    Map<String, String> expected = new LinkedHashMap<>();
+    expected.put("contact#type", "person");
+    expected.put("contact.name#type", "maiden");
+    expected.put("contact.name#xmlns", "http://blah.com/blah.xml");
+    expected.put("contact.name", "NAME");
+    expected.put("contact.phone(0)", "111");
+    expected.put("contact.phone(1)", "222");
+    Assert.assertEquals(expected, records.get(0));
+  }
+
+  @Test
+  public void testRepeatedSiblingsAreIndexed() throws Exception {
+    StreamingXmlFlattener flattener = new StreamingXmlFlattener(null, "_", ".", true, true);
+    List<Map<String, String>> records = flatten(
+        flattener,
+        "<a><b><c>1</c><d>2</d><d>3</d></b><e>4</e><b><c>5</c></b><b><c>6</c><c>7</c></b></a>"
+    );
+    Assert.assertEquals(1, records.size());
+
+    Map<String, String> expected = new LinkedHashMap<>();
+    expected.put("a_b(0)_c", "1");
+    expected.put("a_b(0)_d(0)", "2");
+    expected.put("a_b(0)_d(1)", "3");
+    expected.put("a_e", "4");
+    expected.put("a_b(1)_c", "5");
+    expected.put("a_b(2)_c(0)", "6");
+    expected.put("a_b(2)_c(1)", "7");
+    Assert.assertEquals(expected, records.get(0));
+  }
+
+  @Test
+  public void testRecordElement() throws Exception {
+    StreamingXmlFlattener flattener = new StreamingXmlFlattener("contact", ".", "#", false, true);
+    List<Map<String, String>> records = flatten(
+        flattener,
+        "<contacts>ignored<contact id=\"0\"><name>A</name></contact>" +
+            "<group><contact id=\"1\"><name>B</name><contact>nested</contact></contact></group></contacts>"
+    );
+    Assert.assertEquals(2, records.size());
+
+    Map<String, String> expected = new LinkedHashMap<>();
+    expected.put("contact#id", "0");
+    expected.put("contact.name", "A");
+    Assert.assertEquals(expected, records.get(0));
+
+    expected.clear();
+    expected.put("contact#id", "1");
+    expected.put("contact.name", "B");
+    expected.put("contact.contact", "nested");
+    Assert.assertEquals(expected, records.get(1));
+  }
+
+  @Test
+  public void testTextAndNamespaces() throws Exception {
+    StreamingXmlFlattener flattener = new StreamingXmlFlattener("", ".", "#", false, false);
+    List<StreamingXmlFlattener.FlattenedField> fields = new ArrayList<>();
+    flattener.flatten(
+        new StringReader("<x:a xmlns:x=\"urn:x\" x:attr=\"v\"> t<![CDATA[<1>]]>&amp; <x:b/>  <c>y</c></x:a>"),
+        fields::addAll
+    );
+    Assert.assertEquals(6, fields.size());
+    Assert.assertEquals("x:a#x:attr", fields.get(0).getName());
+    Assert.assertEquals("x:a#xmlns:x", fields.get(1).getName());
+    Assert.assertEquals("urn:x", fields.get(1).getValue());
+    Assert.assertEquals("x:a#xmlns", fields.get(2).getName());
+    Assert.assertFalse(fields.get(2).isText());
+    Assert.assertEquals("x:a", fields.get(3).getName());
+    // text is not trimmed
+    Assert.assertEquals(" t<1>& ", fields.get(3).getValue());
+    Assert.assertTrue(fields.get(3).isText());
+    // the namespace of an element is reported even if it is declared by an ancestor
+    Assert.assertEquals("x:a.x:b#xmlns", fields.get(4).getName());
+    Assert.assertEquals("x:a.c", fields.get(5).getName());
+  }
+
+  @Test
+  public void testReuseAfterInvalidDocument() throws Exception {
+    StreamingXmlFlattener flattener = new StreamingXmlFlattener("", ".", "#", true, true);
+    try {
+      flatten(flattener, "<a><b>1</b></a><a><b>2</b></a>");
+      Assert.fail();
+    } catch (XMLStreamException ex) {
+      // expected
+    }
+    List<Map<String, String>> records = flatten(flattener, "<a><b>3</b></a>");
+    Assert.assertEquals(1, records.size());
+    Assert.assertEquals("3", records.get(0).get("a.b"));
+  }
+
+}
@@ -16,15 +16,12 @@
 package com.streamsets.pipeline.lib.generator.avro;
 
 import com.streamsets.pipeline.api.Record;
-import com.streamsets.pipeline.api.StageException;
 import com.streamsets.pipeline.lib.generator.DataGeneratorException;
 import com.streamsets.pipeline.lib.util.AvroJavaSnappyCodec;
-import com.streamsets.pipeline.lib.util.AvroTypeUtil;
 import org.apache.avro.Schema;
 import org.apache.avro.file.CodecFactory;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericDatumWriter;
-import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.DatumWriter;
 
 import java.io.Closeable;
@@ -42,7 +39,7 @@ public class AvroDataOutputStreamGenerator extends BaseAvroDataGenerator {
 
   private OutputStream outputStream;
   private String compressionCodec;
-  private DataFileWriter<GenericRecord> dataFileWriter;
+  private DataFileWriter<Object> dataFileWriter;
 
   public AvroDataOutputStreamGenerator(
       boolean schemaInHeader,
@@ -61,7 +58,8 @@ public class AvroDataOutputStreamGenerator extends BaseAvroDataGenerator {
 
   @Override
   protected void initializeWriter() throws IOException {
-    DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(schema);
+    // records are appended already encoded, the datum writer only provides the schema to the file writer
+    DatumWriter<Object> datumWriter = new GenericDatumWriter<>(schema);
     dataFileWriter = new DataFileWriter<>(datumWriter);
     dataFileWriter.setCodec(CodecFactory.fromString(compressionCodec));
     dataFileWriter.create(schema, outputStream);
@@ -69,11 +67,7 @@ public class AvroDataOutputStreamGenerator extends BaseAvroDataGenerator {
 
   @Override
   protected void writeRecord(Record record) throws IOException, DataGeneratorException {
-    try {
-      dataFileWriter.append((GenericRecord)AvroTypeUtil.sdcRecordToAvro(record, schema, defaultValueMap));
-    } catch (StageException e) {
-      throw new DataGeneratorException(e.getErrorCode(), e.getParams()); // params includes cause
-    }
+    dataFileWriter.appendEncoded(encodeRecord(record));
   }
 
   @Override
@@ -16,13 +16,9 @@
 package com.streamsets.pipeline.lib.generator.avro;
 
 import com.streamsets.pipeline.api.Record;
-import com.streamsets.pipeline.api.StageException;
 import com.streamsets.pipeline.lib.generator.DataGeneratorException;
-import com.streamsets.pipeline.lib.util.AvroTypeUtil;
 import org.apache.avro.Schema;
-import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.io.BinaryEncoder;
-import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.EncoderFactory;
 
 import java.io.Closeable;
@@ -33,7 +29,6 @@ import java.util.Map;
 
 public class AvroMessageGenerator extends BaseAvroDataGenerator {
 
-  private DatumWriter<Object> datumWriter;
   private BinaryEncoder binaryEncoder;
   private final OutputStream outputStream;
 
@@ -54,19 +49,12 @@ public class AvroMessageGenerator extends BaseAvroDataGenerator {
 
   @Override
   protected void initializeWriter() {
-    datumWriter = new GenericDatumWriter<>(schema);
+    // records are written to the binary encoder that is created with the generator
   }
 
   @Override
   public void writeRecord(Record record) throws IOException, DataGeneratorException {
-    try {
-      datumWriter.write(
-          AvroTypeUtil.sdcRecordToAvro(record, schema, defaultValueMap),
-          binaryEncoder
-      );
-    } catch (StageException e) {
-      throw new DataGeneratorException(e.getErrorCode(), e.getParams()); // params includes cause
-    }
+    binaryEncoder.writeFixed(encodeRecord(record));
   }
 
   @Override
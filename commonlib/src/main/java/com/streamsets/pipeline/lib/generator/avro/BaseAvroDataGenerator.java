@@ -16,16 +16,22 @@
 package com.streamsets.pipeline.lib.generator.avro;
 
 import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.StageException;
 import com.streamsets.pipeline.lib.generator.DataGenerator;
 import com.streamsets.pipeline.lib.generator.DataGeneratorException;
+import com.streamsets.pipeline.lib.util.AvroFieldWriter;
 import com.streamsets.pipeline.lib.util.AvroTypeUtil;
 import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Map;
 
@@ -82,6 +88,17 @@ abstract public class BaseAvroDataGenerator implements DataGenerator {
    */
   protected Map<String, Object> defaultValueMap;
 
+  /**
+   * Writer compiled for the schema, filled in before calling initializeWriter()
+   */
+  private AvroFieldWriter fieldWriter;
+
+  /**
+   * Buffer that records are encoded to first, a record that fails to encode doesn't leave partial data in the output
+   */
+  private final RecordBuffer recordBuffer = new RecordBuffer();
+  private final BinaryEncoder recordEncoder = EncoderFactory.get().directBinaryEncoder(recordBuffer, null);
+
   /**
    * State of the generator
    */
@@ -100,6 +117,7 @@ abstract public class BaseAvroDataGenerator implements DataGenerator {
   }
 
   protected void initialize() throws IOException {
+    fieldWriter = AvroFieldWriter.forSchema(schema);
     initializeWriter();
     state = State.OPENED;
   }
@@ -112,6 +130,19 @@ abstract public class BaseAvroDataGenerator implements DataGenerator {
     initialize();
   }
 
+  /**
+   * Encodes the given record to binary avro, the returned buffer is only valid until the next call.
+   */
+  protected ByteBuffer encodeRecord(Record record) throws IOException, DataGeneratorException {
+    recordBuffer.reset();
+    try {
+      fieldWriter.write(record, defaultValueMap, recordEncoder);
+    } catch (StageException e) {
+      throw new DataGeneratorException(e.getErrorCode(), e.getParams()); // params includes cause
+    }
+    return recordBuffer.toByteBuffer();
+  }
+
   @Override
   public void write(Record record) throws IOException, DataGeneratorException {
     if (schemaInHeader) {
@@ -169,4 +200,10 @@ abstract public class BaseAvroDataGenerator implements DataGenerator {
 
     state = State.CLOSED;
   }
+
+  private static class RecordBuffer extends ByteArrayOutputStream {
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
 }
@@ -15,11 +15,13 @@
  */
 package com.streamsets.pipeline.lib.generator.protobuf;
 
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Descriptors;
 import com.google.protobuf.DynamicMessage;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.lib.generator.DataGenerator;
 import com.streamsets.pipeline.lib.generator.DataGeneratorException;
+import com.streamsets.pipeline.lib.util.ProtobufFieldWriter;
 import com.streamsets.pipeline.lib.util.ProtobufTypeUtil;
 
 import java.io.IOException;
@@ -35,18 +37,24 @@ public class ProtobufDataGenerator implements DataGenerator {
   private boolean closed;
   private final Map<String, Set<Descriptors.FieldDescriptor>> messageTypeToExtensionMap;
   private final Map<String, Object> defaultValueMap;
+  // null if the descriptor can only be handled through DynamicMessage
+  private final ProtobufFieldWriter fieldWriter;
+  private final CodedOutputStream codedOutputStream;
 
   public ProtobufDataGenerator(
       OutputStream outputStream,
       Descriptors.Descriptor descriptor,
       Map<String, Set<Descriptors.FieldDescriptor>> messageTypeToExtensionMap,
       Map<String, Object> defaultValueMap,
+      ProtobufFieldWriter fieldWriter,
       boolean isDelimited
   ) {
     this.outputStream = outputStream;
     this.descriptor = descriptor;
     this.messageTypeToExtensionMap = messageTypeToExtensionMap;
     this.defaultValueMap = defaultValueMap;
+    this.fieldWriter = fieldWriter;
+    this.codedOutputStream = fieldWriter == null ? null : CodedOutputStream.newInstance(outputStream);
     this.isDelimited = isDelimited;
   }
 
@@ -55,6 +63,12 @@ public class ProtobufDataGenerator implements DataGenerator {
     if (closed) {
       throw new IOException("generator has been closed");
     }
+    if (fieldWriter != null) {
+      fieldWriter.write(record, codedOutputStream, isDelimited);
+      // hand the message over to the output stream, as DynamicMessage.writeTo does
+      codedOutputStream.flush();
+      return;
+    }
     DynamicMessage message = ProtobufTypeUtil.sdcFieldToProtobufMsg(
         record,
         descriptor,
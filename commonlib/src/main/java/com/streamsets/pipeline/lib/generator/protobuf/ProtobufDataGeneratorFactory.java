@@ -21,6 +21,7 @@ import com.streamsets.pipeline.api.StageException;
 import com.streamsets.pipeline.lib.generator.DataGenerator;
 import com.streamsets.pipeline.lib.generator.DataGeneratorFactory;
 import com.streamsets.pipeline.lib.util.ProtobufConstants;
+import com.streamsets.pipeline.lib.util.ProtobufFieldWriter;
 import com.streamsets.pipeline.lib.util.ProtobufTypeUtil;
 
 import java.io.IOException;
@@ -53,6 +54,8 @@ public class ProtobufDataGeneratorFactory extends DataGeneratorFactory {
   // that is accessible via the configured Protobuf descriptor file
   private final Map<String, Set<Descriptors.FieldDescriptor>> messageTypeToExtensionMap;
   private final Map<String, Object> defaultValueMap;
+  // compiled once and shared by all the generators
+  private final ProtobufFieldWriter fieldWriter;
 
   public ProtobufDataGeneratorFactory(Settings settings) throws StageException {
     super(settings);
@@ -69,6 +72,7 @@ public class ProtobufDataGeneratorFactory extends DataGeneratorFactory {
         messageTypeToExtensionMap,
         defaultValueMap
     );
+    fieldWriter = ProtobufFieldWriter.create(descriptor, messageTypeToExtensionMap, defaultValueMap);
   }
 
   @Override
@@ -78,6 +82,7 @@ public class ProtobufDataGeneratorFactory extends DataGeneratorFactory {
         descriptor,
         messageTypeToExtensionMap,
         defaultValueMap,
+        fieldWriter,
         isDelimited
     );
   }
@@ -22,6 +22,7 @@ import com.streamsets.pipeline.config.ChecksumAlgorithm;
 import com.streamsets.pipeline.lib.generator.DataGenerator;
 import com.streamsets.pipeline.lib.generator.DataGeneratorException;
 import com.streamsets.pipeline.lib.generator.StreamCloseEventHandler;
+import com.streamsets.pipeline.lib.io.fileref.FileRefTransfer;
 import com.streamsets.pipeline.lib.io.fileref.FileRefUtil;
 import org.apache.commons.io.IOUtils;
 
@@ -32,10 +33,12 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutorService;
 
 final class WholeFileDataGenerator implements DataGenerator {
   private final Stage.Context context;
   private final OutputStream outputStream;
+  private final ExecutorService transferExecutor;
   private final boolean includeChecksumInTheEvents;
   private final ChecksumAlgorithm checksumAlgorithm;
   private final StreamCloseEventHandler<?> streamCloseEventHandler;
@@ -43,12 +46,14 @@ final class WholeFileDataGenerator implements DataGenerator {
   WholeFileDataGenerator(
       Stage.Context context,
       OutputStream os,
+      ExecutorService transferExecutor,
       boolean includeChecksumInTheEvents,
       ChecksumAlgorithm checksumAlgorithm,
       StreamCloseEventHandler<?> streamCloseEventHandler
   ) throws IOException {
     this.context = context;
     this.outputStream = os;
+    this.transferExecutor = transferExecutor;
     this.includeChecksumInTheEvents = includeChecksumInTheEvents;
     this.checksumAlgorithm = checksumAlgorithm;
     this.streamCloseEventHandler = streamCloseEventHandler;
@@ -77,6 +82,19 @@ final class WholeFileDataGenerator implements DataGenerator {
   public void write(Record record) throws IOException, DataGeneratorException {
     validateRecord(record);
     FileRef fileRef = record.get(FileRefUtil.FILE_REF_FIELD_PATH).getValueAsFileRef();
+    if (FileRefTransfer.isSupported(fileRef)) {
+      //Copies chunk by chunk, with zero copy/parallel reads where the file ref and output stream allow it.
+      FileRefTransfer.transfer(
+          context,
+          fileRef,
+          outputStream,
+          transferExecutor,
+          includeChecksumInTheEvents,
+          checksumAlgorithm,
+          streamCloseEventHandler
+      );
+      return;
+    }
     int bufferSize = fileRef.getBufferSize();
     boolean canUseDirectByteBuffer = fileRef.getSupportedStreamClasses().contains(ReadableByteChannel.class);
     if (canUseDirectByteBuffer) {
@@ -20,6 +20,7 @@ import com.streamsets.pipeline.config.ChecksumAlgorithm;
 import com.streamsets.pipeline.lib.generator.DataGenerator;
 import com.streamsets.pipeline.lib.generator.DataGeneratorFactory;
 import com.streamsets.pipeline.lib.generator.StreamCloseEventHandler;
+import com.streamsets.pipeline.lib.io.fileref.FileRefTransfer;
 import com.streamsets.pipeline.lib.io.fileref.FileRefUtil;
 
 import java.io.IOException;
@@ -27,6 +28,7 @@ import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 public class WholeFileDataGeneratorFactory extends DataGeneratorFactory {
   public static final Map<String, Object> CONFIGS = new HashMap<>();
@@ -42,16 +44,27 @@ public class WholeFileDataGeneratorFactory extends DataGeneratorFactory {
   }
 
 
+  // the factory is created once per stage, its generators share the transfer threads
+  private ExecutorService transferExecutor;
+
   public WholeFileDataGeneratorFactory(Settings settings) {
     super(settings);
   }
 
+  private synchronized ExecutorService getTransferExecutor() {
+    if (transferExecutor == null) {
+      transferExecutor = FileRefTransfer.createExecutor();
+    }
+    return transferExecutor;
+  }
+
   @Override
   public DataGenerator getGenerator(OutputStream os, StreamCloseEventHandler<?> streamCloseEventHandler) throws IOException {
     FileRefUtil.initMetricsIfNeeded(getSettings().getContext());
     return new WholeFileDataGenerator(
         getSettings().getContext(),
         os,
+        getTransferExecutor(),
         (boolean) getSettings().getConfig(INCLUDE_CHECKSUM_IN_THE_EVENTS_KEY),
         (ChecksumAlgorithm) getSettings().getConfig(CHECKSUM_ALGO_KEY),
         streamCloseEventHandler
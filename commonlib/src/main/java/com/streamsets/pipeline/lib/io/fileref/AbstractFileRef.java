@@ -86,6 +86,30 @@ public abstract class AbstractFileRef extends FileRef {
     return (verifyChecksum)?(T)new VerifyChecksumWrapperStream<>(stream, checksum, checksumAlgorithm) : stream;
   }
 
+  boolean isCreateMetrics() {
+    return createMetrics;
+  }
+
+  long getTotalSizeInBytes() {
+    return totalSizeInBytes;
+  }
+
+  double getRateLimit() {
+    return rateLimit;
+  }
+
+  boolean isVerifyChecksum() {
+    return verifyChecksum;
+  }
+
+  String getChecksum() {
+    return checksum;
+  }
+
+  HashingUtil.HashType getChecksumAlgorithm() {
+    return checksumAlgorithm;
+  }
+
   /**
    * Creates the Stream instance based on the stream class type.
    * @param streamClassType the stream class type
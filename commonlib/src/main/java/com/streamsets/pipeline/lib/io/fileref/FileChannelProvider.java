@@ -0,0 +1,30 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.io.fileref;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * Implemented by output streams backed by a local file, so that {@link FileRefTransfer} can write to the file channel
+ * directly. The stream must not buffer, as the writes to the channel bypass it.
+ */
+public interface FileChannelProvider {
+
+  /**
+   * Returns the channel of the file the stream writes to, or null if there is none.
+   */
+  FileChannel getFileChannel();
+}
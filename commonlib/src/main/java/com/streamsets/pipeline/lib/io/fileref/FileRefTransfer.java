@@ -0,0 +1,557 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.io.fileref;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hasher;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.streamsets.pipeline.api.FileRef;
+import com.streamsets.pipeline.api.Stage;
+import com.streamsets.pipeline.api.impl.Utils;
+import com.streamsets.pipeline.config.ChecksumAlgorithm;
+import com.streamsets.pipeline.lib.generator.StreamCloseEventHandler;
+import com.streamsets.pipeline.lib.hashing.HashingUtil;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies the contents of an {@link AbstractFileRef} to an output stream chunk by chunk, instead of going through the
+ * wrapper streams of {@link FileRefUtil#getReadableStream} on every read.
+ * <ul>
+ *   <li>Metrics are updated and the rate limit is acquired once per chunk.</li>
+ *   <li>A {@link FileChannel} copied to a local file without checksums uses
+ *   {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}. The output stream has to be a
+ *   {@link FileOutputStream} or a {@link FileChannelProvider}.</li>
+ *   <li>Large files backed by a {@link FileChannel} are read in parallel parts with positional reads, the parts are
+ *   written in order.</li>
+ *   <li>Checksums are calculated on a separate thread over the buffers which were written, a buffer is only reused
+ *   once it is hashed.</li>
+ * </ul>
+ * The checksum verification and the checksum event behave the same as with the wrapper streams. The parallel reads
+ * and the checksums run on an executor shared by the transfers of a stage, see {@link #createExecutor()}.
+ */
+public final class FileRefTransfer {
+  @VisibleForTesting
+  static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+  private static final int MIN_CHUNK_SIZE = 64 * 1024;
+  @VisibleForTesting
+  static final long PARALLEL_TRANSFER_THRESHOLD = 64L * 1024 * 1024;
+  private static final int PARALLEL_PARTS = 4;
+  // in flight chunks when reading sequentially: one being read/written and the ones being hashed
+  private static final int SEQUENTIAL_BUFFERS = 3;
+
+  private static final ThreadFactory THREAD_FACTORY =
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Whole File Transfer - %d").build();
+  private static final long EXECUTOR_KEEP_ALIVE_SECS = 60;
+
+  private final Stage.Context context;
+  private final AbstractFileRef fileRef;
+  private final OutputStream outputStream;
+  private final ExecutorService executor;
+  private final HashingUtil.HashType eventChecksumAlgorithm;
+  private final StreamCloseEventHandler<?> streamCloseEventHandler;
+  private final int chunkSize;
+  private final long parallelTransferThreshold;
+  // keyed by algorithm so that verifying and including the checksum in the events hash only once
+  private final Map<HashingUtil.HashType, Hasher> hashers = new LinkedHashMap<>();
+
+  private MetricEnabledWrapperStream<?> metrics;
+  private RateLimitingWrapperStream<?> rateLimiting;
+  // hashes the chunks in order on the shared executor
+  private Executor hashExecutor;
+
+  @VisibleForTesting
+  FileRefTransfer(
+      Stage.Context context,
+      AbstractFileRef fileRef,
+      OutputStream outputStream,
+      ExecutorService executor,
+      boolean includeChecksumInTheEvents,
+      ChecksumAlgorithm checksumAlgorithm,
+      StreamCloseEventHandler<?> streamCloseEventHandler,
+      int maxChunkSize,
+      long parallelTransferThreshold
+  ) {
+    if (includeChecksumInTheEvents) {
+      Utils.checkArgument(
+          FileRefStreamCloseEventHandler.class.isAssignableFrom(streamCloseEventHandler.getClass()),
+          "Stream Close Event handler should be of type " + FileRefStreamCloseEventHandler.class.getCanonicalName()
+      );
+    }
+    this.context = context;
+    this.fileRef = fileRef;
+    this.outputStream = outputStream;
+    this.executor = executor;
+    this.eventChecksumAlgorithm = includeChecksumInTheEvents ? checksumAlgorithm.getHashType() : null;
+    this.streamCloseEventHandler = streamCloseEventHandler;
+    this.parallelTransferThreshold = parallelTransferThreshold;
+    int size = Math.min(fileRef.getBufferSize(), maxChunkSize);
+    long totalSize = fileRef.getTotalSizeInBytes();
+    if (totalSize > 0 && totalSize < size) {
+      // don't allocate more than the file needs, the size is only a hint so keep a reasonable minimum
+      size = (int) Math.max(totalSize, Math.min(size, MIN_CHUNK_SIZE));
+    }
+    this.chunkSize = size;
+    if (fileRef.isVerifyChecksum()) {
+      hashers.put(fileRef.getChecksumAlgorithm(), HashingUtil.getHasher(fileRef.getChecksumAlgorithm()).newHasher());
+    }
+    if (eventChecksumAlgorithm != null && !hashers.containsKey(eventChecksumAlgorithm)) {
+      hashers.put(eventChecksumAlgorithm, HashingUtil.getHasher(eventChecksumAlgorithm).newHasher());
+    }
+  }
+
+  /**
+   * Creates the executor for the parallel reads and the checksums of the transfers of a stage. Its threads are daemon
+   * threads which terminate when idle, so the executor does not need to be shut down.
+   */
+  public static ExecutorService createExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        PARALLEL_PARTS + 1,
+        PARALLEL_PARTS + 1,
+        EXECUTOR_KEEP_ALIVE_SECS,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        THREAD_FACTORY
+    );
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Returns true if the file ref can be copied with {@link #transfer}, otherwise its streams have to be used.
+   */
+  public static boolean isSupported(FileRef fileRef) {
+    return fileRef instanceof AbstractFileRef;
+  }
+
+  /**
+   * Copies the file ref to the output stream, which is not closed.
+   * @param context the stage context, used for the whole file metrics
+   * @param fileRef the file ref, see {@link #isSupported(FileRef)}
+   * @param outputStream the output stream to copy to
+   * @param executor the executor of the stage, see {@link #createExecutor()}
+   * @param includeChecksumInTheEvents whether the checksum should be passed to the stream close event handler
+   * @param checksumAlgorithm the checksum algorithm for the events
+   * @param streamCloseEventHandler the handler which receives the checksum
+   * @return the number of bytes copied
+   * @throws IOException if the file can't be read or written, or if the checksum to verify does not match
+   */
+  public static long transfer(
+      Stage.Context context,
+      FileRef fileRef,
+      OutputStream outputStream,
+      ExecutorService executor,
+      boolean includeChecksumInTheEvents,
+      ChecksumAlgorithm checksumAlgorithm,
+      StreamCloseEventHandler<?> streamCloseEventHandler
+  ) throws IOException {
+    Utils.checkArgument(isSupported(fileRef), Utils.format("Unsupported file ref {}", fileRef.getClass().getName()));
+    return new FileRefTransfer(
+        context,
+        (AbstractFileRef) fileRef,
+        outputStream,
+        executor,
+        includeChecksumInTheEvents,
+        checksumAlgorithm,
+        streamCloseEventHandler,
+        MAX_CHUNK_SIZE,
+        PARALLEL_TRANSFER_THRESHOLD
+    ).transfer();
+  }
+
+  @VisibleForTesting
+  long transfer() throws IOException {
+    AutoCloseable source = openSource();
+    // the wrapper streams are only used for their per read operations, closing the outermost one closes the source
+    AutoCloseable stream = source;
+    if (fileRef.isCreateMetrics()) {
+      metrics = new MetricEnabledWrapperStream<>(fileRef.toString(), fileRef.getTotalSizeInBytes(), context, source);
+      stream = metrics;
+    }
+    if (fileRef.getRateLimit() > 0) {
+      rateLimiting = new RateLimitingWrapperStream<>(stream, fileRef.getTotalSizeInBytes(), fileRef.getRateLimit());
+      stream = rateLimiting;
+    }
+    long transferred;
+    try {
+      transferred = copy(source);
+    } catch (IOException | RuntimeException e) {
+      // as with the wrapper streams, the file counts as completed and the source is closed
+      try {
+        close(stream);
+      } catch (IOException | RuntimeException closeException) {
+        e.addSuppressed(closeException);
+      }
+      throw e;
+    }
+    close(stream);
+    finishChecksums();
+    return transferred;
+  }
+
+  private AutoCloseable openSource() throws IOException {
+    if (fileRef.getSupportedStreamClasses().contains(ReadableByteChannel.class)) {
+      return fileRef.createInputStream(ReadableByteChannel.class);
+    }
+    return fileRef.createInputStream(InputStream.class);
+  }
+
+  private static void close(AutoCloseable stream) throws IOException {
+    try {
+      stream.close();
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  private long copy(AutoCloseable source) throws IOException {
+    FileChannel target = getFileChannel(outputStream);
+    if (source instanceof FileChannel) {
+      FileChannel sourceChannel = (FileChannel) source;
+      if (target != null && hashers.isEmpty()) {
+        return transferTo(sourceChannel, target);
+      }
+      if (sourceChannel.size() - sourceChannel.position() >= parallelTransferThreshold) {
+        return copyInParallelParts(sourceChannel, target);
+      }
+    }
+    return copyChunks(source, target);
+  }
+
+  private static FileChannel getFileChannel(OutputStream outputStream) {
+    if (outputStream instanceof FileOutputStream) {
+      return ((FileOutputStream) outputStream).getChannel();
+    }
+    if (outputStream instanceof FileChannelProvider) {
+      return ((FileChannelProvider) outputStream).getFileChannel();
+    }
+    return null;
+  }
+
+  private void beforeChunk(long bytesToBeRead) {
+    if (rateLimiting != null) {
+      rateLimiting.performPreReadOperation((int) bytesToBeRead);
+    }
+  }
+
+  private void afterChunk(long bytesRead) {
+    if (rateLimiting != null) {
+      rateLimiting.performPostReadOperation((int) bytesRead);
+    }
+    if (metrics != null) {
+      metrics.performPostReadOperation((int) bytesRead);
+    }
+  }
+
+  private long transferTo(FileChannel source, FileChannel target) throws IOException {
+    long position = source.position();
+    long transferred = 0;
+    while (true) {
+      beforeChunk(chunkSize);
+      long bytes = source.transferTo(position + transferred, chunkSize, target);
+      if (bytes <= 0) {
+        return transferred;
+      }
+      afterChunk(bytes);
+      transferred += bytes;
+    }
+  }
+
+  private ByteBuffer[] allocateBuffers(int count, boolean direct) {
+    ByteBuffer[] buffers = new ByteBuffer[count];
+    for (int i = 0; i < count; i++) {
+      buffers[i] = direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+    }
+    return buffers;
+  }
+
+  private long copyChunks(AutoCloseable source, FileChannel target) throws IOException {
+    // a direct buffer only helps when both ends are channels and the bytes are not needed for the checksum
+    boolean direct = source instanceof ReadableByteChannel && target != null && hashers.isEmpty();
+    // hash on another thread if there is more than a chunk to hash
+    boolean hashOffThread = !hashers.isEmpty() && fileRef.getTotalSizeInBytes() > chunkSize;
+    ByteBuffer[] buffers = allocateBuffers(hashOffThread ? SEQUENTIAL_BUFFERS : 1, direct);
+    Future<?>[] hashes = new Future<?>[buffers.length];
+    long transferred = 0;
+    try {
+      for (int chunk = 0; ; chunk++) {
+        int slot = chunk % buffers.length;
+        // the buffer can only be reused once its previous chunk is hashed
+        await(hashes[slot]);
+        ByteBuffer buffer = buffers[slot];
+        buffer.clear();
+        beforeChunk(buffer.remaining());
+        int bytes = read(source, buffer);
+        if (bytes <= 0) {
+          break;
+        }
+        buffer.flip();
+        write(buffer, target);
+        afterChunk(bytes);
+        transferred += bytes;
+        hashes[slot] = hash(buffer, hashOffThread);
+      }
+      awaitAll(hashes);
+    } finally {
+      cancelAll(hashes);
+    }
+    return transferred;
+  }
+
+  private long copyInParallelParts(FileChannel source, FileChannel target) throws IOException {
+    long start = source.position();
+    long size = source.size() - start;
+    int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+    // a couple of chunks per part so that reading the next ones overlaps with writing and hashing
+    ByteBuffer[] buffers = allocateBuffers(Math.min(chunks, PARALLEL_PARTS * 2), false);
+    Future<?>[] hashes = new Future<?>[buffers.length];
+    @SuppressWarnings("unchecked")
+    Future<Integer>[] reads = new Future[buffers.length];
+    long transferred = 0;
+    try {
+      for (int chunk = 0; chunk < Math.min(chunks, buffers.length); chunk++) {
+        reads[chunk] = executor.submit(positionalRead(source, buffers[chunk], start + (long) chunk * chunkSize));
+      }
+      for (int chunk = 0; chunk < chunks; chunk++) {
+        int slot = chunk % buffers.length;
+        int bytes = await(reads[slot]);
+        ByteBuffer buffer = buffers[slot];
+        beforeChunk(bytes);
+        write(buffer, target);
+        afterChunk(bytes);
+        transferred += bytes;
+        hashes[slot] = hash(buffer, true);
+        if (bytes < chunkSize) {
+          // the file was truncated while being copied
+          break;
+        }
+        // refill the buffer of the previous chunk, it was hashed while this chunk was written. The tasks on the shared
+        // executor never wait for each other, so the transfers of a stage can't block each other.
+        int next = chunk - 1 + buffers.length;
+        if (chunk > 0 && next < chunks) {
+          int previousSlot = (chunk - 1) % buffers.length;
+          await(hashes[previousSlot]);
+          reads[previousSlot] = executor.submit(
+              positionalRead(source, buffers[previousSlot], start + (long) next * chunkSize)
+          );
+        }
+      }
+      awaitAll(hashes);
+    } finally {
+      cancelAll(reads);
+      cancelAll(hashes);
+    }
+    return transferred;
+  }
+
+  private Callable<Integer> positionalRead(final FileChannel source, final ByteBuffer buffer, final long position) {
+    return new Callable<Integer>() {
+      @Override
+      public Integer call() throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+          if (source.read(buffer, position + buffer.position()) < 0) {
+            break;
+          }
+        }
+        buffer.flip();
+        return buffer.remaining();
+      }
+    };
+  }
+
+  private static int read(AutoCloseable source, ByteBuffer buffer) throws IOException {
+    if (source instanceof ReadableByteChannel) {
+      ReadableByteChannel channel = (ReadableByteChannel) source;
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          break;
+        }
+      }
+    } else {
+      InputStream stream = (InputStream) source;
+      while (buffer.hasRemaining()) {
+        int bytes = stream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (bytes < 0) {
+          break;
+        }
+        buffer.position(buffer.position() + bytes);
+      }
+    }
+    return buffer.position();
+  }
+
+  private void write(ByteBuffer buffer, FileChannel target) throws IOException {
+    if (target != null) {
+      ByteBuffer toWrite = buffer.duplicate();
+      while (toWrite.hasRemaining()) {
+        target.write(toWrite);
+      }
+    } else {
+      // a single write of the whole chunk instead of the small writes of Channels.newChannel
+      outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+  }
+
+  private Future<?> hash(ByteBuffer buffer, boolean offThread) {
+    if (hashers.isEmpty()) {
+      return null;
+    }
+    final byte[] bytes = buffer.array();
+    final int offset = buffer.arrayOffset() + buffer.position();
+    final int length = buffer.remaining();
+    Runnable hash = new Runnable() {
+      @Override
+      public void run() {
+        for (Hasher hasher : hashers.values()) {
+          hasher.putBytes(bytes, offset, length);
+        }
+      }
+    };
+    if (!offThread) {
+      hash.run();
+      return null;
+    }
+    if (hashExecutor == null) {
+      hashExecutor = new SerialExecutor(executor);
+    }
+    FutureTask<?> task = new FutureTask<>(hash, null);
+    hashExecutor.execute(task);
+    return task;
+  }
+
+  private static <T> T await(Future<T> future) throws IOException {
+    if (future == null) {
+      return null;
+    }
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while transferring the file");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static void awaitAll(Future<?>[] futures) throws IOException {
+    for (Future<?> future : futures) {
+      await(future);
+    }
+  }
+
+  private static void cancelAll(Future<?>[] futures) {
+    // a no-op for the completed ones, the others are only left over when the transfer failed
+    for (Future<?> future : futures) {
+      if (future != null) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void finishChecksums() throws IOException {
+    Map<HashingUtil.HashType, String> checksums = new LinkedHashMap<>();
+    for (Map.Entry<HashingUtil.HashType, Hasher> entry : hashers.entrySet()) {
+      //toString returns the hex string representation.
+      checksums.put(entry.getKey(), entry.getValue().hash().toString());
+    }
+    if (fileRef.isVerifyChecksum()) {
+      String calculatedChecksum = checksums.get(fileRef.getChecksumAlgorithm());
+      if (!calculatedChecksum.equals(fileRef.getChecksum())) {
+        throw new IOException(
+            Utils.format(
+                "The checksum did not match. Expected: {}, Actual: {}",
+                fileRef.getChecksum(),
+                calculatedChecksum
+            )
+        );
+      }
+    }
+    if (eventChecksumAlgorithm != null) {
+      ((StreamCloseEventHandler<Map<String, Object>>) streamCloseEventHandler).handleCloseEvent(
+          new ImmutableMap.Builder<String, Object>()
+              .put(FileRefUtil.WHOLE_FILE_CHECKSUM, checksums.get(eventChecksumAlgorithm))
+              .put(FileRefUtil.WHOLE_FILE_CHECKSUM_ALGO, eventChecksumAlgorithm)
+              .build()
+      );
+    }
+  }
+
+  /**
+   * Runs the tasks one at a time and in order on the given executor.
+   */
+  private static final class SerialExecutor implements Executor {
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private Runnable active;
+
+    SerialExecutor(Executor executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(final Runnable task) {
+      tasks.add(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            task.run();
+          } finally {
+            scheduleNext();
+          }
+        }
+      });
+      if (active == null) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void scheduleNext() {
+      active = tasks.poll();
+      if (active != null) {
+        executor.execute(active);
+      }
+    }
+  }
+}
@@ -19,6 +19,7 @@ import com.streamsets.pipeline.api.FileRef;
 import com.streamsets.pipeline.api.ext.io.OverrunReader;
 import com.streamsets.pipeline.api.impl.Utils;
 import com.streamsets.pipeline.lib.data.DataFactory;
+import com.streamsets.pipeline.lib.io.OverrunByteLineReader;
 import com.streamsets.pipeline.api.ext.io.OverrunReader;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
@@ -98,6 +99,17 @@ public abstract class DataParserFactory extends DataFactory {
     );
   }
 
+  /**
+   * Returns a reader splitting the lines of the stream on its bytes, or null if the charset or the removal of control
+   * characters requires going through {@link #createReader(InputStream)}.
+   */
+  protected OverrunByteLineReader createLineReader(InputStream is, int maxLine) {
+    if (getSettings().getRemoveCtrlChars() || !OverrunByteLineReader.isSupported(getSettings().getCharset())) {
+      return null;
+    }
+    return new OverrunByteLineReader(is, getSettings().getCharset(), maxLine, getSettings().getOverRunLimit());
+  }
+
   private Reader bufferReader(Reader reader) {
     if (reader instanceof BufferedReader) {
       return reader;
@@ -15,20 +15,16 @@
  */
 package com.streamsets.pipeline.lib.parser.avro;
 
+import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.api.impl.Utils;
 import com.streamsets.pipeline.lib.parser.AbstractDataParser;
 import com.streamsets.pipeline.lib.parser.DataParserException;
 import com.streamsets.pipeline.lib.util.AvroJavaSnappyCodec;
-import com.streamsets.pipeline.lib.util.AvroTypeUtil;
 import com.streamsets.pipeline.stage.common.HeaderAttributeConstants;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileReader;
-import org.apache.avro.generic.GenericData;
-import org.apache.avro.generic.GenericDatumReader;
-import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.io.DatumReader;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -47,7 +43,8 @@ public class AvroDataFileParser extends AbstractDataParser {
   private final SeekableOverrunFileInputStream sin;
   private long previousSync;
   private long recordCount;
-  private final DataFileReader<GenericRecord> dataFileReader;
+  private final AvroFieldDatumReader datumReader;
+  private final DataFileReader<Field> dataFileReader;
   private boolean eof;
   private Stage.Context context;
 
@@ -55,7 +52,7 @@ public class AvroDataFileParser extends AbstractDataParser {
     throws IOException {
     this.context = context;
     this.file = file;
-    DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(schema, schema, GenericData.get());
+    datumReader = new AvroFieldDatumReader(schema);
     sin = new SeekableOverrunFileInputStream(
       new FileInputStream(file), maxObjectLength, true);
     dataFileReader = new DataFileReader<>(sin, datumReader);
@@ -88,11 +85,13 @@ public class AvroDataFileParser extends AbstractDataParser {
         previousSync = dataFileReader.previousSync();
         recordCount = 0;
       }
-      GenericRecord avroRecord = dataFileReader.next();
+      Record record = context.createRecord(
+          file.getName() + OFFSET_SEPARATOR + previousSync + OFFSET_SEPARATOR + (recordCount + 1)
+      );
+      datumReader.setRecord(record);
+      record.set(dataFileReader.next());
       recordCount++;
-      Record record = context.createRecord(file.getName() + OFFSET_SEPARATOR + previousSync + OFFSET_SEPARATOR + recordCount);
-      record.set(AvroTypeUtil.avroToSdcField(record, avroRecord.getSchema(), avroRecord));
-      record.getHeader().setAttribute(HeaderAttributeConstants.AVRO_SCHEMA, avroRecord.getSchema().toString());
+      record.getHeader().setAttribute(HeaderAttributeConstants.AVRO_SCHEMA, datumReader.getSchemaString());
       return record;
     }
     eof = true;
@@ -15,19 +15,15 @@
  */
 package com.streamsets.pipeline.lib.parser.avro;
 
+import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.lib.io.OverrunInputStream;
 import com.streamsets.pipeline.lib.parser.AbstractDataParser;
 import com.streamsets.pipeline.lib.parser.DataParserException;
-import com.streamsets.pipeline.lib.util.AvroTypeUtil;
 import com.streamsets.pipeline.stage.common.HeaderAttributeConstants;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileStream;
-import org.apache.avro.generic.GenericData;
-import org.apache.avro.generic.GenericDatumReader;
-import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.io.DatumReader;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -39,8 +35,8 @@ public class AvroDataStreamParser extends AbstractDataParser {
   private final Schema avroSchema;
   private final String streamName;
   private long recordCount;
-  private final DatumReader<GenericRecord> datumReader;
-  private final DataFileStream<GenericRecord> dataFileStream;
+  private final AvroFieldDatumReader datumReader;
+  private final DataFileStream<Field> dataFileStream;
   private final OverrunInputStream overrunInputStream;
   private boolean eof;
   private Stage.Context context;
@@ -52,7 +48,7 @@ public class AvroDataStreamParser extends AbstractDataParser {
     avroSchema = schema;
     this.streamName = streamName;
     this.recordCount = recordCount;
-    datumReader = new GenericDatumReader<>(avroSchema, avroSchema, GenericData.get()); //Reader schema argument is optional
+    datumReader = new AvroFieldDatumReader(avroSchema); //Reader schema argument is optional
     overrunInputStream = new OverrunInputStream(inputStream, maxObjectLength, true);
     dataFileStream = new DataFileStream<>(overrunInputStream, datumReader);
     seekToOffset();
@@ -67,11 +63,11 @@ public class AvroDataStreamParser extends AbstractDataParser {
       //The file itself may contain multiple large records and the total file size may be over maxObjectLength
       overrunInputStream.resetCount();
 
-      GenericRecord avroRecord = dataFileStream.next();
+      Record record = context.createRecord(streamName + OFFSET_SEPARATOR + (recordCount + 1));
+      datumReader.setRecord(record);
+      record.set(dataFileStream.next());
       recordCount++;
-      Record record = context.createRecord(streamName + OFFSET_SEPARATOR + recordCount);
-      record.set(AvroTypeUtil.avroToSdcField(record, avroRecord.getSchema(), avroRecord));
-      record.getHeader().setAttribute(HeaderAttributeConstants.AVRO_SCHEMA, avroRecord.getSchema().toString());
+      record.getHeader().setAttribute(HeaderAttributeConstants.AVRO_SCHEMA, datumReader.getSchemaString());
       return record;
     }
     eof = true;
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.parser.avro;
+
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.lib.util.AvroFieldReader;
+import com.streamsets.pipeline.lib.util.AvroTypeUtil;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+
+import java.io.IOException;
+
+/**
+ * Datum reader for avro data files that reads fields. The data is decoded with an {@link AvroFieldReader} when it
+ * was written with the reader schema, otherwise it's resolved to generic records that are converted.
+ */
+class AvroFieldDatumReader implements DatumReader<Field> {
+
+  private final Schema readerSchema;
+  private AvroFieldReader fieldReader;
+  private GenericDatumReader<GenericRecord> genericReader;
+  private Schema lastSchema;
+  private String schemaString;
+  private Record record;
+
+  AvroFieldDatumReader(Schema readerSchema) {
+    this.readerSchema = readerSchema;
+  }
+
+  @Override
+  public void setSchema(Schema writerSchema) {
+    Schema schema = (readerSchema == null) ? writerSchema : readerSchema;
+    if (writerSchema.getType() == Schema.Type.RECORD && schema.equals(writerSchema)) {
+      fieldReader = AvroFieldReader.forSchema(writerSchema);
+      genericReader = null;
+      schemaString = fieldReader.getSchemaString();
+    } else {
+      fieldReader = null;
+      genericReader = new GenericDatumReader<>(writerSchema, schema, GenericData.get());
+      lastSchema = null;
+      schemaString = null;
+    }
+  }
+
+  /**
+   * Sets the record that the union type indexes of the next datum are set in, null if the datum is skipped.
+   */
+  void setRecord(Record record) {
+    this.record = record;
+  }
+
+  /**
+   * JSON representation of the schema of the last datum.
+   */
+  String getSchemaString() {
+    return schemaString;
+  }
+
+  @Override
+  public Field read(Field reuse, Decoder in) throws IOException {
+    if (fieldReader != null) {
+      return fieldReader.read(record, in);
+    }
+    GenericRecord avroRecord = genericReader.read(null, in);
+    if (avroRecord.getSchema() != lastSchema) {
+      lastSchema = avroRecord.getSchema();
+      schemaString = lastSchema.toString();
+    }
+    return (record == null) ? null : AvroTypeUtil.avroToSdcField(record, avroRecord.getSchema(), avroRecord);
+  }
+}
@@ -15,21 +15,18 @@
  */
 package com.streamsets.pipeline.lib.parser.avro;
 
+import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.config.OriginAvroSchemaSource;
 import com.streamsets.pipeline.lib.parser.AbstractDataParser;
 import com.streamsets.pipeline.lib.parser.DataParserException;
-import com.streamsets.pipeline.lib.util.AvroTypeUtil;
+import com.streamsets.pipeline.lib.util.AvroFieldReader;
 import com.streamsets.pipeline.stage.common.HeaderAttributeConstants;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileReader;
 import org.apache.avro.file.SeekableByteArrayInput;
-import org.apache.avro.generic.GenericData;
-import org.apache.avro.generic.GenericDatumReader;
-import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.BinaryDecoder;
-import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DecoderFactory;
 
 import java.io.ByteArrayInputStream;
@@ -39,10 +36,10 @@ import java.io.IOException;
 public class AvroMessageParser extends AbstractDataParser {
 
   private final OriginAvroSchemaSource schemaSource;
-  private DatumReader<GenericRecord> datumReader;
-  private DataFileReader<GenericRecord> dataFileReader;
+  private AvroFieldDatumReader datumReader;
+  private DataFileReader<Field> dataFileReader;
+  private AvroFieldReader fieldReader;
   private BinaryDecoder decoder;
-  private GenericData.Record avroRecord;
   private boolean eof;
   private final Stage.Context context;
   private final String messageId;
@@ -58,46 +55,48 @@ public class AvroMessageParser extends AbstractDataParser {
     this.messageId = messageId;
     this.schemaSource = schemaSource;
 
-    datumReader = new GenericDatumReader<>(schema); //Reader schema argument is optional
     if(schemaSource == OriginAvroSchemaSource.SOURCE) {
+      datumReader = new AvroFieldDatumReader(schema); //Reader schema argument is optional
       dataFileReader = new DataFileReader<>(new SeekableByteArrayInput(message), datumReader);
     } else {
+      fieldReader = AvroFieldReader.forSchema(schema);
       decoder = DecoderFactory.get().binaryDecoder(new ByteArrayInputStream(message), null);
-      avroRecord = new GenericData.Record(schema);
     }
   }
 
   @Override
   public Record parse() throws IOException, DataParserException {
-    GenericRecord genericRecord;
-    Record record = null;
     if(schemaSource == OriginAvroSchemaSource.SOURCE) {
-      genericRecord = parseMessageWithSchema();
+      return parseMessageWithSchema();
     } else {
-      genericRecord = parseMessageWithoutSchema();
+      return parseMessageWithoutSchema();
     }
-    if(genericRecord != null) {
-      record = context.createRecord(messageId);
-      record.set(AvroTypeUtil.avroToSdcField(record, genericRecord.getSchema(), genericRecord));
-      record.getHeader().setAttribute(HeaderAttributeConstants.AVRO_SCHEMA, genericRecord.getSchema().toString());
-    }
-    return record;
   }
 
-  private GenericRecord parseMessageWithSchema() {
+  private Record parseMessageWithSchema() {
     if(dataFileReader.hasNext()) {
-      return dataFileReader.next();
+      Record record = context.createRecord(messageId);
+      datumReader.setRecord(record);
+      record.set(dataFileReader.next());
+      record.getHeader().setAttribute(HeaderAttributeConstants.AVRO_SCHEMA, datumReader.getSchemaString());
+      return record;
     }
     eof = true;
     return null;
   }
 
-  private GenericRecord parseMessageWithoutSchema() throws IOException {
+  private Record parseMessageWithoutSchema() throws IOException {
     try {
-      return datumReader.read(avroRecord, decoder);
+      if (!decoder.isEnd()) {
+        Record record = context.createRecord(messageId);
+        record.set(fieldReader.read(record, decoder));
+        record.getHeader().setAttribute(HeaderAttributeConstants.AVRO_SCHEMA, fieldReader.getSchemaString());
+        return record;
+      }
     } catch (EOFException e) {
-      eof = true;
+      // truncated message
     }
+    eof = true;
     return null;
   }
 
@@ -18,6 +18,7 @@ package com.streamsets.pipeline.lib.parser.log;
 import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.api.ext.io.OverrunReader;
+import com.streamsets.pipeline.lib.io.OverrunByteLineReader;
 import com.streamsets.pipeline.lib.parser.DataParserException;
 import com.streamsets.pipeline.lib.parser.shaded.org.aicer.grok.util.Grok;
 import org.apache.commons.pool2.impl.GenericObjectPool;
@@ -48,6 +49,23 @@ public class GrokParser extends LogCharDataParser {
     this.formatName = formatName;
   }
 
+  public GrokParser(Stage.Context context,
+                    String readerId,
+                    OverrunByteLineReader lineReader,
+                    long readerOffset,
+                    int maxObjectLen,
+                    boolean retainOriginalText,
+                    int maxStackTraceLines,
+                    Grok compiledPattern,
+                    String formatName,
+                    GenericObjectPool<StringBuilder> currentLineBuilderPool,
+                    GenericObjectPool<StringBuilder> previousLineBuilderPool
+  ) throws IOException {
+    super(context, readerId, lineReader, readerOffset, maxObjectLen, retainOriginalText, maxStackTraceLines, currentLineBuilderPool, previousLineBuilderPool);
+    this.compiledPattern = compiledPattern;
+    this.formatName = formatName;
+  }
+
   @Override
   public Map<String, Field> parseLogLine(StringBuilder logLine) throws DataParserException {
     Map<String, String> namedGroupToValuesMap = compiledPattern.extractNamedGroups(logLine.toString());
@@ -20,6 +20,8 @@ import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.api.impl.Utils;
 import com.streamsets.pipeline.api.ext.io.OverrunReader;
+import com.streamsets.pipeline.lib.io.LineReader;
+import com.streamsets.pipeline.lib.io.OverrunByteLineReader;
 import com.streamsets.pipeline.lib.parser.AbstractDataParser;
 import com.streamsets.pipeline.lib.parser.DataParserException;
 import org.apache.commons.io.IOUtils;
@@ -41,7 +43,9 @@ public abstract class LogCharDataParser extends AbstractDataParser {
 
   private final Stage.Context context;
   private final String readerId;
+  // lines are read either char by char from the reader or by the line reader, the other one is null
   private final OverrunReader reader;
+  private final LineReader lineReader;
   private final int maxObjectLen;
   private final StringBuilder currentLine;
   private final StringBuilder previousLine;
@@ -62,15 +66,49 @@ public abstract class LogCharDataParser extends AbstractDataParser {
                            int maxStackTraceLines,
                            GenericObjectPool<StringBuilder> currentLineBuilderPool,
                            GenericObjectPool<StringBuilder> previousLineBuilderPool
+  ) throws IOException {
+    this(context, readerId, reader, null, readerOffset, maxObjectLen, retainOriginalText, maxStackTraceLines,
+        currentLineBuilderPool, previousLineBuilderPool);
+  }
+
+  public LogCharDataParser(Stage.Context context,
+                           String readerId,
+                           OverrunByteLineReader lineReader,
+                           long readerOffset,
+                           int maxObjectLen,
+                           boolean retainOriginalText,
+                           int maxStackTraceLines,
+                           GenericObjectPool<StringBuilder> currentLineBuilderPool,
+                           GenericObjectPool<StringBuilder> previousLineBuilderPool
+  ) throws IOException {
+    this(context, readerId, null, lineReader, readerOffset, maxObjectLen, retainOriginalText, maxStackTraceLines,
+        currentLineBuilderPool, previousLineBuilderPool);
+  }
+
+  private LogCharDataParser(Stage.Context context,
+                            String readerId,
+                            OverrunReader reader,
+                            OverrunByteLineReader lineReader,
+                            long readerOffset,
+                            int maxObjectLen,
+                            boolean retainOriginalText,
+                            int maxStackTraceLines,
+                            GenericObjectPool<StringBuilder> currentLineBuilderPool,
+                            GenericObjectPool<StringBuilder> previousLineBuilderPool
   ) throws IOException {
     this.context = context;
     this.readerId = readerId;
     this.reader = reader;
+    this.lineReader = lineReader;
     this.maxObjectLen = maxObjectLen;
     this.retainOriginalText = retainOriginalText;
-    reader.setEnabled(false);
-    IOUtils.skipFully(reader, readerOffset);
-    reader.setEnabled(true);
+    if (lineReader != null) {
+      lineReader.skipFully(readerOffset);
+    } else {
+      reader.setEnabled(false);
+      IOUtils.skipFully(reader, readerOffset);
+      reader.setEnabled(true);
+    }
     fieldsFromPrevLine = new LinkedHashMap<>();
     currentOffset = readerOffset;
     this.maxStackTraceLines = maxStackTraceLines;
@@ -122,7 +160,7 @@ public abstract class LogCharDataParser extends AbstractDataParser {
 
   @Override
   public Record parse() throws IOException, DataParserException {
-    reader.resetCount();
+    resetCount();
 
     //In order to detect stack trace / multi line error messages, the parser reads the next line and attempts
     //a pattern match. If it fails then the line is treated a a stack trace and associated with the previous line.
@@ -141,7 +179,7 @@ public abstract class LogCharDataParser extends AbstractDataParser {
     if(previousLine.length() > 0) {
       record = createRecordFromPreviousLine();
       //update the current offset. This is what gets returned by the produce API.
-      currentOffset = reader.getPos();
+      currentOffset = getPos();
       //check if the EOF was reached in the previous read and update the offset accordingly
       if(previousRead == -1) {
         currentOffset = -1;
@@ -168,7 +206,7 @@ public abstract class LogCharDataParser extends AbstractDataParser {
       map.putAll(fieldsFromLogLine);
       record.set(Field.create(map));
       //Since there was no previously saved line, the current offset must be updated to the current reader position
-      currentOffset = reader.getPos();
+      currentOffset = getPos();
       if(read == -1) {
         currentOffset = -1;
       }
@@ -293,11 +331,30 @@ public abstract class LogCharDataParser extends AbstractDataParser {
       this.previousLineBuilderPool.getNumActive(),
       this.previousLineBuilderPool.getNumIdle()
     );
-    reader.close();
+    if (lineReader != null) {
+      lineReader.close();
+    } else {
+      reader.close();
+    }
+  }
+
+  private void resetCount() {
+    if (lineReader != null) {
+      lineReader.resetCount();
+    } else {
+      reader.resetCount();
+    }
+  }
+
+  private long getPos() {
+    return (lineReader != null) ? lineReader.getPos() : reader.getPos();
   }
 
   // returns the reader line length, the StringBuilder has up to maxObjectLen chars
   int readLine(StringBuilder sb) throws IOException {
+    if (lineReader != null) {
+      return lineReader.readLine(sb);
+    }
     int c = reader.read();
     int count = (c == -1) ? -1 : 0;
     while (c > -1 && !isOverMaxObjectLen(count) && !checkEolAndAdjust(c)) {
@@ -23,6 +23,7 @@ import com.streamsets.pipeline.api.impl.Utils;
 import com.streamsets.pipeline.config.LogMode;
 import com.streamsets.pipeline.config.OnParseError;
 import com.streamsets.pipeline.api.ext.io.OverrunReader;
+import com.streamsets.pipeline.lib.io.OverrunByteLineReader;
 import com.streamsets.pipeline.lib.parser.DataParserFactory;
 import com.streamsets.pipeline.lib.parser.DataParser;
 import com.streamsets.pipeline.lib.parser.DataParserException;
@@ -129,51 +130,76 @@ public class LogDataParserFactory extends DataParserFactory {
 
   @Override
   public DataParser getParser(String id, InputStream is, String offset) throws DataParserException {
-    return createParser(id, createReader(is), Long.parseLong(offset));
+    OverrunByteLineReader lineReader = createLineReader(is, maxObjectLen);
+    if (lineReader != null) {
+      return createParser(id, null, lineReader, Long.parseLong(offset));
+    }
+    return createParser(id, createReader(is), null, Long.parseLong(offset));
   }
 
   @Override
   public DataParser getParser(String id, Reader reader, long offset) throws DataParserException {
-    return createParser(id, createReader(reader), offset);
+    return createParser(id, createReader(reader), null, offset);
   }
 
-  private DataParser createParser(String id, OverrunReader reader, long offset) throws DataParserException {
-    Utils.checkState(reader.getPos() == 0, Utils.formatL("reader must be in position '0', it is at '{}'",
-      reader.getPos()));
+  // lines are read either from the reader or by the line reader, the other one is null
+  private DataParser createParser(
+      String id,
+      OverrunReader reader,
+      OverrunByteLineReader lineReader,
+      long offset
+  ) throws DataParserException {
+    long pos = (lineReader != null) ? lineReader.getPos() : reader.getPos();
+    Utils.checkState(pos == 0, Utils.formatL("reader must be in position '0', it is at '{}'", pos));
     try {
+      if (logMode == LogMode.REGEX) {
+        Pattern pattern = createPattern(regex);
+        if (lineReader != null) {
+          return new RegexParser(context, id, lineReader, offset, maxObjectLen, retainOriginalText,
+            pattern, fieldPathToGroup, currentLineBuilderPool, previousLineBuilderPool);
+        }
+        return new RegexParser(context, id, reader, offset, maxObjectLen, retainOriginalText,
+          pattern, fieldPathToGroup, currentLineBuilderPool, previousLineBuilderPool);
+      }
+      Grok grok;
+      String formatName;
       switch (logMode) {
         case COMMON_LOG_FORMAT:
-          return new GrokParser(context, id, reader, offset, maxObjectLen, retainOriginalText,
-            getMaxStackTraceLines(), createGrok(Constants.GROK_COMMON_APACHE_LOG_FORMAT,
-            Collections.<String>emptyList()), "Common Log Format", currentLineBuilderPool, previousLineBuilderPool);
+          grok = createGrok(Constants.GROK_COMMON_APACHE_LOG_FORMAT, Collections.<String>emptyList());
+          formatName = "Common Log Format";
+          break;
         case COMBINED_LOG_FORMAT:
-          return new GrokParser(context, id, reader, offset, maxObjectLen, retainOriginalText,
-            getMaxStackTraceLines(), createGrok(Constants.GROK_COMBINED_APACHE_LOG_FORMAT,
-            Collections.<String>emptyList()), "Combined Log Format", currentLineBuilderPool, previousLineBuilderPool);
+          grok = createGrok(Constants.GROK_COMBINED_APACHE_LOG_FORMAT, Collections.<String>emptyList());
+          formatName = "Combined Log Format";
+          break;
         case APACHE_CUSTOM_LOG_FORMAT:
-          return new GrokParser(context, id, reader, offset, maxObjectLen, retainOriginalText,
-            getMaxStackTraceLines(), createGrok(ApacheCustomLogHelper.translateApacheLayoutToGrok(customLogFormat),
-            Collections.<String>emptyList()), "Apache Access Log Format", currentLineBuilderPool, previousLineBuilderPool);
+          grok = createGrok(ApacheCustomLogHelper.translateApacheLayoutToGrok(customLogFormat),
+            Collections.<String>emptyList());
+          formatName = "Apache Access Log Format";
+          break;
         case APACHE_ERROR_LOG_FORMAT:
-          return new GrokParser(context, id, reader, offset, maxObjectLen, retainOriginalText,
-            getMaxStackTraceLines(), createGrok(Constants.GROK_APACHE_ERROR_LOG_FORMAT,
-            ImmutableList.of(Constants.GROK_APACHE_ERROR_LOG_PATTERNS_FILE_NAME)), "Apache Error Log Format",
-            currentLineBuilderPool, previousLineBuilderPool);
-        case REGEX:
-          return new RegexParser(context, id, reader, offset, maxObjectLen, retainOriginalText,
-            createPattern(regex), fieldPathToGroup, currentLineBuilderPool, previousLineBuilderPool);
+          grok = createGrok(Constants.GROK_APACHE_ERROR_LOG_FORMAT,
+            ImmutableList.of(Constants.GROK_APACHE_ERROR_LOG_PATTERNS_FILE_NAME));
+          formatName = "Apache Error Log Format";
+          break;
         case GROK:
-          return new GrokParser(context, id, reader, offset, maxObjectLen, retainOriginalText,
-            getMaxStackTraceLines(), createGrok(grokPattern, grokDictionaries), "Grok Format",
-            currentLineBuilderPool, previousLineBuilderPool);
+          grok = createGrok(grokPattern, grokDictionaries);
+          formatName = "Grok Format";
+          break;
         case LOG4J:
-          return new GrokParser(context, id, reader, offset, maxObjectLen, retainOriginalText,
-            getMaxStackTraceLines(), createGrok(Log4jHelper.translateLog4jLayoutToGrok(log4jCustomLogFormat),
-            ImmutableList.of(Constants.GROK_LOG4J_LOG_PATTERNS_FILE_NAME)),
-            "Log4j Log Format", currentLineBuilderPool, previousLineBuilderPool);
+          grok = createGrok(Log4jHelper.translateLog4jLayoutToGrok(log4jCustomLogFormat),
+            ImmutableList.of(Constants.GROK_LOG4J_LOG_PATTERNS_FILE_NAME));
+          formatName = "Log4j Log Format";
+          break;
         default:
           return null;
       }
+      if (lineReader != null) {
+        return new GrokParser(context, id, lineReader, offset, maxObjectLen, retainOriginalText,
+          getMaxStackTraceLines(), grok, formatName, currentLineBuilderPool, previousLineBuilderPool);
+      }
+      return new GrokParser(context, id, reader, offset, maxObjectLen, retainOriginalText,
+        getMaxStackTraceLines(), grok, formatName, currentLineBuilderPool, previousLineBuilderPool);
     } catch (IOException ex) {
       throw new DataParserException(Errors.LOG_PARSER_00, id, offset, ex.toString(), ex);
     }
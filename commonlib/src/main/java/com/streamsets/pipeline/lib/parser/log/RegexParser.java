@@ -18,6 +18,7 @@ package com.streamsets.pipeline.lib.parser.log;
 import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.api.ext.io.OverrunReader;
+import com.streamsets.pipeline.lib.io.OverrunByteLineReader;
 import com.streamsets.pipeline.lib.parser.DataParserException;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 
@@ -48,6 +49,22 @@ public class RegexParser extends LogCharDataParser {
     this.pattern = pattern;
   }
 
+  public RegexParser(Stage.Context context,
+                     String readerId,
+                     OverrunByteLineReader lineReader,
+                     long readerOffset,
+                     int maxObjectLen,
+                     boolean retainOriginalText,
+                     Pattern pattern,
+                     Map<String, Integer> fieldToGroupMap,
+                     GenericObjectPool<StringBuilder> currentLineBuilderPool,
+                     GenericObjectPool<StringBuilder> previousLineBuilderPool
+  ) throws IOException {
+    super(context, readerId, lineReader, readerOffset, maxObjectLen, retainOriginalText, -1, currentLineBuilderPool, previousLineBuilderPool);
+    this.fieldToGroupMap = fieldToGroupMap;
+    this.pattern = pattern;
+  }
+
   @Override
   protected Map<String, Field> parseLogLine(StringBuilder sb) throws DataParserException {
     Matcher m = pattern.matcher(sb.toString());
@@ -15,14 +15,18 @@
  */
 package com.streamsets.pipeline.lib.parser.protobuf;
 
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.Descriptors;
 import com.google.protobuf.DynamicMessage;
 import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.lib.io.OverrunInputStream;
 import com.streamsets.pipeline.lib.parser.AbstractDataParser;
 import com.streamsets.pipeline.lib.parser.DataParserException;
+import com.streamsets.pipeline.lib.util.ProtobufFieldReader;
 import com.streamsets.pipeline.lib.util.ProtobufTypeUtil;
 
 import java.io.IOException;
@@ -33,6 +37,9 @@ import java.util.Set;
 public class ProtobufDataParser extends AbstractDataParser {
 
   private static final String OFFSET_SEPARATOR = "::";
+  // delimited messages up to this size are read into a reused buffer, larger ones are decoded from the stream so that
+  // the declared size alone can't make the parser allocate a large buffer
+  private static final int MAX_BUFFERED_MESSAGE_SIZE = 1024 * 1024;
 
   private boolean eof;
   private final Stage.Context context;
@@ -44,7 +51,11 @@ public class ProtobufDataParser extends AbstractDataParser {
   // that is accessible via the configured Protobuf descriptor file
   private final Map<String, Set<Descriptors.FieldDescriptor>> messageTypeToExtensionMap;
   private final ExtensionRegistry extensionRegistry;
+  // null if the descriptor can only be handled through DynamicMessage
+  private final ProtobufFieldReader fieldReader;
+  private final int maxObjectLength;
   private final boolean isDelimited;
+  private byte[] buffer = new byte[0];
 
   public ProtobufDataParser(
       Stage.Context context,
@@ -52,6 +63,7 @@ public class ProtobufDataParser extends AbstractDataParser {
       Descriptors.Descriptor descriptor,
       Map<String, Set<Descriptors.FieldDescriptor>> messageTypeToExtensionMap,
       ExtensionRegistry extensionRegistry,
+      ProtobufFieldReader fieldReader,
       InputStream inputStream,
       String readerOffset,
       int maxObjectLength,
@@ -62,6 +74,8 @@ public class ProtobufDataParser extends AbstractDataParser {
     this.messageId = messageId;
     this.messageTypeToExtensionMap = messageTypeToExtensionMap;
     this.extensionRegistry = extensionRegistry;
+    this.fieldReader = fieldReader;
+    this.maxObjectLength = maxObjectLength;
     this.descriptor = descriptor;
     this.builder = DynamicMessage.newBuilder(descriptor);
     this.isDelimited = isDelimited;
@@ -75,6 +89,9 @@ public class ProtobufDataParser extends AbstractDataParser {
 
   @Override
   public Record parse() throws IOException, DataParserException {
+    if (fieldReader != null) {
+      return parseCompiled();
+    }
     DynamicMessage message;
     long pos = inputStream.getPos();
     inputStream.resetCount();
@@ -103,6 +120,45 @@ public class ProtobufDataParser extends AbstractDataParser {
     return record;
   }
 
+  private Record parseCompiled() throws IOException, DataParserException {
+    long pos = inputStream.getPos();
+    inputStream.resetCount();
+    CodedInputStream in;
+    if (!isDelimited) {
+      if (eof) {
+        return null;
+      }
+      in = CodedInputStream.newInstance(inputStream);
+      // Set EOF since non-delimited can only contain a single message.
+      eof = true;
+    } else {
+      int firstByte = inputStream.read();
+      if (firstByte == -1) {
+        // No more messages to process in this stream.
+        eof = true;
+        return null;
+      }
+      int size = CodedInputStream.readRawVarint32(firstByte, inputStream);
+      if (size < 0) {
+        throw new InvalidProtocolBufferException("Message with negative size " + size);
+      }
+      if (size > MAX_BUFFERED_MESSAGE_SIZE || (maxObjectLength > 0 && size > maxObjectLength)) {
+        // let the overrun check or the end of the stream fail the read instead of allocating the buffer
+        in = CodedInputStream.newInstance(ByteStreams.limit(inputStream, size));
+      } else {
+        if (buffer.length < size) {
+          buffer = new byte[size];
+        }
+        ByteStreams.readFully(inputStream, buffer, 0, size);
+        in = CodedInputStream.newInstance(buffer, 0, size);
+      }
+    }
+    Record record = context.createRecord(messageId + OFFSET_SEPARATOR + pos);
+    // If the message does not contain required fields the reader throws UninitializedMessageException
+    record.set(fieldReader.read(record, in));
+    return record;
+  }
+
   @Override
   public String getOffset() throws DataParserException {
     return eof ? String.valueOf(-1) : String.valueOf(inputStream.getPos());
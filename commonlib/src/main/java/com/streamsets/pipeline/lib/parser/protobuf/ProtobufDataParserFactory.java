@@ -24,6 +24,7 @@ import com.streamsets.pipeline.lib.parser.DataParserException;
 import com.streamsets.pipeline.lib.parser.DataParserFactory;
 import com.streamsets.pipeline.lib.parser.Errors;
 import com.streamsets.pipeline.lib.util.ProtobufConstants;
+import com.streamsets.pipeline.lib.util.ProtobufFieldReader;
 import com.streamsets.pipeline.lib.util.ProtobufTypeUtil;
 
 import java.io.IOException;
@@ -56,6 +57,8 @@ public class ProtobufDataParserFactory extends DataParserFactory {
   // that is accessible via the configured Protobuf descriptor file
   private final Map<String, Set<Descriptors.FieldDescriptor>> messageTypeToExtensionMap;
   private final ExtensionRegistry extensionRegistry;
+  // compiled once and shared by all the parsers
+  private final ProtobufFieldReader fieldReader;
   private final Map<String, Object> defaultValueMap;
   private final boolean isDelimited;
 
@@ -83,6 +86,7 @@ public class ProtobufDataParserFactory extends DataParserFactory {
         extensionRegistry.add(f);
       }
     }
+    fieldReader = ProtobufFieldReader.create(descriptor, messageTypeToExtensionMap);
   }
 
   @Override
@@ -94,6 +98,7 @@ public class ProtobufDataParserFactory extends DataParserFactory {
           descriptor,
           messageTypeToExtensionMap,
           extensionRegistry,
+          fieldReader,
           is,
           offset,
           getSettings().getOverRunLimit(),
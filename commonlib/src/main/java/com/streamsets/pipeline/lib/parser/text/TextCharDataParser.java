@@ -19,7 +19,8 @@ import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.api.impl.Utils;
-import com.streamsets.pipeline.lib.io.AbstractOverrunDelimitedReader;
+import com.streamsets.pipeline.lib.io.LineReader;
+import com.streamsets.pipeline.lib.io.OverrunByteLineReader;
 import com.streamsets.pipeline.lib.io.OverrunCustomDelimiterReader;
 import com.streamsets.pipeline.lib.io.OverrunLineReader;
 import com.streamsets.pipeline.api.ext.io.OverrunReader;
@@ -41,7 +42,7 @@ public class TextCharDataParser extends AbstractDataParser {
   private final Stage.Context context;
   private final String readerId;
   private final boolean collapseAllLines;
-  private final AbstractOverrunDelimitedReader reader;
+  private final LineReader reader;
   private final int maxObjectLen;
   private final String fieldTextName;
   private final String fieldTruncatedName;
@@ -65,19 +66,70 @@ public class TextCharDataParser extends AbstractDataParser {
         String fieldTextName,
         String fieldTruncatedName,
         GenericObjectPool<StringBuilder> stringBuilderPool
+  ) throws IOException {
+    this(
+        context,
+        readerId,
+        collapseAllLines,
+        createLineReader(
+            collapseAllLines,
+            useCustomDelimiter,
+            customDelimiter,
+            includeCustomDelimiterInText,
+            reader,
+            readerOffset,
+            maxObjectLen
+        ),
+        maxObjectLen,
+        fieldTextName,
+        fieldTruncatedName,
+        stringBuilderPool
+    );
+  }
+
+  /**
+   * Reads the lines splitting them on the bytes of the stream, the reader must be at position '0'.
+   */
+  public TextCharDataParser(
+      Stage.Context context,
+      String readerId,
+      boolean collapseAllLines,
+      OverrunByteLineReader reader,
+      long readerOffset,
+      int maxObjectLen,
+      String fieldTextName,
+      String fieldTruncatedName,
+      GenericObjectPool<StringBuilder> stringBuilderPool
+  ) throws IOException {
+    this(
+        context,
+        readerId,
+        collapseAllLines,
+        skip(reader, readerOffset),
+        maxObjectLen,
+        fieldTextName,
+        fieldTruncatedName,
+        stringBuilderPool
+    );
+  }
+
+  private TextCharDataParser(
+      Stage.Context context,
+      String readerId,
+      boolean collapseAllLines,
+      LineReader reader,
+      int maxObjectLen,
+      String fieldTextName,
+      String fieldTruncatedName,
+      GenericObjectPool<StringBuilder> stringBuilderPool
   ) throws IOException {
     this.context = context;
     this.readerId = readerId;
     this.collapseAllLines = collapseAllLines;
-    this.reader = (!collapseAllLines && useCustomDelimiter)?
-        new OverrunCustomDelimiterReader(reader, maxObjectLen, customDelimiter, includeCustomDelimiterInText):
-        new OverrunLineReader(reader, maxObjectLen);
+    this.reader = reader;
     this.maxObjectLen = maxObjectLen;
     this.fieldTextName = fieldTextName;
     this.fieldTruncatedName = fieldTruncatedName;
-    reader.setEnabled(false);
-    IOUtils.skipFully(reader, readerOffset);
-    reader.setEnabled(true);
 
     this.stringBuilderPool = stringBuilderPool;
     try {
@@ -92,6 +144,29 @@ public class TextCharDataParser extends AbstractDataParser {
     recordIdOffset = recordIdSb.length();
   }
 
+  private static LineReader createLineReader(
+      boolean collapseAllLines,
+      boolean useCustomDelimiter,
+      String customDelimiter,
+      boolean includeCustomDelimiterInText,
+      OverrunReader reader,
+      long readerOffset,
+      int maxObjectLen
+  ) throws IOException {
+    LineReader lineReader = (!collapseAllLines && useCustomDelimiter)?
+        new OverrunCustomDelimiterReader(reader, maxObjectLen, customDelimiter, includeCustomDelimiterInText):
+        new OverrunLineReader(reader, maxObjectLen);
+    reader.setEnabled(false);
+    IOUtils.skipFully(reader, readerOffset);
+    reader.setEnabled(true);
+    return lineReader;
+  }
+
+  private static LineReader skip(OverrunByteLineReader reader, long readerOffset) throws IOException {
+    reader.skipFully(readerOffset);
+    return reader;
+  }
+
   private boolean isOverMaxObjectLen(int len) {
     return maxObjectLen > -1 && len > maxObjectLen;
   }
@@ -18,6 +18,7 @@ package com.streamsets.pipeline.lib.parser.text;
 import com.google.common.annotations.VisibleForTesting;
 import com.streamsets.pipeline.api.impl.Utils;
 import com.streamsets.pipeline.api.ext.io.OverrunReader;
+import com.streamsets.pipeline.lib.io.OverrunByteLineReader;
 import com.streamsets.pipeline.lib.parser.DataParser;
 import com.streamsets.pipeline.lib.parser.DataParserException;
 import com.streamsets.pipeline.lib.parser.DataParserFactory;
@@ -66,6 +67,11 @@ public class TextDataParserFactory extends DataParserFactory {
 
   @Override
   public DataParser getParser(String id, InputStream is, String offset) throws DataParserException {
+    OverrunByteLineReader lineReader = getSettings().<Boolean>getConfig(USE_CUSTOM_DELIMITER_KEY) ?
+        null : createLineReader(is, getSettings().getMaxRecordLen());
+    if (lineReader != null) {
+      return createParser(id, lineReader, Long.parseLong(offset));
+    }
     return createParser(id, createReader(is), Long.parseLong(offset));
   }
 
@@ -98,6 +104,24 @@ public class TextDataParserFactory extends DataParserFactory {
     }
   }
 
+  private DataParser createParser(String id, OverrunByteLineReader reader, long offset) throws DataParserException {
+    try {
+      return new TextCharDataParser(
+          getSettings().getContext(),
+          id,
+          getSettings().<Boolean>getConfig(MULTI_LINE_KEY),
+          reader,
+          offset,
+          getSettings().getMaxRecordLen(),
+          TEXT_FIELD_NAME,
+          TRUNCATED_FIELD_NAME,
+          stringBuilderPool
+      );
+    } catch (IOException ex) {
+      throw new DataParserException(Errors.TEXT_PARSER_00, id, offset, ex.toString(), ex);
+    }
+  }
+
   @VisibleForTesting
   GenericObjectPool<StringBuilder> getStringBuilderPool() {
     return stringBuilderPool;
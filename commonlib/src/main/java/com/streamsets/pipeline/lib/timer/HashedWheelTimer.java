@@ -0,0 +1,318 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.timer;
+
+import com.streamsets.pipeline.api.impl.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer backed by a hashed timing wheel, meant for the many short timeouts of push origins such as the max batch
+ * wait time of each client connection.
+ * <p/>
+ * Timeouts are kept in a ring of buckets, each bucket covering one tick. Scheduling and cancelling a timeout are
+ * O(1) and do not allocate, a {@link Timeout} is created once and rescheduled as many times as needed. Timeouts
+ * expire within one tick of their delay, in the timer thread, so their tasks must be short and hand any real work
+ * off to another thread.
+ * <p/>
+ * The timer thread does not wake up while there are no pending timeouts.
+ */
+public final class HashedWheelTimer {
+  private static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+  private static final long DEFAULT_TICK_MILLIS = 10;
+  private static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+  private enum State { IDLE, PENDING, EXPIRED }
+
+  private static volatile HashedWheelTimer shared;
+
+  /**
+   * Returns the timer shared by all the stages, with a 10 milliseconds tick. It is started on first use and never
+   * stopped.
+   */
+  public static HashedWheelTimer getShared() {
+    if (shared == null) {
+      synchronized (HashedWheelTimer.class) {
+        if (shared == null) {
+          shared = new HashedWheelTimer("Shared Timer", DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL);
+        }
+      }
+    }
+    return shared;
+  }
+
+  private final Object lock = new Object();
+  private final long tickNanos;
+  private final Timeout[] wheel;
+  private final int mask;
+  private final long startTime;
+  private final Thread thread;
+  // timeouts expired in the current tick, reused to not allocate a list per tick
+  private final List<Timeout> expired = new ArrayList<>();
+
+  // next tick to process
+  private long tick;
+  private volatile boolean running;
+
+  private long pending;
+  private long scheduled;
+  private long cancelled;
+  private long expiredCount;
+  private long lastTickLagNanos;
+
+  /**
+   * @param ticksPerWheel number of buckets, rounded up to a power of two. Timeouts longer than a wheel turn go
+   * around the wheel more than once.
+   */
+  public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+    Utils.checkArgument(tickDuration > 0, "tickDuration must be greater than zero");
+    Utils.checkArgument(
+        ticksPerWheel > 0 && ticksPerWheel <= (1 << 30),
+        "ticksPerWheel must be between 1 and 2^30"
+    );
+    tickNanos = unit.toNanos(tickDuration);
+    int size = Integer.highestOneBit(ticksPerWheel);
+    if (size < ticksPerWheel) {
+      size <<= 1;
+    }
+    wheel = new Timeout[size];
+    mask = size - 1;
+    startTime = System.nanoTime();
+    running = true;
+    thread = new Thread(this::run, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Returns a new timeout running the given task when it expires. The timeout is not scheduled yet.
+   */
+  public Timeout newTimeout(Runnable task) {
+    return new Timeout(Utils.checkNotNull(task, "task"));
+  }
+
+  /**
+   * Stops the timer, pending timeouts never expire.
+   */
+  public void stop() {
+    running = false;
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+    thread.interrupt();
+  }
+
+  public long getPendingCount() {
+    synchronized (lock) {
+      return pending;
+    }
+  }
+
+  public long getScheduledCount() {
+    synchronized (lock) {
+      return scheduled;
+    }
+  }
+
+  public long getCancelledCount() {
+    synchronized (lock) {
+      return cancelled;
+    }
+  }
+
+  public long getExpiredCount() {
+    synchronized (lock) {
+      return expiredCount;
+    }
+  }
+
+  /**
+   * Returns how late the last tick was processed, in milliseconds. A growing lag means timeout tasks take too long.
+   */
+  public long getTickLagMillis() {
+    synchronized (lock) {
+      return TimeUnit.NANOSECONDS.toMillis(lastTickLagNanos);
+    }
+  }
+
+  // index of the tick in progress
+  private long currentTick() {
+    return (System.nanoTime() - startTime) / tickNanos;
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        synchronized (lock) {
+          while (running && pending == 0) {
+            lock.wait();
+          }
+        }
+        long sleepNanos = startTime + (tick + 1) * tickNanos - System.nanoTime();
+        if (sleepNanos > 0) {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        }
+      } catch (InterruptedException ex) {
+        continue;
+      }
+      expireTimeouts();
+    }
+  }
+
+  private void expireTimeouts() {
+    synchronized (lock) {
+      long current = currentTick();
+      while (tick < current) {
+        Timeout timeout = wheel[(int) (tick & mask)];
+        while (timeout != null) {
+          Timeout next = timeout.next;
+          if (timeout.remainingRounds <= 0) {
+            unlink(timeout);
+            timeout.state = State.EXPIRED;
+            expired.add(timeout);
+          } else {
+            timeout.remainingRounds--;
+          }
+          timeout = next;
+        }
+        tick++;
+      }
+      lastTickLagNanos = System.nanoTime() - (startTime + tick * tickNanos);
+      expiredCount += expired.size();
+    }
+    for (int i = 0; i < expired.size(); i++) {
+      Timeout timeout = expired.get(i);
+      boolean run;
+      synchronized (lock) {
+        // it may have been rescheduled or cancelled since it expired
+        run = timeout.state == State.EXPIRED;
+        if (run) {
+          timeout.state = State.IDLE;
+        }
+      }
+      if (run) {
+        try {
+          timeout.task.run();
+        } catch (Throwable ex) {
+          LOG.error("Timeout task failed: {}", ex.toString(), ex);
+        }
+      }
+    }
+    expired.clear();
+  }
+
+  // must be called holding the lock
+  private void link(Timeout timeout, long delayNanos) {
+    long current = currentTick();
+    if (pending == 0 && tick < current) {
+      // nothing to expire in the ticks the timer thread slept through
+      tick = current;
+    }
+    long ticks = Math.max(1, (delayNanos + tickNanos - 1) / tickNanos);
+    long target = current + ticks;
+    timeout.remainingRounds = (target - tick) / wheel.length;
+    int bucket = (int) (target & mask);
+    timeout.bucket = bucket;
+    timeout.prev = null;
+    timeout.next = wheel[bucket];
+    if (timeout.next != null) {
+      timeout.next.prev = timeout;
+    }
+    wheel[bucket] = timeout;
+    timeout.state = State.PENDING;
+    if (pending++ == 0) {
+      lock.notifyAll();
+    }
+  }
+
+  // must be called holding the lock
+  private void unlink(Timeout timeout) {
+    if (timeout.prev != null) {
+      timeout.prev.next = timeout.next;
+    } else {
+      wheel[timeout.bucket] = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.prev = null;
+    timeout.next = null;
+    pending--;
+  }
+
+  /**
+   * Handle of a task to run after a delay. It can be scheduled again, before or after it expired, which replaces the
+   * previous delay.
+   */
+  public final class Timeout {
+    private final Runnable task;
+    private Timeout prev;
+    private Timeout next;
+    private int bucket;
+    private long remainingRounds;
+    private State state = State.IDLE;
+
+    private Timeout(Runnable task) {
+      this.task = task;
+    }
+
+    /**
+     * Schedules the task to run after the given delay, replacing any pending schedule.
+     */
+    public void schedule(long delay, TimeUnit unit) {
+      Utils.checkState(running, "Timer is stopped");
+      synchronized (lock) {
+        if (state == State.PENDING) {
+          unlink(this);
+        }
+        link(this, unit.toNanos(Math.max(delay, 0)));
+        scheduled++;
+      }
+    }
+
+    /**
+     * Cancels the pending schedule, returns true if there was one.
+     */
+    public boolean cancel() {
+      synchronized (lock) {
+        if (state == State.PENDING) {
+          unlink(this);
+          state = State.IDLE;
+          cancelled++;
+          return true;
+        }
+        // an expired timeout whose task did not run yet does not run anymore
+        if (state == State.EXPIRED) {
+          state = State.IDLE;
+          cancelled++;
+          return true;
+        }
+        return false;
+      }
+    }
+
+    public boolean isPending() {
+      synchronized (lock) {
+        return state == State.PENDING;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.stage.common.HeaderAttributeConstants;
+import org.apache.avro.Schema;
+import org.apache.avro.io.Decoder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes binary avro data straight into fields. The result, including the union type index header attributes, is
+ * the same as reading a generic record and converting it with {@link AvroTypeUtil#avroToSdcField}.
+ * <p/>
+ * The schema is compiled once into a tree of decoders so that union branches and logical types are resolved up front
+ * instead of for every value, readers are cached by schema.
+ */
+public final class AvroFieldReader {
+
+  private static final Cache<Schema, AvroFieldReader> READERS = CacheBuilder.newBuilder()
+      .maximumSize(1000)
+      .build();
+
+  private final Schema schema;
+  private final String schemaString;
+  private final ValueDecoder decoder;
+
+  private AvroFieldReader(Schema schema) {
+    this.schema = schema;
+    this.schemaString = schema.toString();
+    this.decoder = compile(schema, new IdentityHashMap<Schema, RecordDecoder>());
+  }
+
+  /**
+   * Returns the reader for the given schema, compiling it if it's not cached.
+   */
+  public static AvroFieldReader forSchema(Schema schema) {
+    AvroFieldReader reader = READERS.getIfPresent(schema);
+    if (reader == null) {
+      reader = new AvroFieldReader(schema);
+      READERS.put(schema, reader);
+    }
+    return reader;
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * JSON representation of the schema.
+   */
+  public String getSchemaString() {
+    return schemaString;
+  }
+
+  /**
+   * Decodes the next datum. The union type indexes are set in the header of the given record, which can be null when
+   * the data is only skipped.
+   */
+  public Field read(Record record, Decoder in) throws IOException {
+    return decoder.decode(in, record, "");
+  }
+
+  private interface ValueDecoder {
+    Field decode(Decoder in, Record record, String path) throws IOException;
+  }
+
+  private static ValueDecoder compile(Schema schema, Map<Schema, RecordDecoder> records) {
+    if (schema.getType() == Schema.Type.UNION) {
+      return new UnionDecoder(schema, records);
+    }
+
+    String logicalType = schema.getProp(AvroTypeUtil.LOGICAL_TYPE);
+    if (logicalType != null && !logicalType.isEmpty()) {
+      ValueDecoder logicalDecoder = compileLogicalType(schema, logicalType);
+      if (logicalDecoder != null) {
+        return logicalDecoder;
+      }
+    }
+
+    switch (schema.getType()) {
+      case ARRAY:
+        return new ArrayDecoder(schema, records);
+      case BOOLEAN:
+        return (in, record, path) -> Field.create(in.readBoolean());
+      case BYTES:
+        return (in, record, path) -> Field.create(in.readBytes(null).array());
+      case DOUBLE:
+        return (in, record, path) -> Field.create(in.readDouble());
+      case ENUM:
+        List<String> symbols = schema.getEnumSymbols();
+        return (in, record, path) -> Field.create(symbols.get(in.readEnum()));
+      case FIXED:
+        int size = schema.getFixedSize();
+        return (in, record, path) -> {
+          byte[] bytes = new byte[size];
+          in.readFixed(bytes);
+          return Field.create(bytes);
+        };
+      case FLOAT:
+        return (in, record, path) -> Field.create(in.readFloat());
+      case INT:
+        return (in, record, path) -> Field.create(in.readInt());
+      case LONG:
+        return (in, record, path) -> Field.create(in.readLong());
+      case MAP:
+        return new MapDecoder(schema, records);
+      case NULL:
+        return (in, record, path) -> {
+          in.readNull();
+          return Field.create(Field.Type.MAP, null);
+        };
+      case RECORD:
+        RecordDecoder recordDecoder = records.get(schema);
+        if (recordDecoder == null) {
+          recordDecoder = new RecordDecoder(schema, records);
+        }
+        return recordDecoder;
+      case STRING:
+        return (in, record, path) -> Field.create(in.readString());
+      default:
+        throw new IllegalStateException("Unexpected schema type " + schema.getType());
+    }
+  }
+
+  private static ValueDecoder compileLogicalType(Schema schema, String logicalType) {
+    switch (logicalType) {
+      case AvroTypeUtil.LOGICAL_TYPE_DECIMAL:
+        if (schema.getType() != Schema.Type.BYTES) {
+          return failing("Unexpected physical type for logical decimal type: " + schema.getType());
+        }
+        int scale = schema.getJsonProp(AvroTypeUtil.LOGICAL_TYPE_ATTR_SCALE).asInt();
+        String scaleAttribute = String.valueOf(scale);
+        String precisionAttribute = String.valueOf(schema.getJsonProp(AvroTypeUtil.LOGICAL_TYPE_ATTR_PRECISION).asInt());
+        return (in, record, path) -> {
+          BigInteger unscaledValue = new BigInteger(in.readBytes(null).array());
+          Field field = Field.create(Field.Type.DECIMAL, new BigDecimal(unscaledValue, scale));
+          field.setAttribute(HeaderAttributeConstants.ATTR_SCALE, scaleAttribute);
+          field.setAttribute(HeaderAttributeConstants.ATTR_PRECISION, precisionAttribute);
+          field.setAttribute(AvroTypeUtil.FIELD_ATTRIBUTE_TYPE, logicalType);
+          return field;
+        };
+      case AvroTypeUtil.LOGICAL_TYPE_DATE:
+        if (schema.getType() != Schema.Type.INT) {
+          return failing("Unexpected physical type for logical date type: " + schema.getType());
+        }
+        return (in, record, path) -> withLogicalType(
+            Field.create(Field.Type.DATE, new Date(AvroTypeUtil.daysToMillis(in.readInt()))),
+            logicalType
+        );
+      case AvroTypeUtil.LOGICAL_TYPE_TIME_MILLIS:
+        if (schema.getType() != Schema.Type.INT) {
+          return failing("Unexpected physical type for logical time millis type: " + schema.getType());
+        }
+        return (in, record, path) -> withLogicalType(Field.create(Field.Type.TIME, (long) in.readInt()), logicalType);
+      case AvroTypeUtil.LOGICAL_TYPE_TIME_MICROS:
+        if (schema.getType() != Schema.Type.LONG) {
+          return failing("Unexpected physical type for logical time micros type: " + schema.getType());
+        }
+        // We don't have a better type to represent microseconds
+        return (in, record, path) -> withLogicalType(Field.create(in.readLong()), logicalType);
+      case AvroTypeUtil.LOGICAL_TYPE_TIMESTAMP_MILLIS:
+        if (schema.getType() != Schema.Type.LONG) {
+          return failing("Unexpected physical type for logical timestamp millis type: " + schema.getType());
+        }
+        return (in, record, path) -> withLogicalType(Field.create(Field.Type.DATETIME, in.readLong()), logicalType);
+      case AvroTypeUtil.LOGICAL_TYPE_TIMESTAMP_MICROS:
+        if (schema.getType() != Schema.Type.LONG) {
+          return failing("Unexpected physical type for logical timestamp micros type: " + schema.getType());
+        }
+        // We don't have a better type to represent microseconds
+        return (in, record, path) -> withLogicalType(Field.create(in.readLong()), logicalType);
+      default:
+        return null;
+    }
+  }
+
+  private static Field withLogicalType(Field field, String logicalType) {
+    field.setAttribute(AvroTypeUtil.FIELD_ATTRIBUTE_TYPE, logicalType);
+    return field;
+  }
+
+  // Invalid schemas only fail when there is a value to decode, same as AvroTypeUtil
+  private static ValueDecoder failing(String message) {
+    return (in, record, path) -> {
+      throw new IllegalStateException(message);
+    };
+  }
+
+  /**
+   * Whether the field path has to be tracked for the given schema, it is only needed to set the union type indexes.
+   */
+  private static boolean containsUnion(Schema schema, Set<Schema> visited) {
+    switch (schema.getType()) {
+      case UNION:
+        return true;
+      case ARRAY:
+        return containsUnion(schema.getElementType(), visited);
+      case MAP:
+        return containsUnion(schema.getValueType(), visited);
+      case RECORD:
+        if (!visited.add(schema)) {
+          return false;
+        }
+        for (Schema.Field field : schema.getFields()) {
+          if (containsUnion(field.schema(), visited)) {
+            return true;
+          }
+        }
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean containsUnion(Schema schema) {
+    return containsUnion(schema, Collections.newSetFromMap(new IdentityHashMap<Schema, Boolean>()));
+  }
+
+  private static class UnionDecoder implements ValueDecoder {
+    private final ValueDecoder[] branches;
+    private final String[] indexes;
+    // Union of null and the actual type, null values don't get the union type index
+    private final boolean nullable;
+    private final Field.Type nullType;
+
+    UnionDecoder(Schema schema, Map<Schema, RecordDecoder> records) {
+      List<Schema> types = schema.getTypes();
+      branches = new ValueDecoder[types.size()];
+      indexes = new String[types.size()];
+      for (int i = 0; i < types.size(); i++) {
+        branches[i] = compile(types.get(i), records);
+        indexes[i] = String.valueOf(i);
+      }
+      nullable = types.size() == 2 && types.get(0).getType() == Schema.Type.NULL;
+      nullType = nullable ? AvroTypeUtil.getFieldType(types.get(1).getType()) : null;
+    }
+
+    @Override
+    public Field decode(Decoder in, Record record, String path) throws IOException {
+      int index = in.readIndex();
+      if (nullable && index == 0) {
+        in.readNull();
+        return Field.create(nullType, null);
+      }
+      if (record != null) {
+        record.getHeader().setAttribute(AvroTypeUtil.AVRO_UNION_TYPE_INDEX_PREFIX + path, indexes[index]);
+      }
+      return branches[index].decode(in, record, path);
+    }
+  }
+
+  private static class ArrayDecoder implements ValueDecoder {
+    private final ValueDecoder elementDecoder;
+    private final boolean trackPath;
+
+    ArrayDecoder(Schema schema, Map<Schema, RecordDecoder> records) {
+      elementDecoder = compile(schema.getElementType(), records);
+      trackPath = containsUnion(schema.getElementType());
+    }
+
+    @Override
+    public Field decode(Decoder in, Record record, String path) throws IOException {
+      List<Field> list = new ArrayList<>();
+      for (long count = in.readArrayStart(); count != 0; count = in.arrayNext()) {
+        for (long i = 0; i < count; i++) {
+          String elementPath = trackPath ? path + "[" + list.size() + "]" : path;
+          list.add(elementDecoder.decode(in, record, elementPath));
+        }
+      }
+      return Field.create(list);
+    }
+  }
+
+  private static class MapDecoder implements ValueDecoder {
+    private final ValueDecoder valueDecoder;
+    private final boolean trackPath;
+
+    MapDecoder(Schema schema, Map<Schema, RecordDecoder> records) {
+      valueDecoder = compile(schema.getValueType(), records);
+      trackPath = containsUnion(schema.getValueType());
+    }
+
+    @Override
+    public Field decode(Decoder in, Record record, String path) throws IOException {
+      Map<String, Field> map = new LinkedHashMap<>();
+      for (long count = in.readMapStart(); count != 0; count = in.mapNext()) {
+        for (long i = 0; i < count; i++) {
+          String key = in.readString();
+          map.put(key, valueDecoder.decode(in, record, trackPath ? path + "/" + key : path));
+        }
+      }
+      return Field.create(map);
+    }
+  }
+
+  private static class RecordDecoder implements ValueDecoder {
+    private final String[] names;
+    private final ValueDecoder[] fieldDecoders;
+    private final boolean[] trackPath;
+
+    RecordDecoder(Schema schema, Map<Schema, RecordDecoder> records) {
+      // Registered before compiling the fields so that recursive schemas refer back to this decoder
+      records.put(schema, this);
+      List<Schema.Field> fields = schema.getFields();
+      names = new String[fields.size()];
+      fieldDecoders = new ValueDecoder[fields.size()];
+      trackPath = new boolean[fields.size()];
+      for (int i = 0; i < fields.size(); i++) {
+        Schema.Field field = fields.get(i);
+        names[i] = field.name();
+        fieldDecoders[i] = compile(field.schema(), records);
+        trackPath[i] = containsUnion(field.schema());
+      }
+    }
+
+    @Override
+    public Field decode(Decoder in, Record record, String path) throws IOException {
+      Map<String, Field> recordMap = new HashMap<>();
+      for (int i = 0; i < names.length; i++) {
+        String fieldPath = trackPath[i] ? path + "/" + names[i] : path;
+        recordMap.put(names[i], fieldDecoders[i].decode(in, record, fieldPath));
+      }
+      return Field.create(recordMap);
+    }
+  }
+}
@@ -0,0 +1,558 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.StageException;
+import com.streamsets.pipeline.lib.generator.DataGeneratorException;
+import com.streamsets.pipeline.lib.generator.avro.Errors;
+import org.apache.avro.Schema;
+import org.apache.avro.UnresolvedUnionException;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes records straight to binary avro. The data is the same as converting the record with
+ * {@link AvroTypeUtil#sdcRecordToAvro} and writing the result with a {@link GenericDatumWriter}.
+ * <p/>
+ * The schema is compiled once into a tree of encoders, writers are cached by schema. A record that can't be converted
+ * fails part way, so callers that must not leave a partial record in their output encode to a buffer first.
+ */
+public final class AvroFieldWriter {
+
+  private static final Cache<Schema, AvroFieldWriter> WRITERS = CacheBuilder.newBuilder()
+      .maximumSize(1000)
+      .build();
+
+  private final ValueEncoder encoder;
+
+  private AvroFieldWriter(Schema schema) {
+    this.encoder = compile(schema, null, new IdentityHashMap<Schema, RecordEncoder>());
+  }
+
+  /**
+   * Returns the writer for the given schema, compiling it if it's not cached.
+   */
+  public static AvroFieldWriter forSchema(Schema schema) {
+    AvroFieldWriter writer = WRITERS.getIfPresent(schema);
+    if (writer == null) {
+      writer = new AvroFieldWriter(schema);
+      WRITERS.put(schema, writer);
+    }
+    return writer;
+  }
+
+  /**
+   * Encodes the root field of the record, record fields that are missing or null are written with their default value
+   * from the given map.
+   */
+  public void write(Record record, Map<String, Object> defaultValueMap, Encoder out) throws StageException, IOException {
+    writeValue(encoder, record, record.get(), "", defaultValueMap, out);
+  }
+
+  private static void writeValue(
+      ValueEncoder encoder,
+      Record record,
+      Field field,
+      String path,
+      Map<String, Object> defaultValueMap,
+      Encoder out
+  ) throws StageException, IOException {
+    ValueEncoder resolved = (field == null || field.getValue() == null) ? null : encoder.resolve(record, field, path);
+    if (resolved == null || resolved.isNull()) {
+      encoder.writeNull(out);
+    } else {
+      resolved.write(record, field, path, defaultValueMap, out);
+    }
+  }
+
+  private abstract static class ValueEncoder {
+    /**
+     * Returns the encoder for the given not null field, for unions the one of the branch the field resolves to.
+     */
+    ValueEncoder resolve(Record record, Field field, String path) throws StageException {
+      return this;
+    }
+
+    /**
+     * Whether the field converts to null, which is the case for null schemas.
+     */
+    boolean isNull() {
+      return false;
+    }
+
+    abstract void write(
+        Record record,
+        Field field,
+        String path,
+        Map<String, Object> defaultValueMap,
+        Encoder out
+    ) throws StageException, IOException;
+
+    void writeNull(Encoder out) throws IOException {
+      throw new NullPointerException("null of " + getTypeName());
+    }
+
+    abstract String getTypeName();
+  }
+
+  /**
+   * Encoder of a schema without nested values.
+   */
+  private interface PrimitiveWriter {
+    void write(Field field, Encoder out) throws IOException;
+  }
+
+  private static class PrimitiveEncoder extends ValueEncoder {
+    private final Schema schema;
+    private final PrimitiveWriter writer;
+
+    PrimitiveEncoder(Schema schema, PrimitiveWriter writer) {
+      this.schema = schema;
+      this.writer = writer;
+    }
+
+    @Override
+    void write(
+        Record record,
+        Field field,
+        String path,
+        Map<String, Object> defaultValueMap,
+        Encoder out
+    ) throws IOException {
+      writer.write(field, out);
+    }
+
+    @Override
+    String getTypeName() {
+      return schema.getFullName();
+    }
+  }
+
+  private static ValueEncoder compile(Schema schema, String fieldLogicalType, Map<Schema, RecordEncoder> records) {
+    if (schema.getType() == Schema.Type.UNION) {
+      return new UnionEncoder(schema, records);
+    }
+
+    String logicalType = schema.getProp(AvroTypeUtil.LOGICAL_TYPE);
+    if (logicalType == null) {
+      // Record fields may declare the logical type on the field instead of on its schema
+      logicalType = fieldLogicalType;
+    }
+    if (logicalType != null && !logicalType.isEmpty()) {
+      PrimitiveWriter logicalWriter = compileLogicalType(schema, logicalType);
+      if (logicalWriter != null) {
+        return new PrimitiveEncoder(schema, logicalWriter);
+      }
+    }
+
+    switch (schema.getType()) {
+      case ARRAY:
+        return new ArrayEncoder(schema, records);
+      case BOOLEAN:
+        return new PrimitiveEncoder(schema, (field, out) -> out.writeBoolean(field.getValueAsBoolean()));
+      case BYTES:
+        return new PrimitiveEncoder(schema, (field, out) -> out.writeBytes(field.getValueAsByteArray()));
+      case DOUBLE:
+        return new PrimitiveEncoder(schema, (field, out) -> out.writeDouble(field.getValueAsDouble()));
+      case ENUM:
+        return new PrimitiveEncoder(
+            schema,
+            (field, out) -> out.writeEnum(schema.getEnumOrdinal(field.getValueAsString()))
+        );
+      case FIXED:
+        int size = schema.getFixedSize();
+        return new PrimitiveEncoder(schema, (field, out) -> out.writeFixed(field.getValueAsByteArray(), 0, size));
+      case FLOAT:
+        return new PrimitiveEncoder(schema, (field, out) -> out.writeFloat(field.getValueAsFloat()));
+      case INT:
+        return new PrimitiveEncoder(schema, (field, out) -> out.writeInt(field.getValueAsInteger()));
+      case LONG:
+        return new PrimitiveEncoder(schema, (field, out) -> out.writeLong(field.getValueAsLong()));
+      case MAP:
+        return new MapEncoder(schema, records);
+      case NULL:
+        return new NullEncoder();
+      case RECORD:
+        RecordEncoder recordEncoder = records.get(schema);
+        if (recordEncoder == null) {
+          recordEncoder = new RecordEncoder(schema, records);
+        }
+        return recordEncoder;
+      case STRING:
+        return new PrimitiveEncoder(schema, (field, out) -> out.writeString(field.getValueAsString()));
+      default:
+        throw new IllegalStateException("Unexpected schema type " + schema.getType());
+    }
+  }
+
+  private static PrimitiveWriter compileLogicalType(Schema schema, String logicalType) {
+    switch (logicalType) {
+      case AvroTypeUtil.LOGICAL_TYPE_DECIMAL:
+        if (schema.getType() != Schema.Type.BYTES) {
+          return failing("Unexpected physical type for logical decimal type: " + schema.getType());
+        }
+        return (field, out) -> out.writeBytes(field.getValueAsDecimal().unscaledValue().toByteArray());
+      case AvroTypeUtil.LOGICAL_TYPE_DATE:
+        if (schema.getType() != Schema.Type.INT) {
+          return failing("Unexpected physical type for logical date type: " + schema.getType());
+        }
+        return (field, out) -> out.writeInt(AvroTypeUtil.millisToDays(field.getValueAsDate().getTime()));
+      case AvroTypeUtil.LOGICAL_TYPE_TIME_MILLIS:
+        if (schema.getType() != Schema.Type.INT) {
+          return failing("Unexpected physical type for logical time millis type: " + schema.getType());
+        }
+        return (field, out) -> out.writeInt((int) field.getValueAsTime().getTime());
+      case AvroTypeUtil.LOGICAL_TYPE_TIME_MICROS:
+        if (schema.getType() != Schema.Type.LONG) {
+          return failing("Unexpected physical type for logical time micros type: " + schema.getType());
+        }
+        return (field, out) -> out.writeLong(field.getValueAsLong());
+      case AvroTypeUtil.LOGICAL_TYPE_TIMESTAMP_MILLIS:
+        if (schema.getType() != Schema.Type.LONG) {
+          return failing("Unexpected physical type for logical timestamp millis type: " + schema.getType());
+        }
+        return (field, out) -> out.writeLong(field.getValueAsDatetime().getTime());
+      case AvroTypeUtil.LOGICAL_TYPE_TIMESTAMP_MICROS:
+        if (schema.getType() != Schema.Type.LONG) {
+          return failing("Unexpected physical type for logical timestamp micros type: " + schema.getType());
+        }
+        return (field, out) -> out.writeLong(field.getValueAsLong());
+      default:
+        return null;
+    }
+  }
+
+  // Invalid schemas only fail when there is a value to encode, same as AvroTypeUtil
+  private static PrimitiveWriter failing(String message) {
+    return (field, out) -> {
+      throw new IllegalStateException(message);
+    };
+  }
+
+  /**
+   * Whether the field path has to be tracked for the given schema, it is only needed to look up the union type indexes.
+   */
+  private static boolean containsUnion(Schema schema, Set<Schema> visited) {
+    switch (schema.getType()) {
+      case UNION:
+        return true;
+      case ARRAY:
+        return containsUnion(schema.getElementType(), visited);
+      case MAP:
+        return containsUnion(schema.getValueType(), visited);
+      case RECORD:
+        if (!visited.add(schema)) {
+          return false;
+        }
+        for (Schema.Field field : schema.getFields()) {
+          if (containsUnion(field.schema(), visited)) {
+            return true;
+          }
+        }
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean containsUnion(Schema schema) {
+    return containsUnion(schema, Collections.newSetFromMap(new IdentityHashMap<Schema, Boolean>()));
+  }
+
+  private static class NullEncoder extends ValueEncoder {
+    @Override
+    boolean isNull() {
+      return true;
+    }
+
+    @Override
+    void write(
+        Record record,
+        Field field,
+        String path,
+        Map<String, Object> defaultValueMap,
+        Encoder out
+    ) throws IOException {
+      out.writeNull();
+    }
+
+    @Override
+    void writeNull(Encoder out) throws IOException {
+      out.writeNull();
+    }
+
+    @Override
+    String getTypeName() {
+      return Schema.Type.NULL.getName();
+    }
+  }
+
+  private static class UnionEncoder extends ValueEncoder {
+    private final Schema schema;
+    private final BranchEncoder[] branches;
+    // Union of null and the actual type, not null values are of the actual type
+    private final boolean nullable;
+    private final int nullIndex;
+
+    UnionEncoder(Schema schema, Map<Schema, RecordEncoder> records) {
+      this.schema = schema;
+      List<Schema> types = schema.getTypes();
+      branches = new BranchEncoder[types.size()];
+      for (int i = 0; i < types.size(); i++) {
+        branches[i] = new BranchEncoder(i, compile(types.get(i), null, records));
+      }
+      nullable = types.size() == 2 && types.get(0).getType() == Schema.Type.NULL;
+      Integer index = schema.getIndexNamed(Schema.Type.NULL.getName());
+      nullIndex = (index == null) ? -1 : index;
+    }
+
+    @Override
+    ValueEncoder resolve(Record record, Field field, String path) throws StageException {
+      String typeIndex = record.getHeader().getAttribute(AvroTypeUtil.AVRO_UNION_TYPE_INDEX_PREFIX + path);
+      int index;
+      if (typeIndex != null && !typeIndex.isEmpty()) {
+        index = Integer.parseInt(typeIndex);
+      } else if (nullable) {
+        index = 1;
+      } else {
+        index = AvroTypeUtil.resolveUnionIndex(record, field, path, schema);
+      }
+      return branches[index];
+    }
+
+    @Override
+    void write(
+        Record record,
+        Field field,
+        String path,
+        Map<String, Object> defaultValueMap,
+        Encoder out
+    ) throws StageException, IOException {
+      resolve(record, field, path).write(record, field, path, defaultValueMap, out);
+    }
+
+    @Override
+    void writeNull(Encoder out) throws IOException {
+      if (nullIndex < 0) {
+        throw new UnresolvedUnionException(schema, null);
+      }
+      out.writeIndex(nullIndex);
+      out.writeNull();
+    }
+
+    @Override
+    String getTypeName() {
+      return schema.toString();
+    }
+  }
+
+  private static class BranchEncoder extends ValueEncoder {
+    private final int index;
+    private final ValueEncoder encoder;
+
+    BranchEncoder(int index, ValueEncoder encoder) {
+      this.index = index;
+      this.encoder = encoder;
+    }
+
+    @Override
+    boolean isNull() {
+      return encoder.isNull();
+    }
+
+    @Override
+    void write(
+        Record record,
+        Field field,
+        String path,
+        Map<String, Object> defaultValueMap,
+        Encoder out
+    ) throws StageException, IOException {
+      out.writeIndex(index);
+      encoder.write(record, field, path, defaultValueMap, out);
+    }
+
+    @Override
+    String getTypeName() {
+      return encoder.getTypeName();
+    }
+  }
+
+  private static class ArrayEncoder extends ValueEncoder {
+    private final Schema schema;
+    private final ValueEncoder elementEncoder;
+    private final boolean trackPath;
+
+    ArrayEncoder(Schema schema, Map<Schema, RecordEncoder> records) {
+      this.schema = schema;
+      elementEncoder = compile(schema.getElementType(), null, records);
+      trackPath = containsUnion(schema.getElementType());
+    }
+
+    @Override
+    void write(
+        Record record,
+        Field field,
+        String path,
+        Map<String, Object> defaultValueMap,
+        Encoder out
+    ) throws StageException, IOException {
+      List<Field> list = field.getValueAsList();
+      out.writeArrayStart();
+      out.setItemCount(list.size());
+      for (int i = 0; i < list.size(); i++) {
+        out.startItem();
+        String elementPath = trackPath ? path + "[" + i + "]" : path;
+        writeValue(elementEncoder, record, list.get(i), elementPath, defaultValueMap, out);
+      }
+      out.writeArrayEnd();
+    }
+
+    @Override
+    String getTypeName() {
+      return schema.getFullName();
+    }
+  }
+
+  private static class MapEncoder extends ValueEncoder {
+    private final Schema schema;
+    private final ValueEncoder valueEncoder;
+    private final boolean trackPath;
+
+    MapEncoder(Schema schema, Map<Schema, RecordEncoder> records) {
+      this.schema = schema;
+      valueEncoder = compile(schema.getValueType(), null, records);
+      trackPath = containsUnion(schema.getValueType());
+    }
+
+    @Override
+    void write(
+        Record record,
+        Field field,
+        String path,
+        Map<String, Object> defaultValueMap,
+        Encoder out
+    ) throws StageException, IOException {
+      Map<String, Field> map = field.getValueAsMap();
+      out.writeMapStart();
+      out.setItemCount(map.size());
+      for (Map.Entry<String, Field> entry : map.entrySet()) {
+        out.startItem();
+        out.writeString(entry.getKey());
+        String valuePath = trackPath ? path + "/" + entry.getKey() : path;
+        writeValue(valueEncoder, record, entry.getValue(), valuePath, defaultValueMap, out);
+      }
+      out.writeMapEnd();
+    }
+
+    @Override
+    String getTypeName() {
+      return schema.getFullName();
+    }
+  }
+
+  private static class RecordEncoder extends ValueEncoder {
+    private final Schema schema;
+    private final String[] names;
+    // Keys of the default values of the fields
+    private final String[] keys;
+    private final ValueEncoder[] fieldEncoders;
+    // Null is written for fields of union and null schemas without a default value
+    private final boolean[] nullable;
+    private final boolean[] trackPath;
+    private final GenericDatumWriter<Object>[] defaultWriters;
+
+    @SuppressWarnings("unchecked")
+    RecordEncoder(Schema schema, Map<Schema, RecordEncoder> records) {
+      // Registered before compiling the fields so that recursive schemas refer back to this encoder
+      records.put(schema, this);
+      this.schema = schema;
+      List<Schema.Field> fields = schema.getFields();
+      names = new String[fields.size()];
+      keys = new String[fields.size()];
+      fieldEncoders = new ValueEncoder[fields.size()];
+      nullable = new boolean[fields.size()];
+      trackPath = new boolean[fields.size()];
+      defaultWriters = new GenericDatumWriter[fields.size()];
+      for (int i = 0; i < fields.size(); i++) {
+        Schema.Field field = fields.get(i);
+        Schema fieldSchema = field.schema();
+        names[i] = field.name();
+        keys[i] = schema.getFullName() + AvroTypeUtil.SCHEMA_PATH_SEPARATOR + field.name();
+        fieldEncoders[i] = compile(fieldSchema, field.getProp(AvroTypeUtil.LOGICAL_TYPE), records);
+        nullable[i] = fieldSchema.getType() == Schema.Type.UNION || fieldSchema.getType() == Schema.Type.NULL;
+        trackPath[i] = containsUnion(fieldSchema);
+        defaultWriters[i] = new GenericDatumWriter<>(fieldSchema);
+      }
+    }
+
+    @Override
+    void write(
+        Record record,
+        Field field,
+        String path,
+        Map<String, Object> defaultValueMap,
+        Encoder out
+    ) throws StageException, IOException {
+      Map<String, Field> valueAsMap = field.getValueAsMap();
+      for (int i = 0; i < names.length; i++) {
+        // If the record does not contain a field corresponding to the schema field, look up the default value from
+        // the schema. If no default value was specified for the field and record does not contain it, then throw
+        // exception. Its an error record.
+        if (!valueAsMap.containsKey(names[i])) {
+          if (!defaultValueMap.containsKey(keys[i])) {
+            throw new DataGeneratorException(Errors.AVRO_GENERATOR_00, record.getHeader().getSourceId(), keys[i]);
+          }
+          defaultWriters[i].write(defaultValueMap.get(keys[i]), out);
+          continue;
+        }
+
+        Field value = valueAsMap.get(names[i]);
+        String fieldPath = trackPath[i] ? path + "/" + names[i] : path;
+        ValueEncoder resolved = (value == null || value.getValue() == null)
+            ? null
+            : fieldEncoders[i].resolve(record, value, fieldPath);
+        if (resolved != null && !resolved.isNull()) {
+          resolved.write(record, value, fieldPath, defaultValueMap, out);
+        } else if (defaultValueMap.containsKey(keys[i])) {
+          defaultWriters[i].write(defaultValueMap.get(keys[i]), out);
+        } else if (nullable[i]) {
+          // DatumWriter can handle writing null value for the Union and Null types
+          fieldEncoders[i].writeNull(out);
+        } else {
+          // If value in record is null and there is no default value specified, send to error.
+          throw new DataGeneratorException(Errors.AVRO_GENERATOR_01, record.getHeader().getSourceId(), keys[i]);
+        }
+      }
+    }
+
+    @Override
+    String getTypeName() {
+      return schema.getFullName();
+    }
+  }
+}
@@ -115,7 +115,7 @@ public class AvroTypeUtil {
    *
    * This function has been copied from Apache Hive project.
    */
-  private static int millisToDays(long millisLocal) {
+  static int millisToDays(long millisLocal) {
     // We assume millisLocal is midnight of some date. What we are basically trying to do
     // here is go from local-midnight to UTC-midnight (or whatever time that happens to be).
     long millisUtc = millisLocal + localTimeZone.getOffset(millisLocal);
@@ -345,32 +345,7 @@ public class AvroTypeUtil {
         // column is not null, expect the union's second type.
         schema = unionTypes.get(1);
       } else {
-        //Record does not have the avro union type index which means this record was not created from avro data.
-        //try our best to resolve the union type.
-        Object object = JsonUtil.fieldToJsonObject(record, field);
-
-        // Avro GenericData expects certain encoding for some types
-        if(field.getType() == Field.Type.DECIMAL || field.getType() ==  Field.Type.BYTE_ARRAY) {
-          object = ByteBuffer.wrap(new byte[]{});
-        }
-        if(field.getType() == Field.Type.DATE) {
-          object = 0;
-        }
-
-        try {
-          int typeIndex = GenericData.get().resolveUnion(schema, object);
-          schema = schema.getTypes().get(typeIndex);
-        } catch (AvroRuntimeException e) {
-          //Avro could not resolve schema. Make a best effort resolve
-          Schema match = bestEffortResolve(schema, field, object);
-          if(match == null) {
-            String objectType = object == null ? "null" : object.getClass().getName();
-            throw new StageException(CommonError.CMN_0106, avroFieldPath, field.getType().name(), objectType, e.toString(),
-                e);
-          } else {
-            schema = match;
-          }
-        }
+        schema = unionTypes.get(resolveUnionIndex(record, field, avroFieldPath, schema));
       }
     }
 
@@ -537,7 +512,42 @@ public class AvroTypeUtil {
     return obj;
   }
 
-  private static Field.Type getFieldType(Schema.Type type) {
+  /**
+   * Resolves the union type of a field of a record that does not have the avro union type index, which means that the
+   * record was not created from avro data.
+   */
+  static int resolveUnionIndex(
+      Record record,
+      Field field,
+      String avroFieldPath,
+      Schema schema
+  ) throws StageException {
+    //try our best to resolve the union type.
+    Object object = JsonUtil.fieldToJsonObject(record, field);
+
+    // Avro GenericData expects certain encoding for some types
+    if(field.getType() == Field.Type.DECIMAL || field.getType() ==  Field.Type.BYTE_ARRAY) {
+      object = ByteBuffer.wrap(new byte[]{});
+    }
+    if(field.getType() == Field.Type.DATE) {
+      object = 0;
+    }
+
+    try {
+      return GenericData.get().resolveUnion(schema, object);
+    } catch (AvroRuntimeException e) {
+      //Avro could not resolve schema. Make a best effort resolve
+      Schema match = bestEffortResolve(schema, field, object);
+      if(match == null) {
+        String objectType = object == null ? "null" : object.getClass().getName();
+        throw new StageException(CommonError.CMN_0106, avroFieldPath, field.getType().name(), objectType, e.toString(),
+            e);
+      }
+      return schema.getTypes().indexOf(match);
+    }
+  }
+
+  static Field.Type getFieldType(Schema.Type type) {
     switch(type) {
       case ARRAY:
         return Field.Type.LIST;
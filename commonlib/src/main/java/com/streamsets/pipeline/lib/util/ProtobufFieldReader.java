@@ -0,0 +1,588 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.util;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UninitializedMessageException;
+import com.google.protobuf.UnknownFieldSet;
+import com.google.protobuf.WireFormat;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.lib.parser.DataParserException;
+import com.streamsets.pipeline.lib.parser.protobuf.Errors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes protobuf messages straight from a {@link CodedInputStream} into SDC fields.
+ * <p/>
+ * The field accessors, default values and extensions of every message type reachable from the root descriptor are
+ * resolved once when the reader is created, so decoding does not go through {@code DynamicMessage} and its
+ * reflective field lookups. The resulting fields, including the record header attributes carrying unknown fields,
+ * are the same as the ones produced by {@link ProtobufTypeUtil#protobufToSdcField}.
+ * <p/>
+ * Instances are immutable and can be shared by all the parsers created for the same descriptor.
+ */
+public final class ProtobufFieldReader {
+  private static final String FORWARD_SLASH = "/";
+  private static final String KEY = "key";
+  private static final String VALUE = "value";
+  private static final int RECURSION_LIMIT = 100;
+  // field numbers up to this value are looked up in an array, higher ones in a map
+  private static final int MAX_DENSE_FIELD_NUMBER = 1024;
+
+  private final MessagePlan root;
+
+  private ProtobufFieldReader(MessagePlan root) {
+    this.root = root;
+  }
+
+  /**
+   * Compiles a reader for the given message type.
+   *
+   * @param descriptor                protobuf descriptor of the messages to read
+   * @param messageTypeToExtensionMap protobuf extensions map
+   * @return the reader, or null if the message graph uses the MessageSet wire format, which is not supported here
+   * @throws DataParserException if a field has an unsupported type
+   */
+  public static ProtobufFieldReader create(
+      Descriptors.Descriptor descriptor,
+      Map<String, Set<Descriptors.FieldDescriptor>> messageTypeToExtensionMap
+  ) throws DataParserException {
+    Map<Descriptors.Descriptor, MessagePlan> plans = new IdentityHashMap<>();
+    MessagePlan root = compile(descriptor, messageTypeToExtensionMap, plans);
+    return root == null ? null : new ProtobufFieldReader(root);
+  }
+
+  /**
+   * Reads one message, consuming the input until its end.
+   *
+   * @param record record the field is created for, unknown fields are kept in its header
+   * @param in     input positioned at the start of the message
+   * @return the field representing the message
+   * @throws IOException if the data is not a valid message
+   * @throws UninitializedMessageException if the message does not contain all its required fields
+   * @throws DataParserException if the message could not be converted to a field
+   */
+  public Field read(Record record, CodedInputStream in) throws IOException, DataParserException {
+    MessageState state = new MessageState(root);
+    int lastTag = readMessage(in, root, state, 0);
+    if (lastTag != 0) {
+      throw new InvalidProtocolBufferException("Protocol message end-group tag did not match expected tag.");
+    }
+    List<String> missingFields = new ArrayList<>();
+    findMissingFields(state, "", missingFields);
+    if (!missingFields.isEmpty()) {
+      throw new UninitializedMessageException(missingFields);
+    }
+    return toField(record, "", state);
+  }
+
+  private static MessagePlan compile(
+      Descriptors.Descriptor descriptor,
+      Map<String, Set<Descriptors.FieldDescriptor>> messageTypeToExtensionMap,
+      Map<Descriptors.Descriptor, MessagePlan> plans
+  ) throws DataParserException {
+    MessagePlan plan = plans.get(descriptor);
+    if (plan != null) {
+      return plan;
+    }
+    if (descriptor.getOptions().getMessageSetWireFormat()) {
+      return null;
+    }
+    plan = new MessagePlan(descriptor);
+    // registered before compiling the fields, message types can be recursive
+    plans.put(descriptor, plan);
+
+    List<Descriptors.FieldDescriptor> fields = descriptor.getFields();
+    Set<Descriptors.FieldDescriptor> extensions = messageTypeToExtensionMap.get(descriptor.getFullName());
+    if (extensions == null) {
+      extensions = Collections.emptySet();
+    }
+    plan.fields = new FieldPlan[fields.size()];
+    plan.extensions = new FieldPlan[extensions.size()];
+    List<FieldPlan> all = new ArrayList<>();
+    int slot = 0;
+    for (Descriptors.FieldDescriptor fieldDescriptor : fields) {
+      FieldPlan fieldPlan = new FieldPlan(fieldDescriptor, slot);
+      plan.fields[slot++] = fieldPlan;
+      all.add(fieldPlan);
+    }
+    int i = 0;
+    for (Descriptors.FieldDescriptor fieldDescriptor : extensions) {
+      FieldPlan fieldPlan = new FieldPlan(fieldDescriptor, slot++);
+      plan.extensions[i++] = fieldPlan;
+      all.add(fieldPlan);
+    }
+    plan.slots = slot;
+
+    List<FieldPlan> required = new ArrayList<>();
+    int maxNumber = 0;
+    for (FieldPlan fieldPlan : all) {
+      fieldPlan.sdcType = ProtobufTypeUtil.getFieldType(fieldPlan.descriptor.getJavaType());
+      if (fieldPlan.message) {
+        fieldPlan.messagePlan = compile(fieldPlan.descriptor.getMessageType(), messageTypeToExtensionMap, plans);
+        if (fieldPlan.messagePlan == null) {
+          return null;
+        }
+      }
+      if (fieldPlan.descriptor.isRequired()) {
+        required.add(fieldPlan);
+      }
+      if (fieldPlan.number <= MAX_DENSE_FIELD_NUMBER) {
+        maxNumber = Math.max(maxNumber, fieldPlan.number);
+      }
+    }
+    plan.required = required.toArray(new FieldPlan[required.size()]);
+    plan.numberOrder = all.toArray(new FieldPlan[all.size()]);
+    Arrays.sort(plan.numberOrder, (a, b) -> Integer.compare(a.number, b.number));
+
+    plan.byNumber = new FieldPlan[maxNumber + 1];
+    for (FieldPlan fieldPlan : all) {
+      if (fieldPlan.number <= MAX_DENSE_FIELD_NUMBER) {
+        plan.byNumber[fieldPlan.number] = fieldPlan;
+      } else {
+        if (plan.sparseByNumber == null) {
+          plan.sparseByNumber = new HashMap<>();
+        }
+        plan.sparseByNumber.put(fieldPlan.number, fieldPlan);
+      }
+    }
+
+    // setting a member of a oneof clears the other members
+    for (Descriptors.OneofDescriptor oneof : descriptor.getOneofs()) {
+      int[] memberSlots = new int[oneof.getFieldCount()];
+      for (int j = 0; j < memberSlots.length; j++) {
+        memberSlots[j] = oneof.getField(j).getIndex();
+      }
+      for (int j = 0; j < memberSlots.length; j++) {
+        plan.fields[memberSlots[j]].oneofSlots = memberSlots;
+      }
+    }
+
+    if (fields.size() == 2 && descriptor.getOptions().getMapEntry()) {
+      plan.key = plan.fields[descriptor.findFieldByName(KEY).getIndex()];
+      plan.value = plan.fields[descriptor.findFieldByName(VALUE).getIndex()];
+    }
+    return plan;
+  }
+
+  /**
+   * Reads fields into the given state until the end of the input, its current limit or an end group tag.
+   *
+   * @return the tag the message ended with, 0 if it ended with the input
+   */
+  private static int readMessage(
+      CodedInputStream in,
+      MessagePlan plan,
+      MessageState state,
+      int depth
+  ) throws IOException {
+    while (true) {
+      int tag = in.readTag();
+      if (tag == 0) {
+        return 0;
+      }
+      int wireType = WireFormat.getTagWireType(tag);
+      if (wireType == WireFormat.WIRETYPE_END_GROUP) {
+        return tag;
+      }
+      FieldPlan field = plan.lookup(WireFormat.getTagFieldNumber(tag));
+      if (field == null) {
+        readUnknown(in, state, tag);
+      } else if (wireType == field.wireType) {
+        readValue(in, field, state, tag, depth);
+      } else if (field.packable && wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+        int limit = in.pushLimit(in.readRawVarint32());
+        while (in.getBytesUntilLimit() > 0) {
+          // unrecognized values of packed closed enums are dropped
+          Object value = readPrimitive(in, field);
+          if (value != null) {
+            state.add(field, value);
+          }
+        }
+        in.popLimit(limit);
+      } else {
+        readUnknown(in, state, tag);
+      }
+    }
+  }
+
+  private static void readValue(
+      CodedInputStream in,
+      FieldPlan field,
+      MessageState state,
+      int tag,
+      int depth
+  ) throws IOException {
+    Object value;
+    switch (field.descriptor.getType()) {
+      case MESSAGE:
+      case GROUP:
+        MessageState nested = null;
+        if (!field.repeated) {
+          // a singular message that occurs more than once is merged
+          nested = (MessageState) state.values[field.slot];
+        }
+        if (nested == null) {
+          nested = new MessageState(field.messagePlan);
+        }
+        if (depth >= RECURSION_LIMIT) {
+          throw new InvalidProtocolBufferException("Protocol message had too many levels of nesting.");
+        }
+        if (field.descriptor.getType() == Descriptors.FieldDescriptor.Type.GROUP) {
+          int endTag = readMessage(in, field.messagePlan, nested, depth + 1);
+          if (endTag != (field.number << 3 | WireFormat.WIRETYPE_END_GROUP)) {
+            throw new InvalidProtocolBufferException("Protocol message end-group tag did not match expected tag.");
+          }
+        } else {
+          int limit = in.pushLimit(in.readRawVarint32());
+          if (readMessage(in, field.messagePlan, nested, depth + 1) != 0) {
+            throw new InvalidProtocolBufferException("Protocol message end-group tag did not match expected tag.");
+          }
+          in.popLimit(limit);
+        }
+        value = nested;
+        break;
+      case ENUM:
+        int number = in.readEnum();
+        value = field.enumValue(number);
+        if (value == null) {
+          // unrecognized values of closed enums are kept as unknown fields
+          if (state.plan.keepUnknownFields) {
+            state.unknownFields().mergeVarintField(field.number, number);
+          }
+          return;
+        }
+        break;
+      default:
+        value = readPrimitive(in, field);
+        break;
+    }
+    if (field.repeated) {
+      state.add(field, value);
+    } else {
+      state.set(field, value);
+    }
+  }
+
+  private static Object readPrimitive(CodedInputStream in, FieldPlan field) throws IOException {
+    switch (field.descriptor.getType()) {
+      case DOUBLE:
+        return in.readDouble();
+      case FLOAT:
+        return in.readFloat();
+      case INT64:
+        return in.readInt64();
+      case UINT64:
+        return in.readUInt64();
+      case INT32:
+        return in.readInt32();
+      case FIXED64:
+        return in.readFixed64();
+      case FIXED32:
+        return in.readFixed32();
+      case BOOL:
+        return in.readBool();
+      case STRING:
+        return field.checkUtf8 ? in.readStringRequireUtf8() : in.readString();
+      case BYTES:
+        return in.readByteArray();
+      case UINT32:
+        return in.readUInt32();
+      case SFIXED32:
+        return in.readSFixed32();
+      case SFIXED64:
+        return in.readSFixed64();
+      case SINT32:
+        return in.readSInt32();
+      case SINT64:
+        return in.readSInt64();
+      case ENUM:
+        return field.enumValue(in.readEnum());
+      default:
+        throw new IllegalStateException("Unexpected primitive type " + field.descriptor.getType());
+    }
+  }
+
+  private static void readUnknown(CodedInputStream in, MessageState state, int tag) throws IOException {
+    if (state.plan.keepUnknownFields) {
+      state.unknownFields().mergeFieldFrom(tag, in);
+    } else {
+      // proto3 discards unknown fields
+      in.skipField(tag);
+    }
+  }
+
+  private static void findMissingFields(MessageState state, String prefix, List<String> missingFields) {
+    for (FieldPlan field : state.plan.required) {
+      if (state.values[field.slot] == null) {
+        missingFields.add(prefix + field.name);
+      }
+    }
+    for (FieldPlan field : state.plan.numberOrder) {
+      Object value = state.values[field.slot];
+      if (!field.message || value == null) {
+        continue;
+      }
+      String fieldPrefix = field.descriptor.isExtension() ? "(" + field.descriptor.getFullName() + ")" : field.name;
+      if (field.repeated) {
+        List<?> list = (List<?>) value;
+        for (int i = 0; i < list.size(); i++) {
+          findMissingFields((MessageState) list.get(i), prefix + fieldPrefix + "[" + i + "].", missingFields);
+        }
+      } else {
+        findMissingFields((MessageState) value, prefix + fieldPrefix + ".", missingFields);
+      }
+    }
+  }
+
+  private static Field toField(Record record, String fieldPath, MessageState state) throws DataParserException {
+    MessagePlan plan = state.plan;
+    Map<String, Field> sdcRecordMapFieldValue = new HashMap<>();
+    for (FieldPlan field : plan.fields) {
+      sdcRecordMapFieldValue.put(field.name, createField(record, fieldPath, field, state.values[field.slot]));
+    }
+    // extensions only show up when they are present in the message
+    for (FieldPlan field : plan.extensions) {
+      Object value = state.values[field.slot];
+      if (value != null) {
+        sdcRecordMapFieldValue.put(field.name, createField(record, fieldPath, field, value));
+      }
+    }
+    if (state.unknownFields != null) {
+      UnknownFieldSet unknownFields = state.unknownFields.build();
+      if (!unknownFields.asMap().isEmpty()) {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        try {
+          unknownFields.writeDelimitedTo(bOut);
+        } catch (IOException e) {
+          throw new DataParserException(Errors.PROTOBUF_10, e.toString(), e);
+        }
+        String path = fieldPath.isEmpty() ? FORWARD_SLASH : fieldPath;
+        byte[] bytes = org.apache.commons.codec.binary.Base64.encodeBase64(bOut.toByteArray());
+        record.getHeader().setAttribute(
+            ProtobufTypeUtil.PROTOBUF_UNKNOWN_FIELDS_PREFIX + path,
+            new String(bytes, StandardCharsets.UTF_8)
+        );
+      }
+    }
+    return Field.create(sdcRecordMapFieldValue);
+  }
+
+  private static Field createField(
+      Record record,
+      String fieldPath,
+      FieldPlan field,
+      Object value
+  ) throws DataParserException {
+    Field newField;
+    if (value == null) {
+      newField = Field.create(field.sdcType, field.defaultValue);
+    } else if (field.map) {
+      Map<String, Field> sdcMapFieldValues = new HashMap<>();
+      MessagePlan entryPlan = field.messagePlan;
+      for (Object entry : (List<?>) value) {
+        Object[] kv = ((MessageState) entry).values;
+        Object entryKey = kv[entryPlan.key.slot];
+        Object entryValue = kv[entryPlan.value.slot];
+        if (entryPlan.key.isPresent(entryKey) && entryPlan.value.isPresent(entryValue)) {
+          sdcMapFieldValues.put(
+              entryKey.toString(),
+              createSdcField(record, fieldPath, entryPlan.value, entryValue)
+          );
+        }
+      }
+      newField = Field.create(sdcMapFieldValues);
+    } else if (field.repeated) {
+      List<?> list = (List<?>) value;
+      List<Field> listField = new ArrayList<>(list.size());
+      for (int i = 0; i < list.size(); i++) {
+        if (field.message) {
+          listField.add(toField(record, fieldPath + "[" + i + "]", (MessageState) list.get(i)));
+        } else {
+          listField.add(Field.create(field.sdcType, list.get(i)));
+        }
+      }
+      newField = Field.create(listField);
+    } else {
+      newField = createSdcField(record, fieldPath, field, value);
+    }
+    return newField;
+  }
+
+  private static Field createSdcField(
+      Record record,
+      String fieldPath,
+      FieldPlan field,
+      Object value
+  ) throws DataParserException {
+    if (field.message) {
+      return toField(record, fieldPath + FORWARD_SLASH + field.name, (MessageState) value);
+    }
+    return Field.create(field.sdcType, value);
+  }
+
+  private static final class MessagePlan {
+    private final boolean keepUnknownFields;
+    private FieldPlan[] fields;
+    private FieldPlan[] extensions;
+    private FieldPlan[] required;
+    private FieldPlan[] byNumber;
+    private Map<Integer, FieldPlan> sparseByNumber;
+    private FieldPlan[] numberOrder;
+    private int slots;
+    // map entries only
+    private FieldPlan key;
+    private FieldPlan value;
+
+    private MessagePlan(Descriptors.Descriptor descriptor) {
+      keepUnknownFields = descriptor.getFile().getSyntax() != Descriptors.FileDescriptor.Syntax.PROTO3;
+    }
+
+    private FieldPlan lookup(int number) {
+      if (number < byNumber.length) {
+        return byNumber[number];
+      }
+      return sparseByNumber == null ? null : sparseByNumber.get(number);
+    }
+  }
+
+  private static final class FieldPlan {
+    private final Descriptors.FieldDescriptor descriptor;
+    private final String name;
+    private final int number;
+    private final int slot;
+    private final boolean repeated;
+    private final boolean map;
+    private final boolean message;
+    private final boolean packable;
+    private final boolean checkUtf8;
+    // proto3 singular scalars are not present when they hold their default value
+    private final boolean implicitPresence;
+    private final int wireType;
+    private final Object defaultValue;
+    private final Map<Integer, String> enumNames;
+    private final Descriptors.EnumDescriptor openEnum;
+    private Field.Type sdcType;
+    private MessagePlan messagePlan;
+    private int[] oneofSlots;
+
+    private FieldPlan(Descriptors.FieldDescriptor descriptor, int slot) {
+      this.descriptor = descriptor;
+      this.slot = slot;
+      name = descriptor.getName();
+      number = descriptor.getNumber();
+      repeated = descriptor.isRepeated();
+      map = descriptor.isMapField();
+      message = descriptor.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE;
+      packable = descriptor.isPackable();
+      checkUtf8 = descriptor.needsUtf8Check();
+      boolean proto3 = descriptor.getFile().getSyntax() == Descriptors.FileDescriptor.Syntax.PROTO3;
+      implicitPresence = proto3 && !repeated && !message && descriptor.getContainingOneof() == null;
+      wireType = descriptor.getLiteType().getWireType();
+      // default values are only used for optional fields and non-message types
+      defaultValue = descriptor.isOptional() && !message ? descriptor.getDefaultValue() : null;
+      if (descriptor.getJavaType() == Descriptors.FieldDescriptor.JavaType.ENUM) {
+        enumNames = new HashMap<>();
+        for (Descriptors.EnumValueDescriptor value : descriptor.getEnumType().getValues()) {
+          if (!enumNames.containsKey(value.getNumber())) {
+            enumNames.put(value.getNumber(), value.getName());
+          }
+        }
+        // proto3 enums are open, unrecognized values are kept
+        openEnum = proto3 ? descriptor.getEnumType() : null;
+      } else {
+        enumNames = null;
+        openEnum = null;
+      }
+    }
+
+    private Object enumValue(int number) {
+      String name = enumNames.get(number);
+      if (name == null && openEnum != null) {
+        name = openEnum.findValueByNumberCreatingIfUnknown(number).getName();
+      }
+      return name;
+    }
+
+    private boolean isPresent(Object value) {
+      return value != null && !(implicitPresence && isDefault(value));
+    }
+
+    private boolean isDefault(Object value) {
+      Object defaultValue = descriptor.getDefaultValue();
+      switch (descriptor.getJavaType()) {
+        case ENUM:
+          return value.equals(((Descriptors.EnumValueDescriptor) defaultValue).getName());
+        case BYTE_STRING:
+          return Arrays.equals(((ByteString) defaultValue).toByteArray(), (byte[]) value);
+        default:
+          return value.equals(defaultValue);
+      }
+    }
+  }
+
+  private static final class MessageState {
+    private final MessagePlan plan;
+    private final Object[] values;
+    private UnknownFieldSet.Builder unknownFields;
+
+    private MessageState(MessagePlan plan) {
+      this.plan = plan;
+      values = new Object[plan.slots];
+    }
+
+    private UnknownFieldSet.Builder unknownFields() {
+      if (unknownFields == null) {
+        unknownFields = UnknownFieldSet.newBuilder();
+      }
+      return unknownFields;
+    }
+
+    private void set(FieldPlan field, Object value) {
+      if (field.oneofSlots != null) {
+        for (int slot : field.oneofSlots) {
+          values[slot] = null;
+        }
+      }
+      values[field.slot] = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void add(FieldPlan field, Object value) {
+      List<Object> list = (List<Object>) values[field.slot];
+      if (list == null) {
+        list = new ArrayList<>();
+        values[field.slot] = list;
+      }
+      list.add(value);
+    }
+  }
+}
@@ -0,0 +1,642 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.util;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.UninitializedMessageException;
+import com.google.protobuf.UnknownFieldSet;
+import com.google.protobuf.WireFormat;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.lib.generator.DataGeneratorException;
+import com.streamsets.pipeline.lib.parser.protobuf.Errors;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes SDC fields straight to a {@link CodedOutputStream} as protobuf messages.
+ * <p/>
+ * The field accessors, default values and extensions of every message type reachable from the root descriptor are
+ * resolved once when the writer is created, so encoding does not build {@code DynamicMessage} instances. The bytes
+ * written are the same as the serialized form of the message returned by
+ * {@link ProtobufTypeUtil#sdcFieldToProtobufMsg}.
+ * <p/>
+ * Instances are immutable and can be shared by all the generators created for the same descriptor.
+ */
+public final class ProtobufFieldWriter {
+  private static final String FORWARD_SLASH = "/";
+  private static final String KEY = "key";
+  private static final String VALUE = "value";
+
+  private final MessagePlan root;
+
+  private ProtobufFieldWriter(MessagePlan root) {
+    this.root = root;
+  }
+
+  /**
+   * Compiles a writer for the given message type.
+   *
+   * @param descriptor                protobuf descriptor of the messages to write
+   * @param messageTypeToExtensionMap protobuf extensions map
+   * @param defaultValueMap           protobuf default field values
+   * @return the writer, or null if the message graph uses the MessageSet wire format, which is not supported here
+   */
+  public static ProtobufFieldWriter create(
+      Descriptors.Descriptor descriptor,
+      Map<String, Set<Descriptors.FieldDescriptor>> messageTypeToExtensionMap,
+      Map<String, Object> defaultValueMap
+  ) {
+    Map<Descriptors.Descriptor, MessagePlan> plans = new IdentityHashMap<>();
+    MessagePlan root = compile(descriptor, messageTypeToExtensionMap, defaultValueMap, plans);
+    return root == null ? null : new ProtobufFieldWriter(root);
+  }
+
+  /**
+   * Writes the root field of the record as a message.
+   *
+   * @param record    record to serialize
+   * @param out       output to write the message to
+   * @param delimited whether the message is preceded by its size
+   * @throws IOException if the message could not be written
+   * @throws DataGeneratorException if the record could not be converted to a message
+   * @throws UninitializedMessageException if the record does not contain all the required fields
+   */
+  public void write(Record record, CodedOutputStream out, boolean delimited) throws IOException, DataGeneratorException {
+    MessageValue message = toMessage(record, record.get(), "", root);
+    if (delimited) {
+      out.writeUInt32NoTag(message.getSerializedSize());
+    }
+    message.writeTo(out);
+  }
+
+  private static MessagePlan compile(
+      Descriptors.Descriptor descriptor,
+      Map<String, Set<Descriptors.FieldDescriptor>> messageTypeToExtensionMap,
+      Map<String, Object> defaultValueMap,
+      Map<Descriptors.Descriptor, MessagePlan> plans
+  ) {
+    MessagePlan plan = plans.get(descriptor);
+    if (plan != null) {
+      return plan;
+    }
+    if (descriptor.getOptions().getMessageSetWireFormat()) {
+      return null;
+    }
+    plan = new MessagePlan(descriptor);
+    // registered before compiling the fields, message types can be recursive
+    plans.put(descriptor, plan);
+
+    // fields are set in the order of declaration followed by the extensions, which decides the winner of a oneof
+    List<Descriptors.FieldDescriptor> fields = new ArrayList<>(descriptor.getFields());
+    Set<Descriptors.FieldDescriptor> extensions = messageTypeToExtensionMap.get(descriptor.getFullName());
+    if (extensions != null) {
+      fields.addAll(extensions);
+    }
+    plan.fields = new FieldPlan[fields.size()];
+    List<FieldPlan> required = new ArrayList<>();
+    for (int slot = 0; slot < fields.size(); slot++) {
+      Descriptors.FieldDescriptor fieldDescriptor = fields.get(slot);
+      FieldPlan field = new FieldPlan(descriptor, fieldDescriptor, slot, defaultValueMap);
+      if (field.message) {
+        field.messagePlan = compile(
+            fieldDescriptor.getMessageType(),
+            messageTypeToExtensionMap,
+            defaultValueMap,
+            plans
+        );
+        if (field.messagePlan == null) {
+          return null;
+        }
+      }
+      if (fieldDescriptor.isRequired()) {
+        required.add(field);
+      }
+      plan.fields[slot] = field;
+    }
+    plan.required = required.toArray(new FieldPlan[required.size()]);
+    // fields and extensions are serialized by field number
+    plan.writeOrder = Arrays.copyOf(plan.fields, plan.fields.length);
+    Arrays.sort(plan.writeOrder, (a, b) -> Integer.compare(a.number, b.number));
+
+    for (Descriptors.OneofDescriptor oneof : descriptor.getOneofs()) {
+      int[] memberSlots = new int[oneof.getFieldCount()];
+      for (int j = 0; j < memberSlots.length; j++) {
+        memberSlots[j] = oneof.getField(j).getIndex();
+      }
+      for (int slot : memberSlots) {
+        plan.fields[slot].oneofSlots = memberSlots;
+      }
+    }
+
+    if (descriptor.getOptions().getMapEntry()) {
+      plan.key = plan.fields[descriptor.findFieldByName(KEY).getIndex()];
+      plan.value = plan.fields[descriptor.findFieldByName(VALUE).getIndex()];
+    }
+    return plan;
+  }
+
+  private static MessageValue toMessage(
+      Record record,
+      Field field,
+      String fieldPath,
+      MessagePlan plan
+  ) throws DataGeneratorException {
+    if (field == null) {
+      return null;
+    }
+    MessageValue message = new MessageValue(plan);
+    Map<String, Field> valueAsMap = field.getValueAsMap();
+    if (valueAsMap == null) {
+      valueAsMap = Collections.emptyMap();
+    }
+
+    for (FieldPlan f : plan.fields) {
+      Field mapField = valueAsMap.get(f.name);
+      if (f.map) {
+        setMapField(record, mapField, fieldPath, f, message);
+      } else if (f.repeated) {
+        setRepeatedField(record, mapField, fieldPath, f, message);
+      } else {
+        Object val;
+        if (valueAsMap.containsKey(f.name)) {
+          val = getValue(f, mapField, record, fieldPath + FORWARD_SLASH + f.name);
+        } else {
+          // record does not contain field, look up default value
+          if (!f.hasDefaultValue && !f.descriptor.isOptional()) {
+            throw new DataGeneratorException(Errors.PROTOBUF_04, record.getHeader().getSourceId(), f.defaultKey);
+          }
+          val = f.defaultValue;
+        }
+        if (val != null) {
+          message.set(f, val);
+        }
+      }
+    }
+
+    List<String> missingFields = null;
+    for (FieldPlan f : plan.required) {
+      if (message.values[f.slot] == null) {
+        if (missingFields == null) {
+          missingFields = new ArrayList<>();
+        }
+        missingFields.add(f.name);
+      }
+    }
+    if (missingFields != null) {
+      throw new UninitializedMessageException(missingFields);
+    }
+
+    // if record has unknown fields for this field path, handle it
+    if (plan.keepUnknownFields) {
+      String path = fieldPath.isEmpty() ? FORWARD_SLASH : fieldPath;
+      String attribute = record.getHeader().getAttribute(ProtobufTypeUtil.PROTOBUF_UNKNOWN_FIELDS_PREFIX + path);
+      if (attribute != null) {
+        try {
+          UnknownFieldSet.Builder unknownFieldBuilder = UnknownFieldSet.newBuilder();
+          unknownFieldBuilder.mergeDelimitedFrom(
+              new ByteArrayInputStream(
+                  org.apache.commons.codec.binary.Base64.decodeBase64(attribute.getBytes(StandardCharsets.UTF_8))
+              )
+          );
+          message.unknownFields = unknownFieldBuilder.build();
+        } catch (IOException e) {
+          throw new DataGeneratorException(Errors.PROTOBUF_05, e.toString(), e);
+        }
+      }
+    }
+    return message;
+  }
+
+  private static void setMapField(
+      Record record,
+      Field field,
+      String fieldPath,
+      FieldPlan f,
+      MessageValue message
+  ) throws DataGeneratorException {
+    MessagePlan entryPlan = f.messagePlan;
+    List<Object> entries = new ArrayList<>();
+    Map<String, Field> sdcMapField = field == null ? null : field.getValueAsMap();
+    if (sdcMapField != null) {
+      for (Map.Entry<String, Field> entry : sdcMapField.entrySet()) {
+        MessageValue entryMessage = new MessageValue(entryPlan);
+        entryMessage.set(entryPlan.key, getValue(entryPlan.key, Field.create(entry.getKey()), record, fieldPath));
+        Object value = getValue(entryPlan.value, entry.getValue(), record, fieldPath + FORWARD_SLASH + entry.getKey());
+        if (value != null) {
+          entryMessage.set(entryPlan.value, value);
+        }
+        entries.add(entryMessage);
+      }
+    }
+    message.values[f.slot] = entries;
+  }
+
+  private static void setRepeatedField(
+      Record record,
+      Field field,
+      String fieldPath,
+      FieldPlan f,
+      MessageValue message
+  ) throws DataGeneratorException {
+    List<Object> toReturn = new ArrayList<>();
+    List<Field> valueAsList = field == null ? null : field.getValueAsList();
+    if (valueAsList != null) {
+      // According to proto 2 and 3 language guide repeated fields can have 0 elements.
+      // Also null is treated as empty in case of json mappings so I guess we can ignore if it is null.
+      for (int i = 0; i < valueAsList.size(); i++) {
+        Object value;
+        if (f.message) {
+          value = toMessage(
+              record,
+              valueAsList.get(i),
+              fieldPath + FORWARD_SLASH + f.name + "[" + i + "]",
+              f.messagePlan
+          );
+        } else {
+          value = getValue(f, valueAsList.get(i), record, fieldPath + FORWARD_SLASH + f.name);
+        }
+        if (value != null) {
+          toReturn.add(value);
+        }
+      }
+    }
+    if (field != null) {
+      message.values[f.slot] = toReturn;
+    }
+  }
+
+  private static Object getValue(
+      FieldPlan f,
+      Field field,
+      Record record,
+      String protoFieldPath
+  ) throws DataGeneratorException {
+    Object value = null;
+    if (field == null || field.getValue() == null) {
+      return null;
+    }
+    try {
+      switch (f.descriptor.getJavaType()) {
+        case BOOLEAN:
+          value = field.getValueAsBoolean();
+          break;
+        case BYTE_STRING:
+          value = field.getValueAsByteArray();
+          break;
+        case DOUBLE:
+          value = field.getValueAsDouble();
+          break;
+        case ENUM:
+          value = f.enumNumbers.get(field.getValueAsString());
+          break;
+        case FLOAT:
+          value = field.getValueAsFloat();
+          break;
+        case INT:
+          value = field.getValueAsInteger();
+          break;
+        case LONG:
+          value = field.getValueAsLong();
+          break;
+        case STRING:
+          value = field.getValueAsString();
+          break;
+        case MESSAGE:
+          value = toMessage(record, field, protoFieldPath, f.messagePlan);
+          break;
+        default:
+          throw new DataGeneratorException(Errors.PROTOBUF_03, f.descriptor.getJavaType().name());
+      }
+    } catch (IllegalArgumentException e) {
+      throw new DataGeneratorException(Errors.PROTOBUF_11, field.getValue(), f.descriptor.getJavaType().name(), e);
+    }
+    return value;
+  }
+
+  private static final class MessagePlan {
+    private final boolean keepUnknownFields;
+    private FieldPlan[] fields;
+    private FieldPlan[] writeOrder;
+    private FieldPlan[] required;
+    // map entries only
+    private FieldPlan key;
+    private FieldPlan value;
+
+    private MessagePlan(Descriptors.Descriptor descriptor) {
+      // proto3 discards unknown fields
+      keepUnknownFields = descriptor.getFile().getSyntax() != Descriptors.FileDescriptor.Syntax.PROTO3;
+    }
+  }
+
+  private static final class FieldPlan {
+    private final Descriptors.FieldDescriptor descriptor;
+    private final String name;
+    private final int number;
+    private final int slot;
+    private final boolean repeated;
+    private final boolean map;
+    private final boolean message;
+    private final boolean packed;
+    // proto3 singular scalars holding their default value are not serialized
+    private final boolean implicitPresence;
+    private final Object implicitDefault;
+    private final String defaultKey;
+    private final boolean hasDefaultValue;
+    private final Object defaultValue;
+    private final Map<String, Integer> enumNumbers;
+    private MessagePlan messagePlan;
+    private int[] oneofSlots;
+
+    private FieldPlan(
+        Descriptors.Descriptor containingType,
+        Descriptors.FieldDescriptor descriptor,
+        int slot,
+        Map<String, Object> defaultValueMap
+    ) {
+      this.descriptor = descriptor;
+      this.slot = slot;
+      name = descriptor.getName();
+      number = descriptor.getNumber();
+      repeated = descriptor.isRepeated();
+      map = descriptor.isMapField();
+      message = descriptor.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE;
+      packed = descriptor.isPacked();
+      boolean proto3 = descriptor.getFile().getSyntax() == Descriptors.FileDescriptor.Syntax.PROTO3;
+      implicitPresence = proto3 && !repeated && !message && descriptor.getContainingOneof() == null;
+      implicitDefault = implicitPresence ? toValue(descriptor.getDefaultValue()) : null;
+      defaultKey = containingType.getFullName() + "." + name;
+      hasDefaultValue = defaultValueMap.containsKey(defaultKey);
+      defaultValue = toValue(defaultValueMap.get(defaultKey));
+      if (descriptor.getJavaType() == Descriptors.FieldDescriptor.JavaType.ENUM) {
+        enumNumbers = new HashMap<>();
+        for (Descriptors.EnumValueDescriptor value : descriptor.getEnumType().getValues()) {
+          enumNumbers.put(value.getName(), value.getNumber());
+        }
+      } else {
+        enumNumbers = null;
+      }
+    }
+
+    private static Object toValue(Object protobufValue) {
+      if (protobufValue instanceof Descriptors.EnumValueDescriptor) {
+        return ((Descriptors.EnumValueDescriptor) protobufValue).getNumber();
+      } else if (protobufValue instanceof ByteString) {
+        return ((ByteString) protobufValue).toByteArray();
+      }
+      return protobufValue;
+    }
+
+    private boolean isImplicitDefault(Object value) {
+      if (value instanceof byte[]) {
+        return Arrays.equals((byte[]) implicitDefault, (byte[]) value);
+      }
+      return value.equals(implicitDefault);
+    }
+
+    private int computeElementSizeNoTag(Object value) {
+      switch (descriptor.getType()) {
+        case DOUBLE:
+          return CodedOutputStream.computeDoubleSizeNoTag((Double) value);
+        case FLOAT:
+          return CodedOutputStream.computeFloatSizeNoTag((Float) value);
+        case INT64:
+          return CodedOutputStream.computeInt64SizeNoTag((Long) value);
+        case UINT64:
+          return CodedOutputStream.computeUInt64SizeNoTag((Long) value);
+        case INT32:
+          return CodedOutputStream.computeInt32SizeNoTag((Integer) value);
+        case FIXED64:
+          return CodedOutputStream.computeFixed64SizeNoTag((Long) value);
+        case FIXED32:
+          return CodedOutputStream.computeFixed32SizeNoTag((Integer) value);
+        case BOOL:
+          return CodedOutputStream.computeBoolSizeNoTag((Boolean) value);
+        case STRING:
+          return CodedOutputStream.computeStringSizeNoTag((String) value);
+        case BYTES:
+          return CodedOutputStream.computeByteArraySizeNoTag((byte[]) value);
+        case UINT32:
+          return CodedOutputStream.computeUInt32SizeNoTag((Integer) value);
+        case SFIXED32:
+          return CodedOutputStream.computeSFixed32SizeNoTag((Integer) value);
+        case SFIXED64:
+          return CodedOutputStream.computeSFixed64SizeNoTag((Long) value);
+        case SINT32:
+          return CodedOutputStream.computeSInt32SizeNoTag((Integer) value);
+        case SINT64:
+          return CodedOutputStream.computeSInt64SizeNoTag((Long) value);
+        case ENUM:
+          return CodedOutputStream.computeEnumSizeNoTag((Integer) value);
+        case GROUP:
+          return ((MessageValue) value).getSerializedSize();
+        case MESSAGE:
+          int size = ((MessageValue) value).getSerializedSize();
+          return CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+        default:
+          throw new IllegalStateException("Unexpected type " + descriptor.getType());
+      }
+    }
+
+    private int computeElementSize(Object value) {
+      int tagSize = CodedOutputStream.computeTagSize(number);
+      if (descriptor.getType() == Descriptors.FieldDescriptor.Type.GROUP) {
+        // start and end group tags
+        tagSize *= 2;
+      }
+      return tagSize + computeElementSizeNoTag(value);
+    }
+
+    private void writeElementNoTag(CodedOutputStream out, Object value) throws IOException {
+      switch (descriptor.getType()) {
+        case DOUBLE:
+          out.writeDoubleNoTag((Double) value);
+          break;
+        case FLOAT:
+          out.writeFloatNoTag((Float) value);
+          break;
+        case INT64:
+          out.writeInt64NoTag((Long) value);
+          break;
+        case UINT64:
+          out.writeUInt64NoTag((Long) value);
+          break;
+        case INT32:
+          out.writeInt32NoTag((Integer) value);
+          break;
+        case FIXED64:
+          out.writeFixed64NoTag((Long) value);
+          break;
+        case FIXED32:
+          out.writeFixed32NoTag((Integer) value);
+          break;
+        case BOOL:
+          out.writeBoolNoTag((Boolean) value);
+          break;
+        case STRING:
+          out.writeStringNoTag((String) value);
+          break;
+        case BYTES:
+          out.writeByteArrayNoTag((byte[]) value);
+          break;
+        case UINT32:
+          out.writeUInt32NoTag((Integer) value);
+          break;
+        case SFIXED32:
+          out.writeSFixed32NoTag((Integer) value);
+          break;
+        case SFIXED64:
+          out.writeSFixed64NoTag((Long) value);
+          break;
+        case SINT32:
+          out.writeSInt32NoTag((Integer) value);
+          break;
+        case SINT64:
+          out.writeSInt64NoTag((Long) value);
+          break;
+        case ENUM:
+          out.writeEnumNoTag((Integer) value);
+          break;
+        case GROUP:
+          ((MessageValue) value).writeTo(out);
+          break;
+        case MESSAGE:
+          out.writeUInt32NoTag(((MessageValue) value).getSerializedSize());
+          ((MessageValue) value).writeTo(out);
+          break;
+        default:
+          throw new IllegalStateException("Unexpected type " + descriptor.getType());
+      }
+    }
+
+    private void writeElement(CodedOutputStream out, Object value) throws IOException {
+      if (descriptor.getType() == Descriptors.FieldDescriptor.Type.GROUP) {
+        out.writeTag(number, WireFormat.WIRETYPE_START_GROUP);
+        writeElementNoTag(out, value);
+        out.writeTag(number, WireFormat.WIRETYPE_END_GROUP);
+      } else {
+        out.writeTag(number, descriptor.getLiteType().getWireType());
+        writeElementNoTag(out, value);
+      }
+    }
+  }
+
+  private static final class MessageValue {
+    private final MessagePlan plan;
+    private final Object[] values;
+    private UnknownFieldSet unknownFields;
+    private int serializedSize = -1;
+
+    private MessageValue(MessagePlan plan) {
+      this.plan = plan;
+      values = new Object[plan.fields.length];
+    }
+
+    private void set(FieldPlan field, Object value) {
+      if (field.oneofSlots != null) {
+        for (int slot : field.oneofSlots) {
+          values[slot] = null;
+        }
+      } else if (field.implicitPresence && field.isImplicitDefault(value)) {
+        // In proto3, setting a field to its default value is equivalent to clearing the field.
+        values[field.slot] = null;
+        return;
+      }
+      values[field.slot] = value;
+    }
+
+    private int getSerializedSize() {
+      if (serializedSize != -1) {
+        return serializedSize;
+      }
+      int size = 0;
+      for (FieldPlan field : plan.writeOrder) {
+        Object value = values[field.slot];
+        if (value == null) {
+          continue;
+        }
+        if (field.repeated) {
+          List<?> list = (List<?>) value;
+          if (field.packed) {
+            int dataSize = packedDataSize(field, list);
+            size += CodedOutputStream.computeTagSize(field.number) +
+                CodedOutputStream.computeUInt32SizeNoTag(dataSize) + dataSize;
+          } else {
+            for (Object element : list) {
+              size += field.computeElementSize(element);
+            }
+          }
+        } else {
+          size += field.computeElementSize(value);
+        }
+      }
+      if (unknownFields != null) {
+        size += unknownFields.getSerializedSize();
+      }
+      serializedSize = size;
+      return size;
+    }
+
+    private void writeTo(CodedOutputStream out) throws IOException {
+      for (FieldPlan field : plan.writeOrder) {
+        Object value = values[field.slot];
+        if (value == null) {
+          continue;
+        }
+        if (field.repeated) {
+          List<?> list = (List<?>) value;
+          if (field.packed) {
+            // a packed field that was set is written even without elements
+            out.writeTag(field.number, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(packedDataSize(field, list));
+            for (Object element : list) {
+              field.writeElementNoTag(out, element);
+            }
+          } else {
+            for (Object element : list) {
+              field.writeElement(out, element);
+            }
+          }
+        } else {
+          field.writeElement(out, value);
+        }
+      }
+      if (unknownFields != null) {
+        unknownFields.writeTo(out);
+      }
+    }
+
+    private static int packedDataSize(FieldPlan field, List<?> list) {
+      int dataSize = 0;
+      for (Object element : list) {
+        dataSize += field.computeElementSizeNoTag(element);
+      }
+      return dataSize;
+    }
+  }
+}
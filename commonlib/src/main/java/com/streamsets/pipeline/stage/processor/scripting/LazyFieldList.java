@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.processor.scripting;
+
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Script view of a LIST field. Elements are converted to script objects when they are first accessed and the field is
+ * only rebuilt on write back when the list or one of its elements changed.
+ */
+public class LazyFieldList extends AbstractList<Object> implements ScriptObjectFactory.FieldView {
+  private static final Object UNCONVERTED = new Object();
+
+  private final ScriptObjectFactory factory;
+  private final Record record;
+  private final Field field;
+  private final List<Field> fields;
+  private List<Object> values;
+  private boolean changed;
+  // Elements were added or removed, so they don't line up with the original fields anymore
+  private boolean resized;
+
+  @SuppressWarnings("unchecked")
+  LazyFieldList(ScriptObjectFactory factory, Record record, Field field) {
+    this.factory = factory;
+    this.record = record;
+    this.field = field;
+    this.fields = (List<Field>) field.getValue();
+  }
+
+  @Override
+  public Record getRecord() {
+    return record;
+  }
+
+  @Override
+  public int size() {
+    return (values != null) ? values.size() : fields.size();
+  }
+
+  @Override
+  public Object get(int index) {
+    if (values == null) {
+      values = new ArrayList<>(Collections.nCopies(fields.size(), UNCONVERTED));
+    }
+    Object value = values.get(index);
+    if (value == UNCONVERTED) {
+      value = factory.createLazyScriptObject(fields.get(index), record);
+      values.set(index, value);
+    }
+    return value;
+  }
+
+  @Override
+  public Object set(int index, Object element) {
+    Object previous = get(index);
+    values.set(index, element);
+    changed = true;
+    return previous;
+  }
+
+  @Override
+  public void add(int index, Object element) {
+    convertAll();
+    values.add(index, element);
+    changed = true;
+    resized = true;
+    modCount++;
+  }
+
+  @Override
+  public Object remove(int index) {
+    convertAll();
+    Object previous = values.remove(index);
+    changed = true;
+    resized = true;
+    modCount++;
+    return previous;
+  }
+
+  private void convertAll() {
+    for (int i = 0; i < size(); i++) {
+      get(i);
+    }
+    if (values == null) {
+      values = new ArrayList<>();
+    }
+  }
+
+  @Override
+  public Field toField(String path) {
+    if (values == null) {
+      return field;
+    }
+    List<Field> fieldList = new ArrayList<>(values.size());
+    boolean modified = changed;
+    for (int i = 0; i < values.size(); i++) {
+      Object value = values.get(i);
+      Field original = resized ? null : fields.get(i);
+      Field newField = (value == UNCONVERTED)
+          ? original
+          : factory.scriptToField(value, original, record, factory.composeArrayPath(path, i));
+      modified |= newField != original;
+      fieldList.add(newField);
+    }
+    return modified ? Field.create(fieldList) : field;
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.processor.scripting;
+
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Script view of a MAP or LIST_MAP field. Entries are converted to script objects when they are first accessed and
+ * the field is only rebuilt on write back when the map or one of its entries changed, untouched entries keep their
+ * original fields.
+ * <p/>
+ * The view reads the fields of the record it was created for, so a view kept in the script state across batches sees
+ * later changes made to that record.
+ */
+public class LazyFieldMap extends AbstractMap<String, Object>
+    implements ScriptObjectFactory.MapInfo, ScriptObjectFactory.FieldView {
+  private static final Object UNCONVERTED = new Object();
+
+  private final ScriptObjectFactory factory;
+  private final Record record;
+  private final Field field;
+  private final Map<String, Field> fields;
+  // Entries converted by get() while the map has not been modified or iterated
+  private final Map<String, Object> converted = new HashMap<>();
+  // All entries in order once the map has been modified or iterated
+  private LinkedHashMap<String, Object> entries;
+  private boolean changed;
+
+  @SuppressWarnings("unchecked")
+  LazyFieldMap(ScriptObjectFactory factory, Record record, Field field) {
+    this.factory = factory;
+    this.record = record;
+    this.field = field;
+    this.fields = (Map<String, Field>) field.getValue();
+  }
+
+  @Override
+  public boolean isListMap() {
+    return field.getType() == Field.Type.LIST_MAP;
+  }
+
+  @Override
+  public Record getRecord() {
+    return record;
+  }
+
+  @Override
+  public int size() {
+    return (entries != null) ? entries.size() : fields.size();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return (entries != null) ? entries.containsKey(key) : fields.containsKey(key);
+  }
+
+  @Override
+  public Object get(Object key) {
+    Object value;
+    if (entries != null) {
+      value = entries.get(key);
+      if (value == UNCONVERTED) {
+        value = factory.createLazyScriptObject(fields.get(key), record);
+        entries.put((String) key, value);
+      }
+    } else {
+      value = converted.get(key);
+      if (value == null && !converted.containsKey(key) && fields.containsKey(key)) {
+        value = factory.createLazyScriptObject(fields.get(key), record);
+        converted.put((String) key, value);
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    Object previous = get(key);
+    ensureEntries();
+    entries.put(key, value);
+    changed = true;
+    return previous;
+  }
+
+  @Override
+  public Object remove(Object key) {
+    Object previous = get(key);
+    ensureEntries();
+    if (entries.containsKey(key)) {
+      entries.remove(key);
+      changed = true;
+    }
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    entries = new LinkedHashMap<>();
+    changed = true;
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    ensureEntries();
+    for (Entry<String, Object> entry : entries.entrySet()) {
+      if (entry.getValue() == UNCONVERTED) {
+        entry.setValue(factory.createLazyScriptObject(fields.get(entry.getKey()), record));
+      }
+    }
+    return new EntrySet();
+  }
+
+  /**
+   * Entry set backed by the entries of the map, marks the map as changed only when an entry is set or removed through
+   * it, iterating alone keeps the original field on write back.
+   */
+  private class EntrySet extends AbstractSet<Entry<String, Object>> {
+    @Override
+    public int size() {
+      return entries.size();
+    }
+
+    @Override
+    public Iterator<Entry<String, Object>> iterator() {
+      final Iterator<Entry<String, Object>> iterator = entries.entrySet().iterator();
+      return new Iterator<Entry<String, Object>>() {
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+          return new ViewEntry(iterator.next());
+        }
+
+        @Override
+        public void remove() {
+          iterator.remove();
+          changed = true;
+        }
+      };
+    }
+  }
+
+  private class ViewEntry implements Entry<String, Object> {
+    private final Entry<String, Object> entry;
+
+    ViewEntry(Entry<String, Object> entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public String getKey() {
+      return entry.getKey();
+    }
+
+    @Override
+    public Object getValue() {
+      return entry.getValue();
+    }
+
+    @Override
+    public Object setValue(Object value) {
+      changed = true;
+      return entry.setValue(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return entry.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+      return entry.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return entry.toString();
+    }
+  }
+
+  private void ensureEntries() {
+    if (entries == null) {
+      entries = new LinkedHashMap<>();
+      for (String key : fields.keySet()) {
+        entries.put(key, converted.containsKey(key) ? converted.get(key) : UNCONVERTED);
+      }
+      converted.clear();
+    }
+  }
+
+  @Override
+  public Field toField(String path) {
+    Map<String, Object> values = (entries != null) ? entries : converted;
+    Map<String, Field> changedFields = new HashMap<>();
+    boolean modified = changed;
+    for (Entry<String, Object> entry : values.entrySet()) {
+      if (entry.getValue() != UNCONVERTED) {
+        Field original = fields.get(entry.getKey());
+        Field newField = factory.scriptToField(
+            entry.getValue(),
+            original,
+            record,
+            factory.composeMapPath(path, entry.getKey())
+        );
+        if (newField != original) {
+          changedFields.put(entry.getKey(), newField);
+          modified = true;
+        }
+      }
+    }
+    if (!modified) {
+      return field;
+    }
+
+    LinkedHashMap<String, Field> fieldMap = new LinkedHashMap<>();
+    for (String key : (entries != null) ? entries.keySet() : fields.keySet()) {
+      Field newField = changedFields.get(key);
+      fieldMap.put(key, (newField != null) ? newField : fields.get(key));
+    }
+    return isListMap() ? Field.createListMap(fieldMap) : Field.create(fieldMap);
+  }
+}
@@ -25,10 +25,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,6 +39,8 @@ public class ScriptObjectFactory {
 
   protected final ScriptEngine engine;
   protected final Stage.Context context;
+  // Views written back by the current getRecord() call, a view found twice is copied the second time
+  private final Set<FieldView> writtenViews = Collections.newSetFromMap(new IdentityHashMap<>());
 
   public ScriptObjectFactory(ScriptEngine engine, Stage.Context context) {
     this.engine = engine;
@@ -45,7 +50,7 @@ public class ScriptObjectFactory {
   public ScriptRecord createScriptRecord(Record record) {
     Object scriptValue = null;
     if (record.get() != null) {
-      scriptValue = fieldToScript(record.get());
+      scriptValue = createLazyScriptObject(record.get(), record);
     }
     return new ScriptRecord(record, scriptValue);
   }
@@ -53,8 +58,12 @@ public class ScriptObjectFactory {
   @SuppressWarnings("unchecked")
   public Record getRecord(ScriptRecord scriptRecord) {
     Record record = scriptRecord.record;
-    Field field = scriptToField(scriptRecord.value, record, "");
-    record.set(field);
+    try {
+      Field field = scriptToField(scriptRecord.value, record, "");
+      record.set(field);
+    } finally {
+      writtenViews.clear();
+    }
     // Update Record Header Attributes
     updateRecordHeader(scriptRecord.attributes, record);
     return record;
@@ -66,6 +75,20 @@ public class ScriptObjectFactory {
 
   }
 
+  /**
+   * Script object that is a view of a field of a record, see {@link LazyFieldMap} and {@link LazyFieldList}.
+   */
+  public interface FieldView {
+
+    public Record getRecord();
+
+    /**
+     * Returns the original field if neither the view nor any of its values changed, a new field otherwise.
+     */
+    public Field toField(String path);
+
+  }
+
   public interface ScriptFileRef {
     public InputStream getInputStream() throws IOException;
   }
@@ -112,6 +135,46 @@ public class ScriptObjectFactory {
     return elements;
   }
 
+  /**
+   * Returns the script object of the given view of a MAP or LIST_MAP field. Factories whose engine needs its own map
+   * type wrap the view here and unwrap it in {@link #getFieldView(Object)}.
+   */
+  protected Object createMapView(LazyFieldMap view) {
+    return view;
+  }
+
+  /**
+   * Returns the script object of the given view of a LIST field.
+   */
+  protected Object createArrayView(LazyFieldList view) {
+    return view;
+  }
+
+  /**
+   * Returns the view behind a script object created by this factory, null if it is not one.
+   */
+  protected FieldView getFieldView(Object scriptObject) {
+    return (scriptObject instanceof FieldView) ? (FieldView) scriptObject : null;
+  }
+
+  /**
+   * Converts a field to a script object. Maps and lists are returned as views that convert their values on access.
+   */
+  protected Object createLazyScriptObject(Field field, Record record) {
+    if (field == null || field.getValue() == null) {
+      return null;
+    }
+    switch (field.getType()) {
+      case MAP:
+      case LIST_MAP:
+        return createMapView(new LazyFieldMap(this, record, field));
+      case LIST:
+        return createArrayView(new LazyFieldList(this, record, field));
+      default:
+        return fieldToScript(field);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   protected Object fieldToScript(Field field) {
     Object scriptObject = null;
@@ -177,9 +240,48 @@ public class ScriptObjectFactory {
     }
   }
 
+  /**
+   * Converts a value of a view back to a field, reusing the original field if the value is the one that was converted
+   * from it.
+   */
+  Field scriptToField(Object scriptObject, Field original, Record record, String path) {
+    if (original != null && isUnchanged(scriptObject, original)) {
+      return original;
+    }
+    return scriptToField(scriptObject, record, path);
+  }
+
+  private boolean isUnchanged(Object scriptObject, Field original) {
+    Object value = original.getValue();
+    if (scriptObject instanceof ScriptFileRefImpl) {
+      return ((ScriptFileRefImpl) scriptObject).fileRef == value;
+    }
+    // Mutable values such as dates and byte arrays may have been changed in place
+    return scriptObject == value && (value == null || value instanceof String || value instanceof Boolean
+        || value instanceof Character || value instanceof Byte || value instanceof Short || value instanceof Integer
+        || value instanceof Long || value instanceof Float || value instanceof Double || value instanceof BigDecimal);
+  }
+
+  /**
+   * Writes back a view, returns null if the script object is not one. The fields of a view are only shared with the
+   * record it was created for and only the first time the view is found in the current getRecord() call, otherwise
+   * they are copied.
+   */
+  protected Field viewToField(Object scriptObject, Record record, String path) {
+    FieldView view = getFieldView(scriptObject);
+    if (view == null) {
+      return null;
+    }
+    Field field = view.toField(path);
+    return (view.getRecord() == record && writtenViews.add(view)) ? field : field.clone();
+  }
+
   @SuppressWarnings("unchecked")
   protected Field scriptToField(Object scriptObject, Record record, String path) {
-    Field field;
+    Field field = viewToField(scriptObject, record, path);
+    if (field != null) {
+      return field;
+    }
     if (scriptObject != null) {
       if (scriptObject instanceof Map) {
         Map<String, Object> scriptMap = (Map<String, Object>) scriptObject;
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.io.fileref;
+
+import com.google.common.collect.ImmutableSet;
+import com.streamsets.pipeline.api.OnRecordError;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.Stage;
+import com.streamsets.pipeline.config.ChecksumAlgorithm;
+import com.streamsets.pipeline.lib.hashing.HashingUtil;
+import com.streamsets.pipeline.sdk.ContextInfoCreator;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestFileRefTransfer {
+  private static final int FILE_SIZE = 1024 * 1024 + 123;
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private File testDir;
+  private File sourceFile;
+  private byte[] data;
+  private Stage.Context context;
+  private ExecutorService executor;
+
+  @Before
+  public void setup() throws Exception {
+    testDir = new File("target", UUID.randomUUID().toString());
+    testDir.mkdirs();
+    data = new byte[FILE_SIZE];
+    new Random().nextBytes(data);
+    sourceFile = new File(testDir, "source.bin");
+    Files.write(sourceFile.toPath(), data);
+    context = ContextInfoCreator.createTargetContext("", false, OnRecordError.TO_ERROR);
+    executor = FileRefTransfer.createExecutor();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    FileUtils.deleteQuietly(testDir);
+  }
+
+  private String md5() {
+    return HashingUtil.getHasher(HashingUtil.HashType.MD5).hashBytes(data).toString();
+  }
+
+  private LocalFileRef.Builder fileRefBuilder() {
+    return new LocalFileRef.Builder()
+        .filePath(sourceFile.getAbsolutePath())
+        .bufferSize(-1)
+        .totalSizeInBytes(FILE_SIZE);
+  }
+
+  private long transfer(
+      AbstractFileRef fileRef,
+      OutputStream os,
+      FileRefStreamCloseEventHandler handler,
+      long parallelTransferThreshold
+  ) throws IOException {
+    return new FileRefTransfer(
+        context,
+        fileRef,
+        os,
+        executor,
+        handler != null,
+        ChecksumAlgorithm.MD5,
+        handler,
+        CHUNK_SIZE,
+        parallelTransferThreshold
+    ).transfer();
+  }
+
+  private File transferToFile(
+      AbstractFileRef fileRef,
+      FileRefStreamCloseEventHandler handler,
+      long parallelTransferThreshold
+  ) throws IOException {
+    File target = new File(testDir, "target.bin");
+    try (OutputStream os = new FileOutputStream(target)) {
+      Assert.assertEquals(FILE_SIZE, transfer(fileRef, os, handler, parallelTransferThreshold));
+    }
+    return target;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> getGaugeMap() {
+    return (Map<String, Object>) context.getGauge(FileRefUtil.GAUGE_NAME).getValue();
+  }
+
+  @Test
+  public void testZeroCopyTransfer() throws Exception {
+    File target = transferToFile(fileRefBuilder().build(), null, Long.MAX_VALUE);
+    Assert.assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    Map<String, Object> gaugeMap = getGaugeMap();
+    Assert.assertEquals(1L, gaugeMap.get(FileRefUtil.COMPLETED_FILE_COUNT));
+    Assert.assertEquals("0 B", gaugeMap.get(FileRefUtil.REMAINING_BYTES));
+  }
+
+  @Test
+  public void testZeroCopyTransferToFileChannelProvider() throws Exception {
+    File target = new File(testDir, "target.bin");
+    try (FileOutputStream fos = new FileOutputStream(target)) {
+      ChannelProviderOutputStream os = new ChannelProviderOutputStream(fos, fos.getChannel());
+      Assert.assertEquals(FILE_SIZE, transfer(fileRefBuilder().build(), os, null, Long.MAX_VALUE));
+      // the transfer went to the channel, not through the stream
+      Assert.assertEquals(0, os.written);
+    }
+    Assert.assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+  }
+
+  private static class ChannelProviderOutputStream extends FilterOutputStream implements FileChannelProvider {
+    private final FileChannel channel;
+    private long written;
+
+    ChannelProviderOutputStream(OutputStream os, FileChannel channel) {
+      super(os);
+      this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      written++;
+      super.write(b);
+    }
+
+    @Override
+    public FileChannel getFileChannel() {
+      return channel;
+    }
+  }
+
+  @Test
+  public void testConcurrentTransfersShareExecutor() throws Exception {
+    ExecutorService callers = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<byte[]>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(callers.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws Exception {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            Record eventRecord = FileRefUtil.createAndInitWholeFileEventRecord(context);
+            transfer(fileRefBuilder().build(), os, new FileRefStreamCloseEventHandler(eventRecord), 0);
+            Assert.assertEquals(md5(), eventRecord.get("/" + FileRefUtil.WHOLE_FILE_CHECKSUM).getValueAsString());
+            return os.toByteArray();
+          }
+        }));
+      }
+      for (Future<byte[]> result : results) {
+        Assert.assertArrayEquals(data, result.get());
+      }
+    } finally {
+      callers.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSequentialTransferWithChecksum() throws Exception {
+    Record eventRecord = FileRefUtil.createAndInitWholeFileEventRecord(context);
+    File target = transferToFile(
+        fileRefBuilder().verifyChecksum(true).checksum(md5()).checksumAlgorithm(HashingUtil.HashType.MD5).build(),
+        new FileRefStreamCloseEventHandler(eventRecord),
+        Long.MAX_VALUE
+    );
+    Assert.assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    Assert.assertEquals(md5(), eventRecord.get("/" + FileRefUtil.WHOLE_FILE_CHECKSUM).getValueAsString());
+    Assert.assertEquals(1L, getGaugeMap().get(FileRefUtil.COMPLETED_FILE_COUNT));
+  }
+
+  @Test
+  public void testParallelPartsTransfer() throws Exception {
+    Record eventRecord = FileRefUtil.createAndInitWholeFileEventRecord(context);
+    File target = transferToFile(fileRefBuilder().build(), new FileRefStreamCloseEventHandler(eventRecord), 0);
+    Assert.assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    Assert.assertEquals(md5(), eventRecord.get("/" + FileRefUtil.WHOLE_FILE_CHECKSUM).getValueAsString());
+    Assert.assertEquals("0 B", getGaugeMap().get(FileRefUtil.REMAINING_BYTES));
+  }
+
+  @Test
+  public void testParallelPartsTransferToStream() throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    Assert.assertEquals(FILE_SIZE, transfer(fileRefBuilder().build(), os, null, 0));
+    Assert.assertArrayEquals(data, os.toByteArray());
+  }
+
+  @Test
+  public void testInputStreamOnlyFileRef() throws Exception {
+    AbstractFileRef fileRef = new AbstractFileRef(
+        ImmutableSet.<Class<? extends AutoCloseable>>of(InputStream.class),
+        Integer.MAX_VALUE,
+        true,
+        FILE_SIZE,
+        -1,
+        true,
+        md5(),
+        HashingUtil.HashType.MD5
+    ) {
+      @Override
+      @SuppressWarnings("unchecked")
+      protected <T extends AutoCloseable> T createInputStream(Class<T> streamClassType) throws IOException {
+        return (T) new FileInputStream(sourceFile);
+      }
+    };
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    Assert.assertEquals(FILE_SIZE, transfer(fileRef, os, null, 0));
+    Assert.assertArrayEquals(data, os.toByteArray());
+    Assert.assertEquals(1L, getGaugeMap().get(FileRefUtil.COMPLETED_FILE_COUNT));
+  }
+
+  @Test
+  public void testRateLimitedTransfer() throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    Assert.assertEquals(FILE_SIZE, transfer(fileRefBuilder().rateLimit(4 * FILE_SIZE).build(), os, null, 0));
+    Assert.assertArrayEquals(data, os.toByteArray());
+  }
+
+  @Test(expected = IOException.class)
+  public void testChecksumMismatch() throws Exception {
+    transferToFile(
+        fileRefBuilder().verifyChecksum(true).checksum(md5()).checksumAlgorithm(HashingUtil.HashType.SHA256).build(),
+        null,
+        Long.MAX_VALUE
+    );
+  }
+
+  @Test(expected = IOException.class)
+  public void testChecksumMismatchInParallelParts() throws Exception {
+    transferToFile(
+        fileRefBuilder().verifyChecksum(true).checksum(md5()).checksumAlgorithm(HashingUtil.HashType.SHA256).build(),
+        null,
+        0
+    );
+  }
+}
@@ -16,6 +16,9 @@
 package com.streamsets.pipeline.lib.parser.protobuf;
 
 import com.google.common.io.Resources;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Descriptors;
 import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.OnRecordError;
 import com.streamsets.pipeline.api.Record;
@@ -28,7 +31,9 @@ import com.streamsets.pipeline.lib.parser.DataParserFormat;
 import com.streamsets.pipeline.lib.parser.Errors;
 import com.streamsets.pipeline.lib.util.PersonProto;
 import com.streamsets.pipeline.lib.util.ProtobufConstants;
+import com.streamsets.pipeline.lib.util.ProtobufFieldReader;
 import com.streamsets.pipeline.lib.util.ProtobufTestUtil;
+import com.streamsets.pipeline.lib.util.ProtobufTypeUtil;
 import com.streamsets.pipeline.sdk.ContextInfoCreator;
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
@@ -37,11 +42,14 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -159,6 +167,42 @@ public class TestProtobufDataParser {
     }
   }
 
+  @Test(expected = IOException.class)
+  public void testDeclaredSizeWithoutMaxObjectLength() throws Exception {
+    FileInputStream fin = new FileInputStream(Resources.getResource("Employee.desc").getPath());
+    DescriptorProtos.FileDescriptorSet set = DescriptorProtos.FileDescriptorSet.parseFrom(fin);
+    Map<String, Set<Descriptors.FileDescriptor>> fileDescriptorDependentsMap = new HashMap<>();
+    Map<String, Descriptors.FileDescriptor> fileDescriptorMap = new HashMap<>();
+    Map<String, Set<Descriptors.FieldDescriptor>> typeToExtensionMap = new HashMap<>();
+    ProtobufTypeUtil.getAllFileDescriptors(set, fileDescriptorDependentsMap, fileDescriptorMap);
+    Map<String, Object> defaultValueMap = new HashMap<>();
+    ProtobufTypeUtil.populateDefaultsAndExtensions(fileDescriptorMap, typeToExtensionMap, defaultValueMap);
+    Descriptors.Descriptor md =
+        ProtobufTypeUtil.getDescriptor(set, fileDescriptorMap, "Employee.desc", "util.Employee");
+
+    // a message claiming to be 1GB long followed by a few bytes
+    ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+    CodedOutputStream out = CodedOutputStream.newInstance(bOut);
+    out.writeUInt32NoTag(1 << 30);
+    out.writeRawBytes(new byte[] {10, 3, 'a', 'b', 'c'});
+    out.flush();
+
+    DataParser parser = new ProtobufDataParser(
+        getContext(),
+        "Employee",
+        md,
+        typeToExtensionMap,
+        ProtobufTestUtil.createExtensionRegistry(typeToExtensionMap),
+        ProtobufFieldReader.create(md, typeToExtensionMap),
+        new ByteArrayInputStream(bOut.toByteArray()),
+        "0",
+        -1,
+        true
+    );
+    // fails on the truncated message instead of allocating a buffer of the declared size
+    parser.parse();
+  }
+
   public DataParser getDataParser(String offset, String protoFile, String messageType) throws IOException, DataParserException {
     return getDataParserFactory(protoFile, messageType)
         .getParser(
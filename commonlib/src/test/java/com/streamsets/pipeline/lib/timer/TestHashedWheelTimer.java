@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.timer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class TestHashedWheelTimer {
+  private HashedWheelTimer timer;
+
+  @Before
+  public void setUp() {
+    timer = new HashedWheelTimer("test", 10, TimeUnit.MILLISECONDS, 8);
+  }
+
+  @After
+  public void tearDown() {
+    timer.stop();
+  }
+
+  @Test
+  public void testExpire() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    HashedWheelTimer.Timeout timeout = timer.newTimeout(latch::countDown);
+    long start = System.nanoTime();
+    timeout.schedule(50, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(timeout.isPending());
+    Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 40);
+    Assert.assertFalse(timeout.isPending());
+    Assert.assertEquals(0, timer.getPendingCount());
+    Assert.assertEquals(1, timer.getScheduledCount());
+    Assert.assertEquals(1, timer.getExpiredCount());
+  }
+
+  @Test
+  public void testLongerThanWheel() throws Exception {
+    // the wheel turns every 80 ms
+    CountDownLatch latch = new CountDownLatch(1);
+    long start = System.nanoTime();
+    timer.newTimeout(latch::countDown).schedule(300, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 290);
+  }
+
+  @Test
+  public void testReschedule() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    HashedWheelTimer.Timeout timeout = timer.newTimeout(runs::incrementAndGet);
+    timeout.schedule(50, TimeUnit.MILLISECONDS);
+    timeout.schedule(400, TimeUnit.MILLISECONDS);
+    Thread.sleep(200);
+    Assert.assertEquals(0, runs.get());
+    Assert.assertTrue(timeout.isPending());
+    Thread.sleep(600);
+    Assert.assertEquals(1, runs.get());
+
+    // reused once expired
+    timeout.schedule(10, TimeUnit.MILLISECONDS);
+    Thread.sleep(200);
+    Assert.assertEquals(2, runs.get());
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    HashedWheelTimer.Timeout timeout = timer.newTimeout(runs::incrementAndGet);
+    timeout.schedule(50, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(timeout.cancel());
+    Assert.assertFalse(timeout.cancel());
+    Thread.sleep(200);
+    Assert.assertEquals(0, runs.get());
+    Assert.assertEquals(0, timer.getPendingCount());
+    Assert.assertEquals(1, timer.getCancelledCount());
+  }
+
+  @Test
+  public void testFailingTask() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    timer.newTimeout(() -> {
+      throw new RuntimeException("fail");
+    }).schedule(10, TimeUnit.MILLISECONDS);
+    timer.newTimeout(latch::countDown).schedule(50, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testManyTimeouts() throws Exception {
+    int count = 10000;
+    AtomicIntegerArray runs = new AtomicIntegerArray(count);
+    CountDownLatch latch = new CountDownLatch(count);
+    List<HashedWheelTimer.Timeout> timeouts = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final int index = i;
+      timeouts.add(timer.newTimeout(() -> {
+        runs.incrementAndGet(index);
+        latch.countDown();
+      }));
+    }
+    Random random = new Random(1234);
+    for (int round = 0; round < 3; round++) {
+      for (HashedWheelTimer.Timeout timeout : timeouts) {
+        timeout.schedule(100 + random.nextInt(200), TimeUnit.MILLISECONDS);
+      }
+    }
+    Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals(1, runs.get(i));
+    }
+    Assert.assertEquals(0, timer.getPendingCount());
+    Assert.assertEquals(3 * count, timer.getScheduledCount());
+    Assert.assertEquals(count, timer.getExpiredCount());
+  }
+
+  @Test
+  public void testIdleTimer() throws Exception {
+    // the ticks the timer slept through don't make a new timeout expire early
+    Thread.sleep(300);
+    CountDownLatch latch = new CountDownLatch(1);
+    long start = System.nanoTime();
+    timer.newTimeout(latch::countDown).schedule(100, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+  }
+
+}
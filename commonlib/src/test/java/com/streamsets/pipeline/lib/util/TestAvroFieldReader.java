@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.util;
+
+import com.google.common.collect.ImmutableMap;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.sdk.RecordCreator;
+import com.streamsets.pipeline.stage.common.HeaderAttributeConstants;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TestAvroFieldReader {
+
+  static final String SCHEMA = "{\"type\": \"record\", \"name\": \"Person\", \"fields\": [" +
+      "{\"name\": \"name\", \"type\": \"string\"}," +
+      "{\"name\": \"age\", \"type\": \"int\"}," +
+      "{\"name\": \"id\", \"type\": \"long\"}," +
+      "{\"name\": \"score\", \"type\": \"double\"}," +
+      "{\"name\": \"weight\", \"type\": \"float\"}," +
+      "{\"name\": \"active\", \"type\": \"boolean\"}," +
+      "{\"name\": \"photo\", \"type\": \"bytes\"}," +
+      "{\"name\": \"hash\", \"type\": {\"type\": \"fixed\", \"name\": \"Hash\", \"size\": 2}}," +
+      "{\"name\": \"color\", \"type\": {\"type\": \"enum\", \"name\": \"Color\", \"symbols\": [\"RED\", \"BLUE\"]}}," +
+      "{\"name\": \"nickname\", \"type\": [\"null\", \"string\"]}," +
+      "{\"name\": \"email\", \"type\": [\"null\", \"string\"]}," +
+      "{\"name\": \"code\", \"type\": [\"int\", \"string\", \"null\"]}," +
+      "{\"name\": \"tags\", \"type\": {\"type\": \"array\", \"items\": [\"null\", \"string\"]}}," +
+      "{\"name\": \"phones\", \"type\": {\"type\": \"map\", \"values\": \"long\"}}," +
+      "{\"name\": \"birthday\", \"type\": {\"type\": \"int\", \"logicalType\": \"date\"}}," +
+      "{\"name\": \"balance\", \"type\": " +
+          "{\"type\": \"bytes\", \"logicalType\": \"decimal\", \"precision\": 10, \"scale\": 2}}," +
+      "{\"name\": \"created\", \"type\": {\"type\": \"long\", \"logicalType\": \"timestamp-millis\"}}," +
+      "{\"name\": \"friend\", \"type\": [\"null\", \"Person\"]}" +
+      "]}";
+
+  static GenericRecord createPerson(Schema schema, String name, GenericRecord friend) {
+    GenericRecord person = new GenericData.Record(schema);
+    person.put("name", name);
+    person.put("age", 31);
+    person.put("id", 1234567890123L);
+    person.put("score", 9.5);
+    person.put("weight", 70.5f);
+    person.put("active", true);
+    person.put("photo", ByteBuffer.wrap(new byte[]{1, 2, 3}));
+    person.put("hash", new GenericData.Fixed(schema.getField("hash").schema(), new byte[]{4, 5}));
+    person.put("color", new GenericData.EnumSymbol(schema.getField("color").schema(), "BLUE"));
+    person.put("nickname", null);
+    person.put("email", name + "@streamsets.com");
+    person.put("code", "a1");
+    person.put("tags", Arrays.asList("a", null, "b"));
+    person.put("phones", ImmutableMap.of("home", 5551234L, "work", 5554321L));
+    person.put("birthday", 17000);
+    person.put("balance", ByteBuffer.wrap(new BigDecimal("1234.56").unscaledValue().toByteArray()));
+    person.put("created", 1500000000000L);
+    person.put("friend", friend);
+    return person;
+  }
+
+  static byte[] encode(Schema schema, GenericRecord... records) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(schema);
+    for (GenericRecord record : records) {
+      writer.write(record, encoder);
+    }
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  private static void assertSameHeaderAttributes(Record expected, Record actual) {
+    Assert.assertEquals(expected.getHeader().getAttributeNames(), actual.getHeader().getAttributeNames());
+    for (String name : expected.getHeader().getAttributeNames()) {
+      Assert.assertEquals(expected.getHeader().getAttribute(name), actual.getHeader().getAttribute(name));
+    }
+  }
+
+  @Test
+  public void testSameAsGenericConversion() throws Exception {
+    Schema schema = new Schema.Parser().parse(SCHEMA);
+    byte[] data = encode(
+        schema,
+        createPerson(schema, "john", createPerson(schema, "jane", null)),
+        createPerson(schema, "joe", null)
+    );
+
+    BinaryDecoder genericDecoder = DecoderFactory.get().binaryDecoder(data, null);
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(data, null);
+    GenericDatumReader<GenericRecord> genericReader = new GenericDatumReader<>(schema);
+    AvroFieldReader reader = AvroFieldReader.forSchema(schema);
+    for (int i = 0; i < 2; i++) {
+      Record expected = RecordCreator.create();
+      GenericRecord genericRecord = genericReader.read(null, genericDecoder);
+      Field expectedField = AvroTypeUtil.avroToSdcField(expected, schema, genericRecord);
+
+      Record actual = RecordCreator.create();
+      Field actualField = reader.read(actual, decoder);
+
+      Assert.assertEquals(expectedField, actualField);
+      assertSameHeaderAttributes(expected, actual);
+    }
+    Assert.assertTrue(decoder.isEnd());
+  }
+
+  @Test
+  public void testUnionTypeIndexes() throws Exception {
+    Schema schema = new Schema.Parser().parse(SCHEMA);
+    byte[] data = encode(schema, createPerson(schema, "john", createPerson(schema, "jane", null)));
+
+    Record record = RecordCreator.create();
+    Field field = AvroFieldReader.forSchema(schema).read(record, DecoderFactory.get().binaryDecoder(data, null));
+
+    Assert.assertEquals("1", record.getHeader().getAttribute(AvroTypeUtil.AVRO_UNION_TYPE_INDEX_PREFIX + "/email"));
+    Assert.assertEquals("1", record.getHeader().getAttribute(AvroTypeUtil.AVRO_UNION_TYPE_INDEX_PREFIX + "/code"));
+    Assert.assertEquals("1", record.getHeader().getAttribute(AvroTypeUtil.AVRO_UNION_TYPE_INDEX_PREFIX + "/tags[0]"));
+    Assert.assertNull(record.getHeader().getAttribute(AvroTypeUtil.AVRO_UNION_TYPE_INDEX_PREFIX + "/tags[1]"));
+    Assert.assertEquals(
+        "1",
+        record.getHeader().getAttribute(AvroTypeUtil.AVRO_UNION_TYPE_INDEX_PREFIX + "/friend/email")
+    );
+    // null values of unions of null and the actual type are typed and don't get the index
+    Assert.assertNull(record.getHeader().getAttribute(AvroTypeUtil.AVRO_UNION_TYPE_INDEX_PREFIX + "/nickname"));
+    Field nickname = field.getValueAsMap().get("nickname");
+    Assert.assertEquals(Field.Type.STRING, nickname.getType());
+    Assert.assertNull(nickname.getValue());
+
+    Field balance = field.getValueAsMap().get("balance");
+    Assert.assertEquals(Field.Type.DECIMAL, balance.getType());
+    Assert.assertEquals(new BigDecimal("1234.56"), balance.getValueAsDecimal());
+    Assert.assertEquals("2", balance.getAttribute(HeaderAttributeConstants.ATTR_SCALE));
+  }
+
+  @Test
+  public void testSkipWithoutRecord() throws Exception {
+    Schema schema = new Schema.Parser().parse(SCHEMA);
+    byte[] data = encode(schema, createPerson(schema, "john", null));
+
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(data, null);
+    Field field = AvroFieldReader.forSchema(schema).read(null, decoder);
+    Assert.assertEquals("john", field.getValueAsMap().get("name").getValueAsString());
+    Assert.assertTrue(decoder.isEnd());
+  }
+
+  @Test
+  public void testCachedBySchema() throws Exception {
+    Schema schema = new Schema.Parser().parse(SCHEMA);
+    AvroFieldReader reader = AvroFieldReader.forSchema(schema);
+    Assert.assertSame(reader, AvroFieldReader.forSchema(new Schema.Parser().parse(SCHEMA)));
+    Assert.assertEquals(schema.toString(), reader.getSchemaString());
+    Assert.assertNotSame(reader, AvroFieldReader.forSchema(Schema.createArray(schema)));
+  }
+
+  @Test
+  public void testInvalidLogicalTypeFailsOnValue() throws Exception {
+    Schema schema = new Schema.Parser().parse(
+        "{\"type\": \"record\", \"name\": \"r\", \"fields\": [" +
+        "{\"name\": \"d\", \"type\": [\"null\", {\"type\": \"string\", \"logicalType\": \"date\"}]}]}"
+    );
+    AvroFieldReader reader = AvroFieldReader.forSchema(schema);
+    GenericRecord nullValue = new GenericData.Record(schema);
+    Field field = reader.read(RecordCreator.create(), DecoderFactory.get().binaryDecoder(encode(schema, nullValue), null));
+    Assert.assertEquals(Collections.singleton("d"), field.getValueAsMap().keySet());
+
+    GenericRecord value = new GenericData.Record(schema);
+    value.put("d", "2017-01-01");
+    try {
+      reader.read(RecordCreator.create(), DecoderFactory.get().binaryDecoder(encode(schema, value), null));
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.util;
+
+import com.google.common.collect.ImmutableList;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.lib.generator.DataGeneratorException;
+import com.streamsets.pipeline.lib.generator.avro.Errors;
+import com.streamsets.pipeline.sdk.RecordCreator;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TestAvroFieldWriter {
+
+  private static byte[] writeGeneric(Record record, Schema schema, Map<String, Object> defaults) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    new GenericDatumWriter<>(schema).write(AvroTypeUtil.sdcRecordToAvro(record, schema, defaults), encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  private static byte[] write(Record record, Schema schema, Map<String, Object> defaults) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    AvroFieldWriter.forSchema(schema).write(record, defaults, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  private static Record readRecord(Schema schema, byte[] data) throws Exception {
+    Record record = RecordCreator.create();
+    record.set(AvroFieldReader.forSchema(schema).read(record, DecoderFactory.get().binaryDecoder(data, null)));
+    return record;
+  }
+
+  @Test
+  public void testSameAsGenericWriter() throws Exception {
+    Schema schema = new Schema.Parser().parse(TestAvroFieldReader.SCHEMA);
+    byte[] data = TestAvroFieldReader.encode(
+        schema,
+        TestAvroFieldReader.createPerson(schema, "john", TestAvroFieldReader.createPerson(schema, "jane", null))
+    );
+    Record record = readRecord(schema, data);
+    Map<String, Object> defaults = AvroTypeUtil.getDefaultValuesFromSchema(schema, new HashSet<String>());
+
+    Assert.assertArrayEquals(data, write(record, schema, defaults));
+    Assert.assertArrayEquals(writeGeneric(record, schema, defaults), write(record, schema, defaults));
+  }
+
+  @Test
+  public void testRecordWithoutUnionTypeIndexes() throws Exception {
+    Schema schema = new Schema.Parser().parse(
+        "{\"type\": \"record\", \"name\": \"r\", \"fields\": [" +
+        "{\"name\": \"a\", \"type\": [\"null\", \"string\"]}," +
+        "{\"name\": \"b\", \"type\": [\"int\", \"string\"]}," +
+        "{\"name\": \"c\", \"type\": [\"null\", \"long\"]}," +
+        "{\"name\": \"d\", \"type\": {\"type\": \"array\", \"items\": [\"string\", \"null\"]}}," +
+        "{\"name\": \"e\", \"type\": \"int\", \"default\": 7}" +
+        "]}"
+    );
+    LinkedHashMap<String, Field> map = new LinkedHashMap<>();
+    map.put("a", Field.create("a"));
+    map.put("b", Field.create("b"));
+    map.put("c", Field.create(Field.Type.LONG, null));
+    map.put("d", Field.create(ImmutableList.of(Field.create("x"), Field.create(Field.Type.STRING, null))));
+    Record record = RecordCreator.create();
+    record.set(Field.createListMap(map));
+    Map<String, Object> defaults = AvroTypeUtil.getDefaultValuesFromSchema(schema, new HashSet<String>());
+
+    byte[] data = write(record, schema, defaults);
+    Assert.assertArrayEquals(writeGeneric(record, schema, defaults), data);
+
+    Map<String, Field> read = readRecord(schema, data).get().getValueAsMap();
+    Assert.assertEquals("b", read.get("b").getValueAsString());
+    Assert.assertNull(read.get("c").getValue());
+    Assert.assertEquals(7, read.get("e").getValueAsInteger());
+  }
+
+  @Test
+  public void testMissingFieldWithoutDefault() throws Exception {
+    Schema schema = new Schema.Parser().parse(
+        "{\"type\": \"record\", \"name\": \"r\", \"fields\": [{\"name\": \"a\", \"type\": \"string\"}]}"
+    );
+    Record record = RecordCreator.create();
+    record.set(Field.create(new HashMap<String, Field>()));
+    try {
+      write(record, schema, new HashMap<String, Object>());
+      Assert.fail();
+    } catch (DataGeneratorException e) {
+      Assert.assertEquals(Errors.AVRO_GENERATOR_00, e.getErrorCode());
+    }
+
+    record.set("/a", Field.create(Field.Type.STRING, null));
+    try {
+      write(record, schema, new HashMap<String, Object>());
+      Assert.fail();
+    } catch (DataGeneratorException e) {
+      Assert.assertEquals(Errors.AVRO_GENERATOR_01, e.getErrorCode());
+    }
+  }
+}
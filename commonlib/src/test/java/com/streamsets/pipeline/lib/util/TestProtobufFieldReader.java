@@ -0,0 +1,258 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.util;
+
+import com.google.common.io.Resources;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.UninitializedMessageException;
+import com.google.protobuf.WireFormat;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.sdk.RecordCreator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TestProtobufFieldReader {
+
+  private final Map<String, Set<Descriptors.FileDescriptor>> fileDescriptorDependentsMap = new HashMap<>();
+  private final Map<String, Descriptors.FileDescriptor> fileDescriptorMap = new HashMap<>();
+  private final Map<String, Object> defaultValueMap = new HashMap<>();
+  private final Map<String, Set<Descriptors.FieldDescriptor>> typeToExtensionMap = new HashMap<>();
+  private Descriptors.Descriptor md;
+  private ExtensionRegistry extensionRegistry;
+
+  @Before
+  public void setUp() throws Exception {
+    FileInputStream fin = new FileInputStream(Resources.getResource("Employee.desc").getPath());
+    DescriptorProtos.FileDescriptorSet set = DescriptorProtos.FileDescriptorSet.parseFrom(fin);
+    ProtobufTypeUtil.getAllFileDescriptors(set, fileDescriptorDependentsMap, fileDescriptorMap);
+    ProtobufTypeUtil.populateDefaultsAndExtensions(fileDescriptorMap, typeToExtensionMap, defaultValueMap);
+    md = ProtobufTypeUtil.getDescriptor(set, fileDescriptorMap, "Employee.desc", "util.Employee");
+    extensionRegistry = ProtobufTestUtil.createExtensionRegistry(typeToExtensionMap);
+  }
+
+  private Record readDelimited(ProtobufFieldReader reader, CodedInputStream in) throws Exception {
+    int limit = in.pushLimit(in.readRawVarint32());
+    Record record = RecordCreator.create();
+    record.set(reader.read(record, in));
+    in.popLimit(limit);
+    return record;
+  }
+
+  private Record readWithDynamicMessage(
+      Descriptors.Descriptor descriptor,
+      ExtensionRegistry registry,
+      byte[] data
+  ) throws Exception {
+    DynamicMessage.Builder builder = DynamicMessage.newBuilder(descriptor);
+    builder.mergeFrom(data, registry);
+    Record record = RecordCreator.create();
+    record.set(ProtobufTypeUtil.protobufToSdcField(record, "", descriptor, typeToExtensionMap, builder.build()));
+    return record;
+  }
+
+  private void assertSameRecord(Record expected, Record actual) {
+    Assert.assertEquals(expected.get(), actual.get());
+    Assert.assertEquals(expected.getHeader().getAttributeNames(), actual.getHeader().getAttributeNames());
+    for (String name : expected.getHeader().getAttributeNames()) {
+      Assert.assertEquals(expected.getHeader().getAttribute(name), actual.getHeader().getAttribute(name));
+    }
+  }
+
+  @Test
+  public void testSameAsDynamicMessage() throws Exception {
+    ProtobufFieldReader reader = ProtobufFieldReader.create(md, typeToExtensionMap);
+    byte[] data = ProtobufTestUtil.getProtoBufData();
+    List<DynamicMessage> messages = ProtobufTestUtil.getMessages(md, extensionRegistry, data);
+
+    CodedInputStream in = CodedInputStream.newInstance(data);
+    for (int i = 0; i < messages.size(); i++) {
+      Record record = readDelimited(reader, in);
+      ProtobufTestUtil.checkProtobufRecords(record.get(), i);
+      ProtobufTestUtil.checkProtobufRecordsForExtensions(record.get(), i);
+      ProtobufTestUtil.checkRecordForUnknownFields(record, i);
+
+      Record expected = RecordCreator.create();
+      expected.set(ProtobufTypeUtil.protobufToSdcField(expected, "", md, typeToExtensionMap, messages.get(i)));
+      assertSameRecord(expected, record);
+    }
+    Assert.assertTrue(in.isAtEnd());
+
+    // concatenated messages are merged, singular message fields included
+    ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+    messages.get(0).writeTo(bOut);
+    messages.get(1).writeTo(bOut);
+    messages.get(2).writeTo(bOut);
+    data = bOut.toByteArray();
+    Record record = RecordCreator.create();
+    record.set(reader.read(record, CodedInputStream.newInstance(data)));
+    assertSameRecord(readWithDynamicMessage(md, extensionRegistry, data), record);
+    Assert.assertEquals(2, record.get("/engineer/person/email").getValueAsList().size());
+    Assert.assertEquals("1", record.get("/exec/employeeId").getValueAsString());
+  }
+
+  @Test
+  public void testProtobuf3() throws Exception {
+    FileInputStream fin = new FileInputStream(Resources.getResource("TestRecordProtobuf3.desc").getPath());
+    DescriptorProtos.FileDescriptorSet set = DescriptorProtos.FileDescriptorSet.parseFrom(fin);
+    Map<String, Descriptors.FileDescriptor> fileDescriptors = new HashMap<>();
+    ProtobufTypeUtil.getAllFileDescriptors(set, new HashMap<>(), fileDescriptors);
+    Descriptors.Descriptor descriptor =
+        ProtobufTypeUtil.getDescriptor(set, fileDescriptors, "TestRecordProtobuf3.desc", "TestRecord");
+    ProtobufFieldReader reader = ProtobufFieldReader.create(descriptor, typeToExtensionMap);
+
+    // oneof, map and packed repeated fields
+    byte[] data = Files.readAllBytes(Paths.get(Resources.getResource("TestProtobuf3NoDelimiter.ser").getPath()));
+    Record record = RecordCreator.create();
+    record.set(reader.read(record, CodedInputStream.newInstance(data)));
+    assertSameRecord(readWithDynamicMessage(descriptor, null, data), record);
+    Assert.assertEquals("Adam", record.get("/first_name").getValueAsString());
+    Assert.assertEquals("", record.get("/full_name").getValue());
+    Assert.assertEquals(2, record.get("/samples").getValueAsList().size());
+    Assert.assertEquals("earth", record.get("/test_map/bye").getValueAsString());
+
+    // the last member of a oneof wins, map entries with default values are dropped, samples is not packed
+    ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+    CodedOutputStream out = CodedOutputStream.newInstance(bOut);
+    out.writeString(1, "Adam");
+    out.writeString(2, "Adam Smith");
+    out.writeTag(3, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    out.writeUInt32NoTag(CodedOutputStream.computeStringSize(1, "hello") + CodedOutputStream.computeStringSize(2, ""));
+    out.writeString(1, "hello");
+    out.writeString(2, "");
+    out.writeInt32(4, 3);
+    out.writeInt32(4, 4);
+    out.writeInt64(99, 7);
+    out.flush();
+    data = bOut.toByteArray();
+
+    record = RecordCreator.create();
+    record.set(reader.read(record, CodedInputStream.newInstance(data)));
+    assertSameRecord(readWithDynamicMessage(descriptor, null, data), record);
+    Assert.assertEquals("", record.get("/first_name").getValue());
+    Assert.assertEquals("Adam Smith", record.get("/full_name").getValueAsString());
+    Assert.assertTrue(record.get("/test_map").getValueAsMap().isEmpty());
+    Assert.assertEquals(4, record.get("/samples[1]").getValueAsInteger());
+    // proto3 discards unknown fields
+    Assert.assertTrue(record.getHeader().getAttributeNames().isEmpty());
+  }
+
+  @Test
+  public void testUnknownEnumValue() throws Exception {
+    Descriptors.Descriptor descriptor = fileDescriptorMap.get("Person.proto").findMessageTypeByName("Person");
+    ProtobufFieldReader reader = ProtobufFieldReader.create(descriptor, typeToExtensionMap);
+
+    ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+    CodedOutputStream out = CodedOutputStream.newInstance(bOut);
+    out.writeString(1, "John");
+    out.writeInt32(2, 1);
+    // phone with an enum value that is not defined by PhoneType
+    out.writeTag(4, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    out.writeUInt32NoTag(CodedOutputStream.computeStringSize(1, "555") + CodedOutputStream.computeEnumSize(2, 7));
+    out.writeString(1, "555");
+    out.writeEnum(2, 7);
+    // singular fields occurring more than once, the last one wins
+    out.writeString(1, "Jane");
+    out.writeInt32(2, 2);
+    out.flush();
+    byte[] data = bOut.toByteArray();
+
+    Record record = RecordCreator.create();
+    record.set(reader.read(record, CodedInputStream.newInstance(data)));
+    assertSameRecord(readWithDynamicMessage(descriptor, null, data), record);
+    Assert.assertEquals("Jane", record.get("/name").getValueAsString());
+    Assert.assertEquals("HOME", record.get("/phone[0]/type").getValueAsString());
+    Assert.assertNotNull(record.getHeader().getAttribute(ProtobufTypeUtil.PROTOBUF_UNKNOWN_FIELDS_PREFIX + "[0]"));
+  }
+
+  @Test
+  public void testMissingRequiredFields() throws Exception {
+    Descriptors.Descriptor descriptor = fileDescriptorMap.get("Person.proto").findMessageTypeByName("Person");
+    ProtobufFieldReader reader = ProtobufFieldReader.create(descriptor, typeToExtensionMap);
+    byte[] data = PersonProto.Person.newBuilder()
+        .setName("John")
+        .addPhone(PersonProto.Person.PhoneNumber.newBuilder().buildPartial())
+        .buildPartial()
+        .toByteArray();
+
+    List<String> expected = null;
+    try {
+      DynamicMessage.newBuilder(descriptor).mergeFrom(data).build();
+      Assert.fail();
+    } catch (UninitializedMessageException e) {
+      expected = e.getMissingFields();
+    }
+    try {
+      reader.read(RecordCreator.create(), CodedInputStream.newInstance(data));
+      Assert.fail();
+    } catch (UninitializedMessageException e) {
+      Assert.assertEquals(expected, e.getMissingFields());
+    }
+  }
+
+  @Test
+  @Ignore("benchmark, run manually")
+  public void benchmarkRead() throws Exception {
+    int warmUpRounds = 20000;
+    int rounds = 100000;
+    ProtobufFieldReader reader = ProtobufFieldReader.create(md, typeToExtensionMap);
+    byte[] data = ProtobufTestUtil.getProtoBufData();
+    int messages = ProtobufTestUtil.getMessages(md, extensionRegistry, data).size();
+
+    long compiled = 0;
+    long dynamic = 0;
+    for (int round = 0; round < warmUpRounds + rounds; round++) {
+      long start = System.nanoTime();
+      CodedInputStream in = CodedInputStream.newInstance(data);
+      for (int i = 0; i < messages; i++) {
+        readDelimited(reader, in);
+      }
+      long read = System.nanoTime();
+      // parses the messages with DynamicMessage, then converts them
+      for (DynamicMessage message : ProtobufTestUtil.getMessages(md, extensionRegistry, data)) {
+        Record record = RecordCreator.create();
+        record.set(ProtobufTypeUtil.protobufToSdcField(record, "", md, typeToExtensionMap, message));
+      }
+      long end = System.nanoTime();
+      if (round >= warmUpRounds) {
+        compiled += read - start;
+        dynamic += end - read;
+      }
+    }
+    long count = (long) rounds * messages;
+    System.out.println(String.format(
+        "read: compiled %d ns/msg, DynamicMessage %d ns/msg",
+        compiled / count,
+        dynamic / count
+    ));
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.util;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Descriptors;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.lib.generator.DataGeneratorException;
+import com.streamsets.pipeline.lib.parser.protobuf.Errors;
+import com.streamsets.pipeline.sdk.RecordCreator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TestProtobufFieldWriter {
+
+  private final Map<String, Set<Descriptors.FileDescriptor>> fileDescriptorDependentsMap = new HashMap<>();
+  private final Map<String, Descriptors.FileDescriptor> fileDescriptorMap = new HashMap<>();
+  private final Map<String, Object> defaultValueMap = new HashMap<>();
+  private final Map<String, Set<Descriptors.FieldDescriptor>> typeToExtensionMap = new HashMap<>();
+  private Descriptors.Descriptor md;
+
+  @Before
+  public void setUp() throws Exception {
+    FileInputStream fin = new FileInputStream(Resources.getResource("Employee.desc").getPath());
+    DescriptorProtos.FileDescriptorSet set = DescriptorProtos.FileDescriptorSet.parseFrom(fin);
+    ProtobufTypeUtil.getAllFileDescriptors(set, fileDescriptorDependentsMap, fileDescriptorMap);
+    ProtobufTypeUtil.populateDefaultsAndExtensions(fileDescriptorMap, typeToExtensionMap, defaultValueMap);
+    md = ProtobufTypeUtil.getDescriptor(set, fileDescriptorMap, "Employee.desc", "util.Employee");
+  }
+
+  private byte[] write(ProtobufFieldWriter writer, List<Record> records, boolean delimited) throws Exception {
+    ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+    CodedOutputStream out = CodedOutputStream.newInstance(bOut);
+    for (Record record : records) {
+      writer.write(record, out, delimited);
+    }
+    out.flush();
+    return bOut.toByteArray();
+  }
+
+  private byte[] writeWithDynamicMessage(Descriptors.Descriptor descriptor, List<Record> records) throws Exception {
+    ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+    for (Record record : records) {
+      ProtobufTypeUtil.sdcFieldToProtobufMsg(record, descriptor, typeToExtensionMap, defaultValueMap)
+          .writeDelimitedTo(bOut);
+    }
+    return bOut.toByteArray();
+  }
+
+  @Test
+  public void testSameAsDynamicMessage() throws Exception {
+    ProtobufFieldWriter writer = ProtobufFieldWriter.create(md, typeToExtensionMap, defaultValueMap);
+    List<Record> records = ProtobufTestUtil.getProtobufRecords();
+    byte[] bytes = write(writer, records, true);
+
+    Assert.assertArrayEquals(writeWithDynamicMessage(md, records), bytes);
+    ProtobufTestUtil.checkProtobufDataFields(bytes);
+    ProtobufTestUtil.checkProtobufDataExtensions(bytes);
+    ProtobufTestUtil.checkProtobufDataUnknownFields(bytes);
+
+    ProtobufTestUtil.checkSingleNonDelimitedMessage(write(writer, records.subList(0, 1), false));
+  }
+
+  @Test
+  public void testOneofAndRepeated() throws Exception {
+    Descriptors.Descriptor oneofDescriptor = OneofProto.getDescriptor().findMessageTypeByName("Oneof");
+    ProtobufFieldWriter writer = ProtobufFieldWriter.create(oneofDescriptor, typeToExtensionMap, defaultValueMap);
+    List<Record> records = new ArrayList<>();
+    for (Map<String, Field> rootField : ImmutableList.<Map<String, Field>>of(
+        ImmutableMap.of("oneofInt", Field.create(5)),
+        ImmutableMap.of("oneofString", Field.create("Hello")),
+        // the last member of the oneof in declaration order wins
+        ImmutableMap.of("oneofString", Field.create("Hello"), "oneofInt", Field.create(5)),
+        // members of a oneof are written even with default values
+        ImmutableMap.of("oneofInt", Field.create(0))
+    )) {
+      Record record = RecordCreator.create();
+      record.set(Field.create(rootField));
+      records.add(record);
+    }
+    Assert.assertArrayEquals(writeWithDynamicMessage(oneofDescriptor, records), write(writer, records, true));
+
+    Descriptors.Descriptor repeatedDescriptor = RepeatedProto.getDescriptor().findMessageTypeByName("Repeated");
+    writer = ProtobufFieldWriter.create(repeatedDescriptor, typeToExtensionMap, defaultValueMap);
+    records.clear();
+    for (Field samples : ImmutableList.of(
+        Field.create(Field.Type.LIST, null),
+        Field.create(new ArrayList<Field>()),
+        Field.create(ImmutableList.of(Field.create(1), Field.create(2), Field.create(300)))
+    )) {
+      Record record = RecordCreator.create();
+      Map<String, Field> rootField = new HashMap<>();
+      rootField.put("samples", samples);
+      record.set(Field.create(rootField));
+      records.add(record);
+    }
+    Assert.assertArrayEquals(writeWithDynamicMessage(repeatedDescriptor, records), write(writer, records, true));
+  }
+
+  @Test
+  public void testMissingRequiredField() throws Exception {
+    ProtobufFieldWriter writer = ProtobufFieldWriter.create(md, typeToExtensionMap, defaultValueMap);
+    Record record = ProtobufTestUtil.getProtobufRecords().get(0);
+    record.get("/engineer").getValueAsMap().remove("employeeId");
+    try {
+      write(writer, ImmutableList.of(record), true);
+      Assert.fail();
+    } catch (DataGeneratorException e) {
+      Assert.assertEquals(Errors.PROTOBUF_04, e.getErrorCode());
+    }
+  }
+
+  @Test
+  @Ignore("benchmark, run manually")
+  public void benchmarkWrite() throws Exception {
+    int warmUpRounds = 20000;
+    int rounds = 100000;
+    ProtobufFieldWriter writer = ProtobufFieldWriter.create(md, typeToExtensionMap, defaultValueMap);
+    List<Record> records = ProtobufTestUtil.getProtobufRecords();
+
+    long compiled = 0;
+    long dynamic = 0;
+    for (int round = 0; round < warmUpRounds + rounds; round++) {
+      long start = System.nanoTime();
+      write(writer, records, true);
+      long written = System.nanoTime();
+      writeWithDynamicMessage(md, records);
+      long end = System.nanoTime();
+      if (round >= warmUpRounds) {
+        compiled += written - start;
+        dynamic += end - written;
+      }
+    }
+    long count = (long) rounds * records.size();
+    System.out.println(String.format(
+        "write: compiled %d ns/msg, DynamicMessage %d ns/msg",
+        compiled / count,
+        dynamic / count
+    ));
+  }
+}
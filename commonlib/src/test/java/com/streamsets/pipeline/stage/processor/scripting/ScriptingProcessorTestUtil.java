@@ -23,6 +23,7 @@ import com.streamsets.pipeline.api.Processor;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.StageException;
 import com.streamsets.pipeline.api.base.OnRecordErrorException;
+import com.streamsets.pipeline.api.impl.Utils;
 import com.streamsets.pipeline.lib.io.fileref.FileRefTestUtil;
 import com.streamsets.pipeline.lib.io.fileref.FileRefUtil;
 import com.streamsets.pipeline.sdk.ProcessorRunner;
@@ -592,6 +593,151 @@ public class ScriptingProcessorTestUtil {
     Assert.assertNull(outRec.get().getValueAsMap().get("row2").getValue());
   }
 
+  /**
+   * Test for the fields that the script doesn't change. The script sets 'changed' to 'b' and 'nested/changed' to 2,
+   * all other fields should be passed through with their original types.
+   * @param clazz JythonEvaluator, JavaScripEvaluator or GroovyEvaluator.
+   * @param processor Processor
+   * @param <C>
+   * @throws StageException
+   */
+  public static <C extends Processor> void verifyUntouchedFields(Class<C> clazz, Processor processor)
+      throws StageException {
+    ProcessorRunner runner = new ProcessorRunner.Builder(clazz, processor)
+        .addOutputLane("lane")
+        .build();
+    runner.runInit();
+
+    Date date = new Date();
+    LinkedHashMap<String, Field> nested = new LinkedHashMap<>();
+    nested.put("changed", Field.create(1));
+    nested.put("time", Field.createTime(date));
+    LinkedHashMap<String, Field> map = new LinkedHashMap<>();
+    map.put("changed", Field.create("a"));
+    map.put("date", Field.createDate(date));
+    map.put("short", Field.create((short) 1));
+    map.put("nested", Field.createListMap(nested));
+    Record record = RecordCreator.create();
+    record.set(Field.createListMap(map));
+    StageRunner.Output output;
+
+    try {
+      output = runner.runProcess(Collections.singletonList(record));
+    } finally {
+      runner.runDestroy();
+    }
+
+    assertEquals(1, output.getRecords().get("lane").size());
+    Record outRec = output.getRecords().get("lane").get(0);
+    assertEquals("b", outRec.get("/changed").getValueAsString());
+    assertEquals(2, outRec.get("/nested/changed").getValueAsInteger());
+    assertEquals(new ArrayList<>(map.keySet()), new ArrayList<>(outRec.get().getValueAsListMap().keySet()));
+    // scripts have no value types for these, they are only kept because they are not converted
+    assertEquals(Field.Type.DATE, outRec.get("/date").getType());
+    assertEquals(date, outRec.get("/date").getValueAsDate());
+    assertEquals(Field.Type.SHORT, outRec.get("/short").getType());
+    assertEquals(Field.Type.TIME, outRec.get("/nested/time").getType());
+  }
+
+  /**
+   * Test for the list elements that the script doesn't change. The script sets 'list[2]' to 'b', the other elements
+   * should be passed through with their original types.
+   * @param clazz JythonEvaluator, JavaScripEvaluator or GroovyEvaluator.
+   * @param processor Processor
+   * @param <C>
+   * @throws StageException
+   */
+  public static <C extends Processor> void verifyUntouchedListElements(Class<C> clazz, Processor processor)
+      throws StageException {
+    ProcessorRunner runner = new ProcessorRunner.Builder(clazz, processor)
+        .addOutputLane("lane")
+        .build();
+    runner.runInit();
+
+    Date date = new Date();
+    Map<String, Field> map = new HashMap<>();
+    map.put("list", Field.create(ImmutableList.of(
+        Field.create((short) 1),
+        Field.createDate(date),
+        Field.create("a")
+    )));
+    Record record = RecordCreator.create();
+    record.set(Field.create(map));
+    StageRunner.Output output;
+
+    try {
+      output = runner.runProcess(Collections.singletonList(record));
+    } finally {
+      runner.runDestroy();
+    }
+
+    assertEquals(1, output.getRecords().get("lane").size());
+    Record outRec = output.getRecords().get("lane").get(0);
+    assertEquals(3, outRec.get("/list").getValueAsList().size());
+    assertEquals("b", outRec.get("/list[2]").getValueAsString());
+    assertEquals(Field.Type.SHORT, outRec.get("/list[0]").getType());
+    assertEquals(Field.Type.DATE, outRec.get("/list[1]").getType());
+    assertEquals(date, outRec.get("/list[1]").getValueAsDate());
+  }
+
+  /**
+   * Micro benchmark of the record conversion. Each record has 50 maps of 10 strings and a list of 50 strings, the
+   * script changes one nested value. Prints the throughput after a warm up.
+   * @param clazz JythonEvaluator, JavaScripEvaluator or GroovyEvaluator.
+   * @param processor Processor
+   * @param <C>
+   * @throws StageException
+   */
+  public static <C extends Processor> void benchmarkNestedUpdate(Class<C> clazz, Processor processor)
+      throws StageException {
+    int recordCount = 1000;
+    int warmUpRounds = 5;
+    int rounds = 20;
+    ProcessorRunner runner = new ProcessorRunner.Builder(clazz, processor)
+        .addOutputLane("lane")
+        .build();
+    runner.runInit();
+
+    List<Record> records = new ArrayList<>(recordCount);
+    for (int i = 0; i < recordCount; i++) {
+      LinkedHashMap<String, Field> map = new LinkedHashMap<>();
+      for (int j = 0; j < 50; j++) {
+        LinkedHashMap<String, Field> nested = new LinkedHashMap<>();
+        for (int k = 0; k < 10; k++) {
+          nested.put("field" + k, Field.create("value " + i + " " + j + " " + k));
+        }
+        map.put("map" + j, Field.createListMap(nested));
+      }
+      List<Field> list = new ArrayList<>();
+      for (int j = 0; j < 50; j++) {
+        list.add(Field.create("element " + j));
+      }
+      map.put("list", Field.create(list));
+      Record record = RecordCreator.create();
+      record.set(Field.createListMap(map));
+      records.add(record);
+    }
+
+    try {
+      long elapsed = 0;
+      for (int round = 0; round < warmUpRounds + rounds; round++) {
+        long start = System.nanoTime();
+        StageRunner.Output output = runner.runProcess(records);
+        if (round >= warmUpRounds) {
+          elapsed += System.nanoTime() - start;
+        }
+        assertEquals(recordCount, output.getRecords().get("lane").size());
+      }
+      System.out.println(Utils.format(
+          "{}: {} records/s",
+          clazz.getSimpleName(),
+          (long) recordCount * rounds * 1000000000L / elapsed
+      ));
+    } finally {
+      runner.runDestroy();
+    }
+  }
+
   public static <C extends Processor> void verifyTypedFieldWithNullValue(
       Class<C> clazz,
       Processor processor,
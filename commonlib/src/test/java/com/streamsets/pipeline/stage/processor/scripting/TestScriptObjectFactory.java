@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.processor.scripting;
+
+import com.google.common.collect.ImmutableList;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.sdk.RecordCreator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestScriptObjectFactory {
+  private ScriptObjectFactory factory;
+  private Record record;
+
+  @Before
+  public void setUp() {
+    factory = new ScriptObjectFactory(null, null);
+
+    LinkedHashMap<String, Field> nested = new LinkedHashMap<>();
+    nested.put("x", Field.create(1));
+    nested.put("time", Field.createTime(new Date()));
+    LinkedHashMap<String, Field> map = new LinkedHashMap<>();
+    map.put("a", Field.create("a"));
+    map.put("date", Field.createDate(new Date()));
+    map.put("nested", Field.create(nested));
+    map.put("list", Field.create(ImmutableList.of(Field.create(1L), Field.create((short) 2))));
+    record = RecordCreator.create();
+    record.set(Field.createListMap(map));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> asMap(Object scriptObject) {
+    return (Map<String, Object>) scriptObject;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Object> asList(Object scriptObject) {
+    return (List<Object>) scriptObject;
+  }
+
+  @Test
+  public void testReadOnly() {
+    Field root = record.get();
+    ScriptRecord scriptRecord = factory.createScriptRecord(record);
+    Map<String, Object> value = asMap(scriptRecord.value);
+    Assert.assertTrue(((ScriptObjectFactory.MapInfo) value).isListMap());
+    Assert.assertEquals("a", value.get("a"));
+    Assert.assertEquals(1, asMap(value.get("nested")).get("x"));
+    Assert.assertEquals(2L, asList(value.get("list")).size());
+
+    Assert.assertSame(root, factory.getRecord(scriptRecord).get());
+  }
+
+  @Test
+  public void testChangedEntry() {
+    Field nested = record.get("/nested");
+    Field list = record.get("/list");
+    ScriptRecord scriptRecord = factory.createScriptRecord(record);
+    asMap(asMap(scriptRecord.value).get("nested")).put("x", 5);
+
+    Record out = factory.getRecord(scriptRecord);
+    Assert.assertEquals(Field.Type.LIST_MAP, out.get().getType());
+    Assert.assertEquals(5, out.get("/nested/x").getValueAsInteger());
+    Assert.assertNotSame(nested, out.get("/nested"));
+    Assert.assertEquals(Field.Type.TIME, out.get("/nested/time").getType());
+    Assert.assertEquals(Field.Type.DATE, out.get("/date").getType());
+    Assert.assertSame(list, out.get("/list"));
+  }
+
+  @Test
+  public void testAddRemove() {
+    ScriptRecord scriptRecord = factory.createScriptRecord(record);
+    Map<String, Object> value = asMap(scriptRecord.value);
+    value.remove("a");
+    value.put("b", "b");
+    asList(value.get("list")).remove(0);
+    asList(value.get("list")).add("c");
+
+    Record out = factory.getRecord(scriptRecord);
+    Assert.assertEquals(
+        ImmutableList.of("date", "nested", "list", "b"),
+        ImmutableList.copyOf(out.get().getValueAsListMap().keySet())
+    );
+    Assert.assertEquals(Field.Type.SHORT, out.get("/list[0]").getType());
+    Assert.assertEquals("c", out.get("/list[1]").getValueAsString());
+  }
+
+  @Test
+  public void testIterateAndSetNull() {
+    ScriptRecord scriptRecord = factory.createScriptRecord(record);
+    Map<String, Object> nested = asMap(asMap(scriptRecord.value).get("nested"));
+    for (Map.Entry<String, Object> entry : nested.entrySet()) {
+      nested.put(entry.getKey(), null);
+    }
+
+    Record out = factory.getRecord(scriptRecord);
+    // typed nulls
+    Assert.assertEquals(Field.Type.INTEGER, out.get("/nested/x").getType());
+    Assert.assertNull(out.get("/nested/x").getValue());
+    Assert.assertEquals(Field.Type.TIME, out.get("/nested/time").getType());
+    Assert.assertNull(out.get("/nested/time").getValue());
+  }
+
+  @Test
+  public void testIterateOnly() {
+    Field root = record.get();
+    ScriptRecord scriptRecord = factory.createScriptRecord(record);
+    Map<String, Object> value = asMap(scriptRecord.value);
+    List<String> keys = new ArrayList<>();
+    for (Map.Entry<String, Object> entry : value.entrySet()) {
+      keys.add(entry.getKey());
+    }
+    Assert.assertEquals(ImmutableList.of("a", "date", "nested", "list"), keys);
+
+    // iterating alone does not rebuild the field
+    Assert.assertSame(root, factory.getRecord(scriptRecord).get());
+  }
+
+  @Test
+  public void testEntrySetValueAndRemove() {
+    ScriptRecord scriptRecord = factory.createScriptRecord(record);
+    Map<String, Object> value = asMap(scriptRecord.value);
+    Iterator<Map.Entry<String, Object>> iterator = value.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Object> entry = iterator.next();
+      if (entry.getKey().equals("a")) {
+        entry.setValue("b");
+      } else if (entry.getKey().equals("date")) {
+        iterator.remove();
+      }
+    }
+
+    Record out = factory.getRecord(scriptRecord);
+    Assert.assertEquals(
+        ImmutableList.of("a", "nested", "list"),
+        ImmutableList.copyOf(out.get().getValueAsListMap().keySet())
+    );
+    Assert.assertEquals("b", out.get("/a").getValueAsString());
+  }
+
+  @Test
+  public void testSharedView() {
+    ScriptRecord scriptRecord = factory.createScriptRecord(record);
+    Map<String, Object> value = asMap(scriptRecord.value);
+    value.put("copy", value.get("nested"));
+
+    Record out = factory.getRecord(scriptRecord);
+    Assert.assertEquals(out.get("/nested"), out.get("/copy"));
+    Assert.assertNotSame(out.get("/nested"), out.get("/copy"));
+    out.set("/copy/x", Field.create(7));
+    Assert.assertEquals(1, out.get("/nested/x").getValueAsInteger());
+  }
+
+  @Test
+  public void testViewOfOtherRecord() {
+    ScriptRecord scriptRecord = factory.createScriptRecord(record);
+    ScriptRecord newRecord = factory.createScriptRecord(RecordCreator.create());
+    newRecord.value = scriptRecord.value;
+
+    Record out = factory.getRecord(newRecord);
+    Assert.assertEquals(record.get(), out.get());
+    Assert.assertNotSame(record.get("/nested"), out.get("/nested"));
+  }
+}
@@ -183,6 +183,12 @@ public class AclRunner implements Runner {
     return runner.getHistory();
   }
 
+  @Override
+  public List<PipelineState> getHistory(long fromTimestamp, long toTimestamp, int offset, int len)
+      throws PipelineStoreException {
+    return runner.getHistory(fromTimestamp, toTimestamp, offset, len);
+  }
+
   @Override
   public void deleteHistory() throws PipelineException {
     aclStore.validateWritePermission(this.getName(), currentUser);
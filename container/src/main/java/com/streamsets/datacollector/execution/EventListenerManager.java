@@ -22,24 +22,31 @@ import com.streamsets.datacollector.alerts.AlertEventListener;
 import com.streamsets.datacollector.execution.alerts.AlertInfo;
 import com.streamsets.datacollector.json.ObjectMapperFactory;
 import com.streamsets.datacollector.metrics.MetricsEventListener;
+import com.streamsets.datacollector.metrics.MetricsSnapshot;
 import com.streamsets.datacollector.restapi.bean.BeanHelper;
 import com.streamsets.dc.execution.manager.standalone.ThreadUsage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class EventListenerManager {
   private static final Logger LOG = LoggerFactory.getLogger(EventListenerManager.class);
   private final Map<String, List<MetricsEventListener>> metricsEventListenerMap;
+  // listeners that received the previous metrics snapshot and can be sent deltas against it
+  private final Set<MetricsEventListener> metricsEventListenersWithBaseline;
   private final List<StateEventListener> stateEventListenerList;
   private final List<AlertEventListener> alertEventListenerList;
 
   public EventListenerManager() {
     metricsEventListenerMap = new HashMap<>();
+    metricsEventListenersWithBaseline = Collections.newSetFromMap(new IdentityHashMap<>());
     stateEventListenerList = new ArrayList<>();
     alertEventListenerList = new ArrayList<>();
   }
@@ -76,6 +83,7 @@ public class EventListenerManager {
       if(metricsEventListenerMap.containsKey(pipelineName)) {
         metricsEventListenerMap.get(pipelineName).remove(metricsEventListener);
       }
+      metricsEventListenersWithBaseline.remove(metricsEventListener);
     }
   }
 
@@ -152,6 +160,8 @@ public class EventListenerManager {
       List<MetricsEventListener> metricsEventListenerListCopy;
       synchronized (metricsEventListenerMap) {
         metricsEventListenerListCopy = new ArrayList<>(metricsEventListenerMap.get(pipelineName));
+        // these metrics are not the baseline of the next snapshot, start over with a full one
+        metricsEventListenersWithBaseline.removeAll(metricsEventListenerListCopy);
       }
 
       for(MetricsEventListener metricsEventListener : metricsEventListenerListCopy) {
@@ -164,4 +174,43 @@ public class EventListenerManager {
     }
   }
 
+  /**
+   * Sends the snapshot to the metrics listeners of the pipeline. Listeners accepting deltas get only the changes
+   * since the previous snapshot, unless they were just added. The snapshot must be based on the one of the previous
+   * broadcast to the pipeline.
+   */
+  public void broadcastMetrics(String pipelineName, MetricsSnapshot snapshot) {
+    if(metricsEventListenerMap.containsKey(pipelineName) && metricsEventListenerMap.get(pipelineName).size() > 0) {
+      List<MetricsEventListener> metricsEventListenerListCopy;
+      Set<MetricsEventListener> withBaseline = Collections.newSetFromMap(new IdentityHashMap<>());
+      synchronized (metricsEventListenerMap) {
+        metricsEventListenerListCopy = new ArrayList<>(metricsEventListenerMap.get(pipelineName));
+        for (MetricsEventListener metricsEventListener : metricsEventListenerListCopy) {
+          if (metricsEventListenersWithBaseline.contains(metricsEventListener)) {
+            withBaseline.add(metricsEventListener);
+          } else if (metricsEventListener.acceptsDeltas()) {
+            metricsEventListenersWithBaseline.add(metricsEventListener);
+          }
+        }
+      }
+
+      for(MetricsEventListener metricsEventListener : metricsEventListenerListCopy) {
+        boolean delivered = false;
+        try {
+          // each message is serialized once and shared by all the listeners
+          String message = withBaseline.contains(metricsEventListener) ? snapshot.getDelta() : snapshot.getFull();
+          delivered = message == null || metricsEventListener.offerNotification(message);
+        } catch(Exception ex) {
+          LOG.warn("Error while notifying metrics, {}", ex.toString(), ex);
+        }
+        if (!delivered) {
+          // the listener missed these metrics, the next deltas would not apply, start over with a full snapshot
+          synchronized (metricsEventListenerMap) {
+            metricsEventListenersWithBaseline.remove(metricsEventListener);
+          }
+        }
+      }
+    }
+  }
+
 }
@@ -58,6 +58,17 @@ public interface PipelineStateStore {
 
   public List<PipelineState> getHistory(String name, String rev, boolean fromBeginning) throws PipelineStoreException;
 
+  // returns, newest first, the history entries within the given time range (inclusive), skipping the first 'offset'
+  // ones and returning at most 'len' of them (all of them if 'len' is negative)
+  public List<PipelineState> getHistory(
+      String name,
+      String rev,
+      long fromTimestamp,
+      long toTimestamp,
+      int offset,
+      int len
+  ) throws PipelineStoreException;
+
   public void deleteHistory(String name, String rev);
 
   public void init();
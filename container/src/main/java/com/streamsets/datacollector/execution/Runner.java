@@ -134,6 +134,11 @@ public interface Runner {
   // delegates to the the PipelineStateStore
   public List<PipelineState> getHistory() throws PipelineStoreException;
 
+  // the pipeline history within a time range, newest first and paged
+  // delegates to the the PipelineStateStore
+  public List<PipelineState> getHistory(long fromTimestamp, long toTimestamp, int offset, int len)
+      throws PipelineStoreException;
+
   public void deleteHistory() throws PipelineException;
 
   // gets the current pipeline metrics
@@ -16,7 +16,7 @@
 package com.streamsets.datacollector.execution.metrics;
 
 import com.codahale.metrics.MetricRegistry;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.streamsets.datacollector.callback.CallbackInfo;
@@ -35,6 +35,7 @@ import com.streamsets.datacollector.execution.runner.standalone.StandaloneRunner
 import com.streamsets.datacollector.http.SnappyWriterInterceptor;
 import com.streamsets.datacollector.json.ObjectMapperFactory;
 import com.streamsets.datacollector.main.RuntimeInfo;
+import com.streamsets.datacollector.metrics.MetricsSnapshot;
 import com.streamsets.datacollector.restapi.bean.CounterJson;
 import com.streamsets.datacollector.restapi.bean.MeterJson;
 import com.streamsets.datacollector.restapi.bean.MetricRegistryJson;
@@ -108,6 +109,7 @@ public class MetricsEventRunnable implements Runnable {
   private final int retryAttempts = 5;
   private WebTarget webTarget;
   private Stopwatch stopwatch = null;
+  private ObjectNode lastBroadcastMetrics;
 
   @Inject
   public MetricsEventRunnable(
@@ -163,38 +165,50 @@ public class MetricsEventRunnable implements Runnable {
       if(threadHealthReporter != null) {
         threadHealthReporter.reportHealth(RUNNABLE_NAME, scheduledDelay, System.currentTimeMillis());
       }
-      ObjectMapper objectMapper = ObjectMapperFactory.get();
       PipelineState state = pipelineStateStore.getState(name, rev);
-      if (hasMetricEventListeners(state) || isDPMPipeline) {
-        // compute aggregated metrics in case of cluster mode pipeline
-        // get individual pipeline metrics if non cluster mode pipeline
-        String metricsJSONStr;
-        if (state.getExecutionMode() == ExecutionMode.CLUSTER_BATCH
-          || state.getExecutionMode() == ExecutionMode.CLUSTER_YARN_STREAMING
-          || state.getExecutionMode() == ExecutionMode.CLUSTER_MESOS_STREAMING) {
-          MetricRegistryJson metricRegistryJson = getAggregatedMetrics();
-          metricsJSONStr = objectMapper.writer().writeValueAsString(metricRegistryJson);
-        } else {
-          metricsJSONStr = objectMapper.writer().writeValueAsString(metricRegistry);
-        }
-        if (hasMetricEventListeners(state)) {
-          eventListenerManager.broadcastMetrics(name, metricsJSONStr);
-        }
-        if (isStatAggregationEnabled()) {
-          AggregatorUtil.enqueStatsRecord(
-            AggregatorUtil.createMetricJsonRecord(
-                runtimeInfo.getId(),
-                runtimeInfo.getMasterSDCId(),
-                pipelineConfiguration.getMetadata(),
-                false, // isAggregated - no its not aggregated
-                metricsJSONStr
-            ),
-            statsQueue,
-            configuration
-          );
-        } else if (isDPMPipeline && isWriteStatsToDPMDirectlyEnabled()) {
-          sendMetricsToDPM(pipelineConfiguration, metricsJSONStr);
+      boolean hasMetricEventListeners = hasMetricEventListeners(state);
+      if (hasMetricEventListeners || isDPMPipeline) {
+        boolean sendToDPM = !isStatAggregationEnabled() && isDPMPipeline && isWriteStatsToDPMDirectlyEnabled() &&
+            isDPMUpdateDue();
+        // take a snapshot only if someone is going to get it
+        if (hasMetricEventListeners || isStatAggregationEnabled() || sendToDPM) {
+          // compute aggregated metrics in case of cluster mode pipeline
+          // get individual pipeline metrics if non cluster mode pipeline
+          MetricsSnapshot snapshot;
+          if (state.getExecutionMode() == ExecutionMode.CLUSTER_BATCH
+            || state.getExecutionMode() == ExecutionMode.CLUSTER_YARN_STREAMING
+            || state.getExecutionMode() == ExecutionMode.CLUSTER_MESOS_STREAMING) {
+            snapshot = MetricsSnapshot.of(getAggregatedMetrics(), lastBroadcastMetrics);
+          } else {
+            snapshot = MetricsSnapshot.of(metricRegistry, lastBroadcastMetrics);
+          }
+          if (hasMetricEventListeners) {
+            eventListenerManager.broadcastMetrics(name, snapshot);
+            lastBroadcastMetrics = snapshot.getMetrics();
+          } else {
+            lastBroadcastMetrics = null;
+          }
+          if (isStatAggregationEnabled()) {
+            AggregatorUtil.enqueStatsRecord(
+              AggregatorUtil.createMetricJsonRecord(
+                  runtimeInfo.getId(),
+                  runtimeInfo.getMasterSDCId(),
+                  pipelineConfiguration.getMetadata(),
+                  false, // isAggregated - no its not aggregated
+                  snapshot.getFull()
+              ),
+              statsQueue,
+              configuration
+            );
+          } else if (sendToDPM) {
+            sendMetricsToDPM(
+                pipelineConfiguration,
+                ObjectMapperFactory.get().treeToValue(snapshot.getMetrics(), MetricRegistryJson.class)
+            );
+          }
         }
+      } else {
+        lastBroadcastMetrics = null;
       }
     } catch (IOException ex) {
       LOG.warn("Error while serializing metrics, {}", ex.toString(), ex);
@@ -325,37 +339,39 @@ public class MetricsEventRunnable implements Runnable {
     }
   }
 
+  private boolean isDPMUpdateDue() {
+    return stopwatch == null || stopwatch.elapsed(TimeUnit.MILLISECONDS) > waitTimeBetweenUpdates;
+  }
+
   private void sendMetricsToDPM(
       PipelineConfiguration pipelineConfiguration,
-      String metricsJSONStr
-  ) throws IOException {
-    if (stopwatch == null || stopwatch.elapsed(TimeUnit.MILLISECONDS) > waitTimeBetweenUpdates) {
-      SDCMetricsJson sdcMetricsJson = new SDCMetricsJson();
-      sdcMetricsJson.setTimestamp(System.currentTimeMillis());
-      sdcMetricsJson.setAggregated(false);
-      sdcMetricsJson.setSdcId(runtimeInfo.getId());
-      sdcMetricsJson.setMasterSdcId(runtimeInfo.getMasterSDCId());
-      sdcMetricsJson.setMetrics(ObjectMapperFactory.get().readValue(metricsJSONStr, MetricRegistryJson.class));
-      Map<String, String> metadata = new HashMap<>();
-      if (pipelineConfiguration.getMetadata() != null && !pipelineConfiguration.getMetadata().isEmpty()) {
-        for (Map.Entry<String, Object> e : pipelineConfiguration.getMetadata().entrySet()) {
-          if (e.getValue() instanceof String) {
-            metadata.put(e.getKey(), (String) e.getValue());
-          }
+      MetricRegistryJson metricRegistryJson
+  ) {
+    SDCMetricsJson sdcMetricsJson = new SDCMetricsJson();
+    sdcMetricsJson.setTimestamp(System.currentTimeMillis());
+    sdcMetricsJson.setAggregated(false);
+    sdcMetricsJson.setSdcId(runtimeInfo.getId());
+    sdcMetricsJson.setMasterSdcId(runtimeInfo.getMasterSDCId());
+    sdcMetricsJson.setMetrics(metricRegistryJson);
+    Map<String, String> metadata = new HashMap<>();
+    if (pipelineConfiguration.getMetadata() != null && !pipelineConfiguration.getMetadata().isEmpty()) {
+      for (Map.Entry<String, Object> e : pipelineConfiguration.getMetadata().entrySet()) {
+        if (e.getValue() instanceof String) {
+          metadata.put(e.getKey(), (String) e.getValue());
         }
       }
-      metadata.put(DPM_PIPELINE_COMMIT_ID, pipelineCommitId);
-      metadata.put(DPM_JOB_ID, jobId);
-      sdcMetricsJson.setMetadata(metadata);
+    }
+    metadata.put(DPM_PIPELINE_COMMIT_ID, pipelineCommitId);
+    metadata.put(DPM_JOB_ID, jobId);
+    sdcMetricsJson.setMetadata(metadata);
 
-      sendUpdate(ImmutableList.of(sdcMetricsJson));
+    sendUpdate(ImmutableList.of(sdcMetricsJson));
 
-      if (stopwatch == null) {
-        stopwatch = Stopwatch.createStarted();
-      } else {
-        stopwatch.reset()
-            .start();
-      }
+    if (stopwatch == null) {
+      stopwatch = Stopwatch.createStarted();
+    } else {
+      stopwatch.reset()
+          .start();
     }
   }
 
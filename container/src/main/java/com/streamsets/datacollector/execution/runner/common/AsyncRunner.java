@@ -204,6 +204,12 @@ public class AsyncRunner implements Runner, PipelineInfo {
     return runner.getHistory();
   }
 
+  @Override
+  public List<PipelineState> getHistory(long fromTimestamp, long toTimestamp, int offset, int len)
+      throws PipelineStoreException {
+    return runner.getHistory(fromTimestamp, toTimestamp, offset, len);
+  }
+
   @Override
   public void deleteHistory() throws PipelineException {
     runner.deleteHistory();
@@ -26,6 +26,16 @@ public class Constants {
   public static final String PIPELINE_CLUSTER_TOKEN_KEY = "pipeline.cluster.token";
   public static final String MAX_BATCH_SIZE_KEY = "production.maxBatchSize";
   public static final int MAX_BATCH_SIZE_DEFAULT = 1000;
+  public static final String MAX_BATCHES_IN_FLIGHT_KEY = "production.maxBatchesInFlight";
+  public static final int MAX_BATCHES_IN_FLIGHT_DEFAULT = 1;
+  public static final String BATCH_BUFFER_MAX_BATCHES_KEY = "production.batchBuffer.maxBatchesInMemory";
+  public static final int BATCH_BUFFER_MAX_BATCHES_DEFAULT = 0;
+  public static final String BATCH_BUFFER_MAX_SPILL_BYTES_KEY = "production.batchBuffer.maxSpillBytes";
+  public static final long BATCH_BUFFER_MAX_SPILL_BYTES_DEFAULT = 1024L * 1024 * 1024;
+  public static final String BATCH_BUFFER_SEGMENT_SIZE_KEY = "production.batchBuffer.segmentSize";
+  public static final int BATCH_BUFFER_SEGMENT_SIZE_DEFAULT = 64 * 1024 * 1024;
+  public static final String BATCH_BUFFER_DRAIN_TIMEOUT_KEY = "production.batchBuffer.drainTimeout";
+  public static final long BATCH_BUFFER_DRAIN_TIMEOUT_DEFAULT = 60 * 1000L;
   public static final String DELIVERY_GUARANTEE = "deliveryGuarantee";
   public static final String MAX_ERROR_FILE_SIZE_KEY = "production.maxErrorFileSize";
   public static final String MAX_ERROR_FILE_SIZE_DEFAULT = "1024MB";
@@ -40,6 +40,7 @@ import com.streamsets.datacollector.restapi.bean.CounterJson;
 import com.streamsets.datacollector.restapi.bean.HistogramJson;
 import com.streamsets.datacollector.restapi.bean.MeterJson;
 import com.streamsets.datacollector.restapi.bean.MetricRegistryJson;
+import com.streamsets.datacollector.runner.BatchBuffer;
 import com.streamsets.datacollector.runner.BatchContextImpl;
 import com.streamsets.datacollector.runner.BatchImpl;
 import com.streamsets.datacollector.runner.BatchListener;
@@ -68,6 +69,7 @@ import com.streamsets.datacollector.runner.production.StatsAggregationHandler;
 import com.streamsets.datacollector.util.AggregatorUtil;
 import com.streamsets.datacollector.util.Configuration;
 import com.streamsets.datacollector.util.ContainerError;
+import com.streamsets.datacollector.util.PipelineDirectoryUtil;
 import com.streamsets.datacollector.util.PipelineException;
 import com.streamsets.pipeline.api.Batch;
 import com.streamsets.pipeline.api.BatchContext;
@@ -83,17 +85,26 @@ import com.streamsets.pipeline.api.impl.ErrorMessage;
 import com.streamsets.pipeline.api.impl.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -101,6 +112,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class ProductionPipelineRunner implements PipelineRunner, PushSourceContextDelegate, ReportErrorDelegate {
 
   private static final Logger LOG = LoggerFactory.getLogger(ProductionPipelineRunner.class);
+  private static final String BATCH_BUFFER_DIR = "batchBuffer";
 
   private final RuntimeInfo runtimeInfo;
   private final com.streamsets.datacollector.util.Configuration configuration;
@@ -167,6 +179,7 @@ public class ProductionPipelineRunner implements PipelineRunner, PushSourceConte
   private final List<List<StageOutput>> capturedBatches = new ArrayList<>();
   private PipeContext pipeContext = null;
   private PipelineConfiguration pipelineConfiguration = null;
+  private BatchBuffer batchBuffer;
 
   @Inject
   public ProductionPipelineRunner(
@@ -386,8 +399,31 @@ public class ProductionPipelineRunner implements PipelineRunner, PushSourceConte
       batchSize = snapshotBatchSize;
     }
 
-    // Push origin will block on the call until the either all data have been consumed or the pipeline stopped
-    originPipe.process(offsetTracker.getOffsets(), batchSize, this);
+    int maxBufferedBatches = configuration.get(
+      Constants.BATCH_BUFFER_MAX_BATCHES_KEY,
+      Constants.BATCH_BUFFER_MAX_BATCHES_DEFAULT
+    );
+    ExecutorService bufferExecutor = null;
+    if (maxBufferedBatches > 0) {
+      if (originPipe.getStage().getDefinition().isResetOffset()) {
+        bufferExecutor = startBatchBuffer(maxBufferedBatches);
+      } else {
+        // Buffered batches are lost on restart, only origins that replay from the last committed offset can use them
+        LOG.warn(
+          "Not buffering batches as origin '{}' can't replay batches that were not committed",
+          originPipe.getStage().getInfo().getInstanceName()
+        );
+      }
+    }
+
+    try {
+      // Push origin will block on the call until the either all data have been consumed or the pipeline stopped
+      originPipe.process(offsetTracker.getOffsets(), batchSize, this);
+    } finally {
+      if (bufferExecutor != null) {
+        stopBatchBuffer(bufferExecutor);
+      }
+    }
     // If execution failed on exception, we should propagate it up
     if(exceptionFromExecution != null) {
       Throwables.propagateIfInstanceOf(exceptionFromExecution, StageException.class);
@@ -396,6 +432,147 @@ public class ProductionPipelineRunner implements PipelineRunner, PushSourceConte
     }
   }
 
+  /**
+   * Start buffering batches of the push origin.
+   *
+   * Origin threads only add their batches to the buffer, so that they are not blocked by slow destinations until the
+   * buffer is full. The rest of the pipeline runs on one thread per pipeline runner, taking the batches out of the
+   * buffer. Offsets are committed in the order in which the origin produced the batches.
+   */
+  private ExecutorService startBatchBuffer(int maxBufferedBatches) {
+    LOG.info("Buffering up to {} batches in memory before spilling them to disk", maxBufferedBatches);
+    batchBuffer = new BatchBuffer(
+      new File(PipelineDirectoryUtil.getPipelineDir(runtimeInfo, pipelineName, revision), BATCH_BUFFER_DIR),
+      originPipe.getStage().getInfo().getInstanceName(),
+      maxBufferedBatches,
+      configuration.get(Constants.BATCH_BUFFER_MAX_SPILL_BYTES_KEY, Constants.BATCH_BUFFER_MAX_SPILL_BYTES_DEFAULT),
+      configuration.get(Constants.BATCH_BUFFER_SEGMENT_SIZE_KEY, Constants.BATCH_BUFFER_SEGMENT_SIZE_DEFAULT),
+      MetricsConfigurator.createCounter(metrics, "pipeline.batchBuffer.depth", pipelineName, revision),
+      MetricsConfigurator.createCounter(metrics, "pipeline.batchBuffer.spilledBytes", pipelineName, revision),
+      MetricsConfigurator.createTimer(metrics, "pipeline.batchBuffer.replayLag", pipelineName, revision)
+    );
+
+    final Map<String, String> mdc = MDC.getCopyOfContextMap();
+    ExecutorService bufferExecutor = Executors.newFixedThreadPool(
+      pipes.size(),
+      runnable -> new Thread(runnable, "ProductionPipelineRunner-batchBuffer-" + pipelineName)
+    );
+    for (int i = 0; i < pipes.size(); i++) {
+      bufferExecutor.submit(() -> {
+        if (mdc != null) {
+          MDC.setContextMap(mdc);
+        }
+        drainBatchBuffer();
+      });
+    }
+    return bufferExecutor;
+  }
+
+  /**
+   * Stop accepting batches and let the rest of the pipeline finish all batches that are already in the buffer.
+   *
+   * Batches that don't finish within the drain timeout are discarded, their offsets are not committed and hence the
+   * origin will produce them again on next start.
+   */
+  private void stopBatchBuffer(ExecutorService bufferExecutor) {
+    long drainTimeout = configuration.get(
+      Constants.BATCH_BUFFER_DRAIN_TIMEOUT_KEY,
+      Constants.BATCH_BUFFER_DRAIN_TIMEOUT_DEFAULT
+    );
+    batchBuffer.close();
+    bufferExecutor.shutdown();
+    try {
+      if (!bufferExecutor.awaitTermination(drainTimeout, TimeUnit.MILLISECONDS)) {
+        LOG.warn(
+          "Discarding {} buffered batches that didn't finish within {} ms",
+          batchBuffer.size(),
+          drainTimeout
+        );
+        batchBuffer.fail();
+        bufferExecutor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      LOG.warn("Interrupted while waiting on buffered batches to finish", e);
+      batchBuffer.fail();
+      bufferExecutor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    batchBuffer.destroy();
+  }
+
+  private void drainBatchBuffer() {
+    try {
+      BatchBuffer.BufferedBatch batch;
+      while ((batch = batchBuffer.take()) != null) {
+        PipelineEL.setConstantsInContext(pipelineConfiguration, originPipe.getStage().getContext().getUserContext());
+        try {
+          runBufferedBatch(batch);
+
+          for (BatchListener batchListener : batchListenerList) {
+            batchListener.postBatch();
+          }
+        } finally {
+          PipelineEL.unsetConstantsInContext();
+        }
+      }
+    } catch (Throwable e) {
+      LOG.error("Can't process buffered batch", e);
+      // None of the remaining batches can be committed
+      batchBuffer.fail();
+      failPushSource(e);
+    }
+  }
+
+  private void runBufferedBatch(BatchBuffer.BufferedBatch batch) throws PipelineException, StageException {
+    final FullPipeBatch pipeBatch = batch.getPipeBatch();
+    final String entityName = batch.getEntityName();
+    final String newOffset = batch.getNewOffset();
+    final Map<String, Long> memoryConsumedByStage = new HashMap<>();
+    final Map<String, Object> stageBatchMetrics = new HashMap<>(batch.getStageBatchMetrics());
+    final AtomicBoolean committed = new AtomicBoolean(false);
+
+    PipeRunner pipeRunner = runnerPool.getRunner();
+    try {
+      OffsetCommitTrigger offsetCommitTrigger = pipeRunner.getOffsetCommitTrigger();
+
+      pipeRunner.executeBatch(entityName, newOffset, batch.getStartTime(), pipe -> {
+        committed.set(processPipe(pipe, pipeBatch, committed.get(), entityName, newOffset, memoryConsumedByStage, stageBatchMetrics));
+      });
+
+      handleBatchErrors(pipeBatch, entityName, newOffset, memoryConsumedByStage);
+      boolean commit = deliveryGuarantee == DeliveryGuarantee.AT_LEAST_ONCE
+        && (offsetCommitTrigger == null || offsetCommitTrigger.commit());
+      synchronized (batchBuffer) {
+        commitBufferedOffsets(batchBuffer.acknowledge(batch, commit));
+      }
+    } finally {
+      runnerPool.returnRunner(pipeRunner);
+    }
+
+    completeBatch(batch.getStartTime(), pipeBatch, entityName, stageBatchMetrics);
+  }
+
+  /**
+   * Commit offsets of acknowledged batches, must be called while holding lock on the batch buffer.
+   */
+  private void commitBufferedOffsets(List<BatchBuffer.BufferedBatch> acknowledged) {
+    for (BatchBuffer.BufferedBatch batch : acknowledged) {
+      offsetTracker.commitOffset(batch.getEntityName(), batch.getNewOffset());
+    }
+  }
+
+  private void failPushSource(Throwable throwable) {
+    // We got exception while executing pipeline which is a signal that we should stop processing
+    ((StageContext)originPipe.getStage().getContext()).setStop(true);
+
+    // Persist the exception so that we can re-throw it later in runPushSource method
+    synchronized (this) {
+      if(exceptionFromExecution == null) {
+        exceptionFromExecution = throwable;
+      }
+    }
+  }
+
   private FullPipeBatch createFullPipeBatch(String entityName, String previousOffset) {
     FullPipeBatch pipeBatch;
     if(batchesToCapture > 0) {
@@ -444,6 +621,24 @@ public class ProductionPipelineRunner implements PipelineRunner, PushSourceConte
       stageBatchMetrics.put(originPipe.getStage().getInfo().getInstanceName(), batchMetrics);
     }
 
+    if (batchBuffer != null) {
+      try {
+        return batchBuffer.add(
+          batchContext.getPipeBatch(),
+          entity,
+          offset,
+          batchContext.getStartTime(),
+          stageBatchMetrics
+        );
+      } catch (Throwable e) {
+        LOG.error("Can't buffer batch", e);
+        failPushSource(e);
+        return false;
+      } finally {
+        PipelineEL.unsetConstantsInContext();
+      }
+    }
+
     try {
       runSourceLessBatch(
         batchContext.getStartTime(),
@@ -460,16 +655,7 @@ public class ProductionPipelineRunner implements PipelineRunner, PushSourceConte
       }
     } catch (Throwable e) {
       LOG.error("Can't process batch", e);
-
-      // We got exception while executing pipeline which is a signal that we should stop processing
-      ((StageContext)originPipe.getStage().getContext()).setStop(true);
-
-      // Persist the exception so that we can re-throw it later in runPushSource method
-      synchronized (this) {
-        if(exceptionFromExecution == null) {
-          exceptionFromExecution = e;
-        }
-      }
+      failPushSource(e);
 
       // Returning false so that origin can properly communicate back that this request wasn't processed
       return false;
@@ -482,6 +668,13 @@ public class ProductionPipelineRunner implements PipelineRunner, PushSourceConte
 
   @Override
   public void commitOffset(String entity, String offset) {
+    if (batchBuffer != null) {
+      // Offset committed by the origin can't get ahead of the batches that are still in the buffer
+      synchronized (batchBuffer) {
+        commitBufferedOffsets(batchBuffer.acknowledgeOffset(entity, offset));
+      }
+      return;
+    }
     offsetTracker.commitOffset(entity, offset);
   }
 
@@ -498,6 +691,19 @@ public class ProductionPipelineRunner implements PipelineRunner, PushSourceConte
   }
 
   public void runPollSource() throws StageException, PipelineException {
+    int maxBatchesInFlight = configuration.get(
+      Constants.MAX_BATCHES_IN_FLIGHT_KEY,
+      Constants.MAX_BATCHES_IN_FLIGHT_DEFAULT
+    );
+    if (maxBatchesInFlight > 1
+        && deliveryGuarantee == DeliveryGuarantee.AT_LEAST_ONCE
+        && pipes.size() == 1
+        && pipes.get(0).getOffsetCommitTrigger() == null
+      ) {
+      runPollSourceWithBatchesInFlight(maxBatchesInFlight);
+      return;
+    }
+
     while (!offsetTracker.isFinished() && !stop && !finished) {
       if (threadHealthReporter != null) {
         threadHealthReporter.reportHealth(ProductionPipelineRunnable.RUNNABLE_NAME, -1, System.currentTimeMillis());
@@ -547,6 +753,133 @@ public class ProductionPipelineRunner implements PipelineRunner, PushSourceConte
     }
   }
 
+  /**
+   * Poll source loop that keeps up to maxBatchesInFlight batches in flight.
+   *
+   * The origin and processors of the next batch run while destinations are still writing the previous batches. All
+   * pipes starting with the first destination run on a single dedicated thread, so destinations receive the batches
+   * in the order in which the origin produced them and offsets are committed strictly in that order as each batch
+   * is acknowledged by completing its destinations. Error records always go to the error sink of their own batch.
+   * Once a batch fails, none of the batches that follow it is committed.
+   */
+  private void runPollSourceWithBatchesInFlight(int maxBatchesInFlight) throws StageException, PipelineException {
+    LOG.info("Running pipeline with up to {} batches in flight", maxBatchesInFlight);
+    final PipeRunner pipeRunner = runnerPool.getRunner();
+    final int destinationIndex = pipeRunner.getFirstDestinationIndex();
+    final Map<String, String> mdc = MDC.getCopyOfContextMap();
+    final AtomicBoolean failed = new AtomicBoolean(false);
+    ExecutorService destinationExecutor = Executors.newSingleThreadExecutor(
+      runnable -> new Thread(runnable, "ProductionPipelineRunner-destinations-" + pipelineName)
+    );
+    Deque<Future<?>> batchesInFlight = new ArrayDeque<>();
+
+    // Offset of the last produced batch, committed offset is behind it while there are batches in flight
+    String lastOffset = offsetTracker.getOffsets().get(Source.POLL_SOURCE_OFFSET_KEY);
+    boolean sourceFinished = offsetTracker.isFinished();
+    try {
+      while (!sourceFinished && !stop && !finished) {
+        if (threadHealthReporter != null) {
+          threadHealthReporter.reportHealth(ProductionPipelineRunnable.RUNNABLE_NAME, -1, System.currentTimeMillis());
+        }
+
+        for (BatchListener batchListener : batchListenerList) {
+          batchListener.preBatch();
+        }
+
+        if(observer != null) {
+          observer.reconfigure();
+        }
+
+        // Start of the batch execution
+        final long start = System.currentTimeMillis();
+        final FullPipeBatch pipeBatch = createFullPipeBatch(Source.POLL_SOURCE_OFFSET_KEY, lastOffset);
+
+        // Run origin and all pipes before the first destination
+        final Map<String, Long> memoryConsumedByStage = new HashMap<>();
+        final Map<String, Object> stageBatchMetrics = new HashMap<>();
+        processPipe(originPipe, pipeBatch, false, null, null, memoryConsumedByStage, stageBatchMetrics);
+        final String newOffset = pipeBatch.getNewOffset();
+        final PipeRunner.ThrowingConsumer<Pipe> pipeProcessor = pipe -> processPipe(
+          pipe,
+          pipeBatch,
+          false,
+          Source.POLL_SOURCE_OFFSET_KEY,
+          newOffset,
+          memoryConsumedByStage,
+          stageBatchMetrics
+        );
+        pipeRunner.executeBatch(Source.POLL_SOURCE_OFFSET_KEY, newOffset, start, 0, destinationIndex, pipeProcessor);
+        lastOffset = newOffset;
+        sourceFinished = newOffset == null;
+
+        // Wait for the oldest batches to be acknowledged if the window is full
+        while (batchesInFlight.size() >= maxBatchesInFlight) {
+          waitForBatch(batchesInFlight.poll());
+        }
+
+        batchesInFlight.add(destinationExecutor.submit((Callable<Void>) () -> {
+          // A batch after a failed one is never written nor committed
+          if (failed.get()) {
+            return null;
+          }
+          if (mdc != null) {
+            MDC.setContextMap(mdc);
+          }
+          PipelineEL.setConstantsInContext(pipelineConfiguration, originPipe.getStage().getContext().getUserContext());
+          try {
+            pipeRunner.executeBatch(
+              Source.POLL_SOURCE_OFFSET_KEY,
+              newOffset,
+              start,
+              destinationIndex,
+              pipeRunner.size(),
+              pipeProcessor
+            );
+            commitBatch(pipeBatch, Source.POLL_SOURCE_OFFSET_KEY, newOffset, memoryConsumedByStage, null);
+            completeBatch(start, pipeBatch, Source.POLL_SOURCE_OFFSET_KEY, stageBatchMetrics);
+            for (BatchListener batchListener : batchListenerList) {
+              batchListener.postBatch();
+            }
+          } catch (Throwable e) {
+            failed.set(true);
+            throw e;
+          } finally {
+            PipelineEL.unsetConstantsInContext();
+          }
+          return null;
+        }));
+      }
+
+      // Let destinations finish all batches that are still in flight
+      while (!batchesInFlight.isEmpty()) {
+        waitForBatch(batchesInFlight.poll());
+      }
+    } finally {
+      failed.set(true);
+      destinationExecutor.shutdown();
+      try {
+        destinationExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        LOG.warn("Interrupted while waiting on destinations to finish", e);
+        Thread.currentThread().interrupt();
+      }
+      runnerPool.returnRunner(pipeRunner);
+    }
+  }
+
+  private void waitForBatch(Future<?> batch) throws StageException, PipelineException {
+    try {
+      batch.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PipelineRuntimeException(ContainerError.CONTAINER_0801, e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), StageException.class);
+      Throwables.propagateIfInstanceOf(e.getCause(), PipelineException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
   @Override
   public void errorNotification(SourcePipe originPipe, List<PipeRunner> pipes, Throwable throwable) {
     Set<ErrorListener> listeners = Sets.newIdentityHashSet();
@@ -745,7 +1078,6 @@ public class ProductionPipelineRunner implements PipelineRunner, PushSourceConte
     Map<String, Object> stageBatchMetrics
   ) throws PipelineException, StageException {
     final AtomicBoolean committed = new AtomicBoolean(false);
-    String previousOffset = pipeBatch.getPreviousOffset();
 
     PipeRunner pipeRunner = null;
     try {
@@ -757,22 +1089,58 @@ public class ProductionPipelineRunner implements PipelineRunner, PushSourceConte
 
       });
 
-      enforceMemoryLimit(memoryConsumedByStage);
-      badRecordsHandler.handle(entityName, newOffset, pipeBatch.getErrorSink());
-      if (deliveryGuarantee == DeliveryGuarantee.AT_LEAST_ONCE) {
-        // When AT_LEAST_ONCE commit only if
-        // 1. There is no offset commit trigger for this pipeline or
-        // 2. there is a commit trigger and it is on
-        if (offsetCommitTrigger == null || offsetCommitTrigger.commit()) {
-          offsetTracker.commitOffset(entityName, newOffset);
-        }
-      }
+      commitBatch(pipeBatch, entityName, newOffset, memoryConsumedByStage, offsetCommitTrigger);
     } finally {
       if(pipeRunner != null) {
         runnerPool.returnRunner(pipeRunner);
       }
     }
 
+    completeBatch(start, pipeBatch, entityName, stageBatchMetrics);
+  }
+
+  /**
+   * Handle error records of fully processed batch and commit its offset.
+   */
+  private void commitBatch(
+    FullPipeBatch pipeBatch,
+    String entityName,
+    String newOffset,
+    Map<String, Long> memoryConsumedByStage,
+    OffsetCommitTrigger offsetCommitTrigger
+  ) throws PipelineException, StageException {
+    handleBatchErrors(pipeBatch, entityName, newOffset, memoryConsumedByStage);
+    if (deliveryGuarantee == DeliveryGuarantee.AT_LEAST_ONCE) {
+      // When AT_LEAST_ONCE commit only if
+      // 1. There is no offset commit trigger for this pipeline or
+      // 2. there is a commit trigger and it is on
+      if (offsetCommitTrigger == null || offsetCommitTrigger.commit()) {
+        offsetTracker.commitOffset(entityName, newOffset);
+      }
+    }
+  }
+
+  private void handleBatchErrors(
+    FullPipeBatch pipeBatch,
+    String entityName,
+    String newOffset,
+    Map<String, Long> memoryConsumedByStage
+  ) throws PipelineException, StageException {
+    enforceMemoryLimit(memoryConsumedByStage);
+    badRecordsHandler.handle(entityName, newOffset, pipeBatch.getErrorSink());
+  }
+
+  /**
+   * Update metrics, snapshots and retained errors with the outcome of committed batch.
+   */
+  private void completeBatch(
+    long start,
+    FullPipeBatch pipeBatch,
+    String entityName,
+    Map<String, Object> stageBatchMetrics
+  ) throws PipelineException, StageException {
+    String previousOffset = pipeBatch.getPreviousOffset();
+
     long batchDuration = System.currentTimeMillis() - start;
     batchProcessingTimer.update(batchDuration, TimeUnit.MILLISECONDS);
     batchCountCounter.inc();
@@ -199,6 +199,12 @@ public class SlaveStandaloneRunner implements Runner, PipelineInfo  {
     return standaloneRunner.getHistory();
   }
 
+  @Override
+  public List<PipelineState> getHistory(long fromTimestamp, long toTimestamp, int offset, int len)
+      throws PipelineStoreException {
+    return standaloneRunner.getHistory(fromTimestamp, toTimestamp, offset, len);
+  }
+
   @Override
   public void deleteHistory() {
     throw new UnsupportedOperationException();
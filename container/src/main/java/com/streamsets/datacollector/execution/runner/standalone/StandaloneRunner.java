@@ -547,6 +547,12 @@ public class StandaloneRunner extends AbstractRunner implements StateListener {
     return pipelineStateStore.getHistory(name, rev, false);
   }
 
+  @Override
+  public List<PipelineState> getHistory(long fromTimestamp, long toTimestamp, int offset, int len)
+      throws PipelineStoreException {
+    return pipelineStateStore.getHistory(name, rev, fromTimestamp, toTimestamp, offset, len);
+  }
+
   @Override
   public void deleteHistory() {
     pipelineStateStore.deleteHistory(name, rev);
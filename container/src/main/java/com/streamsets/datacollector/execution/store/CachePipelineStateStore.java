@@ -122,6 +122,18 @@ public class CachePipelineStateStore implements PipelineStateStore {
     return pipelineStateStore.getHistory(name, rev, fromBeginning);
   }
 
+  @Override
+  public List<PipelineState> getHistory(
+      String name,
+      String rev,
+      long fromTimestamp,
+      long toTimestamp,
+      int offset,
+      int len
+  ) throws PipelineStoreException {
+    return pipelineStateStore.getHistory(name, rev, fromTimestamp, toTimestamp, offset, len);
+  }
+
   @Override
   public void deleteHistory(String name, String rev) {
     pipelineStateStore.deleteHistory(name, rev);
@@ -19,6 +19,7 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
 import com.streamsets.datacollector.event.handler.remote.RemoteDataCollector;
 import com.streamsets.datacollector.execution.PipelineState;
 import com.streamsets.datacollector.execution.PipelineStateStore;
@@ -32,7 +33,6 @@ import com.streamsets.datacollector.restapi.bean.PipelineStateJson;
 import com.streamsets.datacollector.store.PipelineStoreException;
 import com.streamsets.datacollector.util.Configuration;
 import com.streamsets.datacollector.util.ContainerError;
-import com.streamsets.datacollector.util.LogUtil;
 import com.streamsets.datacollector.util.PipelineDirectoryUtil;
 import com.streamsets.pipeline.api.ExecutionMode;
 import com.streamsets.pipeline.api.impl.Utils;
@@ -43,16 +43,20 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class FilePipelineStateStore implements PipelineStateStore {
   private final RuntimeInfo runtimeInfo;
@@ -62,6 +66,20 @@ public class FilePipelineStateStore implements PipelineStateStore {
   public static final String STATE = "state";
   private static final Logger LOG = LoggerFactory.getLogger(FilePipelineStateStore.class);
 
+  @VisibleForTesting
+  static final String HISTORY_SEGMENT_SIZE_KEY = "store.pipeline.state.history.segment.size.kb";
+  private static final int HISTORY_SEGMENT_SIZE_DEFAULT = 8 * 1024;
+  @VisibleForTesting
+  static final String HISTORY_RETENTION_SEGMENTS_KEY = "store.pipeline.state.history.retention.segments";
+  private static final int HISTORY_RETENTION_SEGMENTS_DEFAULT = 6;
+  @VisibleForTesting
+  static final String HISTORY_RETENTION_DAYS_KEY = "store.pipeline.state.history.retention.days";
+  private static final int HISTORY_RETENTION_DAYS_DEFAULT = 0;
+  // history returned when not asking for it from the beginning
+  private static final int HISTORY_DEFAULT_LEN = 100;
+
+  private final Map<String, PipelineStateHistoryLog> historyLogs;
+
   @Inject
   public FilePipelineStateStore(RuntimeInfo runtimeInfo, Configuration conf) {
     this.runtimeInfo = runtimeInfo;
@@ -70,6 +88,7 @@ public class FilePipelineStateStore implements PipelineStateStore {
     if (!(stateDir.exists() || stateDir.mkdirs()) || !stateDir.isDirectory()) {
       throw new RuntimeException(Utils.format("Could not create directory '{}'", stateDir));
     }
+    historyLogs = new HashMap<>();
   }
 
   @Override
@@ -78,6 +97,9 @@ public class FilePipelineStateStore implements PipelineStateStore {
 
   @Override
   public void destroy() {
+    synchronized (historyLogs) {
+      historyLogs.clear();
+    }
   }
 
   @Override
@@ -121,7 +143,6 @@ public class FilePipelineStateStore implements PipelineStateStore {
     Map<String, Object> attributes, ExecutionMode executionMode, String metrics, int retryAttempt, long nextRetryTimeStamp
    )
     throws PipelineStoreException {
-    register(name, rev);
     LOG.debug("Changing state of pipeline '{}','{}','{}' to '{}' in execution mode: '{}';" + "status msg is '{}'",
       name, rev, user, status, executionMode, message);
     if (attributes == null && getPipelineStateFile(name, rev).exists()) {
@@ -168,22 +189,29 @@ public class FilePipelineStateStore implements PipelineStateStore {
 
   @Override
   public List<PipelineState> getHistory(String pipelineName, String rev, boolean fromBeginning) throws PipelineStoreException {
-    if (!pipelineDirExists(pipelineName, rev) || !pipelineStateHistoryFileExists(pipelineName, rev)) {
+    return getHistory(pipelineName, rev, 0, Long.MAX_VALUE, 0, fromBeginning ? -1 : HISTORY_DEFAULT_LEN);
+  }
+
+  @Override
+  public List<PipelineState> getHistory(
+      String pipelineName,
+      String rev,
+      long fromTimestamp,
+      long toTimestamp,
+      int offset,
+      int len
+  ) throws PipelineStoreException {
+    if (!pipelineDirExists(pipelineName, rev)) {
       return Collections.emptyList();
     }
-    try (Reader reader = new FileReader(getPipelineStateHistoryFile(pipelineName, rev))){
+    try {
+      PipelineStateHistoryLog historyLog = getHistoryLog(pipelineName, rev);
       ObjectMapper objectMapper = ObjectMapperFactory.get();
-      JsonParser jsonParser = objectMapper.getFactory().createParser(reader);
-      MappingIterator<PipelineStateJson> pipelineStateMappingIterator =
-        objectMapper.readValues(jsonParser, PipelineStateJson.class);
-      List<PipelineStateJson> pipelineStateJsons = pipelineStateMappingIterator.readAll();
-      Collections.reverse(pipelineStateJsons);
-      if (fromBeginning) {
-        return BeanHelper.unwrapPipelineStatesNewAPI(pipelineStateJsons);
-      } else {
-        int toIndex = pipelineStateJsons.size() > 100 ? 100 : pipelineStateJsons.size();
-        return BeanHelper.unwrapPipelineStatesNewAPI(pipelineStateJsons.subList(0, toIndex));
+      List<PipelineStateJson> pipelineStateJsons = new ArrayList<>();
+      for (byte[] entry : historyLog.read(fromTimestamp, toTimestamp, offset, len)) {
+        pipelineStateJsons.add(objectMapper.readValue(entry, PipelineStateJson.class));
       }
+      return BeanHelper.unwrapPipelineStatesNewAPI(pipelineStateJsons);
     } catch (IOException e) {
       throw new PipelineStoreException(ContainerError.CONTAINER_0115, pipelineName, rev, e.toString(), e);
     }
@@ -191,7 +219,12 @@ public class FilePipelineStateStore implements PipelineStateStore {
 
   @Override
   public void deleteHistory(String pipelineName, String rev) {
-    LogUtil.resetRollingFileAppender(pipelineName, rev, STATE);
+    synchronized (historyLogs) {
+      PipelineStateHistoryLog historyLog = historyLogs.remove(getNameAndRevString(pipelineName, rev));
+      if (historyLog != null) {
+        historyLog.delete();
+      }
+    }
     for (File f : getHistoryStateFiles(pipelineName, rev)) {
       if (!f.delete()) {
         LOG.warn("Failed to delete history file " + f);
@@ -199,9 +232,80 @@ public class FilePipelineStateStore implements PipelineStateStore {
     }
   }
 
-  private void register(String pipelineName, String rev) {
-    LogUtil.registerLogger(pipelineName, rev, STATE, getPipelineStateHistoryFile(pipelineName, rev).getAbsolutePath(),
-      configuration);
+  private PipelineStateHistoryLog getHistoryLog(String pipelineName, String rev) throws IOException {
+    String nameAndRev = getNameAndRevString(pipelineName, rev);
+    synchronized (historyLogs) {
+      PipelineStateHistoryLog historyLog = historyLogs.get(nameAndRev);
+      if (historyLog != null && historyLog.isStale()) {
+        // the pipeline was deleted and created again
+        LOG.debug("Reopening history of pipeline '{}'", nameAndRev);
+        historyLog = null;
+      }
+      if (historyLog == null) {
+        File pipelineDir = PipelineDirectoryUtil.getPipelineDir(runtimeInfo, pipelineName, rev);
+        boolean migrate = !PipelineStateHistoryLog.exists(pipelineDir);
+        historyLog = new PipelineStateHistoryLog(
+            pipelineDir,
+            configuration.get(HISTORY_SEGMENT_SIZE_KEY, HISTORY_SEGMENT_SIZE_DEFAULT) * 1024L,
+            configuration.get(HISTORY_RETENTION_SEGMENTS_KEY, HISTORY_RETENTION_SEGMENTS_DEFAULT),
+            TimeUnit.DAYS.toMillis(configuration.get(HISTORY_RETENTION_DAYS_KEY, HISTORY_RETENTION_DAYS_DEFAULT))
+        );
+        if (migrate) {
+          migrateLegacyHistory(pipelineDir, historyLog);
+        }
+        historyLogs.put(nameAndRev, historyLog);
+      }
+      return historyLog;
+    }
+  }
+
+  // Moves the history written by the rolling file appender (pipelineStateHistory.json, pipelineStateHistory.json.1,
+  // ...) into the segmented history log, streaming it entry by entry.
+  private void migrateLegacyHistory(File pipelineDir, PipelineStateHistoryLog historyLog) throws IOException {
+    File[] legacyFiles = pipelineDir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(STATE_FILE_HISTORY);
+      }
+    });
+    if (legacyFiles == null || legacyFiles.length == 0) {
+      return;
+    }
+    // the rolling file appender backups are oldest at highest index, the current file is the newest
+    Arrays.sort(legacyFiles, new Comparator<File>() {
+      @Override
+      public int compare(File o1, File o2) {
+        return Integer.compare(getBackupIndex(o2), getBackupIndex(o1));
+      }
+    });
+    LOG.info("Migrating pipeline state history in '{}' to the segmented history log", pipelineDir);
+    ObjectMapper objectMapper = ObjectMapperFactory.get();
+    for (File legacyFile : legacyFiles) {
+      try (InputStream is = new FileInputStream(legacyFile)) {
+        JsonParser jsonParser = objectMapper.getFactory().createParser(is);
+        MappingIterator<PipelineStateJson> iterator = objectMapper.readValues(jsonParser, PipelineStateJson.class);
+        while (iterator.hasNext()) {
+          PipelineStateJson pipelineStateJson = iterator.next();
+          historyLog.append(
+              pipelineStateJson.getTimeStamp(),
+              objectMapper.writeValueAsString(pipelineStateJson).getBytes(StandardCharsets.UTF_8)
+          );
+        }
+      }
+    }
+    for (File legacyFile : legacyFiles) {
+      if (!legacyFile.delete()) {
+        LOG.warn("Failed to delete migrated history file " + legacyFile);
+      }
+    }
+  }
+
+  private static int getBackupIndex(File legacyFile) {
+    String suffix = legacyFile.getName().substring(STATE_FILE_HISTORY.length());
+    if (suffix.startsWith(".") && suffix.substring(1).matches("\\d+")) {
+      return Integer.parseInt(suffix.substring(1));
+    }
+    return 0;
   }
 
   private void persistPipelineState(PipelineState pipelineState) throws PipelineStoreException {
@@ -222,42 +326,38 @@ public class FilePipelineStateStore implements PipelineStateStore {
     } finally {
       dataStore.release();
     }
-    // In addition, append the state of the pipeline to the pipelineState.json present in the directory of that
-    // pipeline
-    LogUtil.log(pipelineState.getPipelineId(), pipelineState.getRev(), STATE, pipelineString);
+    // In addition, append the state of the pipeline to the history log present in the directory of that pipeline
+    try {
+      getHistoryLog(pipelineState.getPipelineId(), pipelineState.getRev())
+          .append(pipelineState.getTimeStamp(), pipelineString.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new PipelineStoreException(ContainerError.CONTAINER_0100, e.toString(), e);
+    }
   }
 
   private File[] getHistoryStateFiles(String pipelineName, String rev) {
-    // RollingFileAppender creates backup files when the error files reach the size limit.
-    // The backup files are of the form errors.json.1, errors.json.2 etc
-    // Need to delete all the backup files
+    // Besides the segments of the history log, pipelines created by older versions may still have the
+    // pipelineStateHistory.json file (and its pipelineStateHistory.json.1, .2 ... backups) if never migrated.
     File pipelineDir = PipelineDirectoryUtil.getPipelineDir(runtimeInfo, pipelineName, rev);
-    File[] errorFiles = pipelineDir.listFiles(new FilenameFilter() {
+    List<File> historyFiles = new ArrayList<>(Arrays.asList(PipelineStateHistoryLog.getSegmentFiles(pipelineDir)));
+    File[] legacyFiles = pipelineDir.listFiles(new FilenameFilter() {
       @Override
       public boolean accept(File dir, String name) {
-        if (name.contains(STATE_FILE_HISTORY)) {
-          return true;
-        }
-        return false;
+        return name.contains(STATE_FILE_HISTORY);
       }
     });
-    return errorFiles;
+    if (legacyFiles != null) {
+      historyFiles.addAll(Arrays.asList(legacyFiles));
+    }
+    return historyFiles.toArray(new File[historyFiles.size()]);
   }
 
   private File getPipelineStateFile(String name, String rev) {
     return new File(PipelineDirectoryUtil.getPipelineDir(runtimeInfo, name, rev), STATE_FILE);
   }
 
-  private File getPipelineStateHistoryFile(String name, String rev) {
-    return new File(PipelineDirectoryUtil.getPipelineDir(runtimeInfo, name, rev), STATE_FILE_HISTORY);
-  }
-
   private boolean pipelineDirExists(String pipelineName, String rev) {
     return PipelineDirectoryUtil.getPipelineDir(runtimeInfo, pipelineName, rev).exists();
   }
 
-  private boolean pipelineStateHistoryFileExists(String pipelineName, String rev) {
-    return getPipelineStateHistoryFile(pipelineName, rev).exists();
-  }
-
 }
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.execution.store;
+
+import com.streamsets.pipeline.api.impl.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Append-only log of pipeline state transitions split in segments.
+ * <p/>
+ * Every segment is made of a <code>.log</code> file holding the JSON entries (one per line) and of a sidecar
+ * <code>.idx</code> file holding a fixed size entry (position, length, timestamp) per JSON entry. The index allows
+ * reading the history newest-first, paging over it and looking up time ranges without reading the whole log.
+ * <p/>
+ * When the active segment reaches the configured size a new segment is started and the oldest segments beyond the
+ * retention limits (number of segments and age) are deleted.
+ */
+public class PipelineStateHistoryLog {
+  private static final Logger LOG = LoggerFactory.getLogger(PipelineStateHistoryLog.class);
+
+  static final String SEGMENT_PREFIX = "pipelineStateHistory-";
+  static final String LOG_SUFFIX = ".log";
+  static final String INDEX_SUFFIX = ".idx";
+
+  // position (long) + length (int) + timestamp (long)
+  static final int INDEX_ENTRY_SIZE = 8 + 4 + 8;
+
+  private static final byte NEW_LINE = '\n';
+
+  private final File dir;
+  private final long maxSegmentSize;
+  private final int maxSegments;
+  private final long maxAgeMillis;
+  // oldest first
+  private final List<Segment> segments;
+
+  /**
+   * Opens (recovering if necessary) the history log living in the given directory.
+   *
+   * @param dir directory holding the segment files.
+   * @param maxSegmentSize size in bytes after which a new segment is started.
+   * @param maxSegments maximum number of segments to retain, the active one included.
+   * @param maxAgeMillis segments whose newest entry is older than this are deleted, <code>0</code> disables it.
+   */
+  public PipelineStateHistoryLog(File dir, long maxSegmentSize, int maxSegments, long maxAgeMillis)
+      throws IOException {
+    Utils.checkArgument(maxSegmentSize > 0, "maxSegmentSize must be greater than zero");
+    Utils.checkArgument(maxSegments > 0, "maxSegments must be greater than zero");
+    this.dir = dir;
+    this.maxSegmentSize = maxSegmentSize;
+    this.maxSegments = maxSegments;
+    this.maxAgeMillis = maxAgeMillis;
+    this.segments = new ArrayList<>();
+    load();
+  }
+
+  /**
+   * Returns if there is any segment file in the given directory.
+   */
+  public static boolean exists(File dir) {
+    File[] files = dir.listFiles(new SegmentFilter());
+    return files != null && files.length > 0;
+  }
+
+  /**
+   * Returns all the segment files (logs and indexes) in the given directory.
+   */
+  public static File[] getSegmentFiles(File dir) {
+    File[] files = dir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(SEGMENT_PREFIX) && (name.endsWith(LOG_SUFFIX) || name.endsWith(INDEX_SUFFIX));
+      }
+    });
+    return (files == null) ? new File[0] : files;
+  }
+
+  public synchronized void append(long timestamp, byte[] entry) throws IOException {
+    Segment active = (segments.isEmpty()) ? null : segments.get(segments.size() - 1);
+    if (active == null || active.logSize >= maxSegmentSize) {
+      active = roll(active);
+    }
+    ByteBuffer logBuffer = ByteBuffer.allocate(entry.length + 1);
+    logBuffer.put(entry).put(NEW_LINE).flip();
+    ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+    indexBuffer.putLong(active.logSize).putInt(entry.length).putLong(timestamp).flip();
+    // log first, index last: an entry only becomes visible once its index entry is fully written
+    try (FileChannel channel = openForAppend(active.logFile)) {
+      writeFully(channel, logBuffer);
+    }
+    try (FileChannel channel = openForAppend(active.indexFile)) {
+      writeFully(channel, indexBuffer);
+    }
+    active.logSize += entry.length + 1;
+    if (active.entries == 0) {
+      active.firstTimestamp = timestamp;
+    }
+    active.lastTimestamp = timestamp;
+    active.entries++;
+  }
+
+  /**
+   * Returns, newest first, the entries whose timestamp is within the given range (both ends inclusive).
+   *
+   * @param fromTimestamp oldest timestamp to return.
+   * @param toTimestamp newest timestamp to return.
+   * @param offset number of matching entries to skip, newest first.
+   * @param len maximum number of entries to return, negative means no limit.
+   */
+  public synchronized List<byte[]> read(long fromTimestamp, long toTimestamp, int offset, int len)
+      throws IOException {
+    List<byte[]> entries = new ArrayList<>();
+    if (len == 0) {
+      return entries;
+    }
+    long toSkip = Math.max(offset, 0);
+    for (int s = segments.size() - 1; s >= 0; s--) {
+      Segment segment = segments.get(s);
+      if (segment.entries == 0 || segment.firstTimestamp > toTimestamp || segment.lastTimestamp < fromTimestamp) {
+        continue;
+      }
+      if (toSkip >= segment.entries && segment.firstTimestamp >= fromTimestamp
+          && segment.lastTimestamp <= toTimestamp) {
+        // the whole segment is within the range and within the entries to skip, no need to look at it
+        toSkip -= segment.entries;
+        continue;
+      }
+      try (
+          FileChannel index = FileChannel.open(segment.indexFile.toPath(), StandardOpenOption.READ);
+          FileChannel log = FileChannel.open(segment.logFile.toPath(), StandardOpenOption.READ)
+      ) {
+        ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        for (long i = findLastAtOrBefore(index, segment.entries, toTimestamp, indexEntry); i >= 0; i--) {
+          readIndexEntry(index, i, indexEntry);
+          long position = indexEntry.getLong();
+          int length = indexEntry.getInt();
+          long timestamp = indexEntry.getLong();
+          if (timestamp < fromTimestamp) {
+            break;
+          }
+          if (toSkip > 0) {
+            toSkip--;
+            continue;
+          }
+          ByteBuffer data = ByteBuffer.allocate(length);
+          readFully(log, data, position);
+          entries.add(data.array());
+          if (len > 0 && entries.size() == len) {
+            return entries;
+          }
+        }
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Returns the number of entries in the log.
+   */
+  public synchronized long size() {
+    long size = 0;
+    for (Segment segment : segments) {
+      size += segment.entries;
+    }
+    return size;
+  }
+
+  /**
+   * Returns if the files of the active segment are not the ones this log wrote, i.e. they were deleted along with
+   * the pipeline directory. A stale log must be opened again.
+   */
+  public synchronized boolean isStale() {
+    if (segments.isEmpty()) {
+      return exists(dir);
+    }
+    Segment active = segments.get(segments.size() - 1);
+    if (!active.logFile.exists() || active.logFile.length() != active.logSize ||
+        active.indexFile.length() != active.entries * INDEX_ENTRY_SIZE) {
+      return true;
+    }
+    return active.fileKey != null && !active.fileKey.equals(getFileKey(active.logFile));
+  }
+
+  /**
+   * Deletes all the segments of the log.
+   */
+  public synchronized void delete() {
+    for (Segment segment : segments) {
+      segment.delete();
+    }
+    segments.clear();
+  }
+
+  private void load() throws IOException {
+    File[] logFiles = dir.listFiles(new SegmentFilter());
+    if (logFiles == null) {
+      return;
+    }
+    for (File logFile : logFiles) {
+      String name = logFile.getName();
+      long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - LOG_SUFFIX.length()));
+      segments.add(new Segment(sequence));
+    }
+    Collections.sort(segments, new Comparator<Segment>() {
+      @Override
+      public int compare(Segment o1, Segment o2) {
+        return Long.compare(o1.sequence, o2.sequence);
+      }
+    });
+    for (int i = 0; i < segments.size(); i++) {
+      segments.get(i).recover(i == segments.size() - 1);
+    }
+    if (!segments.isEmpty()) {
+      Segment active = segments.get(segments.size() - 1);
+      active.fileKey = getFileKey(active.logFile);
+    }
+  }
+
+  private Segment roll(Segment active) throws IOException {
+    Segment segment = new Segment((active == null) ? 0 : active.sequence + 1);
+    if (!segment.logFile.createNewFile() || !segment.indexFile.createNewFile()) {
+      throw new IOException(Utils.format("Could not create history segment '{}'", segment.logFile));
+    }
+    segment.fileKey = getFileKey(segment.logFile);
+    segments.add(segment);
+    prune();
+    return segment;
+  }
+
+  private static Object getFileKey(File file) {
+    try {
+      return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    } catch (IOException ex) {
+      return null;
+    }
+  }
+
+  private void prune() {
+    long oldestToRetain = (maxAgeMillis > 0) ? System.currentTimeMillis() - maxAgeMillis : Long.MIN_VALUE;
+    // never prune the active segment
+    while (segments.size() > 1 &&
+        (segments.size() > maxSegments || segments.get(0).lastTimestamp < oldestToRetain)) {
+      Segment oldest = segments.remove(0);
+      LOG.debug("Pruning history segment '{}'", oldest.logFile);
+      oldest.delete();
+    }
+  }
+
+  // binary search over the index, timestamps are appended in increasing order
+  private static long findLastAtOrBefore(FileChannel index, long entries, long timestamp, ByteBuffer indexEntry)
+      throws IOException {
+    long low = 0;
+    long high = entries - 1;
+    long found = -1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      readIndexEntry(index, mid, indexEntry);
+      if (indexEntry.getLong(8 + 4) <= timestamp) {
+        found = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return found;
+  }
+
+  private static void readIndexEntry(FileChannel index, long entry, ByteBuffer indexEntry) throws IOException {
+    indexEntry.clear();
+    readFully(index, indexEntry, entry * INDEX_ENTRY_SIZE);
+    indexEntry.flip();
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException(Utils.format("Unexpected end of history file at position '{}'", position));
+      }
+      position += read;
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static FileChannel openForAppend(File file) throws IOException {
+    return FileChannel.open(
+        file.toPath(),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND
+    );
+  }
+
+  private static class SegmentFilter implements FilenameFilter {
+    @Override
+    public boolean accept(File dir, String name) {
+      return name.startsWith(SEGMENT_PREFIX) && name.endsWith(LOG_SUFFIX) &&
+          name.substring(SEGMENT_PREFIX.length(), name.length() - LOG_SUFFIX.length()).matches("\\d+");
+    }
+  }
+
+  private class Segment {
+    private final long sequence;
+    private final File logFile;
+    private final File indexFile;
+    private long entries;
+    private long logSize;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    // identity of the log file of the active segment, null if the file system does not have one
+    private Object fileKey;
+
+    Segment(long sequence) {
+      this.sequence = sequence;
+      String name = SEGMENT_PREFIX + String.format("%010d", sequence);
+      logFile = new File(dir, name + LOG_SUFFIX);
+      indexFile = new File(dir, name + INDEX_SUFFIX);
+    }
+
+    // an interrupted append can leave a partial log entry and/or a partial index entry, we drop them
+    void recover(boolean active) throws IOException {
+      long logLength = logFile.length();
+      long indexLength = indexFile.exists() ? indexFile.length() : 0;
+      entries = indexLength / INDEX_ENTRY_SIZE;
+      try (FileChannel index = FileChannel.open(
+          indexFile.toPath(),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.READ,
+          StandardOpenOption.WRITE
+      )) {
+        ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        while (entries > 0) {
+          readIndexEntry(index, entries - 1, indexEntry);
+          long end = indexEntry.getLong() + indexEntry.getInt() + 1;
+          lastTimestamp = indexEntry.getLong();
+          if (end <= logLength) {
+            logSize = end;
+            break;
+          }
+          entries--;
+        }
+        if (entries > 0) {
+          readIndexEntry(index, 0, indexEntry);
+          firstTimestamp = indexEntry.getLong(8 + 4);
+        } else {
+          logSize = 0;
+        }
+        if (index.size() != entries * INDEX_ENTRY_SIZE) {
+          LOG.warn("Truncating history index '{}' to '{}' entries", indexFile, entries);
+          index.truncate(entries * INDEX_ENTRY_SIZE);
+        }
+      }
+      if (active && logLength != logSize) {
+        LOG.warn("Truncating history log '{}' to '{}' bytes", logFile, logSize);
+        try (FileChannel log = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+          log.truncate(logSize);
+        }
+      }
+    }
+
+    void delete() {
+      if (!logFile.delete() && logFile.exists()) {
+        LOG.warn("Failed to delete history segment '{}'", logFile);
+      }
+      if (!indexFile.delete() && indexFile.exists()) {
+        LOG.warn("Failed to delete history index '{}'", indexFile);
+      }
+    }
+  }
+
+}
@@ -73,6 +73,23 @@ public class SlavePipelineStateStore implements PipelineStateStore {
     return ImmutableList.of(pipelineState);
   }
 
+  @Override
+  public List<PipelineState> getHistory(
+      String name,
+      String rev,
+      long fromTimestamp,
+      long toTimestamp,
+      int offset,
+      int len
+  ) throws PipelineStoreException {
+    PipelineState state = pipelineState;
+    if (state == null || offset > 0 || len == 0 || state.getTimeStamp() < fromTimestamp ||
+        state.getTimeStamp() > toTimestamp) {
+      return ImmutableList.of();
+    }
+    return ImmutableList.of(state);
+  }
+
   @Override
   public void deleteHistory(String name, String rev) {
     throw new UnsupportedOperationException();
@@ -21,4 +21,21 @@ public interface MetricsEventListener extends EventListener {
 
   void notification(String metrics);
 
+  /**
+   * Listeners that can merge delta messages into the last full snapshot they received get only the changed metrics
+   * after the first notification, see {@link MetricsSnapshot}.
+   */
+  default boolean acceptsDeltas() {
+    return false;
+  }
+
+  /**
+   * Same as {@link #notification(String)}, returns false if the metrics were discarded instead of being sent. A
+   * listener accepting deltas gets a full snapshot after a discarded message.
+   */
+  default boolean offerNotification(String metrics) {
+    notification(metrics);
+    return true;
+  }
+
 }
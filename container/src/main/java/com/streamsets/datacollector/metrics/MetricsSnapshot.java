@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.annotations.VisibleForTesting;
+import com.streamsets.datacollector.json.ObjectMapperFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Point in time view of the metrics of a pipeline, taken once per refresh and shared by all its subscribers.
+ *
+ * The full and the delta JSON messages are serialized lazily and at most once, so that every subscriber receiving the
+ * same message gets the same string. The delta carries only the metrics whose value changed since the previous
+ * snapshot, a null value for every metric that was removed, and a <code>"delta" : true</code> property so that clients
+ * can tell it apart from a full snapshot. The metric trees are never modified once the snapshot is created.
+ */
+public class MetricsSnapshot {
+  public static final String DELTA = "delta";
+
+  private final ObjectMapper objectMapper;
+  private final ObjectNode metrics;
+  private final ObjectNode previous;
+  private String full;
+  private String delta;
+  private boolean deltaComputed;
+
+  public MetricsSnapshot(ObjectNode metrics, ObjectNode previous) {
+    this.objectMapper = ObjectMapperFactory.getOneLine();
+    this.metrics = metrics;
+    this.previous = previous;
+  }
+
+  public static MetricsSnapshot of(Object metrics, ObjectNode previous) {
+    return new MetricsSnapshot((ObjectNode) ObjectMapperFactory.getOneLine().valueToTree(metrics), previous);
+  }
+
+  public ObjectNode getMetrics() {
+    return metrics;
+  }
+
+  public synchronized String getFull() throws IOException {
+    if (full == null) {
+      full = objectMapper.writeValueAsString(metrics);
+    }
+    return full;
+  }
+
+  /**
+   * Returns the changes since the previous snapshot, the full snapshot if there is no previous one, or NULL if no
+   * metric changed.
+   */
+  public synchronized String getDelta() throws IOException {
+    if (!deltaComputed) {
+      if (previous == null) {
+        delta = getFull();
+      } else {
+        ObjectNode diff = diff(previous, metrics);
+        delta = (diff == null) ? null : objectMapper.writeValueAsString(diff);
+      }
+      deltaComputed = true;
+    }
+    return delta;
+  }
+
+  @VisibleForTesting
+  static ObjectNode diff(ObjectNode previous, ObjectNode current) {
+    ObjectNode diff = JsonNodeFactory.instance.objectNode();
+    Iterator<Map.Entry<String, JsonNode>> fields = current.fields();
+    while (fields.hasNext()) {
+      Map.Entry<String, JsonNode> field = fields.next();
+      JsonNode before = previous.get(field.getKey());
+      if (before != null && before.isObject() && field.getValue().isObject()) {
+        // metric sections (gauges, counters, meters...), compare metric by metric
+        ObjectNode changed = diffSection((ObjectNode) before, (ObjectNode) field.getValue());
+        if (changed.size() > 0) {
+          diff.set(field.getKey(), changed);
+        }
+      } else if (!field.getValue().equals(before)) {
+        diff.set(field.getKey(), field.getValue());
+      }
+    }
+    Iterator<String> names = previous.fieldNames();
+    while (names.hasNext()) {
+      String name = names.next();
+      if (!current.has(name)) {
+        diff.putNull(name);
+      }
+    }
+    if (diff.size() == 0) {
+      return null;
+    }
+    diff.put(DELTA, true);
+    return diff;
+  }
+
+  private static ObjectNode diffSection(ObjectNode previous, ObjectNode current) {
+    ObjectNode changed = JsonNodeFactory.instance.objectNode();
+    Iterator<Map.Entry<String, JsonNode>> metrics = current.fields();
+    while (metrics.hasNext()) {
+      Map.Entry<String, JsonNode> metric = metrics.next();
+      if (!metric.getValue().equals(previous.get(metric.getKey()))) {
+        changed.set(metric.getKey(), metric.getValue());
+      }
+    }
+    Iterator<String> names = previous.fieldNames();
+    while (names.hasNext()) {
+      String name = names.next();
+      if (!current.has(name)) {
+        changed.putNull(name);
+      }
+    }
+    return changed;
+  }
+
+}
@@ -18,19 +18,27 @@ package com.streamsets.datacollector.record;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.streamsets.pipeline.api.impl.ErrorMessage;
 import com.streamsets.pipeline.api.impl.LocalizableString;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.impl.Utils;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
+/**
+ * Record header.
+ * <p/>
+ * System attributes are kept in fields, user attributes in a small open addressing map that is created on first use.
+ * The stages path and the tracking IDs are kept as immutable parent-pointer chains shared between a record and its
+ * clones, they are rendered to strings only when requested.
+ */
 public class HeaderImpl implements Record.Header, Predicate<String>, Cloneable, Serializable {
   private static final String RESERVED_PREFIX = "_.";
   private static final String STAGE_CREATOR_INSTANCE_ATTR = RESERVED_PREFIX + "stageCreator";
@@ -51,16 +59,33 @@ public class HeaderImpl implements Record.Header, Predicate<String>, Cloneable,
   private static final String ERROR_STACKTRACE = RESERVED_PREFIX + "errorStackTrace";
   //Note: additional fields should also define in ScriptRecord
 
-  private Map<String, Object> map;
+  private String stageCreator;
+  private String sourceId;
+  private StagesPath stagesPath;
+  // either a String or a TrackingId
+  private Object trackingId;
+  private Object previousTrackingId;
+  private byte[] raw;
+  private String rawMimeType;
+  private String errorDataCollectorId;
+  private String errorPipelineName;
+  private String errorCode;
+  // either a String or a LocalizableString
+  private Object errorMessage;
+  private String errorStage;
+  private String errorStageLabel;
+  private Long errorTimestamp;
+  private String errorStackTrace;
+  private Record sourceRecord;
+  private Attributes attributes;
 
   public HeaderImpl() {
-    map = new HashMap<>();
-    map.put(SOURCE_RECORD_ATTR, null);
   }
 
   // for clone() purposes
   private HeaderImpl(HeaderImpl header) {
-    this.map = new HashMap<>(header.map);
+    copyFields(header);
+    attributes = (header.attributes != null && header.attributes.size() > 0) ? new Attributes(header.attributes) : null;
   }
 
   // Predicate interface
@@ -74,58 +99,57 @@ public class HeaderImpl implements Record.Header, Predicate<String>, Cloneable,
 
   @Override
   public String getStageCreator() {
-    return (String) map.get(STAGE_CREATOR_INSTANCE_ATTR);
+    return stageCreator;
   }
 
   @Override
   public String getSourceId() {
-    return (String) map.get(RECORD_SOURCE_ID_ATTR);
+    return sourceId;
   }
 
   @Override
   public String getStagesPath() {
-    return (String) map.get(STAGES_PATH_ATTR);
+    return (stagesPath != null) ? stagesPath.toString() : null;
   }
 
   @Override
   public String getTrackingId() {
-    return (String) map.get(TRACKING_ID_ATTR);
+    return (trackingId != null) ? trackingId.toString() : null;
   }
 
   @Override
   public String getPreviousTrackingId() {
-    return (String) map.get(PREVIOUS_TRACKING_ID_ATTR);
+    return (previousTrackingId != null) ? previousTrackingId.toString() : null;
   }
 
   @Override
   public byte[] getRaw() {
-    byte[] raw = (byte[]) map.get(RAW_DATA_ATTR);
     return (raw != null) ? raw.clone() : null;
   }
 
   @Override
   public String getRawMimeType() {
-    return (String) map.get(RAW_MIME_TYPE_ATTR);
+    return rawMimeType;
   }
 
   @Override
   public String getErrorDataCollectorId() {
-    return (String) map.get(ERROR_DATACOLLECTOR_ID_ATTR);
+    return errorDataCollectorId;
   }
 
   @Override
   public String getErrorPipelineName() {
-    return (String) map.get(ERROR_PIPELINE_NAME_ATTR);
+    return errorPipelineName;
   }
 
   @Override
   public String getErrorCode() {
-    return (String) map.get(ERROR_CODE_ATTR);
+    return errorCode;
   }
 
   @Override
   public String getErrorMessage() {
-    final Object error = map.get(ERROR_MESSAGE_ATTR);
+    final Object error = errorMessage;
     return (error == null)
            ? null
            : (error instanceof LocalizableString) ? ((LocalizableString) error).getLocalized() : (String) error;
@@ -133,28 +157,37 @@ public class HeaderImpl implements Record.Header, Predicate<String>, Cloneable,
 
   @Override
   public String getErrorStage() {
-    return (String) map.get(ERROR_STAGE_ATTR);
+    return errorStage;
   }
 
   @Override
   public String getErrorStageLabel() {
-    return (String) map.get(ERROR_STAGE_LABEL_ATTR);
+    return errorStageLabel;
   }
 
   @Override
   public long getErrorTimestamp() {
-    final Object time = map.get(ERROR_TIMESTAMP_ATTR);
-    return (time != null) ? (long) time : 0;
+    return (errorTimestamp != null) ? errorTimestamp : 0;
   }
 
   @Override
   public String getErrorStackTrace() {
-    return (String) map.get(ERROR_STACKTRACE);
+    return errorStackTrace;
   }
 
   @Override
   public Set<String> getAttributeNames() {
-    return ImmutableSet.copyOf(Sets.filter(map.keySet(), this));
+    if (attributes == null) {
+      return Collections.emptySet();
+    }
+    ImmutableSet.Builder<String> names = ImmutableSet.builder();
+    for (int i = 0; i < attributes.keys.length; i++) {
+      String key = attributes.keys[i];
+      if (key != null && apply(key)) {
+        names.add(key);
+      }
+    }
+    return names.build();
   }
 
   private static final String RESERVED_PREFIX_EXCEPTION_MSG = "Header attributes cannot start with '" +
@@ -164,7 +197,7 @@ public class HeaderImpl implements Record.Header, Predicate<String>, Cloneable,
   public String getAttribute(String name) {
     Preconditions.checkNotNull(name, "name cannot be null");
     Preconditions.checkArgument(!name.startsWith(RESERVED_PREFIX), RESERVED_PREFIX_EXCEPTION_MSG);
-    return (String) map.get(name);
+    return (attributes != null) ? attributes.get(name) : null;
   }
 
   @Override
@@ -172,21 +205,39 @@ public class HeaderImpl implements Record.Header, Predicate<String>, Cloneable,
     Preconditions.checkNotNull(name, "name cannot be null");
     Preconditions.checkArgument(!name.startsWith(RESERVED_PREFIX), RESERVED_PREFIX_EXCEPTION_MSG);
     Preconditions.checkNotNull(value, "value cannot be null");
-    map.put(name, value);
+    getOrCreateAttributes().put(name, value);
   }
 
   @Override
   public void deleteAttribute(String name) {
     Preconditions.checkNotNull(name, "name cannot be null");
     Preconditions.checkArgument(!name.startsWith(RESERVED_PREFIX), RESERVED_PREFIX_EXCEPTION_MSG);
-    map.remove(name);
+    if (attributes != null) {
+      attributes.remove(name);
+    }
+  }
+
+  private Attributes getOrCreateAttributes() {
+    if (attributes == null) {
+      attributes = new Attributes();
+    }
+    return attributes;
   }
 
   // For Json serialization
 
-  @SuppressWarnings("unchecked")
   public Map<String, String> getValues() {
-    return (Map) Maps.filterKeys(map, this);
+    if (attributes == null) {
+      return Collections.emptyMap();
+    }
+    Map<String, String> values = new LinkedHashMap<>();
+    for (int i = 0; i < attributes.keys.length; i++) {
+      String key = attributes.keys[i];
+      if (key != null && apply(key)) {
+        values.put(key, attributes.values[i]);
+      }
+    }
+    return Collections.unmodifiableMap(values);
   }
 
   public HeaderImpl(
@@ -207,7 +258,9 @@ public class HeaderImpl implements Record.Header, Predicate<String>, Cloneable,
     String errorStackTrace,
     Map<String, Object> map
   ) {
-    this.map = map;
+    for (Map.Entry<String, Object> entry : map.entrySet()) {
+      putAttribute(entry.getKey(), entry.getValue());
+    }
     setStageCreator(stageCreator);
     setSourceId(sourceId);
     if (stagesPath != null) {
@@ -229,44 +282,63 @@ public class HeaderImpl implements Record.Header, Predicate<String>, Cloneable,
       setRaw(raw);
       setRawMimeType(rawMimeType);
     }
-    map.put(SOURCE_RECORD_ATTR, null);
+    sourceRecord = null;
   }
 
   // HeaderImpl setter methods
 
   public void setStageCreator(String stateCreator) {
     Preconditions.checkNotNull(stateCreator, "stateCreator cannot be null");
-    map.put(STAGE_CREATOR_INSTANCE_ATTR, stateCreator);
+    this.stageCreator = stateCreator;
   }
 
   public void setSourceId(String sourceId) {
     Preconditions.checkNotNull(sourceId, "sourceId cannot be null");
-    map.put(RECORD_SOURCE_ID_ATTR, sourceId);
+    this.sourceId = sourceId;
   }
 
   public void setStagesPath(String stagePath) {
     Preconditions.checkNotNull(stagePath, "stagePath cannot be null");
-    map.put(STAGES_PATH_ATTR, stagePath);
+    this.stagesPath = new StagesPath(null, stagePath);
+  }
+
+  /**
+   * Appends a stage to the stages path, the path is shared with any clone of this header and rendered on demand.
+   */
+  public void addStageToStagesPath(String stage) {
+    Preconditions.checkNotNull(stage, "stage cannot be null");
+    this.stagesPath = new StagesPath(stagesPath, stage);
+  }
+
+  /**
+   * Sets the tracking ID to the source ID and the current stages path, moving the current tracking ID to the
+   * previous tracking ID. The tracking ID string is only built if requested.
+   */
+  public void createTrackingId() {
+    if (trackingId != null) {
+      previousTrackingId = trackingId;
+    }
+    trackingId = new TrackingId(sourceId, stagesPath);
   }
 
   public void setTrackingId(String trackingId) {
     Preconditions.checkNotNull(trackingId, "trackingId cannot be null");
-    map.put(TRACKING_ID_ATTR, trackingId);
+    this.trackingId = trackingId;
   }
 
   public void setPreviousTrackingId(String previousTrackingId) {
     Preconditions.checkNotNull(previousTrackingId, "previousTrackingId cannot be null");
-    map.put(PREVIOUS_TRACKING_ID_ATTR, previousTrackingId);
+    this.previousTrackingId = previousTrackingId;
   }
 
   public void setRaw(byte[] raw) {
     Preconditions.checkNotNull(raw, "raw cannot be null");
-    map.put(RAW_DATA_ATTR, raw.clone());
+    this.raw = raw.clone();
   }
 
   public void setRawMimeType(String rawMime) {
     Preconditions.checkNotNull(rawMime, "rawMime cannot be null");
-    map.put(RAW_MIME_TYPE_ATTR, rawMime);
+    this.rawMimeType = rawMime;
   }
 
   public void setError(String errorStage, String errorStageName, ErrorMessage errorMessage) {
@@ -294,77 +366,84 @@ public class HeaderImpl implements Record.Header, Predicate<String>, Cloneable,
   }
 
   public void setErrorContext(String datacollector, String pipelineName) {
-    map.put(ERROR_DATACOLLECTOR_ID_ATTR, datacollector);
-    map.put(ERROR_PIPELINE_NAME_ATTR, pipelineName);
-
+    errorDataCollectorId = datacollector;
+    errorPipelineName = pipelineName;
   }
+
   private void setError(
     String errorStage,
     String errorStageName,
     String errorCode,
-    String errorMessage,
+    Object errorMessage,
     long errorTimestamp,
     String errorStackTrace
   ) {
-    map.put(ERROR_STAGE_ATTR, errorStage);
-    map.put(ERROR_STAGE_LABEL_ATTR, errorStageName);
-    map.put(ERROR_CODE_ATTR, errorCode);
-    map.put(ERROR_MESSAGE_ATTR, errorMessage);
-    map.put(ERROR_TIMESTAMP_ATTR, errorTimestamp);
-    map.put(ERROR_STACKTRACE, errorStackTrace);
+    this.errorStage = errorStage;
+    this.errorStageLabel = errorStageName;
+    this.errorCode = errorCode;
+    this.errorMessage = errorMessage;
+    this.errorTimestamp = errorTimestamp;
+    this.errorStackTrace = errorStackTrace;
   }
 
   public void setSourceRecord(Record record) {
-    map.put(SOURCE_RECORD_ATTR, record);
+    sourceRecord = record;
   }
 
   public Record getSourceRecord() {
-    return (Record) map.get(SOURCE_RECORD_ATTR);
+    return sourceRecord;
   }
 
   // Object methods
 
   @Override
   public int hashCode() {
-    return map.hashCode();
+    int hash = Objects.hash(
+        stageCreator,
+        sourceId,
+        getStagesPath(),
+        getTrackingId(),
+        getPreviousTrackingId(),
+        rawMimeType,
+        errorDataCollectorId,
+        errorPipelineName,
+        errorCode,
+        errorMessage,
+        errorStage,
+        errorStageLabel,
+        errorTimestamp,
+        errorStackTrace
+    );
+    hash = 31 * hash + Arrays.hashCode(raw);
+    return 31 * hash + ((attributes != null) ? attributes.hashCode() : 0);
   }
 
   @Override
   public boolean equals(Object obj) {
-    boolean eq = this == obj;
-    if (!eq && obj != null && obj instanceof HeaderImpl) {
-      Map<String, Object> otherMap = ((HeaderImpl) obj).map;
-      eq = map.size() == otherMap.size();
-      if (eq) {
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-          String key = entry.getKey();
-          Object value = entry.getValue();
-          Object otherValue = otherMap.get(key);
-          switch (key) {
-            case SOURCE_RECORD_ATTR:
-              break;
-            case RAW_DATA_ATTR:
-              eq = value == otherValue;
-              if (!eq && value != null && otherValue != null) {
-                byte[] arr = (byte[]) value;
-                byte[] otherArr = (byte[]) otherValue;
-                eq = arr.length == otherArr.length;
-                for (int i = 0; eq && i < arr.length; i++) {
-                  eq = arr[i] == otherArr[i];
-                }
-              }
-              break;
-            default:
-              eq = (value == otherValue) || (value != null && value.equals(otherValue));
-              break;
-          }
-          if (!eq) {
-            break;
-          }
-        }
-      }
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof HeaderImpl)) {
+      return false;
     }
-    return eq;
+    HeaderImpl other = (HeaderImpl) obj;
+    // the source record is not part of the header identity
+    return Objects.equals(stageCreator, other.stageCreator) &&
+        Objects.equals(sourceId, other.sourceId) &&
+        Objects.equals(getStagesPath(), other.getStagesPath()) &&
+        Objects.equals(getTrackingId(), other.getTrackingId()) &&
+        Objects.equals(getPreviousTrackingId(), other.getPreviousTrackingId()) &&
+        Arrays.equals(raw, other.raw) &&
+        Objects.equals(rawMimeType, other.rawMimeType) &&
+        Objects.equals(errorDataCollectorId, other.errorDataCollectorId) &&
+        Objects.equals(errorPipelineName, other.errorPipelineName) &&
+        Objects.equals(errorCode, other.errorCode) &&
+        Objects.equals(errorMessage, other.errorMessage) &&
+        Objects.equals(errorStage, other.errorStage) &&
+        Objects.equals(errorStageLabel, other.errorStageLabel) &&
+        Objects.equals(errorTimestamp, other.errorTimestamp) &&
+        Objects.equals(errorStackTrace, other.errorStackTrace) &&
+        Attributes.equals(attributes, other.attributes);
   }
 
   @Override
@@ -379,13 +458,328 @@ public class HeaderImpl implements Record.Header, Predicate<String>, Cloneable,
 
   // ImmutableMap can't have null values and our map could have, so use unmodifiable map
   public Map<String, Object> getAllAttributes() {
+    Map<String, Object> map = new HashMap<>();
+    if (attributes != null) {
+      for (int i = 0; i < attributes.keys.length; i++) {
+        if (attributes.keys[i] != null) {
+          map.put(attributes.keys[i], attributes.values[i]);
+        }
+      }
+    }
+    putIfNotNull(map, STAGE_CREATOR_INSTANCE_ATTR, stageCreator);
+    putIfNotNull(map, RECORD_SOURCE_ID_ATTR, sourceId);
+    putIfNotNull(map, STAGES_PATH_ATTR, getStagesPath());
+    putIfNotNull(map, TRACKING_ID_ATTR, getTrackingId());
+    putIfNotNull(map, PREVIOUS_TRACKING_ID_ATTR, getPreviousTrackingId());
+    putIfNotNull(map, RAW_DATA_ATTR, raw);
+    putIfNotNull(map, RAW_MIME_TYPE_ATTR, rawMimeType);
+    putIfNotNull(map, ERROR_DATACOLLECTOR_ID_ATTR, errorDataCollectorId);
+    putIfNotNull(map, ERROR_PIPELINE_NAME_ATTR, errorPipelineName);
+    putIfNotNull(map, ERROR_STAGE_ATTR, errorStage);
+    putIfNotNull(map, ERROR_STAGE_LABEL_ATTR, errorStageLabel);
+    putIfNotNull(map, ERROR_CODE_ATTR, errorCode);
+    putIfNotNull(map, ERROR_MESSAGE_ATTR, errorMessage);
+    putIfNotNull(map, ERROR_TIMESTAMP_ATTR, errorTimestamp);
+    putIfNotNull(map, ERROR_STACKTRACE, errorStackTrace);
+    map.put(SOURCE_RECORD_ATTR, sourceRecord);
     return Collections.unmodifiableMap(map);
   }
 
   public Map<String, Object> setAllAttributes(Map<String, Object> newAttrs) {
-    // ImmutableMap can't have null values and our map could have, so use unmodifiable map
-    Map<String, Object> old = Collections.unmodifiableMap(map);
-    map = new HashMap<>(newAttrs);
+    Map<String, Object> old = getAllAttributes();
+    copyFields(new HeaderImpl());
+    for (Map.Entry<String, Object> entry : newAttrs.entrySet()) {
+      putAttribute(entry.getKey(), entry.getValue());
+    }
     return old;
   }
+
+  private void copyFields(HeaderImpl header) {
+    stageCreator = header.stageCreator;
+    sourceId = header.sourceId;
+    stagesPath = header.stagesPath;
+    trackingId = header.trackingId;
+    previousTrackingId = header.previousTrackingId;
+    raw = header.raw;
+    rawMimeType = header.rawMimeType;
+    errorDataCollectorId = header.errorDataCollectorId;
+    errorPipelineName = header.errorPipelineName;
+    errorCode = header.errorCode;
+    errorMessage = header.errorMessage;
+    errorStage = header.errorStage;
+    errorStageLabel = header.errorStageLabel;
+    errorTimestamp = header.errorTimestamp;
+    errorStackTrace = header.errorStackTrace;
+    sourceRecord = header.sourceRecord;
+    attributes = header.attributes;
+  }
+
+  private static void putIfNotNull(Map<String, Object> map, String key, Object value) {
+    if (value != null) {
+      map.put(key, value);
+    }
+  }
+
+  // maps an attribute in the getAllAttributes() format to its slot
+  private void putAttribute(String key, Object value) {
+    switch (key) {
+      case STAGE_CREATOR_INSTANCE_ATTR:
+        stageCreator = (String) value;
+        break;
+      case RECORD_SOURCE_ID_ATTR:
+        sourceId = (String) value;
+        break;
+      case STAGES_PATH_ATTR:
+        stagesPath = (value != null) ? new StagesPath(null, (String) value) : null;
+        break;
+      case TRACKING_ID_ATTR:
+        trackingId = value;
+        break;
+      case PREVIOUS_TRACKING_ID_ATTR:
+        previousTrackingId = value;
+        break;
+      case RAW_DATA_ATTR:
+        raw = (byte[]) value;
+        break;
+      case RAW_MIME_TYPE_ATTR:
+        rawMimeType = (String) value;
+        break;
+      case ERROR_DATACOLLECTOR_ID_ATTR:
+        errorDataCollectorId = (String) value;
+            break;
+      case ERROR_PIPELINE_NAME_ATTR:
+        errorPipelineName = (String) value;
+            break;
+      case ERROR_CODE_ATTR:
+        errorCode = (String) value;
+        break;
+      case ERROR_MESSAGE_ATTR:
+        errorMessage = value;
+        break;
+      case ERROR_STAGE_ATTR:
+        errorStage = (String) value;
+        break;
+      case ERROR_STAGE_LABEL_ATTR:
+        errorStageLabel = (String) value;
+        break;
+      case ERROR_TIMESTAMP_ATTR:
+        errorTimestamp = (value != null) ? ((Number) value).longValue() : null;
+        break;
+      case ERROR_STACKTRACE:
+        errorStackTrace = (String) value;
+        break;
+      case SOURCE_RECORD_ATTR:
+        sourceRecord = (Record) value;
+        break;
+      default:
+        if (value != null) {
+          getOrCreateAttributes().put(key, value.toString());
+        }
+        break;
+    }
+  }
+
+  /**
+   * Immutable stages path node, a record and all its clones share the path up to the point they diverge.
+   */
+  private static final class StagesPath implements Serializable {
+    private StagesPath parent;
+    private String stage;
+    private transient String path;
+
+    // for Kryo
+    private StagesPath() {
+    }
+
+    StagesPath(StagesPath parent, String stage) {
+      this.parent = parent;
+      this.stage = stage;
+    }
+
+    @Override
+    public String toString() {
+      String str = path;
+      if (str == null) {
+        int count = 0;
+        int length = 0;
+        for (StagesPath node = this; node != null; node = node.parent) {
+          count++;
+          length += node.stage.length() + 1;
+        }
+        String[] stages = new String[count];
+        for (StagesPath node = this; node != null; node = node.parent) {
+          stages[--count] = node.stage;
+        }
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < stages.length; i++) {
+          if (i > 0) {
+            sb.append(':');
+          }
+          sb.append(stages[i]);
+        }
+        str = sb.toString();
+        path = str;
+      }
+      return str;
+    }
+  }
+
+  /**
+   * Tracking ID made of the source ID and the stages path at the time it was created.
+   */
+  private static final class TrackingId implements Serializable {
+    private String sourceId;
+    private StagesPath stagesPath;
+    private transient String id;
+
+    // for Kryo
+    private TrackingId() {
+    }
+
+    TrackingId(String sourceId, StagesPath stagesPath) {
+      this.sourceId = sourceId;
+      this.stagesPath = stagesPath;
+    }
+
+    @Override
+    public String toString() {
+      String str = id;
+      if (str == null) {
+        str = sourceId + "::" + ((stagesPath != null) ? stagesPath.toString() : null);
+        id = str;
+      }
+      return str;
+    }
+  }
+
+  /**
+   * String to string open addressing map with linear probing, headers usually carry a handful of attributes.
+   */
+  private static final class Attributes implements Serializable {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] keys;
+    private String[] values;
+    private int size;
+
+    Attributes() {
+      keys = new String[INITIAL_CAPACITY];
+      values = new String[INITIAL_CAPACITY];
+    }
+
+    Attributes(Attributes other) {
+      keys = other.keys.clone();
+      values = other.values.clone();
+      size = other.size;
+    }
+
+    int size() {
+      return size;
+    }
+
+    private static int hash(String key) {
+      int h = key.hashCode();
+      return h ^ (h >>> 16);
+    }
+
+    // index of the key if present, otherwise of the empty slot where it would go
+    private int slot(String key) {
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      while (keys[i] != null && !keys[i].equals(key)) {
+        i = (i + 1) & mask;
+      }
+      return i;
+    }
+
+    String get(String key) {
+      int i = slot(key);
+      return (keys[i] != null) ? values[i] : null;
+    }
+
+    void put(String key, String value) {
+      int i = slot(key);
+      if (keys[i] == null) {
+        // keep the load factor under 2/3
+        if ((size + 1) * 3 > keys.length * 2) {
+          resize(keys.length * 2);
+          i = slot(key);
+        }
+        keys[i] = key;
+        size++;
+      }
+      values[i] = value;
+    }
+
+    void remove(String key) {
+      int i = slot(key);
+      if (keys[i] == null) {
+        return;
+      }
+      size--;
+      // backward shift deletion, move following entries of the probe sequence into the hole so lookups don't
+      // need tombstones
+      int mask = keys.length - 1;
+      int j = i;
+      while (true) {
+        keys[i] = null;
+        values[i] = null;
+        do {
+          j = (j + 1) & mask;
+          if (keys[j] == null) {
+            return;
+          }
+          int home = hash(keys[j]) & mask;
+          // the entry at j can fill the hole at i only if its home slot is not cyclically within (i, j]
+          if ((i <= j) ? (i < home && home <= j) : (i < home || home <= j)) {
+            continue;
+          }
+          break;
+        } while (true);
+        keys[i] = keys[j];
+        values[i] = values[j];
+        i = j;
+      }
+    }
+
+    private void resize(int capacity) {
+      String[] oldKeys = keys;
+      String[] oldValues = values;
+      keys = new String[capacity];
+      values = new String[capacity];
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != null) {
+          int slot = slot(oldKeys[i]);
+          keys[slot] = oldKeys[i];
+          values[slot] = oldValues[i];
+        }
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = 0;
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] != null) {
+          hash += keys[i].hashCode() ^ values[i].hashCode();
+        }
+      }
+      return hash;
+    }
+
+    // null and empty are equal
+    static boolean equals(Attributes a, Attributes b) {
+      int aSize = (a != null) ? a.size : 0;
+      int bSize = (b != null) ? b.size : 0;
+      if (aSize != bSize) {
+        return false;
+      }
+      for (int i = 0; aSize > 0 && i < a.keys.length; i++) {
+        if (a.keys[i] != null && !a.values[i].equals(b.get(a.keys[i]))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
 }
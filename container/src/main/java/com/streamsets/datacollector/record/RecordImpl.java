@@ -79,18 +79,11 @@ public class RecordImpl implements Record, Cloneable {
   }
 
   public void addStageToStagePath(String stage) {
-    Preconditions.checkNotNull(stage, "stage cannot be null");
-    String currentPath = (header.getStagesPath() == null) ? "" : header.getStagesPath() + ":";
-    header.setStagesPath(currentPath + stage);
+    header.addStageToStagesPath(stage);
   }
 
   public void createTrackingId() {
-    String currentTrackingId = header.getTrackingId();
-    String newTrackingId = getHeader().getSourceId() + "::" + getHeader().getStagesPath();
-    if (currentTrackingId != null) {
-      header.setPreviousTrackingId(currentTrackingId);
-    }
-    header.setTrackingId(newTrackingId);
+    header.createTrackingId();
   }
 
   public boolean isInitialRecord() {
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.record.io;
+
+import com.streamsets.pipeline.api.Field;
+
+import java.io.IOException;
+
+/**
+ * Constants of the BIN1 record encoding.
+ *
+ * A BIN1 stream is a sequence of records, each one written as:
+ * <pre>
+ *   shape reference, [shape definition], header, field values
+ * </pre>
+ * The shape of a record is the tree of its field types, map keys, list sizes, null values and field attribute names.
+ * A shape definition is written only the first time the shape appears in the stream, later records refer to it by id
+ * and carry only their packed field values. As list sizes are part of the shape, only the first
+ * {@link #MAX_LIST_SHAPES} shapes containing lists are added to the dictionary, later ones are written inline.
+ * Header strings that repeat across records (stage names, stages path, error context, attribute names) are written
+ * once into a string dictionary. All integers are varints.
+ */
+final class BinRecordConstants {
+
+  // reference to a shape or a dictionary string
+  static final int REF_NULL = 0;
+  static final int REF_NEW = 1;
+  static final int REF_INLINE = 2;
+  static final int REF_FIRST_ID = 3;
+
+  static final int MAX_SHAPES = 1024;
+  static final int MAX_LIST_SHAPES = 64;
+  static final int MAX_STRINGS = 8192;
+
+  // field type codes, flags on the upper bits
+  static final int TYPE_NONE = 0;
+  static final int TYPE_BOOLEAN = 1;
+  static final int TYPE_CHAR = 2;
+  static final int TYPE_BYTE = 3;
+  static final int TYPE_SHORT = 4;
+  static final int TYPE_INTEGER = 5;
+  static final int TYPE_LONG = 6;
+  static final int TYPE_FLOAT = 7;
+  static final int TYPE_DOUBLE = 8;
+  static final int TYPE_DATE = 9;
+  static final int TYPE_DATETIME = 10;
+  static final int TYPE_TIME = 11;
+  static final int TYPE_DECIMAL = 12;
+  static final int TYPE_STRING = 13;
+  static final int TYPE_BYTE_ARRAY = 14;
+  static final int TYPE_MAP = 15;
+  static final int TYPE_LIST = 16;
+  static final int TYPE_LIST_MAP = 17;
+  static final int TYPE_MASK = 0x3f;
+  static final int ATTRIBUTES_FLAG = 0x40;
+  static final int NULL_FLAG = 0x80;
+
+  static final Field.Type[] TYPES = {
+      null,
+      Field.Type.BOOLEAN,
+      Field.Type.CHAR,
+      Field.Type.BYTE,
+      Field.Type.SHORT,
+      Field.Type.INTEGER,
+      Field.Type.LONG,
+      Field.Type.FLOAT,
+      Field.Type.DOUBLE,
+      Field.Type.DATE,
+      Field.Type.DATETIME,
+      Field.Type.TIME,
+      Field.Type.DECIMAL,
+      Field.Type.STRING,
+      Field.Type.BYTE_ARRAY,
+      Field.Type.MAP,
+      Field.Type.LIST,
+      Field.Type.LIST_MAP
+  };
+
+  // header bitmask
+  static final int HEADER_STAGE_CREATOR = 1;
+  static final int HEADER_SOURCE_ID = 1 << 1;
+  static final int HEADER_STAGES_PATH = 1 << 2;
+  static final int HEADER_TRACKING_ID = 1 << 3;
+  static final int HEADER_PREVIOUS_TRACKING_ID = 1 << 4;
+  static final int HEADER_RAW = 1 << 5;
+  static final int HEADER_RAW_MIME_TYPE = 1 << 6;
+  static final int HEADER_ERROR_DATA_COLLECTOR_ID = 1 << 7;
+  static final int HEADER_ERROR_PIPELINE_NAME = 1 << 8;
+  static final int HEADER_ERROR_STAGE = 1 << 9;
+  static final int HEADER_ERROR_STAGE_LABEL = 1 << 10;
+  static final int HEADER_ERROR_CODE = 1 << 11;
+  static final int HEADER_ERROR_MESSAGE = 1 << 12;
+  static final int HEADER_ERROR_STACK_TRACE = 1 << 13;
+  static final int HEADER_ATTRIBUTES = 1 << 14;
+
+  private BinRecordConstants() {}
+
+  static int getTypeCode(Field.Type type) throws IOException {
+    switch (type) {
+      case BOOLEAN:
+        return TYPE_BOOLEAN;
+      case CHAR:
+        return TYPE_CHAR;
+      case BYTE:
+        return TYPE_BYTE;
+      case SHORT:
+        return TYPE_SHORT;
+      case INTEGER:
+        return TYPE_INTEGER;
+      case LONG:
+        return TYPE_LONG;
+      case FLOAT:
+        return TYPE_FLOAT;
+      case DOUBLE:
+        return TYPE_DOUBLE;
+      case DATE:
+        return TYPE_DATE;
+      case DATETIME:
+        return TYPE_DATETIME;
+      case TIME:
+        return TYPE_TIME;
+      case DECIMAL:
+        return TYPE_DECIMAL;
+      case STRING:
+        return TYPE_STRING;
+      case BYTE_ARRAY:
+        return TYPE_BYTE_ARRAY;
+      case MAP:
+        return TYPE_MAP;
+      case LIST:
+        return TYPE_LIST;
+      case LIST_MAP:
+        return TYPE_LIST_MAP;
+      case FILE_REF:
+        throw new IOException("Cannot serialize FileRef fields.");
+      default:
+        throw new IOException("Unsupported field type " + type);
+    }
+  }
+
+}
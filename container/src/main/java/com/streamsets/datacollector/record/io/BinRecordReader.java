@@ -0,0 +1,461 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.record.io;
+
+import com.streamsets.datacollector.record.HeaderImpl;
+import com.streamsets.datacollector.record.RecordImpl;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.ext.RecordReader;
+import com.streamsets.pipeline.api.impl.Utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads records written by {@link BinRecordWriter}.
+ *
+ * Shapes and dictionary strings are defined in the stream the first time they are used, so starting at a given
+ * position means decoding and discarding all the records before it.
+ */
+public class BinRecordReader implements RecordReader {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream inputStream;
+  private final List<Shape> shapes;
+  private final List<String> strings;
+  private byte[] buffer;
+  private int pos;
+  private int limit;
+  private long bufferPosition;
+  private boolean closed;
+
+  public BinRecordReader(InputStream inputStream, long initialPosition) throws IOException {
+    this.inputStream = inputStream;
+    shapes = new ArrayList<>();
+    strings = new ArrayList<>();
+    buffer = new byte[BUFFER_SIZE];
+    while (getPosition() < initialPosition) {
+      if (readRecord() == null) {
+        throw new IOException(Utils.format("Position '{}' is beyond the end of the stream", initialPosition));
+      }
+    }
+    if (getPosition() != initialPosition) {
+      throw new IOException(Utils.format("Position '{}' is not at a record boundary", initialPosition));
+    }
+  }
+
+  @Override
+  public String getEncoding() {
+    return RecordEncoding.BIN1.name();
+  }
+
+  @Override
+  public long getPosition() {
+    return bufferPosition + pos;
+  }
+
+  @Override
+  public Record readRecord() throws IOException {
+    if (closed) {
+      throw new IOException("input has been closed");
+    }
+    if (pos == limit && !fill(1)) {
+      return null;
+    }
+
+    Shape shape;
+    int ref = readVarInt();
+    if (ref >= BinRecordConstants.REF_FIRST_ID) {
+      int id = ref - BinRecordConstants.REF_FIRST_ID;
+      if (id >= shapes.size()) {
+        throw new IOException(Utils.format("Unknown record shape '{}'", id));
+      }
+      shape = shapes.get(id);
+    } else {
+      shape = readShape();
+      if (ref == BinRecordConstants.REF_NEW) {
+        shapes.add(shape);
+      }
+    }
+
+    HeaderImpl header = readHeader();
+    return new RecordImpl(header, readValue(shape));
+  }
+
+  private Shape readShape() throws IOException {
+    int code = readByte() & 0xff;
+    int typeCode = code & BinRecordConstants.TYPE_MASK;
+    if (typeCode == BinRecordConstants.TYPE_NONE) {
+      return null;
+    }
+    if (typeCode >= BinRecordConstants.TYPES.length) {
+      throw new IOException(Utils.format("Unknown field type code '{}'", typeCode));
+    }
+    Shape shape = new Shape();
+    shape.typeCode = typeCode;
+    shape.type = BinRecordConstants.TYPES[typeCode];
+    shape.isNull = (code & BinRecordConstants.NULL_FLAG) != 0;
+    if ((code & BinRecordConstants.ATTRIBUTES_FLAG) != 0) {
+      shape.attributeNames = new String[readVarInt()];
+      for (int i = 0; i < shape.attributeNames.length; i++) {
+        shape.attributeNames[i] = readString();
+      }
+    }
+    if (!shape.isNull) {
+      switch (typeCode) {
+        case BinRecordConstants.TYPE_MAP:
+        case BinRecordConstants.TYPE_LIST_MAP:
+          int size = readVarInt();
+          shape.names = new String[size];
+          shape.children = new Shape[size];
+          for (int i = 0; i < size; i++) {
+            shape.names[i] = readString();
+            shape.children[i] = readShape();
+          }
+          break;
+        case BinRecordConstants.TYPE_LIST:
+          shape.children = new Shape[readVarInt()];
+          for (int i = 0; i < shape.children.length; i++) {
+            shape.children[i] = readShape();
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    return shape;
+  }
+
+  private HeaderImpl readHeader() throws IOException {
+    int mask = readVarInt();
+    String stageCreator = null;
+    String sourceId = null;
+    String stagesPath = null;
+    String trackingId = null;
+    String previousTrackingId = null;
+    byte[] raw = null;
+    String rawMimeType = null;
+    String errorDataCollectorId = null;
+    String errorPipelineName = null;
+    String errorStage = null;
+    String errorStageLabel = null;
+    String errorCode = null;
+    long errorTimestamp = 0;
+    String errorMessage = null;
+    String errorStackTrace = null;
+    Map<String, Object> attributes = Collections.emptyMap();
+
+    if ((mask & BinRecordConstants.HEADER_STAGE_CREATOR) != 0) {
+      stageCreator = readDictionaryString();
+    }
+    if ((mask & BinRecordConstants.HEADER_SOURCE_ID) != 0) {
+      sourceId = readString();
+    }
+    if ((mask & BinRecordConstants.HEADER_STAGES_PATH) != 0) {
+      stagesPath = readDictionaryString();
+    }
+    if ((mask & BinRecordConstants.HEADER_TRACKING_ID) != 0) {
+      trackingId = readString();
+    }
+    if ((mask & BinRecordConstants.HEADER_PREVIOUS_TRACKING_ID) != 0) {
+      previousTrackingId = readString();
+    }
+    if ((mask & BinRecordConstants.HEADER_RAW) != 0) {
+      raw = readBytes(readVarInt());
+    }
+    if ((mask & BinRecordConstants.HEADER_RAW_MIME_TYPE) != 0) {
+      rawMimeType = readDictionaryString();
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_DATA_COLLECTOR_ID) != 0) {
+      errorDataCollectorId = readDictionaryString();
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_PIPELINE_NAME) != 0) {
+      errorPipelineName = readDictionaryString();
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_STAGE) != 0) {
+      errorStage = readDictionaryString();
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_STAGE_LABEL) != 0) {
+      errorStageLabel = readDictionaryString();
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_CODE) != 0) {
+      errorCode = readDictionaryString();
+      errorTimestamp = zagZig(readVarLong());
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_MESSAGE) != 0) {
+      errorMessage = readString();
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_STACK_TRACE) != 0) {
+      errorStackTrace = readString();
+    }
+    if ((mask & BinRecordConstants.HEADER_ATTRIBUTES) != 0) {
+      int size = readVarInt();
+      attributes = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        String name = readDictionaryString();
+        attributes.put(name, readNullableString());
+      }
+    }
+
+    return new HeaderImpl(
+        stageCreator,
+        sourceId,
+        stagesPath,
+        trackingId,
+        previousTrackingId,
+        raw,
+        rawMimeType,
+        errorDataCollectorId,
+        errorPipelineName,
+        errorStage,
+        errorStageLabel,
+        errorCode,
+        errorMessage,
+        errorTimestamp,
+        errorStackTrace,
+        attributes
+    );
+  }
+
+  private Field readValue(Shape shape) throws IOException {
+    if (shape == null) {
+      return null;
+    }
+    Map<String, String> attributes = null;
+    if (shape.attributeNames != null) {
+      attributes = new LinkedHashMap<>();
+      for (String name : shape.attributeNames) {
+        attributes.put(name, readNullableString());
+      }
+    }
+    if (shape.isNull) {
+      return Field.create(shape.type, null, attributes);
+    }
+    Object value;
+    switch (shape.typeCode) {
+      case BinRecordConstants.TYPE_MAP:
+      case BinRecordConstants.TYPE_LIST_MAP:
+        Map<String, Field> map = shape.typeCode == BinRecordConstants.TYPE_MAP
+            ? new HashMap<String, Field>()
+            : new LinkedHashMap<String, Field>();
+        for (int i = 0; i < shape.names.length; i++) {
+          map.put(shape.names[i], readValue(shape.children[i]));
+        }
+        value = map;
+        break;
+      case BinRecordConstants.TYPE_LIST:
+        List<Field> list = new ArrayList<>(shape.children.length);
+        for (Shape child : shape.children) {
+          list.add(readValue(child));
+        }
+        value = list;
+        break;
+      case BinRecordConstants.TYPE_BOOLEAN:
+        value = readByte() != 0;
+        break;
+      case BinRecordConstants.TYPE_CHAR:
+        value = (char) readVarInt();
+        break;
+      case BinRecordConstants.TYPE_BYTE:
+        value = readByte();
+        break;
+      case BinRecordConstants.TYPE_SHORT:
+        value = (short) zagZig(readVarInt());
+        break;
+      case BinRecordConstants.TYPE_INTEGER:
+        value = zagZig(readVarInt());
+        break;
+      case BinRecordConstants.TYPE_LONG:
+        value = zagZig(readVarLong());
+        break;
+      case BinRecordConstants.TYPE_FLOAT:
+        value = Float.intBitsToFloat(readFixedInt());
+        break;
+      case BinRecordConstants.TYPE_DOUBLE:
+        value = Double.longBitsToDouble(readFixedLong());
+        break;
+      case BinRecordConstants.TYPE_DATE:
+      case BinRecordConstants.TYPE_DATETIME:
+      case BinRecordConstants.TYPE_TIME:
+        value = new Date(zagZig(readVarLong()));
+        break;
+      case BinRecordConstants.TYPE_DECIMAL:
+        int scale = zagZig(readVarInt());
+        value = new BigDecimal(new BigInteger(readBytes(readVarInt())), scale);
+        break;
+      case BinRecordConstants.TYPE_STRING:
+        value = readString();
+        break;
+      case BinRecordConstants.TYPE_BYTE_ARRAY:
+        value = readBytes(readVarInt());
+        break;
+      default:
+        throw new IOException(Utils.format("Unknown field type code '{}'", shape.typeCode));
+    }
+    return Field.create(shape.type, value, attributes);
+  }
+
+  private String readDictionaryString() throws IOException {
+    int ref = readVarInt();
+    if (ref >= BinRecordConstants.REF_FIRST_ID) {
+      int id = ref - BinRecordConstants.REF_FIRST_ID;
+      if (id >= strings.size()) {
+        throw new IOException(Utils.format("Unknown dictionary string '{}'", id));
+      }
+      return strings.get(id);
+    }
+    String value = readString();
+    if (ref == BinRecordConstants.REF_NEW) {
+      strings.add(value);
+    }
+    return value;
+  }
+
+  private String readNullableString() throws IOException {
+    return readVarInt() == BinRecordConstants.REF_NULL ? null : readString();
+  }
+
+  private String readString() throws IOException {
+    int length = readVarInt();
+    ensure(length);
+    String value = new String(buffer, pos, length, StandardCharsets.UTF_8);
+    pos += length;
+    return value;
+  }
+
+  private byte[] readBytes(int length) throws IOException {
+    ensure(length);
+    byte[] bytes = Arrays.copyOfRange(buffer, pos, pos + length);
+    pos += length;
+    return bytes;
+  }
+
+  private byte readByte() throws IOException {
+    ensure(1);
+    return buffer[pos++];
+  }
+
+  private int readVarInt() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = readByte();
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  private long readVarLong() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = readByte();
+      value |= (long) (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varlong");
+  }
+
+  private int readFixedInt() throws IOException {
+    ensure(4);
+    int value = (buffer[pos] & 0xff)
+        | (buffer[pos + 1] & 0xff) << 8
+        | (buffer[pos + 2] & 0xff) << 16
+        | (buffer[pos + 3] & 0xff) << 24;
+    pos += 4;
+    return value;
+  }
+
+  private long readFixedLong() throws IOException {
+    long low = readFixedInt() & 0xffffffffL;
+    long high = readFixedInt() & 0xffffffffL;
+    return low | high << 32;
+  }
+
+  private static int zagZig(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static long zagZig(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private void ensure(int count) throws IOException {
+    if (limit - pos < count && !fill(count)) {
+      throw new EOFException("Unexpected end of stream");
+    }
+  }
+
+  /**
+   * Make at least count bytes available in the buffer, returns false if the stream ends before.
+   */
+  private boolean fill(int count) throws IOException {
+    if (pos > 0) {
+      System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+      bufferPosition += pos;
+      limit -= pos;
+      pos = 0;
+    }
+    if (count > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(count, buffer.length * 2));
+    }
+    while (limit < count) {
+      int read = inputStream.read(buffer, limit, buffer.length - limit);
+      if (read < 0) {
+        return false;
+      }
+      limit += read;
+    }
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Decoded shape of a field.
+   */
+  private static final class Shape {
+    private int typeCode;
+    private Field.Type type;
+    private boolean isNull;
+    private String[] attributeNames;
+    private String[] names;
+    private Shape[] children;
+  }
+
+}
@@ -0,0 +1,512 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.record.io;
+
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.ext.RecordWriter;
+import com.streamsets.pipeline.api.impl.Utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes records using the BIN1 encoding, see {@link BinRecordConstants} for the layout.
+ *
+ * Records are encoded into a reusable buffer that is handed to the output stream in large chunks.
+ */
+public class BinRecordWriter implements RecordWriter {
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final OutputStream outputStream;
+  private final Output output;
+  private final Output shape;
+  private final ShapeKey probe;
+  private final Map<ShapeKey, Integer> shapes;
+  private final Map<String, Integer> strings;
+  private final Map<String, byte[]> names;
+  private boolean shapeHasList;
+  private int listShapes;
+  private boolean closed;
+
+  public BinRecordWriter(OutputStream outputStream) {
+    this.outputStream = outputStream;
+    output = new Output(CHUNK_SIZE + 1024);
+    shape = new Output(1024);
+    probe = new ShapeKey();
+    shapes = new HashMap<>();
+    strings = new HashMap<>();
+    names = new HashMap<>();
+  }
+
+  @Override
+  public String getEncoding() {
+    return RecordEncoding.BIN1.name();
+  }
+
+  @Override
+  public void write(Record record) throws IOException {
+    if (closed) {
+      throw new IOException("output has been closed");
+    }
+    Utils.checkNotNull(record, "record");
+    Field root = record.get();
+
+    shape.reset();
+    shapeHasList = false;
+    writeShape(root);
+    probe.set(shape.bytes, shape.size);
+    Integer id = shapes.get(probe);
+    if (id != null) {
+      output.writeVarInt(BinRecordConstants.REF_FIRST_ID + id);
+    } else {
+      if (shapes.size() < BinRecordConstants.MAX_SHAPES && registerShape()) {
+        shapes.put(new ShapeKey(Arrays.copyOf(shape.bytes, shape.size)), shapes.size());
+        output.writeVarInt(BinRecordConstants.REF_NEW);
+      } else {
+        output.writeVarInt(BinRecordConstants.REF_INLINE);
+      }
+      output.writeBytes(shape.bytes, 0, shape.size);
+    }
+
+    writeHeader(record.getHeader());
+    writeValue(root);
+
+    if (output.size >= CHUNK_SIZE) {
+      drain();
+    }
+  }
+
+  // list sizes are part of the shape, variable length lists would otherwise fill the dictionary with shapes that
+  // never repeat
+  private boolean registerShape() {
+    if (!shapeHasList) {
+      return true;
+    }
+    if (listShapes < BinRecordConstants.MAX_LIST_SHAPES) {
+      listShapes++;
+      return true;
+    }
+    return false;
+  }
+
+  private void writeShape(Field field) throws IOException {
+    if (field == null) {
+      shape.writeByte(BinRecordConstants.TYPE_NONE);
+      return;
+    }
+    int code = BinRecordConstants.getTypeCode(field.getType());
+    Object value = field.getValue();
+    Map<String, String> attributes = field.getAttributes();
+    boolean hasAttributes = attributes != null && !attributes.isEmpty();
+    if (value == null) {
+      code |= BinRecordConstants.NULL_FLAG;
+    }
+    if (hasAttributes) {
+      code |= BinRecordConstants.ATTRIBUTES_FLAG;
+    }
+    shape.writeByte(code);
+    if (hasAttributes) {
+      shape.writeVarInt(attributes.size());
+      for (String name : attributes.keySet()) {
+        writeName(name);
+      }
+    }
+    if (value != null) {
+      switch (field.getType()) {
+        case MAP:
+        case LIST_MAP:
+          Map<String, Field> map = field.getValueAsMap();
+          shape.writeVarInt(map.size());
+          for (Map.Entry<String, Field> entry : map.entrySet()) {
+            writeName(entry.getKey());
+            writeShape(entry.getValue());
+          }
+          break;
+        case LIST:
+          shapeHasList = true;
+          List<Field> list = field.getValueAsList();
+          shape.writeVarInt(list.size());
+          for (Field element : list) {
+            writeShape(element);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  private void writeName(String name) {
+    byte[] bytes = names.get(name);
+    if (bytes == null) {
+      bytes = name.getBytes(StandardCharsets.UTF_8);
+      if (names.size() < BinRecordConstants.MAX_STRINGS) {
+        names.put(name, bytes);
+      }
+    }
+    shape.writeVarInt(bytes.length);
+    shape.writeBytes(bytes, 0, bytes.length);
+  }
+
+  private void writeHeader(Record.Header header) {
+    String errorCode = header.getErrorCode();
+    // the header returns a copy of the raw bytes on every call
+    byte[] raw = header.getRaw();
+    int mask = 0;
+    mask |= header.getStageCreator() != null ? BinRecordConstants.HEADER_STAGE_CREATOR : 0;
+    mask |= header.getSourceId() != null ? BinRecordConstants.HEADER_SOURCE_ID : 0;
+    mask |= header.getStagesPath() != null ? BinRecordConstants.HEADER_STAGES_PATH : 0;
+    mask |= header.getTrackingId() != null ? BinRecordConstants.HEADER_TRACKING_ID : 0;
+    mask |= header.getPreviousTrackingId() != null ? BinRecordConstants.HEADER_PREVIOUS_TRACKING_ID : 0;
+    mask |= raw != null ? BinRecordConstants.HEADER_RAW : 0;
+    mask |= header.getRawMimeType() != null ? BinRecordConstants.HEADER_RAW_MIME_TYPE : 0;
+    mask |= header.getErrorDataCollectorId() != null ? BinRecordConstants.HEADER_ERROR_DATA_COLLECTOR_ID : 0;
+    mask |= header.getErrorPipelineName() != null ? BinRecordConstants.HEADER_ERROR_PIPELINE_NAME : 0;
+    mask |= header.getErrorStage() != null ? BinRecordConstants.HEADER_ERROR_STAGE : 0;
+    mask |= header.getErrorStageLabel() != null ? BinRecordConstants.HEADER_ERROR_STAGE_LABEL : 0;
+    mask |= errorCode != null ? BinRecordConstants.HEADER_ERROR_CODE : 0;
+    mask |= header.getErrorMessage() != null ? BinRecordConstants.HEADER_ERROR_MESSAGE : 0;
+    mask |= header.getErrorStackTrace() != null ? BinRecordConstants.HEADER_ERROR_STACK_TRACE : 0;
+    mask |= !header.getAttributeNames().isEmpty() ? BinRecordConstants.HEADER_ATTRIBUTES : 0;
+    output.writeVarInt(mask);
+
+    if ((mask & BinRecordConstants.HEADER_STAGE_CREATOR) != 0) {
+      writeDictionaryString(header.getStageCreator());
+    }
+    if ((mask & BinRecordConstants.HEADER_SOURCE_ID) != 0) {
+      output.writeString(header.getSourceId());
+    }
+    if ((mask & BinRecordConstants.HEADER_STAGES_PATH) != 0) {
+      writeDictionaryString(header.getStagesPath());
+    }
+    if ((mask & BinRecordConstants.HEADER_TRACKING_ID) != 0) {
+      output.writeString(header.getTrackingId());
+    }
+    if ((mask & BinRecordConstants.HEADER_PREVIOUS_TRACKING_ID) != 0) {
+      output.writeString(header.getPreviousTrackingId());
+    }
+    if ((mask & BinRecordConstants.HEADER_RAW) != 0) {
+      output.writeVarInt(raw.length);
+      output.writeBytes(raw, 0, raw.length);
+    }
+    if ((mask & BinRecordConstants.HEADER_RAW_MIME_TYPE) != 0) {
+      writeDictionaryString(header.getRawMimeType());
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_DATA_COLLECTOR_ID) != 0) {
+      writeDictionaryString(header.getErrorDataCollectorId());
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_PIPELINE_NAME) != 0) {
+      writeDictionaryString(header.getErrorPipelineName());
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_STAGE) != 0) {
+      writeDictionaryString(header.getErrorStage());
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_STAGE_LABEL) != 0) {
+      writeDictionaryString(header.getErrorStageLabel());
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_CODE) != 0) {
+      writeDictionaryString(errorCode);
+      output.writeVarLong(zigZag(header.getErrorTimestamp()));
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_MESSAGE) != 0) {
+      output.writeString(header.getErrorMessage());
+    }
+    if ((mask & BinRecordConstants.HEADER_ERROR_STACK_TRACE) != 0) {
+      output.writeString(header.getErrorStackTrace());
+    }
+    if ((mask & BinRecordConstants.HEADER_ATTRIBUTES) != 0) {
+      output.writeVarInt(header.getAttributeNames().size());
+      for (String name : header.getAttributeNames()) {
+        writeDictionaryString(name);
+        writeNullableString(header.getAttribute(name));
+      }
+    }
+  }
+
+  private void writeDictionaryString(String value) {
+    Integer id = strings.get(value);
+    if (id != null) {
+      output.writeVarInt(BinRecordConstants.REF_FIRST_ID + id);
+    } else {
+      if (strings.size() < BinRecordConstants.MAX_STRINGS) {
+        strings.put(value, strings.size());
+        output.writeVarInt(BinRecordConstants.REF_NEW);
+      } else {
+        output.writeVarInt(BinRecordConstants.REF_INLINE);
+      }
+      output.writeString(value);
+    }
+  }
+
+  private void writeNullableString(String value) {
+    if (value == null) {
+      output.writeVarInt(BinRecordConstants.REF_NULL);
+    } else {
+      output.writeVarInt(BinRecordConstants.REF_INLINE);
+      output.writeString(value);
+    }
+  }
+
+  private void writeValue(Field field) throws IOException {
+    if (field == null) {
+      return;
+    }
+    Map<String, String> attributes = field.getAttributes();
+    if (attributes != null && !attributes.isEmpty()) {
+      for (String value : attributes.values()) {
+        writeNullableString(value);
+      }
+    }
+    if (field.getValue() == null) {
+      return;
+    }
+    switch (field.getType()) {
+      case MAP:
+      case LIST_MAP:
+        for (Field child : field.getValueAsMap().values()) {
+          writeValue(child);
+        }
+        break;
+      case LIST:
+        for (Field element : field.getValueAsList()) {
+          writeValue(element);
+        }
+        break;
+      case BOOLEAN:
+        output.writeByte(field.getValueAsBoolean() ? 1 : 0);
+        break;
+      case CHAR:
+        output.writeVarInt(field.getValueAsChar());
+        break;
+      case BYTE:
+        output.writeByte(field.getValueAsByte());
+        break;
+      case SHORT:
+        output.writeVarInt(zigZag(field.getValueAsShort()));
+        break;
+      case INTEGER:
+        output.writeVarInt(zigZag(field.getValueAsInteger()));
+        break;
+      case LONG:
+        output.writeVarLong(zigZag(field.getValueAsLong()));
+        break;
+      case FLOAT:
+        output.writeFixedInt(Float.floatToIntBits(field.getValueAsFloat()));
+        break;
+      case DOUBLE:
+        output.writeFixedLong(Double.doubleToLongBits(field.getValueAsDouble()));
+        break;
+      case DATE:
+        output.writeVarLong(zigZag(field.getValueAsDate().getTime()));
+        break;
+      case DATETIME:
+        output.writeVarLong(zigZag(field.getValueAsDatetime().getTime()));
+        break;
+      case TIME:
+        output.writeVarLong(zigZag(field.getValueAsTime().getTime()));
+        break;
+      case DECIMAL:
+        BigDecimal decimal = field.getValueAsDecimal();
+        byte[] unscaled = decimal.unscaledValue().toByteArray();
+        output.writeVarInt(zigZag(decimal.scale()));
+        output.writeVarInt(unscaled.length);
+        output.writeBytes(unscaled, 0, unscaled.length);
+        break;
+      case STRING:
+        output.writeString(field.getValueAsString());
+        break;
+      case BYTE_ARRAY:
+        byte[] bytes = field.getValueAsByteArray();
+        output.writeVarInt(bytes.length);
+        output.writeBytes(bytes, 0, bytes.length);
+        break;
+      default:
+        // rejected while writing the shape
+        throw new IOException("Unsupported field type " + field.getType());
+    }
+  }
+
+  private static int zigZag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private void drain() throws IOException {
+    outputStream.write(output.bytes, 0, output.size);
+    output.reset();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (closed) {
+      throw new IOException("output has been closed");
+    }
+    drain();
+    outputStream.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      try {
+        drain();
+      } finally {
+        outputStream.close();
+      }
+    }
+  }
+
+  /**
+   * Growable byte buffer with varint primitives.
+   */
+  private static final class Output {
+    private byte[] bytes;
+    private int size;
+
+    Output(int capacity) {
+      bytes = new byte[capacity];
+    }
+
+    void reset() {
+      size = 0;
+    }
+
+    private void ensure(int count) {
+      if (size + count > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + count));
+      }
+    }
+
+    void writeByte(int value) {
+      ensure(1);
+      bytes[size++] = (byte) value;
+    }
+
+    void writeBytes(byte[] value, int offset, int length) {
+      ensure(length);
+      System.arraycopy(value, offset, bytes, size, length);
+      size += length;
+    }
+
+    void writeVarInt(int value) {
+      ensure(5);
+      while ((value & ~0x7f) != 0) {
+        bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+      ensure(10);
+      while ((value & ~0x7fL) != 0) {
+        bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    void writeFixedInt(int value) {
+      ensure(4);
+      bytes[size++] = (byte) value;
+      bytes[size++] = (byte) (value >> 8);
+      bytes[size++] = (byte) (value >> 16);
+      bytes[size++] = (byte) (value >> 24);
+    }
+
+    void writeFixedLong(long value) {
+      writeFixedInt((int) value);
+      writeFixedInt((int) (value >> 32));
+    }
+
+    void writeString(String value) {
+      int length = value.length();
+      for (int i = 0; i < length; i++) {
+        if (value.charAt(i) >= 0x80) {
+          // not plain ASCII, let the JDK encode it
+          byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+          writeVarInt(utf8.length);
+          writeBytes(utf8, 0, utf8.length);
+          return;
+        }
+      }
+      writeVarInt(length);
+      ensure(length);
+      for (int i = 0; i < length; i++) {
+        bytes[size++] = (byte) value.charAt(i);
+      }
+    }
+  }
+
+  /**
+   * Encoded shape used as dictionary key, the probe instance points to the shape of the current record.
+   */
+  private static final class ShapeKey {
+    private byte[] bytes;
+    private int length;
+    private int hash;
+
+    ShapeKey() {
+    }
+
+    ShapeKey(byte[] bytes) {
+      set(bytes, bytes.length);
+    }
+
+    void set(byte[] bytes, int length) {
+      this.bytes = bytes;
+      this.length = length;
+      int h = 1;
+      for (int i = 0; i < length; i++) {
+        h = 31 * h + bytes[i];
+      }
+      hash = h;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ShapeKey)) {
+        return false;
+      }
+      ShapeKey other = (ShapeKey) obj;
+      if (hash != other.hash || length != other.length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (bytes[i] != other.bytes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
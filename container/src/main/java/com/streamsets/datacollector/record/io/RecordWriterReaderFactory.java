@@ -49,6 +49,9 @@ public class RecordWriterReaderFactory {
           case KRYO1:
             reader = new KryoRecordReader(is, initialPosition);
             break;
+          case BIN1:
+            reader = new BinRecordReader(is, initialPosition);
+            break;
           default:
             throw new RuntimeException("It cannot happen");
         }
@@ -81,6 +84,10 @@ public class RecordWriterReaderFactory {
         os.write(RecordEncodingConstants.KRYO1_MAGIC_NUMBER);
         writer = new KryoRecordWriter(os);
         break;
+      case BIN1:
+        os.write(RecordEncodingConstants.BIN1_MAGIC_NUMBER);
+        writer = new BinRecordWriter(os);
+        break;
       default:
         throw new RuntimeException("It cannot happen");
     }
@@ -796,13 +796,20 @@ public class ManagerResource {
   public Response getHistory(
     @PathParam("pipelineId") String name,
     @QueryParam("rev") @DefaultValue("0") String rev,
-    @QueryParam("fromBeginning") @DefaultValue("false") boolean fromBeginning) throws PipelineException {
+    @QueryParam("fromBeginning") @DefaultValue("false") boolean fromBeginning,
+    @QueryParam("fromTimestamp") @DefaultValue("0") long fromTimestamp,
+    @QueryParam("toTimestamp") @DefaultValue("" + Long.MAX_VALUE) long toTimestamp,
+    @QueryParam("offset") @DefaultValue("0") int offset,
+    @QueryParam("len") @DefaultValue("100") int len) throws PipelineException {
     PipelineInfo pipelineInfo = store.getInfo(name);
     RestAPIUtils.injectPipelineInMDC(pipelineInfo.getTitle(), pipelineInfo.getPipelineId());
     Runner runner = manager.getRunner(name, rev);
     if(runner != null) {
       return Response.ok().type(MediaType.APPLICATION_JSON).entity(
-        BeanHelper.wrapPipelineStatesNewAPI(runner.getHistory(), false)).build();
+        BeanHelper.wrapPipelineStatesNewAPI(
+            runner.getHistory(fromTimestamp, toTimestamp, offset, fromBeginning ? -1 : len),
+            false
+        )).build();
     }
     return Response.noContent().build();
   }
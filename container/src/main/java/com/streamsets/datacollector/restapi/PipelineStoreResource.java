@@ -106,10 +106,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -227,7 +225,7 @@ public class PipelineStoreResource {
   public Response getPipelinesCount() throws PipelineStoreException {
     return Response.ok()
         .type(MediaType.APPLICATION_JSON)
-        .entity(ImmutableMap.of("count", store.getPipelines().size()))
+        .entity(ImmutableMap.of("count", store.getPipelineCount()))
         .build();
   }
 
@@ -251,18 +249,9 @@ public class PipelineStoreResource {
   @Produces(MediaType.APPLICATION_JSON)
   @PermitAll
   public Response getPipelineLabels() throws PipelineStoreException {
-    final List<PipelineInfo> pipelineInfoList = store.getPipelines();
-    Set<String> pipelineLabels = new HashSet<>();
-    for (PipelineInfo pipelineInfo: pipelineInfoList) {
-      Map<String, Object> metadata = pipelineInfo.getMetadata();
-      if (metadata != null && metadata.containsKey("labels")) {
-        List<String> labels = (List<String>) metadata.get("labels");
-        pipelineLabels.addAll(labels);
-      }
-    }
     return Response.ok()
         .type(MediaType.APPLICATION_JSON)
-        .entity(pipelineLabels)
+        .entity(store.getPipelineLabels())
         .build();
   }
 
@@ -283,17 +272,21 @@ public class PipelineStoreResource {
   ) throws PipelineException {
     RestAPIUtils.injectPipelineInMDC("*");
 
-    final List<PipelineInfo> pipelineInfoList = store.getPipelines();
+    // text filtering, user labels and sorting (but by status) are resolved by the in memory pipeline catalog
+    final boolean systemLabel = label != null && isSystemLabel(label);
+    final List<PipelineInfo> pipelineInfoList = store.findPipelines(
+        filterText,
+        systemLabel ? null : label,
+        orderBy,
+        order
+    );
     final Map<String, PipelineState> pipelineStateCache = new HashMap<>();
 
-    Collection<PipelineInfo> filteredCollection = Collections2.filter(pipelineInfoList, new Predicate<PipelineInfo>() {
-      @Override
-      public boolean apply(PipelineInfo pipelineInfo) {
-        String title = pipelineInfo.getTitle() != null ? pipelineInfo.getTitle() : pipelineInfo.getPipelineId();
-        if (filterText != null && !title.toLowerCase().contains(filterText.toLowerCase())) {
-          return false;
-        }
-        if (label != null) {
+    Collection<PipelineInfo> filteredCollection = pipelineInfoList;
+    if (systemLabel) {
+      filteredCollection = Collections2.filter(pipelineInfoList, new Predicate<PipelineInfo>() {
+        @Override
+        public boolean apply(PipelineInfo pipelineInfo) {
           try {
             Map<String, Object> metadata = pipelineInfo.getMetadata();
             switch (label) {
@@ -330,57 +323,28 @@ public class PipelineStoreResource {
               case SHARED_WITH_ME_PIPELINES:
                 return !pipelineInfo.getCreator().equals(user);
               default:
-                if (metadata != null && metadata.containsKey("labels")) {
-                  List<String> labels = (List<String>) metadata.get("labels");
-                  if (!labels.contains(label)) {
-                    return false;
-                  }
-                } else {
-                  return false;
-                }
+                return true;
             }
           } catch (PipelineException e) {
             e.printStackTrace();
           }
+          return true;
         }
-        return true;
-      }
-    });
+      });
+    }
 
     List<PipelineInfo> filteredList = new ArrayList<>(filteredCollection);
 
-    Collections.sort(filteredList, new Comparator<PipelineInfo>() {
-      @Override
-      public int compare(PipelineInfo p1, PipelineInfo p2) {
-        if (order.equals(Order.DESC)) {
-          PipelineInfo tmp = p1;
-          p1 = p2;
-          p2 = tmp;
-        }
-
-        if (orderBy.equals(PipelineOrderByFields.NAME)) {
-          return p1.getPipelineId().compareTo(p2.getPipelineId());
-        }
-
-        if (orderBy.equals(PipelineOrderByFields.TITLE)) {
-          String p1Title = p1.getTitle() != null ? p1.getTitle() : p1.getPipelineId();
-          String p2Title = p2.getTitle() != null ? p2.getTitle() : p2.getPipelineId();
-          return p1Title.compareTo(p2Title);
-        }
-
-        if (orderBy.equals(PipelineOrderByFields.LAST_MODIFIED)) {
-          return p2.getLastModified().compareTo(p1.getLastModified());
-        }
-
-        if (orderBy.equals(PipelineOrderByFields.CREATED)) {
-          return p2.getCreated().compareTo(p1.getCreated());
-        }
-
-        if (orderBy.equals(PipelineOrderByFields.CREATOR)) {
-          return p1.getCreator().compareTo(p2.getCreator());
-        }
-
-        if(orderBy.equals(PipelineOrderByFields.STATUS)) {
+    if (orderBy.equals(PipelineOrderByFields.STATUS)) {
+      // the status is not part of the pipeline catalog, sort by it here
+      Collections.sort(filteredList, new Comparator<PipelineInfo>() {
+        @Override
+        public int compare(PipelineInfo p1, PipelineInfo p2) {
+          if (order.equals(Order.DESC)) {
+            PipelineInfo tmp = p1;
+            p1 = p2;
+            p2 = tmp;
+          }
           try {
             PipelineState p1State = null;
             PipelineState p2State = null;
@@ -406,11 +370,10 @@ public class PipelineStoreResource {
           } catch (PipelineException e) {
             LOG.debug("Failed to get Pipeline State - " + e.getLocalizedMessage());
           }
+          return 0;
         }
-
-        return 0;
-      }
-    });
+      });
+    }
 
     Object responseData;
 
@@ -451,6 +414,10 @@ public class PipelineStoreResource {
         .build();
   }
 
+  private static boolean isSystemLabel(String label) {
+    return DPM_ENABLED_SYSTEM_PIPELINE_LABELS.contains(label);
+  }
+
   @Path("/pipelines/delete")
   @POST
   @ApiOperation(value = "Deletes Pipelines", response = PipelineInfoJson.class,
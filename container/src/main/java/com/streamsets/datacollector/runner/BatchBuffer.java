@@ -0,0 +1,518 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.runner;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import com.streamsets.datacollector.record.io.BinRecordReader;
+import com.streamsets.datacollector.record.io.BinRecordWriter;
+import com.streamsets.datacollector.util.ContainerError;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffer of batches produced by the origin and not yet processed by the rest of the pipeline.
+ *
+ * Up to maxBatchesInMemory batches are kept in memory, the records of the batches beyond that are spilled to memory
+ * mapped segment files in the buffer directory and read back when the batch is taken out of the buffer. Once both
+ * memory and spill space are exhausted, adding a batch blocks until there is room again.
+ *
+ * Batches are taken out in the order in which they were added, but they can finish in any order. The buffer keeps
+ * track of the unacknowledged batches so that offsets are committed strictly in the order in which the batches were
+ * added, as soon as all batches before them were acknowledged. A batch that is never acknowledged (because it failed)
+ * prevents committing any batch after it.
+ *
+ * Only the records of the origin output lanes are spilled, batches with error records, stage errors, events,
+ * snapshot output or File Ref fields are always kept in memory.
+ *
+ * Buffered batches are not persisted across restarts, spilled segments left over from a previous run are deleted. The
+ * buffer must hence be used only with origins that produce all batches after the last committed offset again.
+ */
+public class BatchBuffer {
+  private static final Logger LOG = LoggerFactory.getLogger(BatchBuffer.class);
+
+  private final File dir;
+  private final String originStageName;
+  private final int maxBatchesInMemory;
+  private final long maxSpillBytes;
+  private final int segmentSize;
+  private final Counter depthCounter;
+  private final Counter spilledBytesCounter;
+  private final Timer replayLagTimer;
+
+  private final Deque<BufferedBatch> pending;
+  private final Deque<BufferedBatch> unacknowledged;
+  private int batchesInMemory;
+  private long spilledBytes;
+  private int nextSegment;
+  private Segment writeSegment;
+  private boolean closed;
+  private boolean failed;
+
+  /**
+   * Create new batch buffer.
+   *
+   * @param dir Directory for the spill segments, any existing content is deleted
+   * @param originStageName Instance name of the origin producing the batches
+   * @param maxBatchesInMemory Maximal number of buffered batches that keep their records in memory
+   * @param maxSpillBytes Maximal number of bytes spilled to disk at the same time, 0 disables spilling
+   * @param segmentSize Size of a spill segment file
+   */
+  public BatchBuffer(
+    File dir,
+    String originStageName,
+    int maxBatchesInMemory,
+    long maxSpillBytes,
+    int segmentSize,
+    Counter depthCounter,
+    Counter spilledBytesCounter,
+    Timer replayLagTimer
+  ) {
+    this.dir = dir;
+    this.originStageName = originStageName;
+    this.maxBatchesInMemory = maxBatchesInMemory;
+    this.maxSpillBytes = maxSpillBytes;
+    this.segmentSize = segmentSize;
+    this.depthCounter = depthCounter;
+    this.spilledBytesCounter = spilledBytesCounter;
+    this.replayLagTimer = replayLagTimer;
+    pending = new ArrayDeque<>();
+    unacknowledged = new ArrayDeque<>();
+
+    // Offsets of batches left over from previous run were never committed, hence the origin (which has to be able to
+    // replay from the last committed offset) will produce them again
+    if (dir.exists()) {
+      LOG.warn("Deleting batches spilled by previous run in '{}'", dir);
+      deleteSegments();
+    }
+  }
+
+  /**
+   * Add batch fully produced by the origin, blocking while the buffer is full.
+   *
+   * @return false if the buffer was closed or failed and the batch was not added
+   */
+  public boolean add(
+    FullPipeBatch pipeBatch,
+    String entityName,
+    String newOffset,
+    long startTime,
+    Map<String, Object> stageBatchMetrics
+  ) throws PipelineRuntimeException {
+    BufferedBatch batch = new BufferedBatch(pipeBatch, entityName, newOffset, startTime, stageBatchMetrics);
+    boolean spillable = maxSpillBytes > 0 && isSpillable(pipeBatch);
+    byte[] bytes = null;
+    while (true) {
+      synchronized (this) {
+        while (true) {
+          if (closed || failed) {
+            return false;
+          }
+          if (batchesInMemory < maxBatchesInMemory) {
+            batch.inMemory = true;
+            batchesInMemory++;
+            enqueue(batch);
+            return true;
+          }
+          if (spillable && bytes == null) {
+            // Serialize out of the lock so that the batches can be taken out in the meantime
+            break;
+          }
+          // A single batch is always allowed to be spilled, even if it's bigger than the limit
+          if (bytes != null && (spilledBytes == 0 || spilledBytes + bytes.length <= maxSpillBytes)) {
+            spill(batch, bytes);
+            enqueue(batch);
+            return true;
+          }
+          waitForChange();
+        }
+      }
+      bytes = serialize(pipeBatch);
+    }
+  }
+
+  /**
+   * Take the oldest batch out of the buffer, reading its records back if they were spilled.
+   *
+   * @return Next batch or null if the buffer was closed and is empty or if it failed
+   */
+  public BufferedBatch take() throws PipelineRuntimeException {
+    BufferedBatch batch;
+    ByteBuffer spilled = null;
+    synchronized (this) {
+      while (pending.isEmpty() && !closed && !failed) {
+        waitForChange();
+      }
+      if (failed || pending.isEmpty()) {
+        return null;
+      }
+      batch = pending.poll();
+      depthCounter.dec();
+      if (batch.inMemory) {
+        batchesInMemory--;
+      } else {
+        spilled = batch.segment.buffer.duplicate();
+        spilled.position(batch.position);
+        spilled.limit(batch.position + batch.length);
+        spilledBytes -= batch.length;
+        spilledBytesCounter.dec(batch.length);
+        batch.segment.batches--;
+        if (batch.segment.batches == 0 && batch.segment != writeSegment) {
+          batch.segment.delete();
+        }
+        batch.segment = null;
+      }
+      notifyAll();
+    }
+    replayLagTimer.update(System.currentTimeMillis() - batch.addedTime, TimeUnit.MILLISECONDS);
+
+    if (spilled != null) {
+      restore(batch, spilled);
+    }
+    return batch;
+  }
+
+  /**
+   * Record that given batch was fully processed by the pipeline.
+   *
+   * @param commit Whether the offset of the batch should be committed
+   * @return Batches in the order in which their offsets should be committed now
+   */
+  public synchronized List<BufferedBatch> acknowledge(BufferedBatch batch, boolean commit) {
+    batch.acknowledged = true;
+    batch.commit = commit;
+    List<BufferedBatch> committable = new ArrayList<>();
+    while (!unacknowledged.isEmpty() && unacknowledged.peek().acknowledged) {
+      BufferedBatch head = unacknowledged.poll();
+      if (head.commit) {
+        committable.add(head);
+      }
+    }
+    return committable;
+  }
+
+  /**
+   * Record offset committed directly by the origin. It has to be committed only after all batches added before it.
+   *
+   * @return Batches in the order in which their offsets should be committed now
+   */
+  public synchronized List<BufferedBatch> acknowledgeOffset(String entityName, String offset) {
+    BufferedBatch marker = new BufferedBatch(null, entityName, offset, 0, null);
+    unacknowledged.add(marker);
+    return acknowledge(marker, true);
+  }
+
+  /**
+   * Stop accepting new batches, batches already in the buffer can still be taken out.
+   */
+  public synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  /**
+   * Discard all buffered batches, nothing can be added nor taken out any more.
+   */
+  public synchronized void fail() {
+    failed = true;
+    notifyAll();
+  }
+
+  /**
+   * Release all spilled data.
+   */
+  public synchronized void destroy() {
+    closed = true;
+    failed = true;
+    depthCounter.dec(pending.size());
+    spilledBytesCounter.dec(spilledBytes);
+    pending.clear();
+    unacknowledged.clear();
+    spilledBytes = 0;
+    writeSegment = null;
+    deleteSegments();
+    notifyAll();
+  }
+
+  public synchronized int size() {
+    return pending.size();
+  }
+
+  public synchronized long getSpilledBytes() {
+    return spilledBytes;
+  }
+
+  private boolean isSpillable(FullPipeBatch pipeBatch) {
+    if (pipeBatch.getErrorSink().size() != 0
+      || !pipeBatch.getEventSink().getStageEvents(originStageName).isEmpty()
+      || pipeBatch.getSnapshotsOfAllStagesOutput() != null) {
+      return false;
+    }
+    // File references can't be serialized
+    for (List<Record> records : pipeBatch.getLanePayload().values()) {
+      for (Record record : records) {
+        if (hasFileRef(record.get())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean hasFileRef(Field field) {
+    if (field == null || field.getValue() == null) {
+      return false;
+    }
+    switch (field.getType()) {
+      case FILE_REF:
+        return true;
+      case MAP:
+      case LIST_MAP:
+        for (Field child : field.getValueAsMap().values()) {
+          if (hasFileRef(child)) {
+            return true;
+          }
+        }
+        return false;
+      case LIST:
+        for (Field child : field.getValueAsList()) {
+          if (hasFileRef(child)) {
+            return true;
+          }
+        }
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  private void enqueue(BufferedBatch batch) {
+    pending.add(batch);
+    unacknowledged.add(batch);
+    depthCounter.inc();
+    notifyAll();
+  }
+
+  private void waitForChange() throws PipelineRuntimeException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PipelineRuntimeException(ContainerError.CONTAINER_0801, e);
+    }
+  }
+
+  private static byte[] serialize(FullPipeBatch pipeBatch) throws PipelineRuntimeException {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      Map<String, List<Record>> payload = pipeBatch.getLanePayload();
+      out.writeInt(payload.size());
+      for (Map.Entry<String, List<Record>> lane : payload.entrySet()) {
+        out.writeUTF(lane.getKey());
+        out.writeInt(lane.getValue().size());
+      }
+      out.flush();
+      BinRecordWriter writer = new BinRecordWriter(bytes);
+      for (List<Record> records : payload.values()) {
+        for (Record record : records) {
+          writer.write(record);
+        }
+      }
+      writer.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new PipelineRuntimeException(ContainerError.CONTAINER_0804, e.toString(), e);
+    }
+  }
+
+  private void spill(BufferedBatch batch, byte[] bytes) throws PipelineRuntimeException {
+    try {
+      if (writeSegment == null || writeSegment.buffer.remaining() < bytes.length) {
+        if (writeSegment != null) {
+          writeSegment.completeWrites();
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+          throw new IOException("Could not create directory '" + dir + "'");
+        }
+        writeSegment = new Segment(new File(dir, "segment-" + nextSegment++), Math.max(segmentSize, bytes.length));
+      }
+      batch.segment = writeSegment;
+      batch.position = writeSegment.buffer.position();
+      batch.length = bytes.length;
+      writeSegment.buffer.put(bytes);
+      writeSegment.batches++;
+    } catch (IOException e) {
+      throw new PipelineRuntimeException(ContainerError.CONTAINER_0804, e.toString(), e);
+    }
+
+    // Release the records, they will be read back from the segment
+    for (Map.Entry<String, List<Record>> lane : batch.pipeBatch.getLanePayload().entrySet()) {
+      lane.setValue(null);
+    }
+    spilledBytes += bytes.length;
+    spilledBytesCounter.inc(bytes.length);
+  }
+
+  private static void restore(BufferedBatch batch, ByteBuffer spilled) throws PipelineRuntimeException {
+    // The mapping stays valid even if the segment file was deleted in the meantime
+    byte[] bytes = new byte[spilled.remaining()];
+    spilled.get(bytes);
+
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      Map<String, List<Record>> payload = batch.pipeBatch.getLanePayload();
+      int lanes = in.readInt();
+      List<String> laneNames = new ArrayList<>(lanes);
+      List<Integer> laneSizes = new ArrayList<>(lanes);
+      for (int i = 0; i < lanes; i++) {
+        laneNames.add(in.readUTF());
+        laneSizes.add(in.readInt());
+      }
+      BinRecordReader reader = new BinRecordReader(in, 0);
+      for (int i = 0; i < lanes; i++) {
+        List<Record> records = new ArrayList<>(laneSizes.get(i));
+        for (int j = 0; j < laneSizes.get(i); j++) {
+          records.add(reader.readRecord());
+        }
+        payload.put(laneNames.get(i), records);
+      }
+      reader.close();
+    } catch (IOException e) {
+      throw new PipelineRuntimeException(ContainerError.CONTAINER_0805, e.toString(), e);
+    }
+  }
+
+  private void deleteSegments() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!file.delete()) {
+          LOG.warn("Could not delete spill segment '{}'", file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Memory mapped file holding spilled batches, deleted once all its batches were read back.
+   */
+  private static class Segment {
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private int batches;
+
+    Segment(File file, int size) throws IOException {
+      this.file = file;
+      try (FileChannel channel = FileChannel.open(
+        file.toPath(),
+        StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE
+      )) {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      }
+    }
+
+    void completeWrites() {
+      if (batches == 0) {
+        delete();
+      }
+    }
+
+    void delete() {
+      try {
+        Files.deleteIfExists(file.toPath());
+      } catch (IOException e) {
+        LOG.warn("Could not delete spill segment '{}': {}", file, e.toString(), e);
+      }
+    }
+  }
+
+  /**
+   * Batch waiting in the buffer together with everything needed to finish and commit it.
+   */
+  public static class BufferedBatch {
+    private final FullPipeBatch pipeBatch;
+    private final String entityName;
+    private final String newOffset;
+    private final long startTime;
+    private final Map<String, Object> stageBatchMetrics;
+    private final long addedTime;
+    private boolean inMemory;
+    private Segment segment;
+    private int position;
+    private int length;
+    private boolean acknowledged;
+    private boolean commit;
+
+    private BufferedBatch(
+      FullPipeBatch pipeBatch,
+      String entityName,
+      String newOffset,
+      long startTime,
+      Map<String, Object> stageBatchMetrics
+    ) {
+      this.pipeBatch = pipeBatch;
+      this.entityName = entityName;
+      this.newOffset = newOffset;
+      this.startTime = startTime;
+      this.stageBatchMetrics = stageBatchMetrics == null ? Collections.<String, Object>emptyMap() : stageBatchMetrics;
+      this.addedTime = System.currentTimeMillis();
+    }
+
+    public FullPipeBatch getPipeBatch() {
+      return pipeBatch;
+    }
+
+    public String getEntityName() {
+      return entityName;
+    }
+
+    public String getNewOffset() {
+      return newOffset;
+    }
+
+    public long getStartTime() {
+      return startTime;
+    }
+
+    public Map<String, Object> getStageBatchMetrics() {
+      return stageBatchMetrics;
+    }
+  }
+}
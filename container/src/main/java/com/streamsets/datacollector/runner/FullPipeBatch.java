@@ -64,6 +64,13 @@ public class FullPipeBatch implements PipeBatch {
     return fullPayload;
   }
 
+  /**
+   * Records of all lanes, the batch buffer releases them when spilling the batch and puts them back on replay.
+   */
+  Map<String, List<Record>> getLanePayload() {
+    return fullPayload;
+  }
+
   @Override
   public int getBatchSize() {
     return batchSize;
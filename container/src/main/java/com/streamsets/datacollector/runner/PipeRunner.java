@@ -17,6 +17,7 @@ package com.streamsets.datacollector.runner;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
+import com.streamsets.datacollector.config.StageType;
 import com.streamsets.datacollector.metrics.MetricsConfigurator;
 import com.streamsets.datacollector.util.PipelineException;
 import com.streamsets.pipeline.api.OffsetCommitTrigger;
@@ -113,6 +114,23 @@ public class PipeRunner {
       String offsetValue,
       long batchStartTime,
       ThrowingConsumer<Pipe> consumer
+  ) throws PipelineRuntimeException, StageException {
+    executeBatch(offsetKey, offsetValue, batchStartTime, 0, pipes.size(), consumer);
+  }
+
+  /**
+   * Run batch with given consumer for pipes from index fromPipe (inclusive) to toPipe (exclusive).
+   *
+   * Used when the batch is executed in two parts on different threads, the batch is counted as finished only by the
+   * part that ends with the last pipe.
+   */
+  public void executeBatch(
+      String offsetKey,
+      String offsetValue,
+      long batchStartTime,
+      int fromPipe,
+      int toPipe,
+      ThrowingConsumer<Pipe> consumer
   ) throws PipelineRuntimeException, StageException {
     MDC.put(LogConstants.RUNNER, String.valueOf(runnerId));
     // Persist static information for the batch (this won't change as the batch progresses)
@@ -122,7 +140,7 @@ public class PipeRunner {
     this.runtimeMetricGauge.put(METRIC_STAGE_START_TIME, System.currentTimeMillis());
     try {
       // Run one pipe at a time
-      for(Pipe p : pipes) {
+      for(Pipe p : pipes.subList(fromPipe, toPipe)) {
         this.runtimeMetricGauge.put(METRIC_CURRENT_STAGE, p.getStage().getInfo().getInstanceName());
         if(p instanceof StagePipe) {
           this.runtimeMetricGauge.put(METRIC_STAGE_START_TIME, System.currentTimeMillis());
@@ -133,7 +151,9 @@ public class PipeRunner {
       }
 
       // We've successfully finished batch
-      this.runtimeMetricGauge.computeIfPresent(METRIC_BATCH_COUNT, (key, value) -> ((long)value) + 1);
+      if(toPipe == pipes.size()) {
+        this.runtimeMetricGauge.computeIfPresent(METRIC_BATCH_COUNT, (key, value) -> ((long)value) + 1);
+      }
     } finally {
       resetBatchSpecificMetrics();
       MDC.put(LogConstants.RUNNER, "");
@@ -169,6 +189,23 @@ public class PipeRunner {
     }
   }
 
+  /**
+   * Return index of the first pipe that belongs to a destination (target or executor).
+   *
+   * Pipes are sorted, so none of the pipes before the returned index depends on output of a destination. Returns
+   * size() if this runner has no destination.
+   */
+  public int getFirstDestinationIndex() {
+    for (int i = 0; i < pipes.size(); i++) {
+      Pipe pipe = pipes.get(i);
+      if (pipe instanceof StagePipe
+          && pipe.getStage().getDefinition().getType().isOneOf(StageType.TARGET, StageType.EXECUTOR)) {
+        return i;
+      }
+    }
+    return pipes.size();
+  }
+
   /**
    * Retrieve OffsetCommitTrigger pipe.
    *
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.store;
+
+import com.streamsets.datacollector.restapi.Order;
+import com.streamsets.datacollector.restapi.PipelineOrderByFields;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In memory catalog of the {@link PipelineInfo}s of a pipeline store.
+ * <p/>
+ * The catalog keeps a sorted index per sortable field, an index of the pipelines per label and a trigram index over
+ * the lower-cased titles, so pipelines can be filtered, sorted and counted without scanning every pipeline. It must
+ * be kept current by the store calling {@link #put(PipelineInfo)} and {@link #remove(String)} on every change.
+ */
+public class PipelineCatalog {
+  private static final String LABELS = "labels";
+  private static final int GRAM = 3;
+
+  private static final Comparator<PipelineInfo> BY_NAME = new Comparator<PipelineInfo>() {
+    @Override
+    public int compare(PipelineInfo p1, PipelineInfo p2) {
+      return p1.getPipelineId().compareTo(p2.getPipelineId());
+    }
+  };
+
+  // the comparators are total orders, ties are broken by pipeline ID so the sorted sets can hold every pipeline
+  private static final Map<PipelineOrderByFields, Comparator<PipelineInfo>> COMPARATORS;
+
+  static {
+    COMPARATORS = new EnumMap<>(PipelineOrderByFields.class);
+    COMPARATORS.put(PipelineOrderByFields.NAME, BY_NAME);
+    COMPARATORS.put(PipelineOrderByFields.TITLE, new Comparator<PipelineInfo>() {
+      @Override
+      public int compare(PipelineInfo p1, PipelineInfo p2) {
+        int compare = getTitle(p1).compareTo(getTitle(p2));
+        return (compare != 0) ? compare : BY_NAME.compare(p1, p2);
+      }
+    });
+    // most recent first
+    COMPARATORS.put(PipelineOrderByFields.LAST_MODIFIED, new Comparator<PipelineInfo>() {
+      @Override
+      public int compare(PipelineInfo p1, PipelineInfo p2) {
+        int compare = Long.compare(getTime(p2.getLastModified()), getTime(p1.getLastModified()));
+        return (compare != 0) ? compare : BY_NAME.compare(p1, p2);
+      }
+    });
+    // most recent first
+    COMPARATORS.put(PipelineOrderByFields.CREATED, new Comparator<PipelineInfo>() {
+      @Override
+      public int compare(PipelineInfo p1, PipelineInfo p2) {
+        int compare = Long.compare(getTime(p2.getCreated()), getTime(p1.getCreated()));
+        return (compare != 0) ? compare : BY_NAME.compare(p1, p2);
+      }
+    });
+    COMPARATORS.put(PipelineOrderByFields.CREATOR, new Comparator<PipelineInfo>() {
+      @Override
+      public int compare(PipelineInfo p1, PipelineInfo p2) {
+        int compare = String.valueOf(p1.getCreator()).compareTo(String.valueOf(p2.getCreator()));
+        return (compare != 0) ? compare : BY_NAME.compare(p1, p2);
+      }
+    });
+  }
+
+  private final ReadWriteLock lock;
+  private final Map<String, PipelineInfo> pipelines;
+  private final Map<String, String> lowerCaseTitles;
+  private final Map<PipelineOrderByFields, NavigableSet<PipelineInfo>> sortedIndexes;
+  private final Map<String, Set<String>> labelIndex;
+  private final Map<String, Set<String>> trigramIndex;
+
+  public PipelineCatalog() {
+    lock = new ReentrantReadWriteLock();
+    pipelines = new HashMap<>();
+    lowerCaseTitles = new HashMap<>();
+    sortedIndexes = new EnumMap<>(PipelineOrderByFields.class);
+    for (Map.Entry<PipelineOrderByFields, Comparator<PipelineInfo>> entry : COMPARATORS.entrySet()) {
+      sortedIndexes.put(entry.getKey(), new TreeSet<>(entry.getValue()));
+    }
+    labelIndex = new HashMap<>();
+    trigramIndex = new HashMap<>();
+  }
+
+  public PipelineCatalog(Collection<PipelineInfo> pipelineInfos) {
+    this();
+    for (PipelineInfo pipelineInfo : pipelineInfos) {
+      put(pipelineInfo);
+    }
+  }
+
+  public void put(PipelineInfo pipelineInfo) {
+    lock.writeLock().lock();
+    try {
+      unindex(pipelines.put(pipelineInfo.getPipelineId(), pipelineInfo));
+      index(pipelineInfo);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(String pipelineId) {
+    lock.writeLock().lock();
+    try {
+      unindex(pipelines.remove(pipelineId));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      pipelines.clear();
+      lowerCaseTitles.clear();
+      for (NavigableSet<PipelineInfo> sortedIndex : sortedIndexes.values()) {
+        sortedIndex.clear();
+      }
+      labelIndex.clear();
+      trigramIndex.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public PipelineInfo get(String pipelineId) {
+    lock.readLock().lock();
+    try {
+      return pipelines.get(pipelineId);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public boolean contains(String pipelineId) {
+    return get(pipelineId) != null;
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return pipelines.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public List<PipelineInfo> getPipelines() {
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(pipelines.values());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public Set<String> getLabels() {
+    lock.readLock().lock();
+    try {
+      return new HashSet<>(labelIndex.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the pipelines whose title (or ID if it has no title) contains, ignoring case, the given text and that
+   * have the given label, sorted by the given field.
+   *
+   * @param filterText text the title must contain, <code>null</code> or empty for no filtering.
+   * @param label label the pipeline must have, <code>null</code> for no filtering.
+   * @param orderBy field to sort by, fields not indexed by the catalog (STATUS) sort by NAME.
+   * @param order sort order.
+   */
+  public List<PipelineInfo> find(String filterText, String label, PipelineOrderByFields orderBy, Order order) {
+    lock.readLock().lock();
+    try {
+      Set<String> candidates = null;
+      if (filterText != null && !filterText.isEmpty()) {
+        candidates = findByTitle(filterText.toLowerCase());
+      }
+      if (label != null) {
+        Set<String> labeled = labelIndex.get(label);
+        if (labeled == null) {
+          return new ArrayList<>();
+        }
+        candidates = (candidates == null) ? labeled : intersect(candidates, labeled);
+      }
+
+      NavigableSet<PipelineInfo> sortedIndex = sortedIndexes.get(orderBy);
+      if (sortedIndex == null) {
+        sortedIndex = sortedIndexes.get(PipelineOrderByFields.NAME);
+      }
+      if (order == Order.DESC) {
+        sortedIndex = sortedIndex.descendingSet();
+      }
+
+      List<PipelineInfo> result;
+      if (candidates == null) {
+        result = new ArrayList<>(sortedIndex);
+      } else if (candidates.size() < pipelines.size() / 8) {
+        // few matches, cheaper to sort them than to walk the whole index
+        result = new ArrayList<>(candidates.size());
+        for (String pipelineId : candidates) {
+          result.add(pipelines.get(pipelineId));
+        }
+        Collections.sort(result, sortedIndex.comparator());
+      } else {
+        result = new ArrayList<>(candidates.size());
+        for (PipelineInfo pipelineInfo : sortedIndex) {
+          if (candidates.contains(pipelineInfo.getPipelineId())) {
+            result.add(pipelineInfo);
+          }
+        }
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private Set<String> findByTitle(String lowerCaseFilter) {
+    Set<String> matches = new HashSet<>();
+    if (lowerCaseFilter.length() < GRAM) {
+      for (Map.Entry<String, String> entry : lowerCaseTitles.entrySet()) {
+        if (entry.getValue().contains(lowerCaseFilter)) {
+          matches.add(entry.getKey());
+        }
+      }
+      return matches;
+    }
+    // intersect the posting lists of the filter trigrams starting with the smallest, then verify the actual match
+    List<Set<String>> postings = new ArrayList<>();
+    for (String trigram : getTrigrams(lowerCaseFilter)) {
+      Set<String> posting = trigramIndex.get(trigram);
+      if (posting == null) {
+        return matches;
+      }
+      postings.add(posting);
+    }
+    Collections.sort(postings, new Comparator<Set<String>>() {
+      @Override
+      public int compare(Set<String> o1, Set<String> o2) {
+        return Integer.compare(o1.size(), o2.size());
+      }
+    });
+    for (String pipelineId : postings.get(0)) {
+      boolean inAll = true;
+      for (int i = 1; inAll && i < postings.size(); i++) {
+        inAll = postings.get(i).contains(pipelineId);
+      }
+      if (inAll && lowerCaseTitles.get(pipelineId).contains(lowerCaseFilter)) {
+        matches.add(pipelineId);
+      }
+    }
+    return matches;
+  }
+
+  private void index(PipelineInfo pipelineInfo) {
+    String pipelineId = pipelineInfo.getPipelineId();
+    for (NavigableSet<PipelineInfo> sortedIndex : sortedIndexes.values()) {
+      sortedIndex.add(pipelineInfo);
+    }
+    for (String label : getLabels(pipelineInfo)) {
+      Set<String> labeled = labelIndex.get(label);
+      if (labeled == null) {
+        labeled = new HashSet<>();
+        labelIndex.put(label, labeled);
+      }
+      labeled.add(pipelineId);
+    }
+    String lowerCaseTitle = getTitle(pipelineInfo).toLowerCase();
+    lowerCaseTitles.put(pipelineId, lowerCaseTitle);
+    for (String trigram : getTrigrams(lowerCaseTitle)) {
+      Set<String> posting = trigramIndex.get(trigram);
+      if (posting == null) {
+        posting = new HashSet<>();
+        trigramIndex.put(trigram, posting);
+      }
+      posting.add(pipelineId);
+    }
+  }
+
+  private void unindex(PipelineInfo pipelineInfo) {
+    if (pipelineInfo == null) {
+      return;
+    }
+    String pipelineId = pipelineInfo.getPipelineId();
+    for (NavigableSet<PipelineInfo> sortedIndex : sortedIndexes.values()) {
+      sortedIndex.remove(pipelineInfo);
+    }
+    for (String label : getLabels(pipelineInfo)) {
+      removeFromPosting(labelIndex, label, pipelineId);
+    }
+    String lowerCaseTitle = lowerCaseTitles.remove(pipelineId);
+    if (lowerCaseTitle != null) {
+      for (String trigram : getTrigrams(lowerCaseTitle)) {
+        removeFromPosting(trigramIndex, trigram, pipelineId);
+      }
+    }
+  }
+
+  private static void removeFromPosting(Map<String, Set<String>> index, String key, String pipelineId) {
+    Set<String> posting = index.get(key);
+    if (posting != null) {
+      posting.remove(pipelineId);
+      if (posting.isEmpty()) {
+        index.remove(key);
+      }
+    }
+  }
+
+  private static Set<String> intersect(Set<String> s1, Set<String> s2) {
+    Set<String> smaller = (s1.size() <= s2.size()) ? s1 : s2;
+    Set<String> larger = (smaller == s1) ? s2 : s1;
+    Set<String> intersection = new HashSet<>();
+    for (String e : smaller) {
+      if (larger.contains(e)) {
+        intersection.add(e);
+      }
+    }
+    return intersection;
+  }
+
+  private static Set<String> getTrigrams(String str) {
+    Set<String> trigrams = new HashSet<>();
+    for (int i = 0; i + GRAM <= str.length(); i++) {
+      trigrams.add(str.substring(i, i + GRAM));
+    }
+    return trigrams;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<String> getLabels(PipelineInfo pipelineInfo) {
+    Map<String, Object> metadata = pipelineInfo.getMetadata();
+    if (metadata != null && metadata.get(LABELS) instanceof List) {
+      return (List<String>) metadata.get(LABELS);
+    }
+    return Collections.emptyList();
+  }
+
+  private static String getTitle(PipelineInfo pipelineInfo) {
+    return (pipelineInfo.getTitle() != null) ? pipelineInfo.getTitle() : pipelineInfo.getPipelineId();
+  }
+
+  private static long getTime(Date date) {
+    return (date != null) ? date.getTime() : Long.MIN_VALUE;
+  }
+
+}
@@ -18,11 +18,14 @@ package com.streamsets.datacollector.store;
 import com.streamsets.datacollector.config.PipelineConfiguration;
 import com.streamsets.datacollector.config.RuleDefinitions;
 import com.streamsets.datacollector.execution.StateEventListener;
+import com.streamsets.datacollector.restapi.Order;
+import com.streamsets.datacollector.restapi.PipelineOrderByFields;
 import com.streamsets.datacollector.task.Task;
 import com.streamsets.datacollector.util.PipelineException;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public interface PipelineStoreTask extends Task {
   // Provide upgrade path in PipelineConfigurationUpgrader when increasing
@@ -41,6 +44,20 @@ public interface PipelineStoreTask extends Task {
 
   public List<PipelineInfo> getPipelines() throws PipelineStoreException;
 
+  // pipelines whose title contains the filter text (ignoring case) and having the given label, sorted
+  // null filterText/label means no filtering, see PipelineCatalog#find
+  public List<PipelineInfo> findPipelines(
+      String filterText,
+      String label,
+      PipelineOrderByFields orderBy,
+      Order order
+  ) throws PipelineStoreException;
+
+  public int getPipelineCount() throws PipelineStoreException;
+
+  // labels of all pipelines, see PipelineCatalog#getLabels
+  public Set<String> getPipelineLabels() throws PipelineStoreException;
+
   public PipelineInfo getInfo(String name) throws PipelineException;
 
   public List<PipelineRevInfo> getHistory(String name) throws PipelineException;
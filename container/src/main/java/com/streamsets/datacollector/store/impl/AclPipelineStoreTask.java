@@ -21,8 +21,11 @@ import com.google.common.collect.Collections2;
 import com.streamsets.datacollector.config.PipelineConfiguration;
 import com.streamsets.datacollector.config.RuleDefinitions;
 import com.streamsets.datacollector.execution.StateEventListener;
+import com.streamsets.datacollector.restapi.Order;
+import com.streamsets.datacollector.restapi.PipelineOrderByFields;
 import com.streamsets.datacollector.restapi.bean.UserJson;
 import com.streamsets.datacollector.store.AclStoreTask;
+import com.streamsets.datacollector.store.PipelineCatalog;
 import com.streamsets.datacollector.store.PipelineInfo;
 import com.streamsets.datacollector.store.PipelineRevInfo;
 import com.streamsets.datacollector.store.PipelineStoreException;
@@ -39,6 +42,7 @@ import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class AclPipelineStoreTask implements PipelineStoreTask {
   private static final Logger LOG = LoggerFactory.getLogger(AclPipelineStoreTask.class);
@@ -108,6 +112,28 @@ public class AclPipelineStoreTask implements PipelineStoreTask {
     return new ArrayList<>(filterPipelineBasedOnReadAcl());
   }
 
+  @Override
+  public List<PipelineInfo> findPipelines(
+      String filterText,
+      String label,
+      PipelineOrderByFields orderBy,
+      Order order
+  ) throws PipelineStoreException {
+    List<PipelineInfo> pipelineInfos = pipelineStore.findPipelines(filterText, label, orderBy, order);
+    return new ArrayList<>(filterPipelineBasedOnReadAcl(pipelineInfos));
+  }
+
+  @Override
+  public int getPipelineCount() throws PipelineStoreException {
+    return filterPipelineBasedOnReadAcl().size();
+  }
+
+  @Override
+  public Set<String> getPipelineLabels() throws PipelineStoreException {
+    // only the labels of the pipelines the user can read, the catalog of the underlying store has all of them
+    return new PipelineCatalog(filterPipelineBasedOnReadAcl()).getLabels();
+  }
+
   @Override
   public PipelineInfo getInfo(String name) throws PipelineException {
     aclStore.validateReadPermission(name, currentUser);
@@ -199,7 +225,11 @@ public class AclPipelineStoreTask implements PipelineStoreTask {
   }
 
   private Collection<PipelineInfo> filterPipelineBasedOnReadAcl() throws PipelineStoreException {
-    return Collections2.filter(pipelineStore.getPipelines(), new Predicate<PipelineInfo>() {
+    return filterPipelineBasedOnReadAcl(pipelineStore.getPipelines());
+  }
+
+  private Collection<PipelineInfo> filterPipelineBasedOnReadAcl(List<PipelineInfo> pipelineInfos) {
+    return Collections2.filter(pipelineInfos, new Predicate<PipelineInfo>() {
       @Override
       public boolean apply(PipelineInfo pipelineInfo) {
         try {
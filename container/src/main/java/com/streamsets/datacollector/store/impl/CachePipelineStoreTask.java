@@ -19,6 +19,9 @@ import com.google.common.annotations.VisibleForTesting;
 import com.streamsets.datacollector.config.PipelineConfiguration;
 import com.streamsets.datacollector.config.RuleDefinitions;
 import com.streamsets.datacollector.execution.StateEventListener;
+import com.streamsets.datacollector.restapi.Order;
+import com.streamsets.datacollector.restapi.PipelineOrderByFields;
+import com.streamsets.datacollector.store.PipelineCatalog;
 import com.streamsets.datacollector.store.PipelineInfo;
 import com.streamsets.datacollector.store.PipelineRevInfo;
 import com.streamsets.datacollector.store.PipelineStoreException;
@@ -29,23 +32,21 @@ import com.streamsets.datacollector.util.PipelineException;
 import com.streamsets.pipeline.api.impl.Utils;
 
 import javax.inject.Inject;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Set;
 
 public class CachePipelineStoreTask implements PipelineStoreTask {
 
   private final PipelineStoreTask pipelineStore;
-  private final ConcurrentMap<String, PipelineInfo> pipelineInfoMap;
+  private final PipelineCatalog pipelineCatalog;
   private final LockCache<String> lockCache;
 
   @Inject
   public CachePipelineStoreTask(PipelineStoreTask pipelineStore, LockCache<String> lockCache) {
     this.pipelineStore = pipelineStore;
-    pipelineInfoMap = new ConcurrentHashMap<>();
+    pipelineCatalog = new PipelineCatalog();
     this.lockCache = lockCache;
   }
 
@@ -59,7 +60,7 @@ public class CachePipelineStoreTask implements PipelineStoreTask {
     pipelineStore.init();
     try {
       for (PipelineInfo info: pipelineStore.getPipelines()) {
-        pipelineInfoMap.put(info.getPipelineId(), info);
+        pipelineCatalog.put(info);
       }
     } catch (PipelineStoreException e) {
       throw new RuntimeException(Utils.format("Cannot fetch list of pipelines due to: '{}'", e), e);
@@ -79,7 +80,7 @@ public class CachePipelineStoreTask implements PipelineStoreTask {
   @Override
   public void stop() {
     pipelineStore.stop();
-    pipelineInfoMap.clear();
+    pipelineCatalog.clear();
   }
 
   @Override
@@ -97,7 +98,7 @@ public class CachePipelineStoreTask implements PipelineStoreTask {
   ) throws PipelineException {
     synchronized (lockCache.getLock(pipelineId)) {
       PipelineConfiguration pipelineConf = pipelineStore.create(user, pipelineId, pipelineTitle, description, isRemote);
-      pipelineInfoMap.put(pipelineConf.getInfo().getPipelineId(), pipelineConf.getInfo());
+      pipelineCatalog.put(pipelineConf.getInfo());
       return pipelineConf;
     }
   }
@@ -106,18 +107,38 @@ public class CachePipelineStoreTask implements PipelineStoreTask {
   public void delete(String name) throws PipelineException {
     synchronized (lockCache.getLock(name)) {
       pipelineStore.delete(name);
-      pipelineInfoMap.remove(name);
+      pipelineCatalog.remove(name);
     }
   }
 
   @Override
   public List<PipelineInfo> getPipelines() throws PipelineStoreException {
-    return Collections.unmodifiableList(new ArrayList<>(pipelineInfoMap.values()));
+    return Collections.unmodifiableList(pipelineCatalog.getPipelines());
+  }
+
+  @Override
+  public List<PipelineInfo> findPipelines(
+      String filterText,
+      String label,
+      PipelineOrderByFields orderBy,
+      Order order
+  ) throws PipelineStoreException {
+    return Collections.unmodifiableList(pipelineCatalog.find(filterText, label, orderBy, order));
+  }
+
+  @Override
+  public int getPipelineCount() throws PipelineStoreException {
+    return pipelineCatalog.size();
+  }
+
+  @Override
+  public Set<String> getPipelineLabels() throws PipelineStoreException {
+    return Collections.unmodifiableSet(pipelineCatalog.getLabels());
   }
 
   @Override
   public PipelineInfo getInfo(String name) throws PipelineStoreException {
-    PipelineInfo pipelineInfo = pipelineInfoMap.get(name);
+    PipelineInfo pipelineInfo = pipelineCatalog.get(name);
     if (pipelineInfo == null) {
       throw new PipelineStoreException(ContainerError.CONTAINER_0200, name);
     } else {
@@ -135,7 +156,7 @@ public class CachePipelineStoreTask implements PipelineStoreTask {
     PipelineConfiguration pipeline) throws PipelineException {
     synchronized (lockCache.getLock(name)) {
       PipelineConfiguration pipelineConf = pipelineStore.save(user, name, tag, tagDescription, pipeline);
-      pipelineInfoMap.put(name, pipelineConf.getInfo());
+      pipelineCatalog.put(pipelineConf.getInfo());
       return pipelineConf;
     }
   }
@@ -147,7 +168,7 @@ public class CachePipelineStoreTask implements PipelineStoreTask {
 
   @Override
   public boolean hasPipeline(String name) {
-    return pipelineInfoMap.containsKey(name);
+    return pipelineCatalog.contains(name);
   }
 
   @Override
@@ -185,7 +206,7 @@ public class CachePipelineStoreTask implements PipelineStoreTask {
   ) throws PipelineException {
     synchronized (lockCache.getLock(name)) {
       PipelineConfiguration pipelineConf = pipelineStore.saveMetadata(user, name, rev, metadata);
-      pipelineInfoMap.put(name, pipelineConf.getInfo());
+      pipelineCatalog.put(pipelineConf.getInfo());
       return pipelineConf;
     }
   }
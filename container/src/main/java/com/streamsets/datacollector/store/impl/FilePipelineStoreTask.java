@@ -38,12 +38,15 @@ import com.streamsets.datacollector.json.ObjectMapperFactory;
 import com.streamsets.datacollector.main.BuildInfo;
 import com.streamsets.datacollector.main.DataCollectorBuildInfo;
 import com.streamsets.datacollector.main.RuntimeInfo;
+import com.streamsets.datacollector.restapi.Order;
+import com.streamsets.datacollector.restapi.PipelineOrderByFields;
 import com.streamsets.datacollector.restapi.bean.BeanHelper;
 import com.streamsets.datacollector.restapi.bean.PipelineConfigurationJson;
 import com.streamsets.datacollector.restapi.bean.PipelineInfoJson;
 import com.streamsets.datacollector.restapi.bean.RuleDefinitionsJson;
 import com.streamsets.datacollector.runner.production.OffsetFileUtil;
 import com.streamsets.datacollector.stagelibrary.StageLibraryTask;
+import com.streamsets.datacollector.store.PipelineCatalog;
 import com.streamsets.datacollector.store.PipelineInfo;
 import com.streamsets.datacollector.store.PipelineRevInfo;
 import com.streamsets.datacollector.store.PipelineStoreException;
@@ -75,6 +78,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -244,6 +248,10 @@ public class FilePipelineStoreTask extends AbstractTask implements PipelineStore
   }
 
   private boolean cleanUp(String name) throws PipelineStoreException {
+    if (pipelineStateStore != null) {
+      // also drops the history kept open by the state store
+      pipelineStateStore.deleteHistory(name, REV);
+    }
     boolean deleted = PipelineDirectoryUtil.deleteAll(getPipelineDir(name).toFile());
     deleted &= PipelineDirectoryUtil.deletePipelineDir(runtimeInfo, name);
     if(deleted) {
@@ -324,6 +332,27 @@ public class FilePipelineStoreTask extends AbstractTask implements PipelineStore
     return Collections.unmodifiableList(pipelineInfoList);
   }
 
+  @Override
+  public List<PipelineInfo> findPipelines(
+      String filterText,
+      String label,
+      PipelineOrderByFields orderBy,
+      Order order
+  ) throws PipelineStoreException {
+    // no in memory catalog at this level, CachePipelineStoreTask keeps one current
+    return new PipelineCatalog(getPipelines()).find(filterText, label, orderBy, order);
+  }
+
+  @Override
+  public int getPipelineCount() throws PipelineStoreException {
+    return getPipelines().size();
+  }
+
+  @Override
+  public Set<String> getPipelineLabels() throws PipelineStoreException {
+    return new PipelineCatalog(getPipelines()).getLabels();
+  }
+
   @Override
   public PipelineInfo getInfo(String name) throws PipelineStoreException {
     return getInfo(name, false);
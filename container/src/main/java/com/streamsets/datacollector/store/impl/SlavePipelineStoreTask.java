@@ -18,6 +18,8 @@ package com.streamsets.datacollector.store.impl;
 import com.streamsets.datacollector.config.PipelineConfiguration;
 import com.streamsets.datacollector.config.RuleDefinitions;
 import com.streamsets.datacollector.execution.StateEventListener;
+import com.streamsets.datacollector.restapi.Order;
+import com.streamsets.datacollector.restapi.PipelineOrderByFields;
 import com.streamsets.datacollector.store.PipelineInfo;
 import com.streamsets.datacollector.store.PipelineRevInfo;
 import com.streamsets.datacollector.store.PipelineStoreException;
@@ -26,6 +28,7 @@ import com.streamsets.datacollector.util.PipelineException;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class SlavePipelineStoreTask  implements PipelineStoreTask {
 
@@ -56,6 +59,26 @@ public class SlavePipelineStoreTask  implements PipelineStoreTask {
     return pipelineStore.getPipelines();
   }
 
+  @Override
+  public List<PipelineInfo> findPipelines(
+      String filterText,
+      String label,
+      PipelineOrderByFields orderBy,
+      Order order
+  ) throws PipelineStoreException {
+    return pipelineStore.findPipelines(filterText, label, orderBy, order);
+  }
+
+  @Override
+  public int getPipelineCount() throws PipelineStoreException {
+    return pipelineStore.getPipelineCount();
+  }
+
+  @Override
+  public Set<String> getPipelineLabels() throws PipelineStoreException {
+    return pipelineStore.getPipelineLabels();
+  }
+
   @Override
   public PipelineInfo getInfo(String name) throws PipelineException {
     return pipelineStore.getInfo(name);
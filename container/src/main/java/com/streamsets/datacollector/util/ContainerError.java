@@ -140,6 +140,8 @@ public enum ContainerError implements ErrorCode {
   CONTAINER_0801("Thread unexpectedly interrupted"),
   CONTAINER_0802("Detected run away pipeline runners (only {} out of {} runners have finished)"),
   CONTAINER_0803("Trying to acquire pipeline runner after the pool was destroyed."),
+  CONTAINER_0804("Can't spill buffered batch: {}"),
+  CONTAINER_0805("Can't read back spilled batch: {}"),
 
   //PipelineConfigurationUpgrader
   CONTAINER_0900("Error while upgrading stage configuration from version '{}' to version '{}': {}"),
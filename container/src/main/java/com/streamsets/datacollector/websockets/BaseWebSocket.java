@@ -41,8 +41,9 @@ public class BaseWebSocket extends WebSocketAdapter {
   @Override
   public void onWebSocketConnect(final Session session) {
     super.onWebSocketConnect(session);
-    listenerManager.register(this);
+    // the session must be set before the first notification, which may come as soon as the listener is registered
     webSocketSession = session;
+    listenerManager.register(this);
   }
 
   @Override
@@ -63,11 +64,22 @@ public class BaseWebSocket extends WebSocketAdapter {
   }
 
   public void notification(String message) {
-    if(webSocketSession != null && webSocketSession.isOpen()) {
-      if (!queue.offer(new WebSocketMessage(webSocketSession, message))) {
+    offer(message);
+  }
+
+  /**
+   * Queues the message to be sent, returns false if it was discarded.
+   */
+  protected boolean offer(String message) {
+    boolean queued = false;
+    Session session = webSocketSession;
+    if(session != null && session.isOpen()) {
+      queued = queue.offer(new WebSocketMessage(session, message));
+      if (!queued) {
         LOG.warn("WebSocket queue is full, discarding '{}' message", type);
       }
     }
+    return queued;
   }
 
 }
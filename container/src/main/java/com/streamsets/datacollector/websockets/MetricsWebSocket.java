@@ -21,9 +21,32 @@ import java.util.Queue;
 
 public class MetricsWebSocket extends BaseWebSocket implements MetricsEventListener {
   public static final String TYPE = "metrics";
+  // Query parameter asking for metrics deltas after the first full snapshot, other clients get full snapshots only
+  public static final String DELTA_PARAM = "delta";
+
+  private final boolean acceptsDeltas;
 
   public MetricsWebSocket(ListenerManager<MetricsEventListener> listenerManager, Queue<WebSocketMessage> queue) {
+    this(listenerManager, queue, false);
+  }
+
+  public MetricsWebSocket(
+      ListenerManager<MetricsEventListener> listenerManager,
+      Queue<WebSocketMessage> queue,
+      boolean acceptsDeltas
+  ) {
     super(TYPE, listenerManager, queue);
+    this.acceptsDeltas = acceptsDeltas;
+  }
+
+  @Override
+  public boolean acceptsDeltas() {
+    return acceptsDeltas;
+  }
+
+  @Override
+  public boolean offerNotification(String metrics) {
+    return offer(metrics);
   }
 
 }
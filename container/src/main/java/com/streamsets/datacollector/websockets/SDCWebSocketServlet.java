@@ -129,7 +129,7 @@ public class SDCWebSocketServlet extends WebSocketServlet implements WebSocketCr
             public void unregister(MetricsEventListener listener) {
               eventListenerManager.removeMetricsEventListener(pipelineName, listener);
             }
-          }, queue);
+          }, queue, Boolean.parseBoolean(httpRequest.getParameter(MetricsWebSocket.DELTA_PARAM)));
         case AlertsWebSocket.TYPE:
           return new AlertsWebSocket(new ListenerManager<AlertEventListener>() {
             @Override
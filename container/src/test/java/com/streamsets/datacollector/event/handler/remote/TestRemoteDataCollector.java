@@ -41,6 +41,8 @@ import com.streamsets.datacollector.execution.runner.common.PipelineRunnerExcept
 import com.streamsets.datacollector.execution.runner.common.SampledRecord;
 import com.streamsets.datacollector.json.ObjectMapperFactory;
 import com.streamsets.datacollector.main.RuntimeInfo;
+import com.streamsets.datacollector.restapi.Order;
+import com.streamsets.datacollector.restapi.PipelineOrderByFields;
 import com.streamsets.datacollector.restapi.bean.SourceOffsetJson;
 import com.streamsets.datacollector.runner.PipelineRuntimeException;
 import com.streamsets.datacollector.runner.StageOutput;
@@ -78,6 +80,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.Assert.*;
@@ -400,6 +403,12 @@ public class TestRemoteDataCollector {
       return null;
     }
 
+    @Override
+    public List<PipelineState> getHistory(long fromTimestamp, long toTimestamp, int offset, int len)
+        throws PipelineStoreException {
+      return null;
+    }
+
     @Override
     public void deleteHistory() {
       // TODO Auto-generated method stub
@@ -663,6 +672,18 @@ public class TestRemoteDataCollector {
       return null;
     }
 
+    @Override
+    public List<PipelineState> getHistory(
+        String name,
+        String rev,
+        long fromTimestamp,
+        long toTimestamp,
+        int offset,
+        int len
+    ) throws PipelineStoreException {
+      return null;
+    }
+
     @Override
     public void deleteHistory(String name, String rev) {
       // TODO Auto-generated method stub
@@ -760,6 +781,26 @@ public class TestRemoteDataCollector {
       return null;
     }
 
+    @Override
+    public List<PipelineInfo> findPipelines(
+        String filterText,
+        String label,
+        PipelineOrderByFields orderBy,
+        Order order
+    ) throws PipelineStoreException {
+      return null;
+    }
+
+    @Override
+    public int getPipelineCount() throws PipelineStoreException {
+      return 0;
+    }
+
+    @Override
+    public Set<String> getPipelineLabels() throws PipelineStoreException {
+      return null;
+    }
+
     @Override
     public PipelineInfo getInfo(String name) throws PipelineStoreException {
       return new PipelineInfo(name, "title", null, null, null, null, null, null, null, false, null, null, null);
@@ -386,6 +386,12 @@ public class TestProductionPipeline {
   }
 
   private ProductionPipeline createProductionPipeline(DeliveryGuarantee deliveryGuarantee, boolean captureNextBatch, long rateLimit, PipelineType type) throws Exception {
+    Configuration config = new Configuration();
+    config.set("monitor.memory", true);
+    return createProductionPipeline(deliveryGuarantee, captureNextBatch, rateLimit, type, config);
+  }
+
+  private ProductionPipeline createProductionPipeline(DeliveryGuarantee deliveryGuarantee, boolean captureNextBatch, long rateLimit, PipelineType type, Configuration config) throws Exception {
     SourceOffsetTracker tracker = new TestUtil.SourceOffsetTrackerImpl(Collections.singletonMap(Source.POLL_SOURCE_OFFSET_KEY, "1"));
     SnapshotStore snapshotStore = Mockito.mock(FileSnapshotStore.class);
 
@@ -393,8 +399,6 @@ public class TestProductionPipeline {
         new SnapshotInfoImpl("user", "SNAPSHOT_NAME", "SNAPSHOT LABEL", PIPELINE_NAME, REVISION,
             System.currentTimeMillis(), false, 0));
     BlockingQueue<Object> productionObserveRequests = new ArrayBlockingQueue<>(100, true /* FIFO */);
-    Configuration config = new Configuration();
-    config.set("monitor.memory", true);
     ProductionPipelineRunner runner =
         new ProductionPipelineRunner(PIPELINE_NAME, REVISION, config, runtimeInfo, new MetricRegistry(), snapshotStore,
             null);
@@ -793,4 +797,191 @@ public class TestProductionPipeline {
     pipeline.run();
   }
 
+
+  private static class InFlightSource extends BaseSource {
+    public volatile int count = 0;
+
+    @Override
+    public String produce(String lastSourceOffset, int maxBatchSize, BatchMaker batchMaker) throws StageException {
+      Assert.assertEquals(count == 0 ? "1" : "b" + count, lastSourceOffset);
+      count++;
+      Record record = getContext().createRecord("r" + count);
+      record.set(Field.create(count));
+      batchMaker.addRecord(record);
+      return count < 10 ? "b" + count : null;
+    }
+  }
+
+  private static class PassThroughProcessor extends BaseProcessor {
+    @Override
+    public void process(Batch batch, BatchMaker batchMaker) throws StageException {
+      Iterator<Record> it = batch.getRecords();
+      while (it.hasNext()) {
+        batchMaker.addRecord(it.next());
+      }
+    }
+  }
+
+  private static class InFlightTarget extends BaseTarget {
+    private final InFlightSource source;
+    private final int failOn;
+    public final List<Integer> written = new ArrayList<>();
+    public int maxProducedAhead = 0;
+
+    InFlightTarget(InFlightSource source, int failOn) {
+      this.source = source;
+      this.failOn = failOn;
+    }
+
+    @Override
+    public void write(Batch batch) throws StageException {
+      Iterator<Record> it = batch.getRecords();
+      while (it.hasNext()) {
+        int value = it.next().get().getValueAsInteger();
+        if (value == failOn) {
+          throw new StageException(TestErrors.ERROR_S, value);
+        }
+        maxProducedAhead = Math.max(maxProducedAhead, source.count - value);
+        written.add(value);
+      }
+      try {
+        // Simulate destination round trip so that the origin gets ahead
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private ProductionPipeline createInFlightPipeline(InFlightSource source, InFlightTarget target) throws Exception {
+    MockStages.setSourceCapture(source);
+    MockStages.setProcessorCapture(new PassThroughProcessor());
+    MockStages.setTargetCapture(target);
+    Configuration config = new Configuration();
+    config.set(Constants.MAX_BATCHES_IN_FLIGHT_KEY, 3);
+    ProductionPipeline pipeline = createProductionPipeline(
+      DeliveryGuarantee.AT_LEAST_ONCE,
+      false,
+      -1L,
+      PipelineType.DEFAULT,
+      config
+    );
+    pipeline.registerStatusListener(new MyStateListener());
+    return pipeline;
+  }
+
+  @Test
+  public void testProductionRunWithBatchesInFlight() throws Exception {
+    InFlightSource source = new InFlightSource();
+    InFlightTarget target = new InFlightTarget(source, -1);
+    ProductionPipeline pipeline = createInFlightPipeline(source, target);
+    pipeline.run();
+
+    Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), target.written);
+    // The origin never gets further ahead of destinations than the in flight window allows
+    Assert.assertTrue(target.maxProducedAhead > 0);
+    Assert.assertTrue(target.maxProducedAhead <= 3);
+    Assert.assertTrue(pipeline.getCommittedOffsets().isEmpty());
+  }
+
+  @Test
+  public void testProductionRunWithBatchesInFlightFailure() throws Exception {
+    InFlightSource source = new InFlightSource();
+    InFlightTarget target = new InFlightTarget(source, 5);
+    ProductionPipeline pipeline = createInFlightPipeline(source, target);
+    try {
+      pipeline.run();
+      Assert.fail();
+    } catch (StageException e) {
+      // expected
+    }
+
+    // Batches produced after the failed one are neither written nor committed
+    Assert.assertEquals(Arrays.asList(1, 2, 3, 4), target.written);
+    Assert.assertEquals("b4", pipeline.getCommittedOffsets().get(Source.POLL_SOURCE_OFFSET_KEY));
+  }
+
+  private static class BufferedPushSource extends BasePushSource {
+    public volatile int produced = 0;
+
+    @Override
+    public int getNumberOfThreads() {
+      return 1;
+    }
+
+    @Override
+    public void produce(Map<String, String> lastOffsets, int maxBatchSize) throws StageException {
+      for (int i = 1; i <= 20; i++) {
+        BatchContext batchContext = getContext().startBatch();
+        Record record = getContext().createRecord("r" + i);
+        record.set(Field.create(i));
+        batchContext.getBatchMaker().addRecord(record);
+        if (!getContext().processBatch(batchContext, "e", "o" + i)) {
+          return;
+        }
+        produced = i;
+      }
+    }
+  }
+
+  private static class SlowCaptureTarget extends BaseTarget {
+    private final BufferedPushSource source;
+    public final List<Integer> written = new ArrayList<>();
+    public int maxProducedAhead = 0;
+
+    SlowCaptureTarget(BufferedPushSource source) {
+      this.source = source;
+    }
+
+    @Override
+    public void write(Batch batch) throws StageException {
+      Iterator<Record> it = batch.getRecords();
+      while (it.hasNext()) {
+        int value = it.next().get().getValueAsInteger();
+        maxProducedAhead = Math.max(maxProducedAhead, source.produced - value);
+        written.add(value);
+      }
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Test
+  public void testPushSourceWithBatchBuffer() throws Exception {
+    BufferedPushSource source = new BufferedPushSource();
+    SlowCaptureTarget target = new SlowCaptureTarget(source);
+    MockStages.setPushSourceCapture(source);
+    MockStages.setTargetCapture(target);
+    Configuration config = new Configuration();
+    config.set(Constants.BATCH_BUFFER_MAX_BATCHES_KEY, 2);
+    config.set(Constants.BATCH_BUFFER_SEGMENT_SIZE_KEY, 4096);
+
+    ProductionPipeline pipeline = createProductionPipeline(
+      DeliveryGuarantee.AT_LEAST_ONCE,
+      false,
+      -1L,
+      PipelineType.PUSH_SOURCE,
+      config
+    );
+    pipeline.registerStatusListener(new MyStateListener());
+    pipeline.run();
+
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 1; i <= 20; i++) {
+      expected.add(i);
+    }
+    Assert.assertEquals(expected, target.written);
+    // The origin was not blocked by the slow destination once the batches in memory were used up
+    Assert.assertTrue(target.maxProducedAhead > 2);
+    Assert.assertEquals("o20", pipeline.getCommittedOffsets().get("e"));
+
+    MetricRegistry metrics = pipeline.getPipeline().getRunner().getMetrics();
+    Assert.assertEquals(20, MetricsConfigurator.getTimer(metrics, "pipeline.batchBuffer.replayLag").getCount());
+    Assert.assertEquals(0, MetricsConfigurator.getCounter(metrics, "pipeline.batchBuffer.depth").getCount());
+    Assert.assertEquals(0, MetricsConfigurator.getCounter(metrics, "pipeline.batchBuffer.spilledBytes").getCount());
+  }
+
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.execution.store;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+public class TestPipelineStateHistoryLog {
+  private File dir;
+
+  @Before
+  public void setUp() {
+    dir = new File("target", UUID.randomUUID().toString());
+    Assert.assertTrue(dir.mkdirs());
+  }
+
+  private static byte[] entry(int i) {
+    return ("{\"entry\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String toString(byte[] entry) {
+    return new String(entry, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testNewestFirstPaging() throws Exception {
+    PipelineStateHistoryLog log = new PipelineStateHistoryLog(dir, 50, 100, 0);
+    for (int i = 0; i < 20; i++) {
+      log.append(1000 + i, entry(i));
+    }
+    Assert.assertEquals(20, log.size());
+    // segments roll every few entries
+    Assert.assertTrue(PipelineStateHistoryLog.getSegmentFiles(dir).length > 2);
+
+    List<byte[]> page = log.read(0, Long.MAX_VALUE, 0, 5);
+    Assert.assertEquals(5, page.size());
+    Assert.assertEquals(toString(entry(19)), toString(page.get(0)));
+    Assert.assertEquals(toString(entry(15)), toString(page.get(4)));
+
+    page = log.read(0, Long.MAX_VALUE, 17, 5);
+    Assert.assertEquals(3, page.size());
+    Assert.assertEquals(toString(entry(2)), toString(page.get(0)));
+    Assert.assertEquals(toString(entry(0)), toString(page.get(2)));
+
+    Assert.assertEquals(20, log.read(0, Long.MAX_VALUE, 0, -1).size());
+    Assert.assertTrue(log.read(0, Long.MAX_VALUE, 20, -1).isEmpty());
+  }
+
+  @Test
+  public void testTimeRange() throws Exception {
+    PipelineStateHistoryLog log = new PipelineStateHistoryLog(dir, 50, 100, 0);
+    for (int i = 0; i < 20; i++) {
+      log.append(1000 + i * 10, entry(i));
+    }
+    List<byte[]> range = log.read(1035, 1100, 0, -1);
+    Assert.assertEquals(7, range.size());
+    Assert.assertEquals(toString(entry(10)), toString(range.get(0)));
+    Assert.assertEquals(toString(entry(4)), toString(range.get(6)));
+
+    range = log.read(1035, 1100, 2, 2);
+    Assert.assertEquals(2, range.size());
+    Assert.assertEquals(toString(entry(8)), toString(range.get(0)));
+    Assert.assertEquals(toString(entry(7)), toString(range.get(1)));
+
+    Assert.assertTrue(log.read(0, 999, 0, -1).isEmpty());
+    Assert.assertTrue(log.read(2000, 3000, 0, -1).isEmpty());
+  }
+
+  @Test
+  public void testRetention() throws Exception {
+    PipelineStateHistoryLog log = new PipelineStateHistoryLog(dir, 1, 3, 0);
+    for (int i = 0; i < 10; i++) {
+      log.append(1000 + i, entry(i));
+    }
+    // one entry per segment, 3 segments retained
+    Assert.assertEquals(3, log.size());
+    Assert.assertEquals(6, PipelineStateHistoryLog.getSegmentFiles(dir).length);
+    List<byte[]> all = log.read(0, Long.MAX_VALUE, 0, -1);
+    Assert.assertEquals(toString(entry(9)), toString(all.get(0)));
+    Assert.assertEquals(toString(entry(7)), toString(all.get(2)));
+
+    log = new PipelineStateHistoryLog(dir, 1, 10, 1000);
+    log.append(System.currentTimeMillis(), entry(10));
+    // the old segments are beyond the retention age
+    Assert.assertEquals(1, log.size());
+  }
+
+  @Test
+  public void testReopenAndRecover() throws Exception {
+    PipelineStateHistoryLog log = new PipelineStateHistoryLog(dir, 1024, 10, 0);
+    for (int i = 0; i < 5; i++) {
+      log.append(1000 + i, entry(i));
+    }
+
+    // simulate a crash in the middle of an append, the log entry got written but not its index entry
+    File logFile = new File(dir, PipelineStateHistoryLog.SEGMENT_PREFIX + "0000000000" +
+        PipelineStateHistoryLog.LOG_SUFFIX);
+    File indexFile = new File(dir, PipelineStateHistoryLog.SEGMENT_PREFIX + "0000000000" +
+        PipelineStateHistoryLog.INDEX_SUFFIX);
+    long logLength = logFile.length();
+    try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+      raf.seek(logLength);
+      raf.write("{\"partial\"".getBytes(StandardCharsets.UTF_8));
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+      raf.setLength(raf.length() + 3);
+    }
+
+    log = new PipelineStateHistoryLog(dir, 1024, 10, 0);
+    Assert.assertEquals(5, log.size());
+    Assert.assertEquals(logLength, logFile.length());
+    log.append(2000, entry(5));
+    List<byte[]> all = log.read(0, Long.MAX_VALUE, 0, -1);
+    Assert.assertEquals(6, all.size());
+    Assert.assertEquals(toString(entry(5)), toString(all.get(0)));
+    Assert.assertEquals(toString(entry(4)), toString(all.get(1)));
+
+    log.delete();
+    Assert.assertFalse(PipelineStateHistoryLog.exists(dir));
+    Assert.assertEquals(0, new PipelineStateHistoryLog(dir, 1024, 10, 0).size());
+  }
+
+  @Test
+  public void testStale() throws Exception {
+    PipelineStateHistoryLog log = new PipelineStateHistoryLog(dir, 50, 100, 0);
+    Assert.assertFalse(log.isStale());
+    log.append(1000, entry(0));
+    Assert.assertFalse(log.isStale());
+
+    // pipeline directory deleted and created again
+    for (File file : PipelineStateHistoryLog.getSegmentFiles(dir)) {
+      Assert.assertTrue(file.delete());
+    }
+    Assert.assertTrue(log.isStale());
+    PipelineStateHistoryLog other = new PipelineStateHistoryLog(dir, 50, 100, 0);
+    other.append(2000, entry(100));
+    Assert.assertTrue(log.isStale());
+    Assert.assertFalse(other.isStale());
+  }
+
+}
@@ -259,6 +259,22 @@ public class TestPipelineStateStore {
 
   }
 
+  @Test
+  public void testHistoryAfterDeleteAndRecreate() throws Exception {
+    MockFilePipelineStateStore.INVALIDATE_CACHE = false;
+    pipelineStoreTask.create("user1", "recreated", "label", "description", false);
+    pipelineStateStore.saveState("user1", "recreated", "0", PipelineStatus.STOPPED, "Pipeline stopped", null, ExecutionMode.STANDALONE, null, 0, 0);
+    pipelineStateStore.saveState("user1", "recreated", "0", PipelineStatus.EDITED, "Pipeline edited", null, ExecutionMode.STANDALONE, null, 0, 0);
+    assertEquals(3, pipelineStateStore.getHistory("recreated", "0", true).size());
+
+    pipelineStoreTask.delete("recreated");
+    pipelineStoreTask.create("user2", "recreated", "label", "description", false);
+    List<PipelineState> history = pipelineStateStore.getHistory("recreated", "0", true);
+    assertEquals(1, history.size());
+    assertEquals("user2", history.get(0).getUser());
+    assertEquals(PipelineStatus.EDITED, history.get(0).getStatus());
+  }
+
   public void stateSave() throws Exception {
     pipelineStateStore.saveState("user1", "aaa", "0", PipelineStatus.EDITED, "Pipeline edited", null, ExecutionMode.STANDALONE, null, 0, 0);
     PipelineState pipelineState = pipelineStateStore.getState("aaa", "0");
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.streamsets.datacollector.execution.EventListenerManager;
+import com.streamsets.datacollector.json.ObjectMapperFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestMetricsSnapshot {
+
+  private static final String METRICS_1 = "{\"version\":\"3.0.0\",\"gauges\":{\"g\":{\"value\":1}}," +
+      "\"counters\":{\"a\":{\"count\":1},\"b\":{\"count\":5}},\"meters\":{\"m\":{\"count\":0}}}";
+  private static final String METRICS_2 = "{\"version\":\"3.0.0\",\"gauges\":{\"g\":{\"value\":1}}," +
+      "\"counters\":{\"a\":{\"count\":2},\"c\":{\"count\":0}},\"meters\":{\"m\":{\"count\":0}}}";
+
+  private static ObjectNode parse(String json) throws Exception {
+    return (ObjectNode) ObjectMapperFactory.get().readTree(json);
+  }
+
+  private static class RecordingListener implements MetricsEventListener {
+    private final boolean acceptsDeltas;
+    private final List<String> notifications = new ArrayList<>();
+    private boolean discard;
+
+    RecordingListener(boolean acceptsDeltas) {
+      this.acceptsDeltas = acceptsDeltas;
+    }
+
+    @Override
+    public void notification(String metrics) {
+      notifications.add(metrics);
+    }
+
+    @Override
+    public boolean acceptsDeltas() {
+      return acceptsDeltas;
+    }
+
+    @Override
+    public boolean offerNotification(String metrics) {
+      if (discard) {
+        return false;
+      }
+      notification(metrics);
+      return true;
+    }
+  }
+
+  @Test
+  public void testFirstSnapshotIsFull() throws Exception {
+    MetricsSnapshot snapshot = new MetricsSnapshot(parse(METRICS_1), null);
+    Assert.assertEquals(parse(METRICS_1), ObjectMapperFactory.get().readTree(snapshot.getFull()));
+    Assert.assertSame(snapshot.getFull(), snapshot.getDelta());
+  }
+
+  @Test
+  public void testDelta() throws Exception {
+    MetricsSnapshot snapshot = new MetricsSnapshot(parse(METRICS_2), parse(METRICS_1));
+    String delta = snapshot.getDelta();
+    // serialized once
+    Assert.assertSame(delta, snapshot.getDelta());
+
+    JsonNode node = ObjectMapperFactory.get().readTree(delta);
+    Assert.assertTrue(node.get(MetricsSnapshot.DELTA).asBoolean());
+    Assert.assertFalse(node.has("version"));
+    Assert.assertFalse(node.has("gauges"));
+    Assert.assertFalse(node.has("meters"));
+    JsonNode counters = node.get("counters");
+    Assert.assertEquals(3, counters.size());
+    Assert.assertEquals(2, counters.get("a").get("count").asInt());
+    Assert.assertTrue(counters.get("b").isNull());
+    Assert.assertEquals(0, counters.get("c").get("count").asInt());
+  }
+
+  @Test
+  public void testNoChanges() throws Exception {
+    MetricsSnapshot snapshot = new MetricsSnapshot(parse(METRICS_1), parse(METRICS_1));
+    Assert.assertNull(snapshot.getDelta());
+    Assert.assertNotNull(snapshot.getFull());
+  }
+
+  @Test
+  public void testBroadcast() throws Exception {
+    EventListenerManager eventListenerManager = new EventListenerManager();
+    RecordingListener deltaListener = new RecordingListener(true);
+    RecordingListener fullListener = new RecordingListener(false);
+    eventListenerManager.addMetricsEventListener("p", deltaListener);
+    eventListenerManager.addMetricsEventListener("p", fullListener);
+
+    MetricsSnapshot first = new MetricsSnapshot(parse(METRICS_1), null);
+    eventListenerManager.broadcastMetrics("p", first);
+    MetricsSnapshot second = new MetricsSnapshot(parse(METRICS_2), first.getMetrics());
+    eventListenerManager.broadcastMetrics("p", second);
+
+    // listeners share the same message instances
+    Assert.assertSame(first.getFull(), deltaListener.notifications.get(0));
+    Assert.assertSame(second.getDelta(), deltaListener.notifications.get(1));
+    Assert.assertSame(first.getFull(), fullListener.notifications.get(0));
+    Assert.assertSame(second.getFull(), fullListener.notifications.get(1));
+
+    // a listener added later starts with a full snapshot
+    RecordingListener lateListener = new RecordingListener(true);
+    eventListenerManager.addMetricsEventListener("p", lateListener);
+    MetricsSnapshot third = new MetricsSnapshot(parse(METRICS_2), second.getMetrics());
+    eventListenerManager.broadcastMetrics("p", third);
+    Assert.assertSame(third.getFull(), lateListener.notifications.get(0));
+    // nothing changed, no delta is sent
+    Assert.assertEquals(2, deltaListener.notifications.size());
+    Assert.assertEquals(3, fullListener.notifications.size());
+
+    // plain broadcasts reset the delta listeners
+    eventListenerManager.broadcastMetrics("p", "{}");
+    MetricsSnapshot fourth = new MetricsSnapshot(parse(METRICS_1), third.getMetrics());
+    eventListenerManager.broadcastMetrics("p", fourth);
+    Assert.assertSame(fourth.getFull(), deltaListener.notifications.get(3));
+  }
+
+  @Test
+  public void testBroadcastDiscarded() throws Exception {
+    EventListenerManager eventListenerManager = new EventListenerManager();
+    RecordingListener deltaListener = new RecordingListener(true);
+    eventListenerManager.addMetricsEventListener("p", deltaListener);
+
+    // the first full snapshot is discarded, the next one is full again
+    deltaListener.discard = true;
+    MetricsSnapshot first = new MetricsSnapshot(parse(METRICS_1), null);
+    eventListenerManager.broadcastMetrics("p", first);
+    Assert.assertTrue(deltaListener.notifications.isEmpty());
+    deltaListener.discard = false;
+    MetricsSnapshot second = new MetricsSnapshot(parse(METRICS_2), first.getMetrics());
+    eventListenerManager.broadcastMetrics("p", second);
+    Assert.assertSame(second.getFull(), deltaListener.notifications.get(0));
+
+    // same after a discarded delta
+    deltaListener.discard = true;
+    MetricsSnapshot third = new MetricsSnapshot(parse(METRICS_1), second.getMetrics());
+    eventListenerManager.broadcastMetrics("p", third);
+    deltaListener.discard = false;
+    MetricsSnapshot fourth = new MetricsSnapshot(parse(METRICS_2), third.getMetrics());
+    eventListenerManager.broadcastMetrics("p", fourth);
+    Assert.assertEquals(2, deltaListener.notifications.size());
+    Assert.assertSame(fourth.getFull(), deltaListener.notifications.get(1));
+
+    // and delivered ones are followed by deltas
+    MetricsSnapshot fifth = new MetricsSnapshot(parse(METRICS_1), fourth.getMetrics());
+    eventListenerManager.broadcastMetrics("p", fifth);
+    Assert.assertSame(fifth.getDelta(), deltaListener.notifications.get(2));
+  }
+
+}
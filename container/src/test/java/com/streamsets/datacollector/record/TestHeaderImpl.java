@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.record;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class TestHeaderImpl {
+
+  private static HeaderImpl createHeader() {
+    HeaderImpl header = new HeaderImpl();
+    header.setStageCreator("stage");
+    header.setSourceId("source");
+    return header;
+  }
+
+  @Test
+  public void testStagesPathAndTrackingId() {
+    HeaderImpl header = createHeader();
+    header.createTrackingId();
+    Assert.assertEquals("source::null", header.getTrackingId());
+    Assert.assertNull(header.getPreviousTrackingId());
+
+    header.addStageToStagesPath("a");
+    header.createTrackingId();
+    Assert.assertEquals("a", header.getStagesPath());
+    Assert.assertEquals("source::a", header.getTrackingId());
+    Assert.assertEquals("source::null", header.getPreviousTrackingId());
+
+    // clones share the path built so far but diverge afterwards
+    HeaderImpl clone = header.clone();
+    header.addStageToStagesPath("b");
+    header.createTrackingId();
+    clone.addStageToStagesPath("c");
+    clone.createTrackingId();
+    Assert.assertEquals("a:b", header.getStagesPath());
+    Assert.assertEquals("source::a:b", header.getTrackingId());
+    Assert.assertEquals("source::a", header.getPreviousTrackingId());
+    Assert.assertEquals("a:c", clone.getStagesPath());
+    Assert.assertEquals("source::a:c", clone.getTrackingId());
+    Assert.assertEquals("source::a", clone.getPreviousTrackingId());
+
+    header.setStagesPath("x:y");
+    header.addStageToStagesPath("z");
+    Assert.assertEquals("x:y:z", header.getStagesPath());
+  }
+
+  @Test
+  public void testAttributes() {
+    HeaderImpl header = createHeader();
+    Assert.assertTrue(header.getAttributeNames().isEmpty());
+    Assert.assertNull(header.getAttribute("a0"));
+
+    // enough attributes to force a few resizes
+    for (int i = 0; i < 100; i++) {
+      header.setAttribute("a" + i, "v" + i);
+    }
+    Assert.assertEquals(100, header.getAttributeNames().size());
+    Assert.assertEquals(100, header.getValues().size());
+    for (int i = 0; i < 100; i += 2) {
+      header.deleteAttribute("a" + i);
+    }
+    header.deleteAttribute("unknown");
+    Set<String> expected = new HashSet<>();
+    for (int i = 0; i < 100; i++) {
+      if (i % 2 == 0) {
+        Assert.assertNull(header.getAttribute("a" + i));
+      } else {
+        Assert.assertEquals("v" + i, header.getAttribute("a" + i));
+        expected.add("a" + i);
+      }
+    }
+    Assert.assertEquals(expected, header.getAttributeNames());
+
+    HeaderImpl clone = header.clone();
+    clone.setAttribute("a1", "changed");
+    Assert.assertEquals("v1", header.getAttribute("a1"));
+    Assert.assertNotEquals(header, clone);
+    clone.setAttribute("a1", "v1");
+    Assert.assertEquals(header, clone);
+    Assert.assertEquals(header.hashCode(), clone.hashCode());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReservedAttribute() {
+    createHeader().setAttribute("_.stageCreator", "x");
+  }
+
+  @Test
+  public void testAllAttributes() {
+    HeaderImpl header = createHeader();
+    header.addStageToStagesPath("a");
+    header.createTrackingId();
+    header.setRaw(new byte[]{1, 2});
+    header.setRawMimeType("M");
+    header.setErrorContext("sdc", "pipeline");
+    header.setAttribute("x", "X");
+    header.setSourceRecord(new RecordImpl("s", "s", null, null));
+
+    Map<String, Object> all = header.getAllAttributes();
+    Assert.assertEquals("stage", all.get("_.stageCreator"));
+    Assert.assertEquals("source::a", all.get("_.trackingId"));
+    Assert.assertEquals("X", all.get("x"));
+    Assert.assertNotNull(all.get("_.sourceRecord"));
+
+    HeaderImpl other = new HeaderImpl();
+    Map<String, Object> old = other.setAllAttributes(all);
+    Assert.assertTrue(old.containsKey("_.sourceRecord"));
+    Assert.assertNull(old.get("_.stageCreator"));
+    Assert.assertEquals(header, other);
+    Assert.assertEquals(header.hashCode(), other.hashCode());
+    Assert.assertEquals("a", other.getStagesPath());
+    Assert.assertEquals("pipeline", other.getErrorPipelineName());
+    Assert.assertArrayEquals(new byte[]{1, 2}, other.getRaw());
+    Assert.assertSame(header.getSourceRecord(), other.getSourceRecord());
+
+    Map<String, Object> map = new HashMap<>();
+    map.put("y", "Y");
+    HeaderImpl json = new HeaderImpl("stage", "source", "a:b", null, null, null, null, null, null, null, null, null,
+        null, 0, null, map);
+    Assert.assertEquals("a:b", json.getStagesPath());
+    Assert.assertEquals("Y", json.getAttribute("y"));
+    Assert.assertEquals(1, json.getValues().size());
+    Assert.assertNull(json.getErrorCode());
+  }
+
+}
@@ -20,13 +20,16 @@ import com.streamsets.datacollector.record.RecordImpl;
 import com.streamsets.datacollector.record.io.RecordEncoding;
 import com.streamsets.datacollector.record.io.RecordEncodingConstants;
 import com.streamsets.datacollector.record.io.RecordWriterReaderFactory;
+import com.streamsets.datacollector.util.ContainerError;
 import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.api.ext.RecordReader;
 import com.streamsets.pipeline.api.ext.RecordWriter;
+import com.streamsets.pipeline.api.impl.ErrorMessage;
 
 import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mockito;
 
@@ -36,10 +39,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public  class TestRecordWriterReaderFactory {
 
@@ -86,6 +92,7 @@ public  class TestRecordWriterReaderFactory {
     testEncodingSelection(null, RecordEncodingConstants.JSON1_MAGIC_NUMBER);
     testEncodingSelection(RecordEncoding.JSON1.name(), RecordEncodingConstants.JSON1_MAGIC_NUMBER);
     testEncodingSelection(RecordEncoding.KRYO1.name(), RecordEncodingConstants.KRYO1_MAGIC_NUMBER);
+    testEncodingSelection(RecordEncoding.BIN1.name(), RecordEncodingConstants.BIN1_MAGIC_NUMBER);
   }
 
   private void testRecordWriterReader(RecordEncoding encoding) throws IOException {
@@ -204,6 +211,11 @@ public  class TestRecordWriterReaderFactory {
     testRecordWriterReader(RecordEncoding.KRYO1);
   }
 
+  @Test
+  public void testBinRecordWriter() throws IOException {
+    testRecordWriterReader(RecordEncoding.BIN1);
+  }
+
   @Test
   public void testJsonRecorWithOffset() throws IOException {
     testRecordReaderWithOffset(RecordEncoding.JSON1);
@@ -214,6 +226,196 @@ public  class TestRecordWriterReaderFactory {
     testRecordReaderWithOffset(RecordEncoding.KRYO1);
   }
 
+  @Test
+  public void testBinRecordWithOffset() throws IOException {
+    testRecordReaderWithOffset(RecordEncoding.BIN1);
+  }
+
+  private static RecordImpl createRecord(int i) {
+    RecordImpl record = new RecordImpl("stage", "source::" + i, null, null);
+    record.getHeader().setStagesPath("stage:processor");
+    record.getHeader().setTrackingId("source::" + i + "::stage:processor");
+    record.getHeader().setAttribute("file", "/data/file-" + (i % 10));
+    LinkedHashMap<String, Field> map = new LinkedHashMap<>();
+    map.put("id", Field.create((long) i));
+    map.put("name", Field.create("name " + i));
+    map.put("amount", Field.create(new BigDecimal(i).movePointLeft(2)));
+    map.put("ratio", Field.create(i / 3.0));
+    map.put("active", Field.create(i % 2 == 0));
+    map.put("created", Field.createDatetime(new Date(1500000000000L + i)));
+    map.put("comment", Field.create(Field.Type.STRING, null));
+    map.put("tags", Field.create(Arrays.asList(Field.create("t" + (i % 3)), Field.create("\u00e9t\u00e9"))));
+    record.set(Field.createListMap(map));
+    return record;
+  }
+
+  @Test
+  public void testBinRecordAllTypes() throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    RecordWriter writer = RecordWriterReaderFactory.createRecordWriter(RecordEncoding.BIN1, os);
+    Map<String, Field> map = new HashMap<>();
+    map.put("boolean", Field.create(true));
+    map.put("char", Field.create('c'));
+    map.put("byte", Field.create((byte) -3));
+    map.put("short", Field.create((short) -300));
+    map.put("integer", Field.create(Integer.MIN_VALUE));
+    map.put("long", Field.create(Long.MAX_VALUE));
+    map.put("float", Field.create(-1.5f));
+    map.put("double", Field.create(Double.NaN));
+    map.put("date", Field.createDate(new Date(0)));
+    map.put("time", Field.createTime(new Date(-1000)));
+    map.put("decimal", Field.create(new BigDecimal("-12345678901234567890.0001")));
+    map.put("bytes", Field.create(new byte[] {1, 2, 3}));
+    map.put("nullMap", Field.create(Field.Type.MAP, null));
+    map.put("emptyList", Field.create(new ArrayList<Field>()));
+
+    RecordImpl record1 = new RecordImpl("stage", "source", null, null);
+    record1.set(Field.create(map));
+    record1.getHeader().setErrorContext("sdc", "pipeline");
+    record1.getHeader().setError("stage", "Stage", new ErrorMessage(ContainerError.CONTAINER_0001, "message"));
+    writer.write(record1);
+
+    RecordImpl record2 = new RecordImpl("stage", "source2", null, null);
+    writer.write(record2);
+
+    // same shape and header strings as record1, written from the dictionaries
+    RecordImpl record3 = new RecordImpl("stage", "source3", null, null);
+    record3.set(Field.create(new HashMap<>(map)));
+    writer.write(record3);
+    writer.close();
+
+    RecordReader reader = RecordWriterReaderFactory.createRecordReader(new ByteArrayInputStream(os.toByteArray()), 0, 0);
+    Record read = reader.readRecord();
+    Assert.assertEquals(record1.get(), read.get());
+    Assert.assertEquals(ContainerError.CONTAINER_0001.getCode(), read.getHeader().getErrorCode());
+    Assert.assertEquals(record1.getHeader().getErrorMessage(), read.getHeader().getErrorMessage());
+    Assert.assertEquals(record1.getHeader().getErrorTimestamp(), read.getHeader().getErrorTimestamp());
+    Assert.assertEquals("pipeline", read.getHeader().getErrorPipelineName());
+    Assert.assertEquals("Stage", read.getHeader().getErrorStageLabel());
+    Assert.assertEquals(record2, reader.readRecord());
+    Assert.assertEquals(record3, reader.readRecord());
+    Assert.assertNull(reader.readRecord());
+    reader.close();
+  }
+
+  @Test
+  public void testEncodingSize() throws IOException {
+    int count = 1000;
+    List<Record> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      records.add(createRecord(i));
+    }
+
+    Map<RecordEncoding, Integer> sizes = new HashMap<>();
+    for (RecordEncoding encoding : RecordEncoding.values()) {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      RecordWriter writer = RecordWriterReaderFactory.createRecordWriter(encoding, os);
+      for (Record record : records) {
+        writer.write(record);
+      }
+      writer.close();
+      RecordReader reader = RecordWriterReaderFactory.createRecordReader(
+          new ByteArrayInputStream(os.toByteArray()),
+          0,
+          Integer.MAX_VALUE
+      );
+      int read = 0;
+      while (reader.readRecord() != null) {
+        read++;
+      }
+      reader.close();
+      Assert.assertEquals(count, read);
+      sizes.put(encoding, os.size());
+    }
+
+    Assert.assertTrue(sizes.get(RecordEncoding.BIN1) < sizes.get(RecordEncoding.KRYO1));
+    Assert.assertTrue(sizes.get(RecordEncoding.BIN1) < sizes.get(RecordEncoding.JSON1));
+  }
+
+  @Test
+  public void testBinRecordVariableLengthLists() throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    RecordWriter writer = RecordWriterReaderFactory.createRecordWriter(RecordEncoding.BIN1, os);
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < BinRecordConstants.MAX_LIST_SHAPES * 2; i++) {
+      List<Field> list = new ArrayList<>();
+      for (int j = 0; j < i; j++) {
+        list.add(Field.create(j));
+      }
+      RecordImpl record = new RecordImpl("stage", "source::" + i, null, null);
+      record.set(Field.create(list));
+      records.add(record);
+      writer.write(record);
+    }
+    // a repeated shape past the list shape limit is still decoded
+    writer.write(records.get(records.size() - 1));
+    writer.close();
+
+    RecordReader reader = RecordWriterReaderFactory.createRecordReader(
+        new ByteArrayInputStream(os.toByteArray()),
+        0,
+        Integer.MAX_VALUE
+    );
+    for (Record record : records) {
+      Assert.assertEquals(record, reader.readRecord());
+    }
+    Assert.assertEquals(records.get(records.size() - 1), reader.readRecord());
+    Assert.assertNull(reader.readRecord());
+    reader.close();
+  }
+
+  @Test
+  @Ignore("benchmark, run manually")
+  public void benchmarkThroughput() throws IOException {
+    int count = 200000;
+    int rounds = 5;
+    List<Record> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      records.add(createRecord(i));
+    }
+
+    for (RecordEncoding encoding : RecordEncoding.values()) {
+      long writeNanos = 0;
+      long readNanos = 0;
+      int size = 0;
+      // first round warms up the JIT and is not counted
+      for (int round = 0; round <= rounds; round++) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        RecordWriter writer = RecordWriterReaderFactory.createRecordWriter(encoding, os);
+        for (Record record : records) {
+          writer.write(record);
+        }
+        writer.close();
+        long written = System.nanoTime();
+        RecordReader reader = RecordWriterReaderFactory.createRecordReader(
+            new ByteArrayInputStream(os.toByteArray()),
+            0,
+            Integer.MAX_VALUE
+        );
+        int read = 0;
+        while (reader.readRecord() != null) {
+          read++;
+        }
+        reader.close();
+        long end = System.nanoTime();
+        Assert.assertEquals(count, read);
+        if (round > 0) {
+          writeNanos += written - start;
+          readNanos += end - written;
+        }
+        size = os.size();
+      }
+      System.out.println(String.format(
+          "%s: %d bytes per record, write %d records/s, read %d records/s",
+          encoding,
+          size / count,
+          count * rounds * TimeUnit.SECONDS.toNanos(1) / writeNanos,
+          count * rounds * TimeUnit.SECONDS.toNanos(1) / readNanos
+      ));
+    }
+  }
+
   @Test
   public void testDecimal() throws IOException {
     // We've picked this number because if it's casted to double, then it will lead to 36.7147000000000000483...
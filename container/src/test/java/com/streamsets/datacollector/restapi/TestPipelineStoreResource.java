@@ -43,6 +43,7 @@ import com.streamsets.datacollector.restapi.bean.ThresholdTypeJson;
 import com.streamsets.datacollector.runner.MockStages;
 import com.streamsets.datacollector.stagelibrary.StageLibraryTask;
 import com.streamsets.datacollector.store.AclStoreTask;
+import com.streamsets.datacollector.store.PipelineCatalog;
 import com.streamsets.datacollector.store.PipelineInfo;
 import com.streamsets.datacollector.store.PipelineStoreException;
 import com.streamsets.datacollector.store.PipelineStoreTask;
@@ -68,6 +69,8 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -613,16 +616,36 @@ public class TestPipelineStoreResource extends JerseyTest {
             "y"
         );
 
-        Mockito.when(pipelineStore.getPipelines())
-            .thenReturn(ImmutableList.of(
-                pipeline1,
-                pipeline2,
-                pipeline3,
-                readOnly,
-                readWriteOnly,
-                readWriteExecute,
-                noPerm
-            ));
+        List<PipelineInfo> pipelines = ImmutableList.of(
+            pipeline1,
+            pipeline2,
+            pipeline3,
+            readOnly,
+            readWriteOnly,
+            readWriteExecute,
+            noPerm
+        );
+        Mockito.when(pipelineStore.getPipelines()).thenReturn(pipelines);
+        final PipelineCatalog pipelineCatalog = new PipelineCatalog(pipelines);
+        Mockito.when(pipelineStore.getPipelineCount()).thenReturn(pipelineCatalog.size());
+        Mockito.when(pipelineStore.getPipelineLabels()).thenReturn(pipelineCatalog.getLabels());
+        Mockito.when(pipelineStore.findPipelines(
+            Matchers.<String>any(),
+            Matchers.<String>any(),
+            Matchers.<PipelineOrderByFields>any(),
+            Matchers.<Order>any()
+        )).thenAnswer(new Answer<List<PipelineInfo>>() {
+          @Override
+          public List<PipelineInfo> answer(InvocationOnMock invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            return pipelineCatalog.find(
+                (String) args[0],
+                (String) args[1],
+                (PipelineOrderByFields) args[2],
+                (Order) args[3]
+            );
+          }
+        });
 
         Mockito.when(pipelineStore.getInfo(Matchers.matches("xyz|myPipeline|newFromImport"))).thenReturn(
             new PipelineInfo(
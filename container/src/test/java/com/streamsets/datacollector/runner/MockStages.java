@@ -735,6 +735,7 @@ public class MockStages {
           .build();
         StageDefinition pushSourceDef = new StageDefinitionBuilder(cl, MPushSource.class, "pushSourceName")
           .withProducingEvents(true)
+          .withResetOffset(true)
           .build();
 
 
@@ -157,6 +157,11 @@ public class StageDefinitionBuilder {
     return this;
   }
 
+  public StageDefinitionBuilder withResetOffset(boolean resetOffset) {
+    this.resetOffset = resetOffset;
+    return this;
+  }
+
   public StageDefinition build() {
     return new StageDefinition(
       libraryDefinition,
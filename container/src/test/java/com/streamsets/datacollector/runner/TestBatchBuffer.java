@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.runner;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableSet;
+import com.streamsets.datacollector.record.RecordImpl;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.FileRef;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.Stage;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestBatchBuffer {
+
+  private File dir;
+  private Counter depth;
+  private Counter spilledBytes;
+  private Timer replayLag;
+
+  @Before
+  public void setUp() {
+    dir = new File("target", UUID.randomUUID().toString());
+    depth = new Counter();
+    spilledBytes = new Counter();
+    replayLag = new Timer();
+  }
+
+  private BatchBuffer createBuffer(int maxBatchesInMemory, long maxSpillBytes, int segmentSize) {
+    return new BatchBuffer(dir, "s", maxBatchesInMemory, maxSpillBytes, segmentSize, depth, spilledBytes, replayLag);
+  }
+
+  private static FullPipeBatch createBatch(int batch, int records) {
+    FullPipeBatch pipeBatch = new FullPipeBatch("e", null, 1000, false);
+    List<Record> output = new ArrayList<>();
+    for (int i = 0; i < records; i++) {
+      Record record = new RecordImpl("s", "b" + batch + "r" + i, null, null);
+      record.set(Field.create(batch * 1000 + i));
+      output.add(record);
+    }
+    pipeBatch.getFullPayload().put("lane", output);
+    return pipeBatch;
+  }
+
+  private static void assertBatch(int batch, int records, BatchBuffer.BufferedBatch bufferedBatch) {
+    Assert.assertEquals("o" + batch, bufferedBatch.getNewOffset());
+    List<Record> output = bufferedBatch.getPipeBatch().getFullPayload().get("lane");
+    Assert.assertEquals(records, output.size());
+    for (int i = 0; i < records; i++) {
+      Assert.assertEquals(batch * 1000 + i, output.get(i).get().getValueAsInteger());
+      Assert.assertEquals("b" + batch + "r" + i, output.get(i).getHeader().getSourceId());
+    }
+  }
+
+  private static List<String> getOffsets(List<BatchBuffer.BufferedBatch> batches) {
+    List<String> offsets = new ArrayList<>();
+    for (BatchBuffer.BufferedBatch batch : batches) {
+      offsets.add(batch.getNewOffset());
+    }
+    return offsets;
+  }
+
+  @Test
+  public void testAcknowledgeInOrder() throws Exception {
+    BatchBuffer buffer = createBuffer(10, 0, 1024);
+    for (int i = 1; i <= 3; i++) {
+      Assert.assertTrue(buffer.add(createBatch(i, 1), "e", "o" + i, 0, null));
+    }
+    Assert.assertEquals(3, depth.getCount());
+
+    BatchBuffer.BufferedBatch first = buffer.take();
+    BatchBuffer.BufferedBatch second = buffer.take();
+    BatchBuffer.BufferedBatch third = buffer.take();
+    assertBatch(1, 1, first);
+    assertBatch(2, 1, second);
+    assertBatch(3, 1, third);
+    Assert.assertEquals(0, depth.getCount());
+    Assert.assertEquals(3, replayLag.getCount());
+
+    // Later batches can't be committed before the earlier ones
+    Assert.assertTrue(buffer.acknowledge(second, true).isEmpty());
+    Assert.assertTrue(buffer.acknowledgeOffset("e", "direct").isEmpty());
+    Assert.assertEquals(Arrays.asList("o1", "o2"), getOffsets(buffer.acknowledge(first, true)));
+    // Offset of a batch that should not be committed is skipped
+    Assert.assertEquals(Collections.singletonList("direct"), getOffsets(buffer.acknowledge(third, false)));
+    Assert.assertEquals(Collections.singletonList("next"), getOffsets(buffer.acknowledgeOffset("e", "next")));
+
+    buffer.close();
+    Assert.assertNull(buffer.take());
+    buffer.destroy();
+  }
+
+  @Test
+  public void testSpillAndReplay() throws Exception {
+    BatchBuffer buffer = createBuffer(1, 1024 * 1024, 2048);
+    int count = 50;
+    for (int i = 1; i <= count; i++) {
+      Assert.assertTrue(buffer.add(createBatch(i, 20), "e", "o" + i, 0, null));
+    }
+    Assert.assertEquals(count, buffer.size());
+    Assert.assertTrue(buffer.getSpilledBytes() > 0);
+    Assert.assertEquals(buffer.getSpilledBytes(), spilledBytes.getCount());
+    // Spilled batches span several segments
+    Assert.assertTrue(dir.listFiles().length > 1);
+
+    for (int i = 1; i <= count; i++) {
+      BatchBuffer.BufferedBatch batch = buffer.take();
+      assertBatch(i, 20, batch);
+      Assert.assertEquals(Collections.singletonList("o" + i), getOffsets(buffer.acknowledge(batch, true)));
+    }
+    Assert.assertEquals(0, buffer.getSpilledBytes());
+    Assert.assertEquals(0, spilledBytes.getCount());
+    // Segments are deleted as they are replayed, only the one still open for writes is left
+    Assert.assertTrue(dir.listFiles().length <= 1);
+
+    buffer.destroy();
+    Assert.assertEquals(0, dir.listFiles().length);
+  }
+
+  @Test
+  public void testBatchesWithErrorsAreNotSpilled() throws Exception {
+    BatchBuffer buffer = createBuffer(1, 1024 * 1024, 2048);
+    Assert.assertTrue(buffer.add(createBatch(1, 1), "e", "o1", 0, null));
+
+    final FullPipeBatch withErrors = createBatch(2, 1);
+    withErrors.getErrorSink().addRecord("s", new RecordImpl("s", "error", null, null));
+    final AtomicBoolean added = new AtomicBoolean(false);
+    Thread producer = new Thread(() -> {
+      try {
+        added.set(buffer.add(withErrors, "e", "o2", 0, null));
+      } catch (PipelineRuntimeException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    producer.start();
+
+    // Memory is full and the batch can't be spilled, hence it waits until there is space in memory
+    producer.join(200);
+    Assert.assertTrue(producer.isAlive());
+    Assert.assertEquals(0, buffer.getSpilledBytes());
+
+    assertBatch(1, 1, buffer.take());
+    producer.join(10000);
+    Assert.assertTrue(added.get());
+    assertBatch(2, 1, buffer.take());
+    Assert.assertFalse(dir.exists());
+    buffer.destroy();
+  }
+
+  @Test
+  public void testBatchesWithFileRefAreNotSpilled() throws Exception {
+    BatchBuffer buffer = createBuffer(1, 1024 * 1024, 2048);
+    Assert.assertTrue(buffer.add(createBatch(1, 1), "e", "o1", 0, null));
+
+    final FullPipeBatch withFileRef = new FullPipeBatch("e", null, 1000, false);
+    Record record = new RecordImpl("s", "fileRef", null, null);
+    Map<String, Field> fields = new HashMap<>();
+    fields.put("fileRef", Field.create(Field.Type.FILE_REF, new FileRef(1000) {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <T extends AutoCloseable> Set<Class<T>> getSupportedStreamClasses() {
+        return ImmutableSet.of((Class<T>)InputStream.class);
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public <T extends AutoCloseable> T createInputStream(Stage.Context context, Class<T> streamClassType) {
+        return (T) new ByteArrayInputStream(new byte[0]);
+      }
+    }));
+    record.set(Field.create(fields));
+    withFileRef.getFullPayload().put("lane", Collections.singletonList(record));
+    final AtomicBoolean added = new AtomicBoolean(false);
+    Thread producer = new Thread(() -> {
+      try {
+        added.set(buffer.add(withFileRef, "e", "o2", 0, null));
+      } catch (PipelineRuntimeException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    producer.start();
+
+    // File references can't be serialized, hence the batch waits until there is space in memory
+    producer.join(200);
+    Assert.assertTrue(producer.isAlive());
+    Assert.assertEquals(0, buffer.getSpilledBytes());
+
+    assertBatch(1, 1, buffer.take());
+    producer.join(10000);
+    Assert.assertTrue(added.get());
+    BatchBuffer.BufferedBatch batch = buffer.take();
+    Assert.assertSame(record, batch.getPipeBatch().getFullPayload().get("lane").get(0));
+    Assert.assertFalse(dir.exists());
+    buffer.destroy();
+  }
+
+  @Test
+  public void testFailReleasesProducers() throws Exception {
+    BatchBuffer buffer = createBuffer(1, 0, 2048);
+    Assert.assertTrue(buffer.add(createBatch(1, 1), "e", "o1", 0, null));
+
+    final AtomicBoolean added = new AtomicBoolean(true);
+    Thread producer = new Thread(() -> {
+      try {
+        added.set(buffer.add(createBatch(2, 1), "e", "o2", 0, null));
+      } catch (PipelineRuntimeException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    producer.start();
+    producer.join(200);
+    Assert.assertTrue(producer.isAlive());
+
+    buffer.fail();
+    producer.join(10000);
+    Assert.assertFalse(added.get());
+    Assert.assertNull(buffer.take());
+    buffer.destroy();
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.datacollector.store;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.streamsets.datacollector.restapi.Order;
+import com.streamsets.datacollector.restapi.PipelineOrderByFields;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class TestPipelineCatalog {
+
+  private static PipelineInfo createInfo(String id, String title, long lastModified, String... labels) {
+    Map<String, Object> metadata = null;
+    if (labels.length > 0) {
+      metadata = ImmutableMap.<String, Object>of("labels", ImmutableList.copyOf(labels));
+    }
+    return new PipelineInfo(id, title, "", new Date(0), new Date(lastModified), "creator", "creator", "0",
+        UUID.randomUUID(), true, metadata, "x", "y");
+  }
+
+  private static List<String> ids(List<PipelineInfo> pipelineInfos) {
+    List<String> ids = new ArrayList<>();
+    for (PipelineInfo pipelineInfo : pipelineInfos) {
+      ids.add(pipelineInfo.getPipelineId());
+    }
+    return ids;
+  }
+
+  private static PipelineCatalog createCatalog() {
+    return new PipelineCatalog(ImmutableList.of(
+        createInfo("p1", "Kafka to HDFS", 300, "prod"),
+        createInfo("p2", "HDFS Archiver", 100, "prod", "hdfs"),
+        createInfo("p3", "Kafka mirror", 200, "dev"),
+        createInfo("p4", null, 400)
+    ));
+  }
+
+  @Test
+  public void testSorting() {
+    PipelineCatalog catalog = createCatalog();
+    Assert.assertEquals(4, catalog.size());
+    Assert.assertEquals(
+        ImmutableList.of("p1", "p2", "p3", "p4"),
+        ids(catalog.find(null, null, PipelineOrderByFields.NAME, Order.ASC))
+    );
+    Assert.assertEquals(
+        ImmutableList.of("p4", "p3", "p2", "p1"),
+        ids(catalog.find(null, null, PipelineOrderByFields.NAME, Order.DESC))
+    );
+    Assert.assertEquals(
+        ImmutableList.of("p2", "p3", "p1", "p4"),
+        ids(catalog.find(null, null, PipelineOrderByFields.TITLE, Order.ASC))
+    );
+    // most recently modified first
+    Assert.assertEquals(
+        ImmutableList.of("p4", "p1", "p3", "p2"),
+        ids(catalog.find(null, null, PipelineOrderByFields.LAST_MODIFIED, Order.ASC))
+    );
+  }
+
+  @Test
+  public void testFiltering() {
+    PipelineCatalog catalog = createCatalog();
+    Assert.assertEquals(
+        ImmutableList.of("p1", "p3"),
+        ids(catalog.find("kafka", null, PipelineOrderByFields.NAME, Order.ASC))
+    );
+    Assert.assertEquals(
+        ImmutableList.of("p1", "p2"),
+        ids(catalog.find("hdfs", null, PipelineOrderByFields.NAME, Order.ASC))
+    );
+    // shorter than a trigram
+    Assert.assertEquals(
+        ImmutableList.of("p1", "p2"),
+        ids(catalog.find("fs", null, PipelineOrderByFields.NAME, Order.ASC))
+    );
+    // pipelines without title match on their ID
+    Assert.assertEquals(ImmutableList.of("p4"), ids(catalog.find("p4", null, PipelineOrderByFields.NAME, Order.ASC)));
+    // all trigrams present but not contiguous
+    Assert.assertTrue(catalog.find("kafka hdfs", null, PipelineOrderByFields.NAME, Order.ASC).isEmpty());
+
+    Assert.assertEquals(
+        ImmutableList.of("p2", "p1"),
+        ids(catalog.find(null, "prod", PipelineOrderByFields.TITLE, Order.ASC))
+    );
+    Assert.assertEquals(
+        ImmutableList.of("p1"),
+        ids(catalog.find("kafka", "prod", PipelineOrderByFields.NAME, Order.ASC))
+    );
+    Assert.assertTrue(catalog.find(null, "unknown", PipelineOrderByFields.NAME, Order.ASC).isEmpty());
+    Assert.assertEquals(ImmutableSet.of("prod", "dev", "hdfs"), catalog.getLabels());
+  }
+
+  @Test
+  public void testUpdates() {
+    PipelineCatalog catalog = createCatalog();
+    catalog.put(createInfo("p2", "Kafka replay", 500, "dev"));
+    Assert.assertEquals(4, catalog.size());
+    Assert.assertEquals(
+        ImmutableList.of("p1", "p2", "p3"),
+        ids(catalog.find("kafka", null, PipelineOrderByFields.NAME, Order.ASC))
+    );
+    Assert.assertEquals(ImmutableList.of("p1"), ids(catalog.find("hdfs", null, PipelineOrderByFields.NAME, Order.ASC)));
+    Assert.assertEquals(
+        ImmutableList.of("p2", "p4", "p1", "p3"),
+        ids(catalog.find(null, null, PipelineOrderByFields.LAST_MODIFIED, Order.ASC))
+    );
+    Assert.assertEquals(ImmutableSet.of("prod", "dev"), catalog.getLabels());
+
+    catalog.remove("p1");
+    Assert.assertEquals(3, catalog.size());
+    Assert.assertNull(catalog.get("p1"));
+    Assert.assertEquals(
+        ImmutableList.of("p2", "p3"),
+        ids(catalog.find("kafka", null, PipelineOrderByFields.NAME, Order.ASC))
+    );
+    Assert.assertEquals(ImmutableSet.of("dev"), catalog.getLabels());
+
+    catalog.clear();
+    Assert.assertEquals(0, catalog.size());
+    Assert.assertTrue(catalog.find(null, null, PipelineOrderByFields.NAME, Order.ASC).isEmpty());
+  }
+
+}
@@ -138,11 +138,14 @@ public class TestFilePipelineStoreTask {
       Assert.assertEquals(0, store.getPipelines().size());
       store.create("foo", "a","label", "A", false);
       Assert.assertEquals(1, store.getPipelines().size());
+      Assert.assertEquals(1, store.getPipelineCount());
+      Assert.assertTrue(store.getPipelineLabels().isEmpty());
       store.save("foo2", "a", "A", "", store.load("a", "0"));
       assertEquals("foo2", store.getPipelines().get(0).getLastModifier());
       Assert.assertEquals("a", store.getInfo("a").getPipelineId());
       store.delete("a");
       Assert.assertEquals(0, store.getPipelines().size());
+      Assert.assertEquals(0, store.getPipelineCount());
     } finally {
       store.stop();
     }
@@ -52,8 +52,8 @@ angular
     var destroyed = false;
     var pageHidden = false;
     var isWebSocketSupported;
-    var webSocketMetricsURL = $rootScope.common.webSocketBaseURL + 'rest/v1/webSocket?type=metrics&pipelineName=' +
-      routeParamPipelineName;
+    var webSocketMetricsURL = $rootScope.common.webSocketBaseURL + 'rest/v1/webSocket?type=metrics&delta=true' +
+      '&pipelineName=' + routeParamPipelineName;
     var metricsWebSocket;
     var undoLimit = 10;
     var archive = [];
@@ -1521,6 +1521,39 @@ angular
       }, 1000);
     };
 
+    /**
+     * Merges a metrics delta message into the last metrics received over the WebSocket. A delta only carries the
+     * metrics that changed, removed metrics have a null value.
+     *
+     * @param metrics
+     * @param delta
+     * @returns {Object} New metrics object, the given one is not modified
+     */
+    var mergeMetricsDelta = function(metrics, delta) {
+      var merged = angular.extend({}, metrics);
+      angular.forEach(delta, function(value, key) {
+        if (key === 'delta') {
+          return;
+        }
+        if (value === null) {
+          delete merged[key];
+        } else if (_.isObject(value) && _.isObject(merged[key])) {
+          var section = angular.extend({}, merged[key]);
+          angular.forEach(value, function(metricValue, metricName) {
+            if (metricValue === null) {
+              delete section[metricName];
+            } else {
+              section[metricName] = metricValue;
+            }
+          });
+          merged[key] = section;
+        } else {
+          merged[key] = value;
+        }
+      });
+      return merged;
+    };
+
     /**
      * Fetch the Pipeline Status for every configured refresh interval.
      *
@@ -1539,12 +1572,23 @@ angular
         //WebSocket to get Pipeline Metrics
         metricsWebSocket = new WebSocket(webSocketMetricsURL);
 
+        //First message is a full snapshot, following ones may only carry the changed metrics
+        var webSocketMetrics;
         metricsWebSocket.onmessage = function (evt) {
-          var received_msg = evt.data;
+          var received_msg = JSON.parse(evt.data);
+          if (received_msg.delta) {
+            if (!webSocketMetrics) {
+              // nothing to merge into until a full snapshot arrives
+              return;
+            }
+            webSocketMetrics = mergeMetricsDelta(webSocketMetrics, received_msg);
+          } else {
+            webSocketMetrics = received_msg;
+          }
 
           if (!$scope.monitoringPaused) {
             $rootScope.$apply(function() {
-              $rootScope.common.pipelineMetrics = JSON.parse(received_msg);
+              $rootScope.common.pipelineMetrics = webSocketMetrics;
             });
 
           }
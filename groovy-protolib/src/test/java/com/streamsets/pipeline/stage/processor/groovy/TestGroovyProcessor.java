@@ -226,6 +226,13 @@ public class TestGroovyProcessor {
     ScriptingProcessorTestUtil.verifyNestedMap(GroovyProcessor.class, processor);
   }
 
+  @Test
+  public void testUntouchedFields() throws Exception {
+    final String script = Resources.toString(Resources.getResource("UntouchedFieldsScript.groovy"), Charsets.UTF_8);
+    Processor processor = new GroovyProcessor(ProcessingMode.BATCH, script);
+    ScriptingProcessorTestUtil.verifyUntouchedFields(GroovyProcessor.class, processor);
+  }
+
   @Test
   public void testChangeFieldTypeFromScripting() throws Exception {
     final String script = Resources.toString(Resources.getResource("ChangeFieldTypeScript.groovy"), Charsets.UTF_8);
@@ -26,6 +26,7 @@ import com.streamsets.pipeline.lib.el.RecordEL;
 import com.streamsets.pipeline.lib.generator.DataGenerator;
 import com.streamsets.pipeline.lib.generator.DataGeneratorFactory;
 import com.streamsets.pipeline.lib.generator.StreamCloseEventHandler;
+import com.streamsets.pipeline.lib.io.fileref.FileChannelProvider;
 import com.streamsets.pipeline.stage.destination.hdfs.IdleClosedException;
 import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.hadoop.fs.Path;
@@ -35,8 +36,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
@@ -87,7 +90,9 @@ public class RecordWriter {
   public RecordWriter(Path path, long timeToLiveMillis, OutputStream textOutputStream,
                       DataGeneratorFactory generatorFactory, StreamCloseEventHandler streamCloseEventHandler) throws StageException, IOException {
     this(path, timeToLiveMillis, generatorFactory);
-    this.textOutputStream = new CountingOutputStream(textOutputStream);
+    this.textOutputStream = textOutputStream instanceof FileOutputStream
+        ? new FileChannelCountingOutputStream((FileOutputStream) textOutputStream)
+        : new CountingOutputStream(textOutputStream);
     generator = generatorFactory.getGenerator(this.textOutputStream, streamCloseEventHandler);
     textFile = true;
     this.idleTimeout = -1L;
@@ -336,4 +341,31 @@ public class RecordWriter {
     }
   }
 
+  /**
+   * Counting stream over a local file, whole file transfers may write to its channel directly so the length is
+   * taken from the channel.
+   */
+  private static class FileChannelCountingOutputStream extends CountingOutputStream implements FileChannelProvider {
+    private final FileChannel channel;
+
+    FileChannelCountingOutputStream(FileOutputStream outputStream) {
+      super(outputStream);
+      channel = outputStream.getChannel();
+    }
+
+    @Override
+    public FileChannel getFileChannel() {
+      return channel;
+    }
+
+    @Override
+    public synchronized long getByteCount() {
+      try {
+        return channel.position();
+      } catch (IOException e) {
+        // the channel is closed
+        return super.getByteCount();
+      }
+    }
+  }
 }
@@ -35,10 +35,12 @@ import com.streamsets.pipeline.stage.destination.hdfs.Errors;
 import com.streamsets.pipeline.stage.destination.hdfs.util.HdfsUtils;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Date;
@@ -189,6 +191,14 @@ final class WholeFileFormatFsHelper implements FsHelper {
   @Override
   public OutputStream create(FileSystem fs, Path path) throws IOException {
     //Make sure if the tmp file already exists, overwrite it
+    if (fs instanceof RawLocalFileSystem) {
+      //A plain file stream lets the whole file be copied with zero copy instead of through FSDataOutputStream.
+      Path parent = path.getParent();
+      if (parent != null && !fs.mkdirs(parent)) {
+        throw new IOException(Utils.format("Could not create directory '{}'", parent));
+      }
+      return new FileOutputStream(((RawLocalFileSystem) fs).pathToFile(path));
+    }
     return fs.create(path, true);
   }
 
@@ -30,6 +30,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public class MemoryBufferFragmentQueue implements FragmentQueue {
   private static final Logger LOG = LoggerFactory.getLogger(MemoryBufferFragmentQueue.class);
+  private static final int MAX_FRAGMENTS_PER_WRITE = 1000;
 
   private final int maxMemQueueFragments;
   private final BlockingQueue<byte[]> dataQueue;
@@ -64,14 +65,15 @@ public class MemoryBufferFragmentQueue implements FragmentQueue {
     return new Runnable() {
       @Override
       public void run() {
-        List<byte[]> list = new ArrayList<>(1);
-        list.add(null);
         try {
           while (running) {
             try {
               byte[] fragment = dataQueue.poll(100, TimeUnit.MILLISECONDS);
               if (fragment != null) {
-                list.set(0, fragment);
+                // Hand over all fragments waiting in memory in a single write
+                List<byte[]> list = new ArrayList<>();
+                list.add(fragment);
+                dataQueue.drainTo(list, MAX_FRAGMENTS_PER_WRITE - 1);
                 fragmentQueue.write(list);
               }
             } catch (InterruptedException ex) {
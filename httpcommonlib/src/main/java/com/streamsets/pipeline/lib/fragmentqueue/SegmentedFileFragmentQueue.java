@@ -0,0 +1,303 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.fragmentqueue;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.streamsets.pipeline.api.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fragment queue backed by a chain of memory mapped segment files.
+ *
+ * Each write call appends all its fragments under a single lock and forces the touched segments to disk once for the
+ * whole group. Consumers waiting on an empty queue are woken up as soon as fragments are written. Segments that were
+ * fully consumed are recycled for new writes instead of being unmapped and deleted.
+ *
+ * The maximum queue size bounds the segment files allocated on disk, recycled ones included, not only the queued
+ * fragments.
+ */
+public class SegmentedFileFragmentQueue implements FragmentQueue {
+  private static final Logger LOG = LoggerFactory.getLogger(SegmentedFileFragmentQueue.class);
+
+  static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+  private static final int MAX_FREE_SEGMENTS = 2;
+
+  private final long maxQueueFileSize;
+  private final int segmentSize;
+  private final ReentrantLock lock;
+  private final Condition notEmpty;
+  private final Deque<Segment> segments;
+  private final Deque<Segment> freeSegments;
+  private File dir;
+  private int nextSegment;
+  // size of all the segment files, in use or free
+  private long allocatedBytes;
+  private AtomicInteger lostFragments;
+
+  public SegmentedFileFragmentQueue(long maxFileSizeMB) {
+    this(maxFileSizeMB, DEFAULT_SEGMENT_SIZE);
+  }
+
+  @VisibleForTesting
+  SegmentedFileFragmentQueue(long maxFileSizeMB, int segmentSize) {
+    this.maxQueueFileSize = maxFileSizeMB * 1000 * 1000;
+    // several segments are needed for consumed segments to be recycled while others are written
+    this.segmentSize = (int) Math.max(1024, Math.min(segmentSize, maxQueueFileSize / 4));
+    lock = new ReentrantLock();
+    notEmpty = lock.newCondition();
+    segments = new ArrayDeque<>();
+    freeSegments = new ArrayDeque<>();
+  }
+
+  @VisibleForTesting
+  long getMaxQueueFileSize() {
+    return maxQueueFileSize;
+  }
+
+  @VisibleForTesting
+  File getDir() {
+    return dir;
+  }
+
+  @VisibleForTesting
+  int getSegmentFilesCount() {
+    String[] files = dir.list();
+    return (files == null) ? 0 : files.length;
+  }
+
+  @Override
+  public List<Stage.ConfigIssue> init(Stage.Context context) {
+    List<Stage.ConfigIssue> issues = new ArrayList<>();
+    try {
+      dir = Files.createTempDirectory("sdc-fragments").toFile();
+    } catch (IOException ex) {
+      issues.add(context.createConfigIssue("", "", Errors.FRAGMENT_CACHE_WRITER_01, ex.toString()));
+    }
+    lostFragments = new AtomicInteger(0);
+    return issues;
+  }
+
+  @Override
+  public void destroy() {
+    lock.lock();
+    try {
+      for (Segment segment : segments) {
+        segment.delete();
+      }
+      for (Segment segment : freeSegments) {
+        segment.delete();
+      }
+      segments.clear();
+      freeSegments.clear();
+      allocatedBytes = 0;
+    } finally {
+      lock.unlock();
+    }
+    if (dir != null && !dir.delete()) {
+      LOG.warn("Could not delete queue directory '{}' on destroy", dir.getAbsolutePath());
+    }
+  }
+
+  @Override
+  public int getMaxFragmentSizeKB() {
+    return (int) (maxQueueFileSize / 1000);
+  }
+
+  @Override
+  public void write(List<byte[]> fragments) throws IOException {
+    int lost = 0;
+    List<Segment> written = new ArrayList<>(1);
+    lock.lock();
+    try {
+      for (byte[] fragment : fragments) {
+        Segment segment = getWriteSegment(4 + fragment.length);
+        if (segment != null) {
+          segment.buffer.putInt(fragment.length);
+          segment.buffer.put(fragment);
+          segment.fragments++;
+          if (!written.contains(segment)) {
+            written.add(segment);
+          }
+        } else {
+          lost++;
+        }
+      }
+      if (!written.isEmpty()) {
+        notEmpty.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    // Single sync for all the fragments of the write
+    for (Segment segment : written) {
+      segment.buffer.force();
+    }
+
+    if (lost > 0) {
+      lostFragments.addAndGet(lost);
+      LOG.warn("Lost '{}' fragments, file queue full at '{}MB'", lost, getMaxQueueFileSize() / 1000 / 1000);
+    }
+  }
+
+  @Override
+  public int getLostFragmentsCountAndReset() {
+    return lostFragments.getAndSet(0);
+  }
+
+  @Override
+  public List<byte[]> poll(int maxFragments) throws IOException {
+    lock.lock();
+    try {
+      return pollFragments(maxFragments);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public List<byte[]> poll(int maxFragments, long waitTimeMillis) throws IOException, InterruptedException {
+    long remaining = TimeUnit.MILLISECONDS.toNanos(waitTimeMillis);
+    lock.lock();
+    try {
+      List<byte[]> fragments = pollFragments(maxFragments);
+      while (fragments == null && remaining > 0) {
+        remaining = notEmpty.awaitNanos(remaining);
+        fragments = pollFragments(maxFragments);
+      }
+      return fragments;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private List<byte[]> pollFragments(int maxFragments) {
+    List<byte[]> fragments = null;
+    while (!segments.isEmpty() && (fragments == null || fragments.size() < maxFragments)) {
+      Segment segment = segments.peek();
+      if (segment.fragments == 0) {
+        if (segments.size() == 1) {
+          // Fully consumed write segment, start writing from its beginning again
+          segment.reset();
+          break;
+        }
+        recycle(segments.poll());
+        continue;
+      }
+      int length = segment.buffer.getInt(segment.readPosition);
+      byte[] fragment = new byte[length];
+      ByteBuffer data = segment.buffer.duplicate();
+      data.position(segment.readPosition + 4);
+      data.get(fragment);
+      segment.readPosition += 4 + length;
+      segment.fragments--;
+      if (fragments == null) {
+        fragments = new ArrayList<>();
+      }
+      fragments.add(fragment);
+    }
+    return fragments;
+  }
+
+  // returns null if a new segment would take the segment files over the maximum queue size
+  private Segment getWriteSegment(int size) throws IOException {
+    Segment segment = segments.peekLast();
+    if (segment != null && segment.buffer.remaining() >= size) {
+      return segment;
+    }
+    segment = null;
+    while (!freeSegments.isEmpty() && segment == null) {
+      Segment free = freeSegments.poll();
+      if (free.buffer.capacity() >= size) {
+        segment = free;
+      } else {
+        delete(free);
+      }
+    }
+    if (segment == null) {
+      int capacity = (int) Math.max(Math.min(segmentSize, getMaxQueueFileSize()), size);
+      if (allocatedBytes + capacity > getMaxQueueFileSize()) {
+        return null;
+      }
+      segment = new Segment(new File(dir, "segment-" + nextSegment++), capacity);
+      allocatedBytes += capacity;
+    }
+    segments.add(segment);
+    return segment;
+  }
+
+  private void recycle(Segment segment) {
+    if (freeSegments.size() < MAX_FREE_SEGMENTS) {
+      segment.reset();
+      freeSegments.add(segment);
+    } else {
+      delete(segment);
+    }
+  }
+
+  private void delete(Segment segment) {
+    segment.delete();
+    allocatedBytes -= segment.buffer.capacity();
+  }
+
+  private static class Segment {
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private int readPosition;
+    private int fragments;
+
+    Segment(File file, int size) throws IOException {
+      this.file = file;
+      try (FileChannel channel = FileChannel.open(
+          file.toPath(),
+          StandardOpenOption.CREATE_NEW,
+          StandardOpenOption.READ,
+          StandardOpenOption.WRITE
+      )) {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      }
+    }
+
+    void reset() {
+      buffer.clear();
+      readPosition = 0;
+      fragments = 0;
+    }
+
+    void delete() {
+      if (!file.delete()) {
+        LOG.warn("Could not delete queue segment '{}'", file.getAbsolutePath());
+      }
+    }
+  }
+}
@@ -143,8 +143,17 @@ public class SdcIpcRequestFragmenter implements HttpRequestFragmenter {
     int magicByte = is.read();
     if (magicByte == -1) {
       throw new IOException("Request has no data");
-    } else if ((((byte)magicByte) & JSON1_MAGIC_NUMBER) != JSON1_MAGIC_NUMBER) {
-      throw new IOException(Utils.format("Data is not JSON1, unsupported magic byte '{}'", magicByte));
+    } else if ((magicByte & 0xf0) != (BASE_MAGIC_NUMBER & 0xff)) {
+      throw new IOException(Utils.format("Data is not SDC records, unsupported magic byte '{}'", magicByte));
+    } else if ((byte) magicByte != JSON1_MAGIC_NUMBER) {
+      // only JSON1 is line delimited, other record formats (i.e. BIN1) can only be read from the start of the
+      // stream, they are kept in a single fragment
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      baos.write(magicByte);
+      if (!copy(is, baos, maxSizeB)) {
+        throw new IOException(Utils.format("Maximum data size '{}' exceeded", maxSizeB));
+      }
+      list.add(baos.toByteArray());
     } else {
       ByteArrayOutputStream baos = new ByteArrayOutputStream(fragmentSizeB);
       byte[] message = extract(is, baos, fragmentSizeB - 2); // to account for the magic byte and \r\n EOLs
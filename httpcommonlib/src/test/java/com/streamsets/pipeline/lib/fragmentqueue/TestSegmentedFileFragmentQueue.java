@@ -0,0 +1,231 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.fragmentqueue;
+
+import com.google.common.collect.ImmutableList;
+import com.streamsets.pipeline.api.OnRecordError;
+import com.streamsets.pipeline.api.Stage;
+import com.streamsets.pipeline.sdk.ContextInfoCreator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestSegmentedFileFragmentQueue {
+
+  private static Stage.Context createContext() {
+    return ContextInfoCreator.createSourceContext("i", false, OnRecordError.TO_ERROR, ImmutableList.of("a"));
+  }
+
+  private byte[] fill(byte[] array, byte value) {
+    for (int i = 0; i < array.length; i++) {
+      array[i] = value;
+    }
+    return array;
+  }
+
+  @Test
+  public void testSegmentedFileFragmentQueue() throws Exception {
+    SegmentedFileFragmentQueue queue = new SegmentedFileFragmentQueue(1);
+    queue = Mockito.spy(queue);
+    Mockito.doReturn(1000L).when(queue).getMaxQueueFileSize(); // faking max size down to 1KB
+
+    Assert.assertTrue(queue.init(createContext()).isEmpty());
+
+    Assert.assertNull(queue.poll(4));
+
+    byte[] fragment1 = fill(new byte[100], (byte) 1);
+    byte[] fragment2 = fill(new byte[200], (byte) 2);
+    byte[] fragment3 = fill(new byte[1000], (byte) 3); //this fragment will be lost
+    byte[] fragment4 = fill(new byte[100], (byte) 4);
+    List<byte[]> fragments = ImmutableList.of(fragment1, fragment2, fragment3, fragment4);
+
+    Assert.assertEquals(0, queue.getLostFragmentsCountAndReset());
+
+    queue.write(fragments);
+    List<byte[]> got = queue.poll(4);
+    Assert.assertEquals(3, got.size());
+    Assert.assertArrayEquals(fragment1, got.get(0));
+    Assert.assertArrayEquals(fragment2, got.get(1));
+    Assert.assertArrayEquals(fragment4, got.get(2));
+
+    Assert.assertEquals(1, queue.getLostFragmentsCountAndReset());
+    Assert.assertEquals(0, queue.getLostFragmentsCountAndReset());
+
+    long start = System.currentTimeMillis();
+    Assert.assertNull(queue.poll(1, 100));
+    Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+
+    queue.destroy();
+  }
+
+  @Test
+  public void testSegmentsAreRecycled() throws Exception {
+    SegmentedFileFragmentQueue queue = new SegmentedFileFragmentQueue(1, 1024);
+    queue.init(createContext());
+
+    int value = 0;
+    int expected = 0;
+    for (int round = 0; round < 50; round++) {
+      List<byte[]> fragments = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        fragments.add(fill(new byte[300], (byte) value++));
+      }
+      queue.write(fragments);
+      // 3 fragments fit into a segment
+      Assert.assertTrue(queue.getSegmentFilesCount() <= 6);
+
+      List<byte[]> got = queue.poll(7);
+      Assert.assertEquals(7, got.size());
+      got.addAll(queue.poll(100));
+      Assert.assertEquals(10, got.size());
+      for (byte[] fragment : got) {
+        Assert.assertArrayEquals(fill(new byte[300], (byte) expected++), fragment);
+      }
+      Assert.assertNull(queue.poll(1));
+    }
+    Assert.assertEquals(0, queue.getLostFragmentsCountAndReset());
+
+    // Fragments bigger than the segment size get their own segment
+    byte[] big = fill(new byte[5000], (byte) 7);
+    queue.write(ImmutableList.of(big));
+    Assert.assertArrayEquals(big, queue.poll(1).get(0));
+
+    queue.destroy();
+  }
+
+  @Test
+  public void testPollWakesUpOnWrite() throws Exception {
+    final SegmentedFileFragmentQueue queue = new SegmentedFileFragmentQueue(1);
+    queue.init(createContext());
+
+    final AtomicReference<List<byte[]>> got = new AtomicReference<>();
+    Thread consumer = new Thread(() -> {
+      try {
+        got.set(queue.poll(10, 60000));
+      } catch (Exception ex) {
+        throw new RuntimeException(ex);
+      }
+    });
+    consumer.start();
+    Thread.sleep(100);
+
+    long start = System.currentTimeMillis();
+    queue.write(ImmutableList.of(fill(new byte[10], (byte) 1)));
+    consumer.join(10000);
+    Assert.assertFalse(consumer.isAlive());
+    Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+    Assert.assertEquals(1, got.get().size());
+
+    queue.destroy();
+  }
+
+  @Test
+  public void testMaxSizeCountsSegmentFiles() throws Exception {
+    SegmentedFileFragmentQueue queue = new SegmentedFileFragmentQueue(1, 1024);
+    queue = Mockito.spy(queue);
+    Mockito.doReturn(4096L).when(queue).getMaxQueueFileSize(); // faking max size down to 4 segments
+    queue.init(createContext());
+
+    // a single 600 bytes fragment fits in a 1024 bytes segment, 2400 bytes of fragments take the whole 4096 bytes
+    List<byte[]> fragments = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      fragments.add(fill(new byte[600], (byte) i));
+    }
+    queue.write(fragments);
+    Assert.assertEquals(2, queue.getLostFragmentsCountAndReset());
+    Assert.assertEquals(4, queue.getSegmentFilesCount());
+
+    List<byte[]> got = queue.poll(10);
+    Assert.assertEquals(4, got.size());
+    for (int i = 0; i < 4; i++) {
+      Assert.assertArrayEquals(fragments.get(i), got.get(i));
+    }
+
+    // consumed segments make room again
+    queue.write(fragments.subList(0, 4));
+    Assert.assertEquals(0, queue.getLostFragmentsCountAndReset());
+    Assert.assertTrue(queue.getSegmentFilesCount() <= 4);
+    Assert.assertEquals(4, queue.poll(10).size());
+
+    queue.destroy();
+  }
+
+  @Test
+  public void testFragmentsAreInSegmentFiles() throws Exception {
+    SegmentedFileFragmentQueue queue = new SegmentedFileFragmentQueue(1, 1024);
+    queue.init(createContext());
+
+    byte[] fragment = fill(new byte[100], (byte) 5);
+    queue.write(ImmutableList.of(fragment));
+    File[] files = queue.getDir().listFiles();
+    Assert.assertNotNull(files);
+    Assert.assertEquals(1, files.length);
+    ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(files[0].toPath()));
+    Assert.assertEquals(fragment.length, data.getInt());
+    byte[] written = new byte[fragment.length];
+    data.get(written);
+    Assert.assertArrayEquals(fragment, written);
+
+    queue.destroy();
+  }
+
+  @Test
+  public void testConcurrentWriterAndConsumerOrdering() throws Exception {
+    final SegmentedFileFragmentQueue queue = new SegmentedFileFragmentQueue(1, 1024);
+    queue.init(createContext());
+
+    final int count = 2000;
+    final List<byte[]> got = new ArrayList<>();
+    Thread consumer = new Thread(() -> {
+      try {
+        while (got.size() < count) {
+          List<byte[]> fragments = queue.poll(7, 1000);
+          if (fragments != null) {
+            got.addAll(fragments);
+          }
+        }
+      } catch (Exception ex) {
+        throw new RuntimeException(ex);
+      }
+    });
+    consumer.start();
+    for (int i = 0; i < count; i += 10) {
+      List<byte[]> fragments = new ArrayList<>();
+      for (int j = i; j < i + 10; j++) {
+        byte[] fragment = new byte[100];
+        ByteBuffer.wrap(fragment).putInt(j);
+        fragments.add(fragment);
+      }
+      queue.write(fragments);
+    }
+    consumer.join(60000);
+    Assert.assertFalse(consumer.isAlive());
+    Assert.assertEquals(0, queue.getLostFragmentsCountAndReset());
+    Assert.assertEquals(count, got.size());
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals(i, ByteBuffer.wrap(got.get(i)).getInt());
+    }
+
+    queue.destroy();
+  }
+}
@@ -234,6 +234,28 @@ public class TestSdcIpcRequestFragmenter {
     Assert.assertArrayEquals(new byte[]{SdcIpcRequestFragmenter.JSON1_MAGIC_NUMBER, 1, 2, '\n', 1, '\n'}, fragments.get(1));
   }
 
+  @Test
+  public void testFragmentNonJson1NotSplit() throws IOException {
+    // BIN1 magic byte, the record data happens to contain EOL bytes
+    byte bin1MagicNumber = SdcIpcRequestFragmenter.BASE_MAGIC_NUMBER | (byte) 0x03;
+    byte[] data = new byte[]{bin1MagicNumber, 1, 2, '\n', 3, 4, 5, '\n', 6, 7, 8, 9, '\n', 10};
+    List<byte[]> fragments = new SdcIpcRequestFragmenter().fragmentInternal(new ByteArrayInputStream(data), 6, 100);
+    Assert.assertEquals(1, fragments.size());
+    Assert.assertArrayEquals(data, fragments.get(0));
+
+    // exactly the max data size
+    fragments = new SdcIpcRequestFragmenter().fragmentInternal(new ByteArrayInputStream(data), 6, data.length);
+    Assert.assertEquals(1, fragments.size());
+    Assert.assertArrayEquals(data, fragments.get(0));
+  }
+
+  @Test(expected = IOException.class)
+  public void testFragmentNonJson1DataSizeExceeded() throws IOException {
+    byte bin1MagicNumber = SdcIpcRequestFragmenter.BASE_MAGIC_NUMBER | (byte) 0x03;
+    byte[] data = new byte[]{bin1MagicNumber, 1, 2, '\n', 3, 4, 5, '\n', 6, 7, 8, 9, '\n', 10};
+    new SdcIpcRequestFragmenter().fragmentInternal(new ByteArrayInputStream(data), 6, data.length - 1);
+  }
+
   @Test
   public void testFragmentWithSDCData() throws IOException {
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -107,6 +107,20 @@ public class OracleCDCConfigBean {
   @ValueChooserModel(BufferingChooserValues.class)
   public BufferingValues bufferLocation;
 
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.NUMBER,
+      label = "Max Buffer Memory (MB)",
+      description = "Memory used to buffer uncommitted changes before they are spilled to disk in compressed blocks",
+      displayPosition = 95,
+      group = "CDC",
+      dependsOn = "bufferLocation",
+      triggeredByValue = "ON_DISK",
+      min = 1,
+      defaultValue = "256"
+  )
+  public int maxBufferMemory;
+
   @ConfigDef(
       required = true,
       type = ConfigDef.Type.BOOLEAN,
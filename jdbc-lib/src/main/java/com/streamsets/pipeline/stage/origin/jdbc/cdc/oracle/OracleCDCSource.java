@@ -168,6 +168,8 @@ public class OracleCDCSource extends BaseSource {
   private static final String XID = PREFIX + "xid";
   private static final String SEQ = "SEQ";
   private static final HashQueue<RecordSequence> EMPTY_LINKED_HASHSET = new InMemoryHashQueue<>(0);
+  private static final long MB = 1024L * 1024;
+  private static final int BUFFER_GAUGE_TRANSACTIONS = 10;
 
   private static final String SENDING_TO_ERROR_AS_CONFIGURED = ". Sending to error as configured";
   private static final String UNSUPPORTED_TO_ERR = JDBC_85.getMessage() + SENDING_TO_ERROR_AS_CONFIGURED;
@@ -208,6 +210,8 @@ public class OracleCDCSource extends BaseSource {
   private ZoneId zoneId;
 
   private Gauge<Map<String, Object>> delay;
+  private TransactionBufferBudget bufferBudget;
+  private Gauge<Map<String, Object>> bufferGauge;
 
   private enum DDL_EVENT {
     CREATE,
@@ -476,6 +480,9 @@ public class OracleCDCSource extends BaseSource {
     } else {
       delay.getValue().put("delay", getDelay(lastSCNTimestamp));
     }
+    if (bufferGauge != null) {
+      updateBufferGauge();
+    }
     if (offsetReference.get() != null) {
       String offset = offsetReference.get().toString();
       LOG.debug("Returning offset: {}", offset);
@@ -631,7 +638,10 @@ public class OracleCDCSource extends BaseSource {
               }
               bufferedRecordsLock.lock();
               try {
-                bufferedRecords.remove(key);
+                HashQueue<RecordSequence> records = bufferedRecords.remove(key);
+                if (records != null) {
+                  records.close();
+                }
               } finally {
                 bufferedRecordsLock.unlock();
               }
@@ -1250,6 +1260,8 @@ public class OracleCDCSource extends BaseSource {
       } catch (IOException ex) {
         Throwables.propagate(ex);
       }
+      bufferBudget = new TransactionBufferBudget(configBean.maxBufferMemory * MB);
+      bufferGauge = getContext().createGauge("Transaction Buffer");
     }
 
     if (configBean.baseConfigBean.caseSensitive) {
@@ -1664,6 +1676,7 @@ public class OracleCDCSource extends BaseSource {
             }
           }
           txnDiscarded.incrementAndGet();
+          entry.getValue().close();
           iter.remove();
         }
       }
@@ -1726,12 +1739,40 @@ public class OracleCDCSource extends BaseSource {
     return contextAndOpCode;
   }
   private HashQueue<RecordSequence> createTransactionBuffer(String txnId) {
+    return configBean.bufferLocation == BufferingValues.IN_MEMORY ? new InMemoryHashQueue<>() :
+        new SpillingHashQueue(new File(txnBufferLocation, txnId), bufferBudget);
+  }
+
+  /**
+   * Publishes the totals of the spilling transaction buffers and the memory and spill usage of the largest
+   * transactions.
+   */
+  private void updateBufferGauge() {
+    Map<String, Object> metrics = bufferGauge.getValue();
+    bufferedRecordsLock.lock();
     try {
-      return configBean.bufferLocation == BufferingValues.IN_MEMORY ? new InMemoryHashQueue<>() :
-          new FileBackedHashQueue<>(new File(txnBufferLocation, txnId));
-    } catch (IOException ex) {
-      LOG.error("Error while creating transaction buffer", ex);
-      throw new RuntimeException(ex);
+      List<Map.Entry<TransactionIdKey, HashQueue<RecordSequence>>> txns = new ArrayList<>(bufferedRecords.entrySet());
+      txns.sort((t1, t2) -> Integer.compare(t2.getValue().size(), t1.getValue().size()));
+      metrics.clear();
+      metrics.put("Buffered Transactions", txns.size());
+      metrics.put("Memory Used (MB)", bufferBudget.getMemoryBytes() / MB);
+      metrics.put("Memory Limit (MB)", bufferBudget.getMaxMemoryBytes() / MB);
+      metrics.put("Spilled to Disk (MB)", bufferBudget.getSpilledBytes() / MB);
+      metrics.put("Spilled Blocks", bufferBudget.getSpilledBlocks());
+      for (int i = 0; i < txns.size() && i < BUFFER_GAUGE_TRANSACTIONS; i++) {
+        SpillingHashQueue records = (SpillingHashQueue) txns.get(i).getValue();
+        metrics.put(
+            "Transaction " + txns.get(i).getKey().txnId,
+            Utils.format(
+                "{} records, {} KB in memory, {} KB on disk",
+                records.size(),
+                records.getMemoryBytes() / 1024,
+                records.getSpilledBytes() / 1024
+            )
+        );
+      }
+    } finally {
+      bufferedRecordsLock.unlock();
     }
   }
 
@@ -0,0 +1,497 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.jdbc.cdc.oracle;
+
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Transaction buffer that keeps the latest changes of a transaction in memory and spills them to segment files, in
+ * large compressed blocks, once a block worth of changes is buffered. When the shared memory budget is exceeded the
+ * buffers with the most changes in memory are spilled, whatever their size, until the budget is met again.
+ * <p/>
+ * Spilled blocks are read back one at a time while the transaction is replayed and each segment is deleted once all
+ * its blocks were read. Closing the buffer, for instance on rollback, deletes all its segments.
+ * <p/>
+ * Elements can only be removed from the head of the queue, which is how transactions are replayed. The SSN of
+ * spilled changes is read back as a string.
+ */
+class SpillingHashQueue extends AbstractQueue<RecordSequence> implements HashQueue<RecordSequence> {
+  private static final Logger LOG = LoggerFactory.getLogger(SpillingHashQueue.class);
+
+  static final int BLOCK_SIZE = 1024 * 1024;
+  static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final int BLOCK_HEADER_SIZE = 12;
+
+  private final File dir;
+  private final TransactionBufferBudget budget;
+  private final Set<String> keys = new HashSet<>();
+
+  // records decoded from the first spilled block, then the spilled blocks, then the records still in memory
+  private Deque<RecordSequence> head = new ArrayDeque<>();
+  private final Deque<Block> spilled = new ArrayDeque<>();
+  private final Deque<RecordSequence> memory = new ArrayDeque<>();
+
+  private RecordSequence tail;
+  private long memoryBytes;
+  private long spilledBytes;
+  private int spilledRecords;
+  private final Map<Integer, Long> segmentSizes = new HashMap<>();
+  private int nextSegment;
+  private int writeSegment = -1;
+  private FileChannel writeChannel;
+
+  SpillingHashQueue(File dir, TransactionBufferBudget budget) {
+    this.dir = dir;
+    this.budget = budget;
+  }
+
+  private static String key(RecordSequence record) {
+    return record.rsId + "::" + record.ssn;
+  }
+
+  private static long estimateSize(RecordSequence record) {
+    long size = 64 + 2L * (length(record.sqlString) + length(record.rsId) + 24);
+    if (record.headers != null) {
+      for (Map.Entry<String, String> header : record.headers.entrySet()) {
+        size += 64 + 2L * (length(header.getKey()) + length(header.getValue()));
+      }
+    }
+    return size;
+  }
+
+  private static int length(String str) {
+    return (str == null) ? 0 : str.length();
+  }
+
+  @Override
+  public RecordSequence tail() {
+    return tail;
+  }
+
+  @Override
+  public int size() {
+    return head.size() + spilledRecords + memory.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof RecordSequence && keys.contains(key((RecordSequence) o));
+  }
+
+  @Override
+  public boolean add(RecordSequence record) {
+    return offer(record);
+  }
+
+  @Override
+  public boolean offer(RecordSequence record) {
+    if (!keys.add(key(record))) {
+      return false;
+    }
+    memory.addLast(record);
+    tail = record;
+    long size = estimateSize(record);
+    memoryBytes += size;
+    budget.reserve(size);
+    budget.register(this);
+    if (memoryBytes >= BLOCK_SIZE) {
+      spill();
+    }
+    if (budget.isExceeded()) {
+      budget.spillLargest();
+    }
+    return true;
+  }
+
+  @Override
+  public RecordSequence poll() {
+    RecordSequence record;
+    if (!head.isEmpty() || loadHead()) {
+      record = head.pollFirst();
+    } else {
+      record = memory.pollFirst();
+      if (record != null) {
+        long size = estimateSize(record);
+        memoryBytes -= size;
+        budget.release(size);
+        if (memory.isEmpty()) {
+          budget.unregister(this);
+        }
+      }
+    }
+    if (record != null) {
+      keys.remove(key(record));
+      if (isEmpty()) {
+        tail = null;
+      }
+    }
+    return record;
+  }
+
+  @Override
+  public RecordSequence peek() {
+    if (!head.isEmpty() || loadHead()) {
+      return head.peekFirst();
+    }
+    return memory.peekFirst();
+  }
+
+  /**
+   * The iterator works on a snapshot of the buffer, its <code>remove()</code> removes the head of the queue.
+   */
+  @NotNull
+  @Override
+  public Iterator<RecordSequence> iterator() {
+    return new SpillingIterator();
+  }
+
+  @Override
+  public void clear() {
+    close();
+  }
+
+  @Override
+  public void completeInserts() {
+    closeWriteChannel();
+  }
+
+  @Override
+  public void close() {
+    closeWriteChannel();
+    budget.unregister(this);
+    budget.release(memoryBytes);
+    budget.deleted(spilledBytes);
+    memoryBytes = 0;
+    spilledBytes = 0;
+    spilledRecords = 0;
+    head.clear();
+    spilled.clear();
+    memory.clear();
+    keys.clear();
+    segmentSizes.clear();
+    tail = null;
+    if (dir.exists()) {
+      try {
+        FileUtils.deleteDirectory(dir);
+      } catch (IOException ex) {
+        LOG.warn("Could not delete transaction buffer '{}': {}", dir, ex.toString(), ex);
+      }
+    }
+  }
+
+  long getMemoryBytes() {
+    return memoryBytes;
+  }
+
+  long getSpilledBytes() {
+    return spilledBytes;
+  }
+
+  void spill() {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(memoryBytes, 2 * BLOCK_SIZE));
+      DataOutputStream out = new DataOutputStream(bytes);
+      for (RecordSequence record : memory) {
+        write(out, record);
+      }
+      out.flush();
+      byte[] raw = bytes.toByteArray();
+      byte[] compressed = compress(raw);
+
+      if (writeChannel == null) {
+        Files.createDirectories(dir.toPath());
+        writeSegment = nextSegment++;
+        writeChannel = FileChannel.open(
+            getSegmentFile(writeSegment).toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        );
+        segmentSizes.put(writeSegment, 0L);
+      }
+      long position = segmentSizes.get(writeSegment);
+      ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+      header.putInt(raw.length).putInt(compressed.length).putInt(memory.size()).flip();
+      writeFully(writeChannel, header, position);
+      writeFully(writeChannel, ByteBuffer.wrap(compressed), position + BLOCK_HEADER_SIZE);
+      long blockSize = BLOCK_HEADER_SIZE + compressed.length;
+      segmentSizes.put(writeSegment, position + blockSize);
+
+      spilled.addLast(new Block(writeSegment, position, compressed.length, raw.length, memory.size()));
+      spilledRecords += memory.size();
+      spilledBytes += blockSize;
+      budget.spilled(blockSize);
+      budget.release(memoryBytes);
+      budget.unregister(this);
+      memoryBytes = 0;
+      memory.clear();
+
+      if (position + blockSize >= SEGMENT_SIZE) {
+        closeWriteChannel();
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  // moves the first spilled block into the head, deleting its segment if it was the last block in it
+  private boolean loadHead() {
+    Block block = spilled.pollFirst();
+    if (block == null) {
+      return false;
+    }
+    head = new ArrayDeque<>(readBlock(block));
+    spilledRecords -= block.count;
+    Block next = spilled.peekFirst();
+    if ((next == null || next.segment != block.segment) && block.segment != writeSegment) {
+      long segmentSize = segmentSizes.remove(block.segment);
+      spilledBytes -= segmentSize;
+      budget.deleted(segmentSize);
+      try {
+        Files.deleteIfExists(getSegmentFile(block.segment).toPath());
+      } catch (IOException ex) {
+        LOG.warn(
+            "Could not delete transaction buffer segment '{}': {}",
+            getSegmentFile(block.segment),
+            ex.toString(),
+            ex
+        );
+      }
+    }
+    return !head.isEmpty();
+  }
+
+  private List<RecordSequence> readBlock(Block block) {
+    try (FileChannel channel = FileChannel.open(getSegmentFile(block.segment).toPath(), StandardOpenOption.READ)) {
+      ByteBuffer compressed = ByteBuffer.allocate(block.compressedLength);
+      long position = block.position + BLOCK_HEADER_SIZE;
+      while (compressed.hasRemaining()) {
+        int read = channel.read(compressed, position + compressed.position());
+        if (read < 0) {
+          throw new IOException("Unexpected end of segment " + block.segment);
+        }
+      }
+      byte[] raw = decompress(compressed.array(), block.length);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+      List<RecordSequence> records = new ArrayList<>(block.count);
+      for (int i = 0; i < block.count; i++) {
+        records.add(read(in));
+      }
+      return records;
+    } catch (IOException | DataFormatException ex) {
+      throw new IllegalStateException("Could not read transaction buffer block: " + ex, ex);
+    }
+  }
+
+  private File getSegmentFile(int segment) {
+    return new File(dir, String.format("%s%06d", SEGMENT_PREFIX, segment));
+  }
+
+  private void closeWriteChannel() {
+    if (writeChannel != null) {
+      try {
+        writeChannel.close();
+      } catch (IOException ex) {
+        LOG.warn("Could not close transaction buffer segment: {}", ex.toString(), ex);
+      }
+      writeChannel = null;
+      writeSegment = -1;
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private static byte[] compress(byte[] raw) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(raw);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+      byte[] buffer = new byte[64 * 1024];
+      while (!deflater.finished()) {
+        int len = deflater.deflate(buffer);
+        out.write(buffer, 0, len);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] decompress(byte[] compressed, int length) throws DataFormatException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      byte[] raw = new byte[length];
+      int offset = 0;
+      while (offset < length && !inflater.finished()) {
+        int len = inflater.inflate(raw, offset, length - offset);
+        if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new DataFormatException("Truncated block");
+        }
+        offset += len;
+      }
+      return raw;
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static void write(DataOutputStream out, RecordSequence record) throws IOException {
+    out.writeInt(record.seq);
+    out.writeInt(record.opCode);
+    writeString(out, record.rsId);
+    writeString(out, (record.ssn == null) ? null : record.ssn.toString());
+    writeString(out, record.sqlString);
+    if (record.headers == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(record.headers.size());
+      for (Map.Entry<String, String> header : record.headers.entrySet()) {
+        writeString(out, header.getKey());
+        writeString(out, header.getValue());
+      }
+    }
+  }
+
+  private static RecordSequence read(DataInputStream in) throws IOException {
+    int seq = in.readInt();
+    int opCode = in.readInt();
+    String rsId = readString(in);
+    String ssn = readString(in);
+    String sql = readString(in);
+    int headerCount = in.readInt();
+    Map<String, String> headers = null;
+    if (headerCount >= 0) {
+      headers = new HashMap<>();
+      for (int i = 0; i < headerCount; i++) {
+        headers.put(readString(in), readString(in));
+      }
+    }
+    return new RecordSequence(headers, sql, seq, opCode, rsId, ssn);
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException {
+    if (str == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static class Block {
+    private final int segment;
+    private final long position;
+    private final int compressedLength;
+    private final int length;
+    private final int count;
+
+    private Block(int segment, long position, int compressedLength, int length, int count) {
+      this.segment = segment;
+      this.position = position;
+      this.compressedLength = compressedLength;
+      this.length = length;
+      this.count = count;
+    }
+  }
+
+  private class SpillingIterator implements Iterator<RecordSequence> {
+    private final Iterator<Block> blocks = new ArrayList<>(spilled).iterator();
+    private final List<RecordSequence> inMemory = new ArrayList<>(memory);
+    private Iterator<RecordSequence> current = new ArrayList<>(head).iterator();
+    private boolean memoryStarted;
+
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        if (blocks.hasNext()) {
+          current = readBlock(blocks.next()).iterator();
+        } else if (!memoryStarted) {
+          memoryStarted = true;
+          current = inMemory.iterator();
+        } else {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public RecordSequence next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    @Override
+    public void remove() {
+      poll();
+    }
+  }
+}
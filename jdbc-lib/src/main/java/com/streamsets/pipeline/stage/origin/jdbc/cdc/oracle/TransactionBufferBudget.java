@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.jdbc.cdc.oracle;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory budget shared by all the spilling transaction buffers of an origin, also keeps the spill totals.
+ * <p/>
+ * Buffers holding changes in memory register with the budget, so that once it is exceeded the largest of them can be
+ * spilled no matter how small they are. Registration and spilling must be guarded by the lock of the buffered
+ * transactions.
+ */
+class TransactionBufferBudget {
+  private final long maxMemoryBytes;
+  private final AtomicLong memoryBytes = new AtomicLong();
+  private final AtomicLong spilledBytes = new AtomicLong();
+  private final AtomicLong spilledBlocks = new AtomicLong();
+  private final Set<SpillingHashQueue> buffers = new HashSet<>();
+
+  TransactionBufferBudget(long maxMemoryBytes) {
+    this.maxMemoryBytes = maxMemoryBytes;
+  }
+
+  void reserve(long bytes) {
+    memoryBytes.addAndGet(bytes);
+  }
+
+  void release(long bytes) {
+    memoryBytes.addAndGet(-bytes);
+  }
+
+  boolean isExceeded() {
+    return memoryBytes.get() > maxMemoryBytes;
+  }
+
+  void register(SpillingHashQueue buffer) {
+    buffers.add(buffer);
+  }
+
+  void unregister(SpillingHashQueue buffer) {
+    buffers.remove(buffer);
+  }
+
+  /**
+   * Spills the buffers with the most changes in memory until the budget is no longer exceeded.
+   */
+  void spillLargest() {
+    while (isExceeded()) {
+      SpillingHashQueue largest = null;
+      for (SpillingHashQueue buffer : buffers) {
+        if (largest == null || buffer.getMemoryBytes() > largest.getMemoryBytes()) {
+          largest = buffer;
+        }
+      }
+      if (largest == null || largest.getMemoryBytes() == 0) {
+        return;
+      }
+      largest.spill();
+    }
+  }
+
+  void spilled(long bytes) {
+    spilledBytes.addAndGet(bytes);
+    spilledBlocks.incrementAndGet();
+  }
+
+  void deleted(long bytes) {
+    spilledBytes.addAndGet(-bytes);
+  }
+
+  long getMaxMemoryBytes() {
+    return maxMemoryBytes;
+  }
+
+  long getMemoryBytes() {
+    return memoryBytes.get();
+  }
+
+  /**
+   * Bytes currently on disk.
+   */
+  long getSpilledBytes() {
+    return spilledBytes.get();
+  }
+
+  /**
+   * Number of blocks written since the origin started.
+   */
+  long getSpilledBlocks() {
+    return spilledBlocks.get();
+  }
+}
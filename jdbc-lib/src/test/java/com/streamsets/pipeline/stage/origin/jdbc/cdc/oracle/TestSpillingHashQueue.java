@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.jdbc.cdc.oracle;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class TestSpillingHashQueue {
+  private File dir;
+
+  @Before
+  public void setUp() {
+    dir = new File("target", UUID.randomUUID().toString());
+  }
+
+  private static RecordSequence createRecord(int seq) {
+    Map<String, String> headers = new HashMap<>();
+    headers.put("oracle.cdc.table", "TABLE_" + (seq % 10));
+    headers.put("SEQ", String.valueOf(seq));
+    String sql = "insert into \"SYS\".\"TABLE\"(\"ID\",\"NAME\") values ('" + seq + "','name " + seq + "');";
+    return new RecordSequence(headers, sql, seq, 1, "0x0000" + seq, new BigDecimal(seq % 3));
+  }
+
+  private static void assertRecord(int seq, RecordSequence record) {
+    Assert.assertEquals(seq, record.seq);
+    Assert.assertEquals(1, record.opCode);
+    Assert.assertEquals(createRecord(seq).sqlString, record.sqlString);
+    Assert.assertEquals(createRecord(seq).headers, record.headers);
+  }
+
+  @Test
+  public void testInMemory() {
+    TransactionBufferBudget budget = new TransactionBufferBudget(1024 * 1024);
+    SpillingHashQueue queue = new SpillingHashQueue(dir, budget);
+    for (int i = 1; i <= 10; i++) {
+      Assert.assertTrue(queue.add(createRecord(i)));
+    }
+    Assert.assertFalse(queue.add(createRecord(5)));
+    Assert.assertTrue(queue.contains(createRecord(5)));
+    Assert.assertEquals(10, queue.size());
+    Assert.assertEquals(10, queue.tail().seq);
+    Assert.assertTrue(budget.getMemoryBytes() > 0);
+    Assert.assertFalse(dir.exists());
+
+    assertRecord(1, queue.peek());
+    assertRecord(1, queue.remove());
+    Assert.assertFalse(queue.contains(createRecord(1)));
+    queue.close();
+    Assert.assertEquals(0, budget.getMemoryBytes());
+  }
+
+  @Test
+  public void testSpillAndReplay() {
+    // tiny budget, every change is spilled right away
+    TransactionBufferBudget budget = new TransactionBufferBudget(1);
+    SpillingHashQueue queue = new SpillingHashQueue(dir, budget);
+    int count = 5000;
+    for (int i = 1; i <= count; i++) {
+      queue.add(createRecord(i));
+    }
+    Assert.assertEquals(count, queue.size());
+    Assert.assertTrue(budget.getSpilledBlocks() > 1);
+    Assert.assertTrue(queue.getSpilledBytes() > 0);
+    Assert.assertEquals(0, queue.getMemoryBytes());
+    Assert.assertTrue(queue.contains(createRecord(1)));
+    Assert.assertEquals(count, queue.tail().seq);
+
+    // skip the changes already sent, as done when resuming a transaction
+    Iterator<RecordSequence> iterator = queue.iterator();
+    while (iterator.hasNext() && iterator.next().seq <= 100) {
+      iterator.remove();
+    }
+    Assert.assertEquals(count - 100, queue.size());
+
+    queue.completeInserts();
+    for (int i = 101; i <= count; i++) {
+      assertRecord(i, queue.poll());
+    }
+    Assert.assertNull(queue.poll());
+    Assert.assertTrue(queue.isEmpty());
+    Assert.assertNull(queue.tail());
+    // consumed segments are deleted as the transaction is replayed
+    Assert.assertEquals(0, budget.getSpilledBytes());
+    queue.close();
+    Assert.assertFalse(dir.exists());
+  }
+
+  @Test
+  public void testBudgetSpillsLargestSmallTransactions() {
+    TransactionBufferBudget budget = new TransactionBufferBudget(100 * 1024);
+    List<SpillingHashQueue> queues = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      queues.add(new SpillingHashQueue(new File(dir, "txn-" + i), budget));
+    }
+    // every transaction stays far below a block, yet together they are well over the budget
+    int seq = 0;
+    for (int i = 1; i <= 20; i++) {
+      for (SpillingHashQueue queue : queues) {
+        queue.add(createRecord(++seq));
+        Assert.assertFalse(budget.isExceeded());
+      }
+    }
+    Assert.assertTrue(budget.getSpilledBlocks() > 0);
+    for (SpillingHashQueue queue : queues) {
+      Assert.assertEquals(20, queue.size());
+      Assert.assertTrue(queue.getMemoryBytes() < SpillingHashQueue.BLOCK_SIZE);
+    }
+
+    SpillingHashQueue first = queues.get(0);
+    first.completeInserts();
+    for (int i = 0; i < 20; i++) {
+      assertRecord(1 + i * 50, first.poll());
+    }
+    for (SpillingHashQueue queue : queues) {
+      queue.close();
+    }
+    Assert.assertEquals(0, budget.getMemoryBytes());
+    Assert.assertEquals(0, budget.getSpilledBytes());
+  }
+
+  @Test
+  public void testRollbackDeletesSegments() {
+    TransactionBufferBudget budget = new TransactionBufferBudget(1);
+    SpillingHashQueue queue = new SpillingHashQueue(dir, budget);
+    for (int i = 1; i <= 2000; i++) {
+      queue.add(createRecord(i));
+    }
+    Assert.assertTrue(dir.exists());
+    Assert.assertTrue(budget.getSpilledBytes() > 0);
+
+    int seen = 0;
+    for (RecordSequence record : queue) {
+      assertRecord(++seen, record);
+    }
+    Assert.assertEquals(2000, seen);
+
+    queue.close();
+    Assert.assertFalse(dir.exists());
+    Assert.assertEquals(0, budget.getSpilledBytes());
+    Assert.assertEquals(0, budget.getMemoryBytes());
+    Assert.assertTrue(queue.isEmpty());
+  }
+
+}
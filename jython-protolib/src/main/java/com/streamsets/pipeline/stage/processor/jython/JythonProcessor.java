@@ -15,22 +15,31 @@
  */
 package com.streamsets.pipeline.stage.processor.jython;
 
+import com.google.common.collect.MapMaker;
 import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.stage.processor.scripting.AbstractScriptingProcessor;
+import com.streamsets.pipeline.stage.processor.scripting.LazyFieldList;
+import com.streamsets.pipeline.stage.processor.scripting.LazyFieldMap;
 import com.streamsets.pipeline.stage.processor.scripting.ProcessingMode;
 import com.streamsets.pipeline.stage.processor.scripting.ScriptObjectFactory;
 import com.streamsets.pipeline.stage.processor.scripting.ScriptTypedNullObject;
+import org.python.core.Py;
 import org.python.core.PyDictionary;
 import org.python.core.PyList;
+import org.python.core.PyObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.script.ScriptEngine;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -57,10 +66,17 @@ public class JythonProcessor extends AbstractScriptingProcessor {
 
   private static class JythonScriptObjectFactory extends ScriptObjectFactory {
 
+    // Python lists backed by a view, weak keys are compared by identity
+    private final ConcurrentMap<PyList, LazyFieldList> listViews = new MapMaker().weakKeys().makeMap();
+
     public JythonScriptObjectFactory(ScriptEngine scriptEngine, Stage.Context context) {
       super(scriptEngine, context);
     }
 
+    private static Object toJava(Object obj) {
+      return (obj instanceof PyObject) ? ((PyObject) obj).__tojava__(Object.class) : obj;
+    }
+
     @Override
     public void putInMap(Object obj, Object key, Object value) {
       ((PyDictionary) obj).put(key, value);
@@ -202,12 +218,176 @@ public class JythonProcessor extends AbstractScriptingProcessor {
 
     }
 
+    /**
+     * Backing map of a dictionary for a {@link LazyFieldMap}, converting keys and values between Python and Java the
+     * same way {@link PyDictionary} does.
+     */
+    private static class LazyFieldMapAdapter extends AbstractMap<PyObject, PyObject>
+        implements ConcurrentMap<PyObject, PyObject> {
+      private final LazyFieldMap view;
+
+      LazyFieldMapAdapter(LazyFieldMap view) {
+        this.view = view;
+      }
+
+      @Override
+      public int size() {
+        return view.size();
+      }
+
+      @Override
+      public boolean containsKey(Object key) {
+        return view.containsKey(toJava(key));
+      }
+
+      @Override
+      public PyObject get(Object key) {
+        Object javaKey = toJava(key);
+        return view.containsKey(javaKey) ? Py.java2py(view.get(javaKey)) : null;
+      }
+
+      @Override
+      public PyObject put(PyObject key, PyObject value) {
+        Object javaKey = toJava(key);
+        if (!(javaKey instanceof String)) {
+          // Field map keys are strings, fails the script like any other Python error
+          throw Py.TypeError("field map keys must be strings, not '" + key.getType().getName() + "'");
+        }
+        boolean existed = view.containsKey(javaKey);
+        Object previous = view.put((String) javaKey, toJava(value));
+        return existed ? Py.java2py(previous) : null;
+      }
+
+      @Override
+      public PyObject remove(Object key) {
+        Object javaKey = toJava(key);
+        return view.containsKey(javaKey) ? Py.java2py(view.remove(javaKey)) : null;
+      }
+
+      @Override
+      public void clear() {
+        view.clear();
+      }
+
+      @Override
+      public Set<Entry<PyObject, PyObject>> entrySet() {
+        Set<Entry<String, Object>> entries = view.entrySet();
+        return new AbstractSet<Entry<PyObject, PyObject>>() {
+          @Override
+          public int size() {
+            return entries.size();
+          }
+
+          @Override
+          public Iterator<Entry<PyObject, PyObject>> iterator() {
+            Iterator<Entry<String, Object>> iterator = entries.iterator();
+            return new Iterator<Entry<PyObject, PyObject>>() {
+              @Override
+              public boolean hasNext() {
+                return iterator.hasNext();
+              }
+
+              @Override
+              public Entry<PyObject, PyObject> next() {
+                Entry<String, Object> entry = iterator.next();
+                return new SimpleImmutableEntry<>(Py.java2py(entry.getKey()), Py.java2py(entry.getValue()));
+              }
+
+              @Override
+              public void remove() {
+                iterator.remove();
+              }
+            };
+          }
+        };
+      }
+
+      @Override
+      public PyObject putIfAbsent(PyObject key, PyObject value) {
+        PyObject current = get(key);
+        return (current == null) ? put(key, value) : current;
+      }
+
+      @Override
+      public boolean remove(Object key, Object value) {
+        PyObject current = get(key);
+        if (current != null && current.equals(value)) {
+          remove(key);
+          return true;
+        }
+        return false;
+      }
+
+      @Override
+      public boolean replace(PyObject key, PyObject oldValue, PyObject newValue) {
+        PyObject current = get(key);
+        if (current != null && current.equals(oldValue)) {
+          put(key, newValue);
+          return true;
+        }
+        return false;
+      }
+
+      @Override
+      public PyObject replace(PyObject key, PyObject value) {
+        return containsKey(key) ? put(key, value) : null;
+      }
+    }
+
+    /**
+     * Backing list of a Python list for a {@link LazyFieldList}, converting elements between Python and Java the same
+     * way {@link PyList} does.
+     */
+    private static class LazyFieldListAdapter extends AbstractList<PyObject> {
+      private final LazyFieldList view;
+
+      LazyFieldListAdapter(LazyFieldList view) {
+        this.view = view;
+      }
+
+      @Override
+      public int size() {
+        return view.size();
+      }
+
+      @Override
+      public PyObject get(int index) {
+        return Py.java2py(view.get(index));
+      }
+
+      @Override
+      public PyObject set(int index, PyObject element) {
+        return Py.java2py(view.set(index, toJava(element)));
+      }
+
+      @Override
+      public void add(int index, PyObject element) {
+        view.add(index, toJava(element));
+        modCount++;
+      }
+
+      @Override
+      public PyObject remove(int index) {
+        PyObject previous = Py.java2py(view.remove(index));
+        modCount++;
+        return previous;
+      }
+    }
+
     private static class PyDictionaryMapInfo extends PyDictionary implements MapInfo {
       private final boolean isListMap;
+      private final LazyFieldMap view;
 
       public PyDictionaryMapInfo(boolean isListMap) {
         super(new ConcurrentLinkedHashMap<>(), true);
         this.isListMap = isListMap;
+        this.view = null;
+      }
+
+      public PyDictionaryMapInfo(LazyFieldMap view) {
+        super(new LazyFieldMapAdapter(view), true);
+        this.isListMap = view.isListMap();
+        this.view = view;
       }
 
       @Override
@@ -221,6 +401,26 @@ public class JythonProcessor extends AbstractScriptingProcessor {
       return new PyDictionaryMapInfo(isListMap);
     }
 
+    @Override
+    protected Object createMapView(LazyFieldMap view) {
+      return new PyDictionaryMapInfo(view);
+    }
+
+    @Override
+    protected Object createArrayView(LazyFieldList view) {
+      PyList list = PyList.fromList(new LazyFieldListAdapter(view));
+      listViews.put(list, view);
+      return list;
+    }
+
+    @Override
+    protected FieldView getFieldView(Object scriptObject) {
+      if (scriptObject instanceof PyDictionaryMapInfo) {
+        return ((PyDictionaryMapInfo) scriptObject).view;
+      }
+      return (scriptObject instanceof PyList) ? listViews.get(scriptObject) : null;
+    }
+
     @Override
     public Object createArray(List elements) {
       PyList list = new PyList();
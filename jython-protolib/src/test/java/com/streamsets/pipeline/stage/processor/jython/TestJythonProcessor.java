@@ -20,11 +20,17 @@ import com.streamsets.pipeline.api.OnRecordError;
 import com.streamsets.pipeline.api.Processor;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.StageException;
+import com.streamsets.pipeline.sdk.ProcessorRunner;
 import com.streamsets.pipeline.sdk.RecordCreator;
+import com.streamsets.pipeline.sdk.StageRunner;
+import com.streamsets.pipeline.stage.processor.scripting.Errors;
 import com.streamsets.pipeline.stage.processor.scripting.ProcessingMode;
 import com.streamsets.pipeline.stage.processor.scripting.ScriptingProcessorTestUtil;
+import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -269,6 +275,72 @@ public class TestJythonProcessor {
     ScriptingProcessorTestUtil.verifyNestedMap(JythonDProcessor.class, processor);
   }
 
+  @Test
+  public void testUntouchedFields() throws Exception {
+    Processor processor = new JythonProcessor(
+        ProcessingMode.BATCH,
+        "for record in records:\n" +
+            "  record.value['changed'] = 'b'\n" +
+            "  record.value['nested']['changed'] = 2\n" +
+            "  output.write(record)"
+    );
+    ScriptingProcessorTestUtil.verifyUntouchedFields(JythonDProcessor.class, processor);
+  }
+
+  @Test
+  public void testNonStringMapKey() throws Exception {
+    Processor processor = new JythonProcessor(
+        ProcessingMode.RECORD,
+        "for record in records:\n" +
+            "  record.value[1] = 'b'\n" +
+            "  output.write(record)"
+    );
+    ProcessorRunner runner = new ProcessorRunner.Builder(JythonDProcessor.class, processor)
+        .setOnRecordError(OnRecordError.TO_ERROR)
+        .addOutputLane("lane")
+        .build();
+    runner.runInit();
+
+    Map<String, Field> map = new HashMap<>();
+    map.put("a", Field.create("a"));
+    Record record = RecordCreator.create();
+    record.set(Field.create(map));
+    try {
+      StageRunner.Output output = runner.runProcess(Collections.singletonList(record));
+      Assert.assertTrue(output.getRecords().get("lane").isEmpty());
+      Assert.assertEquals(1, runner.getErrorRecords().size());
+      Assert.assertEquals(
+          Errors.SCRIPTING_05.name(),
+          runner.getErrorRecords().get(0).getHeader().getErrorCode()
+      );
+    } finally {
+      runner.runDestroy();
+    }
+  }
+
+  @Test
+  public void testUntouchedListElements() throws Exception {
+    Processor processor = new JythonProcessor(
+        ProcessingMode.BATCH,
+        "for record in records:\n" +
+            "  record.value['list'][2] = 'b'\n" +
+            "  output.write(record)"
+    );
+    ScriptingProcessorTestUtil.verifyUntouchedListElements(JythonDProcessor.class, processor);
+  }
+
+  @Test
+  @Ignore("benchmark, run manually")
+  public void benchmarkNestedUpdate() throws Exception {
+    Processor processor = new JythonProcessor(
+        ProcessingMode.BATCH,
+        "for record in records:\n" +
+            "  record.value['map0']['field0'] = 'changed'\n" +
+            "  output.write(record)"
+    );
+    ScriptingProcessorTestUtil.benchmarkNestedUpdate(JythonDProcessor.class, processor);
+  }
+
   @Test
   public void testChangeFieldTypeFromScripting() throws Exception {
     Processor processor = new JythonProcessor(
@@ -120,6 +120,32 @@ public class KuduLookupConfig {
   )
   public int operationTimeout;
 
+  @ConfigDef(
+      required = false,
+      type = ConfigDef.Type.BOOLEAN,
+      defaultValue = "false",
+      label = "Batch Lookups",
+      description = "Look up the keys of all records of a batch that are not cached at once, with scanners executed " +
+          "concurrently. Consecutive values of a single integer primary key are read with one range scan",
+      displayPosition = 40,
+      group = "ADVANCED"
+  )
+  public boolean batchLookup;
+
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "8",
+      min = 1,
+      label = "Maximum Concurrent Scanners",
+      description = "Maximum number of scanners executed at the same time for a batch",
+      dependsOn = "batchLookup",
+      triggeredByValue = "true",
+      displayPosition = 50,
+      group = "ADVANCED"
+  )
+  public int maxConcurrentScanners = 8;
+
   @ConfigDef(
       required = true,
       type = ConfigDef.Type.BOOLEAN,
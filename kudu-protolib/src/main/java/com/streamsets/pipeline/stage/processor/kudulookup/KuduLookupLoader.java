@@ -15,11 +15,15 @@
  */
 package com.streamsets.pipeline.stage.processor.kudulookup;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.Meter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.api.StageException;
@@ -40,13 +44,22 @@ import org.apache.kudu.client.KuduPredicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class KuduLookupLoader extends CacheLoader<KuduLookupKey, List<Map<String, Field>>> {
   private static final Logger LOG = LoggerFactory.getLogger(KuduLookupLoader.class);
@@ -54,6 +67,8 @@ public class KuduLookupLoader extends CacheLoader<KuduLookupKey, List<Map<String
   private final AsyncKuduClient kuduClient;
   private final Meter selectMeter;
   private final Timer selectTimer;
+  private final Histogram roundTripsHistogram;
+  private final ExecutorService executor;
   // For key columns
   private final List<String> keyColumns;
   private final Map<String, String> columnToField;
@@ -74,6 +89,16 @@ public class KuduLookupLoader extends CacheLoader<KuduLookupKey, List<Map<String
   ) {
     this.selectMeter = context.createMeter("Select Queries");
     this.selectTimer = context.createTimer("Select Queries");
+    if (conf.batchLookup) {
+      this.roundTripsHistogram = context.createHistogram("Round Trips per Batch");
+      this.executor = Executors.newFixedThreadPool(
+          conf.maxConcurrentScanners,
+          new ThreadFactoryBuilder().setNameFormat("KuduLookupLoader-%d").setDaemon(true).build()
+      );
+    } else {
+      this.roundTripsHistogram = null;
+      this.executor = null;
+    }
     this.kuduClient = kuduClient;
     this.keyColumns = keyColumns;
     this.columnToField = columnToField;
@@ -104,78 +129,299 @@ public class KuduLookupLoader extends CacheLoader<KuduLookupKey, List<Map<String
 
   @Override
   public List<Map<String, Field>> load(KuduLookupKey key) throws Exception {
+    KuduTable kuduTable = getTable(key.tableName);
+    AsyncKuduScanner.AsyncKuduScannerBuilder scannerBuilder = kuduClient.newScannerBuilder(kuduTable)
+        .setProjectedColumnNames(projectColumns);
+    addKeyPredicates(key, scannerBuilder, kuduTable);
     List<Map<String, Field>> lookupItems = new ArrayList<>();
-    AsyncKuduScanner scanner = null;
-    Timer.Context t = selectTimer.time();
+    scan(buildScanner(scannerBuilder), kuduTable.getSchema(), lookupItems, null);
+    return lookupItems;
+  }
 
-    KuduTable kuduTable = null;
+  /**
+   * Looks up all the given keys with scanners executed concurrently. Consecutive values of a single integer primary
+   * key column are read with one range scan instead of one scan per value.
+   *
+   * Keys that can't be looked up because of a record error are left out of the returned map, the caller is expected
+   * to look them up individually with {@link #load(KuduLookupKey)} to report the error for the record.
+   */
+  @Override
+  public Map<KuduLookupKey, List<Map<String, Field>>> loadAll(Iterable<? extends KuduLookupKey> keys)
+      throws StageException {
+    Map<String, List<KuduLookupKey>> tableKeys = new LinkedHashMap<>();
+    for (KuduLookupKey key : keys) {
+      tableKeys.computeIfAbsent(key.tableName, tableName -> new ArrayList<>()).add(key);
+    }
+
+    AtomicInteger roundTrips = new AtomicInteger();
+    List<Future<Map<KuduLookupKey, List<Map<String, Field>>>>> scans = new ArrayList<>();
+    for (Map.Entry<String, List<KuduLookupKey>> entry : tableKeys.entrySet()) {
+      final KuduTable kuduTable;
+      try {
+        kuduTable = getTable(entry.getKey());
+      } catch (OnRecordErrorException ex) {
+        LOG.debug("Can't open table '{}' for batch lookup: {}", entry.getKey(), ex.toString(), ex);
+        continue;
+      }
+      final String rangeColumn = getRangeColumn(kuduTable.getSchema());
+      List<KuduLookupKey> singleKeys = entry.getValue();
+      if (rangeColumn != null) {
+        singleKeys = new ArrayList<>();
+        for (final SortedMap<Long, List<KuduLookupKey>> run : groupConsecutiveKeys(entry.getValue(), rangeColumn)) {
+          if (run.size() > 1) {
+            scans.add(executor.submit(() -> scanRange(kuduTable, rangeColumn, run, roundTrips)));
+          } else {
+            singleKeys.addAll(run.get(run.firstKey()));
+          }
+        }
+      }
+      for (final KuduLookupKey key : singleKeys) {
+        scans.add(executor.submit(() -> scanKey(kuduTable, key, roundTrips)));
+      }
+    }
+
+    Map<KuduLookupKey, List<Map<String, Field>>> result = new HashMap<>();
     try {
-      kuduTable = tableCache.get(key.tableName);
+      for (Future<Map<KuduLookupKey, List<Map<String, Field>>>> scan : scans) {
+        result.putAll(scan.get());
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new StageException(Errors.KUDU_03, ex.toString(), ex);
     } catch (ExecutionException ex) {
-      throw new OnRecordErrorException(Errors.KUDU_03, ex.getMessage(), ex);
+      Throwables.propagateIfPossible(ex.getCause(), StageException.class);
+      throw new StageException(Errors.KUDU_03, ex.getCause().toString(), ex.getCause());
+    } finally {
+      for (Future<Map<KuduLookupKey, List<Map<String, Field>>>> scan : scans) {
+        scan.cancel(true);
+      }
+    }
+    roundTripsHistogram.update(roundTrips.get());
+    return result;
+  }
+
+  /**
+   * Shuts down the threads used by the batch lookups.
+   */
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
     }
+  }
+
+  /**
+   * Groups the keys into runs of consecutive values of the given column, each run ordered by value. Keys that don't
+   * have a numeric value for the column are put into their own run.
+   */
+  @VisibleForTesting
+  static List<SortedMap<Long, List<KuduLookupKey>>> groupConsecutiveKeys(List<KuduLookupKey> keys, String column) {
+    List<SortedMap<Long, List<KuduLookupKey>>> runs = new ArrayList<>();
+    TreeMap<Long, List<KuduLookupKey>> values = new TreeMap<>();
+    for (KuduLookupKey key : keys) {
+      Field field = key.columns.get(column);
+      Long value = null;
+      try {
+        value = (field == null || field.getValue() == null) ? null : field.getValueAsLong();
+      } catch (IllegalArgumentException ex) {
+        // Not a number, the key gets looked up (and reported) individually
+      }
+      if (value == null) {
+        TreeMap<Long, List<KuduLookupKey>> single = new TreeMap<>();
+        single.put(0L, Collections.singletonList(key));
+        runs.add(single);
+      } else {
+        values.computeIfAbsent(value, v -> new ArrayList<>()).add(key);
+      }
+    }
+    TreeMap<Long, List<KuduLookupKey>> run = null;
+    for (Map.Entry<Long, List<KuduLookupKey>> entry : values.entrySet()) {
+      if (run == null || run.lastKey() + 1 != entry.getKey()) {
+        run = new TreeMap<>();
+        runs.add(run);
+      }
+      run.put(entry.getKey(), entry.getValue());
+    }
+    return runs;
+  }
+
+  /**
+   * Returns the name of the primary key column if consecutive keys can be read with a range scan, that is if the
+   * primary key is a single integer column and it is the only key column.
+   */
+  private String getRangeColumn(Schema schema) {
+    List<ColumnSchema> primaryKey = schema.getPrimaryKeyColumns();
+    if (primaryKey.size() != 1 || keyColumns.size() != 1 || !keyColumns.contains(primaryKey.get(0).getName())) {
+      return null;
+    }
+    Type type = primaryKey.get(0).getType();
+    return (type == Type.INT32 || type == Type.INT64) ? primaryKey.get(0).getName() : null;
+  }
 
-    // Scanner is not reusable. Need to build per record.
+  private Map<KuduLookupKey, List<Map<String, Field>>> scanKey(
+      KuduTable kuduTable,
+      KuduLookupKey key,
+      AtomicInteger roundTrips
+  ) throws Exception {
     AsyncKuduScanner.AsyncKuduScannerBuilder scannerBuilder = kuduClient.newScannerBuilder(kuduTable)
         .setProjectedColumnNames(projectColumns);
+    List<Map<String, Field>> lookupItems = new ArrayList<>();
+    try {
+      addKeyPredicates(key, scannerBuilder, kuduTable);
+      scan(buildScanner(scannerBuilder), kuduTable.getSchema(), lookupItems, roundTrips);
+    } catch (OnRecordErrorException ex) {
+      return Collections.emptyMap();
+    }
+    return Collections.singletonMap(key, lookupItems);
+  }
+
+  private Map<KuduLookupKey, List<Map<String, Field>>> scanRange(
+      KuduTable kuduTable,
+      String column,
+      SortedMap<Long, List<KuduLookupKey>> run,
+      AtomicInteger roundTrips
+  ) throws Exception {
+    ColumnSchema columnSchema = kuduTable.getSchema().getColumn(column);
+    List<String> columns = new ArrayList<>(projectColumns);
+    if (!columns.contains(column)) {
+      columns.add(column);
+    }
+    AsyncKuduScanner.AsyncKuduScannerBuilder scannerBuilder = kuduClient.newScannerBuilder(kuduTable)
+        .setProjectedColumnNames(columns);
+    try {
+      scannerBuilder.addPredicate(KuduPredicate.newComparisonPredicate(
+          columnSchema,
+          KuduPredicate.ComparisonOp.GREATER_EQUAL,
+          run.firstKey()
+      ));
+      scannerBuilder.addPredicate(KuduPredicate.newComparisonPredicate(
+          columnSchema,
+          KuduPredicate.ComparisonOp.LESS_EQUAL,
+          run.lastKey()
+      ));
+    } catch (IllegalArgumentException ex) {
+      // Values out of the range of the column type, keys get looked up (and reported) individually
+      return Collections.emptyMap();
+    }
+
+    Map<Long, List<Map<String, Field>>> rows = new HashMap<>();
+    for (Long value : run.keySet()) {
+      rows.put(value, new ArrayList<>());
+    }
+    Set<Long> failed = new HashSet<>();
+    scan(buildScanner(scannerBuilder), kuduTable.getSchema(), column, rows, failed, roundTrips);
+
+    Map<KuduLookupKey, List<Map<String, Field>>> result = new HashMap<>();
+    for (Map.Entry<Long, List<KuduLookupKey>> entry : run.entrySet()) {
+      if (!failed.contains(entry.getKey())) {
+        for (KuduLookupKey key : entry.getValue()) {
+          result.put(key, rows.get(entry.getKey()));
+        }
+      }
+    }
+    return result;
+  }
+
+  private KuduTable getTable(String tableName) throws OnRecordErrorException {
+    try {
+      return tableCache.get(tableName);
+    } catch (ExecutionException ex) {
+      throw new OnRecordErrorException(Errors.KUDU_03, ex.getMessage(), ex);
+    }
+  }
+
+  private void addKeyPredicates(
+      KuduLookupKey key,
+      AsyncKuduScanner.AsyncKuduScannerBuilder scannerBuilder,
+      KuduTable kuduTable
+  ) throws StageException {
     List<String> kColumns = new ArrayList<>(keyColumns);
+    // Set primary keys to scanner
+    Schema schema = kuduTable.getSchema();
+    for (ColumnSchema keySchema : schema.getPrimaryKeyColumns()) {
+      if (!kColumns.contains(keySchema.getName())){
+        // Primary key is not configured in Key Column Mapping. Worth stopping pipeline.
+        throw new StageException(Errors.KUDU_34, keySchema.getName());
+      }
+      String keyColumnName = keySchema.getName();
+      addPredicate(key.columns.get(keyColumnName), scannerBuilder, kuduTable, keySchema.getName());
+      kColumns.remove(keyColumnName);
+    }
+    // Set non-primary key columns to scanner if specified in Key Column Mapping
+    if (!kColumns.isEmpty()) {
+      for (String nonPrimary : kColumns) {
+        addPredicate(key.columns.get(nonPrimary), scannerBuilder, kuduTable, nonPrimary);
+      }
+    }
+  }
+
+  private AsyncKuduScanner buildScanner(AsyncKuduScanner.AsyncKuduScannerBuilder scannerBuilder)
+      throws StageException {
+    // Scanner is not reusable. Need to build per lookup.
+    try {
+      return scannerBuilder.build();
+    } catch (IllegalArgumentException ex) {
+      // Thrown here if mapping config has columns that don't exist in the table. Worth stopping pipeline
+      throw new StageException(Errors.KUDU_02, ex);
+    }
+  }
+
+  /**
+   * Reads all rows of the scanner into the given list.
+   */
+  private void scan(
+      AsyncKuduScanner scanner,
+      Schema schema,
+      List<Map<String, Field>> lookupItems,
+      AtomicInteger roundTrips
+  ) throws Exception {
+    Timer.Context t = selectTimer.time();
     try {
-      // Set primary keys to scanner
-      Schema schema = kuduTable.getSchema();
-      for (ColumnSchema keySchema : schema.getPrimaryKeyColumns()) {
-        if (!kColumns.contains(keySchema.getName())){
-          // Primary key is not configured in Key Column Mapping. Worth stopping pipeline.
-          throw new StageException(Errors.KUDU_34, keySchema.getName());
+      while (scanner.hasMoreRows()) {
+        RowResultIterator results = scanner.nextRows().join();
+        if (roundTrips != null) {
+          roundTrips.incrementAndGet();
         }
-        String keyColumnName = keySchema.getName();
-        addPredicate(key.columns.get(keyColumnName), scannerBuilder, kuduTable, keySchema.getName());
-        kColumns.remove(keyColumnName);
-      }
-      // Set non-primary key columns to scanner if specified in Key Column Mapping
-      if (!kColumns.isEmpty()) {
-        for (String nonPrimary : kColumns) {
-          addPredicate(key.columns.get(nonPrimary), scannerBuilder, kuduTable, nonPrimary);
+        while (results.hasNext()) {
+          lookupItems.add(toFields(results.next(), schema));
         }
       }
-      try {
-        scanner = scannerBuilder.build();
-      } catch (IllegalArgumentException ex) {
-        // Thrown here if mapping config has columns that don't exist in the table. Worth stopping pipeline
-        throw new StageException(Errors.KUDU_02, ex);
-      }
+    } catch (KuduException e) {
+      // Exception executing query
+      LOG.error(Errors.KUDU_03.getMessage(), e.toString(), e);
+      throw new StageException(Errors.KUDU_03, e.toString(), e);
+    } finally {
+      scanner.close();
+      t.stop();
+      selectMeter.mark();
+    }
+  }
 
+  /**
+   * Reads all rows of a range scanner into the lists of their key value. Values that had a row with a missing
+   * column are added to the failed set.
+   */
+  private void scan(
+      AsyncKuduScanner scanner,
+      Schema schema,
+      String keyColumn,
+      Map<Long, List<Map<String, Field>>> rows,
+      Set<Long> failed,
+      AtomicInteger roundTrips
+  ) throws Exception {
+    boolean isLong = schema.getColumn(keyColumn).getType() == Type.INT64;
+    Timer.Context t = selectTimer.time();
+    try {
       while (scanner.hasMoreRows()) {
         RowResultIterator results = scanner.nextRows().join();
+        roundTrips.incrementAndGet();
         while (results.hasNext()) {
           RowResult result = results.next();
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("Found row: {}", result.toStringLongFormat());
-          }
-          LinkedHashMap<String, Field> fields = new LinkedHashMap<>(outputColumnToField.size());
-          for (Map.Entry<String, String> column : outputColumnToField.entrySet()) {
-            Field field = null;
-            Type type = null;
-            String columnName = column.getKey();
-            if (result.isNull(columnName)){
-              // Apply default value or send to error
-              if (ignoreMissing && !outputDefault.get(columnName).isEmpty()) {
-                // Apply default value
-                ColumnSchema columnSchema = schema.getColumn(columnName);
-                field = Field.create(
-                    KuduUtils.convertFromKuduType(columnSchema.getType()),
-                    outputDefault.get(columnName)
-                );
-              } else {
-                // Missing value for output, and default value is not configured
-                throw new OnRecordErrorException(Errors.KUDU_35, columnName);
-              }
-            } else {
-              type = result.getColumnType(column.getKey());
-              field = KuduUtils.createField(result, columnName, type);
-            }
-            fields.put(column.getValue(), field);
+          long value = isLong ? result.getLong(keyColumn) : result.getInt(keyColumn);
+          try {
+            rows.get(value).add(toFields(result, schema));
+          } catch (OnRecordErrorException ex) {
+            failed.add(value);
           }
-          lookupItems.add(fields);
         }
       }
     } catch (KuduException e) {
@@ -183,16 +429,41 @@ public class KuduLookupLoader extends CacheLoader<KuduLookupKey, List<Map<String
       LOG.error(Errors.KUDU_03.getMessage(), e.toString(), e);
       throw new StageException(Errors.KUDU_03, e.toString(), e);
     } finally {
-      if (scanner != null) {
-        scanner.close();
-      }
-      // If the timer wasn't stopped due to exception yet, stop it now
-      if(t != null) {
-        t.stop();
-      }
+      scanner.close();
+      t.stop();
       selectMeter.mark();
     }
-    return lookupItems;
+  }
+
+  private LinkedHashMap<String, Field> toFields(RowResult result, Schema schema) throws StageException {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Found row: {}", result.toStringLongFormat());
+    }
+    LinkedHashMap<String, Field> fields = new LinkedHashMap<>(outputColumnToField.size());
+    for (Map.Entry<String, String> column : outputColumnToField.entrySet()) {
+      Field field = null;
+      Type type = null;
+      String columnName = column.getKey();
+      if (result.isNull(columnName)){
+        // Apply default value or send to error
+        if (ignoreMissing && !outputDefault.get(columnName).isEmpty()) {
+          // Apply default value
+          ColumnSchema columnSchema = schema.getColumn(columnName);
+          field = Field.create(
+              KuduUtils.convertFromKuduType(columnSchema.getType()),
+              outputDefault.get(columnName)
+          );
+        } else {
+          // Missing value for output, and default value is not configured
+          throw new OnRecordErrorException(Errors.KUDU_35, columnName);
+        }
+      } else {
+        type = result.getColumnType(column.getKey());
+        field = KuduUtils.createField(result, columnName, type);
+      }
+      fields.put(column.getValue(), field);
+    }
+    return fields;
   }
 
   private void addPredicate(Field field, AsyncKuduScanner.AsyncKuduScannerBuilder scannerBuilder, KuduTable kuduTable, String keyColumn)
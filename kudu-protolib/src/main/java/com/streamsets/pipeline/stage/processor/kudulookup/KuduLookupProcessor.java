@@ -42,10 +42,14 @@ import org.apache.kudu.client.OperationResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.HashMap;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 public class KuduLookupProcessor extends SingleLaneRecordProcessor {
@@ -69,6 +73,8 @@ public class KuduLookupProcessor extends SingleLaneRecordProcessor {
   private ELVars tableNameVars;
 
   private LoadingCache<KuduLookupKey, List<Map<String, Field>>> cache;
+  // Values looked up for the cache misses of the current batch when batch lookups are enabled
+  private Map<KuduLookupKey, List<Map<String, Field>>> batchValues = Collections.emptyMap();
   private CacheCleaner cacheCleaner;
 
   public KuduLookupProcessor(KuduLookupConfig conf) {
@@ -165,6 +171,9 @@ public class KuduLookupProcessor extends SingleLaneRecordProcessor {
   @Override
   public void destroy() {
     super.destroy();
+    if (store != null) {
+      store.close();
+    }
     if (kuduSession != null) {
       try {
         List<OperationResponse> result = kuduSession.close().join();
@@ -194,24 +203,61 @@ public class KuduLookupProcessor extends SingleLaneRecordProcessor {
     if (!batch.getRecords().hasNext()) {
       // No records - take the opportunity to clean up the cache so that we don't hold on to memory indefinitely
       cacheCleaner.periodicCleanUp();
+    } else if (conf.batchLookup) {
+      lookupBatch(batch);
+    }
+    try {
+      super.process(batch, batchMaker);
+    } finally {
+      batchValues = Collections.emptyMap();
     }
-    super.process(batch, batchMaker);
   }
 
-  /** {@inheritDoc} */
-  @Override
-  protected void process(Record record, SingleLaneProcessor.SingleLaneBatchMaker batchMaker) throws StageException {
+  /**
+   * Looks up the keys of all records of the batch that are not in the cache at once.
+   */
+  private void lookupBatch(Batch batch) throws StageException {
+    Set<KuduLookupKey> keys = new LinkedHashSet<>();
+    Iterator<Record> records = batch.getRecords();
+    while (records.hasNext()) {
+      Record record = records.next();
+      try {
+        KuduLookupKey key = generateLookupKey(record, getTableName(record));
+        if (cache.getIfPresent(key) == null) {
+          keys.add(key);
+        }
+      } catch (OnRecordErrorException ex) { // NOSONAR
+        // Reported when the record is processed
+      }
+    }
+    if (!keys.isEmpty()) {
+      batchValues = store.loadAll(keys);
+      cache.putAll(batchValues);
+    }
+  }
+
+  private String getTableName(Record record) throws StageException {
     RecordEL.setRecordInContext(tableNameVars, record);
     String tableName = tableNameEval.eval(tableNameVars, conf.kuduTableTemplate, String.class);
     if (!conf.caseSensitive) {
       tableName = tableName.toLowerCase();
     }
+    return tableName;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void process(Record record, SingleLaneProcessor.SingleLaneBatchMaker batchMaker) throws StageException {
+    String tableName = getTableName(record);
     LOG.trace("Processing record:{}  TableName={}", record.toString(), tableName);
 
     try {
       try {
         KuduLookupKey key = generateLookupKey(record, tableName);
-        List<Map<String, Field>> values = cache.get(key);
+        List<Map<String, Field>> values = batchValues.get(key);
+        if (values == null) {
+          values = cache.get(key);
+        }
         if (values.isEmpty()) {
           // No results
           errorRecordHandler.onError(new OnRecordErrorException(record, Errors.KUDU_31));
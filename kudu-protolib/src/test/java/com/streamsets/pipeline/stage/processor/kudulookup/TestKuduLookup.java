@@ -15,45 +15,82 @@
  */
 package com.streamsets.pipeline.stage.processor.kudulookup;
 
+import com.codahale.metrics.Histogram;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.streamsets.datacollector.runner.StageContext;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Processor;
+import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.api.StageException;
 import com.streamsets.pipeline.api.OnRecordError;
+import com.streamsets.pipeline.sdk.ContextInfoCreator;
 import com.streamsets.pipeline.sdk.ProcessorRunner;
+import com.streamsets.pipeline.sdk.RecordCreator;
+import com.streamsets.pipeline.sdk.StageRunner;
+import com.streamsets.pipeline.stage.common.MultipleValuesBehavior;
 import com.streamsets.pipeline.stage.lib.kudu.KuduFieldMappingConfig;
+import com.stumbleupon.async.Deferred;
 import org.apache.kudu.ColumnSchema;
 import org.apache.kudu.Schema;
 import org.apache.kudu.Type;
 import org.apache.kudu.client.AsyncKuduClient;
+import org.apache.kudu.client.AsyncKuduScanner;
 import org.apache.kudu.client.AsyncKuduSession;
+import org.apache.kudu.client.KuduPredicate;
 import org.apache.kudu.client.KuduTable;
 import org.apache.kudu.client.Operation;
 import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.RowResult;
+import org.apache.kudu.client.RowResultIterator;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.Assert;
 import org.junit.runner.RunWith;
+import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({
     KuduLookupProcessor.class,
     AsyncKuduClient.class,
+    AsyncKuduClient.AsyncKuduClientBuilder.class,
+    AsyncKuduScanner.class,
+    AsyncKuduScanner.AsyncKuduScannerBuilder.class,
     KuduTable.class,
     AsyncKuduSession.class,
+    RowResult.class,
+    RowResultIterator.class,
     })
 @PowerMockIgnore({ "javax.net.ssl.*" })
 public class TestKuduLookup {
 
   private static final String KUDU_MASTER = "localhost:7051";
+  private static final String ROUND_TRIPS = "Round Trips per Batch";
+  // Largest key of the sample table
+  private static final int MAX_KEY = 20;
   private final String tableName = "test";
 
+  private Schema schema;
+  private KuduTable table;
+  // Values of the "value" column of the sample table by key
+  private final Map<Integer, List<String>> rows = new HashMap<>();
+  // Predicates of the scans executed on the sample table, in the order the scanners were built
+  private final List<String> scans = Collections.synchronizedList(new ArrayList<>());
+
   @Before
   public void setup() {
     // Sample table and schema
@@ -61,10 +98,10 @@ public class TestKuduLookup {
     columns.add(new ColumnSchema.ColumnSchemaBuilder("key", Type.INT32).key(true).build());
     columns.add(new ColumnSchema.ColumnSchemaBuilder("value", Type.STRING).build());
     columns.add(new ColumnSchema.ColumnSchemaBuilder("name", Type.STRING).build());
-    final Schema schema = new Schema(columns);
+    schema = new Schema(columns);
 
     // Mock KuduTable class
-    KuduTable table = PowerMockito.spy(PowerMockito.mock(KuduTable.class));
+    table = PowerMockito.spy(PowerMockito.mock(KuduTable.class));
     PowerMockito.suppress(PowerMockito.method(AsyncKuduClient.class, "getTablesList"));
     PowerMockito.when(table.getSchema()).thenReturn(schema);
 
@@ -122,6 +159,275 @@ public class TestKuduLookup {
     }
   }
 
+  @Test
+  public void testLookupKeyEquality() {
+    KuduLookupKey key = new KuduLookupKey("t", ImmutableMap.of("key", Field.create(1)));
+    Assert.assertEquals(key, new KuduLookupKey("t", ImmutableMap.of("key", Field.create(1))));
+    Assert.assertEquals(key.hashCode(), new KuduLookupKey("t", ImmutableMap.of("key", Field.create(1))).hashCode());
+    Assert.assertNotEquals(key, new KuduLookupKey("t", ImmutableMap.of("key", Field.create(2))));
+    Assert.assertNotEquals(key, new KuduLookupKey("u", ImmutableMap.of("key", Field.create(1))));
+  }
+
+  @Test
+  public void testGroupConsecutiveKeys() {
+    List<KuduLookupKey> keys = new ArrayList<>();
+    for (int value : new int[]{7, 3, 1, 2, 9, 8, 2, 5}) {
+      keys.add(new KuduLookupKey("t", ImmutableMap.of("key", Field.create(value))));
+    }
+    KuduLookupKey missing = new KuduLookupKey("t", ImmutableMap.of("key", Field.create(Field.Type.INTEGER, null)));
+    keys.add(missing);
+
+    List<SortedMap<Long, List<KuduLookupKey>>> runs = KuduLookupLoader.groupConsecutiveKeys(keys, "key");
+    Assert.assertEquals(4, runs.size());
+    // Keys without a value are looked up on their own
+    Assert.assertEquals(ImmutableList.of(missing), runs.get(0).get(runs.get(0).firstKey()));
+    Assert.assertEquals(ImmutableList.of(1L, 2L, 3L), new ArrayList<>(runs.get(1).keySet()));
+    Assert.assertEquals(2, runs.get(1).get(2L).size());
+    Assert.assertEquals(ImmutableList.of(5L), new ArrayList<>(runs.get(2).keySet()));
+    Assert.assertEquals(ImmutableList.of(7L, 8L, 9L), new ArrayList<>(runs.get(3).keySet()));
+  }
+
+  @Test
+  public void testLoadAllRangeAndPointScans() throws Exception {
+    rows.put(1, ImmutableList.of("a"));
+    rows.put(2, ImmutableList.of("b"));
+    rows.put(3, ImmutableList.of("c"));
+    rows.put(5, ImmutableList.of("e"));
+
+    Processor.Context context = ContextInfoCreator.createProcessorContext("kuduLookup", false, OnRecordError.TO_ERROR);
+    KuduLookupLoader loader = createLoader(context);
+    try {
+      Map<KuduLookupKey, List<Map<String, Field>>> result = loader.loadAll(
+          ImmutableList.of(createKey(3), createKey(1), createKey(5), createKey(2))
+      );
+      // Consecutive keys are read with one range scan, the others with a scan per key
+      Assert.assertEquals(ImmutableList.of("key in [1, 3]", "key = 5"), scans);
+      Assert.assertEquals(4, result.size());
+      Assert.assertEquals(ImmutableList.of("a"), getValues(result.get(createKey(1))));
+      Assert.assertEquals(ImmutableList.of("b"), getValues(result.get(createKey(2))));
+      Assert.assertEquals(ImmutableList.of("c"), getValues(result.get(createKey(3))));
+      Assert.assertEquals(ImmutableList.of("e"), getValues(result.get(createKey(5))));
+
+      Histogram roundTrips = ((StageContext) context).getHistogram(ROUND_TRIPS);
+      Assert.assertEquals(1, roundTrips.getCount());
+      Assert.assertEquals(2, roundTrips.getSnapshot().getMax());
+    } finally {
+      loader.close();
+    }
+  }
+
+  @Test
+  public void testLoadAllMissingKeys() throws Exception {
+    rows.put(1, ImmutableList.of("a"));
+    rows.put(3, ImmutableList.of("c"));
+
+    KuduLookupLoader loader = createLoader(
+        ContextInfoCreator.createProcessorContext("kuduLookup", false, OnRecordError.TO_ERROR)
+    );
+    try {
+      Map<KuduLookupKey, List<Map<String, Field>>> result = loader.loadAll(
+          ImmutableList.of(createKey(1), createKey(2), createKey(3), createKey(9))
+      );
+      Assert.assertEquals(ImmutableList.of("key in [1, 3]", "key = 9"), scans);
+      // Keys without rows are looked up with an empty result, they don't need another lookup
+      Assert.assertEquals(4, result.size());
+      Assert.assertEquals(ImmutableList.of("a"), getValues(result.get(createKey(1))));
+      Assert.assertTrue(result.get(createKey(2)).isEmpty());
+      Assert.assertEquals(ImmutableList.of("c"), getValues(result.get(createKey(3))));
+      Assert.assertTrue(result.get(createKey(9)).isEmpty());
+    } finally {
+      loader.close();
+    }
+  }
+
+  @Test
+  public void testLoadAllMultipleRows() throws Exception {
+    rows.put(4, ImmutableList.of("x", "y"));
+    rows.put(5, ImmutableList.of("z"));
+    rows.put(9, ImmutableList.of("p", "q"));
+
+    Processor.Context context = ContextInfoCreator.createProcessorContext("kuduLookup", false, OnRecordError.TO_ERROR);
+    KuduLookupLoader loader = createLoader(context);
+    try {
+      Map<KuduLookupKey, List<Map<String, Field>>> result = loader.loadAll(
+          ImmutableList.of(createKey(4), createKey(5), createKey(9))
+      );
+      Assert.assertEquals(ImmutableList.of("key in [4, 5]", "key = 9"), scans);
+      Assert.assertEquals(ImmutableList.of("x", "y"), getValues(result.get(createKey(4))));
+      Assert.assertEquals(ImmutableList.of("z"), getValues(result.get(createKey(5))));
+      Assert.assertEquals(ImmutableList.of("p", "q"), getValues(result.get(createKey(9))));
+
+      // Single lookups return the same rows and are not counted as batch round trips
+      Assert.assertEquals(ImmutableList.of("p", "q"), getValues(loader.load(createKey(9))));
+      Histogram roundTrips = ((StageContext) context).getHistogram(ROUND_TRIPS);
+      Assert.assertEquals(1, roundTrips.getCount());
+      Assert.assertEquals(2, roundTrips.getSnapshot().getMax());
+    } finally {
+      loader.close();
+    }
+  }
+
+  @Test
+  public void testBatchLookup() throws Exception {
+    rows.put(1, ImmutableList.of("a"));
+    rows.put(3, ImmutableList.of("c1", "c2"));
+    rows.put(7, ImmutableList.of("g"));
+
+    AsyncKuduClient client = createClient();
+    AsyncKuduClient.AsyncKuduClientBuilder clientBuilder = PowerMockito.mock(
+        AsyncKuduClient.AsyncKuduClientBuilder.class
+    );
+    PowerMockito.when(clientBuilder.defaultOperationTimeoutMs(Mockito.anyLong())).thenReturn(clientBuilder);
+    PowerMockito.when(clientBuilder.build()).thenReturn(client);
+    PowerMockito.whenNew(AsyncKuduClient.AsyncKuduClientBuilder.class)
+        .withArguments(KUDU_MASTER)
+        .thenReturn(clientBuilder);
+
+    KuduLookupConfig conf = createBatchLookupConfig();
+    conf.multipleValuesBehavior = MultipleValuesBehavior.SPLIT_INTO_MULTIPLE_RECORDS;
+    ProcessorRunner runner = new ProcessorRunner.Builder(KuduLookupProcessor.class, new KuduLookupProcessor(conf))
+        .setOnRecordError(OnRecordError.TO_ERROR)
+        .addOutputLane("lane")
+        .build();
+    runner.runInit();
+
+    List<Record> records = new ArrayList<>();
+    for (int key : new int[]{3, 1, 2, 7}) {
+      Record record = RecordCreator.create();
+      record.set(Field.create(ImmutableMap.of("key", Field.create(key))));
+      records.add(record);
+    }
+    StageRunner.Output output = runner.runProcess(records);
+
+    // All keys of the batch are looked up at once
+    Assert.assertEquals(ImmutableList.of("key in [1, 3]", "key = 7"), scans);
+    List<String> values = new ArrayList<>();
+    for (Record record : output.getRecords().get("lane")) {
+      values.add(record.get("/value").getValueAsString());
+    }
+    Assert.assertEquals(ImmutableList.of("c1", "c2", "a", "g"), values);
+    // Key 2 has no row
+    Assert.assertEquals(1, runner.getErrorRecords().size());
+    Assert.assertEquals(2, runner.getErrorRecords().get(0).get("/key").getValueAsInteger());
+
+    Histogram roundTrips = ((StageContext) runner.getContext()).getHistogram(ROUND_TRIPS);
+    Assert.assertEquals(1, roundTrips.getCount());
+    Assert.assertEquals(2, roundTrips.getSnapshot().getMax());
+  }
+
+  private KuduLookupConfig createBatchLookupConfig() {
+    KuduLookupConfig conf = new KuduLookupConfig();
+    conf.kuduMaster = KUDU_MASTER;
+    conf.kuduTableTemplate = tableName;
+    conf.keyColumnMapping = new ArrayList<>();
+    conf.keyColumnMapping.add(new KuduFieldMappingConfig("/key", "key"));
+    conf.outputColumnMapping = new ArrayList<>();
+    conf.outputColumnMapping.add(new KuduOutputColumnMapping("value", "/value", ""));
+    conf.enableTableCache = true;
+    conf.batchLookup = true;
+    // Scans are executed in the order they are submitted
+    conf.maxConcurrentScanners = 1;
+    return conf;
+  }
+
+  private KuduLookupLoader createLoader(Stage.Context context) {
+    return new KuduLookupLoader(
+        context,
+        createClient(),
+        ImmutableList.of("key"),
+        ImmutableMap.of("key", "/key"),
+        createBatchLookupConfig()
+    );
+  }
+
+  private static KuduLookupKey createKey(int key) {
+    return new KuduLookupKey("test", ImmutableMap.of("key", Field.create(key)));
+  }
+
+  private static List<String> getValues(List<Map<String, Field>> lookupItems) {
+    List<String> values = new ArrayList<>();
+    for (Map<String, Field> lookupItem : lookupItems) {
+      values.add(lookupItem.get("/value").getValueAsString());
+    }
+    return values;
+  }
+
+  /**
+   * Creates a client that reads the sample table rows, each scanner returns all its rows in one round trip.
+   */
+  private AsyncKuduClient createClient() {
+    AsyncKuduClient client = PowerMockito.mock(AsyncKuduClient.class);
+    PowerMockito.when(client.tableExists(tableName)).thenReturn(Deferred.fromResult(true));
+    PowerMockito.when(client.openTable(tableName)).thenReturn(Deferred.fromResult(table));
+    PowerMockito.when(client.newScannerBuilder(table)).thenAnswer(invocation -> createScannerBuilder());
+    return client;
+  }
+
+  private AsyncKuduScanner.AsyncKuduScannerBuilder createScannerBuilder() throws Exception {
+    List<KuduPredicate> predicates = new ArrayList<>();
+    AsyncKuduScanner.AsyncKuduScannerBuilder scannerBuilder = PowerMockito.mock(
+        AsyncKuduScanner.AsyncKuduScannerBuilder.class
+    );
+    PowerMockito.when(scannerBuilder.setProjectedColumnNames(Mockito.anyListOf(String.class)))
+        .thenReturn(scannerBuilder);
+    PowerMockito.when(scannerBuilder.addPredicate(Mockito.any(KuduPredicate.class))).thenAnswer(invocation -> {
+      predicates.add((KuduPredicate) invocation.getArguments()[0]);
+      return scannerBuilder;
+    });
+    PowerMockito.when(scannerBuilder.build()).thenAnswer(invocation -> createScanner(predicates));
+    return scannerBuilder;
+  }
+
+  private AsyncKuduScanner createScanner(List<KuduPredicate> predicates) throws Exception {
+    List<RowResult> results = new ArrayList<>();
+    ColumnSchema column = schema.getColumn("key");
+    boolean found = false;
+    for (int lower = 0; lower <= MAX_KEY && !found; lower++) {
+      for (int upper = lower; upper <= MAX_KEY && !found; upper++) {
+        List<KuduPredicate> expected;
+        if (lower == upper) {
+          expected = ImmutableList.of(
+              KuduPredicate.newComparisonPredicate(column, KuduPredicate.ComparisonOp.EQUAL, (long) lower)
+          );
+        } else {
+          expected = ImmutableList.of(
+              KuduPredicate.newComparisonPredicate(column, KuduPredicate.ComparisonOp.GREATER_EQUAL, (long) lower),
+              KuduPredicate.newComparisonPredicate(column, KuduPredicate.ComparisonOp.LESS_EQUAL, (long) upper)
+          );
+        }
+        if (predicates.equals(expected)) {
+          found = true;
+          scans.add(lower == upper ? "key = " + lower : "key in [" + lower + ", " + upper + "]");
+          for (int key = lower; key <= upper; key++) {
+            for (String value : rows.getOrDefault(key, Collections.emptyList())) {
+              results.add(createRow(key, value));
+            }
+          }
+        }
+      }
+    }
+    Assert.assertTrue("Unexpected scan predicates: " + predicates, found);
+
+    Iterator<RowResult> iterator = results.iterator();
+    RowResultIterator rowResults = PowerMockito.mock(RowResultIterator.class);
+    PowerMockito.when(rowResults.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+    PowerMockito.when(rowResults.next()).thenAnswer(invocation -> iterator.next());
+
+    AsyncKuduScanner scanner = PowerMockito.mock(AsyncKuduScanner.class);
+    PowerMockito.when(scanner.hasMoreRows()).thenReturn(true, false);
+    PowerMockito.when(scanner.nextRows()).thenReturn(Deferred.fromResult(rowResults));
+    return scanner;
+  }
+
+  private static RowResult createRow(int key, String value) {
+    RowResult row = PowerMockito.mock(RowResult.class);
+    PowerMockito.when(row.getInt("key")).thenReturn(key);
+    PowerMockito.when(row.isNull("value")).thenReturn(false);
+    PowerMockito.when(row.getColumnType("value")).thenReturn(Type.STRING);
+    PowerMockito.when(row.getString("value")).thenReturn(value);
+    return row;
+  }
+
   private ProcessorRunner setProcessorRunner(String tableName)
   {
     KuduLookupConfig conf = new KuduLookupConfig();
@@ -49,6 +49,49 @@ public class ForceSourceConfigBean extends ForceConfigBean {
   )
   public boolean useBulkAPI;
 
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.BOOLEAN,
+      defaultValue = "false",
+      label = "Use PK Chunking",
+      description = "Splits the query into chunks of record ids that Salesforce processes in parallel. Chunks are " +
+          "downloaded concurrently, so records are not read in offset order.",
+      displayPosition = 76,
+      dependsOn = "useBulkAPI",
+      triggeredByValue = "true",
+      group = "QUERY"
+  )
+  public boolean usePKChunking = false;
+
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "100000",
+      min = 1,
+      max = 250000,
+      label = "Chunk Size",
+      description = "Number of records in each chunk.",
+      displayPosition = 77,
+      dependsOn = "usePKChunking",
+      triggeredByValue = "true",
+      group = "QUERY"
+  )
+  public int chunkSize = 100000;
+
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "4",
+      min = 1,
+      label = "Max Concurrent Downloads",
+      description = "Maximum number of chunk results downloaded and parsed at the same time.",
+      displayPosition = 78,
+      dependsOn = "usePKChunking",
+      triggeredByValue = "true",
+      group = "QUERY"
+  )
+  public int maxConcurrentDownloads = 4;
+
   @ConfigDef(
       required = true,
       type = ConfigDef.Type.TEXT,
@@ -39,6 +39,21 @@ public class ForceTargetConfigBean extends ForceConfigBean {
   )
   public boolean useBulkAPI;
 
+  @ConfigDef(
+      required = true,
+      type = ConfigDef.Type.NUMBER,
+      defaultValue = "0",
+      min = 0,
+      label = "Max Jobs in Flight",
+      description = "Number of Bulk API jobs that may still be processing when the next batch is written. Records " +
+          "that Salesforce rejects are sent to error with a later batch. Use 0 to wait for the results of each batch.",
+      displayPosition = 55,
+      dependsOn = "useBulkAPI",
+      triggeredByValue = "true",
+      group = "FORCE"
+  )
+  public int maxJobsInFlight;
+
   @ConfigDef(
       required = true,
       type = ConfigDef.Type.STRING,
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.lib.salesforce;
+
+/**
+ * Interval between Bulk API status polls. It starts short so that quick jobs are picked up early and doubles up to
+ * the maximum while the polls don't find anything new.
+ */
+public class PollBackoff {
+  public static final long MIN_INTERVAL = 250;
+
+  private final long min;
+  private final long max;
+  private long current;
+
+  public PollBackoff(long max) {
+    this.max = Math.max(1, max);
+    this.min = Math.min(MIN_INTERVAL, this.max);
+    this.current = min;
+  }
+
+  public long next() {
+    long interval = current;
+    current = Math.min(current * 2, max);
+    return interval;
+  }
+
+  public void reset() {
+    current = min;
+  }
+}
@@ -15,9 +15,13 @@
  */
 package com.streamsets.pipeline.stage.destination.salesforce;
 
+import com.codahale.metrics.Meter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sforce.async.AsyncApiException;
 import com.sforce.async.BatchInfo;
 import com.sforce.async.BatchStateEnum;
@@ -42,30 +46,66 @@ import com.streamsets.pipeline.lib.generator.delimited.DelimitedCharDataGenerato
 import com.streamsets.pipeline.lib.operation.OperationType;
 import com.streamsets.pipeline.lib.salesforce.Errors;
 import com.streamsets.pipeline.lib.salesforce.ForceUtils;
+import com.streamsets.pipeline.lib.salesforce.PollBackoff;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes records with the Bulk API. Each record is rendered to CSV once and appended to the current batch, which is
+ * uploaded in the background as soon as it reaches the size limits. Job results are polled by a separate thread, so
+ * up to maxJobsInFlight jobs may still be processing when writeBatch returns. Records rejected by those jobs are
+ * returned by a later call.
+ */
 public class ForceBulkWriter extends ForceWriter {
   private static final Logger LOG = LoggerFactory.getLogger(ForceBulkWriter.class);
   private static final int MAX_BYTES_PER_BATCH = 10000000; // 10 million bytes per batch
   private static final int MAX_ROWS_PER_BATCH = 10000; // 10 thousand rows per batch
+  private static final int MAX_CONCURRENT_UPLOADS = 4;
+  private static final long MAX_POLL_INTERVAL = 2000L;
+  private static final long CLOSE_TIMEOUT = 60000L;
+  static final String RECORDS_METER = "Bulk API Records";
+  static final String BULK_API_GAUGE = "Bulk API";
+  static final String RECORDS_PER_SECOND = "Records per Second";
+  static final String API_CALLS_PER_1K_RECORDS = "API Calls per 1k Records";
   private final BulkConnection bulkConnection;
   private final Target.Context context;
+  private final int maxJobsInFlight;
+  private final int maxBytesPerBatch;
+  private final int maxRowsPerBatch;
+  private final ExecutorService uploadExecutor;
+  private final ExecutorService resultExecutor;
+  // Closed jobs waiting for their results, also the monitor between writeBatch and the result poller
+  private final Deque<PendingJob> inFlight = new ArrayDeque<>();
+  private final Queue<OnRecordErrorException> pendingErrors = new ConcurrentLinkedQueue<>();
+  private final AtomicLong apiCalls = new AtomicLong();
+  private final Meter recordMeter;
+  private final Map<String, Object> bulkApiGauge;
+  private boolean jobsAdded;
+  private volatile Exception resultError;
   private Map<Integer, OperationEnum> opcodeToOperation = ImmutableMap.of(
       OperationType.INSERT_CODE, OperationEnum.insert,
       OperationType.DELETE_CODE, OperationEnum.delete,
@@ -73,22 +113,66 @@ public class ForceBulkWriter extends ForceWriter {
       OperationType.UPSERT_CODE, OperationEnum.upsert
   );
 
-  class JobBatches {
+  private static class PendingBatch {
+    // In row order, the results are returned in the same order
+    final List<Record> records = new ArrayList<>();
+    Future<BatchInfo> upload;
+  }
+
+  private static class PendingJob {
     final JobInfo job;
-    final List<BatchInfo> batchInfoList;
-    final Collection<Record> records;
+    final List<PendingBatch> batches = new ArrayList<>();
+    // Batch id -> batch, for the batches without results yet. Only used by the result poller once the job is closed.
+    final Map<String, PendingBatch> incomplete = new HashMap<>();
 
-    JobBatches(JobInfo job, List<BatchInfo> batchInfoList, Collection<Record> records) {
+    PendingJob(JobInfo job) {
       this.job = job;
-      this.batchInfoList = batchInfoList;
-      this.records = records;
     }
   }
 
-  public ForceBulkWriter(Map<String, String> fieldMappings, BulkConnection bulkConnection, Target.Context context) {
+  /**
+   * Holds the CSV content of one batch. The upload reads the internal array directly instead of a copy.
+   */
+  private static class BatchBuffer extends ByteArrayOutputStream {
+    InputStream toInputStream() {
+      return new ByteArrayInputStream(buf, 0, count);
+    }
+  }
+
+  public ForceBulkWriter(
+      Map<String, String> fieldMappings,
+      BulkConnection bulkConnection,
+      Target.Context context,
+      int maxJobsInFlight
+  ) {
+    this(fieldMappings, bulkConnection, context, maxJobsInFlight, MAX_BYTES_PER_BATCH, MAX_ROWS_PER_BATCH);
+  }
+
+  @VisibleForTesting
+  ForceBulkWriter(
+      Map<String, String> fieldMappings,
+      BulkConnection bulkConnection,
+      Target.Context context,
+      int maxJobsInFlight,
+      int maxBytesPerBatch,
+      int maxRowsPerBatch
+  ) {
     super(fieldMappings);
     this.bulkConnection = bulkConnection;
     this.context = context;
+    this.maxJobsInFlight = maxJobsInFlight;
+    this.maxBytesPerBatch = maxBytesPerBatch;
+    this.maxRowsPerBatch = maxRowsPerBatch;
+    recordMeter = context.createMeter(RECORDS_METER);
+    bulkApiGauge = context.createGauge(BULK_API_GAUGE).getValue();
+    uploadExecutor = Executors.newFixedThreadPool(
+        MAX_CONCURRENT_UPLOADS,
+        new ThreadFactoryBuilder().setNameFormat("ForceBulkUpload-%d").setDaemon(true).build()
+    );
+    resultExecutor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("ForceBulkResults-%d").setDaemon(true).build()
+    );
+    resultExecutor.submit(this::pollResults);
   }
 
   @Override
@@ -111,73 +195,150 @@ public class ForceBulkWriter extends ForceWriter {
       recordsByOp.computeIfAbsent(opCode, k -> new ArrayList<>()).add(record);
     }
 
-    List<JobBatches> jobs = new ArrayList<>(recordsByOp.size());
-
-    // Do one (or more!) jobs per operation
-    for (Map.Entry<Integer, List<Record>> entry : recordsByOp.entrySet()) {
-      List<Record> recordList = entry.getValue();
-      OperationEnum op = opcodeToOperation.get(entry.getKey());
-
-      // Special handling - may be any number of External Id Fields
-      if (op == OperationEnum.upsert) {
-        // Partition by External Id Field
-        Multimap<String, Record> partitions = ArrayListMultimap.create();
-
-        for (Record record : recordList) {
-          RecordEL.setRecordInContext(target.externalIdFieldVars, record);
-          try {
-            String partitionName = target.externalIdFieldEval.eval(target.externalIdFieldVars,
-                target.conf.externalIdField, String.class);
-            LOG.debug("Expression '{}' is evaluated to '{}' : ", target.conf.externalIdField, partitionName);
-            partitions.put(partitionName, record);
-          } catch (ELEvalException e) {
-            LOG.error("Failed to evaluate expression '{}' : ", target.conf.externalIdField, e.toString(), e);
-            errorRecords.add(new OnRecordErrorException(record, e.getErrorCode(), e.getParams()));
+    List<PendingJob> jobs = new ArrayList<>(recordsByOp.size());
+
+    try {
+      // Do one (or more!) jobs per operation
+      for (Map.Entry<Integer, List<Record>> entry : recordsByOp.entrySet()) {
+        List<Record> recordList = entry.getValue();
+        OperationEnum op = opcodeToOperation.get(entry.getKey());
+
+        // Special handling - may be any number of External Id Fields
+        if (op == OperationEnum.upsert) {
+          // Partition by External Id Field
+          Multimap<String, Record> partitions = ArrayListMultimap.create();
+
+          for (Record record : recordList) {
+            RecordEL.setRecordInContext(target.externalIdFieldVars, record);
+            try {
+              String partitionName = target.externalIdFieldEval.eval(target.externalIdFieldVars,
+                  target.conf.externalIdField, String.class);
+              LOG.debug("Expression '{}' is evaluated to '{}' : ", target.conf.externalIdField, partitionName);
+              partitions.put(partitionName, record);
+            } catch (ELEvalException e) {
+              LOG.error("Failed to evaluate expression '{}' : ", target.conf.externalIdField, e.toString(), e);
+              errorRecords.add(new OnRecordErrorException(record, e.getErrorCode(), e.getParams()));
+            }
           }
+
+          for (String externalIdField : partitions.keySet()) {
+            jobs.add(startJob(sObjectName, op, partitions.get(externalIdField), externalIdField));
+          }
+        } else {
+          jobs.add(startJob(sObjectName, op, recordList, null));
         }
+      }
+
+      // A job can only be closed once all its batches are uploaded
+      for (PendingJob job : jobs) {
+        awaitUploads(job);
+        closeJob(job.job.getId());
+      }
+    } catch (AsyncApiException | IOException e) {
+      throw bulkApiException(e);
+    }
 
-        for (String externalIdField : partitions.keySet()) {
-          jobs.add(processJob(sObjectName, op, recordList, externalIdField));
+    synchronized (inFlight) {
+      inFlight.addAll(jobs);
+      jobsAdded = true;
+      inFlight.notifyAll();
+      try {
+        while (inFlight.size() > maxJobsInFlight && resultError == null) {
+          inFlight.wait();
         }
-      } else {
-        jobs.add(processJob(sObjectName, op, recordList, null));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
       }
     }
+    if (resultError != null) {
+      throw bulkApiException(resultError);
+    }
 
-    // Now wait for all the results
-    for (JobBatches jb : jobs) {
-      getJobResults(jb, errorRecords);
+    OnRecordErrorException error;
+    while ((error = pendingErrors.poll()) != null) {
+      errorRecords.add(error);
     }
+    updateGauge();
 
     return errorRecords;
   }
 
-  private JobBatches processJob(
-      String sObjectName, OperationEnum operation, List<Record> records, String externalIdField
-  ) throws
-      StageException {
-    try {
-      JobInfo job = createJob(sObjectName, operation, externalIdField);
-      List<BatchInfo> batchInfoList = createBatchesFromRecordCollection(job, records, operation);
-      closeJob(job.getId());
-      return new JobBatches(job, batchInfoList, records);
-    } catch (AsyncApiException | IOException e) {
-      throw new StageException(Errors.FORCE_13,
-          ForceUtils.getExceptionCode(e) + ", " + ForceUtils.getExceptionMessage(e)
-      );
+  @Override
+  void close() {
+    uploadExecutor.shutdownNow();
+    long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+    synchronized (inFlight) {
+      try {
+        long remaining = CLOSE_TIMEOUT;
+        while (!inFlight.isEmpty() && resultError == null && remaining > 0) {
+          inFlight.wait(remaining);
+          remaining = deadline - System.currentTimeMillis();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (!inFlight.isEmpty()) {
+        LOG.warn("Stopped waiting for the results of {} Bulk API jobs", inFlight.size());
+      }
+    }
+    resultExecutor.shutdownNow();
+
+    // There is no batch left to send these to error
+    for (OnRecordErrorException error : pendingErrors) {
+      LOG.error("Record was not written: {}", error.toString());
     }
+    pendingErrors.clear();
   }
 
-  private void getJobResults(JobBatches jb, List<OnRecordErrorException> errorRecords) throws
-      StageException {
+  private static StageException bulkApiException(Exception e) {
+    return new StageException(Errors.FORCE_13,
+        ForceUtils.getExceptionCode(e) + ", " + ForceUtils.getExceptionMessage(e)
+    );
+  }
+
+  private PendingJob startJob(
+      String sObjectName, OperationEnum operation, Collection<Record> records, String externalIdField
+  ) throws AsyncApiException, IOException, StageException {
+    PendingJob job = new PendingJob(createJob(sObjectName, operation, externalIdField));
+
+    // Every record is rendered once into the row buffer and appended from there to the batch that it fits in
+    BatchBuffer row = new BatchBuffer();
+    DataGenerator gen = createDelimitedCharDataGenerator(new OutputStreamWriter(row, StandardCharsets.UTF_8));
     try {
-      awaitCompletion(jb);
-      checkResults(jb, errorRecords);
-    } catch (AsyncApiException | IOException e) {
-      throw new StageException(Errors.FORCE_13,
-          ForceUtils.getExceptionCode(e) + ", " + ForceUtils.getExceptionMessage(e)
-      );
+      byte[] header = null;
+      PendingBatch batch = null;
+      BatchBuffer buffer = null;
+
+      for (Record record : records) {
+        Record outRecord = createOutRecord(record, operation);
+        if (header == null) {
+          writeRow(gen, row, createHeaderRecord(outRecord));
+          header = row.toByteArray();
+        }
+        writeRow(gen, row, outRecord);
+
+        if (batch != null
+            && (batch.records.size() >= maxRowsPerBatch || buffer.size() + row.size() > maxBytesPerBatch)) {
+          upload(job, batch, buffer);
+          batch = null;
+        }
+        if (batch == null) {
+          batch = new PendingBatch();
+          buffer = new BatchBuffer();
+          buffer.write(header);
+        }
+        row.writeTo(buffer);
+        batch.records.add(record);
+      }
+
+      // Create a final batch for any remaining data
+      if (batch != null) {
+        upload(job, batch, buffer);
+      }
+    } finally {
+      gen.close();
     }
+    return job;
   }
 
   private JobInfo createJob(String sobjectType, OperationEnum operation, String externalIdField)
@@ -189,6 +350,7 @@ public class ForceBulkWriter extends ForceWriter {
       job.setExternalIdFieldName(externalIdField);
     }
     job.setContentType(ContentType.CSV);
+    apiCalls.incrementAndGet();
     job = bulkConnection.createJob(job);
     LOG.info("Created Bulk API job {}", job.getId());
     return job;
@@ -196,66 +358,13 @@ public class ForceBulkWriter extends ForceWriter {
 
   private DataGenerator createDelimitedCharDataGenerator(OutputStreamWriter writer) throws StageException {
     try {
-      return new DelimitedCharDataGenerator(writer, CsvMode.CSV.getFormat(), CsvHeader.WITH_HEADER, "header", "value", null);
+      return new DelimitedCharDataGenerator(writer, CsvMode.CSV.getFormat(), CsvHeader.NO_HEADER, "header", "value", null);
     } catch (IOException ioe) {
       throw new StageException(Errors.FORCE_14, ioe);
     }
   }
 
-  private List<BatchInfo> createBatchesFromRecordCollection(JobInfo jobInfo, Collection<Record> records, OperationEnum op)
-      throws IOException, AsyncApiException, StageException {
-    List<BatchInfo> batchInfos = new ArrayList<>();
-
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    OutputStreamWriter writer = new OutputStreamWriter(baos, "UTF-8" );
-
-    DataGenerator gen = createDelimitedCharDataGenerator(writer);
-
-    Iterator<Record> batchIterator = records.iterator();
-
-    int lastBytes = 0;
-    int currentBytes = 0;
-    int currentLines = 1; // Count header line
-
-    while (batchIterator.hasNext()) {
-      Record record = batchIterator.next();
-      writeAndFlushRecord(gen, record, op);
-      currentBytes = baos.size();
-
-      // Create a new batch when our batch size limit is reached
-      if (currentBytes > MAX_BYTES_PER_BATCH
-          || currentLines > MAX_ROWS_PER_BATCH) {
-        byte[] bytes = baos.toByteArray();
-        createBatch(bytes, lastBytes, batchInfos, jobInfo);
-
-        baos.reset();
-        gen.close();
-        // Get a new writer so we get a new header line
-        gen = createDelimitedCharDataGenerator(writer);
-
-        // Rewrite the record in hand, since we chopped it off the end of the buffer
-        writeAndFlushRecord(gen, record, op);
-        currentBytes = baos.size();
-        currentLines = 1;
-      }
-
-      lastBytes = currentBytes;
-      currentLines++;
-    }
-
-    // Finished processing all rows
-    // Create a final batch for any remaining data
-    if (currentLines > 1) {
-      byte[] bytes = baos.toByteArray();
-      createBatch(bytes, bytes.length, batchInfos, jobInfo);
-    }
-
-    gen.close();
-
-    return batchInfos;
-  }
-
-  private void writeAndFlushRecord(DataGenerator gen, Record record, OperationEnum op) throws IOException, DataGeneratorException {
+  private Record createOutRecord(Record record, OperationEnum op) {
     // Make a record with just the fields we need
     Record outRecord = context.createRecord(record.getHeader().getSourceId());
     LinkedHashMap<String, Field> map = new LinkedHashMap<>();
@@ -278,16 +387,49 @@ public class ForceBulkWriter extends ForceWriter {
     }
 
     outRecord.set(Field.createListMap(map));
-    gen.write(outRecord);
+    return outRecord;
+  }
+
+  private Record createHeaderRecord(Record outRecord) {
+    // The header of a job is the field names of its first record
+    Record headerRecord = context.createRecord(outRecord.getHeader().getSourceId());
+    LinkedHashMap<String, Field> map = new LinkedHashMap<>();
+    for (String sFieldName : outRecord.get().getValueAsListMap().keySet()) {
+      map.put(sFieldName, Field.create(sFieldName));
+    }
+    headerRecord.set(Field.createListMap(map));
+    return headerRecord;
+  }
+
+  private void writeRow(DataGenerator gen, BatchBuffer row, Record record) throws IOException, DataGeneratorException {
+    row.reset();
+    gen.write(record);
     gen.flush();
   }
 
-  private void createBatch(byte[] bytes, int count, List<BatchInfo> batchInfos, JobInfo jobInfo)
-      throws IOException, AsyncApiException {
-    BatchInfo batchInfo =
-        bulkConnection.createBatchFromStream(jobInfo, new ByteArrayInputStream(bytes, 0, count));
-    LOG.info("Wrote Bulk API batch: {}", batchInfo);
-    batchInfos.add(batchInfo);
+  private void upload(PendingJob job, PendingBatch batch, BatchBuffer buffer) {
+    batch.upload = uploadExecutor.submit(() -> {
+      apiCalls.incrementAndGet();
+      BatchInfo batchInfo = bulkConnection.createBatchFromStream(job.job, buffer.toInputStream());
+      LOG.info("Wrote Bulk API batch: {}", batchInfo);
+      return batchInfo;
+    });
+    job.batches.add(batch);
+  }
+
+  private void awaitUploads(PendingJob job) throws AsyncApiException, IOException {
+    for (PendingBatch batch : job.batches) {
+      try {
+        job.incomplete.put(batch.upload.get().getId(), batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while uploading Bulk API batches", e);
+      } catch (ExecutionException e) {
+        Throwables.propagateIfInstanceOf(e.getCause(), AsyncApiException.class);
+        Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+        throw Throwables.propagate(e.getCause());
+      }
+    }
   }
 
   private void closeJob(String jobId)
@@ -295,65 +437,125 @@ public class ForceBulkWriter extends ForceWriter {
     JobInfo job = new JobInfo();
     job.setId(jobId);
     job.setState(JobStateEnum.Closed);
+    apiCalls.incrementAndGet();
     bulkConnection.updateJob(job);
   }
 
-  private void awaitCompletion(JobBatches jb)
-      throws AsyncApiException {
-    long sleepTime = 0L;
-    Set<String> incomplete = new HashSet<>();
-    for (BatchInfo bi : jb.batchInfoList) {
-      incomplete.add(bi.getId());
+  private void pollResults() {
+    PollBackoff backoff = new PollBackoff(MAX_POLL_INTERVAL);
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        List<PendingJob> jobs;
+        synchronized (inFlight) {
+          while (inFlight.isEmpty()) {
+            inFlight.wait();
+          }
+          if (jobsAdded) {
+            jobsAdded = false;
+            backoff.reset();
+          }
+          jobs = new ArrayList<>(inFlight);
+        }
+
+        boolean progress = false;
+        for (PendingJob job : jobs) {
+          progress |= pollJob(job);
+          if (job.incomplete.isEmpty()) {
+            synchronized (inFlight) {
+              inFlight.remove(job);
+              inFlight.notifyAll();
+            }
+          }
+        }
+        updateGauge();
+
+        if (progress) {
+          backoff.reset();
+        }
+        long interval = backoff.next();
+        synchronized (inFlight) {
+          // New jobs are polled right away
+          if (!jobsAdded) {
+            inFlight.wait(interval);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Stopped polling Bulk API results");
+    } catch (AsyncApiException | IOException | RuntimeException e) {
+      LOG.error("Can't get Bulk API results", e);
+      synchronized (inFlight) {
+        resultError = e;
+        inFlight.notifyAll();
+      }
     }
-    while (!incomplete.isEmpty()) {
-      try {
-        Thread.sleep(sleepTime);
-      } catch (InterruptedException e) {}
-      LOG.info("Awaiting Bulk API results... {}", incomplete.size());
-      sleepTime = 1000L;
-      BatchInfo[] statusList =
-          bulkConnection.getBatchInfoList(jb.job.getId()).getBatchInfo();
-      for (BatchInfo b : statusList) {
-        if (b.getState() == BatchStateEnum.Completed
-            || b.getState() == BatchStateEnum.Failed) {
-          if (incomplete.remove(b.getId())) {
-            LOG.info("Batch status: {}", b);
+  }
+
+  private boolean pollJob(PendingJob job) throws AsyncApiException, IOException {
+    if (job.incomplete.isEmpty()) {
+      return false;
+    }
+    LOG.debug("Awaiting Bulk API results... {}", job.incomplete.size());
+    apiCalls.incrementAndGet();
+    BatchInfo[] statusList = bulkConnection.getBatchInfoList(job.job.getId()).getBatchInfo();
+
+    boolean progress = false;
+    for (BatchInfo b : statusList) {
+      if (b.getState() == BatchStateEnum.Completed || b.getState() == BatchStateEnum.Failed) {
+        PendingBatch batch = job.incomplete.remove(b.getId());
+        if (batch != null) {
+          LOG.info("Batch status: {}", b);
+          if (b.getState() == BatchStateEnum.Completed) {
+            checkResults(job, b, batch);
+          } else {
+            // Nothing in the batch was processed
+            for (Record record : batch.records) {
+              pendingErrors.add(new OnRecordErrorException(
+                  record,
+                  Errors.FORCE_11,
+                  record.getHeader().getSourceId(),
+                  b.getStateMessage()
+              ));
+            }
           }
+          progress = true;
         }
       }
     }
+    return progress;
   }
 
-  private void checkResults(
-      JobBatches jb, List<OnRecordErrorException> errorRecords
-  ) throws AsyncApiException, IOException {
-    Record[] recordArray = jb.records.toArray(new Record[0]);
-    int recordIndex = 0;
-    for (BatchInfo b : jb.batchInfoList) {
-      CSVReader rdr =
-          new CSVReader(bulkConnection.getBatchResultStream(jb.job.getId(), b.getId()));
+  private void checkResults(PendingJob job, BatchInfo batchInfo, PendingBatch batch)
+      throws AsyncApiException, IOException {
+    apiCalls.incrementAndGet();
+    try (InputStream is = bulkConnection.getBatchResultStream(job.job.getId(), batchInfo.getId())) {
+      CSVReader rdr = new CSVReader(is);
       List<String> resultHeader = rdr.nextRecord();
-      int resultCols = resultHeader.size();
+      int successCol = resultHeader.indexOf("Success");
+      int errorCol = resultHeader.indexOf("Error");
 
+      // Result rows map to the batch records by index
+      int recordIndex = 0;
       List<String> row;
-      while ((row = rdr.nextRecord()) != null) {
-        Map<String, String> resultInfo = new HashMap<>();
-        for (int i = 0; i < resultCols; i++) {
-          resultInfo.put(resultHeader.get(i), row.get(i));
-        }
-        boolean success = Boolean.parseBoolean(resultInfo.get("Success"));
-        String error = resultInfo.get("Error");
-        if (!success) {
-          Record record = recordArray[recordIndex];
-          errorRecords.add(new OnRecordErrorException(
+      while ((row = rdr.nextRecord()) != null && recordIndex < batch.records.size()) {
+        if (!Boolean.parseBoolean(row.get(successCol))) {
+          Record record = batch.records.get(recordIndex);
+          pendingErrors.add(new OnRecordErrorException(
               record,
               Errors.FORCE_11,
               record.getHeader().getSourceId(),
-              error
+              row.get(errorCol)
           ));
         }
         recordIndex++;
       }
     }
+    recordMeter.mark(batch.records.size());
+  }
+
+  private void updateGauge() {
+    long records = recordMeter.getCount();
+    bulkApiGauge.put(RECORDS_PER_SECOND, recordMeter.getOneMinuteRate());
+    bulkApiGauge.put(API_CALLS_PER_1K_RECORDS, records == 0 ? 0.0 : apiCalls.get() * 1000.0 / records);
   }
 }
@@ -25,12 +25,13 @@ import com.streamsets.pipeline.configurablestage.DTarget;
 import com.streamsets.pipeline.lib.salesforce.ForceTargetConfigBean;
 
 @StageDef(
-    version = 1,
+    version = 2,
     label = "Salesforce",
     description = "Writes data to Salesforce",
     icon = "salesforce.png",
     recordsByRef = true,
-    onlineHelpRefUrl = "index.html#Destinations/Salesforce.html#task_ncv_153_rx"
+    onlineHelpRefUrl = "index.html#Destinations/Salesforce.html#task_ncv_153_rx",
+    upgrader = ForceTargetUpgrader.class
 )
 
 @ConfigGroups(value = Groups.class)
@@ -154,7 +154,7 @@ public class ForceTarget extends BaseTarget {
       }
 
       if (conf.useBulkAPI) {
-        writer = new ForceBulkWriter(fieldMappings, bulkConnection, getContext());
+        writer = new ForceBulkWriter(fieldMappings, bulkConnection, getContext(), conf.maxJobsInFlight);
       } else {
         writer = new ForceSoapWriter(fieldMappings, partnerConnection);
       }
@@ -169,6 +169,9 @@ public class ForceTarget extends BaseTarget {
    */
   @Override
   public void destroy() {
+    if (writer != null) {
+      writer.close();
+    }
     super.destroy();
   }
 
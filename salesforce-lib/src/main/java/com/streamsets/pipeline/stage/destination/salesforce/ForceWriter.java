@@ -56,4 +56,10 @@ public abstract class ForceWriter {
       Collection<Record> records,
       ForceTarget target
   ) throws StageException;
+
+  /**
+   * Releases any resources held by the writer. Called when the destination is destroyed.
+   */
+  void close() {
+  }
 }
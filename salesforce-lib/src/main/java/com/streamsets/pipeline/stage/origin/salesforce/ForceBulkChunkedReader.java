@@ -0,0 +1,460 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.salesforce;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.BatchInfo;
+import com.sforce.async.BatchStateEnum;
+import com.sforce.async.BulkConnection;
+import com.sforce.async.CSVReader;
+import com.sforce.async.ContentType;
+import com.sforce.async.JobInfo;
+import com.sforce.async.JobStateEnum;
+import com.sforce.async.OperationEnum;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.StageException;
+import com.streamsets.pipeline.lib.salesforce.Errors;
+import com.streamsets.pipeline.lib.salesforce.PollBackoff;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Runs a Bulk API query with primary key chunking and downloads the chunks in parallel.
+ *
+ * Salesforce splits the query into one batch per range of record ids. A coordinator thread polls the batches of the
+ * job, backing off while nothing changes, and hands every completed batch to a pool of download threads. These parse
+ * the result sets into records and put them into a bounded queue drained by {@link #poll(int, long)}. Each record
+ * carries its chunk and its position in the chunk so that the caller can keep an {@link Offset} per chunk and resume
+ * the same job after a restart.
+ */
+class ForceBulkChunkedReader {
+  private static final Logger LOG = LoggerFactory.getLogger(ForceBulkChunkedReader.class);
+
+  static final String PK_CHUNKING_HEADER = "Sforce-Enable-PKChunking";
+  static final long CHUNK_DONE = -1;
+  private static final String NO_RECORDS = "Records not found for this query";
+
+  interface RowParser {
+    Record parse(List<String> header, List<String> row, String offset) throws StageException;
+  }
+
+  /**
+   * Progress of a chunked query, serialized into the source offset.
+   */
+  public static class Offset {
+    // Bulk API job and the batch holding the query, which is not processed itself once it is split into chunks
+    public String jobId;
+    public String batchId;
+    // value of ${offset} the query was run with
+    public String queryOffset;
+    // greatest value of the offset column read so far, in the order of the column type
+    public String maxOffset;
+    // rows read from each chunk, CHUNK_DONE once all its rows were read
+    public Map<String, Long> chunks = new LinkedHashMap<>();
+
+    void update(Entry entry, Comparator<String> offsetComparator) {
+      if (entry.isChunkEnd()) {
+        chunks.put(entry.getChunkId(), CHUNK_DONE);
+      } else {
+        chunks.put(entry.getChunkId(), entry.getRow());
+        if (maxOffset == null || offsetComparator.compare(entry.getOffset(), maxOffset) > 0) {
+          maxOffset = entry.getOffset();
+        }
+      }
+    }
+  }
+
+  /**
+   * Orders values of the offset column of the given Salesforce type the way ORDER BY does: numbers by value, dates
+   * and datetimes chronologically and anything else, such as ids, as strings. Empty values come first.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  static Comparator<String> offsetComparator(String sfdcType) {
+    Function<String, Comparable> key;
+    switch (sfdcType) {
+      case "int":
+      case "long":
+      case "double":
+      case "currency":
+      case "percent":
+        key = BigDecimal::new;
+        break;
+      case "date":
+        key = LocalDate::parse;
+        break;
+      case "datetime":
+        key = value -> OffsetDateTime.parse(value).toInstant();
+        break;
+      default:
+        key = value -> value;
+    }
+    return (o1, o2) -> {
+      if (o1.isEmpty() || o2.isEmpty()) {
+        return Boolean.compare(!o1.isEmpty(), !o2.isEmpty());
+      }
+      try {
+        return key.apply(o1).compareTo(key.apply(o2));
+      } catch (RuntimeException e) {
+        LOG.debug("Comparing offsets '{}' and '{}' as strings: {}", o1, o2, e.toString());
+        return o1.compareTo(o2);
+      }
+    };
+  }
+
+  /**
+   * Record read from a chunk, or the end of a chunk when there is no record.
+   */
+  static class Entry {
+    private final String chunkId;
+    private final long row;
+    private final Record record;
+    private final String offset;
+
+    Entry(String chunkId, long row, Record record, String offset) {
+      this.chunkId = chunkId;
+      this.row = row;
+      this.record = record;
+      this.offset = offset;
+    }
+
+    String getChunkId() {
+      return chunkId;
+    }
+
+    long getRow() {
+      return row;
+    }
+
+    Record getRecord() {
+      return record;
+    }
+
+    String getOffset() {
+      return offset;
+    }
+
+    boolean isChunkEnd() {
+      return record == null;
+    }
+  }
+
+  private final BulkConnection connection;
+  private final String offsetColumn;
+  private final Comparator<String> offsetComparator;
+  private final RowParser parser;
+  private final long maxPollInterval;
+  private final BlockingQueue<Entry> queue;
+  private final ExecutorService downloadExecutor;
+  private final AtomicReference<StageException> error;
+  private final AtomicInteger submittedChunks;
+  private final AtomicInteger endedChunks;
+  private Offset offset;
+  private Thread coordinator;
+  private volatile boolean allChunksSubmitted;
+  private volatile boolean stopped;
+
+  ForceBulkChunkedReader(
+      BulkConnection connection,
+      String offsetColumn,
+      Comparator<String> offsetComparator,
+      int maxConcurrentDownloads,
+      int queueSize,
+      long maxPollInterval,
+      RowParser parser
+  ) {
+    this.connection = connection;
+    this.offsetColumn = offsetColumn;
+    this.offsetComparator = offsetComparator;
+    this.parser = parser;
+    this.maxPollInterval = maxPollInterval;
+    queue = new ArrayBlockingQueue<>(queueSize);
+    downloadExecutor = Executors.newFixedThreadPool(
+        maxConcurrentDownloads,
+        new ThreadFactoryBuilder().setNameFormat("ForceBulkChunkDownload-%d").setDaemon(true).build()
+    );
+    error = new AtomicReference<>();
+    submittedChunks = new AtomicInteger();
+    endedChunks = new AtomicInteger();
+  }
+
+  /**
+   * Creates a job splitting the query in chunks of the given number of records and starts reading it.
+   */
+  void start(String sobjectType, String query, String queryOffset, boolean queryAll, int chunkSize)
+      throws StageException {
+    try {
+      // The header would be sent with every later request of the shared connection, hence only the job creation goes
+      // through a connection that has it
+      BulkConnection chunkingConnection = new BulkConnection(connection.getConfig());
+      chunkingConnection.addHeader(PK_CHUNKING_HEADER, "chunkSize=" + chunkSize);
+      JobInfo job = new JobInfo();
+      job.setObject(sobjectType);
+      job.setOperation(queryAll ? OperationEnum.queryAll : OperationEnum.query);
+      job.setContentType(ContentType.CSV);
+      job = chunkingConnection.createJob(job);
+      LOG.info("Created Bulk API job {} with PK chunking", job.getId());
+      BatchInfo batch = connection.createBatchFromStream(
+          job,
+          new ByteArrayInputStream(query.getBytes(StandardCharsets.UTF_8))
+      );
+      LOG.info("Created Bulk API batch {}", batch.getId());
+
+      offset = new Offset();
+      offset.jobId = job.getId();
+      offset.batchId = batch.getId();
+      offset.queryOffset = queryOffset;
+    } catch (AsyncApiException e) {
+      throw new StageException(Errors.FORCE_01, e);
+    }
+    startCoordinator();
+  }
+
+  /**
+   * Continues reading the job of the given offset, skipping the rows already read from every chunk. Returns false if
+   * the job can't be resumed.
+   */
+  boolean resume(Offset offset) {
+    try {
+      JobInfo job = connection.getJobStatus(offset.jobId);
+      if (job.getState() == JobStateEnum.Aborted || job.getState() == JobStateEnum.Failed) {
+        LOG.warn("Can't resume Bulk API job {} in state {}", offset.jobId, job.getState());
+        return false;
+      }
+    } catch (AsyncApiException e) {
+      LOG.warn("Can't resume Bulk API job {}: {}", offset.jobId, e.toString(), e);
+      return false;
+    }
+    LOG.info("Resuming Bulk API job {}", offset.jobId);
+    this.offset = offset;
+    startCoordinator();
+    return true;
+  }
+
+  Offset getOffset() {
+    return offset;
+  }
+
+  /**
+   * Records the given polled entry in the offset.
+   */
+  void update(Entry entry) {
+    offset.update(entry, offsetComparator);
+  }
+
+  /**
+   * Returns up to the given number of entries, waiting for the first one up to the given time. Returns an empty list
+   * if nothing was read in that time.
+   */
+  List<Entry> poll(int maxEntries, long waitMillis) throws StageException {
+    List<Entry> entries = new ArrayList<>(maxEntries);
+    try {
+      Entry entry = queue.poll(waitMillis, TimeUnit.MILLISECONDS);
+      if (entry != null) {
+        entries.add(entry);
+        queue.drainTo(entries, maxEntries - 1);
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Interrupted while waiting for records");
+      Thread.currentThread().interrupt();
+    }
+    // Records read before a failure are still handed out, the failure surfaces once they are consumed
+    if (entries.isEmpty() && error.get() != null) {
+      throw error.get();
+    }
+    return entries;
+  }
+
+  /**
+   * All the chunks were read and polled.
+   */
+  boolean isFinished() {
+    return allChunksSubmitted && endedChunks.get() == submittedChunks.get() && queue.isEmpty() &&
+        error.get() == null;
+  }
+
+  void stop() {
+    stopped = true;
+    if (coordinator != null) {
+      coordinator.interrupt();
+    }
+    downloadExecutor.shutdownNow();
+    try {
+      if (!downloadExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+        LOG.warn("Chunk downloads did not finish in time");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void startCoordinator() {
+    final String jobId = offset.jobId;
+    final String batchId = offset.batchId;
+    final Map<String, Long> rowsToSkip = new LinkedHashMap<>(offset.chunks);
+    coordinator = new Thread(() -> coordinate(jobId, batchId, rowsToSkip), "ForceBulkChunkCoordinator");
+    coordinator.setDaemon(true);
+    coordinator.start();
+  }
+
+  private void coordinate(String jobId, String batchId, Map<String, Long> rowsToSkip) {
+    PollBackoff backoff = new PollBackoff(maxPollInterval);
+    Set<String> submitted = new HashSet<>();
+    try {
+      while (!stopped && !allChunksSubmitted) {
+        boolean progress = false;
+        boolean split = false;
+        boolean pending = false;
+        for (BatchInfo info : connection.getBatchInfoList(jobId).getBatchInfo()) {
+          if (info.getId().equals(batchId)) {
+            if (info.getState() == BatchStateEnum.Failed) {
+              throw new StageException(Errors.FORCE_03, info.getStateMessage());
+            }
+            // the original batch is not processed once Salesforce created all the chunks
+            split = info.getState() == BatchStateEnum.NotProcessed;
+          } else if (info.getState() == BatchStateEnum.Failed) {
+            throw new StageException(Errors.FORCE_03, info.getId() + ": " + info.getStateMessage());
+          } else if (info.getState() != BatchStateEnum.Completed) {
+            pending = true;
+          } else if (submitted.add(info.getId())) {
+            progress = true;
+            Long skip = rowsToSkip.get(info.getId());
+            if (skip == null || skip != CHUNK_DONE) {
+              submit(jobId, info.getId(), skip == null ? 0 : skip);
+            }
+          }
+        }
+        if (split && !pending) {
+          allChunksSubmitted = true;
+        } else {
+          if (progress) {
+            backoff.reset();
+          }
+          Thread.sleep(backoff.next());
+        }
+      }
+      LOG.info("All chunks of Bulk API job {} completed", jobId);
+    } catch (InterruptedException e) {
+      LOG.debug("Chunk coordinator interrupted");
+    } catch (AsyncApiException e) {
+      fail(new StageException(Errors.FORCE_02, e));
+    } catch (StageException e) {
+      fail(e);
+    }
+  }
+
+  private void submit(final String jobId, final String chunkId, final long skip) {
+    submittedChunks.incrementAndGet();
+    downloadExecutor.submit(() -> {
+      try {
+        download(jobId, chunkId, skip);
+      } catch (InterruptedException e) {
+        LOG.debug("Download of chunk {} interrupted", chunkId);
+      } catch (StageException e) {
+        fail(e);
+      } catch (Exception e) {
+        fail(new StageException(Errors.FORCE_04, e));
+      }
+    });
+  }
+
+  private void download(String jobId, String chunkId, long skip) throws StageException, InterruptedException {
+    LOG.debug("Downloading chunk {}, skipping {} rows", chunkId, skip);
+    long row = 0;
+    String[] results;
+    try {
+      results = connection.getQueryResultList(jobId, chunkId).getResult();
+    } catch (AsyncApiException e) {
+      throw new StageException(Errors.FORCE_05, e);
+    }
+    for (String resultId : results) {
+      CSVReader rdr;
+      List<String> header;
+      try {
+        rdr = new CSVReader(connection.getQueryResultStream(jobId, chunkId, resultId));
+        rdr.setMaxRowsInFile(Integer.MAX_VALUE);
+        rdr.setMaxCharsInFile(Integer.MAX_VALUE);
+        header = rdr.nextRecord();
+      } catch (AsyncApiException e) {
+        throw new StageException(Errors.FORCE_05, e);
+      } catch (IOException e) {
+        throw new StageException(Errors.FORCE_04, e);
+      }
+      if (header == null || (header.size() == 1 && NO_RECORDS.equals(header.get(0)))) {
+        continue;
+      }
+      int offsetIndex = -1;
+      for (int i = 0; i < header.size(); i++) {
+        if (header.get(i).equalsIgnoreCase(offsetColumn)) {
+          offsetIndex = i;
+          break;
+        }
+      }
+      if (offsetIndex == -1) {
+        throw new StageException(Errors.FORCE_06, header);
+      }
+      try {
+        List<String> values;
+        while (!stopped && (values = rdr.nextRecord()) != null) {
+          row++;
+          if (row > skip) {
+            String rowOffset = values.get(offsetIndex);
+            put(new Entry(chunkId, row, parser.parse(header, values, rowOffset), rowOffset));
+          }
+        }
+      } catch (IOException e) {
+        throw new StageException(Errors.FORCE_04, e);
+      }
+    }
+    if (!stopped) {
+      put(new Entry(chunkId, row, null, null));
+      endedChunks.incrementAndGet();
+    }
+  }
+
+  private void put(Entry entry) throws InterruptedException {
+    while (!stopped && !queue.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+      // queue is full, wait for the pipeline to catch up
+    }
+  }
+
+  private void fail(StageException e) {
+    LOG.error("Chunked Bulk API query failed: {}", e.toString(), e);
+    error.compareAndSet(null, e);
+  }
+}
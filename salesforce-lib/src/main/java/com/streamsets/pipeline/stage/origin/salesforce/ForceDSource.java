@@ -26,7 +26,7 @@ import com.streamsets.pipeline.configurablestage.DSource;
 import com.streamsets.pipeline.lib.salesforce.ForceSourceConfigBean;
 
 @StageDef(
-    version = 1,
+    version = 2,
     label = "Salesforce",
     description = "Reads data from Salesforce",
     icon = "salesforce.png",
@@ -34,6 +34,7 @@ import com.streamsets.pipeline.lib.salesforce.ForceSourceConfigBean;
     recordsByRef = true,
     resetOffset = true,
     producesEvents = true,
+    upgrader = ForceSourceUpgrader.class,
     onlineHelpRefUrl = "index.html#Origins/Salesforce.html#task_h1n_bs3_rx"
 )
 @ConfigGroups(value = Groups.class)
@@ -39,6 +39,7 @@ import com.streamsets.pipeline.lib.salesforce.ForceConfigBean;
 import com.streamsets.pipeline.lib.salesforce.ForceRepeatQuery;
 import com.streamsets.pipeline.lib.salesforce.ForceSourceConfigBean;
 import com.streamsets.pipeline.lib.salesforce.ForceUtils;
+import com.streamsets.pipeline.lib.salesforce.PollBackoff;
 import com.streamsets.pipeline.lib.util.ThreadUtil;
 import com.sforce.soap.partner.Connector;
 import com.sforce.soap.partner.PartnerConnection;
@@ -71,6 +72,7 @@ public class ForceSource extends BaseSource {
   private static final long EVENT_ID_FROM_START = -2;
   private static final String RECORD_ID_OFFSET_PREFIX = "recordId:";
   private static final String EVENT_ID_OFFSET_PREFIX = "eventId:";
+  private static final String CHUNKS_OFFSET_PREFIX = "chunks:";
 
   private static final Logger LOG = LoggerFactory.getLogger(ForceSource.class);
   private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
@@ -80,6 +82,8 @@ public class ForceSource extends BaseSource {
   private static final String AUTHENTICATION_INVALID = "401::Authentication invalid";
   private static final String META = "/meta";
   private static final String META_HANDSHAKE = "/meta/handshake";
+  // Chunks are read in parallel, there is no point in sorting them
+  private static final Pattern ORDER_BY_CLAUSE = Pattern.compile("(?is)\\s+ORDER\\s+BY\\s+.*?(?=\\s+LIMIT\\s|$)");
 
   public static final String READ_EVENTS_FROM_NOW = EVENT_ID_OFFSET_PREFIX + EVENT_ID_FROM_NOW;
   public static final String READ_EVENTS_FROM_START = EVENT_ID_OFFSET_PREFIX + EVENT_ID_FROM_START;
@@ -103,6 +107,8 @@ public class ForceSource extends BaseSource {
   private int resultIndex;
   private CSVReader rdr;
   private List<String> resultHeader;
+  private PollBackoff pollBackoff;
+  private ForceBulkChunkedReader chunkedReader;
 
   // SOAP API state
   private QueryResult queryResult;
@@ -280,6 +286,12 @@ public class ForceSource extends BaseSource {
     job = null;
     batch = null;
 
+    if (chunkedReader != null) {
+      // The job is not aborted so that the next run can resume reading its chunks
+      chunkedReader.stop();
+      chunkedReader = null;
+    }
+
     if (forceConsumer != null) {
       try {
         forceConsumer.stop();
@@ -352,7 +364,9 @@ public class ForceSource extends BaseSource {
         }
       }
 
-      if (conf.useBulkAPI) {
+      if (conf.useBulkAPI && conf.usePKChunking) {
+        nextSourceOffset = chunkedBulkProduce(lastSourceOffset, batchSize, batchMaker);
+      } else if (conf.useBulkAPI) {
         nextSourceOffset = bulkProduce(lastSourceOffset, batchSize, batchMaker);
       } else {
         nextSourceOffset = soapProduce(lastSourceOffset, batchSize, batchMaker);
@@ -368,7 +382,7 @@ public class ForceSource extends BaseSource {
   }
 
   private boolean queryInProgress() {
-    return (conf.useBulkAPI && job != null) || (!conf.useBulkAPI && queryResult != null);
+    return (conf.useBulkAPI && (job != null || chunkedReader != null)) || (!conf.useBulkAPI && queryResult != null);
   }
 
   public String bulkProduce(String lastSourceOffset, int maxBatchSize, BatchMaker batchMaker) throws StageException {
@@ -394,6 +408,7 @@ public class ForceSource extends BaseSource {
         batch = bulkConnection.createBatchFromStream(job,
                 new ByteArrayInputStream(preparedQuery.getBytes(StandardCharsets.UTF_8)));
         LOG.info("Created Bulk API batch {}", batch.getId());
+        pollBackoff = new PollBackoff(conf.basicConfig.maxWaitTime);
       } catch (AsyncApiException e) {
         throw new StageException(Errors.FORCE_01, e);
       }
@@ -407,10 +422,11 @@ public class ForceSource extends BaseSource {
         throw new StageException(getContext().isPreview() ? Errors.FORCE_25 : Errors.FORCE_26);
       }
 
-      // Poll for results
+      // Poll for results, backing off while the batch is in progress
       try {
-        LOG.info("Waiting {} milliseconds for batch {}", conf.basicConfig.maxWaitTime, batch.getId());
-        Thread.sleep(conf.basicConfig.maxWaitTime);
+        long pollInterval = pollBackoff.next();
+        LOG.info("Waiting {} milliseconds for batch {}", pollInterval, batch.getId());
+        Thread.sleep(pollInterval);
       } catch (InterruptedException e) {
         LOG.debug("Interrupted while sleeping");
         Thread.currentThread().interrupt();
@@ -504,46 +520,7 @@ public class ForceSource extends BaseSource {
           } else {
             String offset = row.get(offsetIndex);
             nextSourceOffset = RECORD_ID_OFFSET_PREFIX + offset;
-            final String sourceId = conf.soqlQuery + "::" + offset;
-            Record record = getContext().createRecord(sourceId);
-            LinkedHashMap<String, Field> map = new LinkedHashMap<>();
-            for (int i = 0; i < resultHeader.size(); i++) {
-              String fieldName = resultHeader.get(i);
-
-              // Walk the dotted list of subfields
-              String[] parts = fieldName.split("\\.");
-
-              // Process any chain of relationships
-              String parent = sobjectType;
-              for (int j = 0; j < parts.length - 1; j++) {
-                com.sforce.soap.partner.Field sfdcField = null;
-                Map<String, com.sforce.soap.partner.Field> fieldMap = metadataMap.get(parent);
-
-                // Metadata map is indexed by field name, but it's the relationship name in the data
-                for (Map.Entry<String, com.sforce.soap.partner.Field> entry : fieldMap.entrySet()) {
-                  if (entry.getValue().getRelationshipName() != null) {
-                    if (entry.getValue().getRelationshipName().equalsIgnoreCase(parts[j])) {
-                      sfdcField = entry.getValue();
-                      break;
-                    }
-                  }
-                }
-
-                parent = sfdcField.getReferenceTo()[0].toLowerCase();
-              }
-
-              // Now process the actual field itself
-              com.sforce.soap.partner.Field sfdcField = metadataMap.get(parent).get(parts[parts.length - 1].toLowerCase());
-
-              Field field = ForceUtils.createField(row.get(i), sfdcField);
-              if (conf.createSalesforceNsHeaders) {
-                ForceUtils.setHeadersOnField(field, metadataMap.get(sobjectType).get(fieldName.toLowerCase()), conf.salesforceNsHeaderPrefix);
-              }
-              map.put(fieldName, field);
-            }
-            record.set(Field.createListMap(map));
-            record.getHeader().setAttribute(SOBJECT_TYPE_ATTRIBUTE, sobjectType);
-            batchMaker.addRecord(record);
+            batchMaker.addRecord(createRecordFromRow(resultHeader, row, offset));
             ++numRecords;
           }
         } catch (IOException e) {
@@ -558,6 +535,156 @@ public class ForceSource extends BaseSource {
     return nextSourceOffset;
   }
 
+  private String chunkedBulkProduce(String lastSourceOffset, int maxBatchSize, BatchMaker batchMaker)
+      throws StageException {
+    if (chunkedReader == null) {
+      chunkedReader = new ForceBulkChunkedReader(
+          bulkConnection,
+          conf.offsetColumn,
+          ForceBulkChunkedReader.offsetComparator(getOffsetColumnType()),
+          conf.maxConcurrentDownloads,
+          2 * conf.basicConfig.maxBatchSize,
+          conf.basicConfig.maxWaitTime,
+          this::createRecordFromRow
+      );
+      String id = (lastSourceOffset == null) ? null : lastSourceOffset.substring(lastSourceOffset.indexOf(':') + 1);
+      boolean resumed = false;
+      if (lastSourceOffset != null && lastSourceOffset.startsWith(CHUNKS_OFFSET_PREFIX)) {
+        ForceBulkChunkedReader.Offset chunksOffset = parseChunksOffset(lastSourceOffset);
+        resumed = chunkedReader.resume(chunksOffset);
+        // Otherwise run the same query again
+        id = chunksOffset.queryOffset;
+      }
+      if (!resumed) {
+        final String preparedQuery = ORDER_BY_CLAUSE.matcher(prepareQuery(conf.soqlQuery, id)).replaceFirst("");
+        LOG.info("SOQL Query is: {}", preparedQuery);
+
+        if (destroyed.get()) {
+          throw new StageException(getContext().isPreview() ? Errors.FORCE_25 : Errors.FORCE_26);
+        }
+        chunkedReader.start(
+            sobjectType,
+            preparedQuery,
+            (id == null) ? conf.initialOffset : id,
+            conf.queryAll,
+            conf.chunkSize
+        );
+      }
+    }
+
+    // Wait for records in preview mode and not return an empty batch
+    List<ForceBulkChunkedReader.Entry> entries;
+    do {
+      if (destroyed.get()) {
+        throw new StageException(getContext().isPreview() ? Errors.FORCE_25 : Errors.FORCE_26);
+      }
+      entries = chunkedReader.poll(maxBatchSize, conf.basicConfig.maxWaitTime);
+    } while (entries.isEmpty() && getContext().isPreview() && !chunkedReader.isFinished());
+
+    ForceBulkChunkedReader.Offset chunksOffset = chunkedReader.getOffset();
+    int numRecords = 0;
+    for (ForceBulkChunkedReader.Entry entry : entries) {
+      chunkedReader.update(entry);
+      if (!entry.isChunkEnd()) {
+        batchMaker.addRecord(entry.getRecord());
+        ++numRecords;
+      }
+    }
+    LOG.debug("Batch of {} records", numRecords);
+
+    if (!chunkedReader.isFinished()) {
+      try {
+        return CHUNKS_OFFSET_PREFIX + OBJECT_MAPPER.writeValueAsString(chunksOffset);
+      } catch (IOException e) {
+        throw new StageException(Errors.FORCE_27, chunksOffset.jobId, e.toString(), e);
+      }
+    }
+
+    // We're out of chunks
+    try {
+      bulkConnection.closeJob(chunksOffset.jobId);
+    } catch (AsyncApiException e) {
+      LOG.error("Error closing job: {}", e);
+    }
+    chunkedReader.stop();
+    chunkedReader = null;
+    lastQueryCompletedTime = System.currentTimeMillis();
+    LOG.info("Query completed at: {}", lastQueryCompletedTime);
+    shouldSendNoMoreDataEvent = true;
+    String nextSourceOffset = RECORD_ID_OFFSET_PREFIX +
+        ((chunksOffset.maxOffset == null) ? chunksOffset.queryOffset : chunksOffset.maxOffset);
+    if (conf.subscribeToStreaming) {
+      // Switch to processing events
+      nextSourceOffset = READ_EVENTS_FROM_NOW;
+    } else if (conf.repeatQuery == ForceRepeatQuery.FULL) {
+      nextSourceOffset = RECORD_ID_OFFSET_PREFIX + conf.initialOffset;
+    } else if (conf.repeatQuery == ForceRepeatQuery.NO_REPEAT) {
+      nextSourceOffset = null;
+    }
+    return nextSourceOffset;
+  }
+
+  private String getOffsetColumnType() {
+    Map<String, com.sforce.soap.partner.Field> fieldMap = (metadataMap == null) ? null : metadataMap.get(sobjectType);
+    com.sforce.soap.partner.Field offsetField =
+        (fieldMap == null) ? null : fieldMap.get(conf.offsetColumn.toLowerCase());
+    return (offsetField == null) ? "id" : offsetField.getType().toString();
+  }
+
+  private ForceBulkChunkedReader.Offset parseChunksOffset(String offset) throws StageException {
+    try {
+      return OBJECT_MAPPER.readValue(
+          offset.substring(CHUNKS_OFFSET_PREFIX.length()),
+          ForceBulkChunkedReader.Offset.class
+      );
+    } catch (IOException e) {
+      throw new StageException(Errors.FORCE_27, offset, e.toString(), e);
+    }
+  }
+
+  private Record createRecordFromRow(List<String> header, List<String> row, String offset) throws StageException {
+    final String sourceId = conf.soqlQuery + "::" + offset;
+    Record record = getContext().createRecord(sourceId);
+    LinkedHashMap<String, Field> map = new LinkedHashMap<>();
+    for (int i = 0; i < header.size(); i++) {
+      String fieldName = header.get(i);
+
+      // Walk the dotted list of subfields
+      String[] parts = fieldName.split("\\.");
+
+      // Process any chain of relationships
+      String parent = sobjectType;
+      for (int j = 0; j < parts.length - 1; j++) {
+        com.sforce.soap.partner.Field sfdcField = null;
+        Map<String, com.sforce.soap.partner.Field> fieldMap = metadataMap.get(parent);
+
+        // Metadata map is indexed by field name, but it's the relationship name in the data
+        for (Map.Entry<String, com.sforce.soap.partner.Field> entry : fieldMap.entrySet()) {
+          if (entry.getValue().getRelationshipName() != null) {
+            if (entry.getValue().getRelationshipName().equalsIgnoreCase(parts[j])) {
+              sfdcField = entry.getValue();
+              break;
+            }
+          }
+        }
+
+        parent = sfdcField.getReferenceTo()[0].toLowerCase();
+      }
+
+      // Now process the actual field itself
+      com.sforce.soap.partner.Field sfdcField = metadataMap.get(parent).get(parts[parts.length - 1].toLowerCase());
+
+      Field field = ForceUtils.createField(row.get(i), sfdcField);
+      if (conf.createSalesforceNsHeaders) {
+        ForceUtils.setHeadersOnField(field, metadataMap.get(sobjectType).get(fieldName.toLowerCase()), conf.salesforceNsHeaderPrefix);
+      }
+      map.put(fieldName, field);
+    }
+    record.set(Field.createListMap(map));
+    record.getHeader().setAttribute(SOBJECT_TYPE_ATTRIBUTE, sobjectType);
+    return record;
+  }
+
   private static XmlObject getChildIgnoreCase(SObject record, String name) {
     XmlObject item = null;
     Iterator<XmlObject> iter = record.getChildren();
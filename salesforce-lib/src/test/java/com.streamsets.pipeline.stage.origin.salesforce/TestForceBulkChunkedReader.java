@@ -0,0 +1,364 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.origin.salesforce;
+
+import com.sforce.async.BulkConnection;
+import com.sforce.ws.ConnectorConfig;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.StageException;
+import com.streamsets.pipeline.lib.salesforce.Errors;
+import com.streamsets.pipeline.lib.salesforce.PollBackoff;
+import com.streamsets.pipeline.sdk.RecordCreator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestForceBulkChunkedReader {
+  private static final String NS = "http://www.force.com/2009/06/asyncapi/dataload";
+  private static final String JOB_ID = "750000000000001";
+  private static final String BATCH_ID = "751000000000000";
+
+  private MockBulkApiServer server;
+  private BulkConnection connection;
+
+  /**
+   * Minimal Bulk API server for a query job split by PK chunking. The original batch is not processed from the second
+   * status poll on and each chunk completes after a given number of polls.
+   */
+  private static class MockBulkApiServer {
+    private final HttpServer httpServer;
+    // chunk id -> result id -> CSV content
+    private final Map<String, Map<String, String>> chunks = new LinkedHashMap<>();
+    private final Map<String, Integer> pollsToComplete = new LinkedHashMap<>();
+    private final Map<String, String> failedChunks = new LinkedHashMap<>();
+    private final AtomicInteger polls = new AtomicInteger();
+    private volatile String pkChunkingHeader;
+    private volatile boolean pkChunkingHeaderOnOtherRequest;
+    private volatile String jobState = "Open";
+
+    MockBulkApiServer() throws IOException {
+      httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      httpServer.createContext("/services/async/39.0/job", this::handle);
+      httpServer.start();
+    }
+
+    String getEndpoint() {
+      return "http://localhost:" + httpServer.getAddress().getPort() + "/services/async/39.0";
+    }
+
+    void addChunk(String chunkId, int polls, String... results) {
+      Map<String, String> resultMap = new LinkedHashMap<>();
+      for (int i = 0; i < results.length; i++) {
+        resultMap.put(chunkId + "R" + i, results[i]);
+      }
+      chunks.put(chunkId, resultMap);
+      pollsToComplete.put(chunkId, polls);
+    }
+
+    void stop() {
+      httpServer.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+      String[] path = exchange.getRequestURI().getPath().substring("/services/async/39.0/job".length()).split("/");
+      String method = exchange.getRequestMethod();
+      try {
+        if (path.length == 1 && "POST".equals(method)) {
+          pkChunkingHeader = exchange.getRequestHeaders().getFirst(ForceBulkChunkedReader.PK_CHUNKING_HEADER);
+          respond(exchange, "application/xml", jobInfo());
+          return;
+        }
+        if (exchange.getRequestHeaders().containsKey(ForceBulkChunkedReader.PK_CHUNKING_HEADER)) {
+          pkChunkingHeaderOnOtherRequest = true;
+        }
+        if (path.length == 2) {
+          if ("POST".equals(method)) {
+            jobState = "Closed";
+          }
+          respond(exchange, "application/xml", jobInfo());
+        } else if (path.length == 3 && "POST".equals(method)) {
+          respond(exchange, "application/xml", batchInfo(BATCH_ID, "Queued", null));
+        } else if (path.length == 3) {
+          int poll = polls.incrementAndGet();
+          StringBuilder list = new StringBuilder("<batchInfoList xmlns=\"" + NS + "\">");
+          list.append(batchInfo(BATCH_ID, poll > 1 ? "NotProcessed" : "InProgress", null));
+          if (poll > 1) {
+            for (String chunkId : chunks.keySet()) {
+              if (failedChunks.containsKey(chunkId)) {
+                list.append(batchInfo(chunkId, "Failed", failedChunks.get(chunkId)));
+              } else {
+                list.append(batchInfo(chunkId, poll > pollsToComplete.get(chunkId) ? "Completed" : "Queued", null));
+              }
+            }
+          }
+          list.append("</batchInfoList>");
+          respond(exchange, "application/xml", list.toString());
+        } else if (path.length == 5) {
+          StringBuilder list = new StringBuilder("<result-list xmlns=\"" + NS + "\">");
+          for (String resultId : chunks.get(path[3]).keySet()) {
+            list.append("<result>").append(resultId).append("</result>");
+          }
+          list.append("</result-list>");
+          respond(exchange, "application/xml", list.toString());
+        } else if (path.length == 6) {
+          respond(exchange, "text/csv", chunks.get(path[3]).get(path[5]));
+        } else {
+          exchange.sendResponseHeaders(404, -1);
+        }
+      } finally {
+        exchange.close();
+      }
+    }
+
+    private void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", contentType);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(bytes);
+      }
+    }
+
+    private String jobInfo() {
+      return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><jobInfo xmlns=\"" + NS + "\">" +
+          "<id>" + JOB_ID + "</id><operation>query</operation><object>Account</object>" +
+          "<createdById>005000000000001</createdById><createdDate>2017-01-01T00:00:00.000Z</createdDate>" +
+          "<systemModstamp>2017-01-01T00:00:00.000Z</systemModstamp><state>" + jobState + "</state>" +
+          "<concurrencyMode>Parallel</concurrencyMode><contentType>CSV</contentType>" +
+          "<numberBatchesQueued>0</numberBatchesQueued><numberBatchesInProgress>0</numberBatchesInProgress>" +
+          "<numberBatchesCompleted>0</numberBatchesCompleted><numberBatchesFailed>0</numberBatchesFailed>" +
+          "<numberBatchesTotal>0</numberBatchesTotal><numberRecordsProcessed>0</numberRecordsProcessed>" +
+          "<numberRetries>0</numberRetries><apiVersion>39.0</apiVersion>" +
+          "<numberRecordsFailed>0</numberRecordsFailed><totalProcessingTime>0</totalProcessingTime>" +
+          "<apiActiveProcessingTime>0</apiActiveProcessingTime><apexProcessingTime>0</apexProcessingTime>" +
+          "</jobInfo>";
+    }
+
+    private static String batchInfo(String id, String state, String stateMessage) {
+      return "<batchInfo xmlns=\"" + NS + "\"><id>" + id + "</id><jobId>" + JOB_ID + "</jobId>" +
+          "<state>" + state + "</state>" +
+          (stateMessage == null ? "" : "<stateMessage>" + stateMessage + "</stateMessage>") +
+          "<createdDate>2017-01-01T00:00:00.000Z</createdDate>" +
+          "<systemModstamp>2017-01-01T00:00:00.000Z</systemModstamp>" +
+          "<numberRecordsProcessed>0</numberRecordsProcessed><numberRecordsFailed>0</numberRecordsFailed>" +
+          "<totalProcessingTime>0</totalProcessingTime><apiActiveProcessingTime>0</apiActiveProcessingTime>" +
+          "<apexProcessingTime>0</apexProcessingTime></batchInfo>";
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    server = new MockBulkApiServer();
+    server.addChunk("752000000000001", 1, "\"Id\",\"Name\"\n\"001000000000001\",\"a\"\n\"001000000000002\",\"b\"\n");
+    server.addChunk("752000000000002", 3, "\"Records not found for this query\"\n");
+    server.addChunk(
+        "752000000000003",
+        2,
+        "\"Id\",\"Name\"\n\"001000000000005\",\"e\"\n\"001000000000006\",\"f\"\n",
+        "\"Id\",\"Name\"\n\"001000000000007\",\"g\"\n\"001000000000008\",\"h\"\n"
+    );
+
+    ConnectorConfig config = new ConnectorConfig();
+    config.setSessionId("session");
+    config.setRestEndpoint(server.getEndpoint());
+    config.setCompression(false);
+    connection = new BulkConnection(config);
+  }
+
+  @After
+  public void tearDown() {
+    server.stop();
+  }
+
+  private ForceBulkChunkedReader createReader() {
+    Comparator<String> offsetComparator = ForceBulkChunkedReader.offsetComparator("id");
+    return new ForceBulkChunkedReader(connection, "Id", offsetComparator, 2, 3, 100, (header, row, offset) -> {
+      Record record = RecordCreator.create();
+      LinkedHashMap<String, Field> map = new LinkedHashMap<>();
+      for (int i = 0; i < header.size(); i++) {
+        map.put(header.get(i), Field.create(row.get(i)));
+      }
+      record.set(Field.createListMap(map));
+      return record;
+    });
+  }
+
+  private static List<String> readAll(ForceBulkChunkedReader reader) throws StageException {
+    List<String> ids = new ArrayList<>();
+    long start = System.currentTimeMillis();
+    while (!reader.isFinished()) {
+      Assert.assertTrue("Timed out", System.currentTimeMillis() - start < 30000);
+      for (ForceBulkChunkedReader.Entry entry : reader.poll(2, 100)) {
+        reader.update(entry);
+        if (!entry.isChunkEnd()) {
+          ids.add(entry.getRecord().get("/Id").getValueAsString());
+        }
+      }
+    }
+    Collections.sort(ids);
+    return ids;
+  }
+
+  @Test
+  public void testChunkedQuery() throws Exception {
+    ForceBulkChunkedReader reader = createReader();
+    try {
+      reader.start("Account", "SELECT Id, Name FROM Account", "000000000000000", false, 2);
+      Assert.assertEquals("chunkSize=2", server.pkChunkingHeader);
+      // only the job creation asks for chunking, not the other requests of the shared connection
+      connection.getJobStatus(JOB_ID);
+      Assert.assertFalse(server.pkChunkingHeaderOnOtherRequest);
+
+      List<String> ids = readAll(reader);
+      Assert.assertEquals(6, ids.size());
+      Assert.assertEquals("001000000000001", ids.get(0));
+      Assert.assertEquals("001000000000008", ids.get(5));
+
+      ForceBulkChunkedReader.Offset offset = reader.getOffset();
+      Assert.assertEquals(JOB_ID, offset.jobId);
+      Assert.assertEquals(BATCH_ID, offset.batchId);
+      Assert.assertEquals("000000000000000", offset.queryOffset);
+      Assert.assertEquals("001000000000008", offset.maxOffset);
+      Assert.assertEquals(3, offset.chunks.size());
+      for (Long rows : offset.chunks.values()) {
+        Assert.assertEquals(ForceBulkChunkedReader.CHUNK_DONE, (long) rows);
+      }
+    } finally {
+      reader.stop();
+    }
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    ForceBulkChunkedReader.Offset offset = new ForceBulkChunkedReader.Offset();
+    offset.jobId = JOB_ID;
+    offset.batchId = BATCH_ID;
+    offset.queryOffset = "000000000000000";
+    offset.maxOffset = "001000000000006";
+    offset.chunks.put("752000000000001", ForceBulkChunkedReader.CHUNK_DONE);
+    // the first result of the chunk and one row of the second were read
+    offset.chunks.put("752000000000003", 3L);
+
+    ForceBulkChunkedReader reader = createReader();
+    try {
+      Assert.assertTrue(reader.resume(offset));
+      Assert.assertNull(server.pkChunkingHeader);
+      Assert.assertEquals(Collections.singletonList("001000000000008"), readAll(reader));
+      Assert.assertEquals("001000000000008", offset.maxOffset);
+    } finally {
+      reader.stop();
+    }
+  }
+
+  @Test
+  public void testResumeAbortedJob() throws Exception {
+    server.jobState = "Aborted";
+    ForceBulkChunkedReader.Offset offset = new ForceBulkChunkedReader.Offset();
+    offset.jobId = JOB_ID;
+    offset.batchId = BATCH_ID;
+
+    ForceBulkChunkedReader reader = createReader();
+    try {
+      Assert.assertFalse(reader.resume(offset));
+    } finally {
+      reader.stop();
+    }
+  }
+
+  @Test
+  public void testFailedChunk() throws Exception {
+    server.failedChunks.put("752000000000002", "InvalidBatch");
+    ForceBulkChunkedReader reader = createReader();
+    try {
+      reader.start("Account", "SELECT Id, Name FROM Account", "000000000000000", false, 2);
+      readAll(reader);
+      Assert.fail();
+    } catch (StageException e) {
+      Assert.assertEquals(Errors.FORCE_03, e.getErrorCode());
+    } finally {
+      reader.stop();
+    }
+  }
+
+  private static ForceBulkChunkedReader.Entry createEntry(String chunkId, long row, String offset) {
+    return new ForceBulkChunkedReader.Entry(chunkId, row, RecordCreator.create(), offset);
+  }
+
+  @Test
+  public void testNumericMaxOffset() {
+    Comparator<String> comparator = ForceBulkChunkedReader.offsetComparator("int");
+    ForceBulkChunkedReader.Offset offset = new ForceBulkChunkedReader.Offset();
+    // chunks arrive in any order, the offset crosses from one to two and three digits
+    offset.update(createEntry("c1", 1, "9"), comparator);
+    offset.update(createEntry("c2", 1, "10"), comparator);
+    offset.update(createEntry("c1", 2, "8"), comparator);
+    Assert.assertEquals("10", offset.maxOffset);
+    offset.update(createEntry("c3", 1, "100"), comparator);
+    offset.update(createEntry("c2", 2, "99"), comparator);
+    Assert.assertEquals("100", offset.maxOffset);
+
+    comparator = ForceBulkChunkedReader.offsetComparator("double");
+    Assert.assertTrue(comparator.compare("10.5", "9.75") > 0);
+    Assert.assertTrue(comparator.compare("-2", "-10") > 0);
+    Assert.assertTrue(comparator.compare("", "0") < 0);
+  }
+
+  @Test
+  public void testDateMaxOffset() {
+    Comparator<String> comparator = ForceBulkChunkedReader.offsetComparator("datetime");
+    ForceBulkChunkedReader.Offset offset = new ForceBulkChunkedReader.Offset();
+    offset.update(createEntry("c1", 1, "2017-09-30T23:00:00.000Z"), comparator);
+    offset.update(createEntry("c2", 1, "2017-10-01T01:00:00.000+02:00"), comparator);
+    Assert.assertEquals("2017-09-30T23:00:00.000Z", offset.maxOffset);
+    offset.update(createEntry("c2", 2, "2017-10-01T00:00:00.000Z"), comparator);
+    Assert.assertEquals("2017-10-01T00:00:00.000Z", offset.maxOffset);
+
+    comparator = ForceBulkChunkedReader.offsetComparator("date");
+    Assert.assertTrue(comparator.compare("2017-10-01", "2017-09-30") > 0);
+
+    comparator = ForceBulkChunkedReader.offsetComparator("id");
+    Assert.assertTrue(comparator.compare("001000000000010", "001000000000009") > 0);
+  }
+
+  @Test
+  public void testPollBackoff() {
+    PollBackoff backoff = new PollBackoff(1000);
+    Assert.assertEquals(250, backoff.next());
+    Assert.assertEquals(500, backoff.next());
+    Assert.assertEquals(1000, backoff.next());
+    Assert.assertEquals(1000, backoff.next());
+    backoff.reset();
+    Assert.assertEquals(250, backoff.next());
+
+    Assert.assertEquals(100, new PollBackoff(100).next());
+  }
+}
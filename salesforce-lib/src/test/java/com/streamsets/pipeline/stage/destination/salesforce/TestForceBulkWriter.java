@@ -0,0 +1,269 @@
+/*
+ * Copyright 2017 StreamSets Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streamsets.pipeline.stage.destination.salesforce;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.sforce.async.BulkConnection;
+import com.sforce.ws.ConnectorConfig;
+import com.streamsets.pipeline.api.Field;
+import com.streamsets.pipeline.api.OnRecordError;
+import com.streamsets.pipeline.api.Record;
+import com.streamsets.pipeline.api.Target;
+import com.streamsets.pipeline.api.base.OnRecordErrorException;
+import com.streamsets.pipeline.lib.operation.UnsupportedOperationAction;
+import com.streamsets.pipeline.lib.salesforce.Errors;
+import com.streamsets.pipeline.lib.salesforce.ForceTargetConfigBean;
+import com.streamsets.pipeline.lib.salesforce.SalesforceOperationType;
+import com.streamsets.pipeline.sdk.ContextInfoCreator;
+import com.streamsets.pipeline.sdk.RecordCreator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestForceBulkWriter {
+  private static final String NS = "http://www.force.com/2009/06/asyncapi/dataload";
+
+  private MockBulkApiServer server;
+  private BulkConnection connection;
+  private ForceTarget target;
+
+  /**
+   * Minimal Bulk API server for insert jobs. Batches complete once {@link #complete} is set and rows with the name
+   * 'fail' are rejected.
+   */
+  private static class MockBulkApiServer {
+    private final HttpServer httpServer;
+    private final AtomicInteger ids = new AtomicInteger();
+    // batch id -> uploaded CSV
+    private final Map<String, String> batches = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile boolean complete = true;
+
+    MockBulkApiServer() throws IOException {
+      httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      httpServer.createContext("/services/async/39.0/job", this::handle);
+      httpServer.start();
+    }
+
+    String getEndpoint() {
+      return "http://localhost:" + httpServer.getAddress().getPort() + "/services/async/39.0";
+    }
+
+    void stop() {
+      httpServer.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+      String[] path = exchange.getRequestURI().getPath().substring("/services/async/39.0/job".length()).split("/");
+      String method = exchange.getRequestMethod();
+      try {
+        if (path.length == 1 && "POST".equals(method)) {
+          respond(exchange, "application/xml", jobInfo("75000000000000" + ids.incrementAndGet(), "Open"));
+        } else if (path.length == 2) {
+          respond(exchange, "application/xml", jobInfo(path[1], "Closed"));
+        } else if (path.length == 3 && "POST".equals(method)) {
+          String batchId = "75100000000000" + ids.incrementAndGet();
+          batches.put(batchId, new String(ByteStreams.toByteArray(exchange.getRequestBody()), StandardCharsets.UTF_8));
+          respond(exchange, "application/xml", batchInfo(batchId, path[1], "Queued"));
+        } else if (path.length == 3) {
+          StringBuilder list = new StringBuilder("<batchInfoList xmlns=\"" + NS + "\">");
+          synchronized (batches) {
+            for (String batchId : batches.keySet()) {
+              list.append(batchInfo(batchId, path[1], complete ? "Completed" : "InProgress"));
+            }
+          }
+          list.append("</batchInfoList>");
+          respond(exchange, "application/xml", list.toString());
+        } else if (path.length == 5) {
+          StringBuilder result = new StringBuilder("\"Id\",\"Success\",\"Created\",\"Error\"\n");
+          String[] rows = batches.get(path[3]).split("\r\n");
+          for (int i = 1; i < rows.length; i++) {
+            if ("fail".equals(rows[i])) {
+              result.append("\"\",\"false\",\"false\",\"REQUIRED_FIELD_MISSING\"\n");
+            } else {
+              result.append("\"001000000000000\",\"true\",\"true\",\"\"\n");
+            }
+          }
+          respond(exchange, "text/csv", result.toString());
+        } else {
+          exchange.sendResponseHeaders(404, -1);
+        }
+      } finally {
+        exchange.close();
+      }
+    }
+
+    private void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", contentType);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(bytes);
+      }
+    }
+
+    private static String jobInfo(String id, String state) {
+      return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><jobInfo xmlns=\"" + NS + "\">" +
+          "<id>" + id + "</id><operation>insert</operation><object>Account</object>" +
+          "<createdById>005000000000001</createdById><createdDate>2017-01-01T00:00:00.000Z</createdDate>" +
+          "<systemModstamp>2017-01-01T00:00:00.000Z</systemModstamp><state>" + state + "</state>" +
+          "<concurrencyMode>Parallel</concurrencyMode><contentType>CSV</contentType>" +
+          "<numberBatchesQueued>0</numberBatchesQueued><numberBatchesInProgress>0</numberBatchesInProgress>" +
+          "<numberBatchesCompleted>0</numberBatchesCompleted><numberBatchesFailed>0</numberBatchesFailed>" +
+          "<numberBatchesTotal>0</numberBatchesTotal><numberRecordsProcessed>0</numberRecordsProcessed>" +
+          "<numberRetries>0</numberRetries><apiVersion>39.0</apiVersion>" +
+          "<numberRecordsFailed>0</numberRecordsFailed><totalProcessingTime>0</totalProcessingTime>" +
+          "<apiActiveProcessingTime>0</apiActiveProcessingTime><apexProcessingTime>0</apexProcessingTime>" +
+          "</jobInfo>";
+    }
+
+    private static String batchInfo(String id, String jobId, String state) {
+      return "<batchInfo xmlns=\"" + NS + "\"><id>" + id + "</id><jobId>" + jobId + "</jobId>" +
+          "<state>" + state + "</state>" +
+          "<createdDate>2017-01-01T00:00:00.000Z</createdDate>" +
+          "<systemModstamp>2017-01-01T00:00:00.000Z</systemModstamp>" +
+          "<numberRecordsProcessed>0</numberRecordsProcessed><numberRecordsFailed>0</numberRecordsFailed>" +
+          "<totalProcessingTime>0</totalProcessingTime><apiActiveProcessingTime>0</apiActiveProcessingTime>" +
+          "<apexProcessingTime>0</apexProcessingTime></batchInfo>";
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    server = new MockBulkApiServer();
+
+    ConnectorConfig config = new ConnectorConfig();
+    config.setSessionId("session");
+    config.setRestEndpoint(server.getEndpoint());
+    config.setCompression(false);
+    connection = new BulkConnection(config);
+
+    ForceTargetConfigBean conf = new ForceTargetConfigBean();
+    conf.defaultOperation = SalesforceOperationType.INSERT;
+    conf.unsupportedAction = UnsupportedOperationAction.DISCARD;
+    target = new ForceTarget(conf, false, false);
+  }
+
+  @After
+  public void tearDown() {
+    server.stop();
+  }
+
+  private ForceBulkWriter createWriter(Target.Context context, int maxJobsInFlight, int maxBytes, int maxRows) {
+    return new ForceBulkWriter(
+        ImmutableMap.of("Name", "/Name"),
+        connection,
+        context,
+        maxJobsInFlight,
+        maxBytes,
+        maxRows
+    );
+  }
+
+  private static List<Record> createRecords(String... names) {
+    List<Record> records = new ArrayList<>();
+    for (String name : names) {
+      Record record = RecordCreator.create("s", name);
+      LinkedHashMap<String, Field> map = new LinkedHashMap<>();
+      map.put("Name", Field.create(name));
+      record.set(Field.createListMap(map));
+      records.add(record);
+    }
+    return records;
+  }
+
+  @Test
+  public void testBatchesAndErrors() throws Exception {
+    Target.Context context = ContextInfoCreator.createTargetContext("t", false, OnRecordError.TO_ERROR);
+    ForceBulkWriter writer = createWriter(context, 0, 1000, 2);
+    try {
+      List<OnRecordErrorException> errors = writer.writeBatch(
+          "Account",
+          createRecords("a", "b", "fail", "d", "e"),
+          target
+      );
+
+      // split by row count, each batch with its own header. Batches are uploaded concurrently.
+      Assert.assertEquals(
+          ImmutableSet.of("Name\r\na\r\nb\r\n", "Name\r\nfail\r\nd\r\n", "Name\r\ne\r\n"),
+          new HashSet<>(server.batches.values())
+      );
+
+      Assert.assertEquals(1, errors.size());
+      Assert.assertEquals(Errors.FORCE_11, errors.get(0).getErrorCode());
+      Assert.assertEquals("fail", errors.get(0).getRecord().get("/Name").getValueAsString());
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testBatchByteLimit() throws Exception {
+    Target.Context context = ContextInfoCreator.createTargetContext("t", false, OnRecordError.TO_ERROR);
+    // header and two rows fit in 12 bytes
+    ForceBulkWriter writer = createWriter(context, 0, 12, 100);
+    try {
+      Assert.assertTrue(writer.writeBatch("Account", createRecords("a", "b", "c", "d", "e"), target).isEmpty());
+      Assert.assertEquals(
+          ImmutableSet.of("Name\r\na\r\nb\r\n", "Name\r\nc\r\nd\r\n", "Name\r\ne\r\n"),
+          new HashSet<>(server.batches.values())
+      );
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testJobsInFlight() throws Exception {
+    Target.Context context = ContextInfoCreator.createTargetContext("t", false, OnRecordError.TO_ERROR);
+    ForceBulkWriter writer = createWriter(context, 1, 1000, 100);
+    try {
+      server.complete = false;
+      // returns while the job is still processing
+      Assert.assertTrue(writer.writeBatch("Account", createRecords("a", "fail"), target).isEmpty());
+
+      server.complete = true;
+      // the failed record comes back with a later batch
+      List<OnRecordErrorException> errors = new ArrayList<>();
+      long start = System.currentTimeMillis();
+      while (errors.isEmpty()) {
+        Assert.assertTrue("Timed out", System.currentTimeMillis() - start < 30000);
+        errors.addAll(writer.writeBatch("Account", Collections.<Record>emptyList(), target));
+        Thread.sleep(50);
+      }
+      Assert.assertEquals(1, errors.size());
+      Assert.assertEquals("fail", errors.get(0).getRecord().get("/Name").getValueAsString());
+    } finally {
+      writer.close();
+    }
+  }
+}